@@ -1,3 +1,4 @@
+const mongoose = require('mongoose');
 const Medicine = require('../models/medicineModel');
 const Order = require('../models/orderModel');
 const User = require('../models/userModel');
@@ -177,10 +178,52 @@ exports.getFeaturedMedicines = catchAsyncError(async (req, res, next) => {
     });
 });
 
+// Delta feed for the app's offline catalog: everything changed since a
+// cursor, oldest first, including deactivated medicines so the device can
+// drop them. The cursor is (updatedAt, _id) so equal timestamps never split
+// across pages. activeCount on the last page lets the device notice rows
+// deleted outright, which no delta can carry, and pull everything again.
+exports.syncMedicines = catchAsyncError(async (req, res, next) => {
+    const since = new Date(parseInt(req.query.since, 10) || 0);
+    const after = req.query.after;
+    const limit = Math.min(Math.max(parseInt(req.query.limit, 10) || 500, 1), 2000);
+
+    if (after && !mongoose.isValidObjectId(after)) {
+        return next(new ErrorHandler("Invalid cursor", 400));
+    }
+
+    // A first pull has nothing to delete, so it skips inactive medicines
+    const query = since.getTime() === 0 && !after ? { isActive: true } : {};
+    query.$or = after
+        ? [{ updatedAt: { $gt: since } }, { updatedAt: since, _id: { $gt: after } }]
+        : [{ updatedAt: { $gte: since } }];
+
+    const medicines = await Medicine.find(query)
+        .select('-description -uses -sideEffects -precautions -dosage -batchNumber -minStock')
+        .populate('pharmacy', 'name address.city rating')
+        .sort({ updatedAt: 1, _id: 1 })
+        .limit(limit)
+        .lean();
+
+    const last = medicines[medicines.length - 1];
+    const hasMore = medicines.length === limit;
+
+    res.status(200).json({
+        success: true,
+        medicines,
+        hasMore,
+        cursor: last
+            ? { since: new Date(last.updatedAt).getTime(), after: String(last._id) }
+            : { since: since.getTime(), after: after || null },
+        activeCount: hasMore ? undefined : await Medicine.countDocuments({ isActive: true })
+    });
+});
+
 module.exports = {
     getAllMedicines: exports.getAllMedicines,
     getMedicineById: exports.getMedicineById,
     searchMedicines: exports.searchMedicines,
     getMedicineCategories: exports.getMedicineCategories,
-    getFeaturedMedicines: exports.getFeaturedMedicines
+    getFeaturedMedicines: exports.getFeaturedMedicines,
+    syncMedicines: exports.syncMedicines
 };
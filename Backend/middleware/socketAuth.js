@@ -0,0 +1,32 @@
+const jwt = require('jsonwebtoken');
+const User = require('../models/userModel');
+
+// The token cookie a browser sends with the handshake
+const cookieToken = (header) => {
+    const match = (header || '').match(/(?:^|;\s*)token=([^;]*)/);
+    return match ? decodeURIComponent(match[1]) : null;
+};
+
+// Socket.IO counterpart of isAuthenticatedUser, for io.use(). The JWT comes from
+// the handshake's auth payload ({ auth: { token } } in socket.io-client) or the
+// token cookie. Sockets without one still connect, as video rooms don't need an
+// account, but they join no user room and so can neither ring nor be rung.
+exports.authenticateSocket = async (socket, next) => {
+    const token = socket.handshake.auth?.token || cookieToken(socket.handshake.headers.cookie);
+    if (!token) {
+        return next();
+    }
+
+    try {
+        const decodedData = jwt.verify(token, process.env.JWT_SECRET);
+        const user = await User.findById(decodedData.id).select('name role');
+        if (!user) {
+            return next(new Error("User not found"));
+        }
+        socket.data.user = { id: String(user._id), name: user.name, role: user.role };
+        next();
+    } catch (error) {
+        console.error('❌ Socket token verification error:', error.message);
+        next(new Error("Invalid or expired token. Please login again."));
+    }
+};
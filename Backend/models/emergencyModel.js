@@ -77,6 +77,11 @@ const emergencySchema = new mongoose.Schema({
         type: String,
         maxLength: [1000, "Notes cannot exceed 1000 characters"]
     },
+    // Set by the Android app, which retries a create until it is acknowledged
+    clientId: {
+        type: String,
+        trim: true
+    },
     resolvedAt: Date,
     createdAt: {
         type: Date,
@@ -89,4 +94,12 @@ const emergencySchema = new mongoose.Schema({
 // Index for quick lookup of active emergencies
 emergencySchema.index({ patient: 1, status: 1, createdAt: -1 });
 
+// One emergency per client-side alert, however many times it is retried. Partial:
+// the web SOS sends no clientId, and a sparse compound index would still let a
+// patient have only one emergency without one.
+emergencySchema.index({ patient: 1, clientId: 1 }, {
+    unique: true,
+    partialFilterExpression: { clientId: { $type: 'string' } }
+});
+
 module.exports = mongoose.model("Emergency", emergencySchema);
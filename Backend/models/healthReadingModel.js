@@ -93,6 +93,11 @@ const healthReadingSchema = new mongoose.Schema({
         latitude: Number,
         longitude: Number,
         address: String
+    },
+    // Set by the Android app's reading journal, which re-sends a batch until it is acknowledged
+    clientId: {
+        type: String,
+        trim: true
     }
 }, {
     timestamps: true
@@ -102,6 +107,14 @@ const healthReadingSchema = new mongoose.Schema({
 healthReadingSchema.index({ user: 1, type: 1, timestamp: -1 });
 healthReadingSchema.index({ user: 1, isAbnormal: 1, timestamp: -1 });
 
+// One reading per journal record, however many times its batch is retried. Partial,
+// not sparse: a sparse compound index still covers every reading with a user, so
+// readings without a clientId would all collide on null.
+healthReadingSchema.index({ user: 1, clientId: 1 }, {
+    unique: true,
+    partialFilterExpression: { clientId: { $type: 'string' } }
+});
+
 // Method to check if reading is abnormal
 healthReadingSchema.methods.checkAbnormality = function(thresholds) {
     let isAbnormal = false;
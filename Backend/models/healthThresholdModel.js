@@ -120,4 +120,54 @@ healthThresholdSchema.statics.getDefaultThresholds = function() {
     };
 };
 
+// Changes whenever the document is saved, so devices can tell a stale snapshot
+healthThresholdSchema.methods.rulesVersion = function() {
+    const updated = this.updatedAt || this.lastUpdated;
+    return updated ? new Date(updated).getTime() : 0;
+};
+
+// Compact rule list for the on-device evaluator (HealthRules.java). Each rule is
+// [type, field, op, threshold, severity, message]; within a type the first match
+// wins, so critical rules come first. This must stay in step with
+// checkAbnormality in healthReadingModel - the Android parity test replays
+// checkAbnormality's results against the snapshot built here.
+healthThresholdSchema.methods.toRuleSnapshot = function() {
+    const hr = this.heartRate;
+    const bp = this.bloodPressure;
+    const temp = this.temperature;
+    const glucose = this.bloodGlucose;
+    const rules = [];
+    const range = (type, limits, severity, message) => {
+        rules.push([type, 'single', 'lt', limits.min, severity, message]);
+        rules.push([type, 'single', 'gt', limits.max, severity, message]);
+    };
+
+    range('heart_rate', hr.critical, 'critical', 'Critical heart rate: {single} bpm');
+    range('heart_rate', hr.warning, 'warning', 'Abnormal heart rate: {single} bpm');
+
+    rules.push(['blood_pressure', 'systolic', 'ge', bp.critical.systolic, 'critical', 'Critical blood pressure: {systolic}/{diastolic} mmHg']);
+    rules.push(['blood_pressure', 'diastolic', 'ge', bp.critical.diastolic, 'critical', 'Critical blood pressure: {systolic}/{diastolic} mmHg']);
+    rules.push(['blood_pressure', 'systolic', 'ge', bp.warning.systolic, 'warning', 'High blood pressure: {systolic}/{diastolic} mmHg']);
+    rules.push(['blood_pressure', 'diastolic', 'ge', bp.warning.diastolic, 'warning', 'High blood pressure: {systolic}/{diastolic} mmHg']);
+
+    rules.push(['spo2', 'single', 'lt', this.spo2.critical, 'critical', 'Critical oxygen level: {single}%']);
+    rules.push(['spo2', 'single', 'lt', this.spo2.warning, 'warning', 'Low oxygen level: {single}%']);
+
+    rules.push(['temperature', 'single', 'ge', temp.critical.max, 'critical', 'Critical temperature: {single}°F']);
+    rules.push(['temperature', 'single', 'le', temp.critical.min, 'critical', 'Critical temperature: {single}°F']);
+    rules.push(['temperature', 'single', 'ge', temp.warning.max, 'warning', 'Abnormal temperature: {single}°F']);
+    rules.push(['temperature', 'single', 'le', temp.warning.min, 'warning', 'Abnormal temperature: {single}°F']);
+
+    range('blood_glucose', glucose.critical, 'critical', 'Critical blood glucose: {single} mg/dL');
+    range('blood_glucose', glucose.warning, 'warning', 'Abnormal blood glucose: {single} mg/dL');
+
+    return {
+        format: 1,
+        version: this.rulesVersion(),
+        monitoringEnabled: this.monitoringEnabled !== false,
+        notifications: this.alertPreferences?.enableNotifications !== false,
+        rules
+    };
+};
+
 module.exports = mongoose.model("HealthThreshold", healthThresholdSchema);
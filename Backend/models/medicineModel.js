@@ -158,6 +158,8 @@ medicineSchema.index({ pharmacy: 1, isActive: 1 });
 medicineSchema.index({ category: 1, prescriptionRequired: 1 });
 medicineSchema.index({ price: 1 });
 medicineSchema.index({ rating: -1 });
+// Delta sync cursor
+medicineSchema.index({ updatedAt: 1, _id: 1 });
 
 // Virtual for calculated discount price
 medicineSchema.virtual('discountedPrice').get(function() {
@@ -38,12 +38,49 @@ const sendSMS = async (to, message) => {
     }
 };
 
+// Text every emergency contact and record who was reached. Runs after the
+// response has gone out, so the patient's phone isn't kept waiting on Twilio.
+const notifyContacts = async (emergency, contacts, message) => {
+    try {
+        const results = await Promise.all(contacts.map((contact) => sendSMS(contact.phone, message)));
+        emergency.contactedPersons = contacts.map((contact, i) => ({
+            name: contact.name,
+            phone: contact.phone,
+            relationship: contact.relationship,
+            status: results[i].success ? 'sent' : 'failed'
+        }));
+        await emergency.save();
+    } catch (error) {
+        console.error('Emergency contact notification failed:', error.message);
+    }
+};
+
+// A retried create from the app (same clientId) gets the emergency it already made
+const findOrCreateEmergency = async (patient, clientId, fields) => {
+    if (clientId) {
+        const existing = await Emergency.findOne({ patient, clientId });
+        if (existing) {
+            return { emergency: existing, created: false };
+        }
+    }
+    try {
+        const emergency = await Emergency.create({ ...fields, patient, clientId: clientId || undefined });
+        return { emergency, created: true };
+    } catch (error) {
+        // Two retries raced past the lookup
+        if (error.code === 11000 && clientId) {
+            return { emergency: await Emergency.findOne({ patient, clientId }), created: false };
+        }
+        throw error;
+    }
+};
+
 // @route   POST /api/emergency/sos
 // @desc    Trigger SOS emergency
 // @access  Private
 router.post("/sos", isAuthenticatedUser, async (req, res) => {
     try {
-        const { location, description, severity } = req.body;
+        const { location, description, severity, clientId } = req.body;
 
         if (!location || !location.latitude || !location.longitude) {
             return res.status(400).json({
@@ -62,8 +99,7 @@ router.post("/sos", isAuthenticatedUser, async (req, res) => {
         }
 
         // Create emergency record
-        const emergency = await Emergency.create({
-            patient: req.user.id,
+        const { emergency, created } = await findOrCreateEmergency(req.user.id, clientId, {
             type: 'sos',
             location,
             description: description || 'Emergency SOS triggered',
@@ -71,35 +107,21 @@ router.post("/sos", isAuthenticatedUser, async (req, res) => {
             status: 'active'
         });
 
-        // Notify emergency contacts
-        const contactedPersons = [];
-        
-        if (user.emergencyContacts && user.emergencyContacts.length > 0) {
-            const sosMessage = `🚨 EMERGENCY ALERT 🚨\n\n${user.name} has triggered an SOS emergency!\n\nLocation: ${location.address || `${location.latitude}, ${location.longitude}`}\n\nDescription: ${description || 'Emergency situation'}\n\nPlease contact them immediately or call emergency services.\n\n- Cureon Health App`;
-
-            for (const contact of user.emergencyContacts) {
-                const smsResult = await sendSMS(contact.phone, sosMessage);
-                
-                contactedPersons.push({
-                    name: contact.name,
-                    phone: contact.phone,
-                    relationship: contact.relationship,
-                    status: smsResult.success ? 'sent' : 'failed'
-                });
-            }
-
-            // Update emergency with contacted persons
-            emergency.contactedPersons = contactedPersons;
-            await emergency.save();
-        }
+        const contacts = user.emergencyContacts || [];
 
-        res.status(201).json({
+        res.status(created ? 201 : 200).json({
             success: true,
             message: "SOS emergency triggered successfully",
             emergency,
-            contactsNotified: contactedPersons.length
+            contactsNotified: contacts.length
         });
 
+        // Notify emergency contacts
+        if (created && contacts.length > 0) {
+            const sosMessage = `🚨 EMERGENCY ALERT 🚨\n\n${user.name} has triggered an SOS emergency!\n\nLocation: ${location.address || `${location.latitude}, ${location.longitude}`}\n\nDescription: ${description || 'Emergency situation'}\n\nPlease contact them immediately or call emergency services.\n\n- Cureon Health App`;
+            notifyContacts(emergency, contacts, sosMessage);
+        }
+
     } catch (error) {
         console.error('SOS Error:', error);
         res.status(500).json({
@@ -115,7 +137,7 @@ router.post("/sos", isAuthenticatedUser, async (req, res) => {
 // @access  Private
 router.post("/ambulance", isAuthenticatedUser, async (req, res) => {
     try {
-        const { location, description, severity } = req.body;
+        const { location, description, severity, clientId } = req.body;
 
         if (!location || !location.latitude || !location.longitude) {
             return res.status(400).json({
@@ -127,8 +149,7 @@ router.post("/ambulance", isAuthenticatedUser, async (req, res) => {
         const user = await User.findById(req.user.id);
 
         // Create emergency record with ambulance request
-        const emergency = await Emergency.create({
-            patient: req.user.id,
+        const { emergency, created } = await findOrCreateEmergency(req.user.id, clientId, {
             type: 'ambulance',
             location,
             description: description || 'Ambulance requested',
@@ -140,34 +161,15 @@ router.post("/ambulance", isAuthenticatedUser, async (req, res) => {
             }
         });
 
-        // Notify emergency contacts about ambulance request
-        const contactedPersons = [];
-        
-        if (user.emergencyContacts && user.emergencyContacts.length > 0) {
-            const ambulanceMessage = `🚑 AMBULANCE REQUESTED 🚑\n\n${user.name} has requested an ambulance!\n\nLocation: ${location.address || `${location.latitude}, ${location.longitude}`}\n\nDescription: ${description || 'Medical emergency'}\n\nAn ambulance has been requested. Please contact them or reach the location.\n\n- Cureon Health App`;
-
-            for (const contact of user.emergencyContacts) {
-                const smsResult = await sendSMS(contact.phone, ambulanceMessage);
-                
-                contactedPersons.push({
-                    name: contact.name,
-                    phone: contact.phone,
-                    relationship: contact.relationship,
-                    status: smsResult.success ? 'sent' : 'failed'
-                });
-            }
-
-            emergency.contactedPersons = contactedPersons;
-            await emergency.save();
-        }
+        const contacts = user.emergencyContacts || [];
 
         // In a real implementation, integrate with ambulance service API
         // For now, we'll simulate the request
-        res.status(201).json({
+        res.status(created ? 201 : 200).json({
             success: true,
             message: "Ambulance requested successfully. Emergency services will contact you shortly.",
             emergency,
-            contactsNotified: contactedPersons.length,
+            contactsNotified: contacts.length,
             ambulanceInfo: {
                 estimatedArrival: "10-15 minutes",
                 emergencyNumber: "108", // National Ambulance Service India
@@ -175,6 +177,12 @@ router.post("/ambulance", isAuthenticatedUser, async (req, res) => {
             }
         });
 
+        // Notify emergency contacts about ambulance request
+        if (created && contacts.length > 0) {
+            const ambulanceMessage = `🚑 AMBULANCE REQUESTED 🚑\n\n${user.name} has requested an ambulance!\n\nLocation: ${location.address || `${location.latitude}, ${location.longitude}`}\n\nDescription: ${description || 'Medical emergency'}\n\nAn ambulance has been requested. Please contact them or reach the location.\n\n- Cureon Health App`;
+            notifyContacts(emergency, contacts, ambulanceMessage);
+        }
+
     } catch (error) {
         console.error('Ambulance Request Error:', error);
         res.status(500).json({
@@ -228,36 +228,80 @@ router.post("/readings/bulk", isAuthenticatedUser, async (req, res) => {
             });
         }
 
-        const savedReadings = [];
-        const alerts = [];
-
-        for (const readingData of readings) {
-            const reading = await HealthReading.create({
-                user: req.user.id,
+        // Validate everything before writing, so a bad reading neither fails the rest
+        // nor gets the batch retried forever
+        const valid = [];
+        const rejected = [];
+        readings.forEach((readingData, index) => {
+            const reading = new HealthReading({
                 ...readingData,
+                user: req.user.id,
                 source: readingData.source || { deviceType: 'other', deviceModel: 'boAt Storm SNO931' }
             });
+            let error = reading.validateSync();
+            if (!error) {
+                try {
+                    reading.checkAbnormality(thresholds);
+                } catch (checkError) {
+                    error = checkError;
+                }
+            }
+            if (error) {
+                rejected.push({ index, clientId: readingData.clientId, message: error.message });
+            } else {
+                valid.push(reading);
+            }
+        });
 
-            const abnormalityCheck = reading.checkAbnormality(thresholds);
-            
-            if (abnormalityCheck.isAbnormal) {
-                alerts.push({
-                    readingId: reading._id,
-                    type: reading.type,
-                    severity: abnormalityCheck.severity,
-                    message: abnormalityCheck.message
-                });
+        if (valid.length === 0) {
+            return res.status(422).json({
+                success: false,
+                message: "No valid readings",
+                rejected
+            });
+        }
+
+        // Readings stored by an earlier attempt of the same batch are duplicates by clientId
+        let duplicates = [];
+        try {
+            await HealthReading.insertMany(valid, { ordered: false });
+        } catch (error) {
+            const writeErrors = error.writeErrors || [];
+            if (writeErrors.length === 0 || writeErrors.some(e => (e.code || e.err?.code) !== 11000)) {
+                throw error;
             }
+            duplicates = writeErrors.map(e => valid[e.index]);
+        }
 
-            await reading.save();
-            savedReadings.push(reading);
+        // Alerts point at the stored copy, which for a duplicate is the earlier insert
+        const storedIds = new Map();
+        if (duplicates.length > 0) {
+            const stored = await HealthReading.find({
+                user: req.user.id,
+                clientId: { $in: duplicates.map(r => r.clientId) }
+            }).select('_id clientId');
+            stored.forEach(r => storedIds.set(r.clientId, r._id));
         }
 
+        const alerts = valid
+            .filter(reading => reading.isAbnormal)
+            .map(reading => ({
+                readingId: (reading.clientId && storedIds.get(reading.clientId)) || reading._id,
+                type: reading.type,
+                timestamp: reading.timestamp,
+                severity: reading.severity,
+                message: reading.alertMessage
+            }));
+
         res.status(201).json({
             success: true,
-            message: `${savedReadings.length} readings synced successfully`,
-            count: savedReadings.length,
-            alerts: alerts.length > 0 ? alerts : null
+            message: `${valid.length} readings synced successfully`,
+            count: valid.length,
+            duplicates: duplicates.length,
+            rejected: rejected.length > 0 ? rejected : null,
+            alerts: alerts.length > 0 ? alerts : null,
+            // Lets devices notice their rule snapshot is out of date
+            rulesVersion: thresholds.rulesVersion()
         });
 
     } catch (error) {
@@ -404,6 +448,39 @@ router.get("/thresholds", isAuthenticatedUser, async (req, res) => {
     }
 });
 
+// @route   GET /api/v1/health/thresholds/snapshot
+// @desc    Compact versioned rule snapshot for the on-device evaluator
+// @access  Private
+router.get("/thresholds/snapshot", isAuthenticatedUser, async (req, res) => {
+    try {
+        let thresholds = await HealthThreshold.findOne({ user: req.user.id });
+
+        if (!thresholds) {
+            thresholds = await HealthThreshold.create({
+                user: req.user.id,
+                ...HealthThreshold.getDefaultThresholds()
+            });
+        }
+
+        const snapshot = thresholds.toRuleSnapshot();
+        // Express answers a matching If-None-Match with 304, so an unchanged snapshot costs no body
+        res.set("ETag", `"rules-${snapshot.version}"`);
+        res.set("Cache-Control", "private, no-cache");
+        res.status(200).json({
+            success: true,
+            snapshot
+        });
+
+    } catch (error) {
+        console.error('Get Threshold Snapshot Error:', error);
+        res.status(500).json({
+            success: false,
+            message: "Failed to fetch threshold snapshot",
+            error: error.message
+        });
+    }
+});
+
 // @route   PUT /api/v1/health/thresholds
 // @desc    Update user's health thresholds
 // @access  Private
@@ -23,7 +23,8 @@ const {
     getMedicineById,
     searchMedicines,
     getMedicineCategories,
-    getFeaturedMedicines
+    getFeaturedMedicines,
+    syncMedicines
 } = require('../controller/medicineController');
 const {
     createOrder,
@@ -81,6 +82,9 @@ router.route('/medicines/categories')
 router.route('/medicines/featured')
     .get(getFeaturedMedicines);
 
+router.route('/medicines/sync')
+    .get(syncMedicines);
+
 router.route('/medicine/:id')
     .get(getMedicineById);
 
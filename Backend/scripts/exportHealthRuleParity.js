@@ -0,0 +1,91 @@
+// Regenerates the Android parity fixtures for the on-device health rule engine.
+// Every reading below goes through checkAbnormality (the backend's own rules);
+// HealthRulesTest replays them against toRuleSnapshot's output and expects the
+// same severity and message. Run after touching either method:
+//   node scripts/exportHealthRuleParity.js
+// No database is needed - the documents are never saved.
+const fs = require('fs');
+const path = require('path');
+
+const HealthReading = require('../models/healthReadingModel');
+const HealthThreshold = require('../models/healthThresholdModel');
+
+const OUT_DIR = path.join(__dirname, '../../Frontend/android/app/src/test/resources/health-rules');
+
+const thresholdSets = {
+    defaults: HealthThreshold.getDefaultThresholds(),
+    // Tighter limits a doctor might set for a cardiac patient, including fractional ones
+    cardiac: {
+        heartRate: { warning: { min: 55, max: 100 }, critical: { min: 45, max: 130 } },
+        bloodPressure: { warning: { systolic: 130, diastolic: 85 }, critical: { systolic: 160, diastolic: 105 } },
+        spo2: { warning: 95, critical: 92.5 },
+        temperature: { warning: { min: 96.5, max: 99.9 }, critical: { min: 95.5, max: 102.2 } },
+        bloodGlucose: { warning: { min: 80, max: 160 }, critical: { min: 60, max: 220 } }
+    }
+};
+
+// Every threshold, either side of it, and a few ordinary values
+const around = (limits, extra) => {
+    const values = new Set(extra);
+    for (const limit of limits) {
+        for (const delta of [-1, -0.1, 0, 0.1, 1]) {
+            values.add(Math.round((limit + delta) * 10) / 10);
+        }
+    }
+    return [...values].sort((a, b) => a - b);
+};
+
+const readingsFor = (t) => {
+    const readings = [];
+    const single = (type, values) => values.forEach((v) => readings.push({ type, value: { single: v } }));
+
+    single('heart_rate', around([t.heartRate.critical.min, t.heartRate.critical.max,
+        t.heartRate.warning.min, t.heartRate.warning.max], [0, 72, 250]));
+    single('spo2', around([t.spo2.critical, t.spo2.warning], [70, 98, 100]));
+    single('temperature', around([t.temperature.critical.min, t.temperature.critical.max,
+        t.temperature.warning.min, t.temperature.warning.max], [98.6, 99.95, 106]));
+    single('blood_glucose', around([t.bloodGlucose.critical.min, t.bloodGlucose.critical.max,
+        t.bloodGlucose.warning.min, t.bloodGlucose.warning.max], [20, 110, 400]));
+
+    const systolic = around([t.bloodPressure.critical.systolic, t.bloodPressure.warning.systolic], [100, 120]);
+    const diastolic = around([t.bloodPressure.critical.diastolic, t.bloodPressure.warning.diastolic], [60, 80]);
+    for (const sys of systolic) {
+        for (const dia of diastolic) {
+            readings.push({ type: 'blood_pressure', value: { systolic: sys, diastolic: dia } });
+        }
+    }
+
+    // A missing value never matches, as in JS comparisons with undefined
+    readings.push({ type: 'heart_rate', value: {} });
+    readings.push({ type: 'blood_pressure', value: { systolic: 190 } });
+    return readings;
+};
+
+const cell = (v) => (v === undefined ? '' : String(v));
+
+fs.mkdirSync(OUT_DIR, { recursive: true });
+const lines = [
+    '# Expected results of checkAbnormality (Backend/models/healthReadingModel.js)',
+    '# Generated by Backend/scripts/exportHealthRuleParity.js - do not edit by hand',
+    'set,type,single,systolic,diastolic,severity,message'
+];
+
+// A fixed version keeps the fixtures stable between runs
+let version = Date.UTC(2026, 0, 1);
+for (const [name, values] of Object.entries(thresholdSets)) {
+    const thresholds = new HealthThreshold(values);
+    thresholds.updatedAt = new Date(version++);
+    // Exactly what GET /api/v1/health/thresholds/snapshot sends
+    fs.writeFileSync(path.join(OUT_DIR, `${name}.snapshot.json`),
+        JSON.stringify({ success: true, snapshot: thresholds.toRuleSnapshot() }) + '\n');
+
+    for (const data of readingsFor(values)) {
+        const reading = new HealthReading(data);
+        const { severity, message } = reading.checkAbnormality(thresholds);
+        lines.push([name, data.type, cell(data.value.single), cell(data.value.systolic),
+            cell(data.value.diastolic), severity, message].join(','));
+    }
+}
+
+fs.writeFileSync(path.join(OUT_DIR, 'goldens.csv'), lines.join('\n') + '\n');
+console.log(`✅ Wrote ${lines.length - 3} readings for ${Object.keys(thresholdSets).length} threshold sets to ${OUT_DIR}`);
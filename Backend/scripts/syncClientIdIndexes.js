@@ -0,0 +1,30 @@
+// Replaces the clientId indexes of databases that got the earlier sparse
+// version, which either failed to build or refused a second reading (or SOS)
+// without a clientId. Run once per database: node scripts/syncClientIdIndexes.js
+const mongoose = require('mongoose');
+require('dotenv').config();
+
+const HealthReading = require('../models/healthReadingModel');
+const Emergency = require('../models/emergencyModel');
+
+const MODELS = [HealthReading, Emergency];
+
+const sync = async () => {
+    try {
+        await mongoose.connect(process.env.MONGO_URI);
+        console.log('✅ Connected to database');
+
+        for (const Model of MODELS) {
+            // Drops indexes whose options differ from the schema's and builds the schema's
+            const dropped = await Model.syncIndexes();
+            console.log(`📋 ${Model.modelName}: dropped ${dropped.length ? dropped.join(', ') : 'nothing'}`);
+        }
+    } catch (error) {
+        console.error('❌ Error:', error.message);
+        process.exitCode = 1;
+    } finally {
+        await mongoose.disconnect();
+    }
+};
+
+sync();
@@ -6,6 +6,7 @@ const cookieParser = require("cookie-parser");
 const http = require('http');
 const { Server } = require('socket.io');
 require('dotenv').config();
+const { authenticateSocket } = require('./middleware/socketAuth');
 
 const app = express();
 const server = http.createServer(app);
@@ -47,10 +48,60 @@ const rooms = {};
 // Store socket instances for doctors
 const doctorSockets = new Map();
 
+// Who a socket belongs to comes from its JWT, never from the handshake query
+io.use(authenticateSocket);
+
 // Socket.IO connection handling
 io.on("connection", (socket) => {
     console.log("✅ User connected:", socket.id);
 
+    // Every session of a user (web tabs, the Android call service) shares a room,
+    // so a call can reach them without knowing socket ids
+    const user = socket.data.user;
+    if (user) {
+        socket.join(`user:${user.id}`);
+    }
+
+    socket.on("call-invite", (data, ack) => {
+        const { calleeId, roomId } = data || {};
+        if (!user || !calleeId || !roomId) {
+            if (typeof ack === 'function') ack({ success: false, delivered: 0 });
+            return;
+        }
+        const callId = data.callId || roomId;
+        const delivered = io.sockets.adapter.rooms.get(`user:${calleeId}`)?.size || 0;
+        console.log(`📲 Call ${callId} from ${user.id} to ${calleeId}: ${delivered} session(s)`);
+        io.to(`user:${calleeId}`).emit("incoming-call", {
+            callId,
+            roomId,
+            // The caller is whoever signed the socket in, whatever the payload says
+            callerId: user.id,
+            callerName: user.role === 'doctor' ? `Dr. ${user.name}` : user.name,
+            callerRole: user.role,
+            isVideoCall: data.isVideoCall !== false,
+            sentAt: Date.now()
+        });
+        if (typeof ack === 'function') ack({ success: true, callId, delivered });
+    });
+
+    socket.on("call-cancel", ({ calleeId, callId } = {}) => {
+        if (user && calleeId && callId) {
+            io.to(`user:${calleeId}`).emit("call-cancelled", { callId, reason: 'cancelled' });
+        }
+    });
+
+    socket.on("call-answer", ({ callId, roomId, callerId, accepted, reason } = {}) => {
+        if (!user || !callId) return;
+        console.log(`📲 Call ${callId} ${accepted ? 'accepted' : reason || 'declined'} by ${user.id}`);
+        if (callerId) {
+            io.to(`user:${callerId}`).emit("call-answered", {
+                callId, roomId, accepted: !!accepted, reason: reason || (accepted ? 'accepted' : 'declined')
+            });
+        }
+        // The callee's other sessions stop ringing
+        socket.to(`user:${user.id}`).emit("call-cancelled", { callId, reason: 'answered-elsewhere' });
+    });
+
     socket.on("join-room", (data) => {
         // Handle both string roomId and object {roomId, userName, userRole}
         const roomId = typeof data === 'string' ? data : data.roomId;
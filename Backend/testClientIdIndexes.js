@@ -0,0 +1,77 @@
+// Checks the clientId de-duplication indexes against a real MongoDB:
+// node testClientIdIndexes.js (uses MONGO_URI, in a throwaway database)
+const assert = require('assert');
+const mongoose = require('mongoose');
+require('dotenv').config();
+
+const HealthReading = require('./models/healthReadingModel');
+const Emergency = require('./models/emergencyModel');
+
+const DB_NAME = `cureon-clientid-index-test-${Date.now()}`;
+
+const isDuplicate = (error) => error && error.code === 11000;
+
+const readingsWithoutClientId = async (Reading) => {
+    const user = new mongoose.Types.ObjectId();
+    const reading = { user, type: 'heart_rate', value: { single: 72 }, timestamp: new Date() };
+    // The single-reading endpoint never sends a clientId
+    await Reading.create(reading);
+    await Reading.create(reading);
+    assert.strictEqual(await Reading.countDocuments({ user }), 2);
+};
+
+const readingsWithTheSameClientId = async (Reading) => {
+    const user = new mongoose.Types.ObjectId();
+    const reading = { user, type: 'spo2', value: { single: 97 }, timestamp: new Date(), clientId: 'journal-1' };
+    await Reading.create(reading);
+    await assert.rejects(Reading.create(reading), isDuplicate);
+    // Another user's journal may use the same id
+    await Reading.create({ ...reading, user: new mongoose.Types.ObjectId() });
+};
+
+const sosWithoutClientId = async (_, Alert) => {
+    const patient = new mongoose.Types.ObjectId();
+    // What findOrCreateEmergency stores for the web SOS button
+    const sos = { patient, type: 'sos', location: { latitude: 12.97, longitude: 77.59 }, clientId: undefined };
+    await Alert.create(sos);
+    await Alert.create(sos);
+    await Alert.create({ ...sos, type: 'ambulance' });
+    assert.strictEqual(await Alert.countDocuments({ patient }), 3);
+};
+
+const sosWithTheSameClientId = async (_, Alert) => {
+    const patient = new mongoose.Types.ObjectId();
+    const sos = { patient, type: 'sos', location: { latitude: 12.97, longitude: 77.59 }, clientId: 'sos-1' };
+    await Alert.create(sos);
+    await assert.rejects(Alert.create(sos), isDuplicate);
+};
+
+const run = async () => {
+    const connection = await mongoose.createConnection(process.env.MONGO_URI, { dbName: DB_NAME }).asPromise();
+    console.log(`✅ Connected to MongoDB (${DB_NAME})`);
+    let failed = 0;
+    try {
+        const Reading = connection.model('HealthReading', HealthReading.schema);
+        const Alert = connection.model('Emergency', Emergency.schema);
+        await Promise.all([Reading.init(), Alert.init()]);
+        const tests = { readingsWithoutClientId, readingsWithTheSameClientId, sosWithoutClientId, sosWithTheSameClientId };
+        for (const [name, test] of Object.entries(tests)) {
+            try {
+                await test(Reading, Alert);
+                console.log(`✅ ${name}`);
+            } catch (error) {
+                failed++;
+                console.error(`❌ ${name}:`, error.message);
+            }
+        }
+    } finally {
+        await connection.dropDatabase();
+        await connection.close();
+    }
+    process.exit(failed ? 1 : 0);
+};
+
+run().catch((error) => {
+    console.error('❌ Error:', error.message);
+    process.exit(1);
+});
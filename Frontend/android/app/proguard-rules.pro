@@ -19,3 +19,15 @@
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
 #-renamesourcefileattribute SourceFile
+
+# Keep line numbers so release crash reports stay readable
+-keepattributes SourceFile,LineNumberTable
+
+# ZEGOCLOUD's native engine calls back into these classes over JNI
+-keep class im.zego.** { *; }
+-keep class com.zegocloud.** { *; }
+-dontwarn im.zego.**
+-dontwarn com.zegocloud.**
+
+# Our plugins are looked up by annotation and their methods by name from JavaScript
+-keep @com.getcapacitor.annotation.CapacitorPlugin class com.cureon.telemed.** { *; }
@@ -0,0 +1,109 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cold versus warm call join, measured the way users feel it: from the join
+ * request to the activity, the room login and the first captured local frame.
+ * Remote frames need a second participant, so they are not part of this run.
+ *
+ * <p>The orchestrator gives each test its own process, so {@link #coldJoin}
+ * starts without an engine. Results go to logcat and to the instrumentation
+ * status bundle ({@code am instrument -r}) as {@code <run>.<milestone>Ms}.
+ * Needs a device with a camera and network access.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CallJoinBenchmark {
+    private static final String TAG = "CallJoinBenchmark";
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private Context context;
+
+    @Before
+    public void grantPermissions() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        String pkg = context.getPackageName();
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+            .executeShellCommand("pm grant " + pkg + " android.permission.CAMERA");
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+            .executeShellCommand("pm grant " + pkg + " android.permission.RECORD_AUDIO");
+    }
+
+    @Test
+    public void coldJoin() throws Exception {
+        assertFalse(CallWarmup.get().isWarm());
+        report("cold", join());
+    }
+
+    @Test
+    public void warmJoin() throws Exception {
+        CountDownLatch warmed = new CountDownLatch(1);
+        CallWarmup.get().warm(context, ZegoVideoCallActivity.APP_ID, ZegoVideoCallActivity.APP_SIGN,
+            "bench_user", "Benchmark", warmup -> warmed.countDown());
+        assertTrue("warm-up timed out", warmed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue("engine did not start", CallWarmup.get().isWarm());
+
+        CallLatencyTracker.Report report = join();
+        assertTrue(report.warm);
+        report("warm", report);
+    }
+
+    private CallLatencyTracker.Report join() throws InterruptedException {
+        CountDownLatch firstFrame = new CountDownLatch(1);
+        AtomicReference<CallLatencyTracker.Report> latest = new AtomicReference<>();
+        CallLatencyTracker tracker = CallLatencyTracker.shared();
+        tracker.setListener(report -> {
+            latest.set(report);
+            if (report.sinceJoinMs[CallLatencyTracker.FIRST_LOCAL_FRAME] >= 0) {
+                firstFrame.countDown();
+            }
+        });
+
+        // The same path as ZegoCallPlugin.joinRoom; the activity finishes at once without a session
+        long now = SystemClock.elapsedRealtime();
+        String roomID = "bench_" + now;
+        CallSession.Join session = CallSession.shared().join(roomID, now);
+        assertTrue("call slot taken: " + session.outcome, session.shouldLaunch());
+        tracker.begin(roomID, CallWarmup.get().isWarm(), now);
+        Intent intent = new JoinRequest(roomID, "bench_user", "Benchmark", true, false)
+            .putExtras(new Intent(context, ZegoVideoCallActivity.class), session.sessionId);
+
+        try (ActivityScenario<ZegoVideoCallActivity> ignored = ActivityScenario.launch(intent)) {
+            assertTrue("no local frame within " + TIMEOUT_SECONDS + "s",
+                firstFrame.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            tracker.setListener(null);
+        }
+        return latest.get();
+    }
+
+    private static void report(String run, CallLatencyTracker.Report report) {
+        Bundle results = new Bundle();
+        StringBuilder line = new StringBuilder(run);
+        for (int i = CallLatencyTracker.ACTIVITY_CREATED; i <= CallLatencyTracker.FIRST_LOCAL_FRAME; i++) {
+            String key = run + "." + CallLatencyTracker.NAMES[i] + "Ms";
+            results.putLong(key, report.sinceJoinMs[i]);
+            line.append(' ').append(CallLatencyTracker.NAMES[i]).append('=').append(report.sinceJoinMs[i]);
+        }
+        Log.i(TAG, line.toString());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+}
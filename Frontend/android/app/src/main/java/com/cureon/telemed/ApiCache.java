@@ -0,0 +1,710 @@
+package com.cureon.telemed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk stale-while-revalidate cache for allow-listed API GETs.
+ *
+ * <p>Entries are keyed by URL plus an auth scope (a hash of the
+ * Authorization header or cookies), so one account never sees another's
+ * responses. Within its route's TTL an entry is served without touching
+ * the network; after that and until the stale window ends it is still
+ * served, while a conditional request (ETag / Last-Modified) refreshes it
+ * in the background. Past the stale window the request goes to the network,
+ * and a stored entry is only used if the network fails. Total size is kept
+ * under a byte budget by evicting the least recently used entries.
+ *
+ * <p>{@link #handle} returns null for anything the cache doesn't own, and
+ * the caller then lets the request through untouched.
+ */
+final class ApiCache {
+    static final String CACHE_HEADER = "X-Cureon-Cache";
+    static final long DEFAULT_MAX_BYTES = 20L * 1024 * 1024;
+
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final int FORMAT = 1;
+    // Larger responses are passed through without being stored
+    private static final int MAX_BODY_BYTES = 2 * 1024 * 1024;
+    private static final int TIMEOUT_MS = 15_000;
+    private static final String META = ".meta";
+    private static final String BODY = ".body";
+
+    // Request headers that shape the response and go upstream with our own request
+    private static final String[] FORWARDED = { "Authorization", "Accept", "Accept-Language", "Origin", "User-Agent" };
+    // Headers that describe the transfer rather than the stored body
+    private static final Set<String> DROPPED = new HashSet<>(Arrays.asList(
+        "content-encoding", "content-length", "transfer-encoding", "connection", "keep-alive",
+        "set-cookie", "set-cookie2"));
+
+    static final class Route {
+        final Pattern path;
+        final long ttlMs;
+        final long staleMs;
+
+        Route(String pathRegex, long ttlMs, long staleMs) {
+            this.path = Pattern.compile(pathRegex);
+            this.ttlMs = ttlMs;
+            this.staleMs = staleMs;
+        }
+    }
+
+    /** Read-mostly catalog data; anything user-specific stays off this list. */
+    static final Route[] DEFAULT_ROUTES = {
+        new Route("/api/v1/medicines/categories", HOUR, 7 * DAY),
+        new Route("/api/v1/medicines/featured", 10 * MINUTE, DAY),
+        new Route("/api/v1/medicines", 5 * MINUTE, DAY),
+        new Route("/api/v1/medicine/[^/]+", 10 * MINUTE, DAY),
+        new Route("/api/v1/doctors", 10 * MINUTE, DAY),
+        new Route("/api/v1/pharmacies(/all)?", 10 * MINUTE, DAY),
+    };
+
+    /** The WebView's cookie store, so our requests carry and keep the same cookies. */
+    interface CookieJar {
+        String cookieHeader(String url);
+
+        void store(String url, List<String> setCookies);
+    }
+
+    static final class Response {
+        final int status;
+        final String reason;
+        final String mimeType;
+        final String charset;
+        final Map<String, String> headers;
+        final InputStream body;
+
+        Response(int status, String reason, String mimeType, String charset, Map<String, String> headers,
+                InputStream body) {
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            this.charset = charset;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    static final class Metrics {
+        long hits;
+        long staleHits;
+        long misses;
+        // Conditional requests, in the background or for an entry past its stale window
+        long revalidations;
+        long notModified;
+        long errors;
+        long evictions;
+        long bytesFromCache;
+        long bytesFromNetwork;
+        int entries;
+        long storedBytes;
+    }
+
+    private static final class Entry {
+        final String key;
+        String url;
+        int status;
+        String reason;
+        String contentType;
+        Map<String, String> headers;
+        String etag;
+        String lastModified;
+        long freshUntilMs;
+        long staleUntilMs;
+        long bodyBytes;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Fetched {
+        int status;
+        String reason;
+        Map<String, String> headers;
+        byte[] body;
+        // Set when the body was too large to buffer: the rest of it, still on the wire
+        InputStream remainder;
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final Route[] routes;
+    private final Executor revalidator;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> revalidating = new HashSet<>();
+    private final Metrics metrics = new Metrics();
+    private Set<String> origins = Collections.emptySet();
+    private CookieJar cookies;
+    private boolean loaded;
+    private long storedBytes;
+
+    ApiCache(File dir, long maxBytes, Route[] routes, Executor revalidator, LongSupplier clock) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.routes = routes;
+        this.revalidator = revalidator;
+        this.clock = clock;
+    }
+
+    /** API origins ({@code https://host[:port]}) whose requests may be cached. Empty turns the cache off. */
+    synchronized void setOrigins(Collection<String> origins) {
+        Set<String> normalized = new HashSet<>();
+        for (String origin : origins) {
+            String o = originOf(origin);
+            if (o != null) {
+                normalized.add(o);
+            }
+        }
+        this.origins = normalized;
+    }
+
+    synchronized void setCookieJar(CookieJar cookies) {
+        this.cookies = cookies;
+    }
+
+    /** The route a URL would be cached under, or null. */
+    synchronized Route routeFor(String url) {
+        URI uri = parse(url);
+        if (uri == null || !origins.contains(originOf(uri)) || uri.getRawPath() == null) {
+            return null;
+        }
+        for (Route route : routes) {
+            if (route.path.matcher(uri.getRawPath()).matches()) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Answers a request from the cache or the network. Returns null when the
+     * request isn't cacheable, or when there's nothing stored and the network
+     * failed, so the caller can let it through as usual.
+     */
+    Response handle(String method, String url, Map<String, String> requestHeaders) {
+        if (!"GET".equalsIgnoreCase(method) || header(requestHeaders, "Range") != null) {
+            return null;
+        }
+        String requestCacheControl = header(requestHeaders, "Cache-Control");
+        if (requestCacheControl != null && requestCacheControl.toLowerCase(Locale.ROOT).contains("no-store")) {
+            return null;
+        }
+        Route route = routeFor(url);
+        if (route == null) {
+            return null;
+        }
+        CookieJar jar;
+        synchronized (this) {
+            jar = cookies;
+        }
+        String cookie = jar == null ? null : jar.cookieHeader(url);
+        String key = key(scopeOf(header(requestHeaders, "Authorization"), cookie), url);
+
+        Entry entry;
+        long now = clock.getAsLong();
+        synchronized (this) {
+            ensureLoaded();
+            entry = index.get(key);
+            if (entry != null && now < entry.freshUntilMs) {
+                Response hit = serveStored(entry, "hit");
+                if (hit != null) {
+                    metrics.hits++;
+                    return hit;
+                }
+                entry = null;
+            } else if (entry != null && now < entry.staleUntilMs) {
+                Response stale = serveStored(entry, "stale");
+                if (stale != null) {
+                    metrics.staleHits++;
+                    revalidateLater(entry, route, url, requestHeaders, cookie);
+                    return stale;
+                }
+                entry = null;
+            }
+        }
+
+        Fetched fetched;
+        try {
+            fetched = fetch(url, requestHeaders, cookie, entry);
+        } catch (IOException e) {
+            synchronized (this) {
+                metrics.errors++;
+                // Offline: an expired answer beats no answer
+                return entry != null ? serveStored(entry, "stale-if-error") : null;
+            }
+        }
+        synchronized (this) {
+            if (fetched.status >= 500 && entry != null) {
+                metrics.errors++;
+                Response fallback = serveStored(entry, "stale-if-error");
+                if (fallback != null) {
+                    return fallback;
+                }
+            }
+            if (fetched.status == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                metrics.revalidations++;
+                metrics.notModified++;
+                refresh(entry, route, fetched.headers);
+                Response revalidated = serveStored(entry, "revalidated");
+                if (revalidated != null) {
+                    return revalidated;
+                }
+            }
+            metrics.misses++;
+            if (fetched.remainder == null) {
+                metrics.bytesFromNetwork += fetched.body.length;
+                store(key, url, route, fetched);
+            }
+        }
+        InputStream body = new ByteArrayInputStream(fetched.body);
+        if (fetched.remainder != null) {
+            body = new SequenceInputStream(body, fetched.remainder);
+        }
+        return response(fetched.status, fetched.reason, fetched.headers, "miss", body);
+    }
+
+    /** Drops entries whose URL starts with {@code urlPrefix}, for every scope; returns how many. */
+    synchronized int invalidate(String urlPrefix) {
+        ensureLoaded();
+        int removed = 0;
+        Iterator<Entry> it = index.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.url.startsWith(urlPrefix)) {
+                it.remove();
+                deleteFiles(entry);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    synchronized void clear() {
+        invalidate("");
+    }
+
+    synchronized Metrics metrics() {
+        Metrics m = new Metrics();
+        m.hits = metrics.hits;
+        m.staleHits = metrics.staleHits;
+        m.misses = metrics.misses;
+        m.revalidations = metrics.revalidations;
+        m.notModified = metrics.notModified;
+        m.errors = metrics.errors;
+        m.evictions = metrics.evictions;
+        m.bytesFromCache = metrics.bytesFromCache;
+        m.bytesFromNetwork = metrics.bytesFromNetwork;
+        m.entries = loaded ? index.size() : 0;
+        m.storedBytes = storedBytes;
+        return m;
+    }
+
+    /** {@code auth:<hash>}, {@code cookie:<hash>} or {@code anon}; raw credentials never reach the disk. */
+    static String scopeOf(String authorization, String cookie) {
+        if (authorization != null && !authorization.isEmpty()) {
+            return "auth:" + sha256(authorization);
+        }
+        if (cookie != null && !cookie.isEmpty()) {
+            return "cookie:" + sha256(cookie);
+        }
+        return "anon";
+    }
+
+    static String key(String scope, String url) {
+        return sha256(scope + "\n" + url);
+    }
+
+    private void revalidateLater(Entry entry, Route route, String url, Map<String, String> requestHeaders,
+            String cookie) {
+        if (!revalidating.add(entry.key)) {
+            return;
+        }
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(requestHeaders);
+        revalidator.execute(() -> {
+            try {
+                Fetched fetched = fetch(url, headers, cookie, entry);
+                synchronized (ApiCache.this) {
+                    metrics.revalidations++;
+                    if (index.get(entry.key) != entry) {
+                        // Stored again, invalidated or evicted meanwhile; this answer is older than that
+                        if (fetched.remainder != null) {
+                            fetched.remainder.close();
+                        }
+                    } else if (fetched.status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        metrics.notModified++;
+                        refresh(entry, route, fetched.headers);
+                    } else if (fetched.remainder == null && fetched.status < 500) {
+                        metrics.bytesFromNetwork += fetched.body.length;
+                        store(entry.key, url, route, fetched);
+                    } else if (fetched.remainder != null) {
+                        fetched.remainder.close();
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (ApiCache.this) {
+                    metrics.errors++;
+                }
+            } finally {
+                synchronized (ApiCache.this) {
+                    revalidating.remove(entry.key);
+                }
+            }
+        });
+    }
+
+    private Fetched fetch(String url, Map<String, String> requestHeaders, String cookie, Entry conditional)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setUseCaches(false);
+        for (String name : FORWARDED) {
+            String value = header(requestHeaders, name);
+            if (value != null) {
+                connection.setRequestProperty(name, value);
+            }
+        }
+        if (cookie != null && !cookie.isEmpty()) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        if (conditional != null && conditional.etag != null) {
+            connection.setRequestProperty("If-None-Match", conditional.etag);
+        }
+        if (conditional != null && conditional.lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", conditional.lastModified);
+        }
+
+        Fetched fetched = new Fetched();
+        try {
+            fetched.status = connection.getResponseCode();
+            fetched.reason = connection.getResponseMessage();
+            fetched.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            List<String> setCookies = new ArrayList<>();
+            for (Map.Entry<String, List<String>> field : connection.getHeaderFields().entrySet()) {
+                String name = field.getKey();
+                if (name == null) {
+                    continue;
+                }
+                String lower = name.toLowerCase(Locale.ROOT);
+                if (lower.equals("set-cookie")) {
+                    setCookies.addAll(field.getValue());
+                } else if (!DROPPED.contains(lower)) {
+                    fetched.headers.put(name, String.join(", ", field.getValue()));
+                }
+            }
+            CookieJar jar;
+            synchronized (this) {
+                jar = cookies;
+            }
+            if (jar != null && !setCookies.isEmpty()) {
+                jar.store(url, setCookies);
+            }
+            InputStream in = fetched.status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            fetched.body = new byte[0];
+            if (in != null) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[16 * 1024];
+                int n;
+                while (buffer.size() <= MAX_BODY_BYTES && (n = in.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, n);
+                }
+                fetched.body = buffer.toByteArray();
+                if (buffer.size() > MAX_BODY_BYTES) {
+                    fetched.remainder = in;
+                } else {
+                    in.close();
+                }
+            }
+            return fetched;
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private void store(String key, String url, Route route, Fetched fetched) {
+        String cacheControl = fetched.headers.get("Cache-Control");
+        boolean noStore = cacheControl != null && cacheControl.toLowerCase(Locale.ROOT).contains("no-store");
+        if (fetched.status != HttpURLConnection.HTTP_OK || noStore) {
+            return;
+        }
+        Entry entry = new Entry(key);
+        entry.url = url;
+        entry.status = fetched.status;
+        entry.reason = fetched.reason;
+        entry.headers = fetched.headers;
+        entry.contentType = fetched.headers.get("Content-Type");
+        entry.bodyBytes = fetched.body.length;
+        refresh(entry, route, fetched.headers);
+        try {
+            dir.mkdirs();
+            writeAtomically(new File(dir, key + BODY), fetched.body);
+            writeAtomically(new File(dir, key + META), encodeMeta(entry));
+        } catch (IOException e) {
+            deleteFiles(entry);
+            return;
+        }
+        Entry previous = index.put(key, entry);
+        if (previous != null) {
+            storedBytes -= previous.bodyBytes;
+        }
+        storedBytes += entry.bodyBytes;
+        evict();
+    }
+
+    // New freshness from the route; validators move to whatever the server sent last
+    private void refresh(Entry entry, Route route, Map<String, String> headers) {
+        long now = clock.getAsLong();
+        entry.freshUntilMs = now + route.ttlMs;
+        entry.staleUntilMs = now + route.ttlMs + route.staleMs;
+        String etag = headers.get("ETag");
+        String lastModified = headers.get("Last-Modified");
+        if (etag != null) {
+            entry.etag = etag;
+        }
+        if (lastModified != null) {
+            entry.lastModified = lastModified;
+        }
+        // Only the indexed entry owns the meta file; a replaced one would overwrite its successor's
+        if (index.get(entry.key) == entry) {
+            try {
+                writeAtomically(new File(dir, entry.key + META), encodeMeta(entry));
+            } catch (IOException ignored) {
+                // The in-memory index is still right; the next store rewrites the file
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = index.values().iterator();
+        while (storedBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            deleteFiles(eldest);
+            metrics.evictions++;
+        }
+    }
+
+    private void deleteFiles(Entry entry) {
+        new File(dir, entry.key + BODY).delete();
+        new File(dir, entry.key + META).delete();
+        storedBytes -= entry.bodyBytes;
+    }
+
+    private Response serveStored(Entry entry, String source) {
+        File body = new File(dir, entry.key + BODY);
+        InputStream in;
+        try {
+            in = new FileInputStream(body);
+        } catch (FileNotFoundException e) {
+            index.remove(entry.key);
+            deleteFiles(entry);
+            return null;
+        }
+        // File times carry the LRU order across restarts
+        body.setLastModified(System.currentTimeMillis());
+        metrics.bytesFromCache += entry.bodyBytes;
+        return response(entry.status, entry.reason, entry.headers, source, in);
+    }
+
+    private static Response response(int status, String reason, Map<String, String> stored, String source,
+            InputStream body) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(stored);
+        headers.put(CACHE_HEADER, source);
+        String contentType = headers.get("Content-Type");
+        String mimeType = "application/octet-stream";
+        String charset = null;
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                    charset = part.substring("charset=".length()).replace("\"", "");
+                }
+            }
+        }
+        String phrase = reason == null || reason.isEmpty() ? "OK" : reason;
+        return new Response(status, phrase, mimeType, charset, headers, body);
+    }
+
+    // Rebuilds the index from disk once, oldest access first so LRU order survives restarts
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] metas = dir.listFiles((d, name) -> name.endsWith(META));
+        if (metas == null) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Long> accessed = new LinkedHashMap<>();
+        for (File meta : metas) {
+            String key = meta.getName().substring(0, meta.getName().length() - META.length());
+            File body = new File(dir, key + BODY);
+            Entry entry = body.exists() ? decodeMeta(key, meta) : null;
+            if (entry == null || entry.bodyBytes != body.length()) {
+                meta.delete();
+                body.delete();
+                continue;
+            }
+            entries.add(entry);
+            accessed.put(key, body.lastModified());
+        }
+        entries.sort((a, b) -> Long.compare(accessed.get(a.key), accessed.get(b.key)));
+        for (Entry entry : entries) {
+            index.put(entry.key, entry);
+            storedBytes += entry.bodyBytes;
+        }
+        evict();
+    }
+
+    private static byte[] encodeMeta(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FORMAT);
+        out.writeUTF(entry.url);
+        out.writeInt(entry.status);
+        out.writeUTF(entry.reason == null ? "" : entry.reason);
+        out.writeUTF(entry.etag == null ? "" : entry.etag);
+        out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+        out.writeLong(entry.freshUntilMs);
+        out.writeLong(entry.staleUntilMs);
+        out.writeLong(entry.bodyBytes);
+        out.writeInt(entry.headers.size());
+        for (Map.Entry<String, String> header : entry.headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decodeMeta(String key, File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            Entry entry = new Entry(key);
+            entry.url = in.readUTF();
+            entry.status = in.readInt();
+            entry.reason = in.readUTF();
+            entry.etag = emptyToNull(in.readUTF());
+            entry.lastModified = emptyToNull(in.readUTF());
+            entry.freshUntilMs = in.readLong();
+            entry.staleUntilMs = in.readLong();
+            entry.bodyBytes = in.readLong();
+            int count = in.readInt();
+            entry.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < count; i++) {
+                entry.headers.put(in.readUTF(), in.readUTF());
+            }
+            entry.contentType = entry.headers.get("Content-Type");
+            return entry;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeAtomically(File target, byte[] data) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Could not move " + tmp + " into place");
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static URI parse(String url) {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static String originOf(String url) {
+        URI uri = parse(url);
+        return uri == null ? null : originOf(uri);
+    }
+
+    private static String originOf(URI uri) {
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        boolean defaultPort = port == -1 || (scheme.equals("https") && port == 443)
+            || (scheme.equals("http") && port == 80);
+        return scheme + "://" + uri.getHost().toLowerCase(Locale.ROOT) + (defaultPort ? "" : ":" + port);
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves allow-listed API GETs from {@link ApiCache} by intercepting them in
+ * {@link BlobWebViewClient}. The page tells us which origin is the API
+ * ({@code configure}); the origin is remembered so the cache is active from
+ * the first request of the next launch. Hit/miss/byte counters are available
+ * to JS through {@code getStats}.
+ */
+@CapacitorPlugin(name = "ApiCache")
+public class ApiCachePlugin extends Plugin {
+    private static final String TAG = "ApiCachePlugin";
+    private static final String PREFS = "api_cache";
+    private static final String KEY_ORIGINS = "origins";
+
+    private ApiCache cache;
+    // Background revalidations, one at a time so a burst of stale hits can't flood a slow link
+    private final ExecutorService revalidator = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void load() {
+        cache = new ApiCache(new File(getContext().getCacheDir(), "api-cache"), ApiCache.DEFAULT_MAX_BYTES,
+            // Wall time: freshness is stored on disk and has to survive reboots
+            ApiCache.DEFAULT_ROUTES, revalidator, System::currentTimeMillis);
+        cache.setOrigins(prefs().getStringSet(KEY_ORIGINS, new HashSet<>()));
+        cache.setCookieJar(new WebViewCookies());
+
+        if (getBridge().getWebViewClient() instanceof BlobWebViewClient) {
+            ((BlobWebViewClient) getBridge().getWebViewClient()).addInterceptor(this::intercept);
+        } else {
+            Log.w(TAG, "WebViewClient can't intercept requests; API cache disabled");
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        revalidator.shutdown();
+    }
+
+    @PluginMethod
+    public void configure(PluginCall call) {
+        JSArray origins = call.getArray("origins");
+        if (origins == null) {
+            call.reject("Missing origins");
+            return;
+        }
+        try {
+            List<String> list = origins.toList();
+            Set<String> stored = new HashSet<>(list);
+            cache.setOrigins(stored);
+            prefs().edit().putStringSet(KEY_ORIGINS, stored).apply();
+        } catch (JSONException e) {
+            call.reject("Failed to configure API cache: " + e.getMessage());
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        ApiCache.Metrics metrics = cache.metrics();
+        JSObject result = new JSObject();
+        result.put("hits", metrics.hits);
+        result.put("staleHits", metrics.staleHits);
+        result.put("misses", metrics.misses);
+        result.put("revalidations", metrics.revalidations);
+        result.put("notModified", metrics.notModified);
+        result.put("errors", metrics.errors);
+        result.put("evictions", metrics.evictions);
+        result.put("bytesFromCache", metrics.bytesFromCache);
+        result.put("bytesFromNetwork", metrics.bytesFromNetwork);
+        result.put("entries", metrics.entries);
+        result.put("storedBytes", metrics.storedBytes);
+        call.resolve(result);
+    }
+
+    /** Drops entries whose URL starts with {@code prefix}, e.g. after the page changed that data. */
+    @PluginMethod
+    public void invalidate(PluginCall call) {
+        String prefix = call.getString("prefix");
+        if (prefix == null || prefix.isEmpty()) {
+            call.reject("Missing prefix");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("removed", cache.invalidate(prefix));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        cache.clear();
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    private WebResourceResponse intercept(WebResourceRequest request) {
+        Map<String, String> headers = new HashMap<>();
+        if (request.getRequestHeaders() != null) {
+            headers.putAll(request.getRequestHeaders());
+        }
+        // The server only sends CORS headers when it sees an Origin, and the WebView doesn't always expose it
+        if (!containsIgnoreCase(headers, "Origin")) {
+            Uri local = Uri.parse(getBridge().getLocalUrl());
+            headers.put("Origin", local.getScheme() + "://" + local.getAuthority());
+        }
+        ApiCache.Response response;
+        try {
+            response = cache.handle(request.getMethod(), request.getUrl().toString(), headers);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "API cache failed for " + request.getUrl() + ": " + e.getMessage(), e);
+            return null;
+        }
+        if (response == null) {
+            return null;
+        }
+        // WebResourceResponse refuses redirects; hand those back to the WebView
+        if (response.status >= 300 && response.status < 400) {
+            try {
+                response.body.close();
+            } catch (IOException ignored) {
+                // Nothing was read from it
+            }
+            return null;
+        }
+        return new WebResourceResponse(response.mimeType, response.charset, response.status, response.reason,
+            response.headers, response.body);
+    }
+
+    private static boolean containsIgnoreCase(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SharedPreferences prefs() {
+        return getContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /** Our requests bypass the WebView's network stack, so cookies are bridged by hand. */
+    private static final class WebViewCookies implements ApiCache.CookieJar {
+        @Override
+        public String cookieHeader(String url) {
+            return CookieManager.getInstance().getCookie(url);
+        }
+
+        @Override
+        public void store(String url, List<String> setCookies) {
+            CookieManager cookies = CookieManager.getInstance();
+            for (String cookie : setCookies) {
+                cookies.setCookie(url, cookie);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.cureon.telemed;
+
+/**
+ * Decoders for the Bluetooth SIG health characteristics we subscribe to.
+ * Everything works on the raw notification bytes and writes into caller-owned
+ * primitive arrays, so a notification never allocates.
+ */
+final class BleVitalsDecoder {
+
+    // Heart Rate Measurement (0x2A37) flags
+    private static final int HR_FLAG_UINT16 = 0x01;
+    private static final int HR_FLAG_ENERGY_EXPENDED = 0x08;
+    private static final int HR_FLAG_RR_INTERVALS = 0x10;
+
+    // Blood Pressure Measurement (0x2A35) flags
+    private static final int BP_FLAG_KPA = 0x01;
+    private static final int BP_FLAG_TIMESTAMP = 0x02;
+    private static final int BP_FLAG_PULSE_RATE = 0x04;
+
+    // Temperature Measurement (0x2A1C) flags
+    private static final int TEMP_FLAG_FAHRENHEIT = 0x01;
+
+    private static final float KPA_TO_MMHG = 7.50062f;
+
+    // Indexes into the blood pressure output array
+    static final int BP_SYSTOLIC = 0;
+    static final int BP_DIASTOLIC = 1;
+    static final int BP_MEAN_ARTERIAL = 2;
+    static final int BP_PULSE_RATE = 3;
+    static final int BP_VALUES = 4;
+
+    private BleVitalsDecoder() {
+    }
+
+    /**
+     * Returns the heart rate in bpm, honouring the 8/16-bit format flag,
+     * or -1 if the payload is truncated.
+     */
+    static int decodeHeartRate(byte[] value) {
+        if (value == null || value.length < 2) {
+            return -1;
+        }
+        int flags = value[0] & 0xFF;
+        if ((flags & HR_FLAG_UINT16) != 0) {
+            return value.length < 3 ? -1 : uint16(value, 1);
+        }
+        return value[1] & 0xFF;
+    }
+
+    /**
+     * Copies the RR intervals (converted from 1/1024 s to ms) into {@code out}
+     * and returns how many were written.
+     */
+    static int decodeRrIntervals(byte[] value, float[] out) {
+        if (value == null || value.length < 2) {
+            return 0;
+        }
+        int flags = value[0] & 0xFF;
+        if ((flags & HR_FLAG_RR_INTERVALS) == 0) {
+            return 0;
+        }
+        int offset = (flags & HR_FLAG_UINT16) != 0 ? 3 : 2;
+        if ((flags & HR_FLAG_ENERGY_EXPENDED) != 0) {
+            offset += 2;
+        }
+        int count = 0;
+        while (offset + 1 < value.length && count < out.length) {
+            out[count++] = uint16(value, offset) * 1000f / 1024f;
+            offset += 2;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes systolic, diastolic, mean arterial pressure (mmHg) and pulse rate
+     * into {@code out}. Fields the cuff did not send are NaN. Returns false if
+     * the payload is truncated.
+     */
+    static boolean decodeBloodPressure(byte[] value, float[] out) {
+        if (value == null || value.length < 7 || out.length < BP_VALUES) {
+            return false;
+        }
+        int flags = value[0] & 0xFF;
+        float scale = (flags & BP_FLAG_KPA) != 0 ? KPA_TO_MMHG : 1f;
+        out[BP_SYSTOLIC] = sfloat(value, 1) * scale;
+        out[BP_DIASTOLIC] = sfloat(value, 3) * scale;
+        out[BP_MEAN_ARTERIAL] = sfloat(value, 5) * scale;
+        out[BP_PULSE_RATE] = Float.NaN;
+
+        int offset = 7;
+        if ((flags & BP_FLAG_TIMESTAMP) != 0) {
+            offset += 7;
+        }
+        if ((flags & BP_FLAG_PULSE_RATE) != 0 && offset + 1 < value.length) {
+            out[BP_PULSE_RATE] = sfloat(value, offset);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the temperature in Fahrenheit (the unit the backend thresholds
+     * use), or NaN if the payload is truncated or the reading is invalid.
+     */
+    static float decodeTemperatureFahrenheit(byte[] value) {
+        if (value == null || value.length < 5) {
+            return Float.NaN;
+        }
+        int flags = value[0] & 0xFF;
+        float reading = float32(value, 1);
+        if ((flags & TEMP_FLAG_FAHRENHEIT) != 0) {
+            return reading;
+        }
+        return reading * 9f / 5f + 32f;
+    }
+
+    static int uint16(byte[] value, int offset) {
+        return (value[offset] & 0xFF) | ((value[offset + 1] & 0xFF) << 8);
+    }
+
+    /** IEEE-11073 16-bit SFLOAT: 4-bit exponent, 12-bit mantissa. */
+    static float sfloat(byte[] value, int offset) {
+        int raw = uint16(value, offset);
+        int mantissa = raw & 0x0FFF;
+        switch (mantissa) {
+            case 0x07FF: // NaN
+            case 0x0800: // NRes
+            case 0x0801: // reserved
+                return Float.NaN;
+            case 0x07FE:
+                return Float.POSITIVE_INFINITY;
+            case 0x0802:
+                return Float.NEGATIVE_INFINITY;
+            default:
+                break;
+        }
+        if (mantissa >= 0x0800) {
+            mantissa -= 0x1000;
+        }
+        int exponent = raw >> 12;
+        if (exponent >= 0x8) {
+            exponent -= 0x10;
+        }
+        return (float) (mantissa * Math.pow(10, exponent));
+    }
+
+    /** IEEE-11073 32-bit FLOAT: 8-bit exponent, 24-bit mantissa. */
+    static float float32(byte[] value, int offset) {
+        int mantissa = (value[offset] & 0xFF)
+            | ((value[offset + 1] & 0xFF) << 8)
+            | ((value[offset + 2] & 0xFF) << 16);
+        switch (mantissa) {
+            case 0x007FFFFF: // NaN
+            case 0x00800000: // NRes
+            case 0x00800001: // reserved
+                return Float.NaN;
+            case 0x007FFFFE:
+                return Float.POSITIVE_INFINITY;
+            case 0x00800002:
+                return Float.NEGATIVE_INFINITY;
+            default:
+                break;
+        }
+        if (mantissa >= 0x00800000) {
+            mantissa -= 0x01000000;
+        }
+        int exponent = value[offset + 3];
+        return (float) (mantissa * Math.pow(10, exponent));
+    }
+}
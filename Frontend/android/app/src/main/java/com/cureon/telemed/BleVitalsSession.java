@@ -0,0 +1,192 @@
+package com.cureon.telemed;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+/**
+ * Owns one GATT connection to a watch or cuff. Subscribes to the heart rate,
+ * blood pressure and temperature characteristics and decodes every
+ * notification straight into the {@link VitalsWindowBatcher}.
+ */
+@SuppressLint("MissingPermission") // Checked by VitalsMonitorPlugin before connecting
+final class BleVitalsSession extends BluetoothGattCallback {
+    private static final String TAG = "BleVitalsSession";
+
+    static final UUID HEART_RATE_SERVICE = uuid16(0x180D);
+    static final UUID BLOOD_PRESSURE_SERVICE = uuid16(0x1810);
+    static final UUID HEALTH_THERMOMETER_SERVICE = uuid16(0x1809);
+    private static final UUID HEART_RATE_MEASUREMENT = uuid16(0x2A37);
+    private static final UUID BLOOD_PRESSURE_MEASUREMENT = uuid16(0x2A35);
+    private static final UUID TEMPERATURE_MEASUREMENT = uuid16(0x2A1C);
+    private static final UUID CLIENT_CONFIG = uuid16(0x2902);
+
+    interface Listener {
+        void onConnectionChanged(boolean connected, String[] services);
+    }
+
+    private final VitalsWindowBatcher batcher;
+    private final Listener listener;
+    private final ArrayDeque<BluetoothGattCharacteristic> pendingSubscriptions = new ArrayDeque<>();
+    private final float[] rrScratch = new float[16];
+    private final float[] bpScratch = new float[BleVitalsDecoder.BP_VALUES];
+    private BluetoothGatt gatt;
+
+    BleVitalsSession(VitalsWindowBatcher batcher, Listener listener) {
+        this.batcher = batcher;
+        this.listener = listener;
+    }
+
+    private static UUID uuid16(int shortId) {
+        return UUID.fromString(String.format("0000%04x-0000-1000-8000-00805f9b34fb", shortId));
+    }
+
+    void connect(Context context, BluetoothDevice device) {
+        gatt = device.connectGatt(context, false, this, BluetoothDevice.TRANSPORT_LE);
+    }
+
+    void close() {
+        synchronized (pendingSubscriptions) {
+            pendingSubscriptions.clear();
+        }
+        if (gatt != null) {
+            gatt.disconnect();
+            gatt.close();
+            gatt = null;
+        }
+    }
+
+    @Override
+    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        if (newState == BluetoothProfile.STATE_CONNECTED) {
+            Log.d(TAG, "Connected, discovering services");
+            // Vitals arrive about once a second; a slow connection interval saves radio time
+            gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER);
+            gatt.discoverServices();
+        } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+            Log.d(TAG, "Disconnected, status " + status);
+            listener.onConnectionChanged(false, new String[0]);
+        }
+    }
+
+    @Override
+    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            Log.e(TAG, "Service discovery failed: " + status);
+            return;
+        }
+        String[] found = new String[3];
+        int count = 0;
+        synchronized (pendingSubscriptions) {
+            pendingSubscriptions.clear();
+            if (queueCharacteristic(gatt, HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT)) {
+                found[count++] = "heartRate";
+            }
+            if (queueCharacteristic(gatt, BLOOD_PRESSURE_SERVICE, BLOOD_PRESSURE_MEASUREMENT)) {
+                found[count++] = "bloodPressure";
+            }
+            if (queueCharacteristic(gatt, HEALTH_THERMOMETER_SERVICE, TEMPERATURE_MEASUREMENT)) {
+                found[count++] = "temperature";
+            }
+        }
+        String[] services = new String[count];
+        System.arraycopy(found, 0, services, 0, count);
+        listener.onConnectionChanged(true, services);
+        subscribeNext(gatt);
+    }
+
+    private boolean queueCharacteristic(BluetoothGatt gatt, UUID serviceId, UUID characteristicId) {
+        BluetoothGattService service = gatt.getService(serviceId);
+        if (service == null) {
+            return false;
+        }
+        BluetoothGattCharacteristic characteristic = service.getCharacteristic(characteristicId);
+        if (characteristic == null) {
+            return false;
+        }
+        pendingSubscriptions.add(characteristic);
+        return true;
+    }
+
+    // GATT allows one outstanding descriptor write, so subscriptions are chained
+    private void subscribeNext(BluetoothGatt gatt) {
+        BluetoothGattCharacteristic characteristic;
+        synchronized (pendingSubscriptions) {
+            characteristic = pendingSubscriptions.poll();
+        }
+        if (characteristic == null) {
+            return;
+        }
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CONFIG);
+        if (descriptor == null) {
+            subscribeNext(gatt);
+            return;
+        }
+        gatt.setCharacteristicNotification(characteristic, true);
+        // Blood pressure and temperature measurements are indicated, heart rate is notified
+        byte[] enable = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0
+            ? BluetoothGattDescriptor.ENABLE_INDICATION_VALUE
+            : BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            gatt.writeDescriptor(descriptor, enable);
+        } else {
+            descriptor.setValue(enable);
+            gatt.writeDescriptor(descriptor);
+        }
+    }
+
+    @Override
+    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            Log.w(TAG, "Subscribe failed for " + descriptor.getCharacteristic().getUuid() + ": " + status);
+        }
+        subscribeNext(gatt);
+    }
+
+    @Override
+    public void onCharacteristicChanged(@NonNull BluetoothGatt gatt,
+            @NonNull BluetoothGattCharacteristic characteristic, @NonNull byte[] value) {
+        onMeasurement(characteristic.getUuid(), value);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+        // Android 13+ delivers the value through the overload above
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) {
+            onMeasurement(characteristic.getUuid(), characteristic.getValue());
+        }
+    }
+
+    private void onMeasurement(UUID characteristic, byte[] value) {
+        long now = SystemClock.elapsedRealtime();
+        if (HEART_RATE_MEASUREMENT.equals(characteristic)) {
+            batcher.recordHeartRate(now, BleVitalsDecoder.decodeHeartRate(value));
+            int rrCount = BleVitalsDecoder.decodeRrIntervals(value, rrScratch);
+            if (rrCount > 0) {
+                batcher.recordRrIntervals(now, rrScratch, rrCount);
+            }
+        } else if (BLOOD_PRESSURE_MEASUREMENT.equals(characteristic)) {
+            if (BleVitalsDecoder.decodeBloodPressure(value, bpScratch)) {
+                batcher.recordBloodPressure(now, bpScratch[BleVitalsDecoder.BP_SYSTOLIC],
+                    bpScratch[BleVitalsDecoder.BP_DIASTOLIC]);
+            }
+        } else if (TEMPERATURE_MEASUREMENT.equals(characteristic)) {
+            batcher.recordTemperature(now, BleVitalsDecoder.decodeTemperatureFahrenheit(value));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.annotation.NonNull;
+import androidx.webkit.JavaScriptReplyProxy;
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Binary transfer between the WebView and native code without base64.
+ *
+ * <p>Native to WebView: blobs registered in {@link BlobStore} are served at
+ * {@code /_blob/<id>} by {@link BlobWebViewClient}. WebView to native: the
+ * page posts ArrayBuffer chunks on the {@code CureonBlob} message channel,
+ * framed by {@code begin}/{@code end} JSON messages, and gets a blob id back.
+ * Either way the blob stays alive until {@code free} is called.
+ */
+@CapacitorPlugin(name = "BlobChannel")
+public class BlobChannelPlugin extends Plugin implements WebViewCompat.WebMessageListener {
+    private static final String TAG = "BlobChannelPlugin";
+    private static final String CHANNEL = "CureonBlob";
+
+    private BlobStore store;
+    // Chunk writes are disk I/O; keep them off the UI thread but in arrival order
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private BlobStore.Upload upload;
+    private int uploadTx;
+    private String uploadError;
+
+    static BlobStore store(Context context) {
+        return BlobStore.shared(new File(context.getCacheDir(), "blobs"));
+    }
+
+    /** What JS gets in place of the bytes: {@code {id, url, size, mimeType}}. */
+    static JSObject handle(BlobStore.Entry entry) {
+        JSObject handle = new JSObject();
+        handle.put("id", entry.id);
+        handle.put("url", BlobStore.PATH_PREFIX + entry.id);
+        handle.put("size", entry.length);
+        handle.put("mimeType", entry.mimeType);
+        return handle;
+    }
+
+    @Override
+    public void load() {
+        store = store(getContext());
+        writer.execute(store::deleteOrphans);
+        getBridge().setWebViewClient(new BlobWebViewClient(getBridge(), store));
+
+        WebView webView = getBridge().getWebView();
+        if (WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_LISTENER)
+                && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_ARRAY_BUFFER)) {
+            WebViewCompat.addWebMessageListener(webView, CHANNEL,
+                Collections.singleton(getBridge().getLocalUrl()), this);
+        } else {
+            // Pages feature-detect window.CureonBlob and keep using base64
+            Log.w(TAG, "WebView too old for ArrayBuffer messages; uploads disabled");
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        writer.shutdown();
+    }
+
+    @PluginMethod
+    public void free(PluginCall call) {
+        String id = call.getString("id");
+        JSObject result = new JSObject();
+        result.put("success", id != null && store.free(id));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void freeAll(PluginCall call) {
+        store.freeAll();
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void info(PluginCall call) {
+        BlobStore.Entry entry = store.get(call.getString("id"));
+        if (entry == null) {
+            call.reject("Unknown blob");
+            return;
+        }
+        call.resolve(handle(entry));
+    }
+
+    /** Exposes a file another plugin wrote (camera, downloads) without reading it into JS. */
+    @PluginMethod
+    public void registerFile(PluginCall call) {
+        String path = call.getString("path", "");
+        if (path == null || path.isEmpty()) {
+            call.reject("Invalid path");
+            return;
+        }
+        File file = path.startsWith("file://") ? new File(Uri.parse(path).getPath()) : new File(path);
+        try {
+            String id = store.putFile(file, call.getString("mimeType", "application/octet-stream"),
+                call.getBoolean("deleteOnFree", false));
+            call.resolve(handle(store.get(id)));
+        } catch (FileNotFoundException e) {
+            call.reject("Failed to register file: " + e.getMessage());
+        }
+    }
+
+    // Runs on the UI thread; every message is handed to the writer in order
+    @Override
+    public void onPostMessage(@NonNull WebView view, @NonNull WebMessageCompat message, @NonNull Uri sourceOrigin,
+            boolean isMainFrame, @NonNull JavaScriptReplyProxy replyProxy) {
+        if (message.getType() == WebMessageCompat.TYPE_ARRAY_BUFFER) {
+            byte[] chunk = message.getArrayBuffer();
+            writer.execute(() -> writeChunk(chunk, replyProxy));
+            return;
+        }
+        try {
+            JSONObject command = new JSONObject(message.getData());
+            int tx = command.getInt("tx");
+            String op = command.getString("op");
+            String mimeType = command.optString("type", "application/octet-stream");
+            writer.execute(() -> handleCommand(op, tx, mimeType, replyProxy));
+        } catch (JSONException | NullPointerException e) {
+            Log.w(TAG, "Ignoring malformed blob message");
+        }
+    }
+
+    private void handleCommand(String op, int tx, String mimeType, JavaScriptReplyProxy replyProxy) {
+        if ("begin".equals(op)) {
+            if (upload != null) {
+                // A reload abandoned the previous transfer mid-stream
+                upload.abort();
+            }
+            uploadTx = tx;
+            uploadError = null;
+            try {
+                upload = store.beginUpload(mimeType);
+            } catch (IOException e) {
+                upload = null;
+                uploadError = e.getMessage();
+                reply(replyProxy, tx, null, uploadError);
+            }
+        } else if (tx != uploadTx) {
+            reply(replyProxy, tx, null, "Unknown transfer");
+        } else if ("end".equals(op)) {
+            finishUpload(tx, replyProxy);
+        } else if (upload != null) {
+            upload.abort();
+            upload = null;
+        }
+    }
+
+    private void writeChunk(byte[] chunk, JavaScriptReplyProxy replyProxy) {
+        if (upload == null) {
+            return;
+        }
+        try {
+            upload.write(ByteBuffer.wrap(chunk));
+            // Acks let the page keep a bounded number of chunks in flight
+            reply(replyProxy, uploadTx, "{\"tx\":" + uploadTx + ",\"written\":" + upload.written() + "}", null);
+        } catch (IOException e) {
+            Log.e(TAG, "Blob upload write failed: " + e.getMessage(), e);
+            uploadError = e.getMessage();
+            upload.abort();
+            upload = null;
+            reply(replyProxy, uploadTx, null, uploadError);
+        }
+    }
+
+    private void finishUpload(int tx, JavaScriptReplyProxy replyProxy) {
+        if (upload == null) {
+            reply(replyProxy, tx, null, uploadError != null ? uploadError : "Transfer was aborted");
+            return;
+        }
+        try {
+            String id = upload.finish();
+            JSObject handle = handle(store.get(id));
+            handle.put("tx", tx);
+            reply(replyProxy, tx, handle.toString(), null);
+        } catch (IOException e) {
+            Log.e(TAG, "Blob upload failed: " + e.getMessage(), e);
+            upload.abort();
+            reply(replyProxy, tx, null, e.getMessage());
+        } finally {
+            upload = null;
+        }
+    }
+
+    private void reply(JavaScriptReplyProxy replyProxy, int tx, String json, String error) {
+        String message;
+        if (json != null) {
+            message = json;
+        } else {
+            JSObject failure = new JSObject();
+            failure.put("tx", tx);
+            failure.put("error", error);
+            message = failure.toString();
+        }
+        getBridge().executeOnMainThread(() -> replyProxy.postMessage(message));
+    }
+}
@@ -0,0 +1,414 @@
+package com.cureon.telemed;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide table of binary blobs the WebView can read with
+ * {@code fetch("/_blob/<id>")} instead of receiving them as base64 strings.
+ *
+ * <p>A blob is either a file (frames, downloads, reports) or a byte array
+ * that native code already holds. Nothing is copied on registration and
+ * reads stream straight from the source, honouring HTTP Range requests so
+ * {@code <video>} and {@code <img>} can seek. Blobs live until they are
+ * {@link #free freed}; owned files are deleted at that point.
+ */
+final class BlobStore {
+    static final String PATH_PREFIX = "/_blob/";
+    /** Returned by {@link #parseRange} for a range outside the blob. */
+    static final long[] UNSATISFIABLE = new long[0];
+
+    private static final int ID_BYTES = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static BlobStore shared;
+
+    private final File spillDir;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long memoryBytes;
+    private long uploadCounter;
+
+    BlobStore(File spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    /** The store backing {@code /_blob/}; {@code spillDir} only counts on first call. */
+    static synchronized BlobStore shared(File spillDir) {
+        if (shared == null) {
+            shared = new BlobStore(spillDir);
+        }
+        return shared;
+    }
+
+    static final class Entry {
+        final String id;
+        final String mimeType;
+        final long length;
+        final File file;
+        final byte[] data;
+        final boolean owned;
+
+        Entry(String id, String mimeType, long length, File file, byte[] data, boolean owned) {
+            this.id = id;
+            this.mimeType = mimeType;
+            this.length = length;
+            this.file = file;
+            this.data = data;
+            this.owned = owned;
+        }
+
+        /** Streams {@code count} bytes starting at {@code start} without buffering the blob. */
+        InputStream open(long start, long count) throws IOException {
+            if (data != null) {
+                return new ByteArrayInputStream(data, (int) start, (int) count);
+            }
+            FileInputStream in = new FileInputStream(file);
+            try {
+                in.getChannel().position(start);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return new BoundedInputStream(in, count);
+        }
+    }
+
+    /** An HTTP-shaped answer for one {@code /_blob/} request. */
+    static final class Response {
+        final int status;
+        final String reason;
+        final String mimeType;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final InputStream body;
+
+        Response(int status, String reason, String mimeType, InputStream body) {
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            // WebView treats a null body as a network error rather than an empty reply
+            this.body = body == null ? new ByteArrayInputStream(new byte[0]) : body;
+        }
+    }
+
+    /**
+     * Registers a file. With {@code owned} the file is deleted when the blob
+     * is freed; otherwise it is left for whoever produced it.
+     */
+    String putFile(File file, String mimeType, boolean owned) throws FileNotFoundException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        String id = newId();
+        synchronized (this) {
+            entries.put(id, new Entry(id, mimeType, file.length(), file, null, owned));
+        }
+        return id;
+    }
+
+    /** Registers a byte array by reference. The caller must not modify it afterwards. */
+    String putBytes(byte[] data, String mimeType) {
+        String id = newId();
+        synchronized (this) {
+            entries.put(id, new Entry(id, mimeType, data.length, null, data, false));
+            memoryBytes += data.length;
+        }
+        return id;
+    }
+
+    synchronized Entry get(String id) {
+        return id == null ? null : entries.get(id);
+    }
+
+    /** Drops a blob and deletes its file if the store owns it. Returns false for unknown ids. */
+    boolean free(String id) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(id);
+            if (entry == null) {
+                return false;
+            }
+            if (entry.data != null) {
+                memoryBytes -= entry.length;
+            }
+        }
+        if (entry.owned) {
+            entry.file.delete();
+        }
+        return true;
+    }
+
+    void freeAll() {
+        String[] ids;
+        synchronized (this) {
+            ids = entries.keySet().toArray(new String[0]);
+        }
+        for (String id : ids) {
+            free(id);
+        }
+    }
+
+    /**
+     * Frees every file-backed blob inside {@code dir}, for a producer about to
+     * delete its files so the page can't keep handles to them. Returns how many.
+     */
+    int freeUnder(File dir) {
+        String prefix = dir.getAbsolutePath() + File.separator;
+        List<String> ids = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                if (entry.file != null && entry.file.getAbsolutePath().startsWith(prefix)) {
+                    ids.add(entry.id);
+                }
+            }
+        }
+        for (String id : ids) {
+            free(id);
+        }
+        return ids.size();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** Bytes held by array-backed blobs; file-backed blobs cost nothing here. */
+    synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /** Removes upload files left behind by a previous process; their ids are gone with it. */
+    void deleteOrphans() {
+        File[] files = spillDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            boolean live = false;
+            synchronized (this) {
+                for (Entry entry : entries.values()) {
+                    if (file.equals(entry.file)) {
+                        live = true;
+                        break;
+                    }
+                }
+            }
+            if (!live) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Starts a WebView-to-native transfer that spills to a file in the store's directory. */
+    Upload beginUpload(String mimeType) throws IOException {
+        if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+            throw new IOException("Cannot create " + spillDir);
+        }
+        long n;
+        synchronized (this) {
+            n = ++uploadCounter;
+        }
+        return new Upload(new File(spillDir, "upload-" + n + "-" + System.nanoTime() + ".bin"), mimeType);
+    }
+
+    final class Upload {
+        private final File file;
+        private final String mimeType;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private long written;
+
+        private Upload(File file, String mimeType) throws IOException {
+            this.file = file;
+            this.mimeType = mimeType;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+        }
+
+        void write(ByteBuffer chunk) throws IOException {
+            while (chunk.hasRemaining()) {
+                written += channel.write(chunk);
+            }
+        }
+
+        void write(byte[] chunk, int offset, int length) throws IOException {
+            write(ByteBuffer.wrap(chunk, offset, length));
+        }
+
+        long written() {
+            return written;
+        }
+
+        /** Closes the file and registers it as an owned blob. */
+        String finish() throws IOException {
+            raf.close();
+            return putFile(file, mimeType, true);
+        }
+
+        void abort() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+                // Deleting the file below is all that matters
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Answers a request for {@code path}, which must start with
+     * {@link #PATH_PREFIX}. Returns null for other paths so the caller can
+     * fall through to its normal handler.
+     */
+    Response serve(String path, String rangeHeader) {
+        if (path == null || !path.startsWith(PATH_PREFIX)) {
+            return null;
+        }
+        Entry entry = get(path.substring(PATH_PREFIX.length()));
+        if (entry == null) {
+            return new Response(404, "Not Found", "text/plain", null);
+        }
+        long length = entry.length;
+        long[] range = parseRange(rangeHeader, length);
+        if (range == UNSATISFIABLE) {
+            Response response = new Response(416, "Range Not Satisfiable", "text/plain", null);
+            response.headers.put("Content-Range", "bytes */" + length);
+            return response;
+        }
+
+        long start = range == null ? 0 : range[0];
+        long count = range == null ? length : range[1] - range[0] + 1;
+        InputStream body;
+        try {
+            body = entry.open(start, count);
+        } catch (IOException e) {
+            // Producer deleted the file without freeing the blob
+            return new Response(404, "Not Found", "text/plain", null);
+        }
+        Response response = range == null
+            ? new Response(200, "OK", entry.mimeType, body)
+            : new Response(206, "Partial Content", entry.mimeType, body);
+        response.headers.put("Accept-Ranges", "bytes");
+        response.headers.put("Content-Length", Long.toString(count));
+        response.headers.put("Cache-Control", "no-store");
+        if (range != null) {
+            response.headers.put("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+        return response;
+    }
+
+    /**
+     * Parses a single {@code bytes=} range into an inclusive {start, end}.
+     * Returns null when the whole blob should be sent (no header, a
+     * multi-range or a unit we don't speak) and {@link #UNSATISFIABLE} when
+     * the range lies outside the blob.
+     */
+    static long[] parseRange(String header, long length) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        value = value.substring("bytes=".length()).trim();
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = value.substring(0, dash).trim();
+            String last = value.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix form: the final N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            if (start < 0 || start >= length || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String newId() {
+        byte[] bytes = new byte[ID_BYTES];
+        random.nextBytes(bytes);
+        char[] out = new char[ID_BYTES * 2];
+        for (int i = 0; i < ID_BYTES; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buf, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.cureon.telemed;
+
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.BridgeWebViewClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Capacitor's WebViewClient plus a {@code /_blob/<id>} route on the app's
+ * own origin. Blob bodies are handed to the WebView as streams, so the bytes
+ * go from file or array to Chromium's network stack without a JS string.
+ *
+ * <p>Other plugins can answer requests here too through {@link #addInterceptor};
+ * the first non-null response wins, otherwise Capacitor handles the request.
+ */
+class BlobWebViewClient extends BridgeWebViewClient {
+    /** Called on the WebView's network thread; return null to pass. */
+    interface Interceptor {
+        WebResourceResponse intercept(WebResourceRequest request);
+    }
+
+    private final Bridge bridge;
+    private final BlobStore store;
+    private final List<Interceptor> interceptors = new CopyOnWriteArrayList<>();
+
+    BlobWebViewClient(Bridge bridge, BlobStore store) {
+        super(bridge);
+        this.bridge = bridge;
+        this.store = store;
+    }
+
+    void addInterceptor(Interceptor interceptor) {
+        interceptors.add(interceptor);
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        Uri url = request.getUrl();
+        String path = url.getPath();
+        if (path != null && path.startsWith(BlobStore.PATH_PREFIX) && isLocal(url)) {
+            BlobStore.Response blob = store.serve(path, header(request, "Range"));
+            return new WebResourceResponse(blob.mimeType, null, blob.status, blob.reason, blob.headers, blob.body);
+        }
+        for (Interceptor interceptor : interceptors) {
+            WebResourceResponse response = interceptor.intercept(request);
+            if (response != null) {
+                return response;
+            }
+        }
+        return super.shouldInterceptRequest(view, request);
+    }
+
+    // Only the app origin; a remote page that happens to use /_blob/ is none of our business
+    private boolean isLocal(Uri url) {
+        Uri local = Uri.parse(bridge.getLocalUrl());
+        return url.getHost() != null && url.getHost().equals(local.getHost())
+            && url.getScheme() != null && url.getScheme().equals(local.getScheme());
+    }
+
+    private static String header(WebResourceRequest request, String name) {
+        Map<String, String> headers = request.getRequestHeaders();
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package com.cureon.telemed;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Which incoming call, if any, is ringing. The server may deliver an invite
+ * more than once (reconnects, several open sessions), a caller can hang up
+ * before we answer and an unanswered call stops ringing on its own; this
+ * keeps those decisions out of the service so they can be tested. Times are
+ * elapsedRealtime milliseconds.
+ *
+ * <p>Not thread-safe; {@link CallSignalService} calls it from one thread.
+ */
+final class CallInvites {
+    static final String RING = "ring";
+    static final String DUPLICATE = "duplicate";
+    static final String BUSY = "busy";
+    static final String INVALID = "invalid";
+
+    /** Same as the web client's countdown. */
+    static final long RING_TIMEOUT_MS = 30_000;
+    private static final int REMEMBERED = 64;
+
+    static final class Invite {
+        final String callId;
+        final String roomId;
+        final String callerId;
+        final String callerName;
+        final String callerRole;
+        final boolean video;
+        final long sentAtMs;
+        long receivedAt;
+
+        Invite(String callId, String roomId, String callerId, String callerName, String callerRole,
+                boolean video, long sentAtMs) {
+            this.callId = callId;
+            this.roomId = roomId;
+            this.callerId = callerId;
+            this.callerName = callerName;
+            this.callerRole = callerRole;
+            this.video = video;
+            this.sentAtMs = sentAtMs;
+        }
+
+        /** Parses the server's incoming-call payload; null when it names no room. */
+        static Invite fromJson(JSONObject json) {
+            String roomId = json.optString("roomId", "");
+            if (roomId.isEmpty()) {
+                return null;
+            }
+            return new Invite(json.optString("callId", roomId), roomId, json.optString("callerId", ""),
+                json.optString("callerName", "Doctor"), json.optString("callerRole", "doctor"),
+                json.optBoolean("isVideoCall", true), json.optLong("sentAt", 0));
+        }
+    }
+
+    private Invite ringing;
+    // Calls already rung, answered or cancelled, so a redelivery doesn't ring again
+    private final Map<String, Boolean> settled = new LinkedHashMap<String, Boolean>(REMEMBERED, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > REMEMBERED;
+        }
+    };
+
+    /** Whether the invite should ring: {@link #RING}, {@link #DUPLICATE}, {@link #BUSY} or {@link #INVALID}. */
+    String offer(Invite invite, long now) {
+        expire(now);
+        if (invite == null) {
+            return INVALID;
+        }
+        if (settled.containsKey(invite.callId) || (ringing != null && ringing.callId.equals(invite.callId))) {
+            return DUPLICATE;
+        }
+        if (ringing != null) {
+            settled.put(invite.callId, Boolean.TRUE);
+            return BUSY;
+        }
+        invite.receivedAt = now;
+        ringing = invite;
+        return RING;
+    }
+
+    /** The call currently ringing, or null. Leaves a rung-out call for {@link #expire} to report. */
+    Invite ringing(long now) {
+        return ringing != null && now - ringing.receivedAt < RING_TIMEOUT_MS ? ringing : null;
+    }
+
+    /** Stops ringing for an answered or declined call; null if it isn't the one ringing. */
+    Invite answer(String callId, long now) {
+        return settle(callId, now);
+    }
+
+    /** The caller hung up or another session answered. */
+    Invite cancel(String callId, long now) {
+        settled.put(callId, Boolean.TRUE);
+        return settle(callId, now);
+    }
+
+    /** The ringing call once it has rung out, otherwise null. */
+    Invite expire(long now) {
+        if (ringing != null && now - ringing.receivedAt >= RING_TIMEOUT_MS) {
+            Invite missed = ringing;
+            settled.put(missed.callId, Boolean.TRUE);
+            ringing = null;
+            return missed;
+        }
+        return null;
+    }
+
+    private Invite settle(String callId, long now) {
+        expire(now);
+        if (ringing == null || !ringing.callId.equals(callId)) {
+            return null;
+        }
+        Invite invite = ringing;
+        settled.put(callId, Boolean.TRUE);
+        ringing = null;
+        return invite;
+    }
+}
@@ -0,0 +1,153 @@
+package com.cureon.telemed;
+
+import java.util.Arrays;
+
+/**
+ * Time-to-media bookkeeping for one call join. {@link ZegoCallPlugin} starts
+ * a join and {@link ZegoVideoCallActivity} marks milestones as the SDK
+ * reports them; each new milestone is pushed to the listener with every
+ * offset measured from the join request. Clock values come from the caller
+ * (elapsedRealtime on device) so this runs on the JVM. Each join is also an
+ * async {@link PerfTrace} section with the milestones as instants in it.
+ */
+final class CallLatencyTracker {
+    static final int JOIN_REQUESTED = 0;
+    static final int ACTIVITY_CREATED = 1;
+    static final int FRAGMENT_ATTACHED = 2;
+    static final int ROOM_JOINED = 3;
+    static final int FIRST_LOCAL_FRAME = 4;
+    static final int FIRST_REMOTE_FRAME = 5;
+    static final int MARKS = 6;
+
+    static final String[] NAMES = {
+        "joinRequested", "activityCreated", "fragmentAttached", "roomJoined", "firstLocalFrame", "firstRemoteFrame"
+    };
+
+    interface Listener {
+        void onMilestone(Report report);
+    }
+
+    /** Offsets in ms from the join request; -1 for milestones not reached yet. */
+    static final class Report {
+        final String roomID;
+        final boolean warm;
+        final int latest;
+        final long[] sinceJoinMs;
+
+        Report(String roomID, boolean warm, int latest, long[] sinceJoinMs) {
+            this.roomID = roomID;
+            this.warm = warm;
+            this.latest = latest;
+            this.sinceJoinMs = sinceJoinMs;
+        }
+
+        boolean complete() {
+            for (long value : sinceJoinMs) {
+                if (value < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final CallLatencyTracker SHARED = new CallLatencyTracker();
+    private static final int TRACE_JOIN = PerfTrace.shared().name("call.join");
+    private static final int[] TRACE_MARKS = new int[MARKS];
+
+    static {
+        for (int i = 0; i < MARKS; i++) {
+            TRACE_MARKS[i] = PerfTrace.shared().name("call." + NAMES[i] + "Ms");
+        }
+    }
+
+    private final long[] marks = new long[MARKS];
+    private String roomID;
+    private boolean warm;
+    private boolean active;
+    private int traceCookie;
+    private Listener listener;
+
+    CallLatencyTracker() {
+        Arrays.fill(marks, -1);
+    }
+
+    /** The plugin and the call activity live on different sides of an Intent, so they share one. */
+    static CallLatencyTracker shared() {
+        return SHARED;
+    }
+
+    synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Starts timing a join; any unfinished previous join is discarded. */
+    void begin(String roomID, boolean warm, long nowMs) {
+        Report report;
+        Listener target;
+        synchronized (this) {
+            endTrace();
+            traceCookie++;
+            PerfTrace.shared().beginAsync(TRACE_JOIN, traceCookie);
+            Arrays.fill(marks, -1);
+            this.roomID = roomID;
+            this.warm = warm;
+            this.active = true;
+            marks[JOIN_REQUESTED] = nowMs;
+            report = report(JOIN_REQUESTED);
+            target = listener;
+        }
+        if (target != null) {
+            target.onMilestone(report);
+        }
+    }
+
+    /**
+     * Records a milestone the first time it happens during the current join.
+     * Repeats (a second remote stream, a camera flip) are ignored and return false.
+     */
+    boolean mark(int milestone, long nowMs) {
+        Report report;
+        Listener target;
+        synchronized (this) {
+            if (!active || marks[milestone] >= 0) {
+                return false;
+            }
+            marks[milestone] = Math.max(nowMs, marks[JOIN_REQUESTED]);
+            report = report(milestone);
+            target = listener;
+            PerfTrace.shared().instant(TRACE_MARKS[milestone], report.sinceJoinMs[milestone]);
+            if (report.complete()) {
+                endTrace();
+            }
+        }
+        if (target != null) {
+            target.onMilestone(report);
+        }
+        return true;
+    }
+
+    /** Stops timing, e.g. when the call is left before media arrived. */
+    synchronized void end() {
+        endTrace();
+    }
+
+    private void endTrace() {
+        if (active) {
+            active = false;
+            PerfTrace.shared().endAsync(TRACE_JOIN, traceCookie);
+        }
+    }
+
+    synchronized Report snapshot() {
+        return report(JOIN_REQUESTED);
+    }
+
+    private Report report(int latest) {
+        long[] offsets = new long[MARKS];
+        for (int i = 0; i < MARKS; i++) {
+            offsets[i] = marks[i] < 0 ? -1 : marks[i] - marks[JOIN_REQUESTED];
+        }
+        return new Report(roomID, warm, latest, offsets);
+    }
+}
@@ -0,0 +1,266 @@
+package com.cureon.telemed;
+
+/**
+ * Chooses the video profile for a call and walks it up and down a fixed
+ * ladder as conditions change, ending in audio-only when even the smallest
+ * video can't get through.
+ *
+ * <p>The starting rung comes from the link's advertised upstream bandwidth.
+ * After that, one quality sample per second drives the changes:
+ * <ul>
+ *   <li>a few bad seconds in a row step down one rung;</li>
+ *   <li>a dead link drops straight to audio-only;</li>
+ *   <li>a long run of good seconds steps up one rung, never above what the
+ *       network can carry.</li>
+ * </ul>
+ * An up-step that has to be undone soon after doubles the hold before the
+ * next attempt, so a flapping link settles instead of oscillating. While
+ * audio-only, {@link #requestSnapshot} briefly turns on a still-image
+ * profile so the doctor can still see the patient.
+ *
+ * <p>Pure state machine: clock, network and quality readings are all
+ * passed in, so recorded traces can be replayed on the JVM.
+ */
+final class CallProfilePolicy {
+    static final int TRANSPORT_OTHER = 0;
+    static final int TRANSPORT_WIFI = 1;
+    static final int TRANSPORT_CELLULAR = 2;
+    static final int TRANSPORT_ETHERNET = 3;
+
+    static final class Profile {
+        final String name;
+        final int width;
+        final int height;
+        final int fps;
+        final int maxKbps;
+        final boolean video;
+
+        Profile(String name, int width, int height, int fps, int maxKbps, boolean video) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.fps = fps;
+            this.maxKbps = maxKbps;
+            this.video = video;
+        }
+    }
+
+    /** Best first; the last rung is audio-only. */
+    static final Profile[] LADDER = {
+        new Profile("540p", 960, 540, 24, 1200, true),
+        new Profile("360p", 640, 360, 15, 600, true),
+        new Profile("270p", 480, 270, 12, 350, true),
+        new Profile("180p", 320, 180, 10, 150, true),
+        new Profile("audio", 0, 0, 0, 48, false),
+    };
+    static final int AUDIO_ONLY = LADDER.length - 1;
+    static final Profile SNAPSHOT = new Profile("snapshot", 640, 360, 2, 200, true);
+
+    /** What ConnectivityManager tells us about the current default network. */
+    static final class Network {
+        final int transport;
+        final int upKbps;
+        final boolean metered;
+
+        Network(int transport, int upKbps, boolean metered) {
+            this.transport = transport;
+            this.upKbps = upKbps;
+            this.metered = metered;
+        }
+    }
+
+    static final class Decision {
+        final int level;
+        final Profile profile;
+        final boolean hevc;
+        final String reason;
+
+        Decision(int level, Profile profile, boolean hevc, String reason) {
+            this.level = level;
+            this.profile = profile;
+            this.hevc = hevc;
+            this.reason = reason;
+        }
+
+        boolean isSnapshot() {
+            return profile == SNAPSHOT;
+        }
+    }
+
+    // Share of the advertised uplink we are willing to spend on video
+    private static final double LINK_HEADROOM = 0.6;
+    private static final int STEP_DOWN_SECONDS = 4;
+    private static final int DEAD_LINK_SECONDS = 2;
+    private static final int MIN_UP_HOLD_SECONDS = 10;
+    private static final int MAX_UP_HOLD_SECONDS = 120;
+    // Leaving audio-only costs the most if it fails, so it waits longer
+    private static final int AUDIO_RECOVERY_SECONDS = 20;
+    private static final long FAILED_PROBE_WINDOW_MS = 30_000;
+    static final long SNAPSHOT_MS = 4_000;
+
+    private final boolean hevcAllowed;
+    private int level = -1;
+    private int ceiling = LADDER.length - 2;
+    private int badSeconds;
+    private int deadSeconds;
+    private int goodSeconds;
+    private int upHoldSeconds = MIN_UP_HOLD_SECONDS;
+    private long lastUpStepAtMs = Long.MIN_VALUE / 2;
+    private long lastChangeAtMs;
+    private long snapshotUntilMs = -1;
+
+    /**
+     * {@code hevcAllowed} should only be true when this device has a hardware
+     * HEVC encoder and the other side is known to decode it.
+     */
+    CallProfilePolicy(boolean hevcAllowed) {
+        this.hevcAllowed = hevcAllowed;
+    }
+
+    int level() {
+        return level;
+    }
+
+    int ceiling() {
+        return ceiling;
+    }
+
+    boolean isAudioOnly() {
+        return level == AUDIO_ONLY && snapshotUntilMs < 0;
+    }
+
+    /** The best rung a link can carry; unknown bandwidth falls back to a per-transport guess. */
+    static int ceilingFor(Network network) {
+        if (network == null) {
+            return 1;
+        }
+        int upKbps = network.upKbps > 0 ? network.upKbps : defaultUpKbps(network.transport);
+        double budget = upKbps * LINK_HEADROOM;
+        for (int i = 0; i < AUDIO_ONLY; i++) {
+            if (LADDER[i].maxKbps <= budget) {
+                // Metered links never start in the top rung; patients pay for the data
+                return network.metered && i == 0 ? 1 : i;
+            }
+        }
+        return AUDIO_ONLY;
+    }
+
+    private static int defaultUpKbps(int transport) {
+        switch (transport) {
+            case TRANSPORT_WIFI:
+            case TRANSPORT_ETHERNET:
+                return 2_500;
+            case TRANSPORT_CELLULAR:
+                return 700;
+            default:
+                return 500;
+        }
+    }
+
+    /** Initial profile for the call. Always returns a decision. */
+    Decision start(Network network, long nowMs) {
+        ceiling = ceilingFor(network);
+        level = ceiling;
+        resetStreaks();
+        lastChangeAtMs = nowMs;
+        return decision("start");
+    }
+
+    /** Default network changed or its capabilities moved. Returns a decision only if the profile changes. */
+    Decision onNetworkChanged(Network network, long nowMs) {
+        int next = ceilingFor(network);
+        // Capabilities callbacks repeat as estimates drift; only a new ceiling matters
+        if (next == ceiling) {
+            return null;
+        }
+        ceiling = next;
+        resetStreaks();
+        if (level < ceiling && snapshotUntilMs < 0) {
+            // Better profile than the new link can carry: drop now rather than wait for losses
+            return change(ceiling, nowMs, "network");
+        }
+        return null;
+    }
+
+    /**
+     * One second of feedback. {@code qualityLevel} is the SDK's 0 (excellent)
+     * .. 4 (dead), -1 if unknown; {@code loss} is 0..1. Returns a decision
+     * only if the profile changes.
+     */
+    Decision onQuality(long nowMs, int qualityLevel, float rttMs, float loss) {
+        if (level < 0) {
+            return null;
+        }
+        if (snapshotUntilMs >= 0) {
+            // The snapshot burst is short and deliberate; don't judge the link by it
+            if (nowMs < snapshotUntilMs) {
+                return null;
+            }
+            snapshotUntilMs = -1;
+            resetStreaks();
+            return decision("snapshot-done");
+        }
+        if (lastChangeAtMs == lastUpStepAtMs && nowMs - lastUpStepAtMs >= FAILED_PROBE_WINDOW_MS) {
+            // The last up-step held, so the link is no longer flapping
+            upHoldSeconds = MIN_UP_HOLD_SECONDS;
+        }
+
+        boolean dead = qualityLevel >= 4 || loss > 0.3f;
+        boolean bad = dead || qualityLevel == 3 || loss > 0.1f || rttMs > 800;
+        boolean good = qualityLevel >= 0 && qualityLevel <= 1 && loss < 0.02f && rttMs < 300;
+
+        deadSeconds = dead ? deadSeconds + 1 : 0;
+        badSeconds = bad ? badSeconds + 1 : 0;
+        goodSeconds = good ? goodSeconds + 1 : 0;
+
+        if (deadSeconds >= DEAD_LINK_SECONDS && level != AUDIO_ONLY) {
+            return stepDown(AUDIO_ONLY, nowMs, "dead-link");
+        }
+        if (badSeconds >= STEP_DOWN_SECONDS && level < AUDIO_ONLY) {
+            return stepDown(level + 1, nowMs, "congestion");
+        }
+        int hold = level == AUDIO_ONLY ? Math.max(AUDIO_RECOVERY_SECONDS, upHoldSeconds) : upHoldSeconds;
+        if (goodSeconds >= hold && level > ceiling) {
+            lastUpStepAtMs = nowMs;
+            return change(level - 1, nowMs, "recovered");
+        }
+        return null;
+    }
+
+    /** Turns on the still-image profile for a few seconds. Only meaningful while audio-only. */
+    Decision requestSnapshot(long nowMs) {
+        if (level != AUDIO_ONLY || snapshotUntilMs >= 0) {
+            return null;
+        }
+        snapshotUntilMs = nowMs + SNAPSHOT_MS;
+        return new Decision(level, SNAPSHOT, false, "snapshot");
+    }
+
+    private Decision stepDown(int target, long nowMs, String reason) {
+        if (nowMs - lastUpStepAtMs < FAILED_PROBE_WINDOW_MS) {
+            // The last up-step didn't hold; wait longer before trying again
+            upHoldSeconds = Math.min(MAX_UP_HOLD_SECONDS, upHoldSeconds * 2);
+        }
+        return change(target, nowMs, reason);
+    }
+
+    private Decision change(int target, long nowMs, String reason) {
+        level = target;
+        lastChangeAtMs = nowMs;
+        resetStreaks();
+        return decision(reason);
+    }
+
+    private void resetStreaks() {
+        badSeconds = 0;
+        deadSeconds = 0;
+        goodSeconds = 0;
+    }
+
+    private Decision decision(String reason) {
+        Profile profile = LADDER[level];
+        // HEVC earns its keep where bits are scarce; at the top rung H.264 is cheaper to encode
+        boolean hevc = hevcAllowed && profile.video && level > 0;
+        return new Decision(level, profile, hevc, reason);
+    }
+}
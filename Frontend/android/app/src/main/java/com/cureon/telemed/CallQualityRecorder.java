@@ -0,0 +1,378 @@
+package com.cureon.telemed;
+
+import java.util.Arrays;
+
+/**
+ * Per-second call quality for the active call. The SDK's quality callbacks
+ * update the latest values, {@link #tick} copies them into a fixed-size
+ * primitive ring once a second, and running totals feed the hang-up
+ * {@link Summary}. Memory use is fixed no matter how long the call runs.
+ *
+ * <p>The summary includes a verdict on whether a poor call was down to
+ * the network, the device or our own configuration.
+ */
+final class CallQualityRecorder {
+    // Columns of one sample; loss is a 0..1 ratio, quality is the worst of up/down (0 excellent .. 4 dead)
+    static final int QUALITY = 0;
+    static final int SEND_KBPS = 1;
+    static final int RECV_KBPS = 2;
+    static final int CAPTURE_FPS = 3;
+    static final int SEND_FPS = 4;
+    static final int RECV_FPS = 5;
+    static final int RENDER_FPS = 6;
+    static final int RTT_MS = 7;
+    static final int SEND_LOSS = 8;
+    static final int RECV_LOSS = 9;
+    static final int AUDIO_STALL_MS = 10;
+    static final int VIDEO_STALL_MS = 11;
+    // CallProfilePolicy ladder index in use, -1 until the first decision
+    static final int PROFILE = 12;
+    static final int FIELDS = 13;
+
+    static final String[] FIELD_NAMES = {
+        "quality", "sendKbps", "recvKbps", "captureFps", "sendFps", "recvFps", "renderFps",
+        "rttMs", "sendLoss", "recvLoss", "audioStallMs", "videoStallMs", "profile"
+    };
+
+    static final int QUALITY_LEVELS = 5;
+    static final int QUALITY_BAD = 3;
+    static final int DEFAULT_CAPACITY = 3600;
+
+    private static final int RTT_BIN_MS = 25;
+    private static final int RTT_BINS = 160;
+
+    interface Listener {
+        void onSample(long timeMs, float[] sample);
+
+        void onSummary(Summary summary);
+    }
+
+    static final class Summary {
+        long startedAtMs;
+        long endedAtMs;
+        int seconds;
+        final int[] qualitySeconds = new int[QUALITY_LEVELS];
+        float meanSendKbps;
+        float meanRecvKbps;
+        float meanCaptureFps;
+        float meanRecvFps;
+        float meanRenderFps;
+        float minRenderFps;
+        float rttMeanMs;
+        float rttP50Ms;
+        float rttP95Ms;
+        float rttMaxMs;
+        float meanSendLoss;
+        float meanRecvLoss;
+        long audioStallMs;
+        long videoStallMs;
+        int videoStalls;
+        /** "good", "network", "device" or "configuration". */
+        String verdict;
+
+        float badShare() {
+            return seconds == 0 ? 0f : (float) (qualitySeconds[QUALITY_BAD] + qualitySeconds[QUALITY_BAD + 1]) / seconds;
+        }
+    }
+
+    private static final CallQualityRecorder SHARED = new CallQualityRecorder(DEFAULT_CAPACITY);
+
+    private final SampleRingBuffer samples;
+    private final float[] latest = new float[FIELDS];
+    private final float[] row = new float[FIELDS];
+    private final int[] rttHistogram = new int[RTT_BINS];
+    private final double[] sums = new double[FIELDS];
+    private Listener listener;
+    private boolean recording;
+    private float targetFps;
+    // Latest level from each source; -1 while unknown
+    private final int[] levels = new int[4];
+    private long startedAtMs;
+    private long lastTickMs;
+    private int seconds;
+    private final int[] qualitySeconds = new int[QUALITY_LEVELS];
+    private int captureSeconds;
+    private int recvSeconds;
+    private float minRenderFps;
+    private float rttMax;
+    private int rttSeconds;
+    private long audioBreakTotal = -1;
+    private long videoBreakTotal = -1;
+    private long audioStallMs;
+    private long videoStallMs;
+    private int videoStalls;
+    private boolean videoStalled;
+
+    CallQualityRecorder(int capacity) {
+        samples = new SampleRingBuffer(capacity, FIELDS);
+    }
+
+    static CallQualityRecorder shared() {
+        return SHARED;
+    }
+
+    synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Clears the previous call. {@code targetFps} is the configured video rate, 0 for voice calls. */
+    synchronized void start(long nowMs, float targetFps) {
+        samples.clear();
+        Arrays.fill(latest, 0f);
+        Arrays.fill(rttHistogram, 0);
+        Arrays.fill(sums, 0);
+        Arrays.fill(qualitySeconds, 0);
+        this.targetFps = targetFps;
+        Arrays.fill(levels, -1);
+        latest[QUALITY] = -1;
+        latest[PROFILE] = -1;
+        startedAtMs = nowMs;
+        lastTickMs = nowMs;
+        seconds = 0;
+        captureSeconds = 0;
+        recvSeconds = 0;
+        minRenderFps = Float.MAX_VALUE;
+        rttMax = 0;
+        rttSeconds = 0;
+        audioBreakTotal = -1;
+        videoBreakTotal = -1;
+        audioStallMs = 0;
+        videoStallMs = 0;
+        videoStalls = 0;
+        videoStalled = false;
+        recording = true;
+    }
+
+    synchronized boolean isRecording() {
+        return recording;
+    }
+
+    /** Our own published stream. Levels use the SDK's 0 (excellent) .. 4 (dead), anything else is unknown. */
+    synchronized void onPublishQuality(float captureFps, float sendFps, float sendKbps, float rttMs, float lossRate,
+            int level) {
+        latest[CAPTURE_FPS] = captureFps;
+        latest[SEND_FPS] = sendFps;
+        latest[SEND_KBPS] = sendKbps;
+        latest[SEND_LOSS] = lossRate;
+        if (rttMs > 0) {
+            latest[RTT_MS] = rttMs;
+        }
+        setLevel(0, level);
+    }
+
+    /**
+     * The remote participant's stream. Break times are the SDK's cumulative
+     * stall durations; they are turned into per-second deltas at the next tick.
+     */
+    synchronized void onPlayQuality(float recvFps, float renderFps, float recvKbps, float rttMs, float lossRate,
+            int level, long audioBreakMs, long videoBreakMs) {
+        latest[RECV_FPS] = recvFps;
+        latest[RENDER_FPS] = renderFps;
+        latest[RECV_KBPS] = recvKbps;
+        latest[RECV_LOSS] = lossRate;
+        if (rttMs > 0) {
+            latest[RTT_MS] = rttMs;
+        }
+        setLevel(1, level);
+        latest[AUDIO_STALL_MS] += breakDelta(audioBreakTotal, audioBreakMs);
+        latest[VIDEO_STALL_MS] += breakDelta(videoBreakTotal, videoBreakMs);
+        audioBreakTotal = audioBreakMs;
+        videoBreakTotal = videoBreakMs;
+    }
+
+    /** Network probe levels for both directions, same scale as the stream levels. */
+    synchronized void onNetworkQuality(int upstream, int downstream) {
+        setLevel(2, upstream);
+        setLevel(3, downstream);
+    }
+
+    synchronized void onProfile(int level) {
+        latest[PROFILE] = level;
+    }
+
+    // A counter that went backwards means a new remote stream; its first value is the baseline
+    private static long breakDelta(long previous, long current) {
+        return previous < 0 || current < previous ? 0 : current - previous;
+    }
+
+    private void setLevel(int source, int level) {
+        levels[source] = level >= 0 && level < QUALITY_LEVELS ? level : -1;
+        int worst = -1;
+        for (int value : levels) {
+            worst = Math.max(worst, value);
+        }
+        latest[QUALITY] = worst;
+    }
+
+    /**
+     * Records one sample from the latest values and hands it to the listener.
+     * Returns false when no call is being recorded.
+     */
+    boolean tick(long nowMs) {
+        Listener target;
+        synchronized (this) {
+            if (!recording) {
+                return false;
+            }
+            System.arraycopy(latest, 0, row, 0, FIELDS);
+            // Stalls are deltas: consume them so the next second starts at zero
+            latest[AUDIO_STALL_MS] = 0;
+            latest[VIDEO_STALL_MS] = 0;
+            samples.add(nowMs, row);
+            accumulate(row);
+            lastTickMs = nowMs;
+            target = listener;
+        }
+        if (target != null) {
+            // Same array every second; listeners copy what they keep
+            target.onSample(nowMs, row);
+        }
+        return true;
+    }
+
+    private void accumulate(float[] sample) {
+        seconds++;
+        for (int i = 0; i < FIELDS; i++) {
+            sums[i] += sample[i];
+        }
+        int level = (int) sample[QUALITY];
+        if (level >= 0) {
+            qualitySeconds[level]++;
+        }
+        if (sample[CAPTURE_FPS] > 0) {
+            captureSeconds++;
+        }
+        if (sample[RECV_FPS] > 0) {
+            recvSeconds++;
+            minRenderFps = Math.min(minRenderFps, sample[RENDER_FPS]);
+        }
+        if (sample[RTT_MS] > 0) {
+            rttSeconds++;
+            rttMax = Math.max(rttMax, sample[RTT_MS]);
+            rttHistogram[Math.min(RTT_BINS - 1, (int) (sample[RTT_MS] / RTT_BIN_MS))]++;
+        }
+        audioStallMs += (long) sample[AUDIO_STALL_MS];
+        videoStallMs += (long) sample[VIDEO_STALL_MS];
+        boolean stalled = sample[VIDEO_STALL_MS] > 0;
+        if (stalled && !videoStalled) {
+            videoStalls++;
+        }
+        videoStalled = stalled;
+    }
+
+    /** Copies the most recent sample into {@code out}. */
+    synchronized void copyLatestSample(float[] out) {
+        System.arraycopy(row, 0, out, 0, FIELDS);
+    }
+
+    /** Seconds currently held in the ring; older ones survive only in the totals. */
+    synchronized int retainedSamples() {
+        return samples.size();
+    }
+
+    /** Copies up to {@code timesOut.length} retained samples, oldest first; returns how many. */
+    synchronized int copySamples(long[] timesOut, float[] valuesOut) {
+        int n = Math.min(samples.size(), timesOut.length);
+        for (int i = 0; i < n; i++) {
+            timesOut[i] = samples.timeAt(i);
+            for (int c = 0; c < FIELDS; c++) {
+                valuesOut[i * FIELDS + c] = samples.valueAt(i, c);
+            }
+        }
+        return n;
+    }
+
+    /** Stops recording and reports the summary to the listener. Returns null if nothing was recording. */
+    Summary finish(long nowMs) {
+        Summary summary;
+        Listener target;
+        synchronized (this) {
+            if (!recording) {
+                return null;
+            }
+            recording = false;
+            summary = summarize(nowMs);
+            target = listener;
+        }
+        if (target != null) {
+            target.onSummary(summary);
+        }
+        return summary;
+    }
+
+    synchronized Summary summarize(long nowMs) {
+        Summary s = new Summary();
+        s.startedAtMs = startedAtMs;
+        s.endedAtMs = Math.max(nowMs, lastTickMs);
+        s.seconds = seconds;
+        System.arraycopy(qualitySeconds, 0, s.qualitySeconds, 0, QUALITY_LEVELS);
+        s.meanSendKbps = mean(SEND_KBPS, seconds);
+        s.meanRecvKbps = mean(RECV_KBPS, seconds);
+        s.meanCaptureFps = mean(CAPTURE_FPS, captureSeconds);
+        s.meanRecvFps = mean(RECV_FPS, recvSeconds);
+        s.meanRenderFps = mean(RENDER_FPS, recvSeconds);
+        s.minRenderFps = recvSeconds == 0 ? 0f : minRenderFps;
+        s.rttMeanMs = mean(RTT_MS, rttSeconds);
+        s.rttP50Ms = rttPercentile(0.50);
+        s.rttP95Ms = rttPercentile(0.95);
+        s.rttMaxMs = rttMax;
+        s.meanSendLoss = mean(SEND_LOSS, seconds);
+        s.meanRecvLoss = mean(RECV_LOSS, seconds);
+        s.audioStallMs = audioStallMs;
+        s.videoStallMs = videoStallMs;
+        s.videoStalls = videoStalls;
+        s.verdict = verdict(s, targetFps);
+        return s;
+    }
+
+    private float mean(int field, int count) {
+        return count == 0 ? 0f : (float) (sums[field] / count);
+    }
+
+    // Upper edge of the bin holding the percentile; exact to within RTT_BIN_MS
+    private float rttPercentile(double p) {
+        if (rttSeconds == 0) {
+            return 0f;
+        }
+        int rank = (int) Math.ceil(p * rttSeconds);
+        int seen = 0;
+        for (int i = 0; i < RTT_BINS; i++) {
+            seen += rttHistogram[i];
+            if (seen >= rank) {
+                return i == RTT_BINS - 1 ? rttMax : (i + 1) * RTT_BIN_MS;
+            }
+        }
+        return rttMax;
+    }
+
+    /**
+     * A poor call is blamed on the network when latency, loss or the SDK's
+     * own quality level say so; on the device when the camera can't deliver
+     * frames or received frames aren't rendered; otherwise on configuration,
+     * since the link and the phone had headroom we didn't use.
+     */
+    static String verdict(Summary s, float targetFps) {
+        if (s.seconds == 0) {
+            return "good";
+        }
+        float callMs = s.seconds * 1000f;
+        boolean video = targetFps > 0;
+        boolean poor = s.badShare() > 0.1f
+            || s.videoStallMs > callMs * 0.02f
+            || s.audioStallMs > callMs * 0.02f
+            || (video && s.meanRecvFps > 0 && s.meanRenderFps < targetFps * 0.6f);
+        if (!poor) {
+            return "good";
+        }
+        boolean network = s.rttP95Ms > 400f
+            || Math.max(s.meanSendLoss, s.meanRecvLoss) > 0.05f
+            || s.badShare() > 0.2f;
+        if (network) {
+            return "network";
+        }
+        boolean device = video
+            && ((s.meanCaptureFps > 0 && s.meanCaptureFps < targetFps * 0.6f)
+                || (s.meanRecvFps > 0 && s.meanRenderFps < s.meanRecvFps * 0.7f));
+        return device ? "device" : "configuration";
+    }
+}
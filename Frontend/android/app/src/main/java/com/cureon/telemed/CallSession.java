@@ -0,0 +1,268 @@
+package com.cureon.telemed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The one native call this process may have: idle, joining (activity being
+ * launched), active (room logged in) or ending (devices being released).
+ * {@link ZegoCallPlugin} and {@link IncomingCallActivity} ask it before
+ * launching {@link ZegoVideoCallActivity}, so a second join for the same room
+ * merges into the first and one for another room is refused instead of
+ * stacking a second activity on the camera. The activity reports its progress
+ * and registers a finisher so JS can really end the call. Transitions go to
+ * the listener outside the lock. Clock values come from the caller
+ * (elapsedRealtime on device) so this runs on the JVM.
+ */
+final class CallSession {
+    static final String IDLE = "idle";
+    static final String JOINING = "joining";
+    static final String ACTIVE = "active";
+    static final String ENDING = "ending";
+
+    static final String JOIN_STARTED = "started";
+    static final String JOIN_MERGED = "merged";
+    static final String JOIN_REJECTED = "rejected";
+
+    /** A join whose activity never came up (launch failed, app killed) stops blocking after this. */
+    static final long JOIN_TIMEOUT_MS = 20_000;
+    /** Likewise a teardown that never reported back. */
+    static final long ENDING_TIMEOUT_MS = 10_000;
+    /** The engine is kept this long after a call so back-to-back consults skip creating it. */
+    static final long ENGINE_IDLE_MS = 5 * 60_000;
+
+    interface Listener {
+        void onTransition(Transition transition);
+    }
+
+    static final class Transition {
+        final long sessionId;
+        final String roomId;
+        final String from;
+        final String to;
+        final String reason;
+        final long atMs;
+
+        Transition(long sessionId, String roomId, String from, String to, String reason, long atMs) {
+            this.sessionId = sessionId;
+            this.roomId = roomId;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+            this.atMs = atMs;
+        }
+    }
+
+    static final class Join {
+        final String outcome;
+        final long sessionId;
+        final String roomId;
+
+        Join(String outcome, long sessionId, String roomId) {
+            this.outcome = outcome;
+            this.sessionId = sessionId;
+            this.roomId = roomId;
+        }
+
+        boolean shouldLaunch() {
+            return JOIN_STARTED.equals(outcome);
+        }
+    }
+
+    /**
+     * Release steps run in a fixed order, each one even if an earlier step
+     * threw, so a failing SDK call can't leave the camera or audio held.
+     */
+    static final class Teardown {
+        private final List<String> names = new ArrayList<>();
+        private final List<Runnable> steps = new ArrayList<>();
+
+        Teardown step(String name, Runnable step) {
+            names.add(name);
+            steps.add(step);
+            return this;
+        }
+
+        /** Runs every step in order; returns the names of those that failed. */
+        List<String> run() {
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < steps.size(); i++) {
+                try {
+                    steps.get(i).run();
+                } catch (RuntimeException e) {
+                    failed.add(names.get(i) + ": " + e.getMessage());
+                }
+            }
+            return failed;
+        }
+    }
+
+    private static final CallSession SHARED = new CallSession();
+
+    private String state = IDLE;
+    private long sessionId;
+    private long nextSessionId = 1;
+    private String roomId;
+    private long since;
+    private long idleSince = -1;
+    private Runnable finisher;
+    private Listener listener;
+
+    /** The plugin, the ringing screen and the call activity all go through one. */
+    static CallSession shared() {
+        return SHARED;
+    }
+
+    synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Claims the call slot for {@code roomId}; launch the activity only when {@link Join#shouldLaunch}. */
+    Join join(String roomId, long now) {
+        List<Transition> fired = new ArrayList<>(2);
+        Join join;
+        synchronized (this) {
+            if (JOINING.equals(state) && finisher == null && now - since >= JOIN_TIMEOUT_MS) {
+                fired.add(move(IDLE, "join-timeout", now));
+            } else if (ENDING.equals(state) && now - since >= ENDING_TIMEOUT_MS) {
+                fired.add(move(IDLE, "teardown-timeout", now));
+            }
+            if (IDLE.equals(state)) {
+                sessionId = nextSessionId++;
+                this.roomId = roomId;
+                fired.add(move(JOINING, "join", now));
+                join = new Join(JOIN_STARTED, sessionId, roomId);
+            } else if (!ENDING.equals(state) && roomId.equals(this.roomId)) {
+                join = new Join(JOIN_MERGED, sessionId, roomId);
+            } else {
+                join = new Join(JOIN_REJECTED, sessionId, this.roomId);
+            }
+        }
+        deliver(fired);
+        return join;
+    }
+
+    /** Whether {@code id} still owns the slot; a queued launch checks before starting the activity. */
+    synchronized boolean isCurrent(long id) {
+        return id == sessionId && (JOINING.equals(state) || ACTIVE.equals(state));
+    }
+
+    /**
+     * The call activity came up. Returns false for a stale launch (ended
+     * meanwhile, or recreated from recents) that should finish at once.
+     */
+    synchronized boolean attach(long id, Runnable finisher) {
+        if (!isCurrent(id)) {
+            return false;
+        }
+        this.finisher = finisher;
+        return true;
+    }
+
+    /** The room is joined. */
+    void activated(long id, long now) {
+        Transition fired = null;
+        synchronized (this) {
+            if (id == sessionId && JOINING.equals(state)) {
+                fired = move(ACTIVE, "room-joined", now);
+            }
+        }
+        deliver(fired);
+    }
+
+    /**
+     * Ends the call from outside the activity (JS, a cancelled invite). An
+     * attached activity is asked to finish and reports {@link #released}
+     * itself; a join still waiting for its activity is dropped right away.
+     * Returns false when there was no call.
+     */
+    boolean requestEnd(String reason, long now) {
+        List<Transition> fired = new ArrayList<>(2);
+        Runnable finish;
+        synchronized (this) {
+            if (!JOINING.equals(state) && !ACTIVE.equals(state)) {
+                return ENDING.equals(state);
+            }
+            fired.add(move(ENDING, reason, now));
+            finish = finisher;
+            if (finish == null) {
+                fired.add(move(IDLE, reason, now));
+            }
+        }
+        deliver(fired);
+        if (finish != null) {
+            finish.run();
+        }
+        return true;
+    }
+
+    /** The activity started releasing on its own (hang-up, remote left, back). */
+    void ending(long id, String reason, long now) {
+        Transition fired = null;
+        synchronized (this) {
+            if (id == sessionId && (JOINING.equals(state) || ACTIVE.equals(state))) {
+                fired = move(ENDING, reason, now);
+            }
+        }
+        deliver(fired);
+    }
+
+    /** Camera, audio and room are released; the slot is free. */
+    void released(long id, long now) {
+        Transition fired = null;
+        synchronized (this) {
+            if (id != sessionId) {
+                return;
+            }
+            finisher = null;
+            if (!IDLE.equals(state)) {
+                fired = move(IDLE, "released", now);
+            }
+        }
+        deliver(fired);
+    }
+
+    /** Whether nothing has needed the engine for {@link #ENGINE_IDLE_MS}. */
+    synchronized boolean engineIdle(long now) {
+        return IDLE.equals(state) && idleSince >= 0 && now - idleSince >= ENGINE_IDLE_MS;
+    }
+
+    synchronized String state() {
+        return state;
+    }
+
+    synchronized String roomId() {
+        return IDLE.equals(state) ? null : roomId;
+    }
+
+    synchronized long sessionId() {
+        return IDLE.equals(state) ? 0 : sessionId;
+    }
+
+    private Transition move(String to, String reason, long now) {
+        Transition transition = new Transition(sessionId, roomId, state, to, reason, now);
+        state = to;
+        since = now;
+        if (IDLE.equals(to)) {
+            idleSince = now;
+            finisher = null;
+        }
+        return transition;
+    }
+
+    private void deliver(Transition transition) {
+        Listener target;
+        synchronized (this) {
+            target = listener;
+        }
+        if (target != null && transition != null) {
+            target.onTransition(transition);
+        }
+    }
+
+    private void deliver(List<Transition> transitions) {
+        for (Transition transition : transitions) {
+            deliver(transition);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.cureon.telemed;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+@CapacitorPlugin(name = "CallSignal")
+public class CallSignalPlugin extends Plugin {
+
+    @Override
+    public void load() {
+        // Back after a reboot or force-stop: ring again for the user signed in last
+        CallSignalService.start(getContext());
+    }
+
+    /** Sign in to call signalling; the service keeps running when the app is backgrounded. */
+    @PluginMethod
+    public void start(PluginCall call) {
+        String url = call.getString("url", "");
+        String token = call.getString("token", "");
+        String userId = call.getString("userId", "");
+        if (url == null || url.isEmpty() || token == null || token.isEmpty() || userId == null
+                || userId.isEmpty()) {
+            call.reject("url, token and userId are required");
+            return;
+        }
+        CallSignalService.configure(getContext(), url, token, userId,
+            call.getString("userName", ""), call.getString("userRole", "user"));
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /** On logout: stop ringing for this user. */
+    @PluginMethod
+    public void stop(PluginCall call) {
+        CallSignalService.clear(getContext());
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("connected", CallSignalService.isConnected());
+        call.resolve(result);
+    }
+}
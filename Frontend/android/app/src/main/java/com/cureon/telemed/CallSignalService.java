@@ -0,0 +1,393 @@
+package com.cureon.telemed;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ServiceInfo;
+import android.media.AudioAttributes;
+import android.media.RingtoneManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.Person;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.SecureRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Rings for incoming consult calls without the WebView. A foreground service
+ * keeps one Socket.IO session ({@link SocketIoClient}) to the backend as the
+ * signed-in user; an {@code incoming-call} event posts a full-screen call
+ * notification straight away and starts warming the call engine while it
+ * rings. Answering goes through {@link IncomingCallActivity} to
+ * {@link ZegoVideoCallActivity} with the room ID, so neither MainActivity nor
+ * the React bundle is loaded on the way to media.
+ *
+ * <p>Configured by CallSignalPlugin at login; the settings live in
+ * SharedPreferences so START_STICKY restarts reconnect on their own.
+ */
+public class CallSignalService extends Service implements SocketIoClient.Listener {
+    private static final String TAG = "CallSignalService";
+    private static final String PREFS = "call_signal";
+    private static final String SERVICE_CHANNEL_ID = "call_signal";
+    private static final String RING_CHANNEL_ID = "incoming_calls";
+    private static final int SERVICE_NOTIFICATION_ID = 4301;
+    private static final int RING_NOTIFICATION_ID = 4302;
+
+    private static final String ACTION_RECONNECT = "com.cureon.telemed.action.RECONNECT_CALLS";
+    static final String ACTION_DECLINE = "com.cureon.telemed.action.DECLINE_CALL";
+    static final String ACTION_ANSWERED = "com.cureon.telemed.action.CALL_ANSWERED";
+    static final String EXTRA_CALL_ID = "callId";
+
+    interface RingListener {
+        void onRingStopped(String callId);
+    }
+
+    private static final CopyOnWriteArrayList<RingListener> ringListeners = new CopyOnWriteArrayList<>();
+    private static volatile CallSignalService running;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final CallInvites invites = new CallInvites();
+    private final Runnable ringTimeout = this::onRingTimeout;
+    private volatile SocketIoClient client;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    /**
+     * Saves who to sign in as and (re)starts the service. The backend puts the
+     * socket in the room of the user {@code token} (the login JWT) names.
+     */
+    static void configure(Context context, String url, String token, String userId, String userName,
+            String userRole) {
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+            .putString("url", url.replaceAll("/+$", ""))
+            .putString("token", token)
+            .putString("userId", userId)
+            .putString("userName", userName)
+            .putString("userRole", userRole)
+            .apply();
+        start(context, ACTION_RECONNECT);
+    }
+
+    /** Forgets the user (logout) and stops listening for calls. */
+    static void clear(Context context) {
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit().clear().apply();
+        context.stopService(new Intent(context, CallSignalService.class));
+    }
+
+    static void start(Context context) {
+        start(context, null);
+    }
+
+    private static void start(Context context, String action) {
+        if (context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).getString("userId", null) == null) {
+            return;
+        }
+        try {
+            ContextCompat.startForegroundService(context, new Intent(context, CallSignalService.class).setAction(action));
+        } catch (IllegalStateException e) {
+            // Android 12+ refuses from the background; the next app start brings it back
+            Log.w(TAG, "Cannot start call service now: " + e.getMessage());
+        }
+    }
+
+    static boolean isConnected() {
+        CallSignalService service = running;
+        return service != null && service.client != null && service.client.isConnected();
+    }
+
+    /** Main thread only. */
+    static boolean isRinging(String callId) {
+        CallSignalService service = running;
+        CallInvites.Invite invite = service == null ? null : service.invites.ringing(SystemClock.elapsedRealtime());
+        return invite != null && invite.callId.equals(callId);
+    }
+
+    static void addRingListener(RingListener listener) {
+        ringListeners.add(listener);
+    }
+
+    static void removeRingListener(RingListener listener) {
+        ringListeners.remove(listener);
+    }
+
+    /** The signed-in user's sanitized Zego ID and display name, as ZegoCallPlugin derives them. */
+    static String[] zegoUser(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String userId = prefs.getString("userId", "");
+        String userName = prefs.getString("userName", "");
+        return new String[] { UserIds.sanitize(userId), UserIds.displayName(userName) };
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        running = this;
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager != null) {
+            manager.createNotificationChannel(new NotificationChannel(SERVICE_CHANNEL_ID,
+                getString(R.string.call_signal_channel_name), NotificationManager.IMPORTANCE_MIN));
+            NotificationChannel ring = new NotificationChannel(RING_CHANNEL_ID,
+                getString(R.string.incoming_call_channel_name), NotificationManager.IMPORTANCE_HIGH);
+            ring.setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE), new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build());
+            ring.enableVibration(true);
+            ring.setVibrationPattern(new long[] { 0, 1000, 1000 });
+            manager.createNotificationChannel(ring);
+        }
+
+        ConnectivityManager cm = getSystemService(ConnectivityManager.class);
+        if (cm != null) {
+            networkCallback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    SocketIoClient current = client;
+                    if (current != null) {
+                        current.reconnectNow();
+                    }
+                }
+            };
+            cm.registerDefaultNetworkCallback(networkCallback);
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Notification notification = new NotificationCompat.Builder(this, SERVICE_CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.sym_call_incoming)
+            .setContentTitle(getString(R.string.call_signal_ready))
+            .setPriority(NotificationCompat.PRIORITY_MIN)
+            .setOngoing(true)
+            .build();
+        ServiceCompat.startForeground(this, SERVICE_NOTIFICATION_ID, notification,
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+                ? ServiceInfo.FOREGROUND_SERVICE_TYPE_REMOTE_MESSAGING : 0);
+
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_DECLINE.equals(action)) {
+            answer(intent.getStringExtra(EXTRA_CALL_ID), false);
+        } else if (ACTION_ANSWERED.equals(action)) {
+            answer(intent.getStringExtra(EXTRA_CALL_ID), true);
+        }
+        if ((client == null || ACTION_RECONNECT.equals(action)) && !connect()) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        return START_STICKY;
+    }
+
+    // Main thread; a new client picks up changed settings
+    private boolean connect() {
+        SharedPreferences prefs = getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String url = prefs.getString("url", null);
+        String token = prefs.getString("token", null);
+        if (url == null || token == null) {
+            return false;
+        }
+        if (client != null) {
+            client.stop();
+        }
+        SocketIoClient.Config config = new SocketIoClient.Config();
+        config.baseUrl = url;
+        config.auth.put("token", token);
+        config.query.put("client", "android-call-service");
+        client = new SocketIoClient(config, this, new SecureRandom());
+        client.start();
+        return true;
+    }
+
+    @Override
+    public void onConnected() {
+        Log.d(TAG, "Call signalling connected");
+    }
+
+    @Override
+    public void onDisconnected(String reason) {
+        Log.d(TAG, "Call signalling disconnected: " + reason);
+    }
+
+    @Override
+    public void onEvent(String event, JSONArray args) {
+        JSONObject payload = args.optJSONObject(0);
+        if (payload == null) {
+            return;
+        }
+        if ("incoming-call".equals(event)) {
+            CallInvites.Invite invite = CallInvites.Invite.fromJson(payload);
+            main.post(() -> onInvite(invite));
+        } else if ("call-cancelled".equals(event)) {
+            String callId = payload.optString("callId");
+            main.post(() -> {
+                CallInvites.Invite cancelled = invites.cancel(callId, SystemClock.elapsedRealtime());
+                if (cancelled != null) {
+                    stopRinging(cancelled, true);
+                }
+            });
+        }
+    }
+
+    private void onInvite(CallInvites.Invite invite) {
+        long now = SystemClock.elapsedRealtime();
+        // Already on a call: busy for another room, nothing to ring for this one
+        String inCall = invite != null ? CallSession.shared().roomId() : null;
+        if (inCall != null) {
+            if (!inCall.equals(invite.roomId)) {
+                emitAnswer(invite, false, "busy");
+            }
+            return;
+        }
+        String decision = invites.offer(invite, now);
+        if (CallInvites.BUSY.equals(decision)) {
+            emitAnswer(invite, false, "busy");
+            return;
+        }
+        if (!CallInvites.RING.equals(decision)) {
+            return;
+        }
+        if (invite.sentAtMs > 0) {
+            Log.d(TAG, "Ringing " + invite.callId + " " + (System.currentTimeMillis() - invite.sentAtMs) + "ms after it was sent");
+        }
+        // The engine is ready by the time the user picks up, as after ZegoCallPlugin.initialize
+        if (CallWarmup.hasCallPermissions(this)) {
+            String[] user = zegoUser(this);
+            CallWarmup.get().warm(this, ZegoVideoCallActivity.APP_ID, ZegoVideoCallActivity.APP_SIGN,
+                user[0], user[1], null);
+        }
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(RING_NOTIFICATION_ID, buildRingNotification(invite));
+        }
+        main.removeCallbacks(ringTimeout);
+        main.postDelayed(ringTimeout, CallInvites.RING_TIMEOUT_MS);
+    }
+
+    private Notification buildRingNotification(CallInvites.Invite invite) {
+        Intent show = IncomingCallActivity.intent(this, invite, false);
+        Intent accept = IncomingCallActivity.intent(this, invite, true);
+        Intent decline = new Intent(this, CallSignalService.class)
+            .setAction(ACTION_DECLINE)
+            .putExtra(EXTRA_CALL_ID, invite.callId);
+        int flags = PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT;
+        PendingIntent fullScreen = PendingIntent.getActivity(this, 0, show, flags);
+        PendingIntent answer = PendingIntent.getActivity(this, 1, accept, flags);
+        PendingIntent hangUp = PendingIntent.getService(this, 2, decline, flags);
+
+        Person caller = new Person.Builder().setName(invite.callerName).setImportant(true).build();
+        Notification notification = new NotificationCompat.Builder(this, RING_CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.sym_call_incoming)
+            .setContentTitle(getString(R.string.incoming_call_title, invite.callerName))
+            .setContentText(getString(R.string.incoming_call_text))
+            .setPriority(NotificationCompat.PRIORITY_MAX)
+            .setCategory(NotificationCompat.CATEGORY_CALL)
+            .setFullScreenIntent(fullScreen, true)
+            .setContentIntent(fullScreen)
+            .setOngoing(true)
+            .setTimeoutAfter(CallInvites.RING_TIMEOUT_MS)
+            .setStyle(NotificationCompat.CallStyle.forIncomingCall(caller, hangUp, answer))
+            .build();
+        // Keep ringing until answered, declined or timed out
+        notification.flags |= Notification.FLAG_INSISTENT;
+        return notification;
+    }
+
+    private void answer(String callId, boolean accepted) {
+        CallInvites.Invite invite = invites.answer(callId, SystemClock.elapsedRealtime());
+        if (invite == null) {
+            return;
+        }
+        stopRinging(invite, false);
+        emitAnswer(invite, accepted, accepted ? "accepted" : "declined");
+    }
+
+    private void onRingTimeout() {
+        CallInvites.Invite missed = invites.expire(SystemClock.elapsedRealtime());
+        if (missed == null) {
+            return;
+        }
+        stopRinging(missed, true);
+        emitAnswer(missed, false, "missed");
+    }
+
+    private void stopRinging(CallInvites.Invite invite, boolean missed) {
+        main.removeCallbacks(ringTimeout);
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.cancel(RING_NOTIFICATION_ID);
+            if (missed) {
+                manager.notify(RING_NOTIFICATION_ID, new NotificationCompat.Builder(this, SERVICE_CHANNEL_ID)
+                    .setSmallIcon(android.R.drawable.sym_call_missed)
+                    .setContentTitle(getString(R.string.incoming_call_missed, invite.callerName))
+                    .setCategory(NotificationCompat.CATEGORY_MISSED_CALL)
+                    .setAutoCancel(true)
+                    .build());
+            }
+        }
+        for (RingListener listener : ringListeners) {
+            listener.onRingStopped(invite.callId);
+        }
+    }
+
+    private void emitAnswer(CallInvites.Invite invite, boolean accepted, String reason) {
+        if (client == null) {
+            return;
+        }
+        try {
+            JSONObject payload = new JSONObject()
+                .put("callId", invite.callId)
+                .put("roomId", invite.roomId)
+                .put("callerId", invite.callerId)
+                .put("accepted", accepted)
+                .put("reason", reason);
+            if (!client.emit("call-answer", payload)) {
+                Log.w(TAG, "Offline, caller not told the call was " + reason);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Cannot build call answer: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        running = null;
+        main.removeCallbacksAndMessages(null);
+        if (networkCallback != null) {
+            ConnectivityManager cm = getSystemService(ConnectivityManager.class);
+            if (cm != null) {
+                cm.unregisterNetworkCallback(networkCallback);
+            }
+        }
+        if (client != null) {
+            client.stop();
+            client = null;
+        }
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.cancel(RING_NOTIFICATION_ID);
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
@@ -0,0 +1,194 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.zegocloud.uikit.ZegoUIKit;
+
+import im.zego.zegoexpress.constants.ZegoScenario;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Does the expensive parts of joining a call before the user taps "join":
+ * creates the Zego engine and logs the user in, opens the camera service
+ * and reads camera characteristics, checks permissions and works out the
+ * audio route. Everything runs on one background thread, and
+ * {@link #afterWarmup} queues behind it so a join never races a
+ * half-built engine.
+ */
+final class CallWarmup {
+    private static final String TAG = "CallWarmup";
+
+    private static CallWarmup instance;
+
+    interface Listener {
+        void onWarm(CallWarmup warmup);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "CallWarmup"));
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Runnable releaseIfIdle = () -> executor.execute(this::releaseIfIdle);
+    private volatile boolean engineReady;
+    private volatile boolean warm;
+    private volatile boolean permissionsGranted;
+    private volatile boolean headsetConnected;
+    private volatile long warmupMs = -1;
+    private String loggedInUserID;
+
+    static synchronized CallWarmup get() {
+        if (instance == null) {
+            instance = new CallWarmup();
+        }
+        return instance;
+    }
+
+    /** Queues a warm-up. Repeat calls are cheap: the engine is only created once. */
+    void warm(Context context, long appID, String appSign, String userID, String userName, Listener listener) {
+        Application app = (Application) context.getApplicationContext();
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            permissionsGranted = hasCallPermissions(app);
+            headsetConnected = detectHeadset(app);
+            warmCamera(app);
+            try {
+                if (!engineReady) {
+                    engineReady = ZegoUIKit.init(app, appID, appSign, ZegoScenario.STANDARD_VIDEO_CALL);
+                }
+                if (engineReady && !userID.equals(loggedInUserID)) {
+                    ZegoUIKit.login(userID, userName);
+                    loggedInUserID = userID;
+                }
+            } catch (Exception e) {
+                // The call fragment will initialise the SDK itself; we only lose the head start
+                Log.e(TAG, "Engine warm-up failed: " + e.getMessage(), e);
+                engineReady = false;
+            }
+            warmupMs = SystemClock.elapsedRealtime() - start;
+            warm = engineReady;
+            Log.d(TAG, "Warm-up finished in " + warmupMs + "ms, engine ready: " + engineReady);
+            if (listener != null) {
+                listener.onWarm(this);
+            }
+        });
+    }
+
+    /** Runs {@code task} on the warm-up thread once any queued warm-up has finished. */
+    void afterWarmup(Runnable task) {
+        executor.execute(task);
+    }
+
+    /** Logs out but keeps the engine: creating it is the slow part and it holds no devices. */
+    void reset() {
+        executor.execute(() -> {
+            if (loggedInUserID != null) {
+                ZegoUIKit.logout();
+                loggedInUserID = null;
+            }
+            warm = false;
+        });
+    }
+
+    /**
+     * Destroys the engine once no call has needed it for
+     * {@link CallSession#ENGINE_IDLE_MS}. Called after every call; a call in
+     * between pushes the release back.
+     */
+    void releaseWhenIdle() {
+        main.removeCallbacks(releaseIfIdle);
+        main.postDelayed(releaseIfIdle, CallSession.ENGINE_IDLE_MS);
+    }
+
+    private void releaseIfIdle() {
+        if (!engineReady || !CallSession.shared().engineIdle(SystemClock.elapsedRealtime())) {
+            return;
+        }
+        try {
+            if (loggedInUserID != null) {
+                ZegoUIKit.logout();
+                loggedInUserID = null;
+            }
+            ZegoUIKit.unInit();
+            Log.d(TAG, "Engine released after " + CallSession.ENGINE_IDLE_MS / 1000 + "s without a call");
+        } catch (Exception e) {
+            Log.e(TAG, "Engine release failed: " + e.getMessage(), e);
+        }
+        engineReady = false;
+        warm = false;
+    }
+
+    boolean isWarm() {
+        return warm;
+    }
+
+    boolean isEngineReady() {
+        return engineReady;
+    }
+
+    boolean permissionsGranted() {
+        return permissionsGranted;
+    }
+
+    long warmupMs() {
+        return warmupMs;
+    }
+
+    /** Speakerphone unless a headset is plugged in or paired; uses the warm-up answer when there is one. */
+    boolean useSpeaker(Context context) {
+        return !(warm ? headsetConnected : detectHeadset(context));
+    }
+
+    static boolean hasCallPermissions(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED
+            && ContextCompat.checkSelfPermission(context, Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static boolean detectHeadset(Context context) {
+        AudioManager audio = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        if (audio == null) {
+            return false;
+        }
+        for (AudioDeviceInfo device : audio.getDevices(AudioManager.GET_DEVICES_OUTPUTS)) {
+            switch (device.getType()) {
+                case AudioDeviceInfo.TYPE_WIRED_HEADSET:
+                case AudioDeviceInfo.TYPE_WIRED_HEADPHONES:
+                case AudioDeviceInfo.TYPE_BLUETOOTH_SCO:
+                case AudioDeviceInfo.TYPE_BLUETOOTH_A2DP:
+                case AudioDeviceInfo.TYPE_USB_HEADSET:
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    // Binds the camera service and loads HAL metadata without opening a device,
+    // so no privacy indicator appears before the call
+    private static void warmCamera(Context context) {
+        CameraManager cameras = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        if (cameras == null) {
+            return;
+        }
+        try {
+            for (String id : cameras.getCameraIdList()) {
+                cameras.getCameraCharacteristics(id);
+            }
+        } catch (CameraAccessException | RuntimeException e) {
+            Log.w(TAG, "Camera warm-up skipped: " + e.getMessage());
+        }
+    }
+}
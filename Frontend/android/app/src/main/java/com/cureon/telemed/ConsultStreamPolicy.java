@@ -0,0 +1,360 @@
+package com.cureon.telemed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides what to receive from each remote participant in a group consult,
+ * so a doctor, a patient and a specialist fit on a link meant for one call.
+ *
+ * <p>Everyone is always heard. One participant is featured (the pinned one,
+ * else the active speaker) and gets the big video layer. The others get the
+ * small layer while the downlink budget lasts, most recent speakers first,
+ * and audio only after that. The budget is the smallest of:
+ * <ul>
+ *   <li>the cap the caller asked for;</li>
+ *   <li>a share of the link's advertised downstream bandwidth;</li>
+ *   <li>an estimate that backs off when received streams lose packets and
+ *       creeps back up while they are clean.</li>
+ * </ul>
+ * Each stream's cost at each layer is measured once the layer has settled,
+ * so a participant with the camera off or a weak uplink costs what they
+ * actually send.
+ *
+ * <p>The speaker only changes after someone else has been loudest for a
+ * while, and a stream that lost its layer to the budget waits before it is
+ * raised again. Each layer switch waits for a keyframe, so flapping costs
+ * more than it saves.
+ *
+ * <p>Pure state machine like {@link CallProfilePolicy}: clock, network and
+ * SDK readings are passed in, and every method returns the streams whose
+ * layer changed.
+ */
+final class ConsultStreamPolicy {
+    static final int TIER_AUDIO = 0;
+    static final int TIER_LOW = 1;
+    static final int TIER_HIGH = 2;
+    static final String[] TIER_NAMES = { "audio", "low", "high" };
+    // A stream's cost at each tier until it has been measured there
+    static final int[] DEFAULT_KBPS = { 48, 200, 800 };
+
+    /** One remote stream's new tier. */
+    static final class Assignment {
+        final String streamId;
+        final String userId;
+        final int tier;
+
+        Assignment(String streamId, String userId, int tier) {
+            this.streamId = streamId;
+            this.userId = userId;
+            this.tier = tier;
+        }
+
+        @Override
+        public String toString() {
+            return userId + ":" + TIER_NAMES[tier];
+        }
+    }
+
+    private static final class Participant {
+        final String streamId;
+        final String userId;
+        final long joinedAtMs;
+        int tier = -1;
+        long tierChangedAtMs;
+        long downgradedAtMs = Long.MIN_VALUE / 2;
+        long lastSpokeAtMs = Long.MIN_VALUE;
+        // Smoothed kbps at each tier, 0 until measured
+        final float[] measuredKbps = new float[TIER_NAMES.length];
+        float loss;
+
+        Participant(String streamId, String userId, long joinedAtMs) {
+            this.streamId = streamId;
+            this.userId = userId;
+            this.joinedAtMs = joinedAtMs;
+        }
+    }
+
+    // Share of the advertised downstream we are willing to spend on the consult
+    private static final double LINK_HEADROOM = 0.7;
+    private static final int DEFAULT_LINK_KBPS = 1_500;
+    private static final int MIN_BUDGET_KBPS = 150;
+    private static final double BACKOFF = 0.75;
+    private static final int PROBE_STEP_KBPS = 150;
+    private static final int CONGESTED_SECONDS = 3;
+    private static final int RECOVERY_SECONDS = 8;
+    // Sound levels are 0..100; below this is room noise
+    static final float SPEAKING_LEVEL = 15f;
+    static final long SPEAKER_SWITCH_MS = 1_200;
+    static final long MIN_FEATURE_MS = 3_000;
+    static final long UPGRADE_HOLD_MS = 5_000;
+    // A layer switch's first seconds are keyframes and ramp-up, not what the layer costs
+    static final long SETTLE_MS = 3_000;
+    private static final float KBPS_SMOOTHING = 0.3f;
+    /** A room nobody else is in ends after this, whether they left or never came. */
+    static final long EMPTY_ROOM_MS = 5 * 60_000;
+
+    private final int capKbps;
+    private final Map<String, Participant> participants = new LinkedHashMap<>();
+    private String pinnedUserId;
+    private String speakerStreamId;
+    private long speakerSinceMs;
+    private String challengerStreamId;
+    private long challengerSinceMs;
+    private String featuredStreamId;
+    private int linkKbps = (int) (DEFAULT_LINK_KBPS * LINK_HEADROOM);
+    private int adaptiveKbps = linkKbps;
+    private int badSeconds;
+    private int goodSeconds;
+    private long aloneSinceMs = -1;
+
+    /**
+     * {@code capKbps} is the most the caller lets the consult receive, 0 for
+     * no cap; {@code pinnedUserId} is featured whenever present, may be null.
+     */
+    ConsultStreamPolicy(int capKbps, String pinnedUserId) {
+        this.capKbps = capKbps;
+        this.pinnedUserId = pinnedUserId == null || pinnedUserId.isEmpty() ? null : pinnedUserId;
+    }
+
+    /** The room is joined; nobody else is in it yet. */
+    void start(long nowMs) {
+        if (participants.isEmpty()) {
+            aloneSinceMs = nowMs;
+        }
+    }
+
+    int participants() {
+        return participants.size();
+    }
+
+    /** -1 for a stream the policy doesn't know. */
+    int tier(String streamId) {
+        Participant p = participants.get(streamId);
+        return p == null ? -1 : p.tier;
+    }
+
+    int budgetKbps() {
+        int budget = Math.min(linkKbps, adaptiveKbps);
+        return capKbps > 0 ? Math.min(capKbps, budget) : budget;
+    }
+
+    /** What the current tiers cost by the policy's estimates. */
+    int allocatedKbps() {
+        int total = 0;
+        for (Participant p : participants.values()) {
+            total += cost(p, Math.max(TIER_AUDIO, p.tier));
+        }
+        return total;
+    }
+
+    String pinnedUserId() {
+        return pinnedUserId;
+    }
+
+    /** The featured participant's user id, null in an empty room. */
+    String featuredUserId() {
+        Participant p = featuredStreamId == null ? null : participants.get(featuredStreamId);
+        return p == null ? null : p.userId;
+    }
+
+    boolean isFeatured(String streamId) {
+        return streamId != null && streamId.equals(featuredStreamId);
+    }
+
+    /** True once the room has had nobody else in it for {@link #EMPTY_ROOM_MS}. */
+    boolean shouldEnd(long nowMs) {
+        return aloneSinceMs >= 0 && nowMs - aloneSinceMs >= EMPTY_ROOM_MS;
+    }
+
+    List<Assignment> onStreamAdded(String streamId, String userId, long nowMs) {
+        if (participants.containsKey(streamId)) {
+            return Collections.emptyList();
+        }
+        participants.put(streamId, new Participant(streamId, userId, nowMs));
+        aloneSinceMs = -1;
+        return rebalance(nowMs);
+    }
+
+    List<Assignment> onStreamRemoved(String streamId, long nowMs) {
+        if (participants.remove(streamId) == null) {
+            return Collections.emptyList();
+        }
+        if (streamId.equals(speakerStreamId)) {
+            speakerStreamId = null;
+        }
+        if (streamId.equals(challengerStreamId)) {
+            challengerStreamId = null;
+        }
+        if (participants.isEmpty()) {
+            aloneSinceMs = nowMs;
+        }
+        return rebalance(nowMs);
+    }
+
+    /** Features {@code userId} whenever present; null goes back to following the speaker. */
+    List<Assignment> pin(String userId, long nowMs) {
+        pinnedUserId = userId;
+        return rebalance(nowMs);
+    }
+
+    /** The SDK's remote sound levels, stream id to 0..100, several times a second. */
+    List<Assignment> onSoundLevels(Map<String, Float> levels, long nowMs) {
+        Participant loudest = null;
+        float loudestLevel = SPEAKING_LEVEL;
+        for (Map.Entry<String, Float> entry : levels.entrySet()) {
+            Participant p = participants.get(entry.getKey());
+            if (p == null || entry.getValue() == null || entry.getValue() < SPEAKING_LEVEL) {
+                continue;
+            }
+            p.lastSpokeAtMs = nowMs;
+            if (entry.getValue() >= loudestLevel) {
+                loudest = p;
+                loudestLevel = entry.getValue();
+            }
+        }
+        // Pauses between words say nothing about who holds the floor
+        if (loudest == null) {
+            return Collections.emptyList();
+        }
+        if (loudest.streamId.equals(speakerStreamId)) {
+            challengerStreamId = null;
+            return Collections.emptyList();
+        }
+        if (speakerStreamId == null) {
+            return switchSpeaker(loudest, nowMs);
+        }
+        if (!loudest.streamId.equals(challengerStreamId)) {
+            challengerStreamId = loudest.streamId;
+            challengerSinceMs = nowMs;
+            return Collections.emptyList();
+        }
+        if (nowMs - challengerSinceMs >= SPEAKER_SWITCH_MS && nowMs - speakerSinceMs >= MIN_FEATURE_MS) {
+            return switchSpeaker(loudest, nowMs);
+        }
+        return Collections.emptyList();
+    }
+
+    private List<Assignment> switchSpeaker(Participant speaker, long nowMs) {
+        speakerStreamId = speaker.streamId;
+        speakerSinceMs = nowMs;
+        challengerStreamId = null;
+        return rebalance(nowMs);
+    }
+
+    /** A received stream's quality report: its total kbps and loss rate (0..1). */
+    void onStreamQuality(String streamId, float kbps, float loss, long nowMs) {
+        Participant p = participants.get(streamId);
+        if (p == null) {
+            return;
+        }
+        p.loss = loss;
+        if (p.tier < 0 || kbps <= 0 || nowMs - p.tierChangedAtMs < SETTLE_MS) {
+            return;
+        }
+        float measured = p.measuredKbps[p.tier];
+        p.measuredKbps[p.tier] = measured == 0 ? kbps : measured + KBPS_SMOOTHING * (kbps - measured);
+    }
+
+    /** Default network changed; {@code downKbps} is its advertised downstream bandwidth, 0 if unknown. */
+    List<Assignment> onLink(int downKbps, long nowMs) {
+        int next = (int) ((downKbps > 0 ? downKbps : DEFAULT_LINK_KBPS) * LINK_HEADROOM);
+        // Capabilities callbacks repeat as estimates drift; only a new link matters
+        if (next == linkKbps) {
+            return Collections.emptyList();
+        }
+        linkKbps = next;
+        adaptiveKbps = next;
+        badSeconds = 0;
+        goodSeconds = 0;
+        return rebalance(nowMs);
+    }
+
+    /**
+     * Once a second. {@code downstreamLevel} is the SDK's 0 (excellent) .. 4
+     * (dead) for this device's downlink, -1 if unknown. Moves the budget on a
+     * run of bad or good seconds and re-allocates against it.
+     */
+    List<Assignment> tick(long nowMs, int downstreamLevel) {
+        float worstLoss = 0;
+        for (Participant p : participants.values()) {
+            worstLoss = Math.max(worstLoss, p.loss);
+        }
+        boolean bad = downstreamLevel >= 3 || worstLoss > 0.08f;
+        boolean good = downstreamLevel >= 0 && downstreamLevel <= 1 && worstLoss < 0.02f;
+        badSeconds = bad ? badSeconds + 1 : 0;
+        goodSeconds = good ? goodSeconds + 1 : 0;
+        if (badSeconds >= CONGESTED_SECONDS) {
+            // Back off from what is actually being received, not from an unused allowance
+            int using = Math.min(budgetKbps(), allocatedKbps());
+            adaptiveKbps = Math.max(MIN_BUDGET_KBPS, (int) (using * BACKOFF));
+            badSeconds = 0;
+        } else if (goodSeconds >= RECOVERY_SECONDS && adaptiveKbps < linkKbps) {
+            adaptiveKbps = Math.min(linkKbps, adaptiveKbps + PROBE_STEP_KBPS);
+            goodSeconds = 0;
+        }
+        return rebalance(nowMs);
+    }
+
+    private int cost(Participant p, int tier) {
+        float measured = p.measuredKbps[tier];
+        return measured > 0 ? Math.round(measured) : DEFAULT_KBPS[tier];
+    }
+
+    /** Pinned, then speaker, then most recently heard, then first to join. */
+    private List<Participant> byPriority() {
+        List<Participant> order = new ArrayList<>(participants.values());
+        Collections.sort(order, (a, b) -> {
+            int c = Boolean.compare(b.userId.equals(pinnedUserId), a.userId.equals(pinnedUserId));
+            if (c == 0) {
+                c = Boolean.compare(b.streamId.equals(speakerStreamId), a.streamId.equals(speakerStreamId));
+            }
+            if (c == 0) {
+                c = Long.compare(b.lastSpokeAtMs, a.lastSpokeAtMs);
+            }
+            return c != 0 ? c : Long.compare(a.joinedAtMs, b.joinedAtMs);
+        });
+        return order;
+    }
+
+    /**
+     * Audio for everyone comes off the top and is never given up; what is
+     * left goes to video in priority order, the big layer only to the first.
+     */
+    private List<Assignment> rebalance(long nowMs) {
+        List<Participant> order = byPriority();
+        featuredStreamId = order.isEmpty() ? null : order.get(0).streamId;
+        int remaining = budgetKbps();
+        for (Participant p : order) {
+            remaining -= cost(p, TIER_AUDIO);
+        }
+        List<Assignment> changes = new ArrayList<>();
+        for (int i = 0; i < order.size(); i++) {
+            Participant p = order.get(i);
+            int target = TIER_AUDIO;
+            for (int tier = i == 0 ? TIER_HIGH : TIER_LOW; tier > TIER_AUDIO; tier--) {
+                if (cost(p, tier) - cost(p, TIER_AUDIO) <= remaining) {
+                    target = tier;
+                    break;
+                }
+            }
+            // The featured stream goes up at once; the speaker hysteresis already paces it
+            if (i > 0 && p.tier >= 0 && target > p.tier && nowMs - p.downgradedAtMs < UPGRADE_HOLD_MS) {
+                target = p.tier;
+            }
+            remaining -= cost(p, target) - cost(p, TIER_AUDIO);
+            if (target != p.tier) {
+                if (target < p.tier) {
+                    p.downgradedAtMs = nowMs;
+                }
+                p.tier = target;
+                p.tierChangedAtMs = nowMs;
+                changes.add(new Assignment(p.streamId, p.userId, target));
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,792 @@
+package com.cureon.telemed;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongSupplier;
+
+/**
+ * Medical documents (X-rays, PDFs, scans) kept on the device, so each one
+ * is downloaded once and opens without the network after that.
+ *
+ * <p>A download is written to a part file. After a dropped connection it
+ * resumes with a Range request, in the same call or a later one, even after
+ * a restart. If-Range makes the server send the whole document again if it
+ * changed in between. Any number of documents can download at once, but
+ * each host gets at most {@code maxPerHost} connections, so a burst of
+ * thumbnails can't starve the X-ray being waited on. Concurrent requests
+ * for the same URL share one download.
+ *
+ * <p>Finished files are named by their SHA-256. The hash is checked against
+ * the caller's expected hash when one is given, and kept in the index.
+ * URLs with identical content share one file. Once the total passes the
+ * byte budget, unpinned files are evicted least recently opened first.
+ * Pinned files (a patient's own records) are never evicted.
+ *
+ * <p>Free of Android so it can be tested against a local server. Callers
+ * run {@link #open} on their own threads.
+ */
+final class DocumentStore {
+    static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    static final int DEFAULT_MAX_PER_HOST = 2;
+
+    private static final int MAGIC = 0x43444f43;
+    private static final int FORMAT = 1;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_MS = 250;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String PART = ".part";
+    private static final String PART_META = ".meta";
+
+    interface Progress {
+        /** {@code total} is -1 while the server hasn't said. */
+        void onProgress(long bytes, long total);
+    }
+
+    interface EvictionListener {
+        /** Called under the store's lock; must not call back into it. */
+        void onEvicted(String sha256);
+    }
+
+    /** A document on disk. */
+    static final class Document {
+        final String url;
+        final String sha256;
+        final File file;
+        final long size;
+        final String mimeType;
+        final boolean pinned;
+        /** Opened without touching the network. */
+        final boolean cached;
+
+        Document(String url, String sha256, File file, long size, String mimeType, boolean pinned, boolean cached) {
+            this.url = url;
+            this.sha256 = sha256;
+            this.file = file;
+            this.size = size;
+            this.mimeType = mimeType;
+            this.pinned = pinned;
+            this.cached = cached;
+        }
+    }
+
+    private static final class Entry {
+        String sha256;
+        String mimeType;
+        boolean pinned;
+
+        Entry(String sha256, String mimeType, boolean pinned) {
+            this.sha256 = sha256;
+            this.mimeType = mimeType;
+            this.pinned = pinned;
+        }
+    }
+
+    private static final class Blob {
+        final long size;
+        long lastAccessMs;
+
+        Blob(long size, long lastAccessMs) {
+            this.size = size;
+            this.lastAccessMs = lastAccessMs;
+        }
+    }
+
+    // What a part file is a part of, so a resume asks for the rest of the same thing
+    private static final class PartInfo {
+        final String url;
+        final String validator;
+        final long total;
+        final String mimeType;
+
+        PartInfo(String url, String validator, long total, String mimeType) {
+            this.url = url;
+            this.validator = validator;
+            this.total = total;
+            this.mimeType = mimeType;
+        }
+    }
+
+    private static final class HttpStatusException extends IOException {
+        final int status;
+
+        HttpStatusException(String url, int status) {
+            super("HTTP " + status + " for " + url);
+            this.status = status;
+        }
+
+        boolean retryable() {
+            return status >= 500 || status == 408 || status == 429;
+        }
+    }
+
+    private final File blobDir;
+    private final File partDir;
+    private final File indexFile;
+    private final long maxBytes;
+    private final int maxPerHost;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Blob> blobs = new HashMap<>();
+    private final Map<String, Semaphore> hostSlots = new HashMap<>();
+    private final Map<String, Object> downloads = new HashMap<>();
+    private long storedBytes;
+    private boolean loaded;
+    private boolean accessDirty;
+    private volatile EvictionListener evictionListener;
+
+    DocumentStore(File dir, long maxBytes, int maxPerHost, LongSupplier clock) {
+        this.blobDir = new File(dir, "blobs");
+        this.partDir = new File(dir, "parts");
+        this.indexFile = new File(dir, "index");
+        this.maxBytes = maxBytes;
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.clock = clock;
+    }
+
+    void setEvictionListener(EvictionListener listener) {
+        evictionListener = listener;
+    }
+
+    /** The stored copy of {@code url}, or null. Counts as an access for eviction. */
+    synchronized Document cached(String url) {
+        return cached(url, false);
+    }
+
+    /**
+     * The document at {@code url}, downloaded unless it is stored already.
+     * A non-null {@code expectedSha256} is checked before anything is
+     * stored. {@code pin} keeps it out of eviction (an already-pinned
+     * document stays pinned either way). Blocks, so call it off the main thread.
+     */
+    Document open(String url, Map<String, String> headers, String expectedSha256, boolean pin, Progress progress)
+            throws IOException {
+        synchronized (this) {
+            Document hit = cached(url, pin);
+            if (hit != null) {
+                return hit;
+            }
+        }
+        String host = hostOf(url);
+        if (host == null) {
+            throw new IOException("Not an http(s) URL: " + url);
+        }
+        Object lock;
+        synchronized (this) {
+            // Kept for the process: dropping it could let two threads share one part file
+            lock = downloads.computeIfAbsent(url, key -> new Object());
+        }
+        synchronized (lock) {
+            // Whoever held the lock may have just stored it
+            synchronized (this) {
+                Document hit = cached(url, pin);
+                if (hit != null) {
+                    return hit;
+                }
+                partDir.mkdirs();
+            }
+            String key = sha256(url.getBytes(StandardCharsets.UTF_8));
+            File part = new File(partDir, key + PART);
+            File meta = new File(partDir, key + PART_META);
+            PartInfo info = download(url, host, headers, part, meta, progress);
+            String sha = sha256(part);
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha)) {
+                part.delete();
+                meta.delete();
+                throw new IOException("Integrity check failed for " + url + ": got " + sha);
+            }
+            return store(url, part, meta, sha, info.mimeType, pin);
+        }
+    }
+
+    /** Pins or unpins a stored document. Returns false if it isn't stored. */
+    synchronized boolean setPinned(String url, boolean pinned) {
+        ensureLoaded();
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.pinned != pinned) {
+            entry.pinned = pinned;
+            if (!pinned) {
+                evict(null);
+            }
+            writeIndex();
+        }
+        return true;
+    }
+
+    /**
+     * Makes {@code urls} exactly the pinned set among stored documents, e.g.
+     * a patient's current records after one was deleted. URLs not stored yet
+     * are pinned when opened with {@code pin}.
+     */
+    synchronized void pinOnly(Collection<String> urls) {
+        ensureLoaded();
+        Set<String> keep = new HashSet<>(urls);
+        boolean changed = false;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            boolean pinned = keep.contains(entry.getKey());
+            changed |= entry.getValue().pinned != pinned;
+            entry.getValue().pinned = pinned;
+        }
+        if (changed) {
+            evict(null);
+            writeIndex();
+        }
+    }
+
+    synchronized long storedBytes() {
+        ensureLoaded();
+        return storedBytes;
+    }
+
+    synchronized long pinnedBytes() {
+        ensureLoaded();
+        long bytes = 0;
+        for (String sha : pinnedBlobs()) {
+            bytes += blobs.get(sha).size;
+        }
+        return bytes;
+    }
+
+    /** Stored URLs; files can be fewer, since identical documents share one. */
+    synchronized int documents() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    synchronized int files() {
+        ensureLoaded();
+        return blobs.size();
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    /** Persists access times, which are otherwise only written along with other changes. */
+    synchronized void flush() {
+        if (accessDirty) {
+            writeIndex();
+        }
+    }
+
+    /** Deletes everything, pinned documents and unfinished downloads included. */
+    synchronized void clear() {
+        ensureLoaded();
+        EvictionListener listener = evictionListener;
+        for (String sha : blobs.keySet()) {
+            if (listener != null) {
+                listener.onEvicted(sha);
+            }
+        }
+        entries.clear();
+        blobs.clear();
+        storedBytes = 0;
+        deleteChildren(blobDir);
+        deleteChildren(partDir);
+        indexFile.delete();
+        accessDirty = false;
+    }
+
+    // --- Download ---
+
+    private PartInfo download(String url, String host, Map<String, String> headers, File part, File meta,
+            Progress progress) throws IOException {
+        PartInfo info = readPartInfo(meta);
+        if (info == null || !url.equals(info.url)) {
+            info = null;
+            part.delete();
+        }
+        Semaphore slots = slotsFor(host);
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                pause(RETRY_BASE_MS << (attempt - 1));
+            }
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + host);
+            }
+            HttpURLConnection conn = null;
+            try {
+                long have = info != null && part.isFile() ? part.length() : 0;
+                conn = (HttpURLConnection) new URL(url).openConnection();
+                conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                conn.setReadTimeout(READ_TIMEOUT_MS);
+                // Ranges count bytes as stored, which a transparent gzip would not be
+                conn.setRequestProperty("Accept-Encoding", "identity");
+                if (headers != null) {
+                    for (Map.Entry<String, String> header : headers.entrySet()) {
+                        conn.setRequestProperty(header.getKey(), header.getValue());
+                    }
+                }
+                if (have > 0) {
+                    conn.setRequestProperty("Range", "bytes=" + have + "-");
+                    if (info.validator != null) {
+                        conn.setRequestProperty("If-Range", info.validator);
+                    }
+                }
+                int status = conn.getResponseCode();
+                boolean append;
+                if (status == 206 && have > 0) {
+                    long[] range = parseContentRange(conn.getHeaderField("Content-Range"));
+                    if (range == null || range[0] != have || (info.total >= 0 && range[1] >= 0 && range[1] != info.total)) {
+                        // Not the rest of what we have; start over on the next attempt
+                        info = null;
+                        part.delete();
+                        meta.delete();
+                        failure = new IOException("Unusable range reply for " + url);
+                        continue;
+                    }
+                    append = true;
+                } else if (status == 416 && have > 0 && have == info.total) {
+                    // The connection dropped right after the last byte
+                    return info;
+                } else if (status == 200) {
+                    // First try, a server without ranges, or a document that changed since
+                    info = new PartInfo(url, validator(conn), conn.getContentLengthLong(),
+                        mimeType(conn.getContentType(), url));
+                    writePartInfo(meta, info);
+                    append = false;
+                } else if (status == 416) {
+                    info = null;
+                    part.delete();
+                    meta.delete();
+                    failure = new IOException("Stale partial download for " + url);
+                    continue;
+                } else {
+                    throw new HttpStatusException(url, status);
+                }
+                copy(conn.getInputStream(), part, append, info.total, progress);
+                if (info.total >= 0 && part.length() != info.total) {
+                    throw new IOException("Connection closed at " + part.length() + " of " + info.total + " bytes");
+                }
+                return info;
+            } catch (HttpStatusException e) {
+                if (!e.retryable()) {
+                    throw e;
+                }
+                failure = e;
+            } catch (InterruptedIOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                failure = e;
+            } catch (IOException e) {
+                // The part file keeps what arrived; the next attempt asks for the rest
+                failure = e;
+            } finally {
+                if (conn != null) {
+                    conn.disconnect();
+                }
+                slots.release();
+            }
+        }
+        throw failure;
+    }
+
+    private static void copy(InputStream body, File part, boolean append, long total, Progress progress)
+            throws IOException {
+        long written = append ? part.length() : 0;
+        byte[] buf = new byte[BUFFER_BYTES];
+        try (InputStream in = body; OutputStream out = new FileOutputStream(part, append)) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+                written += n;
+                if (progress != null) {
+                    progress.onProgress(written, total);
+                }
+            }
+        }
+    }
+
+    private synchronized Semaphore slotsFor(String host) {
+        return hostSlots.computeIfAbsent(host, key -> new Semaphore(maxPerHost, true));
+    }
+
+    private static void pause(long ms) throws InterruptedIOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted between attempts");
+        }
+    }
+
+    // --- Index (callers hold the lock) ---
+
+    private Document cached(String url, boolean pin) {
+        ensureLoaded();
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+        Blob blob = blobs.get(entry.sha256);
+        File file = new File(blobDir, entry.sha256);
+        if (file.length() != blob.size) {
+            // Deleted or cut short behind our back (storage cleaner, full disk)
+            dropBlob(entry.sha256);
+            writeIndex();
+            return null;
+        }
+        blob.lastAccessMs = clock.getAsLong();
+        accessDirty = true;
+        if (pin && !entry.pinned) {
+            entry.pinned = true;
+            writeIndex();
+        }
+        return new Document(url, entry.sha256, file, blob.size, entry.mimeType, entry.pinned, true);
+    }
+
+    private synchronized Document store(String url, File part, File meta, String sha, String mimeType, boolean pin)
+            throws IOException {
+        ensureLoaded();
+        blobDir.mkdirs();
+        File file = new File(blobDir, sha);
+        long size = part.length();
+        Blob blob = blobs.get(sha);
+        if (blob != null && file.length() == size) {
+            // Same bytes under another URL
+            part.delete();
+        } else if (!part.renameTo(file)) {
+            part.delete();
+            meta.delete();
+            throw new IOException("Could not move " + part + " into place");
+        }
+        meta.delete();
+        if (blob == null) {
+            blob = new Blob(size, 0);
+            blobs.put(sha, blob);
+            storedBytes += size;
+        }
+        blob.lastAccessMs = clock.getAsLong();
+
+        Entry entry = entries.get(url);
+        String previous = entry == null ? null : entry.sha256;
+        if (entry == null) {
+            entry = new Entry(sha, mimeType, pin);
+            entries.put(url, entry);
+        } else {
+            entry.sha256 = sha;
+            entry.mimeType = mimeType;
+            entry.pinned |= pin;
+        }
+        if (previous != null && !previous.equals(sha) && !referenced(previous)) {
+            dropBlob(previous);
+        }
+        evict(sha);
+        writeIndex();
+        return new Document(url, sha, file, size, mimeType, entry.pinned, false);
+    }
+
+    private void evict(String keep) {
+        if (storedBytes <= maxBytes) {
+            return;
+        }
+        Set<String> pinned = pinnedBlobs();
+        List<Map.Entry<String, Blob>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Blob> blob : blobs.entrySet()) {
+            if (!pinned.contains(blob.getKey()) && !blob.getKey().equals(keep)) {
+                candidates.add(blob);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(a.getValue().lastAccessMs, b.getValue().lastAccessMs));
+        for (int i = 0; i < candidates.size() && storedBytes > maxBytes; i++) {
+            dropBlob(candidates.get(i).getKey());
+        }
+    }
+
+    private Set<String> pinnedBlobs() {
+        Set<String> pinned = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.pinned) {
+                pinned.add(entry.sha256);
+            }
+        }
+        return pinned;
+    }
+
+    private boolean referenced(String sha) {
+        for (Entry entry : entries.values()) {
+            if (entry.sha256.equals(sha)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Deletes a file and every URL that pointed at it. */
+    private void dropBlob(String sha) {
+        Blob blob = blobs.remove(sha);
+        if (blob != null) {
+            storedBytes -= blob.size;
+        }
+        entries.values().removeIf(entry -> entry.sha256.equals(sha));
+        new File(blobDir, sha).delete();
+        EvictionListener listener = evictionListener;
+        if (listener != null) {
+            listener.onEvicted(sha);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (indexFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                    throw new IOException("Unknown index format");
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    String sha = in.readUTF();
+                    blobs.put(sha, new Blob(in.readLong(), in.readLong()));
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    String url = in.readUTF();
+                    entries.put(url, new Entry(in.readUTF(), in.readUTF(), in.readBoolean()));
+                }
+            } catch (IOException e) {
+                // Unreadable: start empty rather than trust half of it
+                entries.clear();
+                blobs.clear();
+            }
+        }
+        // Files the index doesn't know (a crash between rename and index write) can't be found again
+        Set<String> known = new HashSet<>();
+        for (Iterator<Map.Entry<String, Blob>> it = blobs.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Blob> blob = it.next();
+            if (new File(blobDir, blob.getKey()).length() == blob.getValue().size) {
+                known.add(blob.getKey());
+                storedBytes += blob.getValue().size;
+            } else {
+                it.remove();
+            }
+        }
+        entries.values().removeIf(entry -> !known.contains(entry.sha256));
+        File[] files = blobDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!known.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+        // Part files stay for resuming, unless their description is gone
+        File[] parts = partDir.listFiles();
+        if (parts != null) {
+            for (File file : parts) {
+                String name = file.getName();
+                if (name.endsWith(PART)
+                        && !new File(partDir, name.substring(0, name.length() - PART.length()) + PART_META).isFile()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void writeIndex() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(blobs.size());
+            for (Map.Entry<String, Blob> blob : blobs.entrySet()) {
+                out.writeUTF(blob.getKey());
+                out.writeLong(blob.getValue().size);
+                out.writeLong(blob.getValue().lastAccessMs);
+            }
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().sha256);
+                out.writeUTF(entry.getValue().mimeType);
+                out.writeBoolean(entry.getValue().pinned);
+            }
+            indexFile.getParentFile().mkdirs();
+            writeAtomically(indexFile, bytes.toByteArray());
+            accessDirty = false;
+        } catch (IOException e) {
+            // Files on disk are still right; a lost index only costs downloads
+        }
+    }
+
+    // --- Helpers ---
+
+    private static PartInfo readPartInfo(File meta) {
+        if (!meta.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(meta))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            String url = in.readUTF();
+            String validator = in.readUTF();
+            long total = in.readLong();
+            String mimeType = in.readUTF();
+            return new PartInfo(url, validator.isEmpty() ? null : validator, total, mimeType);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writePartInfo(File meta, PartInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT);
+            out.writeUTF(info.url);
+            out.writeUTF(info.validator == null ? "" : info.validator);
+            out.writeLong(info.total);
+            out.writeUTF(info.mimeType);
+        }
+        writeAtomically(meta, bytes.toByteArray());
+    }
+
+    /** A strong ETag, else Last-Modified; If-Range can't use a weak ETag. */
+    private static String validator(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return conn.getHeaderField("Last-Modified");
+    }
+
+    /** {@code bytes 100-999/1000} as {start, total}; total is -1 for {@code *}. Null if malformed. */
+    static long[] parseContentRange(String header) {
+        if (header == null || !header.startsWith("bytes ")) {
+            return null;
+        }
+        int dash = header.indexOf('-');
+        int slash = header.indexOf('/');
+        if (dash < 0 || slash < dash) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(header.substring(6, dash).trim());
+            String total = header.substring(slash + 1).trim();
+            return new long[] { start, total.equals("*") ? -1 : Long.parseLong(total) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** The server's type, or one guessed from the extension when it only says octet-stream. */
+    static String mimeType(String contentType, String url) {
+        String type = contentType == null ? "" : contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        if (!type.isEmpty() && !type.equals("application/octet-stream") && !type.equals("binary/octet-stream")) {
+            return type;
+        }
+        String path = url.split("[?#]", 2)[0].toLowerCase(Locale.ROOT);
+        if (path.endsWith(".pdf")) {
+            return "application/pdf";
+        } else if (path.endsWith(".jpg") || path.endsWith(".jpeg")) {
+            return "image/jpeg";
+        } else if (path.endsWith(".png")) {
+            return "image/png";
+        } else if (path.endsWith(".webp")) {
+            return "image/webp";
+        } else if (path.endsWith(".dcm")) {
+            return "application/dicom";
+        }
+        return "application/octet-stream";
+    }
+
+    private static String hostOf(String url) {
+        try {
+            URI uri = new URI(url);
+            String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+            if (uri.getHost() == null || !(scheme.equals("http") || scheme.equals("https"))) {
+                return null;
+            }
+            return uri.getHost().toLowerCase(Locale.ROOT) + ":" + uri.getPort();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static void deleteChildren(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void writeAtomically(File target, byte[] data) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Could not move " + tmp + " into place");
+        }
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest = sha256Digest();
+        byte[] buf = new byte[BUFFER_BYTES];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static String sha256(byte[] data) {
+        return hex(sha256Digest().digest(data));
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,287 @@
+package com.cureon.telemed;
+
+import android.content.ActivityNotFoundException;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Medical documents from {@link DocumentStore}: {@code open} returns a
+ * {@code /_blob/} handle for viewing inside the WebView, and {@code view}
+ * hands the file to an external viewer through the app's FileProvider.
+ * Both download at most once. {@code pin: true} (a patient's own records)
+ * keeps a document out of eviction. Download progress is reported as
+ * {@code documentProgress}, and prefetches as {@code documentReady} or
+ * {@code documentFailed}.
+ */
+@CapacitorPlugin(name = "DocumentStore")
+public class DocumentStorePlugin extends Plugin {
+    private static final String TAG = "DocumentStorePlugin";
+    // Files live in filesDir/documents/blobs, which file_paths.xml exposes as "documents"
+    private static final String DIR = "documents";
+    // More than the per-host limit, so a slow host's queue doesn't hold up the others
+    private static final int THREADS = 4;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final int TRACE_OPEN = PerfTrace.shared().name("DocumentStore.open");
+
+    private DocumentStore store;
+    private BlobStore blobs;
+    private final ExecutorService downloads = Executors.newFixedThreadPool(THREADS);
+    // One handle per stored file, so reopening a document doesn't pile up BlobStore entries
+    private final Map<String, String> handles = new HashMap<>();
+
+    @Override
+    public void load() {
+        store = new DocumentStore(new File(getContext().getFilesDir(), DIR), DocumentStore.DEFAULT_MAX_BYTES,
+            DocumentStore.DEFAULT_MAX_PER_HOST,
+            // Wall time: last access is stored on disk and has to survive reboots
+            System::currentTimeMillis);
+        blobs = BlobChannelPlugin.store(getContext());
+        store.setEvictionListener(sha -> {
+            String id;
+            synchronized (handles) {
+                id = handles.remove(sha);
+            }
+            if (id != null) {
+                blobs.free(id);
+            }
+        });
+    }
+
+    @Override
+    protected void handleOnPause() {
+        // Access times only decide eviction order, so a flush queued behind downloads is fine
+        downloads.execute(store::flush);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        downloads.shutdownNow();
+    }
+
+    /** {@code {url, pin?, sha256?, headers?}}: resolves with a blob handle plus sha256, cached and pinned. */
+    @PluginMethod
+    public void open(PluginCall call) {
+        String url = call.getString("url", "");
+        if (url == null || url.isEmpty()) {
+            call.reject("Missing url");
+            return;
+        }
+        downloads.execute(() -> {
+            PerfTrace.shared().begin(TRACE_OPEN);
+            try {
+                DocumentStore.Document doc = fetch(call, url);
+                JSObject result = BlobChannelPlugin.handle(blobs.get(handleFor(doc)));
+                result.put("success", true);
+                describe(result, doc);
+                call.resolve(result);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not open " + url + ": " + e.getMessage());
+                call.reject("Failed to open document: " + e.getMessage());
+            } finally {
+                PerfTrace.shared().end(TRACE_OPEN);
+            }
+        });
+    }
+
+    /** Like {@code open}, then shows the document in whatever app handles its type. */
+    @PluginMethod
+    public void view(PluginCall call) {
+        String url = call.getString("url", "");
+        if (url == null || url.isEmpty()) {
+            call.reject("Missing url");
+            return;
+        }
+        downloads.execute(() -> {
+            DocumentStore.Document doc;
+            try {
+                doc = fetch(call, url);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not open " + url + ": " + e.getMessage());
+                call.reject("Failed to open document: " + e.getMessage());
+                return;
+            }
+            Intent intent = new Intent(Intent.ACTION_VIEW)
+                .setDataAndType(uri(getContext(), doc.file), doc.mimeType)
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            getActivity().runOnUiThread(() -> {
+                try {
+                    getActivity().startActivity(intent);
+                    JSObject result = new JSObject();
+                    result.put("success", true);
+                    describe(result, doc);
+                    call.resolve(result);
+                } catch (ActivityNotFoundException e) {
+                    call.reject("No app on this device can open " + doc.mimeType);
+                }
+            });
+        });
+    }
+
+    /**
+     * {@code {urls, pin?}}: downloads in the background and resolves at once.
+     * Each document reports {@code documentReady} or {@code documentFailed}.
+     */
+    @PluginMethod
+    public void prefetch(PluginCall call) {
+        List<String> urls = urls(call);
+        if (urls == null) {
+            return;
+        }
+        boolean pin = call.getBoolean("pin", false);
+        for (String url : urls) {
+            downloads.execute(() -> {
+                JSObject event = new JSObject();
+                event.put("url", url);
+                try {
+                    DocumentStore.Document doc = store.open(url, null, null, pin, progress(url));
+                    describe(event, doc);
+                    notifyListeners("documentReady", event);
+                } catch (IOException e) {
+                    event.put("error", e.getMessage());
+                    notifyListeners("documentFailed", event);
+                }
+            });
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("queued", urls.size());
+        call.resolve(result);
+    }
+
+    /** {@code {urls}}: exactly these stored documents are pinned, e.g. the signed-in patient's records. */
+    @PluginMethod
+    public void pinOnly(PluginCall call) {
+        List<String> urls = urls(call);
+        if (urls == null) {
+            return;
+        }
+        store.pinOnly(urls);
+        call.resolve(status());
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        JSObject result = status();
+        String url = call.getString("url");
+        if (url != null) {
+            DocumentStore.Document doc = store.cached(url);
+            result.put("cached", doc != null);
+            result.put("pinned", doc != null && doc.pinned);
+        }
+        call.resolve(result);
+    }
+
+    /** Deletes every stored document, pinned ones included; for sign-out. */
+    @PluginMethod
+    public void clear(PluginCall call) {
+        store.clear();
+        call.resolve(status());
+    }
+
+    private DocumentStore.Document fetch(PluginCall call, String url) throws IOException {
+        return store.open(url, headers(call.getObject("headers")), call.getString("sha256"),
+            call.getBoolean("pin", false), progress(url));
+    }
+
+    private String handleFor(DocumentStore.Document doc) throws FileNotFoundException {
+        synchronized (handles) {
+            String id = handles.get(doc.sha256);
+            if (id == null || blobs.get(id) == null) {
+                // Not owned: the file belongs to the document store, not to the page
+                id = blobs.putFile(doc.file, doc.mimeType, false);
+                handles.put(doc.sha256, id);
+            }
+            return id;
+        }
+    }
+
+    private DocumentStore.Progress progress(String url) {
+        long[] last = { 0 };
+        return (bytes, total) -> {
+            long now = SystemClock.elapsedRealtime();
+            if (now - last[0] < PROGRESS_INTERVAL_MS && bytes != total) {
+                return;
+            }
+            last[0] = now;
+            JSObject event = new JSObject();
+            event.put("url", url);
+            event.put("bytes", bytes);
+            event.put("total", total);
+            notifyListeners("documentProgress", event);
+        };
+    }
+
+    private JSObject status() {
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("documents", store.documents());
+        result.put("files", store.files());
+        result.put("bytes", store.storedBytes());
+        result.put("pinnedBytes", store.pinnedBytes());
+        result.put("maxBytes", store.maxBytes());
+        return result;
+    }
+
+    private static void describe(JSObject result, DocumentStore.Document doc) {
+        result.put("sha256", doc.sha256);
+        result.put("cached", doc.cached);
+        result.put("pinned", doc.pinned);
+    }
+
+    private static List<String> urls(PluginCall call) {
+        JSArray urls = call.getArray("urls");
+        if (urls == null) {
+            call.reject("Missing urls");
+            return null;
+        }
+        try {
+            return urls.toList();
+        } catch (JSONException e) {
+            call.reject("Invalid urls: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, String> headers(JSObject object) {
+        if (object == null) {
+            return null;
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+            String name = keys.next();
+            String value = object.getString(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return headers;
+    }
+
+    private static Uri uri(Context context, File file) {
+        return FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", file);
+    }
+}
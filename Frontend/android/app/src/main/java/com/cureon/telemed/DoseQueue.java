@@ -0,0 +1,514 @@
+package com.cureon.telemed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Every medication reminder on the phone, and the one alarm that has to be
+ * registered for them.
+ *
+ * <p>Each schedule keeps its next dose in a min-heap ordered by due time, so
+ * only the head is ever handed to AlarmManager however many medications and
+ * doses there are. When the alarm fires, {@link #collectDue} pops every dose
+ * that is due, advances each schedule to its following dose and returns them
+ * to be shown together. Snoozes are one-off heap entries of their own.
+ * Removed and replaced schedules leave stale entries behind that are
+ * skipped when they reach the head.
+ *
+ * <p>Schedules live in one small binary file, rewritten with fsync and rename
+ * when they change and checked with a CRC. Because doses are popped in time
+ * order, "everything due up to T has been shown" is a single timestamp; it
+ * goes to a 16-byte cursor file, so an alarm costs one tiny write however
+ * many schedules there are, and a reboot catches up on exactly what it slept
+ * through. What the patient did with each dose is appended to a log.
+ */
+final class DoseQueue {
+    static final int TAKEN = 1;
+    static final int SNOOZED = 2;
+    static final int MISSED = 3;
+
+    static final String SCHEDULES_FILE = "schedules.bin";
+    static final String LOG_FILE = "doses.log";
+    static final String CURSOR_FILE = "shown";
+
+    private static final int MAGIC = 0x4D454452; // "MEDR"
+    private static final int VERSION = 1;
+    // A dose this late when the phone wakes up is logged as missed instead of shown
+    static final long LATE_MS = 2 * 60 * 60_000L;
+    // After a long power-off, catch up on at most a day of doses
+    static final long CATCH_UP_MS = 24 * 60 * 60_000L;
+    private static final int CURSOR_BYTES = 16;
+    private static final long CURSOR_CHECK = 0x5EED5EEDL;
+    // The log is trimmed to its newest half past this
+    static final long MAX_LOG_BYTES = 256 * 1024;
+
+    /** A dose to show now. */
+    static final class Due {
+        final DoseSchedule schedule;
+        // When it fires: the dose time, or the end of a snooze
+        final long at;
+        // The dose it is for; taken and snoozed are logged against this
+        final long doseAt;
+
+        Due(DoseSchedule schedule, long at, long doseAt) {
+            this.schedule = schedule;
+            this.at = at;
+            this.doseAt = doseAt;
+        }
+    }
+
+    /** What happened to one dose. */
+    static final class Entry {
+        final String scheduleId;
+        final long doseAt;
+        final long at;
+        final int action;
+
+        Entry(String scheduleId, long doseAt, long at, int action) {
+            this.scheduleId = scheduleId;
+            this.doseAt = doseAt;
+            this.at = at;
+            this.action = action;
+        }
+    }
+
+    private static final class State {
+        final DoseSchedule schedule;
+        // Nothing before this is due, however the cursor moves
+        final long addedAt;
+        // The dose shown last; the next one is found after this
+        long lastShownAt;
+        // The live heap entries; anything else in the heap for this schedule is stale
+        Due next;
+        Due snooze;
+
+        State(DoseSchedule schedule, long addedAt) {
+            this.schedule = schedule;
+            this.addedAt = addedAt;
+            this.lastShownAt = addedAt;
+        }
+    }
+
+    private final File dir;
+    private final Map<String, State> states = new LinkedHashMap<>();
+    private final PriorityQueue<Due> heap = new PriorityQueue<>(64, (a, b) -> Long.compare(a.at, b.at));
+    private final Map<Due, State> owners = new IdentityHashMap<>();
+    private ZoneId zone;
+    // Everything due up to here has been shown or logged as missed
+    private long shownThrough;
+
+    DoseQueue(File dir, ZoneId zone, long now) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create reminder directory " + dir);
+        }
+        this.dir = dir;
+        this.zone = zone;
+        readCursor();
+        load();
+        trimLog();
+        rebuild(now);
+    }
+
+    /** Adds or replaces schedules by id, with one write however many there are. */
+    synchronized void putAll(Collection<DoseSchedule> schedules, long now) throws IOException {
+        for (DoseSchedule schedule : schedules) {
+            State old = states.remove(schedule.id);
+            if (old != null) {
+                retire(old);
+            }
+            // Nothing before now is due for a new schedule
+            State state = new State(schedule, now);
+            states.put(schedule.id, state);
+            arm(state);
+        }
+        save();
+    }
+
+    synchronized void put(DoseSchedule schedule, long now) throws IOException {
+        putAll(Collections.singletonList(schedule), now);
+    }
+
+    synchronized boolean remove(String id) throws IOException {
+        State state = states.remove(id);
+        if (state == null) {
+            return false;
+        }
+        retire(state);
+        save();
+        return true;
+    }
+
+    synchronized void clear() throws IOException {
+        states.clear();
+        heap.clear();
+        owners.clear();
+        save();
+        Files.deleteIfExists(new File(dir, LOG_FILE).toPath());
+    }
+
+    synchronized List<DoseSchedule> schedules() {
+        List<DoseSchedule> result = new ArrayList<>(states.size());
+        for (State state : states.values()) {
+            result.add(state.schedule);
+        }
+        return result;
+    }
+
+    synchronized DoseSchedule get(String id) {
+        State state = states.get(id);
+        return state != null ? state.schedule : null;
+    }
+
+    /** The schedule's next reminder, a snooze included, or -1 if it has none left. */
+    synchronized long nextFor(String id) {
+        State state = states.get(id);
+        if (state == null) {
+            return -1;
+        }
+        long next = state.next != null ? state.next.at : -1;
+        if (state.snooze != null && (next < 0 || state.snooze.at < next)) {
+            next = state.snooze.at;
+        }
+        return next;
+    }
+
+    /** When the alarm should next go off, or -1 if nothing is scheduled. */
+    synchronized long nextAlarmAt() {
+        Due head = head();
+        return head != null ? head.at : -1;
+    }
+
+    synchronized int size() {
+        return states.size();
+    }
+
+    /**
+     * Pops everything due by {@code now} and moves each schedule on to its
+     * next dose. Doses more than {@link #LATE_MS} late are logged as missed
+     * rather than returned.
+     */
+    synchronized List<Due> collectDue(long now) throws IOException {
+        List<Due> due = new ArrayList<>();
+        List<Entry> missed = new ArrayList<>();
+        boolean popped = false;
+        Due head;
+        while ((head = head()) != null && head.at <= now) {
+            popped = true;
+            heap.poll();
+            State state = owners.remove(head);
+            if (head == state.snooze) {
+                state.snooze = null;
+                due.add(head);
+                continue;
+            }
+            state.next = null;
+            state.lastShownAt = head.at;
+            if (now - head.at > LATE_MS) {
+                missed.add(new Entry(state.schedule.id, head.at, now, MISSED));
+            } else {
+                due.add(head);
+            }
+            arm(state);
+        }
+        if (popped) {
+            // A clock set back doesn't bring shown doses back
+            shownThrough = Math.max(shownThrough, now);
+            writeCursor();
+            append(missed);
+        }
+        return due;
+    }
+
+    synchronized void taken(String id, long doseAt, long now) throws IOException {
+        State state = states.get(id);
+        if (state != null && state.snooze != null && state.snooze.doseAt == doseAt) {
+            // Taken from the first notification after snoozing it
+            owners.remove(state.snooze);
+            heap.remove(state.snooze);
+            state.snooze = null;
+            save();
+        }
+        append(Collections.singletonList(new Entry(id, doseAt, now, TAKEN)));
+    }
+
+    /** Shows the dose again at {@code until}; a second snooze replaces the first. */
+    synchronized boolean snooze(String id, long doseAt, long until, long now) throws IOException {
+        State state = states.get(id);
+        if (state == null) {
+            return false;
+        }
+        if (state.snooze != null) {
+            owners.remove(state.snooze);
+            heap.remove(state.snooze);
+        }
+        state.snooze = new Due(state.schedule, until, doseAt);
+        push(state.snooze, state);
+        save();
+        append(Collections.singletonList(new Entry(id, doseAt, now, SNOOZED)));
+        return true;
+    }
+
+    /** After a time-zone change: the same wall-clock times in the new zone. */
+    synchronized void rezone(ZoneId zone, long now) {
+        if (zone.equals(this.zone)) {
+            return;
+        }
+        this.zone = zone;
+        rebuild(now);
+    }
+
+    /** The log since {@code sinceMs}, oldest first. */
+    synchronized List<Entry> history(long sinceMs) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        File file = new File(dir, LOG_FILE);
+        if (!file.exists()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readByte());
+                } catch (EOFException e) {
+                    // The end, or a record torn by a crash
+                    break;
+                }
+                if (entry.at >= sinceMs) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Due head() {
+        Due head;
+        while ((head = heap.peek()) != null && !owners.containsKey(head)) {
+            heap.poll();
+        }
+        return head;
+    }
+
+    private void arm(State state) {
+        long at = state.schedule.nextDoseAfter(state.lastShownAt, zone);
+        if (at > 0) {
+            state.next = new Due(state.schedule, at, at);
+            push(state.next, state);
+        }
+    }
+
+    private void push(Due due, State state) {
+        owners.put(due, state);
+        heap.add(due);
+    }
+
+    private void retire(State state) {
+        // Left in the heap; head() drops them once they surface
+        if (state.next != null) {
+            owners.remove(state.next);
+        }
+        if (state.snooze != null) {
+            owners.remove(state.snooze);
+        }
+    }
+
+    private void rebuild(long now) {
+        heap.clear();
+        owners.clear();
+        List<Due> entries = new ArrayList<>(states.size() + 8);
+        for (State state : states.values()) {
+            state.lastShownAt = Math.max(state.lastShownAt, now - CATCH_UP_MS);
+            long at = state.schedule.nextDoseAfter(state.lastShownAt, zone);
+            state.next = at > 0 ? new Due(state.schedule, at, at) : null;
+            if (state.next != null) {
+                entries.add(state.next);
+                owners.put(state.next, state);
+            }
+            if (state.snooze != null) {
+                entries.add(state.snooze);
+                owners.put(state.snooze, state);
+            }
+        }
+        // One O(n) heapify rather than n inserts
+        heap.addAll(entries);
+    }
+
+    private void load() throws IOException {
+        File file = new File(dir, SCHEDULES_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length < 12) {
+            throw new IOException("Truncated reminder store");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if (ByteBuffer.wrap(bytes).getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IOException("Reminder store checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a reminder store");
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            String name = in.readUTF();
+            String dosage = in.readUTF();
+            String instructions = in.readUTF();
+            short[] minutes = new short[in.readUnsignedByte()];
+            for (int j = 0; j < minutes.length; j++) {
+                minutes[j] = in.readShort();
+            }
+            long startDay = in.readInt();
+            int endDay = in.readInt();
+            State state = new State(new DoseSchedule(id, name, dosage, instructions, minutes, startDay,
+                endDay == Integer.MAX_VALUE ? DoseSchedule.OPEN_ENDED : endDay), in.readLong());
+            state.lastShownAt = Math.max(state.addedAt, shownThrough);
+            if (in.readBoolean()) {
+                long snoozeAt = in.readLong();
+                long snoozeDoseAt = in.readLong();
+                // Shown before the cursor was last written
+                if (snoozeAt > shownThrough) {
+                    state.snooze = new Due(state.schedule, snoozeAt, snoozeDoseAt);
+                }
+            }
+            states.put(id, state);
+        }
+    }
+
+    private void save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + states.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(states.size());
+        for (State state : states.values()) {
+            DoseSchedule schedule = state.schedule;
+            out.writeUTF(schedule.id);
+            out.writeUTF(schedule.name);
+            out.writeUTF(schedule.dosage);
+            out.writeUTF(schedule.instructions);
+            out.writeByte(schedule.minutes.length);
+            for (short minute : schedule.minutes) {
+                out.writeShort(minute);
+            }
+            // Epoch days fit an int for the next five million years
+            out.writeInt((int) schedule.startDay);
+            out.writeInt((int) Math.min(schedule.endDay, Integer.MAX_VALUE));
+            out.writeLong(state.addedAt);
+            out.writeBoolean(state.snooze != null);
+            if (state.snooze != null) {
+                out.writeLong(state.snooze.at);
+                out.writeLong(state.snooze.doseAt);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        File tmp = new File(dir, SCHEDULES_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            bytes.writeTo(stream);
+            stream.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, SCHEDULES_FILE))) {
+            throw new IOException("Cannot commit reminder store");
+        }
+    }
+
+    private void readCursor() throws IOException {
+        File file = new File(dir, CURSOR_FILE);
+        if (file.length() < CURSOR_BYTES) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        long through = buf.getLong(0);
+        if (buf.getLong(8) == (through ^ CURSOR_CHECK)) {
+            shownThrough = through;
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(CURSOR_BYTES);
+        buf.putLong(0, shownThrough);
+        buf.putLong(8, shownThrough ^ CURSOR_CHECK);
+        File tmp = new File(dir, CURSOR_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            stream.write(buf.array());
+            stream.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, CURSOR_FILE))) {
+            throw new IOException("Cannot commit reminder cursor");
+        }
+    }
+
+    private void append(List<Entry> entries) throws IOException {
+        if (!entries.isEmpty()) {
+            write(new File(dir, LOG_FILE), entries, true);
+        }
+    }
+
+    private static void write(File file, List<Entry> entries, boolean append) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file, append);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            for (Entry entry : entries) {
+                out.writeUTF(entry.scheduleId);
+                out.writeLong(entry.doseAt);
+                out.writeLong(entry.at);
+                out.writeByte(entry.action);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    private void trimLog() throws IOException {
+        File file = new File(dir, LOG_FILE);
+        if (file.length() <= MAX_LOG_BYTES) {
+            return;
+        }
+        List<Entry> entries = history(0);
+        File tmp = new File(dir, LOG_FILE + ".tmp");
+        write(tmp, entries.subList(entries.size() / 2, entries.size()), false);
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot trim dose log");
+        }
+    }
+
+    static String actionName(int action) {
+        switch (action) {
+            case TAKEN:
+                return "taken";
+            case SNOOZED:
+                return "snoozed";
+            case MISSED:
+                return "missed";
+            default:
+                return "unknown";
+        }
+    }
+}
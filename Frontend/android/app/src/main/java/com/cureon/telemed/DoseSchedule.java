@@ -0,0 +1,201 @@
+package com.cureon.telemed;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One medication's dose times, as minutes after local midnight, repeated
+ * daily over a course of days. Times are wall-clock, so a dose due at 08:00
+ * stays at 08:00 after the phone changes time zone or daylight saving.
+ *
+ * <p>Also turns a prescription's free-text frequency ("Twice daily", "1-0-1",
+ * "every 6 hours") and duration ("5 days", "2 weeks") into times and days.
+ */
+final class DoseSchedule {
+    static final long OPEN_ENDED = Long.MAX_VALUE;
+
+    // Default clock times for the usual Indian prescription slots
+    static final int MORNING = 8 * 60;
+    static final int AFTERNOON = 14 * 60;
+    static final int EVENING = 20 * 60;
+    static final int BEDTIME = 21 * 60 + 30;
+
+    private static final Pattern TIMES_PER_DAY = Pattern.compile(
+        "\\b(\\d+|once|twice|thrice|three|four)\\s*(?:times?|x)?\\s*(?:a|per|/|in a)?\\s*(?:day|daily)");
+    private static final Pattern EVERY_HOURS = Pattern.compile("every\\s*(\\d+)\\s*(?:hours?|hrs?|h)\\b");
+    private static final Pattern SLOTS = Pattern.compile("\\b([01])\\s*-\\s*([01])\\s*-\\s*([01])(?:\\s*-\\s*([01]))?\\b");
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*(day|week|month)s?");
+
+    final String id;
+    final String name;
+    final String dosage;
+    final String instructions;
+    // Sorted and distinct
+    final short[] minutes;
+    // LocalDate epoch days, inclusive
+    final long startDay;
+    final long endDay;
+
+    DoseSchedule(String id, String name, String dosage, String instructions, short[] minutes,
+            long startDay, long endDay) {
+        if (minutes.length == 0) {
+            throw new IllegalArgumentException("No dose times for " + name);
+        }
+        TreeSet<Short> sorted = new TreeSet<>();
+        for (short minute : minutes) {
+            if (minute < 0 || minute >= 24 * 60) {
+                throw new IllegalArgumentException("Bad dose time: " + minute);
+            }
+            sorted.add(minute);
+        }
+        this.id = id;
+        this.name = name;
+        this.dosage = dosage != null ? dosage : "";
+        this.instructions = instructions != null ? instructions : "";
+        this.minutes = new short[sorted.size()];
+        int i = 0;
+        for (short minute : sorted) {
+            this.minutes[i++] = minute;
+        }
+        this.startDay = startDay;
+        this.endDay = endDay;
+    }
+
+    /** First dose strictly after {@code afterMs}, or -1 once the course is over. */
+    long nextDoseAfter(long afterMs, ZoneId zone) {
+        long day = Math.max(startDay, Instant.ofEpochMilli(afterMs).atZone(zone).toLocalDate().toEpochDay());
+        // Today's remaining doses, else tomorrow's first; a DST gap can push one past the other
+        for (int i = 0; i < 3 && day <= endDay; i++, day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            for (short minute : minutes) {
+                long at = date.atTime(LocalTime.of(minute / 60, minute % 60)).atZone(zone).toInstant().toEpochMilli();
+                if (at > afterMs) {
+                    return at;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Dose times for a prescription frequency, or null if it can't be read
+     * (e.g. "as needed"); the page then asks the patient for times.
+     */
+    static short[] parseFrequency(String frequency) {
+        if (frequency == null) {
+            return null;
+        }
+        String text = frequency.toLowerCase(Locale.ROOT).trim();
+        Matcher slots = SLOTS.matcher(text);
+        if (slots.find()) {
+            // 1-0-1 is morning-afternoon-night, 1-1-1-1 adds bedtime
+            int[] at = slots.group(4) != null
+                ? new int[] { MORNING, AFTERNOON, EVENING, BEDTIME }
+                : new int[] { MORNING, AFTERNOON, EVENING };
+            short[] times = new short[at.length];
+            int n = 0;
+            for (int i = 0; i < at.length; i++) {
+                if ("1".equals(slots.group(i + 1))) {
+                    times[n++] = (short) at[i];
+                }
+            }
+            return n > 0 ? Arrays.copyOf(times, n) : null;
+        }
+        Matcher every = EVERY_HOURS.matcher(text);
+        if (every.find()) {
+            int hours = Integer.parseInt(every.group(1));
+            if (hours < 1 || hours > 24) {
+                return null;
+            }
+            short[] times = new short[24 / hours];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = (short) ((MORNING + i * hours * 60) % (24 * 60));
+            }
+            Arrays.sort(times);
+            return times;
+        }
+        if (text.contains("bedtime") || text.equals("hs") || text.contains("at night")) {
+            return new short[] { BEDTIME };
+        }
+        int perDay = -1;
+        Matcher times = TIMES_PER_DAY.matcher(text);
+        if (times.find()) {
+            perDay = countOf(times.group(1));
+        } else if (text.equals("od") || text.equals("daily") || text.equals("once")) {
+            perDay = 1;
+        } else if (text.equals("bd") || text.equals("bid")) {
+            perDay = 2;
+        } else if (text.equals("tds") || text.equals("tid")) {
+            perDay = 3;
+        } else if (text.equals("qid") || text.equals("qds")) {
+            perDay = 4;
+        } else if (text.contains("morning")) {
+            return new short[] { MORNING };
+        }
+        switch (perDay) {
+            case 1:
+                return new short[] { MORNING };
+            case 2:
+                return new short[] { MORNING, EVENING };
+            case 3:
+                return new short[] { MORNING, AFTERNOON, EVENING };
+            case 4:
+                return new short[] { MORNING, 12 * 60, 16 * 60, EVENING };
+            default:
+                return null;
+        }
+    }
+
+    /** Days in a prescription duration, or 0 if it has none ("continue", blank). */
+    static int parseDurationDays(String duration) {
+        if (duration == null) {
+            return 0;
+        }
+        Matcher matcher = DURATION.matcher(duration.toLowerCase(Locale.ROOT));
+        if (!matcher.find()) {
+            return 0;
+        }
+        int count = Integer.parseInt(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "week":
+                return count * 7;
+            case "month":
+                return count * 30;
+            default:
+                return count;
+        }
+    }
+
+    /** "08:30" to minutes after midnight. */
+    static short parseTime(String time) {
+        LocalTime parsed = LocalTime.parse(time.length() == 4 ? "0" + time : time);
+        return (short) (parsed.getHour() * 60 + parsed.getMinute());
+    }
+
+    static String formatTime(short minute) {
+        return String.format(Locale.ROOT, "%02d:%02d", minute / 60, minute % 60);
+    }
+
+    private static int countOf(String word) {
+        switch (word) {
+            case "once":
+                return 1;
+            case "twice":
+                return 2;
+            case "thrice":
+            case "three":
+                return 3;
+            case "four":
+                return 4;
+            default:
+                return Integer.parseInt(word);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.cureon.telemed;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide, on-device alerting against the patient's thresholds. The rule
+ * snapshot is downloaded from the backend with the reading journal's base URL
+ * and token, kept in filesDir so alerts work offline from a cold start, and
+ * compiled into {@link HealthRules}. Readings from the BLE vitals batches and
+ * the journal are checked as they arrive; a critical hit posts a high-priority
+ * notification straight away, whether or not the WebView is alive.
+ *
+ * <p>The server stays authoritative: every reading is still uploaded and
+ * re-checked there (and only the server triggers SOS). When a bulk upload
+ * reports a different rules version the snapshot is fetched again.
+ */
+final class HealthAlerts {
+    private static final String TAG = "HealthAlerts";
+    private static final String CHANNEL_ID = "health_alerts";
+    private static final int NOTIFICATION_ID_BASE = 4201;
+    private static final String SNAPSHOT_PATH = "/api/v1/health/thresholds/snapshot";
+    private static final String JOURNAL_PREFS = "reading_journal";
+    private static final int TIMEOUT_MS = 15_000;
+    private static final int MAX_SNAPSHOT_BYTES = 256 * 1024;
+    // A reading reaches us twice (vitals batch, then the journal) but should alert once
+    private static final int SEEN_CAPACITY = 256;
+    // Within this, a repeat alert for the same type updates the notification without sound
+    private static final long REALERT_MS = 60_000;
+
+    interface Listener {
+        void onAlert(Alert alert);
+    }
+
+    interface SyncCallback {
+        void onSynced(HealthRules rules, Exception error);
+    }
+
+    static final class Alert {
+        final String type;
+        final long timestamp;
+        final String severity;
+        final String message;
+        final long rulesVersion;
+
+        Alert(String type, long timestamp, String severity, String message, long rulesVersion) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.severity = severity;
+            this.message = message;
+            this.rulesVersion = rulesVersion;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("type", type);
+                json.put("timestamp", timestamp);
+                json.put("severity", severity);
+                json.put("message", message);
+                json.put("rulesVersion", rulesVersion);
+                json.put("source", "device");
+            } catch (JSONException e) {
+                // Only thrown for non-finite numbers
+            }
+            return json;
+        }
+    }
+
+    private static HealthAlerts instance;
+
+    private final Context context;
+    private final File snapshotFile;
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean syncQueued = new AtomicBoolean();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile HealthRules rules;
+
+    private final Map<Long, Boolean> seen = new LinkedHashMap<Long, Boolean>(SEEN_CAPACITY, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > SEEN_CAPACITY;
+        }
+    };
+    private final long[] lastAlertedAt = new long[HealthRules.BLOOD_GLUCOSE + 1];
+
+    static synchronized HealthAlerts get(Context context) {
+        if (instance == null) {
+            instance = new HealthAlerts(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private HealthAlerts(Context context) {
+        this.context = context;
+        this.snapshotFile = new File(context.getFilesDir(), "health-rules.json");
+        if (snapshotFile.exists()) {
+            try {
+                rules = HealthRules.compile(new JSONObject(
+                    new String(Files.readAllBytes(snapshotFile.toPath()), StandardCharsets.UTF_8)));
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Discarding unreadable rule snapshot: " + e.getMessage());
+                snapshotFile.delete();
+            }
+        }
+        createChannel();
+    }
+
+    /** The compiled rules, or null before the first successful sync. */
+    HealthRules rules() {
+        return rules;
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Fetches the snapshot in the background unless one is already on its way.
+     * An unchanged snapshot comes back as 304 and costs no body.
+     */
+    void sync(SyncCallback callback) {
+        if (!syncQueued.compareAndSet(false, true) && callback == null) {
+            return;
+        }
+        syncExecutor.execute(() -> {
+            syncQueued.set(false);
+            try {
+                fetch();
+                if (callback != null) {
+                    callback.onSynced(rules, null);
+                }
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Rule snapshot sync failed: " + e.getMessage());
+                if (callback != null) {
+                    callback.onSynced(rules, e);
+                }
+            }
+        });
+    }
+
+    private void fetch() throws IOException, JSONException {
+        SharedPreferences prefs = context.getSharedPreferences(JOURNAL_PREFS, Context.MODE_PRIVATE);
+        String baseUrl = prefs.getString("baseUrl", null);
+        if (baseUrl == null) {
+            throw new IOException("Reading journal is not configured");
+        }
+        String token = prefs.getString("token", null);
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + SNAPSHOT_PATH).openConnection();
+        try {
+            conn.setConnectTimeout(TIMEOUT_MS);
+            conn.setReadTimeout(TIMEOUT_MS);
+            conn.setRequestProperty("Accept", "application/json");
+            if (token != null && !token.isEmpty()) {
+                conn.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            HealthRules current = rules;
+            if (current != null) {
+                conn.setRequestProperty("If-None-Match", "\"rules-" + current.version + "\"");
+            }
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+            try (InputStream in = conn.getInputStream()) {
+                setSnapshot(readBounded(in));
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /** Compiles and persists a snapshot; the previous rules stay if it doesn't compile. */
+    HealthRules setSnapshot(String json) throws IOException, JSONException {
+        HealthRules compiled = HealthRules.compile(new JSONObject(json));
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Cannot replace " + snapshotFile);
+        }
+        rules = compiled;
+        Log.i(TAG, "Health rules v" + compiled.version + ": " + compiled.ruleCount() + " rules");
+        return compiled;
+    }
+
+    private static String readBounded(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            if (out.size() + n > MAX_SNAPSHOT_BYTES) {
+                throw new IOException("Rule snapshot too large");
+            }
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks one reading. Normal readings cost a few comparisons and allocate
+     * nothing; an abnormal one is reported to listeners and, if critical,
+     * notified. Returns null when there is nothing (new) to alert on.
+     */
+    Alert check(int type, long timestampMs, double single, double systolic, double diastolic) {
+        return check(type, timestampMs, single, systolic, diastolic, false);
+    }
+
+    /**
+     * Like {@link #check} but alerts only on a critical rule, e.g. for a
+     * window's extremes, which a warning shouldn't be raised on.
+     */
+    Alert checkCritical(int type, long timestampMs, double single, double systolic, double diastolic) {
+        return check(type, timestampMs, single, systolic, diastolic, true);
+    }
+
+    private Alert check(int type, long timestampMs, double single, double systolic, double diastolic,
+            boolean criticalOnly) {
+        HealthRules current = rules;
+        if (current == null || !current.monitoringEnabled) {
+            return null;
+        }
+        int rule = current.match(type, single, systolic, diastolic);
+        if (rule < 0 || (criticalOnly && !HealthRules.CRITICAL.equals(current.severity(rule)))) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        boolean renotify;
+        synchronized (this) {
+            if (seen.put(timestampMs * 8 + type, Boolean.TRUE) != null) {
+                return null;
+            }
+            renotify = now - lastAlertedAt[type] > REALERT_MS;
+            lastAlertedAt[type] = now;
+        }
+        Alert alert = new Alert(HealthRules.typeName(type), timestampMs, current.severity(rule),
+            current.message(rule, single, systolic, diastolic), current.version);
+        if (HealthRules.CRITICAL.equals(alert.severity) && current.notifications) {
+            notifyCritical(type, alert, renotify);
+        }
+        for (Listener listener : listeners) {
+            listener.onAlert(alert);
+        }
+        return alert;
+    }
+
+    /** Checks a reading in the bulk endpoint's JSON shape. */
+    Alert check(JSONObject reading) {
+        int type = HealthRules.typeCode(reading.optString("type"));
+        JSONObject value = reading.optJSONObject("value");
+        if (type < 0 || value == null) {
+            return null;
+        }
+        return check(type, timestampOf(reading), value.optDouble("single"),
+            value.optDouble("systolic"), value.optDouble("diastolic"));
+    }
+
+    // JS sends Dates as ISO strings; the vitals path uses epoch millis
+    private static long timestampOf(JSONObject reading) {
+        Object timestamp = reading.opt("timestamp");
+        if (timestamp instanceof Number) {
+            return ((Number) timestamp).longValue();
+        }
+        if (timestamp instanceof String) {
+            try {
+                return Instant.parse((String) timestamp).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // fall through to now
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    private void createChannel() {
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager != null) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.health_alert_channel_name), NotificationManager.IMPORTANCE_HIGH);
+            channel.enableVibration(true);
+            manager.createNotificationChannel(channel);
+        }
+    }
+
+    private void notifyCritical(int type, Alert alert, boolean sound) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        if (!manager.areNotificationsEnabled()) {
+            return;
+        }
+        NotificationCompat.Builder notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.stat_sys_warning)
+            .setContentTitle(context.getString(R.string.health_alert_critical))
+            .setContentText(alert.message)
+            .setWhen(alert.timestamp)
+            .setShowWhen(true)
+            .setPriority(NotificationCompat.PRIORITY_MAX)
+            .setCategory(NotificationCompat.CATEGORY_ALARM)
+            .setDefaults(NotificationCompat.DEFAULT_ALL)
+            .setOnlyAlertOnce(!sound)
+            .setAutoCancel(true);
+        Intent launch = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (launch != null) {
+            notification.setContentIntent(PendingIntent.getActivity(context, type, launch,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+        // Straight to the native SOS countdown, with the reading as the description
+        notification.addAction(android.R.drawable.ic_dialog_alert, context.getString(R.string.sos_shortcut_long),
+            PendingIntent.getActivity(context, NOTIFICATION_ID_BASE + type, SosActivity.intent(context, alert.message),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        try {
+            // One notification per reading type, updated in place while the condition lasts
+            manager.notify(NOTIFICATION_ID_BASE + type, notification.build());
+        } catch (SecurityException e) {
+            Log.w(TAG, "Cannot post health alert: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+
+/**
+ * The patient's alert thresholds, compiled from the backend's rule snapshot
+ * (GET /api/v1/health/thresholds/snapshot) into flat primitive arrays grouped
+ * by reading type. {@link #match} walks one type's rules with no allocation,
+ * so every reading can be checked on the device as it arrives; strings are
+ * only built once a rule has fired.
+ *
+ * <p>Semantics follow checkAbnormality in Backend/models/healthReadingModel.js:
+ * within a type critical rules are tried before warnings and the first hit
+ * wins. A missing value (NaN) never matches, like a JS comparison with
+ * undefined. Immutable and safe to share between threads.
+ */
+final class HealthRules {
+    static final int FORMAT = 1;
+
+    static final String NORMAL = "normal";
+    static final String WARNING = "warning";
+    static final String CRITICAL = "critical";
+
+    static final int HEART_RATE = 0;
+    static final int BLOOD_PRESSURE = 1;
+    static final int SPO2 = 2;
+    static final int TEMPERATURE = 3;
+    static final int BLOOD_GLUCOSE = 4;
+    private static final String[] TYPES = { "heart_rate", "blood_pressure", "spo2", "temperature", "blood_glucose" };
+
+    private static final String[] FIELDS = { "single", "systolic", "diastolic" };
+    private static final int SINGLE = 0;
+    private static final int SYSTOLIC = 1;
+
+    private static final String[] OPS = { "lt", "le", "gt", "ge" };
+    private static final int LT = 0;
+    private static final int LE = 1;
+    private static final int GT = 2;
+
+    final long version;
+    final boolean monitoringEnabled;
+    final boolean notifications;
+
+    // Rules of type t are at [typeStart[t], typeStart[t + 1])
+    private final int[] typeStart = new int[TYPES.length + 1];
+    private final int[] field;
+    private final int[] op;
+    private final double[] threshold;
+    private final String[] severity;
+    private final String[] message;
+
+    private HealthRules(long version, boolean monitoringEnabled, boolean notifications, int ruleCount) {
+        this.version = version;
+        this.monitoringEnabled = monitoringEnabled;
+        this.notifications = notifications;
+        field = new int[ruleCount];
+        op = new int[ruleCount];
+        threshold = new double[ruleCount];
+        severity = new String[ruleCount];
+        message = new String[ruleCount];
+    }
+
+    /**
+     * Compiles a snapshot, either bare or wrapped in the endpoint's
+     * {@code {success, snapshot}} response. Rules for reading types this
+     * build doesn't know are skipped so the backend can add types first.
+     */
+    static HealthRules compile(JSONObject json) throws JSONException {
+        JSONObject snapshot = json.has("snapshot") ? json.getJSONObject("snapshot") : json;
+        int format = snapshot.getInt("format");
+        if (format > FORMAT) {
+            throw new JSONException("Unsupported rule snapshot format " + format);
+        }
+        JSONArray rules = snapshot.getJSONArray("rules");
+
+        // Bucket by type, critical before warning, keeping the snapshot's order otherwise
+        int[] bucket = new int[rules.length()];
+        int[] bucketSize = new int[TYPES.length * 2];
+        int known = 0;
+        for (int i = 0; i < rules.length(); i++) {
+            JSONArray rule = rules.getJSONArray(i);
+            int type = typeCode(rule.getString(0));
+            String level = rule.getString(4);
+            if (!CRITICAL.equals(level) && !WARNING.equals(level)) {
+                throw new JSONException("Unknown severity " + level);
+            }
+            bucket[i] = type < 0 ? -1 : type * 2 + (CRITICAL.equals(level) ? 0 : 1);
+            if (type >= 0) {
+                bucketSize[bucket[i]]++;
+                known++;
+            }
+        }
+        HealthRules compiled = new HealthRules(snapshot.optLong("version", 0),
+            snapshot.optBoolean("monitoringEnabled", true), snapshot.optBoolean("notifications", true), known);
+        int[] next = new int[bucketSize.length];
+        for (int b = 1; b < bucketSize.length; b++) {
+            next[b] = next[b - 1] + bucketSize[b - 1];
+        }
+        for (int t = 0; t <= TYPES.length; t++) {
+            compiled.typeStart[t] = t < TYPES.length ? next[t * 2] : known;
+        }
+        for (int i = 0; i < rules.length(); i++) {
+            if (bucket[i] < 0) {
+                continue;
+            }
+            JSONArray rule = rules.getJSONArray(i);
+            int slot = next[bucket[i]]++;
+            compiled.field[slot] = indexOf(FIELDS, rule.getString(1), "field");
+            compiled.op[slot] = indexOf(OPS, rule.getString(2), "operator");
+            compiled.threshold[slot] = rule.getDouble(3);
+            compiled.severity[slot] = CRITICAL.equals(rule.getString(4)) ? CRITICAL : WARNING;
+            compiled.message[slot] = rule.getString(5);
+        }
+        return compiled;
+    }
+
+    /** Index into the type constants, or -1 for a type with no rules here. */
+    static int typeCode(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String typeName(int type) {
+        return TYPES[type];
+    }
+
+    private static int indexOf(String[] names, String name, String what) throws JSONException {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new JSONException("Unknown rule " + what + " " + name);
+    }
+
+    int ruleCount() {
+        return threshold.length;
+    }
+
+    /**
+     * The first rule the reading breaks, or -1 when it is normal. Pass NaN
+     * for values the reading doesn't have.
+     */
+    int match(int type, double single, double systolic, double diastolic) {
+        if (type < 0 || type >= TYPES.length) {
+            return -1;
+        }
+        for (int i = typeStart[type]; i < typeStart[type + 1]; i++) {
+            double value = field[i] == SINGLE ? single : field[i] == SYSTOLIC ? systolic : diastolic;
+            double limit = threshold[i];
+            boolean hit;
+            switch (op[i]) {
+                case LT:
+                    hit = value < limit;
+                    break;
+                case LE:
+                    hit = value <= limit;
+                    break;
+                case GT:
+                    hit = value > limit;
+                    break;
+                default:
+                    hit = value >= limit;
+                    break;
+            }
+            if (hit) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Severity of a matched rule, or {@link #NORMAL} for -1. */
+    String severity(int rule) {
+        return rule < 0 ? NORMAL : severity[rule];
+    }
+
+    /** The backend's alert message for a matched rule, or "" for -1. */
+    String message(int rule, double single, double systolic, double diastolic) {
+        if (rule < 0) {
+            return "";
+        }
+        return message[rule]
+            .replace("{single}", formatNumber(single))
+            .replace("{systolic}", formatNumber(systolic))
+            .replace("{diastolic}", formatNumber(diastolic));
+    }
+
+    // As JS prints numbers in a template string: 120 not 120.0, 100.4 not 100.40000000000001
+    static String formatNumber(double value) {
+        if (Double.isNaN(value)) {
+            return "undefined";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+    }
+}
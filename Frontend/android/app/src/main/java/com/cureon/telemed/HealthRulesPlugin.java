@@ -0,0 +1,97 @@
+package com.cureon.telemed;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+
+@CapacitorPlugin(name = "HealthRules")
+public class HealthRulesPlugin extends Plugin implements HealthAlerts.Listener {
+    private HealthAlerts alerts;
+
+    @Override
+    public void load() {
+        alerts = HealthAlerts.get(getContext());
+        alerts.addListener(this);
+        alerts.sync(null);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (alerts != null) {
+            alerts.removeListener(this);
+        }
+    }
+
+    /** Re-download the rule snapshot, e.g. after login or after the thresholds were edited. */
+    @PluginMethod
+    public void sync(PluginCall call) {
+        alerts.sync((rules, error) -> {
+            if (error != null && rules == null) {
+                call.reject("Failed to sync health rules: " + error.getMessage());
+                return;
+            }
+            JSObject result = status(rules);
+            result.put("success", error == null);
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        JSObject result = status(alerts.rules());
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /** Check readings that don't go through the journal; abnormal ones are returned and alerted. */
+    @PluginMethod
+    public void check(PluginCall call) {
+        JSArray readings = call.getArray("readings");
+        if (readings == null) {
+            call.reject("Readings array is required");
+            return;
+        }
+        try {
+            JSArray found = new JSArray();
+            for (int i = 0; i < readings.length(); i++) {
+                HealthAlerts.Alert alert = alerts.check(readings.getJSONObject(i));
+                if (alert != null) {
+                    found.put(alert.toJson());
+                }
+            }
+            JSObject result = status(alerts.rules());
+            result.put("success", true);
+            result.put("alerts", found);
+            call.resolve(result);
+        } catch (JSONException e) {
+            call.reject("Invalid reading: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onAlert(HealthAlerts.Alert alert) {
+        try {
+            // Critical alerts wait for a listener if the WebView isn't attached right now
+            notifyListeners("healthAlert", JSObject.fromJSONObject(alert.toJson()),
+                HealthRules.CRITICAL.equals(alert.severity));
+        } catch (JSONException e) {
+            // toJson only holds strings and numbers
+        }
+    }
+
+    private static JSObject status(HealthRules rules) {
+        JSObject result = new JSObject();
+        result.put("ready", rules != null);
+        if (rules != null) {
+            result.put("version", rules.version);
+            result.put("ruleCount", rules.ruleCount());
+            result.put("monitoringEnabled", rules.monitoringEnabled);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package com.cureon.telemed;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks a photo before it is uploaded for AI analysis: sharpness, exposure,
+ * contrast, glare and resolution, scored by {@link ImageQualityScorer} on a
+ * luminance buffer about 512 px on the long side. The image comes from a
+ * blob the page streamed over the blob channel, or from a file/content URI,
+ * so no base64 crosses the bridge.
+ */
+@CapacitorPlugin(name = "ImageQuality")
+public class ImageQualityPlugin extends Plugin {
+    private static final String TAG = "ImageQualityPlugin";
+
+    // One image at a time; the scorer and both buffers belong to this thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ImageQualityScorer scorer = new ImageQualityScorer();
+    private int[] argb = new int[0];
+    private byte[] luma = new byte[0];
+
+    private interface Source {
+        InputStream open() throws IOException;
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        executor.shutdownNow();
+    }
+
+    @PluginMethod
+    public void assess(PluginCall call) {
+        Source source = source(call);
+        if (source == null) {
+            return;
+        }
+        ImageQualityScorer.Profile profile = ImageQualityScorer.profile(call.getString("modality"));
+        executor.execute(() -> {
+            long started = SystemClock.elapsedRealtime();
+            try {
+                call.resolve(assess(source, profile, started));
+            } catch (Exception e) {
+                Log.e(TAG, "Image quality check failed: " + e.getMessage(), e);
+                call.reject("Failed to assess image: " + e.getMessage());
+            }
+        });
+    }
+
+    private Source source(PluginCall call) {
+        String blobId = call.getString("blob");
+        if (blobId != null) {
+            BlobStore.Entry blob = BlobChannelPlugin.store(getContext()).get(blobId);
+            if (blob == null) {
+                call.reject("Unknown blob");
+                return null;
+            }
+            return () -> blob.open(0, blob.length);
+        }
+        String uri = call.getString("uri", "");
+        if (uri == null || uri.isEmpty()) {
+            call.reject("Invalid uri");
+            return null;
+        }
+        if (uri.startsWith("/")) {
+            return () -> new FileInputStream(new File(uri));
+        }
+        Uri parsed = Uri.parse(uri);
+        return () -> getContext().getContentResolver().openInputStream(parsed);
+    }
+
+    private JSObject assess(Source source, ImageQualityScorer.Profile profile, long started) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = source.open()) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Not a decodable image");
+        }
+
+        // Subsample while decoding, then scale the rest of the way to the analysis size
+        int longSide = Math.max(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (longSide / (options.inSampleSize * 2) >= ImageQualityScorer.ANALYSIS_LONG_SIDE) {
+            options.inSampleSize *= 2;
+        }
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded;
+        try (InputStream in = source.open()) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Not a decodable image");
+        }
+        Bitmap bitmap = decoded;
+        float scale = (float) ImageQualityScorer.ANALYSIS_LONG_SIDE / Math.max(decoded.getWidth(), decoded.getHeight());
+        if (scale < 1f) {
+            bitmap = Bitmap.createScaledBitmap(decoded, Math.round(decoded.getWidth() * scale),
+                Math.round(decoded.getHeight() * scale), true);
+            decoded.recycle();
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int pixels = width * height;
+        if (argb.length < pixels) {
+            argb = new int[pixels];
+            luma = new byte[pixels];
+        }
+        bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+        for (int i = 0; i < pixels; i++) {
+            int c = argb[i];
+            // BT.601 luma in fixed point
+            luma[i] = (byte) ((77 * ((c >> 16) & 0xff) + 150 * ((c >> 8) & 0xff) + 29 * (c & 0xff)) >> 8);
+        }
+
+        ImageQualityScorer.Result result = scorer.assess(luma, width, height, width,
+            bounds.outWidth, bounds.outHeight, profile);
+
+        JSObject response = new JSObject();
+        response.put("success", true);
+        response.put("acceptable", result.acceptable());
+        response.put("score", result.score);
+        JSArray reasons = new JSArray();
+        for (String reason : result.reasons) {
+            reasons.put(reason);
+        }
+        response.put("reasons", reasons);
+        response.put("modality", profile.name);
+        response.put("width", bounds.outWidth);
+        response.put("height", bounds.outHeight);
+        JSObject metrics = new JSObject();
+        metrics.put("sharpness", result.sharpness);
+        metrics.put("meanLuma", result.meanLuma);
+        metrics.put("contrast", result.contrast);
+        metrics.put("darkFraction", result.darkFraction);
+        metrics.put("brightFraction", result.brightFraction);
+        metrics.put("glareFraction", result.glareFraction);
+        response.put("metrics", metrics);
+        response.put("elapsedMs", SystemClock.elapsedRealtime() - started);
+        return response;
+    }
+}
@@ -0,0 +1,213 @@
+package com.cureon.telemed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides whether a medical photo is worth uploading for analysis.
+ *
+ * <p>Works on a downsampled 8-bit luminance buffer (about 512 px on the long
+ * side) in a single pass. The pass collects the variance of the 4-neighbour
+ * Laplacian (sharpness) and a luminance histogram, from which exposure,
+ * contrast, clipping and glare follow without touching the pixels again.
+ * Source resolution is checked against the original image size, not the
+ * analysis buffer. Thresholds differ per modality: a fundus photo is mostly
+ * black and an ECG strip mostly white, and neither of those is a defect.
+ *
+ * <p>Not thread-safe: the histogram is reused between calls.
+ */
+final class ImageQualityScorer {
+    static final String TOO_SMALL = "too_small";
+    static final String BLURRY = "blurry";
+    static final String TOO_DARK = "too_dark";
+    static final String OVEREXPOSED = "overexposed";
+    static final String LOW_CONTRAST = "low_contrast";
+    static final String GLARE = "glare";
+
+    /** Long side of the analysis buffer the thresholds are tuned for. */
+    static final int ANALYSIS_LONG_SIDE = 512;
+
+    private static final int DARK_LEVEL = 16;
+    private static final int BRIGHT_LEVEL = 240;
+    private static final int GLARE_LEVEL = 252;
+    private static final double MIN_CONTRAST = 12;
+
+    static final class Profile {
+        final String name;
+        final int minShortSide;
+        final double minSharpness;
+        final double minMean;
+        final double maxMean;
+        final double maxDarkFraction;
+        final double maxBrightFraction;
+        final double maxGlareFraction;
+
+        Profile(String name, int minShortSide, double minSharpness, double minMean, double maxMean,
+                double maxDarkFraction, double maxBrightFraction, double maxGlareFraction) {
+            this.name = name;
+            this.minShortSide = minShortSide;
+            this.minSharpness = minSharpness;
+            this.minMean = minMean;
+            this.maxMean = maxMean;
+            this.maxDarkFraction = maxDarkFraction;
+            this.maxBrightFraction = maxBrightFraction;
+            this.maxGlareFraction = maxGlareFraction;
+        }
+    }
+
+    static final Profile SKIN = new Profile("skin", 480, 60, 60, 200, 0.25, 0.15, 0.02);
+    // Fundus photos sit in a black circle
+    static final Profile RETINA = new Profile("retina", 480, 30, 25, 180, 0.65, 0.15, 0.02);
+    // Film is dark with bright bone; glare here is usually a light box reflection
+    static final Profile XRAY = new Profile("xray", 512, 20, 30, 200, 0.60, 0.35, 0.05);
+    // White paper with a thin trace: bright is normal, but the grid must be crisp
+    static final Profile ECG = new Profile("ecg", 600, 80, 90, 245, 0.10, 0.85, 0.60);
+    static final Profile GENERIC = new Profile("generic", 400, 40, 40, 215, 0.40, 0.30, 0.05);
+
+    static Profile profile(String modality) {
+        switch (modality == null ? "" : modality.toLowerCase(Locale.ROOT)) {
+            case "skin":
+                return SKIN;
+            case "retina":
+            case "retinopathy":
+                return RETINA;
+            case "xray":
+            case "x-ray":
+                return XRAY;
+            case "ecg":
+                return ECG;
+            default:
+                return GENERIC;
+        }
+    }
+
+    static final class Result {
+        /** 0 (useless) to 100; reasons, not the score, decide acceptance. */
+        final int score;
+        final List<String> reasons;
+        final double sharpness;
+        final double meanLuma;
+        final double contrast;
+        final double darkFraction;
+        final double brightFraction;
+        final double glareFraction;
+
+        Result(int score, List<String> reasons, double sharpness, double meanLuma, double contrast,
+                double darkFraction, double brightFraction, double glareFraction) {
+            this.score = score;
+            this.reasons = reasons;
+            this.sharpness = sharpness;
+            this.meanLuma = meanLuma;
+            this.contrast = contrast;
+            this.darkFraction = darkFraction;
+            this.brightFraction = brightFraction;
+            this.glareFraction = glareFraction;
+        }
+
+        boolean acceptable() {
+            return reasons.isEmpty();
+        }
+    }
+
+    private final int[] histogram = new int[256];
+
+    /**
+     * Scores {@code width x height} luminance samples laid out with
+     * {@code rowStride} bytes per row; {@code sourceWidth/sourceHeight} are
+     * the dimensions of the original image.
+     */
+    Result assess(byte[] luma, int width, int height, int rowStride, int sourceWidth, int sourceHeight,
+            Profile profile) {
+        Arrays.fill(histogram, 0);
+        long lapSum = 0;
+        long lapSquares = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * rowStride;
+            boolean interiorRow = y > 0 && y < height - 1;
+            for (int x = 0; x < width; x++) {
+                int v = luma[row + x] & 0xff;
+                histogram[v]++;
+                if (interiorRow && x > 0 && x < width - 1) {
+                    int lap = 4 * v - (luma[row + x - 1] & 0xff) - (luma[row + x + 1] & 0xff)
+                        - (luma[row - rowStride + x] & 0xff) - (luma[row + rowStride + x] & 0xff);
+                    lapSum += lap;
+                    lapSquares += (long) lap * lap;
+                }
+            }
+        }
+
+        long pixels = (long) width * height;
+        long interior = (long) Math.max(0, width - 2) * Math.max(0, height - 2);
+        long sum = 0;
+        long squares = 0;
+        long dark = 0;
+        long bright = 0;
+        long glare = 0;
+        for (int v = 0; v < 256; v++) {
+            long n = histogram[v];
+            sum += n * v;
+            squares += n * v * v;
+            if (v <= DARK_LEVEL) {
+                dark += n;
+            }
+            if (v >= BRIGHT_LEVEL) {
+                bright += n;
+            }
+            if (v >= GLARE_LEVEL) {
+                glare += n;
+            }
+        }
+        double mean = pixels == 0 ? 0 : (double) sum / pixels;
+        double contrast = pixels == 0 ? 0 : Math.sqrt(Math.max(0, (double) squares / pixels - mean * mean));
+        double lapMean = interior == 0 ? 0 : (double) lapSum / interior;
+        double sharpness = interior == 0 ? 0 : (double) lapSquares / interior - lapMean * lapMean;
+        double darkFraction = pixels == 0 ? 0 : (double) dark / pixels;
+        double brightFraction = pixels == 0 ? 0 : (double) bright / pixels;
+        double glareFraction = pixels == 0 ? 0 : (double) glare / pixels;
+
+        List<String> reasons = new ArrayList<>();
+        boolean tooSmall = Math.min(sourceWidth, sourceHeight) < profile.minShortSide;
+        if (tooSmall) {
+            reasons.add(TOO_SMALL);
+        }
+        if (sharpness < profile.minSharpness) {
+            reasons.add(BLURRY);
+        }
+        if (mean < profile.minMean || darkFraction > profile.maxDarkFraction) {
+            reasons.add(TOO_DARK);
+        }
+        if (mean > profile.maxMean || brightFraction > profile.maxBrightFraction) {
+            reasons.add(OVEREXPOSED);
+        }
+        if (contrast < MIN_CONTRAST) {
+            reasons.add(LOW_CONTRAST);
+        }
+        // Saturated highlights in an otherwise well exposed frame are reflections
+        if (glareFraction > profile.maxGlareFraction && !reasons.contains(OVEREXPOSED)) {
+            reasons.add(GLARE);
+        }
+
+        // Each part is 0.5 exactly at its threshold and 1 at twice as good
+        double sharpPart = clamp(sharpness / (2 * profile.minSharpness));
+        double meanPart = mean < profile.minMean ? mean / profile.minMean
+            : mean > profile.maxMean ? (255 - mean) / (255 - profile.maxMean) : 1;
+        double clipPart = Math.min(
+            clamp(1 - darkFraction / (2 * profile.maxDarkFraction)),
+            clamp(1 - brightFraction / (2 * profile.maxBrightFraction)));
+        double exposurePart = clamp(Math.min(meanPart, 0.5 + clipPart / 2)) * clamp(contrast / MIN_CONTRAST);
+        double glarePart = clamp(1 - glareFraction / (2 * profile.maxGlareFraction));
+        double score = 100 * (0.5 * sharpPart + 0.3 * exposurePart + 0.2 * glarePart);
+        if (tooSmall) {
+            score /= 2;
+        }
+        return new Result((int) Math.round(score), Collections.unmodifiableList(reasons), sharpness, mean,
+            contrast, darkFraction, brightFraction, glareFraction);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
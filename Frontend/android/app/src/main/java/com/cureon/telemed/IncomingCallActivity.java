@@ -0,0 +1,143 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.WindowManager;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Lock-screen ringing UI for {@link CallSignalService}. Answering starts
+ * {@link ZegoVideoCallActivity} directly from here, behind any engine
+ * warm-up the service began when the call came in. Started with
+ * {@link #EXTRA_ACCEPT} (the notification's answer button) it skips the UI.
+ */
+public class IncomingCallActivity extends AppCompatActivity implements CallSignalService.RingListener {
+    private static final String EXTRA_ACCEPT = "accept";
+
+    private String callId;
+    private String roomId;
+    private boolean video;
+
+    static Intent intent(Context context, CallInvites.Invite invite, boolean accept) {
+        return new Intent(context, IncomingCallActivity.class)
+            .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_NO_USER_ACTION)
+            .putExtra(CallSignalService.EXTRA_CALL_ID, invite.callId)
+            .putExtra("roomId", invite.roomId)
+            .putExtra("callerName", invite.callerName)
+            .putExtra("callerRole", invite.callerRole)
+            .putExtra("video", invite.video)
+            .putExtra(EXTRA_ACCEPT, accept);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            setShowWhenLocked(true);
+            setTurnScreenOn(true);
+        } else {
+            getWindow().addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED
+                | WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON);
+        }
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        setContentView(R.layout.activity_incoming_call);
+        bind(getIntent());
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        bind(intent);
+    }
+
+    private void bind(Intent intent) {
+        callId = intent.getStringExtra(CallSignalService.EXTRA_CALL_ID);
+        roomId = intent.getStringExtra("roomId");
+        video = intent.getBooleanExtra("video", true);
+        String callerName = intent.getStringExtra("callerName");
+        String callerRole = intent.getStringExtra("callerRole");
+
+        ((TextView) findViewById(R.id.incoming_call_name)).setText(callerName);
+        ((TextView) findViewById(R.id.incoming_call_detail)).setText("doctor".equals(callerRole)
+            ? getString(R.string.incoming_call_text) : getString(R.string.incoming_call_patient));
+        findViewById(R.id.incoming_call_answer).setOnClickListener(v -> accept());
+        findViewById(R.id.incoming_call_decline).setOnClickListener(v -> decline());
+
+        if (intent.getBooleanExtra(EXTRA_ACCEPT, false)) {
+            accept();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        CallSignalService.addRingListener(this);
+        // Cancelled or rung out while we weren't looking
+        if (!CallSignalService.isRinging(callId)) {
+            finish();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        CallSignalService.removeRingListener(this);
+        super.onStop();
+    }
+
+    @Override
+    public void onRingStopped(String stoppedCallId) {
+        if (stoppedCallId.equals(callId)) {
+            runOnUiThread(this::finish);
+        }
+    }
+
+    private void accept() {
+        if (!CallSignalService.isRinging(callId)) {
+            finish();
+            return;
+        }
+        CallSession.Join join = CallSession.shared().join(roomId, SystemClock.elapsedRealtime());
+        if (CallSession.JOIN_REJECTED.equals(join.outcome)) {
+            // The previous call is still releasing the camera; the ring continues
+            Toast.makeText(this, R.string.incoming_call_previous_ending, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        CallSignalService.removeRingListener(this);
+        startService(new Intent(this, CallSignalService.class)
+            .setAction(CallSignalService.ACTION_ANSWERED)
+            .putExtra(CallSignalService.EXTRA_CALL_ID, callId));
+        if (!join.shouldLaunch()) {
+            // Already in this room
+            finish();
+            return;
+        }
+        String[] user = CallSignalService.zegoUser(this);
+        CallWarmup warmup = CallWarmup.get();
+        CallLatencyTracker.shared().begin(roomId, warmup.isWarm(), SystemClock.elapsedRealtime());
+        // Same extras ZegoCallPlugin.joinRoom passes, queued behind the warm-up the ring started.
+        // The app's own task (created bare if the app isn't running), not this excluded-from-recents one
+        Intent call = new JoinRequest(roomId, user[0], user[1], video, false)
+            .putExtras(new Intent(this, ZegoVideoCallActivity.class), join.sessionId)
+            .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        warmup.afterWarmup(() -> runOnUiThread(() -> {
+            if (CallSession.shared().isCurrent(join.sessionId)) {
+                startActivity(call);
+            }
+            finish();
+        }));
+    }
+
+    private void decline() {
+        startService(new Intent(this, CallSignalService.class)
+            .setAction(CallSignalService.ACTION_DECLINE)
+            .putExtra(CallSignalService.EXTRA_CALL_ID, callId));
+        finish();
+    }
+}
@@ -0,0 +1,101 @@
+package com.cureon.telemed;
+
+import android.content.Intent;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+/**
+ * A call join as it travels from ZegoCallPlugin.joinRoom (or the incoming
+ * call screen) to ZegoVideoCallActivity: argument parsing, the launch
+ * intent's extras and the result JS gets back. Kept free of the Zego SDK
+ * so the microbenchmark module can measure it.
+ */
+final class JoinRequest {
+    static final String EXTRA_ROOM = "roomID";
+    static final String EXTRA_USER = "userID";
+    static final String EXTRA_USER_NAME = "userName";
+    static final String EXTRA_VIDEO = "isVideoCall";
+    static final String EXTRA_ALLOW_HEVC = "allowHevc";
+    static final String EXTRA_GROUP = "groupConsult";
+    static final String EXTRA_MAX_DOWNLINK_KBPS = "maxDownlinkKbps";
+    static final String EXTRA_PIN_USER = "pinUserID";
+    /** The {@link CallSession} id the activity attaches to. */
+    static final String EXTRA_SESSION = "callSession";
+
+    final String roomId;
+    final String userId;
+    final String userName;
+    final boolean video;
+    final boolean allowHevc;
+    /** A group consult: any number of participants, each stream subscribed by ConsultStreamPolicy. */
+    final boolean group;
+    /** Group consults only: the most the call may receive, 0 for no cap. */
+    final int maxDownlinkKbps;
+    /** Group consults only: who to keep featured whoever is speaking, empty for nobody. */
+    final String pinUserId;
+
+    /** A 1:1 call. */
+    JoinRequest(String roomId, String userId, String userName, boolean video, boolean allowHevc) {
+        this(roomId, userId, userName, video, allowHevc, false, 0, "");
+    }
+
+    JoinRequest(String roomId, String userId, String userName, boolean video, boolean allowHevc, boolean group,
+            int maxDownlinkKbps, String pinUserId) {
+        this.roomId = roomId;
+        this.userId = UserIds.sanitize(userId);
+        this.userName = UserIds.displayName(userName);
+        this.video = video;
+        // A group call publishes two layers for the others to choose from, which H.265 can't
+        this.allowHevc = allowHevc && !group;
+        this.group = group;
+        this.maxDownlinkKbps = Math.max(0, maxDownlinkKbps);
+        this.pinUserId = pinUserId == null || pinUserId.isEmpty() ? "" : UserIds.sanitize(pinUserId);
+    }
+
+    /**
+     * joinRoom's arguments; the user falls back to the one from initialize.
+     * The room is returned as given, so check {@link #hasRoom} before use.
+     */
+    static JoinRequest parse(PluginCall call, String defaultUserId, String defaultUserName) {
+        return new JoinRequest(
+            call.getString("roomID", ""),
+            call.getString("userID", defaultUserId),
+            call.getString("userName", defaultUserName),
+            call.getBoolean("isVideoCall", true),
+            // Only when the other side is known to decode H.265 (the web client generally can't)
+            call.getBoolean("allowHevc", false),
+            call.getBoolean("groupConsult", false),
+            call.getInt("maxDownlinkKbps", 0),
+            call.getString("pinUserID", ""));
+    }
+
+    boolean hasRoom() {
+        return roomId != null && !roomId.isEmpty();
+    }
+
+    /** Adds what ZegoVideoCallActivity reads to {@code intent}, which names the activity. */
+    Intent putExtras(Intent intent, long sessionId) {
+        return intent
+            .putExtra(EXTRA_ROOM, roomId)
+            .putExtra(EXTRA_USER, userId)
+            .putExtra(EXTRA_USER_NAME, userName)
+            .putExtra(EXTRA_VIDEO, video)
+            .putExtra(EXTRA_ALLOW_HEVC, allowHevc)
+            .putExtra(EXTRA_GROUP, group)
+            .putExtra(EXTRA_MAX_DOWNLINK_KBPS, maxDownlinkKbps)
+            .putExtra(EXTRA_PIN_USER, pinUserId)
+            .putExtra(EXTRA_SESSION, sessionId);
+    }
+
+    /** What joinRoom resolves with; {@code merged} when the room was already being joined. */
+    JSObject result(long sessionId, boolean merged) {
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("merged", merged);
+        result.put("sessionId", sessionId);
+        result.put("groupConsult", group);
+        result.put("message", (merged ? "Already joining room: " : "Joining room: ") + roomId);
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package com.cureon.telemed;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Debug-build check that a finished call's activity and fragment are really
+ * collected. Each is watched through a weak reference when it is destroyed;
+ * anything still reachable {@link #GRACE_MS} later, after a GC, is reported
+ * as a leak. Holds nothing strongly, so it can't cause the leaks it looks for.
+ */
+final class LeakWatch {
+    /** Long enough for the SDK's own delayed teardown to let go. */
+    static final long GRACE_MS = 5_000;
+
+    interface Listener {
+        void onLeak(String label, long heldMs);
+    }
+
+    private static final class Watched {
+        final WeakReference<Object> ref;
+        final String label;
+        final long sinceMs;
+
+        Watched(Object target, String label, long sinceMs) {
+            this.ref = new WeakReference<>(target);
+            this.label = label;
+            this.sinceMs = sinceMs;
+        }
+    }
+
+    private static final LeakWatch SHARED = new LeakWatch();
+
+    private final List<Watched> watched = new ArrayList<>();
+    private Listener listener;
+
+    static LeakWatch shared() {
+        return SHARED;
+    }
+
+    synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Call when {@code target} is done with; it should be unreachable soon after. */
+    synchronized void watch(Object target, String label, long nowMs) {
+        watched.add(new Watched(target, label, nowMs));
+    }
+
+    /**
+     * Reports and forgets everything still reachable after its grace period.
+     * Run a GC first; entries already collected are dropped.
+     */
+    List<String> check(long nowMs) {
+        List<String> leaked = new ArrayList<>();
+        List<Long> held = new ArrayList<>();
+        Listener target;
+        synchronized (this) {
+            Iterator<Watched> it = watched.iterator();
+            while (it.hasNext()) {
+                Watched entry = it.next();
+                if (entry.ref.get() == null) {
+                    it.remove();
+                } else if (nowMs - entry.sinceMs >= GRACE_MS) {
+                    leaked.add(entry.label);
+                    held.add(nowMs - entry.sinceMs);
+                    it.remove();
+                }
+            }
+            target = listener;
+        }
+        if (target != null) {
+            for (int i = 0; i < leaked.size(); i++) {
+                target.onLeak(leaked.get(i), held.get(i));
+            }
+        }
+        return leaked;
+    }
+
+    synchronized int pending() {
+        return watched.size();
+    }
+}
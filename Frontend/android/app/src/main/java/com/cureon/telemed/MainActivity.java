@@ -2,11 +2,10 @@ package com.cureon.telemed;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.os.Build;
 import android.os.Bundle;
-import android.webkit.PermissionRequest;
-import android.webkit.WebChromeClient;
-import android.webkit.WebSettings;
+import android.os.Process;
+import android.os.SystemClock;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.WebView;
 import android.util.Log;
 
@@ -15,39 +14,109 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.getcapacitor.BridgeActivity;
-import com.getcapacitor.BridgeWebChromeClient;
 import com.getcapacitor.Plugin;
+import com.getcapacitor.WebViewListener;
 import com.permissionx.guolindev.PermissionX;
 import com.permissionx.guolindev.callback.ExplainReasonCallback;
 import com.permissionx.guolindev.callback.RequestCallback;
 import com.permissionx.guolindev.request.ExplainScope;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class MainActivity extends BridgeActivity {
     private static final String TAG = "CureonMainActivity";
     private static final int PERMISSION_REQUEST_CODE = 100;
+    // Same section name as before PerfTrace, so existing Perfetto queries still match
+    private static final int TRACE_CREATE = PerfTrace.shared().name("CureonMainActivity.onCreate");
+    private static final int TRACE_FIRST_PAGE = PerfTrace.shared().name("startup.firstPageMs");
+
+    private WebViewConfigurator webViewConfigurator;
+    private boolean firstPageLoaded;
+    private boolean overlayPermissionRequested;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        // Register the ZegoCallPlugin before super.onCreate
-        registerPlugin(ZegoCallPlugin.class);
-        
-        super.onCreate(savedInstanceState);
-        Log.d(TAG, "onCreate - Requesting permissions and setting up WebView");
-        requestAllPermissions();
-        requestSystemAlertWindowPermission();
-        
-        // Setup WebView for WebRTC immediately after creation
-        // Use a small delay to ensure the bridge is ready
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-            setupWebViewForWebRTC();
-        }, 500);
+        PerfTracePlugin.install(this);
+        PerfTrace.shared().begin(TRACE_CREATE);
+        try {
+            // Register the native plugins before super.onCreate
+            registerPlugin(ZegoCallPlugin.class);
+            registerPlugin(VitalsMonitorPlugin.class);
+            registerPlugin(ReadingJournalPlugin.class);
+            registerPlugin(VideoFramesPlugin.class);
+            registerPlugin(BlobChannelPlugin.class);
+            registerPlugin(QrScannerPlugin.class);
+            registerPlugin(ImageQualityPlugin.class);
+            registerPlugin(MediaUploadPlugin.class);
+            registerPlugin(HealthRulesPlugin.class);
+            registerPlugin(CallSignalPlugin.class);
+            registerPlugin(PerfTracePlugin.class);
+            registerPlugin(PdfReportPlugin.class);
+            registerPlugin(SosPlugin.class);
+            registerPlugin(MedicationReminderPlugin.class);
+            registerPlugin(MedicineCatalogPlugin.class);
+            registerPlugin(DocumentStorePlugin.class);
+            // After BlobChannel, whose WebViewClient it hooks into
+            registerPlugin(ApiCachePlugin.class);
+
+            super.onCreate(savedInstanceState);
+
+            // The bridge and its WebView exist once super.onCreate returns, so no delay is needed
+            webViewConfigurator = new WebViewConfigurator(this, this::requestAllPermissions);
+            webViewConfigurator.apply(getBridge());
+            WebViewConfigurator.restorePage(getBridge());
+            getBridge().addWebViewListener(new WebViewListener() {
+                @Override
+                public void onPageLoaded(WebView webView) {
+                    onFirstPageLoaded();
+                }
+
+                @Override
+                public boolean onRenderProcessGone(WebView webView, RenderProcessGoneDetail detail) {
+                    return webViewConfigurator.onRenderProcessGone(getBridge(), webView, detail);
+                }
+            });
+        } finally {
+            PerfTrace.shared().end(TRACE_CREATE);
+        }
+    }
+
+    /**
+     * The first Capacitor page is on screen: report it as fully drawn (the
+     * startup benchmark's time-to-interactive) and only then start asking for
+     * permissions, so no dialog competes with first paint.
+     */
+    private void onFirstPageLoaded() {
+        if (firstPageLoaded) {
+            return;
+        }
+        firstPageLoaded = true;
+        reportFullyDrawn();
+        PerfTrace.shared().instant(TRACE_FIRST_PAGE, SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime());
+        Log.d(TAG, "First page loaded - requesting permissions");
+        if (!requestAllPermissions()) {
+            requestSystemAlertWindowPermission();
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
+            @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        webViewConfigurator.refreshPermissions();
+        // One prompt at a time: the overlay settings screen follows the runtime dialog
+        if (requestCode == PERMISSION_REQUEST_CODE) {
+            requestSystemAlertWindowPermission();
+        }
     }
 
     private void requestSystemAlertWindowPermission() {
+        // Runtime prompts from WebRTC requests land here too; the overlay screen is asked for once per launch
+        if (overlayPermissionRequested) {
+            return;
+        }
+        overlayPermissionRequested = true;
         PermissionX.init(this)
             .permissions(Manifest.permission.SYSTEM_ALERT_WINDOW)
             .onExplainRequestReason(new ExplainReasonCallback() {
@@ -69,11 +138,18 @@ public class MainActivity extends BridgeActivity {
     @Override
     public void onResume() {
         super.onResume();
-        Log.d(TAG, "onResume - Setting up WebView for WebRTC");
-        setupWebViewForWebRTC();
+        // Settings may have been granted while we were in the background; the WebView itself is already set up
+        webViewConfigurator.refreshPermissions();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        webViewConfigurator.onTrimMemory(getBridge(), level);
     }
 
-    private void requestAllPermissions() {
+    /** Returns true if a permission dialog was shown. */
+    private boolean requestAllPermissions() {
         List<String> permissions = new ArrayList<>();
         
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) 
@@ -95,96 +171,9 @@ public class MainActivity extends BridgeActivity {
             Log.d(TAG, "Requesting permissions: " + permissions);
             ActivityCompat.requestPermissions(this, 
                 permissions.toArray(new String[0]), PERMISSION_REQUEST_CODE);
-        } else {
-            Log.d(TAG, "All permissions already granted");
-        }
-    }
-
-    private void setupWebViewForWebRTC() {
-        try {
-            WebView webView = getBridge().getWebView();
-            if (webView == null) {
-                Log.e(TAG, "WebView is null");
-                return;
-            }
-
-            WebSettings settings = webView.getSettings();
-            
-            // Essential for WebRTC
-            settings.setJavaScriptEnabled(true);
-            settings.setDomStorageEnabled(true);
-            settings.setMediaPlaybackRequiresUserGesture(false);
-            settings.setAllowFileAccess(true);
-            settings.setAllowContentAccess(true);
-            settings.setJavaScriptCanOpenWindowsAutomatically(true);
-            
-            // Database and cache
-            settings.setCacheMode(WebSettings.LOAD_DEFAULT);
-            
-            // Mixed content for HTTPS/HTTP
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
-            }
-            
-            // Hardware acceleration
-            webView.setLayerType(WebView.LAYER_TYPE_HARDWARE, null);
-
-            // Custom WebChromeClient that extends Capacitor's and handles WebRTC permissions
-            webView.setWebChromeClient(new BridgeWebChromeClient(getBridge()) {
-                @Override
-                public void onPermissionRequest(final PermissionRequest request) {
-                    Log.d(TAG, "WebRTC Permission Request: " + Arrays.toString(request.getResources()));
-                    
-                    // Check Android permissions
-                    boolean hasCam = ContextCompat.checkSelfPermission(MainActivity.this, 
-                        Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
-                    boolean hasMic = ContextCompat.checkSelfPermission(MainActivity.this, 
-                        Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
-
-                    Log.d(TAG, "Android permissions - Camera: " + hasCam + ", Mic: " + hasMic);
-
-                    // Filter requested resources based on what we have permission for
-                    List<String> grantedResources = new ArrayList<>();
-                    for (String resource : request.getResources()) {
-                        if (resource.equals(PermissionRequest.RESOURCE_VIDEO_CAPTURE) && hasCam) {
-                            grantedResources.add(resource);
-                        } else if (resource.equals(PermissionRequest.RESOURCE_AUDIO_CAPTURE) && hasMic) {
-                            grantedResources.add(resource);
-                        } else if (!resource.equals(PermissionRequest.RESOURCE_VIDEO_CAPTURE) 
-                                && !resource.equals(PermissionRequest.RESOURCE_AUDIO_CAPTURE)) {
-                            // Grant other resources (like protected media)
-                            grantedResources.add(resource);
-                        }
-                    }
-
-                    if (hasCam && hasMic) {
-                        // All permissions granted, grant all requested resources
-                        runOnUiThread(() -> {
-                            Log.d(TAG, "Granting all WebRTC permissions");
-                            request.grant(request.getResources());
-                        });
-                    } else if (!grantedResources.isEmpty()) {
-                        // Grant what we can
-                        runOnUiThread(() -> {
-                            Log.d(TAG, "Granting partial WebRTC permissions: " + grantedResources);
-                            request.grant(grantedResources.toArray(new String[0]));
-                        });
-                        // Request missing permissions
-                        if (!hasCam || !hasMic) {
-                            requestAllPermissions();
-                        }
-                    } else {
-                        // No permissions, request them and grant anyway to avoid blocking
-                        Log.d(TAG, "No permissions, requesting and granting anyway");
-                        requestAllPermissions();
-                        runOnUiThread(() -> {
-                            request.grant(request.getResources());
-                        });
-                    }
-                }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Error setting up WebView for WebRTC", e);
+            return true;
         }
+        Log.d(TAG, "All permissions already granted");
+        return false;
     }
 }
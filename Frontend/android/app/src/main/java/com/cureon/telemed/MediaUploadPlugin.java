@@ -0,0 +1,193 @@
+package com.cureon.telemed;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Background uploads of medical photos and videos through {@link UploadQueue}
+ * and {@link UploadService}. The page hands over a blob, file path or content
+ * URI; it is copied into app storage so the upload survives the page, the
+ * activity and the process, and progress comes back as plugin events:
+ * {@code uploadProgress} and {@code uploadStateChanged}.
+ */
+@CapacitorPlugin(name = "MediaUpload")
+public class MediaUploadPlugin extends Plugin implements UploadQueue.Listener {
+    private static final String TAG = "MediaUploadPlugin";
+
+    // Copies into app storage, one at a time
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void load() {
+        UploadService.addListener(this);
+        // Pick up whatever was left when the process last died
+        UploadService.start(getContext());
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        UploadService.removeListener(this);
+        executor.shutdownNow();
+    }
+
+    @PluginMethod
+    public void enqueue(PluginCall call) {
+        String url = call.getString("url");
+        if (url == null || !(url.startsWith("https://") || url.startsWith("http://"))) {
+            call.reject("Invalid url");
+            return;
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        JSObject given = call.getObject("fields", new JSObject());
+        for (Iterator<String> names = given.keys(); names.hasNext(); ) {
+            String name = names.next();
+            fields.put(name, given.optString(name));
+        }
+        executor.execute(() -> {
+            File copy = new File(UploadService.mediaDir(getContext()), UUID.randomUUID().toString());
+            try {
+                String mimeType = copySource(call, copy);
+                String fileName = call.getString("fileName", "upload");
+                UploadQueue.Task task = UploadService.queue(getContext()).enqueue(copy, true, url, fields,
+                    fileName, call.getString("mimeType", mimeType));
+                UploadService.start(getContext());
+                call.resolve(toJson(task));
+            } catch (Exception e) {
+                copy.delete();
+                Log.e(TAG, "Cannot queue upload: " + e.getMessage(), e);
+                call.reject("Failed to queue upload: " + e.getMessage());
+            }
+        });
+    }
+
+    // Streams the source into app storage with NIO; returns the blob's MIME type if known
+    private String copySource(PluginCall call, File target) throws IOException {
+        target.getParentFile().mkdirs();
+        String blobId = call.getString("blob");
+        String path = call.getString("path");
+        String uri = call.getString("uri");
+        String mimeType = "application/octet-stream";
+        InputStream in;
+        if (blobId != null) {
+            BlobStore.Entry blob = BlobChannelPlugin.store(getContext()).get(blobId);
+            if (blob == null) {
+                throw new IOException("Unknown blob");
+            }
+            mimeType = blob.mimeType;
+            in = blob.file != null ? new FileInputStream(blob.file) : blob.open(0, blob.length);
+        } else if (path != null) {
+            in = new FileInputStream(new File(path));
+        } else if (uri != null) {
+            in = getContext().getContentResolver().openInputStream(Uri.parse(uri));
+            if (in == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+        } else {
+            throw new IOException("Missing blob, path or uri");
+        }
+        try (InputStream source = in;
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (source instanceof FileInputStream) {
+                // File to file: the kernel copies it
+                FileChannel channel = ((FileInputStream) source).getChannel();
+                long size = channel.size();
+                for (long position = 0; position < size; ) {
+                    position += channel.transferTo(position, size - position, out);
+                }
+            } else {
+                ReadableByteChannel channel = Channels.newChannel(source);
+                long position = 0;
+                long n;
+                while ((n = out.transferFrom(channel, position, 1 << 20)) > 0) {
+                    position += n;
+                }
+            }
+            out.force(false);
+        }
+        return mimeType;
+    }
+
+    @PluginMethod
+    public void list(PluginCall call) {
+        JSArray uploads = new JSArray();
+        for (UploadQueue.Task task : UploadService.queue(getContext()).tasks()) {
+            uploads.put(toJson(task));
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("uploads", uploads);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("success", UploadService.queue(getContext()).cancel(call.getString("id", "")));
+        call.resolve(result);
+    }
+
+    /** Forgets a finished upload once the page has its result. */
+    @PluginMethod
+    public void remove(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("success", UploadService.queue(getContext()).remove(call.getString("id", "")));
+        call.resolve(result);
+    }
+
+    @Override
+    public void onProgress(UploadQueue.Task task, long sentBytes) {
+        JSObject event = new JSObject();
+        event.put("id", task.id);
+        event.put("sent", sentBytes);
+        event.put("total", task.size);
+        notifyListeners("uploadProgress", event);
+    }
+
+    @Override
+    public void onStateChanged(UploadQueue.Task task) {
+        // Kept until a listener is attached, so a page that comes back later still sees the result
+        boolean finished = !UploadQueue.QUEUED.equals(task.state) && !UploadQueue.UPLOADING.equals(task.state);
+        notifyListeners("uploadStateChanged", toJson(task), finished);
+    }
+
+    private static JSObject toJson(UploadQueue.Task task) {
+        JSObject json = new JSObject();
+        json.put("success", true);
+        json.put("id", task.id);
+        json.put("state", task.state);
+        json.put("fileName", task.fileName);
+        json.put("size", task.size);
+        json.put("uploaded", task.offset);
+        json.put("failures", task.failures);
+        if (task.response != null) {
+            json.put("response", task.response);
+        }
+        if (task.error != null) {
+            json.put("error", task.error);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,68 @@
+package com.cureon.telemed;
+
+import android.app.AlarmManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The medication alarm, the Taken and Snooze notification actions, and the
+ * system broadcasts after which alarms have to be registered again: boot,
+ * app update, clock and time-zone changes, and exact-alarm permission.
+ * The store is touched off the main thread while the broadcast is held open.
+ */
+public class MedicationAlarmReceiver extends BroadcastReceiver {
+    // One at a time, so an alarm and an action never interleave
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Context app = context.getApplicationContext();
+        String action = intent.getAction();
+        if (action == null) {
+            return;
+        }
+        PendingResult pending = goAsync();
+        executor.execute(() -> {
+            try {
+                handle(app, action, intent);
+            } finally {
+                pending.finish();
+            }
+        });
+    }
+
+    private static void handle(Context context, String action, Intent intent) {
+        switch (action) {
+            case MedicationReminders.ACTION_ALARM:
+                MedicationReminders.fire(context);
+                break;
+            case MedicationReminders.ACTION_TAKEN:
+            case MedicationReminders.ACTION_SNOOZE:
+                String[] ids = intent.getStringArrayExtra(MedicationReminders.EXTRA_IDS);
+                long[] doses = intent.getLongArrayExtra(MedicationReminders.EXTRA_DOSES);
+                if (ids == null || doses == null || ids.length != doses.length) {
+                    return;
+                }
+                int notificationId = intent.getIntExtra(MedicationReminders.EXTRA_NOTIFICATION_ID, 0);
+                if (MedicationReminders.ACTION_TAKEN.equals(action)) {
+                    MedicationReminders.taken(context, ids, doses, notificationId);
+                } else {
+                    MedicationReminders.snooze(context, ids, doses, notificationId);
+                }
+                break;
+            case Intent.ACTION_BOOT_COMPLETED:
+            case Intent.ACTION_MY_PACKAGE_REPLACED:
+            case Intent.ACTION_TIME_CHANGED:
+            case Intent.ACTION_TIMEZONE_CHANGED:
+            case AlarmManager.ACTION_SCHEDULE_EXACT_ALARM_PERMISSION_STATE_CHANGED:
+                MedicationReminders.reschedule(context);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.cureon.telemed;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The page's side of {@link MedicationReminders}: set, list and cancel
+ * reminders and read back what was taken. Reminders fire and are answered
+ * natively; the page only hears about it through {@code doseLogged} while
+ * it happens to be open.
+ */
+@CapacitorPlugin(name = "MedicationReminders")
+public class MedicationReminderPlugin extends Plugin implements MedicationReminders.Listener {
+    private static final String TAG = "MedicationReminderPlugin";
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void load() {
+        MedicationReminders.addListener(this);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        MedicationReminders.removeListener(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void onDoseLogged(String id, long doseAt, int action) {
+        JSObject event = new JSObject();
+        event.put("id", id);
+        event.put("doseAt", doseAt);
+        event.put("action", DoseQueue.actionName(action));
+        notifyListeners("doseLogged", event);
+    }
+
+    /**
+     * {@code reminders} is a list of {id?, name, dosage?, instructions?,
+     * times? ["08:00"], frequency?, duration?, startDate? "2026-03-01"}.
+     * Without times the frequency is read ("Twice daily", "1-0-1"); a
+     * reminder whose frequency can't be read is returned in
+     * {@code unscheduled} for the page to ask about. Same id replaces.
+     */
+    @PluginMethod
+    public void schedule(PluginCall call) {
+        JSArray reminders = call.getArray("reminders");
+        if (reminders == null) {
+            call.reject("reminders is required");
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                List<DoseSchedule> schedules = new ArrayList<>();
+                JSArray unscheduled = new JSArray();
+                for (int i = 0; i < reminders.length(); i++) {
+                    JSONObject reminder = reminders.getJSONObject(i);
+                    DoseSchedule schedule = toSchedule(reminder);
+                    if (schedule != null) {
+                        schedules.add(schedule);
+                    } else {
+                        unscheduled.put(reminder.optString("name"));
+                    }
+                }
+                DoseQueue queue = MedicationReminders.queue(getContext());
+                queue.putAll(schedules, System.currentTimeMillis());
+                MedicationReminders.rearm(getContext());
+                JSArray scheduled = new JSArray();
+                for (DoseSchedule schedule : schedules) {
+                    scheduled.put(toJs(queue, schedule));
+                }
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("scheduled", scheduled);
+                result.put("unscheduled", unscheduled);
+                result.put("exactAlarms", MedicationReminders.canScheduleExact(getContext()));
+                call.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to schedule reminders: " + e.getMessage(), e);
+                call.reject("Failed to schedule reminders: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("id is required");
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                boolean removed = MedicationReminders.queue(getContext()).remove(id);
+                MedicationReminders.rearm(getContext());
+                JSObject result = new JSObject();
+                result.put("success", removed);
+                call.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to cancel reminder: " + e.getMessage(), e);
+                call.reject("Failed to cancel reminder");
+            }
+        });
+    }
+
+    @PluginMethod
+    public void list(PluginCall call) {
+        executor.execute(() -> {
+            DoseQueue queue = MedicationReminders.queue(getContext());
+            JSArray reminders = new JSArray();
+            for (DoseSchedule schedule : queue.schedules()) {
+                reminders.put(toJs(queue, schedule));
+            }
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("reminders", reminders);
+            result.put("nextAlarmAt", queue.nextAlarmAt());
+            result.put("exactAlarms", MedicationReminders.canScheduleExact(getContext()));
+            call.resolve(result);
+        });
+    }
+
+    /** Taken, snoozed and missed doses since {@code since} (epoch ms), oldest first. */
+    @PluginMethod
+    public void history(PluginCall call) {
+        long since = call.getLong("since", 0L);
+        executor.execute(() -> {
+            try {
+                JSArray entries = new JSArray();
+                for (DoseQueue.Entry entry : MedicationReminders.queue(getContext()).history(since)) {
+                    JSObject js = new JSObject();
+                    js.put("id", entry.scheduleId);
+                    js.put("doseAt", entry.doseAt);
+                    js.put("at", entry.at);
+                    js.put("action", DoseQueue.actionName(entry.action));
+                    entries.put(js);
+                }
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("entries", entries);
+                call.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to read dose history: " + e.getMessage(), e);
+                call.reject("Failed to read dose history");
+            }
+        });
+    }
+
+    /** Lets the patient allow exact alarms (Android 12+), without which Doze may delay a reminder. */
+    @PluginMethod
+    public void openExactAlarmSettings(PluginCall call) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !MedicationReminders.canScheduleExact(getContext())) {
+            Intent intent = new Intent(Settings.ACTION_REQUEST_SCHEDULE_EXACT_ALARM,
+                Uri.parse("package:" + getContext().getPackageName()));
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            getContext().startActivity(intent);
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /** On logout: the next patient on this phone mustn't get these reminders. */
+    @PluginMethod
+    public void clear(PluginCall call) {
+        executor.execute(() -> {
+            try {
+                MedicationReminders.queue(getContext()).clear();
+                MedicationReminders.rearm(getContext());
+                JSObject result = new JSObject();
+                result.put("success", true);
+                call.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to clear reminders: " + e.getMessage(), e);
+                call.reject("Failed to clear reminders");
+            }
+        });
+    }
+
+    private static DoseSchedule toSchedule(JSONObject reminder) throws JSONException {
+        short[] minutes;
+        if (reminder.has("times") && reminder.getJSONArray("times").length() > 0) {
+            minutes = new short[reminder.getJSONArray("times").length()];
+            for (int i = 0; i < minutes.length; i++) {
+                minutes[i] = DoseSchedule.parseTime(reminder.getJSONArray("times").getString(i));
+            }
+        } else {
+            minutes = DoseSchedule.parseFrequency(reminder.optString("frequency", null));
+        }
+        if (minutes == null) {
+            return null;
+        }
+        long startDay = LocalDate.now(ZoneId.systemDefault()).toEpochDay();
+        String startDate = reminder.optString("startDate", "");
+        if (!startDate.isEmpty()) {
+            try {
+                startDay = LocalDate.parse(startDate.length() > 10 ? startDate.substring(0, 10) : startDate)
+                    .toEpochDay();
+            } catch (DateTimeParseException e) {
+                Log.w(TAG, "Ignoring bad startDate " + startDate);
+            }
+        }
+        int days = reminder.optInt("days", DoseSchedule.parseDurationDays(reminder.optString("duration", null)));
+        String id = reminder.optString("id", "");
+        return new DoseSchedule(id.isEmpty() ? UUID.randomUUID().toString() : id, reminder.optString("name"),
+            reminder.optString("dosage"), reminder.optString("instructions"), minutes, startDay,
+            days > 0 ? startDay + days - 1 : DoseSchedule.OPEN_ENDED);
+    }
+
+    private static JSObject toJs(DoseQueue queue, DoseSchedule schedule) {
+        JSObject js = new JSObject();
+        js.put("id", schedule.id);
+        js.put("name", schedule.name);
+        js.put("dosage", schedule.dosage);
+        js.put("instructions", schedule.instructions);
+        JSArray times = new JSArray();
+        for (short minute : schedule.minutes) {
+            times.put(DoseSchedule.formatTime(minute));
+        }
+        js.put("times", times);
+        js.put("startDate", LocalDate.ofEpochDay(schedule.startDay).toString());
+        if (schedule.endDay != DoseSchedule.OPEN_ENDED) {
+            js.put("endDate", LocalDate.ofEpochDay(schedule.endDay).toString());
+        }
+        js.put("nextDoseAt", queue.nextFor(schedule.id));
+        return js;
+    }
+}
@@ -0,0 +1,270 @@
+package com.cureon.telemed;
+
+import android.app.AlarmManager;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Medication reminders on Android: the process-wide {@link DoseQueue} in
+ * filesDir, the single AlarmManager alarm for its head, and the
+ * notifications. Doses due at the same time share one notification whose
+ * Taken and Snooze actions go to {@link MedicationAlarmReceiver} and are
+ * written to the queue there, so neither the alarm nor the actions start the
+ * WebView.
+ *
+ * <p>Alarms are exact and allowed while idle when the patient has granted
+ * exact alarms, and otherwise inexact, which Doze may defer by some minutes.
+ */
+final class MedicationReminders {
+    private static final String TAG = "MedicationReminders";
+    private static final String DIR = "medication_reminders";
+    private static final String CHANNEL_ID = "medication_reminders";
+    private static final int NOTIFICATION_ID_BASE = 4501;
+    // Notification ids cycle through this many minutes of the day
+    private static final int NOTIFICATION_IDS = 24 * 60;
+    static final long SNOOZE_MS = 10 * 60_000L;
+
+    static final String ACTION_ALARM = "com.cureon.telemed.action.MEDICATION_ALARM";
+    static final String ACTION_TAKEN = "com.cureon.telemed.action.MEDICATION_TAKEN";
+    static final String ACTION_SNOOZE = "com.cureon.telemed.action.MEDICATION_SNOOZE";
+    static final String EXTRA_IDS = "ids";
+    static final String EXTRA_DOSES = "doses";
+    static final String EXTRA_NOTIFICATION_ID = "notificationId";
+
+    private static final int TRACE_FIRE = PerfTrace.shared().name("medication.fire");
+
+    interface Listener {
+        void onDoseLogged(String id, long doseAt, int action);
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static DoseQueue queue;
+
+    private MedicationReminders() {
+    }
+
+    static synchronized DoseQueue queue(Context context) {
+        if (queue == null) {
+            File dir = new File(context.getFilesDir(), DIR);
+            long now = System.currentTimeMillis();
+            try {
+                queue = new DoseQueue(dir, ZoneId.systemDefault(), now);
+            } catch (IOException e) {
+                // Keep the bad file for a bug report rather than crash on every alarm
+                Log.e(TAG, "Reminder store unreadable, starting empty: " + e.getMessage(), e);
+                File store = new File(dir, DoseQueue.SCHEDULES_FILE);
+                if (!store.renameTo(new File(dir, DoseQueue.SCHEDULES_FILE + ".corrupt"))) {
+                    Log.w(TAG, "Cannot move the unreadable store aside");
+                }
+                try {
+                    queue = new DoseQueue(dir, ZoneId.systemDefault(), now);
+                } catch (IOException again) {
+                    throw new IllegalStateException("Cannot open reminder store", again);
+                }
+            }
+        }
+        return queue;
+    }
+
+    static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    static boolean canScheduleExact(Context context) {
+        AlarmManager alarms = context.getSystemService(AlarmManager.class);
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || (alarms != null && alarms.canScheduleExactAlarms());
+    }
+
+    /** Registers the one alarm for the queue's head, replacing whatever was there. */
+    static void rearm(Context context) {
+        AlarmManager alarms = context.getSystemService(AlarmManager.class);
+        if (alarms == null) {
+            return;
+        }
+        Intent intent = new Intent(context, MedicationAlarmReceiver.class).setAction(ACTION_ALARM);
+        PendingIntent operation = PendingIntent.getBroadcast(context, 0, intent,
+            PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        long next = queue(context).nextAlarmAt();
+        if (next < 0) {
+            alarms.cancel(operation);
+            return;
+        }
+        if (canScheduleExact(context)) {
+            alarms.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, operation);
+        } else {
+            alarms.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, operation);
+        }
+    }
+
+    /** The alarm went off (or the phone woke up): show what's due and arm the next one. */
+    static void fire(Context context) {
+        PerfTrace.shared().begin(TRACE_FIRE);
+        try {
+            List<DoseQueue.Due> due = queue(context).collectDue(System.currentTimeMillis());
+            // One notification per firing time: everything due at 08:00 together
+            Map<Long, List<DoseQueue.Due>> groups = new LinkedHashMap<>();
+            for (DoseQueue.Due dose : due) {
+                groups.computeIfAbsent(dose.at, k -> new ArrayList<>()).add(dose);
+            }
+            if (!groups.isEmpty()) {
+                createChannel(context);
+            }
+            for (Map.Entry<Long, List<DoseQueue.Due>> group : groups.entrySet()) {
+                notify(context, group.getKey(), group.getValue());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to collect due doses: " + e.getMessage(), e);
+        } finally {
+            rearm(context);
+            PerfTrace.shared().end(TRACE_FIRE);
+        }
+    }
+
+    /** Boot, time or time-zone change: the same wall-clock times, re-armed. */
+    static void reschedule(Context context) {
+        queue(context).rezone(ZoneId.systemDefault(), System.currentTimeMillis());
+        fire(context);
+    }
+
+    static void taken(Context context, String[] ids, long[] doses, int notificationId) {
+        DoseQueue doseQueue = queue(context);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                doseQueue.taken(ids[i], doses[i], now);
+                for (Listener listener : listeners) {
+                    listener.onDoseLogged(ids[i], doses[i], DoseQueue.TAKEN);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to log dose: " + e.getMessage(), e);
+            }
+        }
+        NotificationManagerCompat.from(context).cancel(notificationId);
+        rearm(context);
+    }
+
+    static void snooze(Context context, String[] ids, long[] doses, int notificationId) {
+        DoseQueue doseQueue = queue(context);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                if (doseQueue.snooze(ids[i], doses[i], now + SNOOZE_MS, now)) {
+                    for (Listener listener : listeners) {
+                        listener.onDoseLogged(ids[i], doses[i], DoseQueue.SNOOZED);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to snooze dose: " + e.getMessage(), e);
+            }
+        }
+        NotificationManagerCompat.from(context).cancel(notificationId);
+        rearm(context);
+    }
+
+    private static void createChannel(Context context) {
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager != null) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.medication_channel_name), NotificationManager.IMPORTANCE_HIGH);
+            channel.enableVibration(true);
+            manager.createNotificationChannel(channel);
+        }
+    }
+
+    private static void notify(Context context, long at, List<DoseQueue.Due> doses) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        if (!manager.areNotificationsEnabled()) {
+            return;
+        }
+        int id = NOTIFICATION_ID_BASE + (int) (at / 60_000 % NOTIFICATION_IDS);
+        String[] ids = new String[doses.size()];
+        long[] doseTimes = new long[doses.size()];
+        NotificationCompat.InboxStyle lines = new NotificationCompat.InboxStyle();
+        for (int i = 0; i < doses.size(); i++) {
+            DoseSchedule schedule = doses.get(i).schedule;
+            ids[i] = schedule.id;
+            doseTimes[i] = doses.get(i).doseAt;
+            lines.addLine(line(schedule));
+        }
+        String title = doses.size() == 1
+            ? context.getString(R.string.medication_title_one, doses.get(0).schedule.name)
+            : context.getString(R.string.medication_title_many, doses.size());
+        NotificationCompat.Builder notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.ic_popup_reminder)
+            .setContentTitle(title)
+            .setContentText(doses.size() == 1 ? line(doses.get(0).schedule) : joinNames(doses))
+            .setStyle(lines)
+            .setWhen(at)
+            .setShowWhen(true)
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setCategory(NotificationCompat.CATEGORY_REMINDER)
+            .setDefaults(NotificationCompat.DEFAULT_ALL)
+            .setAutoCancel(true)
+            .addAction(android.R.drawable.checkbox_on_background, context.getString(R.string.medication_taken),
+                action(context, ACTION_TAKEN, id, ids, doseTimes))
+            .addAction(android.R.drawable.ic_lock_idle_alarm, context.getString(R.string.medication_snooze),
+                action(context, ACTION_SNOOZE, id, ids, doseTimes));
+        Intent launch = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (launch != null) {
+            notification.setContentIntent(PendingIntent.getActivity(context, id, launch,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+        try {
+            manager.notify(id, notification.build());
+        } catch (SecurityException e) {
+            Log.w(TAG, "Cannot post medication reminder: " + e.getMessage());
+        }
+    }
+
+    private static PendingIntent action(Context context, String action, int notificationId, String[] ids, long[] doses) {
+        Intent intent = new Intent(context, MedicationAlarmReceiver.class)
+            .setAction(action)
+            .putExtra(EXTRA_IDS, ids)
+            .putExtra(EXTRA_DOSES, doses)
+            .putExtra(EXTRA_NOTIFICATION_ID, notificationId);
+        // Taken and Snooze of the same notification need distinct request codes
+        int requestCode = notificationId * 2 + (ACTION_TAKEN.equals(action) ? 0 : 1);
+        return PendingIntent.getBroadcast(context, requestCode, intent,
+            PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static String line(DoseSchedule schedule) {
+        StringBuilder line = new StringBuilder(schedule.name);
+        if (!schedule.dosage.isEmpty()) {
+            line.append(" \u2014 ").append(schedule.dosage);
+        }
+        if (!schedule.instructions.isEmpty()) {
+            line.append(" (").append(schedule.instructions).append(')');
+        }
+        return line.toString();
+    }
+
+    private static String joinNames(List<DoseQueue.Due> doses) {
+        List<String> names = new ArrayList<>(doses.size());
+        for (DoseQueue.Due dose : doses) {
+            names.add(dose.schedule.name);
+        }
+        return String.join(", ", names);
+    }
+}
@@ -0,0 +1,565 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The offline medicine catalog: a {@link MedicineIndex} kept on disk and
+ * brought up to date by delta pulls from {@code GET /medicines/sync}.
+ *
+ * <p>The backend pages through medicines by their (updatedAt, _id) cursor,
+ * deactivated ones included so they can be dropped here. Each page is
+ * appended to a log of upserts, deletes and the new cursor, fsynced before
+ * the next page is asked for, so an interrupted pull resumes where it
+ * stopped. The log is folded into a snapshot at the end of a sync once it
+ * has grown to half the snapshot's size. Both files are CRC-checked; a torn
+ * log tail is cut off on load, and an unreadable snapshot means pulling
+ * everything again.
+ *
+ * <p>Medicines deleted outright on the server leave no delta behind. The
+ * last page of a pull carries the server's count of active medicines, and
+ * when it disagrees with ours the catalog is pulled again from the start,
+ * dropping whatever that pass didn't return.
+ */
+final class MedicineCatalog {
+    static final String SYNC_PATH = "/api/v1/medicines/sync";
+    static final int PAGE_SIZE = 500;
+
+    private static final int MAGIC = 0x4d454443; // "MEDC"
+    private static final int FORMAT = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CURSOR = 3;
+    private static final int TIMEOUT_MS = 20_000;
+    private static final int MAX_PAGE_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+    // Guards against a server that keeps saying hasMore
+    private static final int MAX_PAGES = 10_000;
+
+    static final class SyncResult {
+        int pages;
+        int upserted;
+        int removed;
+        boolean fullPull;
+        int size;
+    }
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final MedicineIndex index = new MedicineIndex();
+    private long since;
+    private String after;
+    private long syncedAt;
+    private long logBytes;
+    private long snapshotBytes;
+    private boolean loaded;
+    // Open for appending from the first record after load; the stream is buffered, logFd is for fsync
+    private DataOutputStream log;
+    private FileOutputStream logFd;
+
+    MedicineCatalog(File dir) {
+        dir.mkdirs();
+        this.snapshotFile = new File(dir, "catalog.bin");
+        this.logFile = new File(dir, "catalog.log");
+    }
+
+    synchronized int size() {
+        load();
+        return index.size();
+    }
+
+    /** Wall time of the last sync that reached the end of the feed, 0 if none has. */
+    synchronized long syncedAt() {
+        load();
+        return syncedAt;
+    }
+
+    /** The updatedAt watermark: everything changed up to here is in the catalog. */
+    synchronized long watermark() {
+        load();
+        return since;
+    }
+
+    synchronized MedicineIndex.Page search(MedicineIndex.Query query) {
+        load();
+        return index.search(query);
+    }
+
+    synchronized List<String> categories() {
+        load();
+        return index.categories();
+    }
+
+    synchronized void clear() {
+        closeLog();
+        index.clear();
+        since = 0;
+        after = null;
+        syncedAt = 0;
+        snapshotFile.delete();
+        logFile.delete();
+        logBytes = 0;
+        snapshotBytes = 0;
+        loaded = true;
+    }
+
+    /**
+     * Pulls every change since the watermark. Pages are applied as they
+     * arrive, so searches in the meantime already see the earlier ones. On a
+     * network error the pages applied so far are kept and the next sync
+     * continues from them.
+     */
+    SyncResult sync(String baseUrl) throws IOException, JSONException {
+        SyncResult result = new SyncResult();
+        Set<String> seen = null;
+        long pullSince;
+        String pullAfter;
+        synchronized (this) {
+            load();
+            pullSince = since;
+            pullAfter = after;
+        }
+        while (true) {
+            if (++result.pages > MAX_PAGES) {
+                throw new IOException("Catalog sync did not finish after " + MAX_PAGES + " pages");
+            }
+            JSONObject page = fetch(baseUrl, pullSince, pullAfter);
+            JSONArray medicines = page.optJSONArray("medicines");
+            JSONObject cursor = page.optJSONObject("cursor");
+            if (medicines == null || cursor == null) {
+                throw new JSONException("Malformed catalog page");
+            }
+            pullSince = cursor.optLong("since", pullSince);
+            pullAfter = cursor.isNull("after") ? null : cursor.optString("after", null);
+            boolean more = page.optBoolean("hasMore");
+            synchronized (this) {
+                apply(medicines, pullSince, pullAfter, seen, result);
+                if (!more) {
+                    int active = page.optInt("activeCount", -1);
+                    if (seen != null) {
+                        // A full pull just finished: whatever it didn't return is gone on the server
+                        for (MedicineIndex.Item item : index.items()) {
+                            if (!seen.contains(item.id)) {
+                                index.remove(item.id);
+                                appendRecord(OP_REMOVE, item.id, null);
+                                result.removed++;
+                            }
+                        }
+                    } else if (active >= 0 && active != index.size()) {
+                        // Something was deleted outright; pull everything, keeping the old rows until it ends
+                        seen = new HashSet<>();
+                        result.fullPull = true;
+                        pullSince = 0;
+                        pullAfter = null;
+                        continue;
+                    }
+                    syncedAt = System.currentTimeMillis();
+                    appendRecord(OP_CURSOR, null, null);
+                    syncLog();
+                    if (logBytes > Math.max(256 * 1024, snapshotBytes / 2)) {
+                        writeSnapshot();
+                    }
+                    index.prepare();
+                    result.size = index.size();
+                    return result;
+                }
+            }
+        }
+    }
+
+    private void apply(JSONArray medicines, long cursorSince, String cursorAfter, Set<String> seen,
+            SyncResult result) throws IOException, JSONException {
+        for (int i = 0; i < medicines.length(); i++) {
+            JSONObject medicine = medicines.getJSONObject(i);
+            String id = medicine.getString("_id");
+            if (medicine.optBoolean("isActive", true)) {
+                MedicineIndex.Item item = parse(medicine);
+                index.put(item);
+                appendRecord(OP_PUT, id, item);
+                result.upserted++;
+                if (seen != null) {
+                    seen.add(id);
+                }
+            } else if (index.remove(id)) {
+                appendRecord(OP_REMOVE, id, null);
+                result.removed++;
+            }
+        }
+        since = cursorSince;
+        after = cursorAfter;
+        appendRecord(OP_CURSOR, null, null);
+        syncLog();
+    }
+
+    private static JSONObject fetch(String baseUrl, long since, String after) throws IOException, JSONException {
+        StringBuilder url = new StringBuilder(baseUrl).append(SYNC_PATH)
+            .append("?since=").append(since)
+            .append("&limit=").append(PAGE_SIZE);
+        if (after != null) {
+            url.append("&after=").append(URLEncoder.encode(after, "UTF-8"));
+        }
+        HttpURLConnection conn = (HttpURLConnection) new URL(url.toString()).openConnection();
+        try {
+            conn.setConnectTimeout(TIMEOUT_MS);
+            conn.setReadTimeout(TIMEOUT_MS);
+            conn.setRequestProperty("Accept", "application/json");
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+            try (InputStream in = conn.getInputStream()) {
+                return new JSONObject(readBounded(in));
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /** The columns of one feed entry; the entry itself is kept as the JSON the page gets back. */
+    static MedicineIndex.Item parse(JSONObject medicine) throws JSONException {
+        MedicineIndex.Item item = new MedicineIndex.Item();
+        item.id = medicine.getString("_id");
+        item.json = medicine.toString();
+        item.name = medicine.optString("name", "");
+        item.genericName = medicine.optString("genericName", null);
+        item.manufacturer = medicine.optString("manufacturer", null);
+        item.composition = medicine.optString("composition", null);
+        JSONArray tags = medicine.optJSONArray("tags");
+        if (tags != null && tags.length() > 0) {
+            item.tags = new String[tags.length()];
+            for (int i = 0; i < tags.length(); i++) {
+                item.tags[i] = tags.optString(i, "");
+            }
+        }
+        item.category = medicine.optString("category", "");
+        JSONObject pharmacy = medicine.optJSONObject("pharmacy");
+        JSONObject address = pharmacy == null ? null : pharmacy.optJSONObject("address");
+        item.city = address == null ? null : address.optString("city", null);
+        item.price = medicine.optDouble("price", 0);
+        item.rating = (float) medicine.optDouble("rating", 0);
+        item.soldCount = medicine.optInt("soldCount", 0);
+        item.createdAt = epochMillis(medicine.optString("createdAt", null));
+        item.prescriptionRequired = medicine.optBoolean("prescriptionRequired", false);
+        return item;
+    }
+
+    private static long epochMillis(String iso) {
+        if (iso == null) {
+            return 0;
+        }
+        try {
+            return Instant.parse(iso).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static String readBounded(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            if (out.size() + n > MAX_PAGE_BYTES) {
+                throw new IOException("Catalog page too large");
+            }
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // --- Storage ---
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (snapshotFile.exists()) {
+            try {
+                readSnapshot();
+            } catch (IOException e) {
+                // Start over; the log alone can't be trusted without the snapshot under it
+                index.clear();
+                since = 0;
+                after = null;
+                syncedAt = 0;
+                snapshotFile.delete();
+                logFile.delete();
+                return;
+            }
+        }
+        if (logFile.exists()) {
+            replayLog();
+        }
+        index.prepare();
+    }
+
+    private void readSnapshot() throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+        if (bytes.length < 8) {
+            throw new IOException("Truncated catalog snapshot");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        DataInputStream tail = new DataInputStream(new ByteArrayInputStream(bytes, bytes.length - 8, 8));
+        if (tail.readLong() != crc.getValue()) {
+            throw new IOException("Catalog snapshot checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+            throw new IOException("Unknown catalog snapshot format");
+        }
+        since = in.readLong();
+        after = readString(in);
+        syncedAt = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            index.put(readItem(in));
+        }
+        snapshotBytes = bytes.length;
+    }
+
+    /** Applies log records in order up to the first torn or corrupt one, and cuts the file there. */
+    private void replayLog() {
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                long expected = in.readLong();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if (crc.getValue() != expected) {
+                    break;
+                }
+                applyRecord(new DataInputStream(new ByteArrayInputStream(record)));
+                good += 12 + length;
+            }
+        } catch (IOException e) {
+            // EOF inside a record: the tail was being written when the process died
+        }
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            if (file.length() > good) {
+                file.setLength(good);
+            }
+        } catch (IOException e) {
+            logFile.delete();
+            good = 0;
+        }
+        logBytes = good;
+    }
+
+    private void applyRecord(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case OP_PUT:
+                index.put(readItem(in));
+                break;
+            case OP_REMOVE:
+                index.remove(readString(in));
+                break;
+            case OP_CURSOR:
+                since = in.readLong();
+                after = readString(in);
+                syncedAt = in.readLong();
+                break;
+            default:
+                throw new IOException("Unknown catalog record " + op);
+        }
+    }
+
+    private void appendRecord(byte op, String id, MedicineIndex.Item item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(item == null ? 64 : item.json.length() + 256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(op);
+        if (op == OP_PUT) {
+            writeItem(record, item);
+        } else if (op == OP_REMOVE) {
+            writeString(record, id);
+        } else {
+            record.writeLong(since);
+            writeString(record, after);
+            record.writeLong(syncedAt);
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (log == null) {
+            logFd = new FileOutputStream(logFile, true);
+            log = new DataOutputStream(new BufferedOutputStream(logFd, 64 * 1024));
+        }
+        log.writeInt(payload.length);
+        log.writeLong(crc.getValue());
+        log.write(payload);
+        logBytes += 12 + payload.length;
+    }
+
+    /** Makes the records appended so far durable; called once per page. */
+    private void syncLog() throws IOException {
+        if (log != null) {
+            log.flush();
+            logFd.getFD().sync();
+        }
+    }
+
+    /** Replaces the snapshot with the current catalog and empties the log. */
+    private void writeSnapshot() throws IOException {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        long written;
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(file, crc), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(since);
+            writeString(out, after);
+            out.writeLong(syncedAt);
+            List<MedicineIndex.Item> items = index.items();
+            out.writeInt(items.size());
+            for (MedicineIndex.Item item : items) {
+                writeItem(out, item);
+            }
+            out.flush();
+            // The checksum covers everything before it
+            DataOutputStream tail = new DataOutputStream(file);
+            tail.writeLong(crc.getValue());
+            tail.flush();
+            written = out.size() + 8L;
+            file.getFD().sync();
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Cannot replace " + snapshotFile);
+        }
+        closeLog();
+        logFile.delete();
+        logBytes = 0;
+        snapshotBytes = written;
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // Everything that mattered was fsynced with its page
+            }
+            log = null;
+            logFd = null;
+        }
+    }
+
+    private static void writeItem(DataOutputStream out, MedicineIndex.Item item) throws IOException {
+        writeString(out, item.id);
+        writeString(out, item.json);
+        writeString(out, item.name);
+        writeString(out, item.genericName);
+        writeString(out, item.manufacturer);
+        writeString(out, item.composition);
+        out.writeInt(item.tags == null ? 0 : item.tags.length);
+        if (item.tags != null) {
+            for (String tag : item.tags) {
+                writeString(out, tag);
+            }
+        }
+        writeString(out, item.category);
+        writeString(out, item.city);
+        out.writeDouble(item.price);
+        out.writeFloat(item.rating);
+        out.writeInt(item.soldCount);
+        out.writeLong(item.createdAt);
+        out.writeBoolean(item.prescriptionRequired);
+    }
+
+    private static MedicineIndex.Item readItem(DataInputStream in) throws IOException {
+        MedicineIndex.Item item = new MedicineIndex.Item();
+        item.id = readString(in);
+        item.json = readString(in);
+        item.name = readString(in);
+        item.genericName = readString(in);
+        item.manufacturer = readString(in);
+        item.composition = readString(in);
+        int tags = in.readInt();
+        if (tags < 0 || tags > 1024) {
+            throw new IOException("Corrupt catalog item");
+        }
+        if (tags > 0) {
+            item.tags = new String[tags];
+            for (int i = 0; i < tags; i++) {
+                item.tags[i] = readString(in);
+            }
+        }
+        item.category = readString(in);
+        item.city = readString(in);
+        item.price = in.readDouble();
+        item.rating = in.readFloat();
+        item.soldCount = in.readInt();
+        item.createdAt = in.readLong();
+        item.prescriptionRequired = in.readBoolean();
+        if (item.id == null || item.json == null) {
+            throw new IOException("Corrupt catalog item");
+        }
+        return item;
+    }
+
+    // writeUTF caps strings at 64KB; a medicine's JSON has no such bound
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_RECORD_BYTES) {
+            throw new IOException("Corrupt catalog string");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
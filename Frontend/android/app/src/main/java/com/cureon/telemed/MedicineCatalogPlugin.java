@@ -0,0 +1,239 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Answers the medicine catalog page's searches from {@link MedicineCatalog}
+ * on the device, in the same shape as GET /medicines. The page tells us
+ * the API's base URL once ({@code configure}); it is remembered, and the
+ * catalog is brought up to date on every launch and whenever the page asks.
+ */
+@CapacitorPlugin(name = "MedicineCatalog")
+public class MedicineCatalogPlugin extends Plugin {
+    private static final String TAG = "MedicineCatalogPlugin";
+    private static final String PREFS = "medicine_catalog";
+    private static final String KEY_BASE_URL = "baseUrl";
+    // A sync the page asks for within this of the last one is answered with the current state
+    private static final long MIN_SYNC_INTERVAL_MS = 60_000;
+    private static final int TRACE_SEARCH = PerfTrace.shared().name("MedicineCatalog.search");
+    private static final int TRACE_SYNC = PerfTrace.shared().name("MedicineCatalog.sync");
+
+    private MedicineCatalog catalog;
+    // Syncs run one at a time and are network-bound; searches must not queue behind them
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void load() {
+        catalog = new MedicineCatalog(new File(getContext().getFilesDir(), "medicine-catalog"));
+        // Loading a large catalog from disk takes a moment; do it before the page's first search
+        searchExecutor.execute(catalog::size);
+        if (baseUrl() != null) {
+            syncExecutor.execute(() -> runSync(null));
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        syncExecutor.shutdownNow();
+        searchExecutor.shutdownNow();
+    }
+
+    @PluginMethod
+    public void configure(PluginCall call) {
+        String baseUrl = call.getString("baseUrl");
+        if (baseUrl == null || !baseUrl.startsWith("http")) {
+            call.reject("Missing baseUrl");
+            return;
+        }
+        baseUrl = baseUrl.replaceAll("/+$", "");
+        boolean changed = !baseUrl.equals(baseUrl());
+        prefs().edit().putString(KEY_BASE_URL, baseUrl).apply();
+        if (changed) {
+            // Another server's catalog has nothing to do with this one
+            syncExecutor.execute(() -> {
+                catalog.clear();
+                runSync(null);
+            });
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /** Pulls changes since the last sync; {@code force} skips the once-a-minute limit. */
+    @PluginMethod
+    public void sync(PluginCall call) {
+        if (baseUrl() == null) {
+            call.reject("Medicine catalog is not configured");
+            return;
+        }
+        boolean force = Boolean.TRUE.equals(call.getBoolean("force", false));
+        syncExecutor.execute(() -> {
+            if (!force && System.currentTimeMillis() - catalog.syncedAt() < MIN_SYNC_INTERVAL_MS) {
+                JSObject result = status();
+                result.put("success", true);
+                call.resolve(result);
+                return;
+            }
+            runSync(call);
+        });
+    }
+
+    /**
+     * Same parameters and result as GET /medicines: search, category,
+     * sortBy, minPrice, maxPrice, prescriptionRequired, city, page, limit.
+     */
+    @PluginMethod
+    public void search(PluginCall call) {
+        MedicineIndex.Query query = new MedicineIndex.Query();
+        JSObject data = call.getData();
+        query.search = data.optString("search", "");
+        query.category = data.optString("category", "");
+        query.sortBy = data.optString("sortBy", MedicineIndex.SORT_NAME);
+        query.minPrice = number(data, "minPrice");
+        query.maxPrice = number(data, "maxPrice");
+        String rx = data.optString("prescriptionRequired", "");
+        query.prescriptionRequired = rx.isEmpty() ? null : Boolean.valueOf(rx);
+        query.city = data.optString("city", "");
+        query.page = data.optInt("page", 1);
+        query.limit = Math.min(100, data.optInt("limit", 20));
+        searchExecutor.execute(() -> {
+            PerfTrace.shared().begin(TRACE_SEARCH);
+            try {
+                long started = System.nanoTime();
+                MedicineIndex.Page page = catalog.search(query);
+                JSArray medicines = new JSArray();
+                for (MedicineIndex.Item item : page.items) {
+                    medicines.put(new JSONObject(item.json));
+                }
+                JSObject pagination = new JSObject();
+                pagination.put("total", page.total);
+                pagination.put("pages", page.pages());
+                pagination.put("page", page.page);
+                pagination.put("limit", page.limit);
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("medicines", medicines);
+                result.put("pagination", pagination);
+                result.put("fuzzy", page.fuzzy);
+                result.put("syncedAt", catalog.syncedAt());
+                result.put("tookMs", (System.nanoTime() - started) / 1_000_000.0);
+                call.resolve(result);
+            } catch (JSONException e) {
+                call.reject("Failed to search medicine catalog: " + e.getMessage());
+            } finally {
+                PerfTrace.shared().end(TRACE_SEARCH);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getCategories(PluginCall call) {
+        searchExecutor.execute(() -> {
+            JSArray categories = new JSArray();
+            for (String category : catalog.categories()) {
+                categories.put(category);
+            }
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("categories", categories);
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        searchExecutor.execute(() -> {
+            JSObject result = status();
+            result.put("success", true);
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        syncExecutor.execute(() -> {
+            catalog.clear();
+            JSObject result = new JSObject();
+            result.put("success", true);
+            call.resolve(result);
+        });
+    }
+
+    private void runSync(PluginCall call) {
+        String baseUrl = baseUrl();
+        if (baseUrl == null) {
+            return;
+        }
+        PerfTrace.shared().begin(TRACE_SYNC);
+        try {
+            MedicineCatalog.SyncResult synced = catalog.sync(baseUrl);
+            Log.i(TAG, "Catalog synced: " + synced.upserted + " changed, " + synced.removed + " removed, "
+                + synced.size + " medicines" + (synced.fullPull ? " (full pull)" : ""));
+            JSObject result = status();
+            result.put("success", true);
+            result.put("upserted", synced.upserted);
+            result.put("removed", synced.removed);
+            result.put("fullPull", synced.fullPull);
+            notifyListeners("catalogSynced", result);
+            if (call != null) {
+                call.resolve(result);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Catalog sync failed: " + e.getMessage());
+            if (call != null) {
+                call.reject("Failed to sync medicine catalog: " + e.getMessage());
+            }
+        } finally {
+            PerfTrace.shared().end(TRACE_SYNC);
+        }
+    }
+
+    private JSObject status() {
+        JSObject result = new JSObject();
+        int size = catalog.size();
+        result.put("ready", size > 0);
+        result.put("size", size);
+        result.put("syncedAt", catalog.syncedAt());
+        result.put("watermark", catalog.watermark());
+        return result;
+    }
+
+    // The page's filters are strings, empty when unset
+    private static double number(JSONObject data, String key) {
+        String value = data.optString(key, "");
+        if (value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private String baseUrl() {
+        return prefs().getString(KEY_BASE_URL, null);
+    }
+
+    private SharedPreferences prefs() {
+        return getContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
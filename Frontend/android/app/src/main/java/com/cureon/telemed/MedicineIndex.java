@@ -0,0 +1,636 @@
+package com.cureon.telemed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory search index over the offline medicine catalog. Every filter and
+ * sort key the catalog page offers is kept as a column (category and city
+ * dictionary-coded), and the words of each medicine's name, generic name,
+ * manufacturer, composition and tags go into a term dictionary with posting
+ * lists. A query turns its search words into one row bitset, then walks the
+ * precomputed order for {@code sortBy} and tests each row's columns, so a page
+ * costs one pass over the catalog and never a sort.
+ *
+ * <p>Each search word matches the terms it is a prefix of. A word with no such
+ * term (a typo, usually) instead matches terms within one edit of it, two
+ * for words of eight letters or more, counting the word against the term's
+ * start so an unfinished word can still match.
+ *
+ * <p>Updates replace or drop rows in place, leaving a dead slot behind; the
+ * arrays are rebuilt once dead slots are a quarter of the total. Not thread
+ * safe: {@link MedicineCatalog} serializes access.
+ */
+final class MedicineIndex {
+    static final String SORT_NAME = "name";
+    static final String SORT_PRICE_LOW = "price-low";
+    static final String SORT_PRICE_HIGH = "price-high";
+    static final String SORT_RATING = "rating";
+    static final String SORT_NEWEST = "newest";
+    static final String SORT_POPULAR = "popular";
+
+    private static final String[] SORTS = {
+        SORT_NAME, SORT_PRICE_LOW, SORT_PRICE_HIGH, SORT_RATING, SORT_NEWEST, SORT_POPULAR
+    };
+    // Dead slots are only compacted away past this many, so small catalogs never bother
+    private static final int MIN_COMPACT = 1024;
+
+    /** One medicine as the catalog stores it: its columns, plus the JSON handed back to the page. */
+    static final class Item {
+        String id;
+        String json;
+        String name;
+        String genericName;
+        String manufacturer;
+        String composition;
+        String[] tags;
+        String category;
+        String city;
+        double price;
+        float rating;
+        int soldCount;
+        long createdAt;
+        boolean prescriptionRequired;
+    }
+
+    /** The catalog page's filters, with the same meaning as GET /medicines. */
+    static final class Query {
+        String search;
+        String category;
+        double minPrice = Double.NaN;
+        double maxPrice = Double.NaN;
+        Boolean prescriptionRequired;
+        String city;
+        String sortBy = SORT_NAME;
+        int page = 1;
+        int limit = 20;
+    }
+
+    static final class Page {
+        final List<Item> items;
+        final int total;
+        final int page;
+        final int limit;
+        // True when some search word only matched through typo tolerance
+        final boolean fuzzy;
+
+        Page(List<Item> items, int total, int page, int limit, boolean fuzzy) {
+            this.items = items;
+            this.total = total;
+            this.page = page;
+            this.limit = limit;
+            this.fuzzy = fuzzy;
+        }
+
+        int pages() {
+            return (total + limit - 1) / limit;
+        }
+    }
+
+    /** A growable int array: posting lists and dictionary counts without boxing. */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private Item[] items = new Item[64];
+    private String[] sortNames = new String[64];
+    private int[] categories = new int[64];
+    private int[] cities = new int[64];
+    private double[] prices = new double[64];
+    private boolean[] alive = new boolean[64];
+    private int rows;
+    private int dead;
+
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private final IntList categoryCounts = new IntList();
+    private final Map<String, Integer> cityCodes = new HashMap<>();
+    private final List<String> cityNames = new ArrayList<>();
+
+    private final Map<String, IntList> postings = new HashMap<>();
+    // Built on demand; null whenever a term was added since
+    private String[] sortedTerms;
+    // One row order per entry of SORTS, built on demand; null whenever rows changed since
+    private final int[][] orders = new int[SORTS.length][];
+    // The name order as of the last change and the rows appended since, so that
+    // a sync page is sorted and merged in rather than the whole catalog re-sorted
+    private int[] lastByName;
+    private final IntList appendedSince = new IntList();
+
+    int size() {
+        return rowById.size();
+    }
+
+    boolean contains(String id) {
+        return rowById.containsKey(id);
+    }
+
+    Item get(String id) {
+        Integer row = rowById.get(id);
+        return row == null ? null : items[row];
+    }
+
+    /** Every live item, in no particular order. */
+    List<Item> items() {
+        List<Item> live = new ArrayList<>(size());
+        for (int row = 0; row < rows; row++) {
+            if (alive[row]) {
+                live.add(items[row]);
+            }
+        }
+        return live;
+    }
+
+    /** Categories with at least one medicine, alphabetically. */
+    List<String> categories() {
+        List<String> names = new ArrayList<>();
+        for (int code = 0; code < categoryNames.size(); code++) {
+            if (categoryCounts.values[code] > 0) {
+                names.add(categoryNames.get(code));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Adds an item, replacing any with the same id. */
+    void put(Item item) {
+        // First, so the row appended below counts as changed since the last name order
+        invalidateOrders();
+        Integer existing = rowById.get(item.id);
+        if (existing != null) {
+            kill(existing);
+        }
+        append(item);
+    }
+
+    /** Returns false if the id wasn't in the index. */
+    boolean remove(String id) {
+        Integer row = rowById.get(id);
+        if (row == null) {
+            return false;
+        }
+        kill(row);
+        invalidateOrders();
+        return true;
+    }
+
+    void clear() {
+        items = new Item[64];
+        sortNames = new String[64];
+        categories = new int[64];
+        cities = new int[64];
+        prices = new double[64];
+        alive = new boolean[64];
+        rows = 0;
+        dead = 0;
+        rowById.clear();
+        categoryCodes.clear();
+        categoryNames.clear();
+        categoryCounts.size = 0;
+        cityCodes.clear();
+        cityNames.clear();
+        postings.clear();
+        sortedTerms = null;
+        invalidateOrders();
+        lastByName = null;
+        appendedSince.size = 0;
+    }
+
+    /** Builds what the first query would otherwise wait for: the term dictionary and the name order. */
+    void prepare() {
+        compactIfSparse();
+        sortedTerms();
+        order(SORT_NAME);
+    }
+
+    Page search(Query query) {
+        compactIfSparse();
+        int limit = Math.max(1, query.limit);
+        int page = Math.max(1, query.page);
+        boolean[] fuzzy = new boolean[1];
+        long[] matches = matchWords(query.search, fuzzy);
+
+        int category = -1;
+        if (query.category != null && !query.category.isEmpty() && !"all".equals(query.category)) {
+            Integer code = categoryCodes.get(query.category);
+            if (code == null) {
+                return new Page(Collections.emptyList(), 0, page, limit, false);
+            }
+            category = code;
+        }
+        boolean[] cityMatches = null;
+        if (query.city != null && !query.city.trim().isEmpty()) {
+            // Matches the server's case-insensitive substring match, checked once per distinct city
+            String needle = query.city.trim().toLowerCase(Locale.ROOT);
+            cityMatches = new boolean[cityNames.size()];
+            for (int code = 0; code < cityMatches.length; code++) {
+                cityMatches[code] = cityNames.get(code).toLowerCase(Locale.ROOT).contains(needle);
+            }
+        }
+        boolean checkPrice = !Double.isNaN(query.minPrice) || !Double.isNaN(query.maxPrice);
+        double minPrice = Double.isNaN(query.minPrice) ? Double.NEGATIVE_INFINITY : query.minPrice;
+        double maxPrice = Double.isNaN(query.maxPrice) ? Double.POSITIVE_INFINITY : query.maxPrice;
+
+        int[] order = order(query.sortBy);
+        long skip = (long) (page - 1) * limit;
+        List<Item> found = new ArrayList<>(limit);
+        int total = 0;
+        for (int row : order) {
+            if (matches != null && (matches[row >>> 6] & (1L << row)) == 0) {
+                continue;
+            }
+            if (category >= 0 && categories[row] != category) {
+                continue;
+            }
+            if (checkPrice && (prices[row] < minPrice || prices[row] > maxPrice)) {
+                continue;
+            }
+            if (query.prescriptionRequired != null
+                    && items[row].prescriptionRequired != query.prescriptionRequired) {
+                continue;
+            }
+            if (cityMatches != null && (cities[row] < 0 || !cityMatches[cities[row]])) {
+                continue;
+            }
+            if (total >= skip && found.size() < limit) {
+                found.add(items[row]);
+            }
+            total++;
+        }
+        return new Page(found, total, page, limit, fuzzy[0]);
+    }
+
+    /**
+     * The rows every search word matches, or null when there are no words (so
+     * everything matches). Dead rows may be set; the sort orders skip them.
+     */
+    private long[] matchWords(String search, boolean[] fuzzy) {
+        List<String> words = tokenize(search, new ArrayList<>());
+        if (words.isEmpty()) {
+            return null;
+        }
+        String[] terms = sortedTerms();
+        long[] result = null;
+        for (String word : words) {
+            long[] bits = new long[(rows + 63) >>> 6];
+            if (!addPrefixMatches(terms, word, bits)) {
+                if (addFuzzyMatches(terms, word, bits)) {
+                    fuzzy[0] = true;
+                }
+            }
+            if (result == null) {
+                result = bits;
+            } else {
+                for (int i = 0; i < result.length; i++) {
+                    result[i] &= bits[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean addPrefixMatches(String[] terms, String word, long[] bits) {
+        int at = Arrays.binarySearch(terms, word);
+        boolean any = false;
+        for (int i = at >= 0 ? at : -at - 1; i < terms.length && terms[i].startsWith(word); i++) {
+            setAll(postings.get(terms[i]), bits);
+            any = true;
+        }
+        return any;
+    }
+
+    private boolean addFuzzyMatches(String[] terms, String word, long[] bits) {
+        // Shorter words are too ambiguous: "ibu" is one edit from a hundred things
+        if (word.length() < 4) {
+            return false;
+        }
+        int maxEdits = word.length() >= 8 ? 2 : 1;
+        // Typos rarely hit the first letter, and requiring it skips most of the dictionary
+        char first = word.charAt(0);
+        int from = Arrays.binarySearch(terms, String.valueOf(first));
+        from = from >= 0 ? from : -from - 1;
+        int[] previous = new int[word.length() + 1];
+        int[] current = new int[word.length() + 1];
+        int[] older = new int[word.length() + 1];
+        boolean any = false;
+        for (int i = from; i < terms.length && terms[i].charAt(0) == first; i++) {
+            String term = terms[i];
+            if (term.length() >= word.length() - maxEdits
+                    && prefixDistance(word, term, maxEdits, older, previous, current) <= maxEdits) {
+                setAll(postings.get(term), bits);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Fewest edits (insertions, deletions, substitutions and adjacent swaps)
+     * turning {@code word} into some prefix of {@code term}, or more than
+     * {@code max} once that is certain. The three rows are scratch space.
+     */
+    static int prefixDistance(String word, String term, int max, int[] older, int[] previous, int[] current) {
+        int m = word.length();
+        int n = Math.min(term.length(), m + max);
+        // Column-wise over the term: previous[i] is the distance from word[0, i) to term[0, j)
+        for (int i = 0; i <= m; i++) {
+            previous[i] = i;
+        }
+        int best = previous[m];
+        for (int j = 1; j <= n; j++) {
+            char t = term.charAt(j - 1);
+            current[0] = j;
+            int rowMin = j;
+            for (int i = 1; i <= m; i++) {
+                char w = word.charAt(i - 1);
+                int cost = w == t ? 0 : 1;
+                int d = Math.min(Math.min(previous[i] + 1, current[i - 1] + 1), previous[i - 1] + cost);
+                if (i > 1 && j > 1 && w == term.charAt(j - 2) && word.charAt(i - 2) == t) {
+                    d = Math.min(d, older[i - 2] + 1);
+                }
+                current[i] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            best = Math.min(best, current[m]);
+            if (rowMin > max) {
+                break;
+            }
+            int[] recycled = older;
+            older = previous;
+            previous = current;
+            current = recycled;
+        }
+        return best;
+    }
+
+    private static void setAll(IntList rows, long[] bits) {
+        for (int i = 0; i < rows.size; i++) {
+            int row = rows.values[i];
+            bits[row >>> 6] |= 1L << row;
+        }
+    }
+
+    private String[] sortedTerms() {
+        if (sortedTerms == null) {
+            sortedTerms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(sortedTerms);
+        }
+        return sortedTerms;
+    }
+
+    private int[] order(String sortBy) {
+        int sort = Math.max(0, Arrays.asList(SORTS).indexOf(sortBy == null ? SORT_NAME : sortBy));
+        if (orders[sort] == null) {
+            orders[sort] = buildOrder(sort);
+            if (sort == 0) {
+                lastByName = null;
+                appendedSince.size = 0;
+            }
+        }
+        return orders[sort];
+    }
+
+    /**
+     * Live rows sorted by one of SORTS. The name order is built first by
+     * comparing strings, or by merging the rows appended since into the last
+     * one; each of the others ranks its key and sorts (rank, position by name)
+     * packed into one long, so ties keep name order and the sort runs on
+     * primitives.
+     */
+    private int[] buildOrder(int sort) {
+        if (sort == 0) {
+            return lastByName != null ? mergeByName() : sortByName();
+        }
+        int[] byName = order(SORT_NAME);
+        int n = byName.length;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = sortKey(sort, byName[i]);
+        }
+        long[] distinct = keys.clone();
+        Arrays.sort(distinct);
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = (long) Arrays.binarySearch(distinct, keys[i]) << 32 | i;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = byName[(int) packed[i]];
+        }
+        return order;
+    }
+
+    private int[] sortByName() {
+        Integer[] live = new Integer[size()];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (alive[row]) {
+                live[n++] = row;
+            }
+        }
+        Arrays.sort(live, 0, n, this::compareByName);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = live[i];
+        }
+        return order;
+    }
+
+    /**
+     * The last name order without the rows that died since, merged with the
+     * live rows appended since. A replaced medicine is a new row, so the two
+     * never share one.
+     */
+    private int[] mergeByName() {
+        Integer[] fresh = new Integer[appendedSince.size];
+        int k = 0;
+        for (int i = 0; i < appendedSince.size; i++) {
+            int row = appendedSince.values[i];
+            if (alive[row]) {
+                fresh[k++] = row;
+            }
+        }
+        Arrays.sort(fresh, 0, k, this::compareByName);
+        int[] order = new int[size()];
+        int n = 0;
+        int j = 0;
+        for (int row : lastByName) {
+            if (!alive[row]) {
+                continue;
+            }
+            while (j < k && compareByName(fresh[j], row) < 0) {
+                order[n++] = fresh[j++];
+            }
+            order[n++] = row;
+        }
+        while (j < k) {
+            order[n++] = fresh[j++];
+        }
+        return order;
+    }
+
+    private int compareByName(int a, int b) {
+        int c = sortNames[a].compareTo(sortNames[b]);
+        return c != 0 ? c : items[a].id.compareTo(items[b].id);
+    }
+
+    /** A row's key for a SORTS entry other than name, ascending in the order the page wants. */
+    private long sortKey(int sort, int row) {
+        switch (SORTS[sort]) {
+            case SORT_PRICE_LOW:
+                return sortable(prices[row]);
+            case SORT_PRICE_HIGH:
+                return ~sortable(prices[row]);
+            case SORT_RATING:
+                return ~sortable(items[row].rating);
+            case SORT_NEWEST:
+                return ~items[row].createdAt;
+            default:
+                return ~(long) items[row].soldCount;
+        }
+    }
+
+    /** Maps a double to a long with the same order, so it can be sorted as a primitive. */
+    private static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ (bits >> 63 & Long.MAX_VALUE);
+    }
+
+    private void append(Item item) {
+        if (rows == items.length) {
+            int capacity = rows * 2;
+            items = Arrays.copyOf(items, capacity);
+            sortNames = Arrays.copyOf(sortNames, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            cities = Arrays.copyOf(cities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            alive = Arrays.copyOf(alive, capacity);
+        }
+        int row = rows++;
+        items[row] = item;
+        sortNames[row] = item.name == null ? "" : item.name.toLowerCase(Locale.ROOT);
+        categories[row] = categoryCode(item.category);
+        categoryCounts.values[categories[row]]++;
+        cities[row] = cityCode(item.city);
+        prices[row] = item.price;
+        alive[row] = true;
+        rowById.put(item.id, row);
+        if (lastByName != null) {
+            // Past an eighth of the catalog a fresh sort is as cheap as the merge
+            if (appendedSince.size >= lastByName.length / 8) {
+                lastByName = null;
+                appendedSince.size = 0;
+            } else {
+                appendedSince.add(row);
+            }
+        }
+
+        List<String> terms = new ArrayList<>();
+        tokenize(item.name, terms);
+        tokenize(item.genericName, terms);
+        tokenize(item.manufacturer, terms);
+        tokenize(item.composition, terms);
+        if (item.tags != null) {
+            for (String tag : item.tags) {
+                tokenize(tag, terms);
+            }
+        }
+        for (String term : terms) {
+            IntList list = postings.get(term);
+            if (list == null) {
+                list = new IntList();
+                postings.put(term, list);
+                sortedTerms = null;
+            }
+            // Terms repeat across fields ("Paracetamol" / "Paracetamol 500mg"); post each row once
+            if (list.size == 0 || list.values[list.size - 1] != row) {
+                list.add(row);
+            }
+        }
+    }
+
+    private void kill(int row) {
+        alive[row] = false;
+        categoryCounts.values[categories[row]]--;
+        rowById.remove(items[row].id);
+        dead++;
+    }
+
+    private void invalidateOrders() {
+        if (orders[0] != null) {
+            lastByName = orders[0];
+        }
+        Arrays.fill(orders, null);
+    }
+
+    /** Rebuilds the arrays and postings without dead rows once they are a quarter of the slots. */
+    private void compactIfSparse() {
+        if (dead < MIN_COMPACT || dead * 4 < rows) {
+            return;
+        }
+        List<Item> live = items();
+        clear();
+        for (Item item : live) {
+            append(item);
+        }
+    }
+
+    private int categoryCode(String category) {
+        String key = category == null ? "" : category;
+        Integer code = categoryCodes.get(key);
+        if (code == null) {
+            code = categoryNames.size();
+            categoryCodes.put(key, code);
+            categoryNames.add(key);
+            categoryCounts.add(0);
+        }
+        return code;
+    }
+
+    private int cityCode(String city) {
+        if (city == null || city.isEmpty()) {
+            return -1;
+        }
+        Integer code = cityCodes.get(city);
+        if (code == null) {
+            code = cityNames.size();
+            cityCodes.put(city, code);
+            cityNames.add(city);
+        }
+        return code;
+    }
+
+    /** Lower-cased runs of letters and digits, appended to {@code out}. */
+    static List<String> tokenize(String text, List<String> out) {
+        if (text == null) {
+            return out;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
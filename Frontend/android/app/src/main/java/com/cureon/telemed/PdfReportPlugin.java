@@ -0,0 +1,245 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.print.PageRange;
+import android.print.PrintAttributes;
+import android.print.PrintDocumentAdapter;
+import android.print.PrintDocumentInfo;
+import android.print.PrintManager;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prescriptions and health reports as PDFs, laid out natively by
+ * {@link ReportTemplates} instead of in the WebView, so a patient with years
+ * of readings doesn't cost the page its heap or its UI thread. Files go to
+ * cache/reports and are shared or printed through the app's FileProvider.
+ */
+@CapacitorPlugin(name = "PdfReport")
+public class PdfReportPlugin extends Plugin {
+    private static final String TAG = "PdfReportPlugin";
+    private static final String DIR = "reports";
+    /** Reports are for printing and sharing now; older ones are cleared on the next generate. */
+    private static final long KEEP_MS = 24 * 60 * 60 * 1000L;
+    private static final int TRACE_GENERATE = PerfTrace.shared().name("PdfReport.generate");
+
+    // One document at a time keeps peak memory to a single report on low-end devices
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    protected void handleOnDestroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * {@code kind} is "prescription" or "history" and {@code data} the JSON
+     * it is laid out from. Resolves with the file's path and content URI.
+     */
+    @PluginMethod
+    public void generate(PluginCall call) {
+        String kind = call.getString("kind", ReportTemplates.PRESCRIPTION);
+        JSObject data = call.getObject("data");
+        if (data == null) {
+            call.reject("Missing report data");
+            return;
+        }
+        String name = fileName(call.getString("fileName"), kind);
+        executor.execute(() -> {
+            long started = SystemClock.elapsedRealtime();
+            PerfTrace.shared().begin(TRACE_GENERATE);
+            try {
+                call.resolve(generate(kind, data, name, started));
+            } catch (Exception e) {
+                Log.e(TAG, "Report generation failed: " + e.getMessage(), e);
+                call.reject("Failed to generate report: " + e.getMessage());
+            } finally {
+                PerfTrace.shared().end(TRACE_GENERATE);
+            }
+        });
+    }
+
+    /** Opens the share sheet for a generated report. */
+    @PluginMethod
+    public void share(PluginCall call) {
+        File file = report(call);
+        if (file == null) {
+            return;
+        }
+        try {
+            Intent send = new Intent(Intent.ACTION_SEND)
+                .setType("application/pdf")
+                .putExtra(Intent.EXTRA_STREAM, uri(getContext(), file))
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            Intent chooser = Intent.createChooser(send, call.getString("title", "Share report"));
+            getActivity().runOnUiThread(() -> getActivity().startActivity(chooser));
+            JSObject result = new JSObject();
+            result.put("success", true);
+            call.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "Share failed: " + e.getMessage(), e);
+            call.reject("Failed to share report: " + e.getMessage());
+        }
+    }
+
+    /** Sends a generated report straight to the system print dialog. */
+    @PluginMethod
+    public void print(PluginCall call) {
+        File file = report(call);
+        if (file == null) {
+            return;
+        }
+        String jobName = call.getString("jobName", file.getName());
+        int pages = call.getInt("pages", PrintDocumentInfo.PAGE_COUNT_UNKNOWN);
+        getActivity().runOnUiThread(() -> {
+            try {
+                PrintManager printManager = (PrintManager) getActivity().getSystemService(Context.PRINT_SERVICE);
+                printManager.print(jobName, new FileAdapter(file, pages), null);
+                JSObject result = new JSObject();
+                result.put("success", true);
+                call.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Print failed: " + e.getMessage(), e);
+                call.reject("Failed to print report: " + e.getMessage());
+            }
+        });
+    }
+
+    private JSObject generate(String kind, JSONObject data, String name, long started) throws IOException {
+        File dir = new File(getContext().getCacheDir(), DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        deleteOld(dir);
+
+        PdfReportWriter writer = new PdfReportWriter(getContext());
+        ReportLayout layout = new ReportLayout(writer, writer, ReportTemplates.header(kind, data),
+            "Generated by Cureon. Not valid without the prescriber's verification.");
+        int pages;
+        try {
+            if (!new ReportTemplates(ZoneId.systemDefault()).render(kind, data, layout)) {
+                throw new IOException("Unknown report kind: " + kind);
+            }
+            pages = layout.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+        File file = new File(dir, name);
+        long bytes = writer.writeTo(file);
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("path", file.getAbsolutePath());
+        result.put("uri", uri(getContext(), file).toString());
+        result.put("pages", pages);
+        result.put("bytes", bytes);
+        result.put("ms", SystemClock.elapsedRealtime() - started);
+        return result;
+    }
+
+    private File report(PluginCall call) {
+        String path = call.getString("path", "");
+        File dir = new File(getContext().getCacheDir(), DIR);
+        File file = path == null || path.isEmpty() ? null : new File(path);
+        // Only what generate wrote; the FileProvider would otherwise share any cache file
+        if (file == null || !dir.equals(file.getParentFile()) || !file.isFile()) {
+            call.reject("Unknown report");
+            return null;
+        }
+        return file;
+    }
+
+    private static Uri uri(Context context, File file) {
+        return FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", file);
+    }
+
+    private static String fileName(String requested, String kind) {
+        String base = requested == null || requested.isEmpty()
+            ? kind + "-" + System.currentTimeMillis()
+            : requested.replaceAll("(?i)\\.pdf$", "");
+        return base.replaceAll("[^a-zA-Z0-9._-]", "_") + ".pdf";
+    }
+
+    private static void deleteOld(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - KEEP_MS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff || file.getName().endsWith(".part")) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Hands an already-written PDF to the print framework. */
+    private static final class FileAdapter extends PrintDocumentAdapter {
+        private final File file;
+        private final int pages;
+
+        FileAdapter(File file, int pages) {
+            this.file = file;
+            this.pages = pages;
+        }
+
+        @Override
+        public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes,
+                CancellationSignal cancellationSignal, LayoutResultCallback callback, Bundle extras) {
+            if (cancellationSignal.isCanceled()) {
+                callback.onLayoutCancelled();
+                return;
+            }
+            callback.onLayoutFinished(new PrintDocumentInfo.Builder(file.getName())
+                .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
+                .setPageCount(pages)
+                .build(), false);
+        }
+
+        @Override
+        public void onWrite(PageRange[] pageRanges, ParcelFileDescriptor destination,
+                CancellationSignal cancellationSignal, WriteResultCallback callback) {
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = new FileInputStream(file);
+                 OutputStream out = new FileOutputStream(destination.getFileDescriptor())) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    if (cancellationSignal.isCanceled()) {
+                        callback.onWriteCancelled();
+                        return;
+                    }
+                    out.write(buffer, 0, read);
+                }
+                callback.onWriteFinished(new PageRange[] { PageRange.ALL_PAGES });
+            } catch (IOException e) {
+                Log.e(TAG, "Print write failed: " + e.getMessage(), e);
+                callback.onWriteFailed(e.getMessage());
+            }
+        }
+    }
+}
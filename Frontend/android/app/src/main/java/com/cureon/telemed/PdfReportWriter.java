@@ -0,0 +1,214 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.graphics.pdf.PdfDocument;
+import android.net.Uri;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link ReportLayout}'s fonts and pages on {@link PdfDocument}. Each page
+ * is drawn and finished as soon as the layout fills it, and the document is
+ * written to a temporary file that replaces the target only when complete.
+ *
+ * <p>PdfDocument keeps every finished page as a recorded display list until
+ * {@link PdfDocument#writeTo}, so native memory still grows with page
+ * count, by a few KB per page of text. Images are the expensive part: they
+ * are decoded once at print resolution into {@link #IMAGES} and shared by
+ * every page that shows them, so a logo on 200 pages is one bitmap.
+ */
+final class PdfReportWriter implements ReportLayout.Fonts, ReportLayout.Sink {
+    private static final String TAG = "PdfReportWriter";
+    /** Images are decoded at twice their size in points, about 144 dpi on paper. */
+    private static final float IMAGE_SCALE = 2f;
+    private static final int TEXT_COLOR = 0xff1f2937;
+    private static final int MUTED_COLOR = 0xff6b7280;
+    private static final int TITLE_COLOR = 0xff1d4ed8;
+    private static final int RULE_COLOR = 0xffd1d5db;
+
+    // Created once per process; Typeface.create looks the family up each time
+    private static final Typeface REGULAR = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final Typeface BOLD = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+    private static final float[] SIZES = { 20, 13, 10, 10, 8 };
+
+    /** Decoded images by source and size, bounded in bytes. */
+    private static final LruCache<String, Bitmap> IMAGES = new LruCache<String, Bitmap>(8 * 1024 * 1024) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    private final Context context;
+    private final PdfDocument document = new PdfDocument();
+    private final Paint[] text = new Paint[ReportLayout.STYLES];
+    private final Paint rule = new Paint();
+    private final Paint fill = new Paint();
+    private final Paint image = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF rect = new RectF();
+    private PdfDocument.Page page;
+    private Canvas canvas;
+
+    PdfReportWriter(Context context) {
+        this.context = context;
+        for (int style = 0; style < ReportLayout.STYLES; style++) {
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setTextSize(SIZES[style]);
+            boolean bold = style == ReportLayout.TITLE || style == ReportLayout.HEADING || style == ReportLayout.BOLD;
+            paint.setTypeface(bold ? BOLD : REGULAR);
+            paint.setColor(style == ReportLayout.TITLE ? TITLE_COLOR
+                : style == ReportLayout.SMALL ? MUTED_COLOR : TEXT_COLOR);
+            text[style] = paint;
+        }
+        rule.setColor(RULE_COLOR);
+        rule.setStrokeWidth(0.5f);
+    }
+
+    @Override
+    public float width(String value, int start, int end, int style) {
+        return text[style].measureText(value, start, end);
+    }
+
+    @Override
+    public float size(int style) {
+        return SIZES[style];
+    }
+
+    @Override
+    public void startPage(int number) {
+        page = document.startPage(new PdfDocument.PageInfo.Builder(
+            ReportLayout.PAGE_WIDTH, ReportLayout.PAGE_HEIGHT, number).create());
+        canvas = page.getCanvas();
+    }
+
+    @Override
+    public void text(String value, float x, float baseline, int style) {
+        canvas.drawText(value, x, baseline, text[style]);
+    }
+
+    @Override
+    public void line(float x1, float y1, float x2, float y2) {
+        canvas.drawLine(x1, y1, x2, y2, rule);
+    }
+
+    @Override
+    public void fill(float left, float top, float right, float bottom, int argb) {
+        fill.setColor(argb);
+        canvas.drawRect(left, top, right, bottom, fill);
+    }
+
+    @Override
+    public void image(String source, float left, float top, float right, float bottom) {
+        Bitmap bitmap = bitmap(source, Math.round((right - left) * IMAGE_SCALE), Math.round((bottom - top) * IMAGE_SCALE));
+        if (bitmap != null) {
+            rect.set(left, top, right, bottom);
+            canvas.drawBitmap(bitmap, null, rect, image);
+        }
+    }
+
+    @Override
+    public void finishPage(int number) {
+        document.finishPage(page);
+        page = null;
+        canvas = null;
+    }
+
+    /** Writes the finished document to {@code target}, replacing it only once the write succeeded. */
+    long writeTo(File target) throws IOException {
+        File partial = new File(target.getPath() + ".part");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial), 64 * 1024)) {
+            document.writeTo(out);
+        } finally {
+            document.close();
+        }
+        if (!partial.renameTo(target)) {
+            partial.delete();
+            throw new IOException("Could not move the report into place");
+        }
+        return target.length();
+    }
+
+    /** Drops the document without writing it, e.g. after a layout error mid-page. */
+    void close() {
+        if (page != null) {
+            // PdfDocument refuses to close with a page open
+            document.finishPage(page);
+            page = null;
+        }
+        document.close();
+    }
+
+    private Bitmap bitmap(String source, int width, int height) {
+        String key = width + "x" + height + ":" + source;
+        Bitmap cached = IMAGES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            Bitmap decoded = decode(source, width, height);
+            if (decoded != null) {
+                IMAGES.put(key, decoded);
+            }
+            return decoded;
+        } catch (IOException | IllegalArgumentException e) {
+            // A missing logo or QR code shouldn't cost the pharmacist the whole document
+            Log.w(TAG, "Skipping image: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Subsamples while decoding, so a camera photo never lands in memory at full size. */
+    private Bitmap decode(String source, int width, int height) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = open(source)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not a decodable image");
+        }
+        int sample = 1;
+        while (options.outWidth / (sample * 2) >= width && options.outHeight / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        try (InputStream in = open(source)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    private InputStream open(String source) throws IOException {
+        if (source.startsWith("data:")) {
+            int comma = source.indexOf(',');
+            if (comma < 0 || !source.substring(0, comma).endsWith(";base64")) {
+                throw new IOException("Only base64 data URLs are supported");
+            }
+            return new ByteArrayInputStream(Base64.decode(source.substring(comma + 1), Base64.DEFAULT));
+        }
+        if (source.startsWith("/")) {
+            return new FileInputStream(new File(source));
+        }
+        InputStream in = context.getContentResolver().openInputStream(Uri.parse(source));
+        if (in == null) {
+            throw new IOException("Cannot open " + source);
+        }
+        return in;
+    }
+}
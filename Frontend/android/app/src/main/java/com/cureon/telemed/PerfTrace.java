@@ -0,0 +1,391 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process performance capture: timed sections, instants and counters in a
+ * fixed ring that any thread writes without locks, exported as JSON or a
+ * compact binary so a field device can attach it to a bug report.
+ *
+ * <p>Names are interned once into small ids, typically into static finals,
+ * so recording is a few atomic operations and no allocation. While capture
+ * is off a call costs a volatile read or two; sections are still forwarded
+ * to the {@link SystemTrace} hook (androidx.tracing on device), which is
+ * itself close to free unless Perfetto or a macrobenchmark is tracing. Times are {@link System#nanoTime},
+ * the same monotonic clock systrace uses, so the two line up.
+ *
+ * <p>Each slot is four longs: a sequence tag, time, value and type/name/thread.
+ * A writer claims the slot by swapping its tag to busy, fills it and
+ * publishes the new tag; an event whose slot another writer still holds is
+ * dropped. A reader keeps an event only if the tag is the same before and
+ * after, so a slot being overwritten during export is skipped rather than
+ * torn.
+ */
+final class PerfTrace {
+    static final int BEGIN = 1;
+    static final int END = 2;
+    static final int INSTANT = 3;
+    static final int COUNTER = 4;
+    static final int ASYNC_BEGIN = 5;
+    static final int ASYNC_END = 6;
+
+    static final int DEFAULT_CAPACITY = 4096;
+    static final int MAX_CAPACITY = 1 << 16;
+    static final int MAX_NAMES = 512;
+    /** Name id 0 collects everything past {@link #MAX_NAMES}. */
+    static final String OVERFLOW_NAME = "other";
+
+    static final int FORMAT = 1;
+    private static final byte[] MAGIC = { 'C', 'P', 'T', FORMAT };
+    private static final int FIELDS = 4;
+    private static final long BUSY = -1;
+
+    /** Where sections are mirrored for the platform tracer; androidx.tracing on device. */
+    interface SystemTrace {
+        void beginSection(String name);
+
+        void endSection();
+
+        void beginAsyncSection(String name, int cookie);
+
+        void endAsyncSection(String name, int cookie);
+    }
+
+    private static final class Ring {
+        final int mask;
+        final AtomicLongArray slots;
+        final AtomicLong cursor = new AtomicLong();
+
+        Ring(int capacity) {
+            mask = capacity - 1;
+            slots = new AtomicLongArray(capacity * FIELDS);
+        }
+    }
+
+    /** A consistent copy of the ring, oldest event first. */
+    static final class Snapshot {
+        final long capturedAtNanos;
+        final long capturedAtWallMs;
+        final String[] names;
+        final long[] times;
+        final long[] values;
+        final int[] types;
+        final int[] nameIds;
+        final int[] threads;
+        final int count;
+        final long dropped;
+        final long[] counters;
+
+        Snapshot(long capturedAtNanos, long capturedAtWallMs, String[] names, long[] times, long[] values,
+                int[] types, int[] nameIds, int[] threads, int count, long dropped, long[] counters) {
+            this.capturedAtNanos = capturedAtNanos;
+            this.capturedAtWallMs = capturedAtWallMs;
+            this.names = names;
+            this.times = times;
+            this.values = values;
+            this.types = types;
+            this.nameIds = nameIds;
+            this.threads = threads;
+            this.count = count;
+            this.dropped = dropped;
+            this.counters = counters;
+        }
+    }
+
+    private static final PerfTrace SHARED = new PerfTrace();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private volatile String[] names = { OVERFLOW_NAME };
+    private final AtomicLongArray counters = new AtomicLongArray(MAX_NAMES);
+    private volatile Ring ring;
+    private volatile boolean enabled;
+    private volatile SystemTrace systemTrace;
+
+    static PerfTrace shared() {
+        return SHARED;
+    }
+
+    void setSystemTrace(SystemTrace systemTrace) {
+        this.systemTrace = systemTrace;
+    }
+
+    /** Starts capturing into a fresh ring of {@code capacity} events (rounded up to a power of two). */
+    synchronized void start(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, Math.min(MAX_CAPACITY, capacity)) * 2 - 1);
+        if (ring == null || ring.mask + 1 != size) {
+            ring = new Ring(size);
+        }
+        enabled = true;
+    }
+
+    /** Stops recording; what was captured stays for {@link #snapshot}. */
+    void stop() {
+        enabled = false;
+    }
+
+    synchronized void clear() {
+        Ring current = ring;
+        if (current != null) {
+            ring = new Ring(current.mask + 1);
+        }
+        for (int i = 0; i < MAX_NAMES; i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    int capacity() {
+        Ring current = ring;
+        return current == null ? 0 : current.mask + 1;
+    }
+
+    /** Interns {@code name}; keep the id rather than calling this on a hot path. */
+    synchronized int name(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (current.length >= MAX_NAMES) {
+            return 0;
+        }
+        String[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = name;
+        ids.put(name, current.length);
+        names = grown;
+        return current.length;
+    }
+
+    String nameOf(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : OVERFLOW_NAME;
+    }
+
+    /** Opens a section on this thread; pair with {@link #end} in a finally. */
+    void begin(int name) {
+        SystemTrace trace = systemTrace;
+        if (trace != null) {
+            trace.beginSection(nameOf(name));
+        }
+        record(BEGIN, name, 0);
+    }
+
+    void end(int name) {
+        record(END, name, 0);
+        SystemTrace trace = systemTrace;
+        if (trace != null) {
+            trace.endSection();
+        }
+    }
+
+    /** A section that starts and ends on different threads; {@code cookie} pairs the two. */
+    void beginAsync(int name, int cookie) {
+        SystemTrace trace = systemTrace;
+        if (trace != null) {
+            trace.beginAsyncSection(nameOf(name), cookie);
+        }
+        record(ASYNC_BEGIN, name, cookie);
+    }
+
+    void endAsync(int name, int cookie) {
+        record(ASYNC_END, name, cookie);
+        SystemTrace trace = systemTrace;
+        if (trace != null) {
+            trace.endAsyncSection(nameOf(name), cookie);
+        }
+    }
+
+    void instant(int name, long value) {
+        record(INSTANT, name, value);
+    }
+
+    /** Adds to a running total; the ring gets the new total so the export shows when it moved. */
+    void count(int name, long delta) {
+        if (!enabled) {
+            return;
+        }
+        record(COUNTER, name, counters.addAndGet(name, delta));
+    }
+
+    long counter(int name) {
+        return counters.get(name);
+    }
+
+    private void record(int type, int name, long value) {
+        if (!enabled) {
+            return;
+        }
+        Ring current = ring;
+        if (current == null) {
+            return;
+        }
+        long seq = current.cursor.getAndIncrement();
+        int base = (int) (seq & current.mask) * FIELDS;
+        AtomicLongArray slots = current.slots;
+        // Claim the slot: a writer a whole lap behind or ahead may still be filling it,
+        // and two writers interleaving their fields would publish a torn event
+        long tag = slots.get(base);
+        if (tag == BUSY || !slots.compareAndSet(base, tag, BUSY)) {
+            return;
+        }
+        // Busy first, published last: a reader that sees the same tag on both sides got one whole event
+        slots.lazySet(base + 1, System.nanoTime());
+        slots.lazySet(base + 2, value);
+        slots.lazySet(base + 3, ((long) type << 56) | ((long) name << 32) | (Thread.currentThread().getId() & 0xffffffffL));
+        slots.set(base, seq + 1);
+    }
+
+    Snapshot snapshot() {
+        long now = System.nanoTime();
+        long wall = System.currentTimeMillis();
+        String[] names = this.names;
+        long[] totals = new long[names.length];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = counters.get(i);
+        }
+        Ring current = ring;
+        if (current == null) {
+            return new Snapshot(now, wall, names, new long[0], new long[0], new int[0], new int[0], new int[0],
+                0, 0, totals);
+        }
+        int capacity = current.mask + 1;
+        long end = current.cursor.get();
+        long start = Math.max(0, end - capacity);
+        long[] times = new long[capacity];
+        long[] values = new long[capacity];
+        int[] types = new int[capacity];
+        int[] nameIds = new int[capacity];
+        int[] threads = new int[capacity];
+        int count = 0;
+        AtomicLongArray slots = current.slots;
+        for (long seq = start; seq < end; seq++) {
+            int base = (int) (seq & current.mask) * FIELDS;
+            long tag = slots.get(base);
+            if (tag != seq + 1) {
+                // Still being written, or already overwritten by a newer lap
+                continue;
+            }
+            long time = slots.get(base + 1);
+            long value = slots.get(base + 2);
+            long meta = slots.get(base + 3);
+            if (slots.get(base) != tag) {
+                continue;
+            }
+            times[count] = time;
+            values[count] = value;
+            types[count] = (int) (meta >>> 56);
+            nameIds[count] = (int) (meta >>> 32) & 0xffffff;
+            threads[count] = (int) meta;
+            count++;
+        }
+        // Overwritten by later laps, or caught mid-write
+        return new Snapshot(now, wall, names, times, values, types, nameIds, threads, count, end - count, totals);
+    }
+
+    /**
+     * {@code {format, capturedAt, names, events: [[us before capture, type, name, value, thread]...],
+     * counters: {name: total}, dropped}}. Arrays rather than objects keep a
+     * full ring around 150 KB.
+     */
+    static JSONObject toJson(Snapshot snapshot) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("format", FORMAT);
+        json.put("capturedAt", snapshot.capturedAtWallMs);
+        json.put("names", new JSONArray(Arrays.asList(snapshot.names)));
+        JSONArray events = new JSONArray();
+        for (int i = 0; i < snapshot.count; i++) {
+            events.put(new JSONArray()
+                .put((snapshot.capturedAtNanos - snapshot.times[i]) / 1000)
+                .put(snapshot.types[i])
+                .put(snapshot.nameIds[i])
+                .put(snapshot.values[i])
+                .put(snapshot.threads[i]));
+        }
+        json.put("events", events);
+        JSONObject totals = new JSONObject();
+        for (int i = 0; i < snapshot.counters.length; i++) {
+            if (snapshot.counters[i] != 0) {
+                totals.put(snapshot.names[i], snapshot.counters[i]);
+            }
+        }
+        json.put("counters", totals);
+        json.put("dropped", snapshot.dropped);
+        return json;
+    }
+
+    /**
+     * "CPT" + format byte, capture wall clock (8 bytes), name table, then
+     * events as varints: zigzag ns since the previous event (threads can
+     * publish slightly out of time order), type, name, zigzag value, thread;
+     * then non-zero counters. Usually 5-8 bytes an event.
+     */
+    static byte[] toBinary(Snapshot snapshot) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + snapshot.count * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeLong(snapshot.capturedAtWallMs);
+            writeVarint(out, snapshot.names.length);
+            for (String name : snapshot.names) {
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, utf8.length);
+                out.write(utf8);
+            }
+            writeVarint(out, snapshot.dropped);
+            writeVarint(out, snapshot.count);
+            // Anchored at the capture instant, so absolute times can be rebuilt
+            long previous = snapshot.capturedAtNanos;
+            for (int i = 0; i < snapshot.count; i++) {
+                writeVarint(out, zigzag(snapshot.times[i] - previous));
+                previous = snapshot.times[i];
+                out.writeByte(snapshot.types[i]);
+                writeVarint(out, snapshot.nameIds[i]);
+                writeVarint(out, zigzag(snapshot.values[i]));
+                writeVarint(out, snapshot.threads[i] & 0xffffffffL);
+            }
+            int nonZero = 0;
+            for (long total : snapshot.counters) {
+                if (total != 0) {
+                    nonZero++;
+                }
+            }
+            writeVarint(out, nonZero);
+            for (int i = 0; i < snapshot.counters.length; i++) {
+                if (snapshot.counters[i] != 0) {
+                    writeVarint(out, i);
+                    writeVarint(out, zigzag(snapshot.counters[i]));
+                }
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,130 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import androidx.tracing.Trace;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+
+/**
+ * Turns {@link PerfTrace} capture on and off and exports it for bug reports.
+ * Whether to capture is remembered, so a device asked to record starts doing
+ * so from the next launch's first line of MainActivity.onCreate.
+ */
+@CapacitorPlugin(name = "PerfTrace")
+public class PerfTracePlugin extends Plugin {
+    private static final String TAG = "PerfTracePlugin";
+    private static final String PREFS = "perf_trace";
+
+    /** androidx.tracing behind PerfTrace's sections; checks Trace.isEnabled itself. */
+    private static final PerfTrace.SystemTrace ANDROIDX_TRACE = new PerfTrace.SystemTrace() {
+        @Override
+        public void beginSection(String name) {
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void endSection() {
+            Trace.endSection();
+        }
+
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    };
+
+    /** Call first thing in MainActivity.onCreate, so startup is captured too. */
+    static void install(Context context) {
+        PerfTrace trace = PerfTrace.shared();
+        trace.setSystemTrace(ANDROIDX_TRACE);
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        if (prefs.getBoolean("enabled", debuggable) && !trace.isEnabled()) {
+            trace.start(prefs.getInt("capacity", PerfTrace.DEFAULT_CAPACITY));
+        }
+    }
+
+    /** Start capturing; {@code persist} (default true) keeps it on across launches. */
+    @PluginMethod
+    public void start(PluginCall call) {
+        int capacity = call.getInt("capacity", PerfTrace.DEFAULT_CAPACITY);
+        PerfTrace.shared().start(capacity);
+        if (call.getBoolean("persist", true)) {
+            prefs().edit().putBoolean("enabled", true).putInt("capacity", capacity).apply();
+        }
+        call.resolve(status());
+    }
+
+    @PluginMethod
+    public void stop(PluginCall call) {
+        PerfTrace.shared().stop();
+        if (call.getBoolean("persist", true)) {
+            prefs().edit().putBoolean("enabled", false).apply();
+        }
+        call.resolve(status());
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        PerfTrace.shared().clear();
+        call.resolve(status());
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        call.resolve(status());
+    }
+
+    /**
+     * The capture as JSON ({@code format: "json"}, the default) or as a
+     * compact binary blob fetched from /_blob/ ({@code format: "binary"}).
+     */
+    @PluginMethod
+    public void export(PluginCall call) {
+        String format = call.getString("format", "json");
+        PerfTrace.Snapshot snapshot = PerfTrace.shared().snapshot();
+        JSObject result = status();
+        try {
+            if ("binary".equals(format)) {
+                byte[] bytes = PerfTrace.toBinary(snapshot);
+                BlobStore store = BlobChannelPlugin.store(getContext());
+                result.put("blob", BlobChannelPlugin.handle(store.get(store.putBytes(bytes, "application/octet-stream"))));
+            } else {
+                result.put("trace", JSObject.fromJSONObject(PerfTrace.toJson(snapshot)));
+            }
+            result.put("events", snapshot.count);
+            call.resolve(result);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to export trace: " + e.getMessage(), e);
+            call.reject("Failed to export trace: " + e.getMessage());
+        }
+    }
+
+    private SharedPreferences prefs() {
+        return getContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static JSObject status() {
+        PerfTrace trace = PerfTrace.shared();
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("enabled", trace.isEnabled());
+        result.put("capacity", trace.capacity());
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cureon.telemed;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Finds a QR code in a camera frame using the luminance (Y) plane only.
+ *
+ * <p>Only a centred square region of interest, matching the viewfinder box,
+ * is copied out of the plane, into a buffer that is reused from frame to
+ * frame; chroma is never touched and no RGB conversion happens. QR codes
+ * decode at any rotation, so the sensor orientation doesn't matter.
+ *
+ * <p>Not thread-safe: use one instance per analysis thread.
+ */
+final class QrFrameDecoder {
+    /** Side of the region of interest as a fraction of the frame's shorter side. */
+    static final float DEFAULT_ROI = 0.75f;
+
+    private final float roiFraction;
+    private final QRCodeReader reader = new QRCodeReader();
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    private byte[] roi = new byte[0];
+    private long frames;
+    private long decodeNanos;
+
+    QrFrameDecoder(float roiFraction) {
+        this.roiFraction = roiFraction;
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+    }
+
+    /**
+     * Decodes the region of interest of a Y plane laid out with
+     * {@code rowStride} bytes per row. Returns the payload, or null when the
+     * frame holds no readable code. The buffer's position is left unchanged.
+     */
+    String decode(ByteBuffer yPlane, int rowStride, int width, int height) {
+        long started = System.nanoTime();
+        int side = Math.max(1, (int) (Math.min(width, height) * roiFraction));
+        int left = (width - side) / 2;
+        int top = (height - side) / 2;
+        // Grows once for the analysis resolution, then every frame reuses it
+        if (roi.length < side * side) {
+            roi = new byte[side * side];
+        }
+        int base = yPlane.position();
+        ByteBuffer rows = yPlane.duplicate();
+        for (int row = 0; row < side; row++) {
+            rows.position(base + (top + row) * rowStride + left);
+            rows.get(roi, row * side, side);
+        }
+
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(roi, side, side, 0, 0, side, side, false);
+        try {
+            Result result = reader.decode(new BinaryBitmap(new HybridBinarizer(source)), hints);
+            String text = result.getText();
+            return text == null || text.isEmpty() ? null : text;
+        } catch (NotFoundException | ChecksumException | FormatException e) {
+            return null;
+        } finally {
+            reader.reset();
+            frames++;
+            decodeNanos += System.nanoTime() - started;
+        }
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    /** Mean time spent per frame, in microseconds. */
+    long averageMicros() {
+        return frames == 0 ? 0 : decodeNanos / frames / 1000;
+    }
+}
@@ -0,0 +1,125 @@
+package com.cureon.telemed;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.util.Size;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Full-screen camera preview that finishes with the first QR payload it reads.
+ *
+ * <p>Frames go to {@link QrFrameDecoder} through a CameraX ImageAnalysis
+ * use case that keeps only the latest frame, so a slow decode drops frames
+ * instead of queueing them. Result: {@link #EXTRA_PAYLOAD} with RESULT_OK,
+ * or RESULT_CANCELED when the user closes the scanner.
+ */
+public class QrScanActivity extends AppCompatActivity {
+    private static final String TAG = "QrScanActivity";
+    static final String EXTRA_PAYLOAD = "payload";
+    // Enough pixels per module for dense codes on a phone screen without slowing the decode
+    private static final Size ANALYSIS_SIZE = new Size(1280, 720);
+
+    private final ExecutorService analyzer = Executors.newSingleThreadExecutor();
+    private final QrFrameDecoder decoder = new QrFrameDecoder(QrFrameDecoder.DEFAULT_ROI);
+    private final AtomicBoolean done = new AtomicBoolean();
+    private ProcessCameraProvider cameraProvider;
+    private PreviewView previewView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_qr_scan);
+        previewView = findViewById(R.id.qr_preview);
+        findViewById(R.id.qr_close_button).setOnClickListener(v -> {
+            setResult(RESULT_CANCELED);
+            finish();
+        });
+
+        // Portrait: the frame's shorter side spans the screen width
+        View viewfinder = findViewById(R.id.qr_viewfinder);
+        previewView.post(() -> {
+            ViewGroup.LayoutParams params = viewfinder.getLayoutParams();
+            params.width = params.height = (int) (previewView.getWidth() * QrFrameDecoder.DEFAULT_ROI);
+            viewfinder.setLayoutParams(params);
+        });
+
+        ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(this);
+        future.addListener(() -> {
+            try {
+                cameraProvider = future.get();
+                bindCamera();
+            } catch (Exception e) {
+                Log.e(TAG, "Camera unavailable: " + e.getMessage(), e);
+                setResult(RESULT_CANCELED);
+                finish();
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    private void bindCamera() {
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+            .setResolutionSelector(new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(ANALYSIS_SIZE,
+                    ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build())
+            .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+            .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+            .build();
+        analysis.setAnalyzer(analyzer, this::analyze);
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, preview, analysis);
+    }
+
+    // Analysis thread; the frame must be closed before CameraX delivers the next one
+    private void analyze(@NonNull ImageProxy image) {
+        try {
+            if (done.get()) {
+                return;
+            }
+            ImageProxy.PlaneProxy y = image.getPlanes()[0];
+            String payload = decoder.decode(y.getBuffer(), y.getRowStride(), image.getWidth(), image.getHeight());
+            if (payload != null && done.compareAndSet(false, true)) {
+                Log.d(TAG, "Decoded after " + decoder.frames() + " frames, " + decoder.averageMicros() + " us/frame");
+                runOnUiThread(() -> {
+                    setResult(RESULT_OK, new Intent().putExtra(EXTRA_PAYLOAD, payload));
+                    finish();
+                });
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (cameraProvider != null) {
+            cameraProvider.unbindAll();
+        }
+        analyzer.shutdown();
+    }
+}
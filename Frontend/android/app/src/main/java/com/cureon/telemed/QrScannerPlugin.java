@@ -0,0 +1,67 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Intent;
+
+import androidx.activity.result.ActivityResult;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PermissionState;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.ActivityCallback;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.annotation.Permission;
+import com.getcapacitor.annotation.PermissionCallback;
+
+/**
+ * Opens {@link QrScanActivity} and resolves with the first QR payload it
+ * reads: {@code {success: true, payload}}, or {@code {success: false,
+ * cancelled: true}} when the user closes the scanner.
+ */
+@CapacitorPlugin(
+    name = "QrScanner",
+    permissions = {
+        @Permission(alias = "camera", strings = { Manifest.permission.CAMERA })
+    }
+)
+public class QrScannerPlugin extends Plugin {
+    @PluginMethod
+    public void scan(PluginCall call) {
+        if (getPermissionState("camera") != PermissionState.GRANTED) {
+            requestPermissionForAlias("camera", call, "cameraPermissionCallback");
+            return;
+        }
+        Intent intent = new Intent(getActivity(), QrScanActivity.class);
+        startActivityForResult(call, intent, "scanResult");
+    }
+
+    @PermissionCallback
+    private void cameraPermissionCallback(PluginCall call) {
+        if (getPermissionState("camera") != PermissionState.GRANTED) {
+            call.reject("Camera permission denied");
+            return;
+        }
+        scan(call);
+    }
+
+    @ActivityCallback
+    private void scanResult(PluginCall call, ActivityResult result) {
+        if (call == null) {
+            return;
+        }
+        Intent data = result.getData();
+        String payload = data == null ? null : data.getStringExtra(QrScanActivity.EXTRA_PAYLOAD);
+        JSObject response = new JSObject();
+        if (result.getResultCode() == Activity.RESULT_OK && payload != null) {
+            response.put("success", true);
+            response.put("payload", payload);
+        } else {
+            response.put("success", false);
+            response.put("cancelled", true);
+        }
+        call.resolve(response);
+    }
+}
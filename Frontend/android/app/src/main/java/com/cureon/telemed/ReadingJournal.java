@@ -0,0 +1,356 @@
+package com.cureon.telemed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped write-ahead log for readings that still have to
+ * reach the backend.
+ *
+ * <p>The log is a series of fixed-size segment files. Each record is
+ * {@code [int length][int crc32][long appendedAtMs][payload]}; the length is
+ * written last so a torn write is never mistaken for a record. A separate
+ * cursor file remembers how far the uploader has acknowledged. On open, every
+ * segment is rescanned and its checksums verified, so a crash mid-append loses
+ * at most the record being written.
+ */
+final class ReadingJournal implements Closeable {
+    static final int DEFAULT_SEGMENT_BYTES = 1 << 20;
+    static final int HEADER_BYTES = 16;
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int CURSOR_BYTES = 20;
+
+    private final File dir;
+    private final int segmentBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private long cursorSeq;
+    private int cursorOffset;
+    private int pendingRecords;
+    private long pendingBytes;
+    private int corruptRecordsSkipped;
+
+    ReadingJournal(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    ReadingJournal(File dir, int segmentBytes) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment too small: " + segmentBytes);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + dir);
+        }
+        recover();
+    }
+
+    /** A contiguous run of pending records, oldest first. */
+    static final class Batch {
+        final List<byte[]> payloads = new ArrayList<>();
+        long oldestAppendedAtMs = -1;
+        int bytes;
+        private long endSeq;
+        private int endOffset;
+
+        int size() {
+            return payloads.size();
+        }
+    }
+
+    /** Appends one record stamped with {@code nowMs}; the payload may not be empty. */
+    synchronized void append(byte[] payload, long nowMs) throws IOException {
+        if (payload.length == 0) {
+            // Recovery reads a zero length as the end of the segment
+            throw new IllegalArgumentException("Empty record");
+        }
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds segment size");
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writePos + recordBytes > segmentBytes) {
+            tail = openSegment(tail == null ? cursorSeq + 1 : tail.seq + 1, true);
+            segments.addLast(tail);
+        }
+
+        MappedByteBuffer buf = tail.buffer;
+        int pos = tail.writePos;
+        buf.putLong(pos + 8, nowMs);
+        at(buf, pos + HEADER_BYTES).put(payload);
+        buf.putInt(pos + 4, checksum(buf, pos, payload.length));
+        // Length goes in last: it is what makes the record visible on recovery
+        buf.putInt(pos, payload.length);
+
+        tail.writePos += recordBytes;
+        tail.dirty = true;
+        pendingRecords++;
+        pendingBytes += payload.length;
+    }
+
+    /**
+     * Flushes mapped pages to storage. Cheap enough to call once per appended
+     * batch. Covers every segment written since the last sync, not just the
+     * tail, as a batch may have rolled over into a new segment.
+     */
+    synchronized void sync() {
+        for (Segment segment : segments) {
+            if (segment.dirty) {
+                segment.buffer.force();
+                segment.dirty = false;
+            }
+        }
+    }
+
+    /**
+     * Reads pending records from the cursor without consuming them. At least
+     * one record is returned if any is pending, even if it alone exceeds
+     * {@code maxBytes}.
+     */
+    synchronized Batch peek(int maxRecords, int maxBytes) {
+        Batch batch = new Batch();
+        batch.endSeq = cursorSeq;
+        batch.endOffset = cursorOffset;
+        for (Segment segment : segments) {
+            if (segment.seq < cursorSeq) {
+                continue;
+            }
+            int pos = segment.seq == cursorSeq ? cursorOffset : 0;
+            while (pos < segment.writePos) {
+                int length = segment.buffer.getInt(pos);
+                if (batch.size() >= maxRecords
+                        || (batch.size() > 0 && batch.bytes + length > maxBytes)) {
+                    return batch;
+                }
+                byte[] payload = new byte[length];
+                at(segment.buffer, pos + HEADER_BYTES).get(payload);
+                if (batch.oldestAppendedAtMs < 0) {
+                    batch.oldestAppendedAtMs = segment.buffer.getLong(pos + 8);
+                }
+                batch.payloads.add(payload);
+                batch.bytes += length;
+                pos += HEADER_BYTES + length;
+                batch.endSeq = segment.seq;
+                batch.endOffset = pos;
+            }
+        }
+        return batch;
+    }
+
+    /** Marks a batch returned by {@link #peek} as delivered and reclaims finished segments. */
+    synchronized void acknowledge(Batch batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        cursorSeq = batch.endSeq;
+        cursorOffset = batch.endOffset;
+        pendingRecords -= batch.size();
+        pendingBytes -= batch.bytes;
+        writeCursor();
+
+        Iterator<Segment> it = segments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            boolean consumed = segment.seq < cursorSeq
+                || (segment.seq == cursorSeq && cursorOffset >= segment.writePos && segment != segments.peekLast());
+            if (!consumed) {
+                break;
+            }
+            segment.close();
+            if (!segment.file.delete()) {
+                throw new IOException("Cannot delete " + segment.file);
+            }
+            it.remove();
+        }
+    }
+
+    synchronized int pendingRecords() {
+        return pendingRecords;
+    }
+
+    synchronized long pendingBytes() {
+        return pendingBytes;
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /** Records dropped during recovery because their checksum did not match. */
+    synchronized int corruptRecordsSkipped() {
+        return corruptRecordsSkipped;
+    }
+
+    /** Append time of the oldest pending record, or -1 if the journal is drained. */
+    synchronized long oldestPendingAtMs() {
+        return pendingRecords == 0 ? -1 : peek(1, Integer.MAX_VALUE).oldestAppendedAtMs;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private void recover() throws IOException {
+        readCursor();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        long[] seqs = new long[files == null ? 0 : files.length];
+        for (int i = 0; i < seqs.length; i++) {
+            String name = files[i].getName();
+            seqs[i] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(seqs);
+
+        for (int i = 0; i < seqs.length; i++) {
+            if (seqs[i] < cursorSeq) {
+                // Already acknowledged; the delete was interrupted
+                segmentFile(seqs[i]).delete();
+                continue;
+            }
+            Segment segment = openSegment(seqs[i], false);
+            scan(segment, i == seqs.length - 1);
+            segments.addLast(segment);
+        }
+    }
+
+    private void scan(Segment segment, boolean isTail) {
+        MappedByteBuffer buf = segment.buffer;
+        int pos = 0;
+        while (pos + HEADER_BYTES <= segmentBytes) {
+            int length = buf.getInt(pos);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || pos + HEADER_BYTES + length > segmentBytes
+                    || buf.getInt(pos + 4) != checksum(buf, pos, length)) {
+                corruptRecordsSkipped++;
+                break;
+            }
+            if (segment.seq > cursorSeq || pos >= cursorOffset) {
+                pendingRecords++;
+                pendingBytes += length;
+            }
+            pos += HEADER_BYTES + length;
+        }
+        segment.writePos = pos;
+        if (isTail) {
+            // Anything past a torn record is garbage; clear it so new appends
+            // never sit in front of stale bytes that happen to parse
+            ByteBuffer rest = at(buf, pos);
+            byte[] zeros = new byte[Math.min(4096, rest.remaining())];
+            while (rest.hasRemaining()) {
+                rest.put(zeros, 0, Math.min(zeros.length, rest.remaining()));
+            }
+        }
+    }
+
+    private Segment openSegment(long seq, boolean create) throws IOException {
+        File file = segmentFile(seq);
+        if (create && file.exists() && !file.delete()) {
+            throw new IOException("Cannot reset " + file);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(seq, file, raf, buffer);
+    }
+
+    private File segmentFile(long seq) {
+        return new File(dir, String.format("%s%016d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    /** CRC over the timestamp and payload of the record at {@code pos}. */
+    private int checksum(MappedByteBuffer buf, int pos, int length) {
+        ByteBuffer view = at(buf, pos + 8);
+        view.limit(pos + HEADER_BYTES + length);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer at(MappedByteBuffer buf, int pos) {
+        ByteBuffer view = buf.duplicate();
+        view.position(pos);
+        return view;
+    }
+
+    private void readCursor() throws IOException {
+        File file = new File(dir, CURSOR_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < CURSOR_BYTES) {
+                return;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(CURSOR_BYTES);
+            raf.getChannel().read(buf, 0);
+            long seq = buf.getLong(0);
+            int offset = buf.getInt(8);
+            long check = buf.getLong(12);
+            if (check == (seq ^ offset ^ 0x5EEDL)) {
+                cursorSeq = seq;
+                cursorOffset = offset;
+            }
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        File tmp = new File(dir, CURSOR_FILE + ".tmp");
+        ByteBuffer buf = ByteBuffer.allocate(CURSOR_BYTES);
+        buf.putLong(0, cursorSeq);
+        buf.putInt(8, cursorOffset);
+        buf.putLong(12, cursorSeq ^ cursorOffset ^ 0x5EEDL);
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(0);
+            raf.getChannel().write(buf, 0);
+            raf.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, CURSOR_FILE))) {
+            throw new IOException("Cannot commit journal cursor");
+        }
+    }
+
+    private static final class Segment {
+        final long seq;
+        final File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer buffer;
+        int writePos;
+        // Appended to since the last sync
+        boolean dirty;
+
+        Segment(long seq, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+                // Mapping stays valid until GC; nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+@CapacitorPlugin(name = "ReadingJournal")
+public class ReadingJournalPlugin extends Plugin implements ReadingUploader.Listener {
+    private static final String TAG = "ReadingJournalPlugin";
+    private static final String PREFS = "reading_journal";
+    private static final String BULK_PATH = "/api/v1/health/readings/bulk";
+
+    private ReadingJournal journal;
+    private ReadingUploader uploader;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    @Override
+    public void load() {
+        try {
+            journal = new ReadingJournal(new File(getContext().getFilesDir(), "reading-journal"));
+            if (journal.corruptRecordsSkipped() > 0) {
+                Log.w(TAG, "Recovered journal, skipped " + journal.corruptRecordsSkipped() + " torn records");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open reading journal: " + e.getMessage(), e);
+            return;
+        }
+        uploader = new ReadingUploader(journal, loadConfig(), this, new Random());
+        uploader.start();
+
+        ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm != null) {
+            networkCallback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    uploader.resetBackoff();
+                }
+            };
+            cm.registerDefaultNetworkCallback(networkCallback);
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (networkCallback != null) {
+            ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (cm != null) {
+                cm.unregisterNetworkCallback(networkCallback);
+            }
+        }
+        if (uploader != null) {
+            uploader.stop();
+        }
+        if (journal != null) {
+            journal.sync();
+            journal.close();
+        }
+    }
+
+    // The drainer keeps running after the WebView is gone, so its settings must outlive it
+    private ReadingUploader.Config loadConfig() {
+        SharedPreferences prefs = getContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        ReadingUploader.Config config = new ReadingUploader.Config();
+        String baseUrl = prefs.getString("baseUrl", null);
+        config.endpoint = baseUrl != null ? baseUrl + BULK_PATH : null;
+        config.authToken = prefs.getString("token", null);
+        config.maxBatchRecords = prefs.getInt("maxBatchRecords", config.maxBatchRecords);
+        config.maxBatchBytes = prefs.getInt("maxBatchBytes", config.maxBatchBytes);
+        config.maxDelayMs = prefs.getLong("maxDelayMs", config.maxDelayMs);
+        return config;
+    }
+
+    @PluginMethod
+    public void configure(PluginCall call) {
+        if (uploader == null) {
+            call.reject("Reading journal unavailable");
+            return;
+        }
+        String baseUrl = call.getString("baseUrl", "");
+        if (baseUrl == null || baseUrl.isEmpty()) {
+            call.reject("Invalid baseUrl");
+            return;
+        }
+        ReadingUploader.Config defaults = new ReadingUploader.Config();
+        getContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+            .putString("baseUrl", baseUrl.replaceAll("/+$", ""))
+            .putString("token", call.getString("token", null))
+            .putInt("maxBatchRecords", call.getInt("maxBatchRecords", defaults.maxBatchRecords))
+            .putInt("maxBatchBytes", call.getInt("maxBatchBytes", defaults.maxBatchBytes))
+            .putLong("maxDelayMs", call.getLong("maxDelayMs", defaults.maxDelayMs))
+            .apply();
+        uploader.setConfig(loadConfig());
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void append(PluginCall call) {
+        if (journal == null) {
+            call.reject("Reading journal unavailable");
+            return;
+        }
+        JSArray readings = call.getArray("readings");
+        if (readings == null || readings.length() == 0) {
+            call.reject("Readings array is required");
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            HealthAlerts alerts = HealthAlerts.get(getContext());
+            for (int i = 0; i < readings.length(); i++) {
+                JSONObject reading = readings.getJSONObject(i);
+                // Stored with the record, so a batch re-sent after a lost response is recognised
+                if (!reading.has("clientId")) {
+                    reading.put("clientId", UUID.randomUUID().toString());
+                }
+                alerts.check(reading);
+                journal.append(reading.toString().getBytes(StandardCharsets.UTF_8), now);
+            }
+            journal.sync();
+            uploader.wake(false);
+
+            JSObject result = toJs(uploader.snapshot(now));
+            result.put("success", true);
+            call.resolve(result);
+        } catch (JSONException | IllegalArgumentException e) {
+            call.reject("Invalid reading: " + e.getMessage());
+        } catch (IOException e) {
+            Log.e(TAG, "Journal append failed: " + e.getMessage(), e);
+            call.reject("Failed to queue readings: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void flush(PluginCall call) {
+        if (uploader == null) {
+            call.reject("Reading journal unavailable");
+            return;
+        }
+        uploader.resetBackoff();
+        uploader.wake(true);
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        if (uploader == null) {
+            call.reject("Reading journal unavailable");
+            return;
+        }
+        call.resolve(toJs(uploader.snapshot(System.currentTimeMillis())));
+    }
+
+    @Override
+    public void onStats(ReadingUploader.Stats stats) {
+        notifyListeners("journalStats", toJs(stats));
+    }
+
+    @Override
+    public void onBatchUploaded(int count, String responseBody) {
+        // Surface server-side alerts so the UI can still toast them
+        try {
+            JSONObject response = new JSONObject(responseBody);
+            // The server judged these readings with its current thresholds; catch up if ours differ
+            HealthAlerts healthAlerts = HealthAlerts.get(getContext());
+            HealthRules rules = healthAlerts.rules();
+            long rulesVersion = response.optLong("rulesVersion", -1);
+            if (rulesVersion >= 0 && (rules == null || rules.version != rulesVersion)) {
+                healthAlerts.sync(null);
+            }
+            JSONArray alerts = response.optJSONArray("alerts");
+            if (alerts != null && alerts.length() > 0) {
+                JSObject event = new JSObject();
+                event.put("alerts", alerts);
+                notifyListeners("readingAlerts", event);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Unparseable bulk response for " + count + " readings");
+        }
+    }
+
+    private static JSObject toJs(ReadingUploader.Stats stats) {
+        JSObject result = new JSObject();
+        result.put("pending", stats.pending);
+        result.put("pendingBytes", stats.pendingBytes);
+        result.put("lagMs", stats.lagMs);
+        result.put("uploaded", stats.uploaded);
+        result.put("rejected", stats.rejected);
+        result.put("consecutiveFailures", stats.consecutiveFailures);
+        result.put("nextAttemptInMs", stats.nextAttemptInMs);
+        result.put("lastStatus", stats.lastStatus);
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+package com.cureon.telemed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Drains the {@link ReadingJournal} into {@code POST /api/v1/health/readings/bulk}.
+ *
+ * <p>Small trickles are held back until a batch fills up or the oldest record
+ * has waited {@code maxDelayMs}, so a field worker coming back online sends a
+ * few large requests rather than one per reading. Failures back off
+ * exponentially with jitter; batches the server rejects outright are dropped
+ * so one bad record cannot wedge the queue. The server skips invalid
+ * readings within an accepted batch, and readings it already stored (each
+ * carries a {@code clientId}), so a retried batch never duplicates vitals.
+ */
+final class ReadingUploader {
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024;
+    private static final byte[] BODY_PREFIX = "{\"readings\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+    /** Returned by {@link #runOnce} when there is nothing to do until {@link #wake}. */
+    static final long IDLE = -1;
+
+    interface Listener {
+        void onStats(Stats stats);
+
+        void onBatchUploaded(int count, String responseBody);
+    }
+
+    static final class Config {
+        String endpoint;
+        String authToken;
+        int maxBatchRecords = 200;
+        int maxBatchBytes = 256 * 1024;
+        long maxDelayMs = 15_000;
+        long initialBackoffMs = 2_000;
+        long maxBackoffMs = 5 * 60_000;
+        double jitter = 0.2;
+        int timeoutMs = 30_000;
+    }
+
+    static final class Stats {
+        int pending;
+        long pendingBytes;
+        long lagMs;
+        long uploaded;
+        long rejected;
+        int consecutiveFailures;
+        long nextAttemptInMs;
+        int lastStatus;
+    }
+
+    private final ReadingJournal journal;
+    private final Listener listener;
+    private final Random random;
+    private final Object lock = new Object();
+    private volatile Config config;
+    private Thread thread;
+    private boolean running;
+    private boolean wakeRequested;
+    private volatile boolean flushRequested;
+
+    // Written only from runOnce, which runs on the drainer thread (or a test)
+    private long nextAttemptAtMs;
+    private int consecutiveFailures;
+    private int batchLimit;
+    private long uploaded;
+    private long rejected;
+    private int lastStatus;
+
+    ReadingUploader(ReadingJournal journal, Config config, Listener listener, Random random) {
+        this.journal = journal;
+        this.config = config;
+        this.listener = listener;
+        this.random = random;
+        this.batchLimit = config.maxBatchRecords;
+    }
+
+    void setConfig(Config config) {
+        this.config = config;
+        wake(false);
+    }
+
+    void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = new Thread(this::loop, "ReadingUploader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    void stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+    }
+
+    /** Re-evaluates the queue now; with {@code flush} the batching delay is skipped. */
+    void wake(boolean flush) {
+        if (flush) {
+            flushRequested = true;
+        }
+        synchronized (lock) {
+            wakeRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    /** Called when connectivity returns so we don't sit out the remaining backoff. */
+    void resetBackoff() {
+        synchronized (lock) {
+            nextAttemptAtMs = 0;
+        }
+        wake(false);
+    }
+
+    private void loop() {
+        while (true) {
+            long delay = runOnce(System.currentTimeMillis());
+            synchronized (lock) {
+                if (!running) {
+                    return;
+                }
+                try {
+                    if (!wakeRequested) {
+                        if (delay == IDLE) {
+                            lock.wait();
+                        } else if (delay > 0) {
+                            lock.wait(delay);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                wakeRequested = false;
+            }
+        }
+    }
+
+    /**
+     * Makes at most one upload attempt and returns how long to wait before
+     * the next call, or {@link #IDLE}.
+     */
+    long runOnce(long nowMs) {
+        Config c = config;
+        if (c.endpoint == null || c.endpoint.isEmpty()) {
+            return IDLE;
+        }
+        int pending = journal.pendingRecords();
+        if (pending == 0) {
+            flushRequested = false;
+            return IDLE;
+        }
+        long retryAt;
+        synchronized (lock) {
+            retryAt = nextAttemptAtMs;
+        }
+        if (nowMs < retryAt) {
+            return retryAt - nowMs;
+        }
+        long age = nowMs - journal.oldestPendingAtMs();
+        boolean full = pending >= c.maxBatchRecords || journal.pendingBytes() >= c.maxBatchBytes;
+        if (!flushRequested && !full && age < c.maxDelayMs) {
+            return c.maxDelayMs - age;
+        }
+
+        ReadingJournal.Batch batch = journal.peek(Math.min(batchLimit, c.maxBatchRecords), c.maxBatchBytes);
+        String[] response = new String[1];
+        int status;
+        try {
+            status = post(c, batch, response);
+        } catch (IOException e) {
+            status = -1;
+        }
+        lastStatus = status;
+
+        long delay = 0;
+        try {
+            if (status >= 200 && status < 300) {
+                journal.acknowledge(batch);
+                uploaded += batch.size();
+                consecutiveFailures = 0;
+                batchLimit = c.maxBatchRecords;
+                listener.onBatchUploaded(batch.size(), response[0]);
+            } else if (status == 413 && batch.size() > 1) {
+                // Proxy body limit; retry straight away with smaller batches
+                batchLimit = Math.max(1, batch.size() / 2);
+            } else if (status == 400 || status == 413 || status == 422) {
+                journal.acknowledge(batch);
+                rejected += batch.size();
+            } else {
+                consecutiveFailures++;
+                delay = backoffDelay(c, consecutiveFailures);
+                synchronized (lock) {
+                    nextAttemptAtMs = nowMs + delay;
+                }
+            }
+        } catch (IOException e) {
+            // Cursor could not be persisted; the batch will be re-sent
+            consecutiveFailures++;
+            delay = backoffDelay(c, consecutiveFailures);
+        }
+        listener.onStats(snapshot(nowMs));
+        return delay;
+    }
+
+    long backoffDelay(Config c, int failures) {
+        long base = c.initialBackoffMs << Math.min(failures - 1, 20);
+        base = Math.min(base, c.maxBackoffMs);
+        double factor = 1 - c.jitter + 2 * c.jitter * random.nextDouble();
+        return Math.min(c.maxBackoffMs, Math.max(1, (long) (base * factor)));
+    }
+
+    Stats snapshot(long nowMs) {
+        Stats stats = new Stats();
+        stats.pending = journal.pendingRecords();
+        stats.pendingBytes = journal.pendingBytes();
+        long oldest = journal.oldestPendingAtMs();
+        stats.lagMs = oldest < 0 ? 0 : Math.max(0, nowMs - oldest);
+        stats.uploaded = uploaded;
+        stats.rejected = rejected;
+        stats.consecutiveFailures = consecutiveFailures;
+        synchronized (lock) {
+            stats.nextAttemptInMs = Math.max(0, nextAttemptAtMs - nowMs);
+        }
+        stats.lastStatus = lastStatus;
+        return stats;
+    }
+
+    private static int post(Config c, ReadingJournal.Batch batch, String[] responseOut) throws IOException {
+        long length = BODY_PREFIX.length + BODY_SUFFIX.length + batch.bytes + Math.max(0, batch.size() - 1);
+        HttpURLConnection conn = (HttpURLConnection) new URL(c.endpoint).openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(c.timeoutMs);
+            conn.setReadTimeout(c.timeoutMs);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Accept", "application/json");
+            if (c.authToken != null && !c.authToken.isEmpty()) {
+                conn.setRequestProperty("Authorization", "Bearer " + c.authToken);
+            }
+            conn.setFixedLengthStreamingMode(length);
+
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(BODY_PREFIX);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    out.write(batch.payloads.get(i));
+                }
+                out.write(BODY_SUFFIX);
+            }
+
+            int status = conn.getResponseCode();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            responseOut[0] = in == null ? "" : readBounded(in);
+            return status;
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    // Reading the body to the end lets HttpURLConnection reuse the socket
+    private static String readBounded(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = stream.read(buf)) != -1) {
+                if (out.size() < MAX_RESPONSE_BYTES) {
+                    out.write(buf, 0, Math.min(n, MAX_RESPONSE_BYTES - out.size()));
+                }
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.cureon.telemed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flows a report onto A4 pages: titles, headings, wrapped paragraphs,
+ * label/value fields, images and tables whose rows break across pages with
+ * the header repeated. Each page is handed to the {@link Sink} as soon as
+ * it is full and nothing of it is kept, and table rows are read one at a
+ * time from {@link Rows}, so the working set is one row whatever the length
+ * of the document.
+ *
+ * <p>Text measurement comes from {@link Fonts}, so this runs on the JVM
+ * with fake metrics and on device with the real Paint ones.
+ */
+final class ReportLayout {
+    /** A4 in PDF points. */
+    static final int PAGE_WIDTH = 595;
+    static final int PAGE_HEIGHT = 842;
+    static final float MARGIN = 40;
+
+    static final int TITLE = 0;
+    static final int HEADING = 1;
+    static final int BODY = 2;
+    static final int BOLD = 3;
+    static final int SMALL = 4;
+    static final int STYLES = 5;
+
+    static final int HEADER_FILL = 0xffe8f0fe;
+    static final int ZEBRA_FILL = 0xfff6f8fb;
+
+    private static final float LINE_SPACING = 1.35f;
+    private static final float CELL_PADDING = 4;
+    private static final float FIELD_LABEL_WIDTH = 130;
+    private static final float BLOCK_GAP = 8;
+    private static final String ELLIPSIS = "...";
+
+    interface Fonts {
+        float width(String text, int start, int end, int style);
+
+        /** Font size in points; lines are {@link #LINE_SPACING} times this. */
+        float size(int style);
+    }
+
+    interface Sink {
+        void startPage(int number);
+
+        void text(String text, float x, float baseline, int style);
+
+        void line(float x1, float y1, float x2, float y2);
+
+        void fill(float left, float top, float right, float bottom, int argb);
+
+        void image(String source, float left, float top, float right, float bottom);
+
+        void finishPage(int number);
+    }
+
+    /** A table's body, read a cell at a time so it can stay in its JSON. */
+    interface Rows {
+        int size();
+
+        String cell(int row, int column);
+    }
+
+    static final class Column {
+        final String title;
+        final float weight;
+
+        Column(String title, float weight) {
+            this.title = title;
+            this.weight = weight;
+        }
+    }
+
+    private final Fonts fonts;
+    private final Sink sink;
+    private final String header;
+    private final String footer;
+    private final float[] lineHeight = new float[STYLES];
+    private final float contentWidth = PAGE_WIDTH - 2 * MARGIN;
+    private final float top;
+    private final float bottom;
+    // Reused for every wrap, so laying out a long table doesn't churn lists
+    private final List<String> lines = new ArrayList<>();
+    private int page;
+    private float y;
+
+    /** {@code header} and {@code footer} run along every page; either may be null. */
+    ReportLayout(Fonts fonts, Sink sink, String header, String footer) {
+        this.fonts = fonts;
+        this.sink = sink;
+        this.header = header;
+        this.footer = footer;
+        for (int style = 0; style < STYLES; style++) {
+            lineHeight[style] = fonts.size(style) * LINE_SPACING;
+        }
+        top = MARGIN + (header != null ? lineHeight[SMALL] + BLOCK_GAP : 0);
+        bottom = PAGE_HEIGHT - MARGIN - lineHeight[SMALL] - BLOCK_GAP;
+    }
+
+    int pages() {
+        return page;
+    }
+
+    void title(String title, String subtitle) {
+        ensure(lineHeight[TITLE] + lineHeight[BODY]);
+        paragraph(title, TITLE);
+        if (subtitle != null && !subtitle.isEmpty()) {
+            paragraph(subtitle, SMALL);
+        }
+        ensure(BLOCK_GAP);
+        sink.line(MARGIN, y + BLOCK_GAP / 2, PAGE_WIDTH - MARGIN, y + BLOCK_GAP / 2);
+        y += BLOCK_GAP;
+    }
+
+    /** Kept on the same page as at least two lines of what follows. */
+    void heading(String text) {
+        ensure(BLOCK_GAP + lineHeight[HEADING] + 2 * lineHeight[BODY]);
+        y += BLOCK_GAP;
+        paragraph(text, HEADING);
+    }
+
+    void paragraph(String text, int style) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        wrap(text, style, contentWidth, lines);
+        for (String line : lines) {
+            ensure(lineHeight[style]);
+            sink.text(line, MARGIN, baseline(style), style);
+            y += lineHeight[style];
+        }
+    }
+
+    /** A bold label with its value wrapped beside it; skipped when the value is empty. */
+    void field(String label, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        wrap(value, BODY, contentWidth - FIELD_LABEL_WIDTH, lines);
+        for (int i = 0; i < lines.size(); i++) {
+            ensure(lineHeight[BODY]);
+            if (i == 0) {
+                sink.text(label, MARGIN, baseline(BODY), BOLD);
+            }
+            sink.text(lines.get(i), MARGIN + FIELD_LABEL_WIDTH, baseline(BODY), BODY);
+            y += lineHeight[BODY];
+        }
+    }
+
+    void image(String source, float width, float height) {
+        if (source == null || source.isEmpty()) {
+            return;
+        }
+        float scale = Math.min(1f, Math.min(contentWidth / width, (bottom - top) / height));
+        ensure(height * scale + BLOCK_GAP);
+        y += BLOCK_GAP;
+        sink.image(source, MARGIN, y, MARGIN + width * scale, y + height * scale);
+        y += height * scale;
+    }
+
+    /**
+     * Rows break across pages, never within one, and the header is repeated
+     * on each page. A row too tall for a whole page is cut with an ellipsis.
+     */
+    void table(Column[] columns, Rows rows) {
+        int count = columns.length;
+        float[] x = new float[count + 1];
+        float total = 0;
+        for (Column column : columns) {
+            total += column.weight;
+        }
+        x[0] = MARGIN;
+        for (int i = 0; i < count; i++) {
+            x[i + 1] = x[i] + contentWidth * columns[i].weight / total;
+        }
+        @SuppressWarnings("unchecked")
+        List<String>[] cells = new List[count];
+        for (int i = 0; i < count; i++) {
+            cells[i] = new ArrayList<>();
+        }
+        float line = lineHeight[BODY];
+        float headerHeight = line + 2 * CELL_PADDING;
+        int maxLines = (int) ((bottom - top - headerHeight - 2 * CELL_PADDING) / line);
+
+        y += BLOCK_GAP;
+        ensure(headerHeight + line + 2 * CELL_PADDING);
+        tableHeader(columns, x);
+        int size = rows.size();
+        for (int row = 0; row < size; row++) {
+            int height = 1;
+            for (int c = 0; c < count; c++) {
+                String text = rows.cell(row, c);
+                wrap(text == null ? "" : text, BODY, x[c + 1] - x[c] - 2 * CELL_PADDING, cells[c]);
+                clip(cells[c], maxLines, x[c + 1] - x[c] - 2 * CELL_PADDING);
+                height = Math.max(height, cells[c].size());
+            }
+            float rowHeight = height * line + 2 * CELL_PADDING;
+            if (y + rowHeight > bottom) {
+                newPage();
+                tableHeader(columns, x);
+            }
+            if (row % 2 == 1) {
+                sink.fill(x[0], y, x[count], y + rowHeight, ZEBRA_FILL);
+            }
+            for (int c = 0; c < count; c++) {
+                List<String> cell = cells[c];
+                for (int i = 0; i < cell.size(); i++) {
+                    sink.text(cell.get(i), x[c] + CELL_PADDING,
+                        y + CELL_PADDING + i * line + fonts.size(BODY), BODY);
+                }
+            }
+            y += rowHeight;
+            sink.line(x[0], y, x[count], y);
+        }
+    }
+
+    void space(float points) {
+        y = Math.min(y + points, bottom);
+    }
+
+    /** Closes the last page; a report with nothing in it still gets one. */
+    int finish() {
+        if (page == 0) {
+            newPage();
+        }
+        closePage();
+        return page;
+    }
+
+    private void tableHeader(Column[] columns, float[] x) {
+        float height = lineHeight[BODY] + 2 * CELL_PADDING;
+        sink.fill(x[0], y, x[columns.length], y + height, HEADER_FILL);
+        for (int c = 0; c < columns.length; c++) {
+            String title = columns[c].title;
+            float width = x[c + 1] - x[c] - 2 * CELL_PADDING;
+            if (fonts.width(title, 0, title.length(), BOLD) > width) {
+                title = ellipsize(title, BOLD, width);
+            }
+            sink.text(title, x[c] + CELL_PADDING, y + CELL_PADDING + fonts.size(BODY), BOLD);
+        }
+        y += height;
+        sink.line(x[0], y, x[columns.length], y);
+    }
+
+    private float baseline(int style) {
+        return y + fonts.size(style);
+    }
+
+    /** Starts a new page unless {@code height} more points fit on this one. */
+    private void ensure(float height) {
+        if (page == 0 || y + height > bottom) {
+            newPage();
+        }
+    }
+
+    private void newPage() {
+        if (page > 0) {
+            closePage();
+        }
+        page++;
+        sink.startPage(page);
+        if (header != null) {
+            sink.text(header, MARGIN, MARGIN + fonts.size(SMALL), SMALL);
+        }
+        y = top;
+    }
+
+    private void closePage() {
+        float baseline = PAGE_HEIGHT - MARGIN;
+        if (footer != null) {
+            sink.text(footer, MARGIN, baseline, SMALL);
+        }
+        String number = "Page " + page;
+        sink.text(number, PAGE_WIDTH - MARGIN - fonts.width(number, 0, number.length(), SMALL), baseline, SMALL);
+        sink.finishPage(page);
+    }
+
+    /**
+     * Greedy word wrap into {@code out}, which is cleared first. Honors line
+     * breaks, and breaks words wider than the line between characters.
+     */
+    void wrap(String text, int style, float width, List<String> out) {
+        out.clear();
+        int length = text.length();
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int newline = text.indexOf('\n', lineStart);
+            int paragraphEnd = newline < 0 ? length : newline;
+            wrapParagraph(text, lineStart, paragraphEnd, style, width, out);
+            if (newline < 0) {
+                break;
+            }
+            lineStart = newline + 1;
+        }
+    }
+
+    private void wrapParagraph(String text, int start, int end, int style, float width, List<String> out) {
+        if (start == end) {
+            out.add("");
+            return;
+        }
+        int lineStart = start;
+        while (lineStart < end) {
+            while (lineStart < end && text.charAt(lineStart) == ' ') {
+                lineStart++;
+            }
+            if (lineStart == end) {
+                break;
+            }
+            if (fonts.width(text, lineStart, end, style) <= width) {
+                out.add(text.substring(lineStart, end));
+                return;
+            }
+            // Last space that still fits; otherwise as many characters as fit
+            int lastFit = -1;
+            int i = lineStart;
+            while (i < end) {
+                int space = text.indexOf(' ', i + 1);
+                int wordEnd = space < 0 || space > end ? end : space;
+                if (fonts.width(text, lineStart, wordEnd, style) > width) {
+                    break;
+                }
+                lastFit = wordEnd;
+                i = wordEnd;
+            }
+            int lineEnd = lastFit > lineStart ? lastFit : fitChars(text, lineStart, end, style, width);
+            out.add(text.substring(lineStart, lineEnd));
+            lineStart = lineEnd;
+        }
+    }
+
+    private int fitChars(String text, int start, int end, int style, float width) {
+        int i = start + 1;
+        while (i < end && fonts.width(text, start, i + 1, style) <= width) {
+            i++;
+        }
+        return i;
+    }
+
+    private void clip(List<String> cell, int maxLines, float width) {
+        if (cell.size() <= maxLines) {
+            return;
+        }
+        while (cell.size() > maxLines) {
+            cell.remove(cell.size() - 1);
+        }
+        cell.set(maxLines - 1, ellipsize(cell.get(maxLines - 1), BODY, width));
+    }
+
+    private String ellipsize(String text, int style, float width) {
+        int end = text.length();
+        while (end > 0 && fonts.width(text, 0, end, style) + fonts.width(ELLIPSIS, 0, ELLIPSIS.length(), style) > width) {
+            end--;
+        }
+        return text.substring(0, end) + ELLIPSIS;
+    }
+}
@@ -0,0 +1,302 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * The documents PdfReportPlugin prints, laid out from the same JSON the
+ * page already has: a prescription as the backend returns it, and a health
+ * history of readings and past prescriptions. Tables read straight from the
+ * JSON arrays rather than copying them.
+ */
+final class ReportTemplates {
+    static final String PRESCRIPTION = "prescription";
+    static final String HISTORY = "history";
+
+    /** QR codes print at this size so a pharmacy scanner reads them from paper. */
+    static final float QR_SIZE = 110;
+
+    static final ReportLayout.Column[] MEDICATION_COLUMNS = {
+        new ReportLayout.Column("Medicine", 3),
+        new ReportLayout.Column("Dosage", 2),
+        new ReportLayout.Column("Frequency", 2),
+        new ReportLayout.Column("Duration", 1.5f),
+        new ReportLayout.Column("Instructions", 3.5f),
+    };
+
+    static final ReportLayout.Column[] READING_COLUMNS = {
+        new ReportLayout.Column("Date", 2.2f),
+        new ReportLayout.Column("Reading", 2),
+        new ReportLayout.Column("Value", 2),
+        new ReportLayout.Column("Status", 1.3f),
+        new ReportLayout.Column("Source", 1.8f),
+    };
+
+    static final ReportLayout.Column[] PRESCRIPTION_COLUMNS = {
+        new ReportLayout.Column("Date", 1.6f),
+        new ReportLayout.Column("No.", 1.6f),
+        new ReportLayout.Column("Doctor", 1.8f),
+        new ReportLayout.Column("Diagnosis", 2.5f),
+        new ReportLayout.Column("Medicines", 3),
+    };
+
+    private final DateTimeFormatter dateFormat;
+    private final DateTimeFormatter dateTimeFormat;
+
+    ReportTemplates(ZoneId zone) {
+        dateFormat = DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.ENGLISH).withZone(zone);
+        dateTimeFormat = DateTimeFormatter.ofPattern("dd MMM yyyy HH:mm", Locale.ENGLISH).withZone(zone);
+    }
+
+    /** The running header for {@code kind}, e.g. "Cureon - Prescription RX-1042". */
+    static String header(String kind, JSONObject data) {
+        if (PRESCRIPTION.equals(kind)) {
+            return "Cureon - Prescription " + data.optString("prescriptionNumber");
+        }
+        return "Cureon - Health report for " + name(data.optJSONObject("patient"));
+    }
+
+    /** Lays out {@code data} as {@code kind}; false for an unknown kind. */
+    boolean render(String kind, JSONObject data, ReportLayout layout) {
+        if (PRESCRIPTION.equals(kind)) {
+            prescription(data, layout);
+            return true;
+        }
+        if (HISTORY.equals(kind)) {
+            history(data, layout);
+            return true;
+        }
+        return false;
+    }
+
+    void prescription(JSONObject rx, ReportLayout layout) {
+        String number = rx.optString("prescriptionNumber");
+        layout.title("Prescription", join(" - ", number.isEmpty() ? null : "No. " + number, date(rx.optString("createdAt"))));
+
+        JSONObject patient = rx.optJSONObject("patient");
+        layout.field("Patient", join(", ", name(patient), patient == null ? null : patient.optString("gender"),
+            patient == null || patient.optInt("age") <= 0 ? null : patient.optInt("age") + " yrs"));
+        layout.field("Phone", patient == null ? null : patient.optString("phone"));
+        JSONObject doctor = rx.optJSONObject("doctor");
+        layout.field("Doctor", join(", ", name(doctor).isEmpty() ? null : "Dr. " + name(doctor),
+            doctor == null ? null : doctor.optString("specialization")));
+        JSONObject pharmacy = rx.optJSONObject("pharmacy");
+        layout.field("Pharmacy", pharmacy == null ? null : pharmacy.optString("name"));
+        if ("dispensed".equals(rx.optString("pharmacyStatus"))) {
+            layout.field("Status", join(" ", "Dispensed", date(rx.optString("dispensedAt"))));
+        }
+
+        section(layout, "Diagnosis", rx.optString("diagnosis"));
+        section(layout, "Symptoms", rx.optString("symptoms"));
+
+        JSONArray medications = rx.optJSONArray("medications");
+        if (medications != null && medications.length() > 0) {
+            layout.heading("Medications");
+            layout.table(MEDICATION_COLUMNS, new Rows(medications) {
+                @Override
+                String cell(JSONObject medication, int column) {
+                    switch (column) {
+                        case 0: return medication.optString("name");
+                        case 1: return medication.optString("dosage");
+                        case 2: return medication.optString("frequency");
+                        case 3: return medication.optString("duration");
+                        default: return medication.optString("instructions");
+                    }
+                }
+            });
+        }
+
+        section(layout, "Notes", rx.optString("notes"));
+        section(layout, "Follow-up", rx.optString("followUpInstructions"));
+        // Optional: the page's verification QR code, as a data: URL
+        String qr = rx.optString("qrCode");
+        if (!qr.isEmpty()) {
+            layout.image(qr, QR_SIZE, QR_SIZE);
+        }
+    }
+
+    void history(JSONObject history, ReportLayout layout) {
+        JSONObject patient = history.optJSONObject("patient");
+        String generated = dateTime(history.optString("generatedAt"));
+        layout.title("Health Report", generated.isEmpty() ? null : "Generated " + generated);
+        layout.field("Patient", name(patient));
+        if (patient != null) {
+            layout.field("Email", patient.optString("email"));
+            layout.field("Phone", patient.optString("phone"));
+        }
+        section(layout, "Summary", history.optString("summary"));
+
+        JSONArray readings = history.optJSONArray("readings");
+        if (readings != null && readings.length() > 0) {
+            layout.heading("Readings (" + readings.length() + ")");
+            layout.table(READING_COLUMNS, new Rows(readings) {
+                @Override
+                String cell(JSONObject reading, int column) {
+                    switch (column) {
+                        case 0: return dateTime(reading.optString("recordedAt", reading.optString("createdAt")));
+                        case 1: return label(reading.optString("type"));
+                        case 2: return readingValue(reading);
+                        case 3: return label(reading.optString("severity", "normal"));
+                        default: {
+                            JSONObject source = reading.optJSONObject("source");
+                            return source == null ? "" : label(source.optString("deviceType"));
+                        }
+                    }
+                }
+            });
+        }
+
+        JSONArray prescriptions = history.optJSONArray("prescriptions");
+        if (prescriptions != null && prescriptions.length() > 0) {
+            layout.heading("Prescriptions (" + prescriptions.length() + ")");
+            layout.table(PRESCRIPTION_COLUMNS, new Rows(prescriptions) {
+                @Override
+                String cell(JSONObject rx, int column) {
+                    switch (column) {
+                        case 0: return date(rx.optString("createdAt"));
+                        case 1: return rx.optString("prescriptionNumber");
+                        case 2: return name(rx.optJSONObject("doctor"));
+                        case 3: return rx.optString("diagnosis");
+                        default: return medicineNames(rx.optJSONArray("medications"));
+                    }
+                }
+            });
+        }
+    }
+
+    /** Reads a table's rows from a JSON array of objects; missing entries print blank. */
+    private abstract static class Rows implements ReportLayout.Rows {
+        private final JSONArray array;
+
+        Rows(JSONArray array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length();
+        }
+
+        @Override
+        public String cell(int row, int column) {
+            JSONObject item = array.optJSONObject(row);
+            return item == null ? "" : cell(item, column);
+        }
+
+        abstract String cell(JSONObject item, int column);
+    }
+
+    static String readingValue(JSONObject reading) {
+        JSONObject value = reading.optJSONObject("value");
+        if (value == null) {
+            return "";
+        }
+        switch (reading.optString("type")) {
+            case "blood_pressure":
+                return number(value, "systolic") + "/" + number(value, "diastolic") + " mmHg";
+            case "heart_rate":
+                return number(value, "single") + " bpm";
+            case "spo2":
+                return number(value, "single") + " %";
+            case "temperature":
+                return number(value, "single") + " \u00b0C";
+            case "blood_glucose":
+                return number(value, "single") + " mg/dL";
+            case "steps":
+                return number(value, "single") + " steps";
+            case "sleep": {
+                int minutes = value.optInt("duration");
+                String quality = value.optString("quality");
+                return minutes / 60 + "h " + minutes % 60 + "m" + (quality.isEmpty() ? "" : ", " + quality);
+            }
+            case "ecg":
+                return label(value.optString("ecgResult"));
+            default:
+                return number(value, "single");
+        }
+    }
+
+    private static void section(ReportLayout layout, String heading, String text) {
+        if (text != null && !text.isEmpty()) {
+            layout.heading(heading);
+            layout.paragraph(text, ReportLayout.BODY);
+        }
+    }
+
+    private static String number(JSONObject value, String key) {
+        double number = value.optDouble(key);
+        if (Double.isNaN(number)) {
+            return "-";
+        }
+        return number == Math.rint(number) ? Long.toString((long) number) : Double.toString(number);
+    }
+
+    private static String medicineNames(JSONArray medications) {
+        if (medications == null) {
+            return "";
+        }
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < medications.length(); i++) {
+            JSONObject medication = medications.optJSONObject(i);
+            if (medication != null) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(medication.optString("name"));
+            }
+        }
+        return names.toString();
+    }
+
+    private static String name(JSONObject person) {
+        return person == null ? "" : person.optString("name");
+    }
+
+    /** heart_rate -> Heart rate */
+    static String label(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        String spaced = value.replace('_', ' ');
+        return Character.toUpperCase(spaced.charAt(0)) + spaced.substring(1);
+    }
+
+    private static String join(String separator, String... parts) {
+        StringBuilder out = new StringBuilder();
+        for (String part : parts) {
+            if (part != null && !part.isEmpty()) {
+                if (out.length() > 0) {
+                    out.append(separator);
+                }
+                out.append(part);
+            }
+        }
+        return out.toString();
+    }
+
+    String date(String iso) {
+        return format(iso, dateFormat);
+    }
+
+    String dateTime(String iso) {
+        return format(iso, dateTimeFormat);
+    }
+
+    /** ISO timestamps as Mongo serializes them; anything else is printed as given. */
+    private static String format(String iso, DateTimeFormatter format) {
+        if (iso == null || iso.isEmpty()) {
+            return "";
+        }
+        try {
+            return format.format(Instant.parse(iso));
+        } catch (DateTimeParseException e) {
+            return iso;
+        }
+    }
+}
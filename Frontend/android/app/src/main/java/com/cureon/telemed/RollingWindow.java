@@ -0,0 +1,125 @@
+package com.cureon.telemed;
+
+/**
+ * Sliding time window over one metric with O(1) updates. Count, mean,
+ * standard deviation and the least-squares slope come from running sums
+ * that are adjusted as samples enter and leave a {@link SampleRingBuffer};
+ * nothing is rescanned per sample. To keep floating-point drift from the
+ * add/subtract cycle bounded, the sums are rebuilt from the ring once per
+ * {@code capacity} evictions, which is still O(1) amortized.
+ *
+ * <p>Not thread-safe; callers synchronize externally.
+ */
+final class RollingWindow {
+    private final long spanMs;
+    private final SampleRingBuffer ring;
+    // Times are taken relative to this, in seconds, to keep the regression sums small
+    private long originMs = -1;
+    private double sum;
+    private double sumSquares;
+    private double sumT;
+    private double sumTT;
+    private double sumTY;
+    private int evictions;
+
+    RollingWindow(long spanMs, int capacity) {
+        this.spanMs = spanMs;
+        this.ring = new SampleRingBuffer(capacity, 1);
+    }
+
+    void add(long timeMs, float value) {
+        if (originMs < 0) {
+            originMs = timeMs;
+        }
+        evictBefore(timeMs - spanMs);
+        if (ring.size() == ring.capacity()) {
+            removeOldest();
+        }
+        ring.add(timeMs, value);
+        accumulate(timeMs, value, 1);
+    }
+
+    /** Drops samples older than {@code cutoffMs}. */
+    void evictBefore(long cutoffMs) {
+        while (!ring.isEmpty() && ring.timeAt(0) < cutoffMs) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        accumulate(ring.timeAt(0), ring.valueAt(0, 0), -1);
+        ring.removeOldest();
+        if (++evictions >= ring.capacity()) {
+            resum();
+        }
+    }
+
+    private void accumulate(long timeMs, float value, int sign) {
+        double t = (timeMs - originMs) / 1000.0;
+        sum += sign * value;
+        sumSquares += sign * (double) value * value;
+        sumT += sign * t;
+        sumTT += sign * t * t;
+        sumTY += sign * t * value;
+    }
+
+    private void resum() {
+        evictions = 0;
+        sum = sumSquares = sumT = sumTT = sumTY = 0;
+        originMs = ring.isEmpty() ? -1 : ring.timeAt(0);
+        for (int i = 0; i < ring.size(); i++) {
+            accumulate(ring.timeAt(i), ring.valueAt(i, 0), 1);
+        }
+    }
+
+    int count() {
+        return ring.size();
+    }
+
+    /** Milliseconds between the oldest and newest sample. */
+    long coveredMs() {
+        return ring.isEmpty() ? 0 : ring.timeAt(ring.size() - 1) - ring.timeAt(0);
+    }
+
+    double mean() {
+        int n = ring.size();
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    /** Population standard deviation. */
+    double standardDeviation() {
+        int n = ring.size();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        double mean = sum / n;
+        return Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+    }
+
+    /** Least-squares slope in units per minute, or NaN with fewer than two distinct times. */
+    double slopePerMinute() {
+        int n = ring.size();
+        double denominator = n * sumTT - sumT * sumT;
+        // Relative to the spread of t itself, so samples at one instant don't divide by rounding noise
+        if (n < 2 || denominator <= 1e-9 * n * sumTT) {
+            return Double.NaN;
+        }
+        return 60 * (n * sumTY - sumT * sum) / denominator;
+    }
+
+    /** Timestamp of the i-th oldest sample in the window. */
+    long timeAt(int index) {
+        return ring.timeAt(index);
+    }
+
+    float valueAt(int index) {
+        return ring.valueAt(index, 0);
+    }
+
+    void clear() {
+        ring.clear();
+        originMs = -1;
+        evictions = 0;
+        sum = sumSquares = sumT = sumTT = sumTY = 0;
+    }
+}
@@ -0,0 +1,116 @@
+package com.cureon.telemed;
+
+/**
+ * Fixed-capacity ring of timestamped samples backed by primitive arrays.
+ * Each sample carries {@code width} float values. When full, the oldest
+ * sample is overwritten and counted as dropped. Not thread-safe; callers
+ * synchronize externally.
+ */
+final class SampleRingBuffer {
+    private final int capacity;
+    private final int width;
+    private final long[] times;
+    private final float[] values;
+    private int head;
+    private int size;
+    private long dropped;
+
+    SampleRingBuffer(int capacity, int width) {
+        if (capacity <= 0 || width <= 0) {
+            throw new IllegalArgumentException("capacity and width must be positive");
+        }
+        this.capacity = capacity;
+        this.width = width;
+        this.times = new long[capacity];
+        this.values = new float[capacity * width];
+    }
+
+    void add(long timeMs, float value) {
+        int slot = nextSlot(timeMs);
+        values[slot * width] = value;
+    }
+
+    void add(long timeMs, float first, float second) {
+        int slot = nextSlot(timeMs);
+        values[slot * width] = first;
+        if (width > 1) {
+            values[slot * width + 1] = second;
+        }
+    }
+
+    void add(long timeMs, float[] sample) {
+        int slot = nextSlot(timeMs);
+        System.arraycopy(sample, 0, values, slot * width, Math.min(width, sample.length));
+    }
+
+    private int nextSlot(long timeMs) {
+        int slot = (head + size) % capacity;
+        if (size == capacity) {
+            head = (head + 1) % capacity;
+            dropped++;
+        } else {
+            size++;
+        }
+        times[slot] = timeMs;
+        return slot;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int width() {
+        return width;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Timestamp of the i-th oldest sample. */
+    long timeAt(int index) {
+        return times[(head + index) % capacity];
+    }
+
+    /** Component {@code component} of the i-th oldest sample. */
+    float valueAt(int index, int component) {
+        return values[((head + index) % capacity) * width + component];
+    }
+
+    /**
+     * Copies the samples oldest-first into the given arrays (which must hold
+     * {@link #size()} samples) and empties the ring. Returns the sample count.
+     */
+    int drainTo(long[] timesOut, float[] valuesOut) {
+        int count = size;
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % capacity;
+            timesOut[i] = times[slot];
+            System.arraycopy(values, slot * width, valuesOut, i * width, width);
+        }
+        clear();
+        return count;
+    }
+
+    /** Forgets the oldest sample, if any. */
+    void removeOldest() {
+        if (size == 0) {
+            return;
+        }
+        head = (head + 1) % capacity;
+        size--;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,374 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Just enough of a Socket.IO v4 client for call signalling: it joins the
+ * default namespace over Engine.IO long-polling, delivers JSON events,
+ * answers heartbeats and reconnects with jittered backoff. Polling needs only
+ * HttpURLConnection, so the same code runs on the device and against a
+ * stand-in server in JVM tests, and one GET held open per ping interval
+ * (25 s by default) is cheap enough to keep up from a foreground service.
+ * Binary packets and acknowledgements are not supported.
+ *
+ * <p>Listener callbacks run on the poll thread and must not block. A stopped
+ * client can't be started again; make a new one.
+ */
+final class SocketIoClient {
+    private static final String RECORD_SEPARATOR = "\u001e";
+    private static final int MAX_PAYLOAD_BYTES = 1024 * 1024;
+
+    interface Listener {
+        void onConnected();
+
+        void onEvent(String event, JSONArray args);
+
+        void onDisconnected(String reason);
+    }
+
+    static final class Config {
+        String baseUrl;
+        String path = "/socket.io/";
+        Map<String, String> query = new LinkedHashMap<>();
+        // Sent with the namespace connect, like socket.io-client's auth option
+        Map<String, String> auth = new LinkedHashMap<>();
+        int connectTimeoutMs = 10_000;
+        long initialBackoffMs = 1_000;
+        long maxBackoffMs = 60_000;
+    }
+
+    private final Config config;
+    private final Listener listener;
+    private final Random random;
+    private final Object wake = new Object();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "socketio-write");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Thread poller;
+    private volatile boolean running;
+    private volatile String sid;
+    private volatile boolean connected;
+    private volatile HttpURLConnection openPoll;
+    private long backoffMs;
+    private boolean retryNow;
+
+    SocketIoClient(Config config, Listener listener, Random random) {
+        this.config = config;
+        this.listener = listener;
+        this.random = random;
+        this.backoffMs = config.initialBackoffMs;
+    }
+
+    synchronized void start() {
+        if (running || writer.isShutdown()) {
+            return;
+        }
+        running = true;
+        poller = new Thread(this::run, "socketio-poll");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /** Closes the session and stops reconnecting. */
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = poller;
+            poller = null;
+        }
+        String session = sid;
+        if (session != null) {
+            writer.execute(() -> {
+                try {
+                    post(session, "1");
+                } catch (IOException e) {
+                    // the server times the session out on its own
+                }
+            });
+        }
+        HttpURLConnection poll = openPoll;
+        if (poll != null) {
+            poll.disconnect();
+        }
+        thread.interrupt();
+        writer.shutdown();
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /** Skip the rest of the backoff, e.g. when the network comes back. */
+    void reconnectNow() {
+        synchronized (wake) {
+            backoffMs = config.initialBackoffMs;
+            retryNow = true;
+            wake.notifyAll();
+        }
+    }
+
+    /** Sends an event if connected; returns false when it was dropped. */
+    boolean emit(String event, JSONObject payload) {
+        String session = sid;
+        if (!connected || session == null) {
+            return false;
+        }
+        JSONArray packet = new JSONArray().put(event);
+        if (payload != null) {
+            packet.put(payload);
+        }
+        String frame = "42" + packet;
+        try {
+            writer.execute(() -> {
+                try {
+                    post(session, frame);
+                } catch (IOException e) {
+                    // The poll loop notices a dead session and reconnects
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private void run() {
+        while (running) {
+            String reason;
+            try {
+                session();
+                reason = "closed";
+            } catch (IOException | JSONException | RuntimeException e) {
+                // RuntimeException: what HttpURLConnection throws when stop() disconnects a poll mid-request
+                reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            }
+            sid = null;
+            if (connected) {
+                connected = false;
+                listener.onDisconnected(reason);
+            }
+            if (running) {
+                pause();
+            }
+        }
+    }
+
+    private void pause() {
+        synchronized (wake) {
+            long delay = Math.round(backoffMs * (0.5 + random.nextDouble()));
+            backoffMs = Math.min(config.maxBackoffMs, backoffMs * 2);
+            long until = System.currentTimeMillis() + delay;
+            try {
+                while (running && !retryNow) {
+                    long left = until - System.currentTimeMillis();
+                    if (left <= 0) {
+                        break;
+                    }
+                    wake.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            retryNow = false;
+        }
+    }
+
+    // One Engine.IO session: handshake, namespace connect, then poll until it fails
+    private void session() throws IOException, JSONException {
+        String open = get(null, config.connectTimeoutMs);
+        if (!open.startsWith("0")) {
+            throw new IOException("Unexpected handshake " + abbreviate(open));
+        }
+        JSONObject handshake = new JSONObject(open.substring(1));
+        String session = handshake.getString("sid");
+        // The server pings every pingInterval and gives up after pingTimeout more
+        int readTimeout = handshake.optInt("pingInterval", 25_000) + handshake.optInt("pingTimeout", 20_000);
+        sid = session;
+        post(session, config.auth.isEmpty() ? "40" : "40" + new JSONObject(config.auth));
+
+        while (running) {
+            String payload = get(session, readTimeout);
+            for (String packet : payload.split(RECORD_SEPARATOR)) {
+                handle(session, packet);
+            }
+        }
+    }
+
+    private void handle(String session, String packet) throws IOException, JSONException {
+        if (packet.isEmpty()) {
+            return;
+        }
+        switch (packet.charAt(0)) {
+            case '1':
+                throw new IOException("server closed the session");
+            case '2':
+                try {
+                    writer.execute(() -> {
+                        try {
+                            post(session, "3");
+                        } catch (IOException e) {
+                            // a missed pong ends the session server-side; the poll then fails
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // stopping
+                }
+                break;
+            case '4':
+                handleMessage(packet.substring(1));
+                break;
+            default:
+                // 6 (noop) and anything newer
+                break;
+        }
+    }
+
+    private void handleMessage(String message) throws IOException, JSONException {
+        if (message.isEmpty()) {
+            return;
+        }
+        char type = message.charAt(0);
+        String body = message.substring(1);
+        if (body.startsWith("/")) {
+            // Another namespace's traffic; we only join the default one
+            return;
+        }
+        switch (type) {
+            case '0':
+                connected = true;
+                synchronized (wake) {
+                    backoffMs = config.initialBackoffMs;
+                }
+                listener.onConnected();
+                break;
+            case '1':
+                throw new IOException("server disconnected the socket");
+            case '2': {
+                int start = 0;
+                while (start < body.length() && Character.isDigit(body.charAt(start))) {
+                    start++;
+                }
+                JSONArray packet = new JSONArray(body.substring(start));
+                String event = packet.getString(0);
+                JSONArray args = new JSONArray();
+                for (int i = 1; i < packet.length(); i++) {
+                    args.put(packet.get(i));
+                }
+                listener.onEvent(event, args);
+                break;
+            }
+            case '4':
+                throw new IOException("connection refused " + abbreviate(body));
+            default:
+                break;
+        }
+    }
+
+    private String get(String session, int readTimeoutMs) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url(session)).openConnection();
+        openPoll = conn;
+        try {
+            conn.setConnectTimeout(config.connectTimeoutMs);
+            conn.setReadTimeout(readTimeoutMs);
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                drain(conn.getErrorStream());
+                throw new IOException("poll HTTP " + status);
+            }
+            return drain(conn.getInputStream());
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        } finally {
+            openPoll = null;
+        }
+    }
+
+    private void post(String session, String payload) throws IOException {
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) new URL(url(session)).openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(config.connectTimeoutMs);
+            conn.setReadTimeout(config.connectTimeoutMs);
+            conn.setRequestProperty("Content-Type", "text/plain;charset=UTF-8");
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body);
+            }
+            int status = conn.getResponseCode();
+            drain(status >= 400 ? conn.getErrorStream() : conn.getInputStream());
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("post HTTP " + status);
+            }
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    private String url(String session) throws UnsupportedEncodingException {
+        StringBuilder url = new StringBuilder(config.baseUrl.replaceAll("/+$", ""))
+            .append(config.path).append("?EIO=4&transport=polling");
+        for (Map.Entry<String, String> entry : config.query.entrySet()) {
+            url.append('&').append(URLEncoder.encode(entry.getKey(), "UTF-8"))
+                .append('=').append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+        }
+        if (session != null) {
+            url.append("&sid=").append(URLEncoder.encode(session, "UTF-8"));
+        }
+        // Defeats caches between us and the server, as the JS client does
+        url.append("&t=").append(Long.toString(System.nanoTime(), 36));
+        return url.toString();
+    }
+
+    // Reading to the end lets HttpURLConnection reuse the socket
+    private static String drain(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = stream.read(buf)) != -1) {
+                if (out.size() + n > MAX_PAYLOAD_BYTES) {
+                    throw new IOException("payload too large");
+                }
+                out.write(buf, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() > 80 ? text.substring(0, 80) + "..." : text;
+    }
+}
@@ -0,0 +1,97 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The home-screen shortcut's and the critical health alert's way into SOS:
+ * a five-second cancellable countdown, as on the web SOS screen, then
+ * {@link SosService#trigger}. Nothing of the React app is loaded. The
+ * countdown doubles as warm-up time for the backend connection and
+ * location cache.
+ */
+public class SosActivity extends AppCompatActivity {
+    private static final int COUNTDOWN_SECONDS = 5;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ExecutorService warmer = Executors.newSingleThreadExecutor();
+    private AlertDialog dialog;
+    private int remaining = COUNTDOWN_SECONDS;
+    private boolean sent;
+
+    /** An SOS countdown whose alert carries {@code description}, e.g. the reading that prompted it. */
+    static Intent intent(Context context, String description) {
+        return new Intent(context, SosActivity.class)
+            .setAction(SosService.ACTION_TRIGGER)
+            .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
+            .putExtra(SosService.EXTRA_DESCRIPTION, description);
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            remaining--;
+            if (remaining <= 0) {
+                send();
+                return;
+            }
+            dialog.setMessage(getString(R.string.sos_countdown, remaining));
+            main.postDelayed(this, 1000);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        warmer.execute(() -> SosService.prepare(getApplicationContext()));
+        if (!SosService.hasLocationPermission(this)) {
+            ActivityCompat.requestPermissions(this, new String[] { Manifest.permission.ACCESS_FINE_LOCATION }, 0);
+        }
+        dialog = new AlertDialog.Builder(this)
+            .setTitle(R.string.sos_countdown_title)
+            .setMessage(getString(R.string.sos_countdown, remaining))
+            .setPositiveButton(R.string.sos_send_now, (d, which) -> send())
+            .setNegativeButton(R.string.sos_cancel, (d, which) -> finish())
+            .setOnCancelListener(DialogInterface::dismiss)
+            .setOnDismissListener(d -> finish())
+            .create();
+        dialog.show();
+        main.postDelayed(tick, 1000);
+    }
+
+    private void send() {
+        if (sent) {
+            return;
+        }
+        sent = true;
+        main.removeCallbacks(tick);
+        String description = getIntent().getStringExtra(SosService.EXTRA_DESCRIPTION);
+        SosService.trigger(this, SosDispatcher.SOS,
+            description != null ? description : getString(R.string.sos_shortcut_description), "critical", null);
+        Toast.makeText(this, R.string.sos_sent, Toast.LENGTH_LONG).show();
+        dialog.dismiss();
+    }
+
+    @Override
+    protected void onDestroy() {
+        main.removeCallbacks(tick);
+        warmer.shutdown();
+        if (dialog != null && dialog.isShowing()) {
+            dialog.dismiss();
+        }
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,678 @@
+package com.cureon.telemed;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Durable delivery of SOS and ambulance alerts to {@code /api/v1/emergency}.
+ *
+ * <p>An alert is written to disk before anything else happens and is sent as
+ * soon as it has any location, however rough; better fixes follow as
+ * {@code update-location} calls, coalesced so only the newest pending fix is
+ * ever sent. Each alert carries a client ID the backend deduplicates on, so a
+ * retry after a lost response never raises a second emergency. Network
+ * errors, 408, 429 and 5xx retry with short jittered backoff and never give
+ * up; an alert the server hasn't acknowledged within {@code smsAfterMs}, or
+ * that it refuses, is handed to the listener once for SMS.
+ *
+ * <p>The latency from trigger to the server's acknowledgement is kept with
+ * each alert.
+ */
+final class SosDispatcher {
+    static final String SOS = "sos";
+    static final String AMBULANCE = "ambulance";
+
+    static final String WAITING_FOR_FIX = "waitingForFix";
+    static final String SENDING = "sending";
+    static final String SENT = "sent";
+    static final String FAILED = "failed";
+    static final String CANCELLED = "cancelled";
+
+    static final String EMERGENCY_PATH = "/api/v1/emergency/";
+    static final String WARM_PATH = "/api/v1/health-check";
+
+    private static final String SUFFIX = ".sos";
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024;
+
+    interface Listener {
+        void onChanged(Alert alert);
+
+        /** The server has the alert; {@link Alert#latencyMs} is set. */
+        void onAcknowledged(Alert alert);
+
+        /** Called once per alert, off the lock, when the server can't be relied on for it. */
+        void onSmsFallback(Alert alert);
+    }
+
+    static final class Config {
+        String baseUrl;
+        String token;
+        long initialBackoffMs = 1_000;
+        long maxBackoffMs = 30_000;
+        double jitter = 0.2;
+        long smsAfterMs = 20_000;
+        // Short connect timeout: a dead route should fail over to a retry, not hang
+        int connectTimeoutMs = 5_000;
+        int readTimeoutMs = 15_000;
+        long keepMs = 24L * 60 * 60_000;
+    }
+
+    static final class Alert {
+        final String id;
+        final String type;
+        final String description;
+        final String severity;
+        final String emergencyType;
+        final long triggeredAt;
+        // Guarded by the dispatcher
+        String state;
+        String emergencyId;
+        SosFix sentFix;
+        SosFix pendingFix;
+        boolean resolvePending;
+        boolean smsSent;
+        int failures;
+        int updates;
+        long nextAttemptAt;
+        long ackedAt;
+        long firstFixAgeMs = -1;
+        String error;
+
+        Alert(String id, String type, String description, String severity, String emergencyType, long triggeredAt) {
+            this.id = id;
+            this.type = type;
+            this.description = description;
+            this.severity = severity;
+            this.emergencyType = emergencyType;
+            this.triggeredAt = triggeredAt;
+        }
+
+        /** Trigger to server acknowledgement, or -1 while unacknowledged. */
+        long latencyMs() {
+            return ackedAt > 0 ? ackedAt - triggeredAt : -1;
+        }
+
+        /** The freshest fix known for this alert, sent or not. */
+        SosFix latestFix() {
+            return pendingFix != null ? pendingFix : sentFix;
+        }
+    }
+
+    private static final class PermanentFailure extends IOException {
+        PermanentFailure(String message) {
+            super(message);
+        }
+    }
+
+    private enum Work { CREATE, UPDATE, RESOLVE, SMS }
+
+    private final File dir;
+    private final Listener listener;
+    private final Random random;
+    private final Map<String, Alert> alerts = new LinkedHashMap<>();
+    private volatile Config config;
+    private Thread worker;
+    private HttpURLConnection inFlight;
+    private boolean running;
+
+    SosDispatcher(File dir, Config config, Listener listener, Random random) {
+        this.dir = dir;
+        this.config = config;
+        this.listener = listener;
+        this.random = random;
+        load();
+    }
+
+    void setConfig(Config config) {
+        synchronized (this) {
+            this.config = config;
+            // New credentials deserve an immediate try
+            for (Alert alert : alerts.values()) {
+                alert.nextAttemptAt = 0;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records and queues an alert. Without a fix it waits for
+     * {@link #offerFix}, though the SMS fallback still fires on time.
+     */
+    Alert trigger(String type, String description, String severity, String emergencyType, SosFix fix) {
+        long now = System.currentTimeMillis();
+        Alert alert = new Alert(UUID.randomUUID().toString(), AMBULANCE.equals(type) ? AMBULANCE : SOS,
+            description, severity, emergencyType, now);
+        synchronized (this) {
+            alert.pendingFix = fix;
+            alert.state = fix != null ? SENDING : WAITING_FOR_FIX;
+            if (fix != null) {
+                alert.firstFixAgeMs = Math.max(0, now - fix.time);
+            }
+            persist(alert);
+            alerts.put(alert.id, alert);
+            notifyAll();
+        }
+        listener.onChanged(alert);
+        return alert;
+    }
+
+    /** Queues {@code fix} as a follow-up for every live alert it improves on. */
+    void offerFix(SosFix fix) {
+        List<Alert> changed = new ArrayList<>();
+        synchronized (this) {
+            for (Alert alert : alerts.values()) {
+                if (!live(alert) || !SosFix.worthSending(fix, alert.latestFix())) {
+                    continue;
+                }
+                alert.pendingFix = fix;
+                if (WAITING_FOR_FIX.equals(alert.state)) {
+                    alert.state = SENDING;
+                    alert.firstFixAgeMs = Math.max(0, System.currentTimeMillis() - fix.time);
+                }
+                persist(alert);
+                changed.add(alert);
+            }
+            if (!changed.isEmpty()) {
+                notifyAll();
+            }
+        }
+        for (Alert alert : changed) {
+            listener.onChanged(alert);
+        }
+    }
+
+    /** Stops sending for an alert; one the server knows about is resolved there too. */
+    boolean cancel(String id) {
+        Alert alert;
+        synchronized (this) {
+            alert = alerts.get(id);
+            if (alert == null || CANCELLED.equals(alert.state)) {
+                return false;
+            }
+            alert.state = CANCELLED;
+            alert.pendingFix = null;
+            alert.resolvePending = alert.emergencyId != null;
+            alert.nextAttemptAt = 0;
+            // A create already in flight is left to finish; its response is resolved straight after
+            persist(alert);
+            notifyAll();
+        }
+        listener.onChanged(alert);
+        return true;
+    }
+
+    synchronized List<Alert> alerts() {
+        return new ArrayList<>(alerts.values());
+    }
+
+    synchronized Alert get(String id) {
+        return alerts.get(id);
+    }
+
+    /** Alerts with something still to send. */
+    synchronized int pending() {
+        int n = 0;
+        for (Alert alert : alerts.values()) {
+            if (WAITING_FOR_FIX.equals(alert.state) || SENDING.equals(alert.state)
+                    || alert.pendingFix != null || alert.resolvePending) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Live alerts still interested in better fixes. */
+    synchronized int live() {
+        int n = 0;
+        for (Alert alert : alerts.values()) {
+            if (live(alert)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::work, "SosDispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    void stop() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            if (inFlight != null) {
+                inFlight.disconnect();
+            }
+            stopping = worker;
+            worker = null;
+            notifyAll();
+        }
+        if (stopping != null) {
+            stopping.interrupt();
+            try {
+                stopping.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Opens a connection to the backend and leaves it in the keep-alive
+     * pool, so the DNS lookup and TLS handshake are paid before an alert
+     * rather than during one. Returns how long it took, or -1 on failure.
+     */
+    long warm() {
+        Config c = config;
+        if (c.baseUrl == null) {
+            return -1;
+        }
+        long started = System.nanoTime();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(c.baseUrl + WARM_PATH).openConnection();
+            conn.setConnectTimeout(c.connectTimeoutMs);
+            conn.setReadTimeout(c.readTimeoutMs);
+            int status = conn.getResponseCode();
+            // Reading to the end without disconnect() hands the socket back to the pool
+            readBody(status >= 400 ? conn.getErrorStream() : conn.getInputStream());
+            return (System.nanoTime() - started) / 1_000_000;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** The message texted to emergency contacts when the server can't be reached. */
+    static String smsText(String userName, Alert alert) {
+        String who = userName == null || userName.isEmpty() ? "A Cureon user" : userName;
+        StringBuilder text = new StringBuilder("EMERGENCY: ").append(who)
+            .append(AMBULANCE.equals(alert.type) ? " needs an ambulance." : " has triggered an SOS.");
+        SosFix fix = alert.latestFix();
+        if (fix != null) {
+            text.append(" Location: ").append(fix.mapsUrl());
+            if (fix.accuracy > 0) {
+                text.append(" (within ").append(Math.round(fix.accuracy)).append(" m)");
+            }
+            text.append('.');
+        } else {
+            text.append(" Location unavailable.");
+        }
+        if (alert.description != null && !alert.description.isEmpty()) {
+            text.append(' ').append(alert.description);
+        }
+        return text.append(" Please call them, or an ambulance on 108.").toString();
+    }
+
+    private static boolean live(Alert alert) {
+        return WAITING_FOR_FIX.equals(alert.state) || SENDING.equals(alert.state) || SENT.equals(alert.state);
+    }
+
+    private void work() {
+        while (true) {
+            Alert alert;
+            Work work;
+            synchronized (this) {
+                Object[] next = next();
+                if (next == null) {
+                    return;
+                }
+                alert = (Alert) next[0];
+                work = (Work) next[1];
+            }
+            if (work == Work.SMS) {
+                listener.onSmsFallback(alert);
+                continue;
+            }
+            try {
+                send(alert, work);
+            } catch (PermanentFailure e) {
+                refused(alert, work, e.getMessage());
+            } catch (IOException | JSONException e) {
+                retryLater(alert, e.getMessage());
+            }
+        }
+    }
+
+    // Blocks until there is something to do, or returns null once stopped
+    private Object[] next() {
+        while (running) {
+            long now = System.currentTimeMillis();
+            long wakeAt = Long.MAX_VALUE;
+            Config c = config;
+            for (Alert alert : alerts.values()) {
+                boolean unacknowledged = alert.emergencyId == null && !CANCELLED.equals(alert.state);
+                if (unacknowledged && !alert.smsSent) {
+                    long smsAt = FAILED.equals(alert.state) || c.baseUrl == null ? now : alert.triggeredAt + c.smsAfterMs;
+                    if (smsAt <= now) {
+                        alert.smsSent = true;
+                        persist(alert);
+                        return new Object[] { alert, Work.SMS };
+                    }
+                    wakeAt = Math.min(wakeAt, smsAt);
+                }
+                Work work = networkWork(alert);
+                if (work == null || c.baseUrl == null) {
+                    continue;
+                }
+                if (alert.nextAttemptAt > now) {
+                    wakeAt = Math.min(wakeAt, alert.nextAttemptAt);
+                    continue;
+                }
+                return new Object[] { alert, work };
+            }
+            try {
+                if (wakeAt == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(Math.max(1, wakeAt - now));
+                }
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Work networkWork(Alert alert) {
+        if (alert.resolvePending) {
+            return Work.RESOLVE;
+        }
+        if (SENDING.equals(alert.state) && alert.emergencyId == null && alert.pendingFix != null) {
+            return Work.CREATE;
+        }
+        if (SENT.equals(alert.state) && alert.pendingFix != null) {
+            return Work.UPDATE;
+        }
+        return null;
+    }
+
+    private void send(Alert alert, Work work) throws IOException, JSONException {
+        Config c = config;
+        long now = System.currentTimeMillis();
+        SosFix fix;
+        String emergencyId;
+        synchronized (this) {
+            fix = alert.pendingFix;
+            emergencyId = alert.emergencyId;
+        }
+        String method;
+        String path;
+        JSONObject body = new JSONObject();
+        if (work == Work.CREATE) {
+            method = "POST";
+            path = EMERGENCY_PATH + alert.type;
+            body.put("clientId", alert.id)
+                .put("location", fix.toLocation(now))
+                .put("description", alert.description)
+                .put("severity", alert.severity)
+                .put("emergencyType", alert.emergencyType)
+                .put("triggeredAt", alert.triggeredAt);
+        } else if (work == Work.UPDATE) {
+            method = "PUT";
+            path = EMERGENCY_PATH + emergencyId + "/update-location";
+            body.put("location", fix.toLocation(now));
+        } else {
+            method = "PUT";
+            path = EMERGENCY_PATH + emergencyId + "/resolve";
+            body.put("notes", "Cancelled by the patient from the app");
+        }
+
+        String response = request(c, method, path, body);
+
+        boolean changed = false;
+        boolean acknowledged = false;
+        synchronized (this) {
+            alert.failures = 0;
+            alert.error = null;
+            if (work == Work.RESOLVE) {
+                alert.resolvePending = false;
+            } else if (!CANCELLED.equals(alert.state)) {
+                if (work == Work.CREATE) {
+                    JSONObject emergency = new JSONObject(response).optJSONObject("emergency");
+                    alert.emergencyId = emergency != null ? emergency.optString("_id", null) : null;
+                    if (alert.emergencyId == null) {
+                        throw new PermanentFailure("No emergency ID in the response");
+                    }
+                    alert.ackedAt = System.currentTimeMillis();
+                    alert.state = SENT;
+                    acknowledged = true;
+                } else {
+                    alert.updates++;
+                }
+                alert.sentFix = fix;
+                // A newer fix may have arrived while this one was in flight
+                if (alert.pendingFix == fix) {
+                    alert.pendingFix = null;
+                }
+                changed = true;
+            } else if (work == Work.CREATE) {
+                // Cancelled while the alert was in flight: the server has it, so resolve it there
+                JSONObject emergency = new JSONObject(response).optJSONObject("emergency");
+                alert.emergencyId = emergency != null ? emergency.optString("_id", null) : null;
+                alert.resolvePending = alert.emergencyId != null;
+            }
+            persist(alert);
+        }
+        if (acknowledged) {
+            listener.onAcknowledged(alert);
+        }
+        if (changed) {
+            listener.onChanged(alert);
+        }
+    }
+
+    private String request(Config c, String method, String path, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) new URL(c.baseUrl + path).openConnection();
+        synchronized (this) {
+            if (!running) {
+                throw new IOException("Dispatcher stopped");
+            }
+            inFlight = conn;
+        }
+        try {
+            conn.setRequestMethod(method);
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(c.connectTimeoutMs);
+            conn.setReadTimeout(c.readTimeoutMs);
+            conn.setFixedLengthStreamingMode(bytes.length);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Accept", "application/json");
+            if (c.token != null && !c.token.isEmpty()) {
+                conn.setRequestProperty("Authorization", "Bearer " + c.token);
+            }
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+            int status = conn.getResponseCode();
+            // Read fully so the connection goes back to the keep-alive pool for the follow-ups
+            String response = readBody(status >= 400 ? conn.getErrorStream() : conn.getInputStream());
+            if (status >= 200 && status < 300) {
+                return response;
+            }
+            if (status == 408 || status == 429 || status >= 500) {
+                throw new IOException("HTTP " + status);
+            }
+            throw new PermanentFailure("HTTP " + status + (response.isEmpty() ? "" : ": " + response));
+        } finally {
+            synchronized (this) {
+                inFlight = null;
+            }
+        }
+    }
+
+    private void retryLater(Alert alert, String error) {
+        synchronized (this) {
+            alert.failures++;
+            alert.error = error;
+            long backoff = Math.min(config.maxBackoffMs,
+                config.initialBackoffMs << Math.min(20, alert.failures - 1));
+            double spread = 1 + config.jitter * (2 * random.nextDouble() - 1);
+            alert.nextAttemptAt = System.currentTimeMillis() + (long) (backoff * spread);
+            persist(alert);
+        }
+        listener.onChanged(alert);
+    }
+
+    private void refused(Alert alert, Work work, String error) {
+        synchronized (this) {
+            alert.error = error;
+            if (work == Work.CREATE) {
+                if (!CANCELLED.equals(alert.state)) {
+                    // The SMS fallback picks this up on the next pass
+                    alert.state = FAILED;
+                }
+                alert.pendingFix = null;
+            } else if (work == Work.UPDATE) {
+                alert.pendingFix = null;
+            } else {
+                alert.resolvePending = false;
+            }
+            persist(alert);
+            notifyAll();
+        }
+        listener.onChanged(alert);
+    }
+
+    private void persist(Alert alert) {
+        Properties p = new Properties();
+        p.setProperty("type", alert.type);
+        put(p, "description", alert.description);
+        put(p, "severity", alert.severity);
+        put(p, "emergencyType", alert.emergencyType);
+        p.setProperty("triggeredAt", Long.toString(alert.triggeredAt));
+        p.setProperty("state", alert.state);
+        put(p, "emergencyId", alert.emergencyId);
+        putFix(p, "sentFix", alert.sentFix);
+        putFix(p, "pendingFix", alert.pendingFix);
+        p.setProperty("resolvePending", Boolean.toString(alert.resolvePending));
+        p.setProperty("smsSent", Boolean.toString(alert.smsSent));
+        p.setProperty("failures", Integer.toString(alert.failures));
+        p.setProperty("updates", Integer.toString(alert.updates));
+        p.setProperty("ackedAt", Long.toString(alert.ackedAt));
+        p.setProperty("firstFixAgeMs", Long.toString(alert.firstFixAgeMs));
+        put(p, "error", alert.error);
+        dir.mkdirs();
+        File target = new File(dir, alert.id + SUFFIX);
+        File tmp = new File(dir, alert.id + SUFFIX + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, null);
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+        }
+    }
+
+    private void load() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        List<Alert> loaded = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (File f : files) {
+            String id = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+            Properties p = new Properties();
+            try (InputStream in = new FileInputStream(f)) {
+                p.load(in);
+                Alert alert = new Alert(id, p.getProperty("type"), p.getProperty("description"),
+                    p.getProperty("severity"), p.getProperty("emergencyType"),
+                    Long.parseLong(p.getProperty("triggeredAt")));
+                if (now - alert.triggeredAt > config.keepMs) {
+                    f.delete();
+                    continue;
+                }
+                alert.state = p.getProperty("state", SENDING);
+                alert.emergencyId = p.getProperty("emergencyId");
+                alert.sentFix = fix(p, "sentFix");
+                alert.pendingFix = fix(p, "pendingFix");
+                alert.resolvePending = Boolean.parseBoolean(p.getProperty("resolvePending"));
+                alert.smsSent = Boolean.parseBoolean(p.getProperty("smsSent"));
+                alert.failures = Integer.parseInt(p.getProperty("failures", "0"));
+                alert.updates = Integer.parseInt(p.getProperty("updates", "0"));
+                alert.ackedAt = Long.parseLong(p.getProperty("ackedAt", "0"));
+                alert.firstFixAgeMs = Long.parseLong(p.getProperty("firstFixAgeMs", "-1"));
+                alert.error = p.getProperty("error");
+                loaded.add(alert);
+            } catch (IOException | RuntimeException e) {
+                f.delete();
+            }
+        }
+        loaded.sort((a, b) -> Long.compare(a.triggeredAt, b.triggeredAt));
+        for (Alert alert : loaded) {
+            alerts.put(alert.id, alert);
+        }
+    }
+
+    private static void put(Properties p, String key, String value) {
+        if (value != null) {
+            p.setProperty(key, value);
+        }
+    }
+
+    private static void putFix(Properties p, String prefix, SosFix fix) {
+        if (fix == null) {
+            return;
+        }
+        p.setProperty(prefix + ".latitude", Double.toString(fix.latitude));
+        p.setProperty(prefix + ".longitude", Double.toString(fix.longitude));
+        p.setProperty(prefix + ".accuracy", Float.toString(fix.accuracy));
+        p.setProperty(prefix + ".time", Long.toString(fix.time));
+        p.setProperty(prefix + ".provider", fix.provider);
+    }
+
+    private static SosFix fix(Properties p, String prefix) {
+        String latitude = p.getProperty(prefix + ".latitude");
+        if (latitude == null) {
+            return null;
+        }
+        return new SosFix(Double.parseDouble(latitude), Double.parseDouble(p.getProperty(prefix + ".longitude")),
+            Float.parseFloat(p.getProperty(prefix + ".accuracy", "0")),
+            Long.parseLong(p.getProperty(prefix + ".time", "0")), p.getProperty(prefix + ".provider"));
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = stream.read(buf)) != -1) {
+                if (out.size() < MAX_RESPONSE_BYTES) {
+                    out.write(buf, 0, n);
+                }
+            }
+            return out.toString("UTF-8");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.cureon.telemed;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A location fix as SOS sends it, and the two decisions made about fixes:
+ * which cached one to send straight away, and whether a fresher one is worth
+ * a follow-up update.
+ */
+final class SosFix {
+    /** Fixes older than this are only used when nothing newer exists. */
+    static final long FRESH_MS = 2 * 60_000;
+    /** A follow-up is sent when accuracy improves by at least this factor... */
+    static final float ACCURACY_GAIN = 0.7f;
+    /** ...or the patient has moved farther than this and the old accuracy. */
+    static final float MOVED_METERS = 50;
+
+    private static final double EARTH_RADIUS_M = 6_371_000;
+
+    final double latitude;
+    final double longitude;
+    /** Radius in meters, or 0 when the provider gave none. */
+    final float accuracy;
+    /** Wall-clock time of the fix. */
+    final long time;
+    final String provider;
+
+    SosFix(double latitude, double longitude, float accuracy, long time, String provider) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.time = time;
+        this.provider = provider == null ? "" : provider;
+    }
+
+    /**
+     * The fix to send now: the most accurate of the fresh ones, or failing
+     * that the newest of any age. Null entries are skipped; null if none.
+     */
+    static SosFix best(List<SosFix> fixes, long now) {
+        SosFix best = null;
+        for (SosFix fix : fixes) {
+            if (fix == null) {
+                continue;
+            }
+            if (best == null) {
+                best = fix;
+                continue;
+            }
+            boolean fresh = now - fix.time <= FRESH_MS;
+            boolean bestFresh = now - best.time <= FRESH_MS;
+            if (fresh != bestFresh) {
+                if (fresh) {
+                    best = fix;
+                }
+            } else if (fresh ? radius(fix) < radius(best) : fix.time > best.time) {
+                best = fix;
+            }
+        }
+        return best;
+    }
+
+    /** Whether {@code candidate} tells responders something {@code sent} didn't. */
+    static boolean worthSending(SosFix candidate, SosFix sent) {
+        if (candidate == null) {
+            return false;
+        }
+        if (sent == null) {
+            return true;
+        }
+        if (candidate.time <= sent.time) {
+            return false;
+        }
+        if (radius(candidate) <= radius(sent) * ACCURACY_GAIN) {
+            return true;
+        }
+        return distance(candidate, sent) > Math.max(MOVED_METERS, radius(sent));
+    }
+
+    /** Haversine distance in meters. */
+    static double distance(SosFix a, SosFix b) {
+        double dLat = Math.toRadians(b.latitude - a.latitude);
+        double dLon = Math.toRadians(b.longitude - a.longitude);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(a.latitude)) * Math.cos(Math.toRadians(b.latitude))
+            * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    /** The {@code location} object the emergency routes expect. */
+    JSONObject toLocation(long now) throws JSONException {
+        return new JSONObject()
+            .put("latitude", latitude)
+            .put("longitude", longitude)
+            .put("accuracy", Math.round(accuracy))
+            .put("address", String.format(Locale.US, "%.6f, %.6f", latitude, longitude))
+            .put("fixAgeSeconds", Math.max(0, (now - time) / 1000))
+            .put("provider", provider);
+    }
+
+    /** A maps link an SMS recipient can open. */
+    String mapsUrl() {
+        return String.format(Locale.US, "https://maps.google.com/?q=%.6f,%.6f", latitude, longitude);
+    }
+
+    // No accuracy ranks below any reported one
+    private static float radius(SosFix fix) {
+        return fix.accuracy > 0 ? fix.accuracy : Float.MAX_VALUE / 2;
+    }
+}
@@ -0,0 +1,160 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.annotation.Permission;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The page's side of {@link SosService}: trigger and cancel alerts, warm up
+ * before the patient reaches the button, and follow delivery through
+ * {@code sosUpdate} events.
+ */
+@CapacitorPlugin(
+    name = "Sos",
+    permissions = {
+        @Permission(alias = "location", strings = { Manifest.permission.ACCESS_FINE_LOCATION }),
+        @Permission(alias = "sms", strings = { Manifest.permission.SEND_SMS })
+    }
+)
+public class SosPlugin extends Plugin implements SosService.Listener {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void load() {
+        SosService.startPassive(getContext());
+        // An alert left unsent by a killed process carries on
+        SosService.resume(getContext());
+        SosService.addListener(this);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        SosService.removeListener(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void onAlertChanged(SosDispatcher.Alert alert) {
+        notifyListeners("sosUpdate", toJs(alert));
+    }
+
+    /**
+     * Who the SMS fallback texts and what it calls the patient; call after
+     * login and whenever the emergency contacts change.
+     */
+    @PluginMethod
+    public void configure(PluginCall call) {
+        JSArray contacts = call.getArray("contacts", new JSArray());
+        getContext().getSharedPreferences(SosService.PREFS, Context.MODE_PRIVATE).edit()
+            .putString("userName", call.getString("userName", ""))
+            .putString("contacts", contacts.toString())
+            .apply();
+        SosService.reconfigure(getContext());
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /** Warms the backend connection and location cache; call when the SOS screen opens. */
+    @PluginMethod
+    public void prepare(PluginCall call) {
+        executor.execute(() -> {
+            long warmMs = SosService.prepare(getContext());
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("warmMs", warmMs);
+            result.put("locationPermission", SosService.hasLocationPermission(getContext()));
+            call.resolve(result);
+        });
+    }
+
+    /** Sends straight away with the best cached fix; resolves once the alert is on disk, not when delivered. */
+    @PluginMethod
+    public void trigger(PluginCall call) {
+        long started = SystemClock.elapsedRealtime();
+        String id = SosService.trigger(getContext(), call.getString("type", SosDispatcher.SOS),
+            call.getString("description", ""), call.getString("severity", "high"),
+            call.getString("emergencyType"));
+        SosDispatcher.Alert alert = SosService.dispatcher(getContext()).get(id);
+        JSObject result = toJs(alert);
+        result.put("success", true);
+        result.put("triggerMs", SystemClock.elapsedRealtime() - started);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String id = call.getString("alertId");
+        if (id == null || id.isEmpty()) {
+            call.reject("alertId is required");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("success", SosService.cancel(getContext(), id));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        JSArray alerts = new JSArray();
+        for (SosDispatcher.Alert alert : SosService.dispatcher(getContext()).alerts()) {
+            alerts.put(toJs(alert));
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("alerts", alerts);
+        call.resolve(result);
+    }
+
+    /** On logout: forget the contacts and name used for SMS. */
+    @PluginMethod
+    public void clear(PluginCall call) {
+        getContext().getSharedPreferences(SosService.PREFS, Context.MODE_PRIVATE).edit()
+            .remove("userName")
+            .remove("contacts")
+            .apply();
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    private JSObject toJs(SosDispatcher.Alert alert) {
+        // Alert fields are guarded by the dispatcher
+        synchronized (SosService.dispatcher(getContext())) {
+            return toJsLocked(alert);
+        }
+    }
+
+    private static JSObject toJsLocked(SosDispatcher.Alert alert) {
+        JSObject js = new JSObject();
+        js.put("alertId", alert.id);
+        js.put("type", alert.type);
+        js.put("state", alert.state);
+        js.put("emergencyId", alert.emergencyId);
+        js.put("triggeredAt", alert.triggeredAt);
+        js.put("latencyMs", alert.latencyMs());
+        js.put("fixAgeMs", alert.firstFixAgeMs);
+        SosFix fix = alert.latestFix();
+        if (fix != null) {
+            js.put("latitude", fix.latitude);
+            js.put("longitude", fix.longitude);
+            js.put("accuracy", Math.round(fix.accuracy));
+        }
+        js.put("updates", alert.updates);
+        js.put("smsSent", alert.smsSent);
+        js.put("failures", alert.failures);
+        js.put("error", alert.error);
+        return js;
+    }
+}
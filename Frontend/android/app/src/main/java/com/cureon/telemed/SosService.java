@@ -0,0 +1,432 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sends SOS and ambulance alerts without the WebView. Triggering records the
+ * alert with the best location already on the phone and hands it to
+ * {@link SosDispatcher}, which sends it at once over a connection
+ * {@link #prepare} kept warm. A foreground service then streams GPS and
+ * network fixes for {@link #REFINE_MS}, each better one going out as a
+ * location update, and texts the emergency contacts if the server hasn't
+ * acknowledged in time.
+ *
+ * <p>The last known location is cached cheaply while the app runs: a passive
+ * listener rides on fixes other apps request, and every fix is kept in
+ * SharedPreferences for a cold start. Backend URL and token come from the
+ * reading journal's settings, as for {@link HealthAlerts}.
+ */
+public class SosService extends Service {
+    private static final String TAG = "SosService";
+    static final String PREFS = "sos";
+    private static final String JOURNAL_PREFS = "reading_journal";
+    private static final String CHANNEL_ID = "sos";
+    private static final int NOTIFICATION_ID = 4401;
+    private static final int SMS_NOTIFICATION_ID = 4402;
+    /** How long after a trigger better fixes are still sought and sent. */
+    static final long REFINE_MS = 3 * 60_000;
+    private static final long FIX_INTERVAL_MS = 2_000;
+    private static final long PASSIVE_INTERVAL_MS = 60_000;
+
+    static final String ACTION_TRIGGER = "com.cureon.telemed.action.SOS";
+    static final String ACTION_CANCEL = "com.cureon.telemed.action.CANCEL_SOS";
+    static final String EXTRA_TYPE = "type";
+    static final String EXTRA_DESCRIPTION = "description";
+    static final String EXTRA_SEVERITY = "severity";
+    static final String EXTRA_EMERGENCY_TYPE = "emergencyType";
+    static final String EXTRA_ALERT_ID = "alertId";
+    static final String EMERGENCY_NUMBER = "108";
+
+    private static final int TRACE_TRIGGER = PerfTrace.shared().name("sos.trigger");
+    private static final int TRACE_ACK = PerfTrace.shared().name("sos.ackMs");
+    private static final int TRACE_FIX_AGE = PerfTrace.shared().name("sos.fixAgeMs");
+    private static final int TRACE_SMS = PerfTrace.shared().name("sos.smsFallback");
+
+    interface Listener {
+        void onAlertChanged(SosDispatcher.Alert alert);
+    }
+
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static SosDispatcher dispatcher;
+    private static LocationListener passive;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Runnable refineOver = this::stopIfIdle;
+    private final LocationListener active = this::onLocation;
+    private boolean locating;
+
+    /** The process-wide dispatcher, started on first use. */
+    static synchronized SosDispatcher dispatcher(Context context) {
+        if (dispatcher == null) {
+            Context app = context.getApplicationContext();
+            dispatcher = new SosDispatcher(new File(app.getFilesDir(), "sos"), config(app), new SosDispatcher.Listener() {
+                @Override
+                public void onChanged(SosDispatcher.Alert alert) {
+                    for (Listener listener : listeners) {
+                        listener.onAlertChanged(alert);
+                    }
+                }
+
+                @Override
+                public void onAcknowledged(SosDispatcher.Alert alert) {
+                    PerfTrace.shared().instant(TRACE_ACK, alert.latencyMs());
+                    Log.i(TAG, "SOS acknowledged " + alert.latencyMs() + "ms after trigger, fix "
+                        + alert.firstFixAgeMs + "ms old");
+                }
+
+                @Override
+                public void onSmsFallback(SosDispatcher.Alert alert) {
+                    PerfTrace.shared().instant(TRACE_SMS, System.currentTimeMillis() - alert.triggeredAt);
+                    sendSms(app, alert);
+                }
+            }, new SecureRandom());
+            dispatcher.start();
+        }
+        return dispatcher;
+    }
+
+    /** Call after the journal settings change (login), so alerts use the fresh token. */
+    static void reconfigure(Context context) {
+        dispatcher(context).setConfig(config(context));
+    }
+
+    static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Warms the backend connection and the location cache, e.g. when the SOS
+     * screen opens. Blocking; returns the connection warm-up time or -1.
+     */
+    static long prepare(Context context) {
+        startPassive(context);
+        return dispatcher(context).warm();
+    }
+
+    /** Records an alert and sends it with the best fix on hand; returns its ID. */
+    static String trigger(Context context, String type, String description, String severity, String emergencyType) {
+        PerfTrace.shared().begin(TRACE_TRIGGER);
+        try {
+            Context app = context.getApplicationContext();
+            SosFix fix = SosFix.best(cachedFixes(app), System.currentTimeMillis());
+            SosDispatcher.Alert alert = dispatcher(app).trigger(type, description,
+                severity == null || severity.isEmpty() ? "high" : severity, emergencyType, fix);
+            if (fix != null) {
+                PerfTrace.shared().instant(TRACE_FIX_AGE, alert.firstFixAgeMs);
+            }
+            start(app, null);
+            return alert.id;
+        } finally {
+            PerfTrace.shared().end(TRACE_TRIGGER);
+        }
+    }
+
+    static boolean cancel(Context context, String alertId) {
+        boolean cancelled = dispatcher(context).cancel(alertId);
+        start(context, null);
+        return cancelled;
+    }
+
+    /** Keeps the service up after a restart while anything is left to send. */
+    static void resume(Context context) {
+        if (dispatcher(context).pending() > 0) {
+            start(context, null);
+        }
+    }
+
+    private static void start(Context context, Intent intent) {
+        try {
+            ContextCompat.startForegroundService(context,
+                intent != null ? intent : new Intent(context, SosService.class));
+        } catch (IllegalStateException e) {
+            // Refused from the background on Android 12+; the dispatcher still sends, just without live fixes
+            Log.w(TAG, "Cannot start SOS service now: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the zero-cost passive listener that keeps the cached fix fresh
+     * while the process lives. Idempotent.
+     */
+    @SuppressLint("MissingPermission")
+    static synchronized void startPassive(Context context) {
+        Context app = context.getApplicationContext();
+        LocationManager manager = app.getSystemService(LocationManager.class);
+        if (passive != null || manager == null || !hasLocationPermission(app)) {
+            return;
+        }
+        passive = location -> remember(app, location);
+        try {
+            manager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, PASSIVE_INTERVAL_MS, 0, passive,
+                Looper.getMainLooper());
+        } catch (RuntimeException e) {
+            passive = null;
+            Log.w(TAG, "Passive location unavailable: " + e.getMessage());
+        }
+    }
+
+    static boolean hasLocationPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED
+            || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static SosDispatcher.Config config(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(JOURNAL_PREFS, Context.MODE_PRIVATE);
+        SosDispatcher.Config config = new SosDispatcher.Config();
+        config.baseUrl = prefs.getString("baseUrl", null);
+        config.token = prefs.getString("token", null);
+        return config;
+    }
+
+    @SuppressLint("MissingPermission")
+    private static List<SosFix> cachedFixes(Context context) {
+        List<SosFix> fixes = new ArrayList<>();
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        if (prefs.contains("latitude")) {
+            fixes.add(new SosFix(Double.longBitsToDouble(prefs.getLong("latitude", 0)),
+                Double.longBitsToDouble(prefs.getLong("longitude", 0)), prefs.getFloat("accuracy", 0),
+                prefs.getLong("time", 0), prefs.getString("provider", "")));
+        }
+        LocationManager manager = context.getSystemService(LocationManager.class);
+        if (manager != null && hasLocationPermission(context)) {
+            for (String provider : manager.getProviders(true)) {
+                try {
+                    fixes.add(fix(manager.getLastKnownLocation(provider)));
+                } catch (RuntimeException e) {
+                    // A provider that went away between the two calls
+                }
+            }
+        }
+        return fixes;
+    }
+
+    private static SosFix fix(Location location) {
+        return location == null ? null : new SosFix(location.getLatitude(), location.getLongitude(),
+            location.hasAccuracy() ? location.getAccuracy() : 0, location.getTime(), location.getProvider());
+    }
+
+    private static void remember(Context context, Location location) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        SosFix fix = fix(location);
+        // Keep the more useful of the cached and new fix
+        if (fix == null || (prefs.contains("time") && SosFix.best(Arrays.asList(
+                new SosFix(0, 0, prefs.getFloat("accuracy", 0), prefs.getLong("time", 0), ""), fix),
+                System.currentTimeMillis()) != fix)) {
+            return;
+        }
+        prefs.edit()
+            .putLong("latitude", Double.doubleToRawLongBits(fix.latitude))
+            .putLong("longitude", Double.doubleToRawLongBits(fix.longitude))
+            .putFloat("accuracy", fix.accuracy)
+            .putLong("time", fix.time)
+            .putString("provider", fix.provider)
+            .apply();
+    }
+
+    private static void sendSms(Context context, SosDispatcher.Alert alert) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        List<String> phones = new ArrayList<>();
+        try {
+            JSONArray contacts = new JSONArray(prefs.getString("contacts", "[]"));
+            for (int i = 0; i < contacts.length(); i++) {
+                String phone = contacts.getJSONObject(i).optString("phone");
+                if (!phone.isEmpty()) {
+                    phones.add(phone);
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Bad emergency contacts: " + e.getMessage());
+        }
+        String text = SosDispatcher.smsText(prefs.getString("userName", ""), alert);
+        if (!phones.isEmpty() && ContextCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS)
+                == PackageManager.PERMISSION_GRANTED) {
+            SmsManager sms = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? context.getSystemService(SmsManager.class) : SmsManager.getDefault();
+            ArrayList<String> parts = sms.divideMessage(text);
+            for (String phone : phones) {
+                try {
+                    sms.sendMultipartTextMessage(phone, null, parts, null, null);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "SOS SMS to a contact failed: " + e.getMessage(), e);
+                }
+            }
+            Log.i(TAG, "SOS texted to " + phones.size() + " contacts");
+            return;
+        }
+        // No permission to send silently: one tap opens the composer with everything filled in
+        Intent compose = new Intent(Intent.ACTION_SENDTO, Uri.parse("smsto:" + String.join(";", phones)))
+            .putExtra("sms_body", text)
+            .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager != null) {
+            createChannel(context, manager);
+            manager.notify(SMS_NOTIFICATION_ID, new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_notify_error)
+                .setContentTitle(context.getString(R.string.sos_sms_title))
+                .setContentText(context.getString(R.string.sos_sms_text))
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setContentIntent(PendingIntent.getActivity(context, 0, compose,
+                    PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT))
+                .setAutoCancel(true)
+                .build());
+        }
+    }
+
+    private static void createChannel(Context context, NotificationManager manager) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.sos_channel_name), NotificationManager.IMPORTANCE_HIGH));
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            createChannel(this, manager);
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && hasLocationPermission(this)
+                ? ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION : 0);
+
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_TRIGGER.equals(action)) {
+            trigger(this, intent.getStringExtra(EXTRA_TYPE), intent.getStringExtra(EXTRA_DESCRIPTION),
+                intent.getStringExtra(EXTRA_SEVERITY), intent.getStringExtra(EXTRA_EMERGENCY_TYPE));
+        } else if (ACTION_CANCEL.equals(action)) {
+            String id = intent.getStringExtra(EXTRA_ALERT_ID);
+            for (SosDispatcher.Alert alert : dispatcher(this).alerts()) {
+                if (id == null || id.equals(alert.id)) {
+                    dispatcher(this).cancel(alert.id);
+                }
+            }
+        }
+
+        SosDispatcher sos = dispatcher(this);
+        if (sos.live() > 0) {
+            startLocating();
+            main.removeCallbacks(refineOver);
+            main.postDelayed(refineOver, REFINE_MS);
+        } else {
+            stopIfIdle();
+        }
+        return START_REDELIVER_INTENT;
+    }
+
+    private Notification buildNotification() {
+        int flags = PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT;
+        PendingIntent cancel = PendingIntent.getService(this, 0,
+            new Intent(this, SosService.class).setAction(ACTION_CANCEL), flags);
+        PendingIntent call = PendingIntent.getActivity(this, 1,
+            new Intent(Intent.ACTION_DIAL, Uri.parse("tel:" + EMERGENCY_NUMBER)), flags);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.ic_dialog_alert)
+            .setContentTitle(getString(R.string.sos_active_title))
+            .setContentText(getString(R.string.sos_active_text))
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setCategory(NotificationCompat.CATEGORY_ALARM)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .addAction(android.R.drawable.ic_menu_call, getString(R.string.sos_call_emergency, EMERGENCY_NUMBER), call)
+            .addAction(android.R.drawable.ic_menu_close_clear_cancel, getString(R.string.sos_cancel), cancel)
+            .build();
+    }
+
+    @SuppressLint("MissingPermission")
+    private void startLocating() {
+        LocationManager manager = getSystemService(LocationManager.class);
+        if (locating || manager == null || !hasLocationPermission(this)) {
+            return;
+        }
+        for (String provider : new String[] { LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER }) {
+            if (manager.isProviderEnabled(provider)) {
+                try {
+                    manager.requestLocationUpdates(provider, FIX_INTERVAL_MS, 0, active, Looper.getMainLooper());
+                    locating = true;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "No " + provider + " updates: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void onLocation(Location location) {
+        remember(this, location);
+        dispatcher(this).offerFix(fix(location));
+    }
+
+    // Keeps going while an alert still has something to send, without live fixes once refinement is over
+    private void stopIfIdle() {
+        if (locating) {
+            getSystemService(LocationManager.class).removeUpdates(active);
+            locating = false;
+        }
+        if (dispatcher(this).pending() == 0) {
+            stopSelf();
+        } else {
+            main.postDelayed(refineOver, FIX_INTERVAL_MS * 5);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        main.removeCallbacksAndMessages(null);
+        if (locating) {
+            getSystemService(LocationManager.class).removeUpdates(active);
+            locating = false;
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
@@ -0,0 +1,621 @@
+package com.cureon.telemed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Persistent queue of chunked, resumable file uploads.
+ *
+ * <p>Each file is sent as a series of multipart POSTs that share an
+ * {@code X-Unique-Upload-Id} and carry a {@code Content-Range}, the protocol
+ * Cloudinary's chunked upload speaks. The offset the server has acknowledged
+ * is written to disk after every chunk, so a dropped connection costs at most
+ * one chunk and a killed process picks up where it stopped. Chunks are read
+ * from a FileChannel into a small reused buffer and streamed with a fixed
+ * content length; a file is never held in memory.
+ *
+ * <p>Up to {@code maxConcurrent} uploads run at once, at most
+ * {@code perHostLimit} of them against the same host. Network errors, 408,
+ * 429 and 5xx back off exponentially with jitter and retry; other 4xx fail
+ * the task.
+ */
+final class UploadQueue {
+    static final String QUEUED = "queued";
+    static final String UPLOADING = "uploading";
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+    static final String CANCELLED = "cancelled";
+
+    private static final String SUFFIX = ".task";
+    private static final int MAX_RESPONSE_BYTES = 256 * 1024;
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+    // Progress callbacks at most this often per task
+    private static final long PROGRESS_STEP_BYTES = 256 * 1024;
+
+    interface Listener {
+        void onProgress(Task task, long sentBytes);
+
+        void onStateChanged(Task task);
+    }
+
+    static final class Config {
+        int maxConcurrent = 3;
+        int perHostLimit = 2;
+        // Cloudinary wants at least 5 MB per chunk except the last
+        int chunkBytes = 6 * 1024 * 1024;
+        long initialBackoffMs = 2_000;
+        long maxBackoffMs = 5 * 60_000;
+        double jitter = 0.2;
+        int maxFailures = 30;
+        int timeoutMs = 60_000;
+        // Finished tasks stay listed this long so a page that was closed can still collect the result
+        long keepFinishedMs = 7L * 24 * 60 * 60_000;
+    }
+
+    static final class Task {
+        final String id;
+        final File file;
+        final boolean ownsFile;
+        final String url;
+        final String host;
+        final Map<String, String> fields;
+        final String fileName;
+        final String mimeType;
+        final long size;
+        final String uploadId;
+        final long createdAt;
+        // Guarded by the queue
+        long offset;
+        String state;
+        String response;
+        String error;
+        int failures;
+        long nextAttemptAt;
+        long finishedAt;
+
+        Task(String id, File file, boolean ownsFile, String url, Map<String, String> fields, String fileName,
+                String mimeType, long size, String uploadId, long createdAt) {
+            this.id = id;
+            this.file = file;
+            this.ownsFile = ownsFile;
+            this.url = url;
+            this.host = hostOf(url);
+            this.fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.uploadId = uploadId;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class PermanentFailure extends IOException {
+        PermanentFailure(String message) {
+            super(message);
+        }
+    }
+
+    private final File dir;
+    private final Config config;
+    private final Listener listener;
+    private final Random random;
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final Map<String, Integer> activePerHost = new HashMap<>();
+    private final Map<String, HttpURLConnection> connections = new HashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    // Stopped workers that may still be finishing a chunk
+    private final List<Thread> retired = new ArrayList<>();
+    private boolean running;
+    private int active;
+
+    UploadQueue(File dir, Config config, Listener listener, Random random) {
+        this.dir = dir;
+        this.config = config;
+        this.listener = listener;
+        this.random = random;
+        load();
+    }
+
+    /**
+     * Queues {@code file} for upload to {@code url} with the given form
+     * fields. With {@code ownsFile} the queue deletes the file once the upload
+     * is finished or cancelled.
+     */
+    Task enqueue(File file, boolean ownsFile, String url, Map<String, String> fields, String fileName,
+            String mimeType) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("No such file: " + file);
+        }
+        if (hostOf(url) == null) {
+            throw new IOException("Invalid upload URL: " + url);
+        }
+        if (file.length() == 0) {
+            // A Content-Range can't describe zero bytes
+            throw new IOException("Empty file: " + file);
+        }
+        Task task = new Task(UUID.randomUUID().toString(), file, ownsFile, url, fields, fileName, mimeType,
+            file.length(), UUID.randomUUID().toString().replace("-", ""), System.currentTimeMillis());
+        synchronized (this) {
+            task.state = QUEUED;
+            persist(task);
+            tasks.put(task.id, task);
+            notifyAll();
+        }
+        listener.onStateChanged(task);
+        return task;
+    }
+
+    synchronized List<Task> tasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    synchronized Task get(String id) {
+        return tasks.get(id);
+    }
+
+    /** Queued or uploading tasks left. */
+    synchronized int pending() {
+        int n = 0;
+        for (Task task : tasks.values()) {
+            if (QUEUED.equals(task.state) || UPLOADING.equals(task.state)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Stops and forgets a task; an upload in flight is aborted. */
+    boolean cancel(String id) {
+        Task task;
+        HttpURLConnection connection;
+        synchronized (this) {
+            task = tasks.remove(id);
+            if (task == null) {
+                return false;
+            }
+            task.state = CANCELLED;
+            connection = connections.get(id);
+            notifyAll();
+        }
+        if (connection != null) {
+            connection.disconnect();
+        }
+        forget(task);
+        listener.onStateChanged(task);
+        return true;
+    }
+
+    /** Drops a finished task once its result has been collected. */
+    boolean remove(String id) {
+        synchronized (this) {
+            Task task = tasks.get(id);
+            if (task == null || !(DONE.equals(task.state) || FAILED.equals(task.state))) {
+                return false;
+            }
+            tasks.remove(id);
+            forget(task);
+            return true;
+        }
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < config.maxConcurrent; i++) {
+            Thread worker = new Thread(this::work, "UploadQueue-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the workers without waiting for them, so it is safe on the main
+     * thread. Uploads in flight resume from their last acknowledged chunk on
+     * the next start; a worker still finishing a chunk exits without taking
+     * another task, even if the queue has been started again.
+     */
+    void stop() {
+        List<Thread> stopping;
+        synchronized (this) {
+            running = false;
+            for (HttpURLConnection connection : connections.values()) {
+                connection.disconnect();
+            }
+            stopping = new ArrayList<>(workers);
+            retired.removeIf(worker -> !worker.isAlive());
+            retired.addAll(workers);
+            workers.clear();
+            notifyAll();
+        }
+        for (Thread worker : stopping) {
+            worker.interrupt();
+        }
+    }
+
+    /** Waits up to {@code timeoutMs} for stopped workers to exit; never on the main thread. */
+    boolean awaitStopped(long timeoutMs) throws InterruptedException {
+        List<Thread> stopping;
+        synchronized (this) {
+            stopping = new ArrayList<>(retired);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Thread worker : stopping) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        synchronized (this) {
+            retired.removeAll(stopping);
+        }
+        return true;
+    }
+
+    // Whether the calling worker was stopped; only the workers of the latest start take tasks
+    private boolean retired() {
+        return !workers.contains(Thread.currentThread());
+    }
+
+    private void work() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+        while (true) {
+            Task task = next();
+            if (task == null) {
+                return;
+            }
+            try {
+                upload(task, buffer);
+            } finally {
+                synchronized (this) {
+                    active--;
+                    activePerHost.merge(task.host, -1, Integer::sum);
+                    connections.remove(task.id);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // Blocks until a task may start, or returns null once stopped
+    private synchronized Task next() {
+        while (!retired()) {
+            long now = System.currentTimeMillis();
+            long wakeAt = Long.MAX_VALUE;
+            for (Task task : tasks.values()) {
+                if (!QUEUED.equals(task.state) || activePerHost.getOrDefault(task.host, 0) >= config.perHostLimit) {
+                    continue;
+                }
+                if (task.nextAttemptAt > now) {
+                    wakeAt = Math.min(wakeAt, task.nextAttemptAt);
+                    continue;
+                }
+                task.state = UPLOADING;
+                active++;
+                activePerHost.merge(task.host, 1, Integer::sum);
+                return task;
+            }
+            try {
+                if (wakeAt == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(Math.max(1, wakeAt - now));
+                }
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void upload(Task task, ByteBuffer buffer) {
+        listener.onStateChanged(task);
+        try (FileChannel channel = FileChannel.open(task.file.toPath(), StandardOpenOption.READ)) {
+            while (true) {
+                long start;
+                synchronized (this) {
+                    if (tasks.get(task.id) != task) {
+                        return;
+                    }
+                    if (retired()) {
+                        // The acknowledged offset is already on disk
+                        task.state = QUEUED;
+                        return;
+                    }
+                    start = task.offset;
+                }
+                long end = Math.min(task.size, start + config.chunkBytes) - 1;
+                String body = sendChunk(task, channel, start, end, buffer);
+                synchronized (this) {
+                    if (tasks.get(task.id) != task) {
+                        return;
+                    }
+                    task.offset = end + 1;
+                    task.failures = 0;
+                    if (task.offset >= task.size) {
+                        task.state = DONE;
+                        task.response = body;
+                        task.finishedAt = System.currentTimeMillis();
+                    }
+                    persist(task);
+                }
+                if (task.offset >= task.size) {
+                    if (task.ownsFile) {
+                        task.file.delete();
+                    }
+                    listener.onStateChanged(task);
+                    return;
+                }
+            }
+        } catch (PermanentFailure e) {
+            finishFailed(task, e.getMessage());
+        } catch (IOException e) {
+            retryLater(task, e);
+        }
+    }
+
+    private String sendChunk(Task task, FileChannel channel, long start, long end, ByteBuffer buffer)
+            throws IOException {
+        String boundary = "----cureon" + task.uploadId;
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> field : task.fields.entrySet()) {
+            write(head, "--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + field.getKey()
+                + "\"\r\n\r\n" + field.getValue() + "\r\n");
+        }
+        write(head, "--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\""
+            + task.fileName.replace("\"", "") + "\"\r\nContent-Type: " + task.mimeType + "\r\n\r\n");
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        long chunkLength = end - start + 1;
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(task.url).openConnection();
+        synchronized (this) {
+            if (tasks.get(task.id) != task || retired()) {
+                throw new IOException("Upload stopped");
+            }
+            connections.put(task.id, connection);
+        }
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(config.timeoutMs);
+            connection.setReadTimeout(config.timeoutMs);
+            connection.setFixedLengthStreamingMode(head.size() + chunkLength + tail.length);
+            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+            connection.setRequestProperty("X-Unique-Upload-Id", task.uploadId);
+            connection.setRequestProperty("Content-Range", "bytes " + start + "-" + end + "/" + task.size);
+
+            try (OutputStream out = connection.getOutputStream()) {
+                head.writeTo(out);
+                WritableByteChannel sink = Channels.newChannel(out);
+                long position = start;
+                long reported = start;
+                while (position <= end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end + 1 - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new PermanentFailure("File shrank while uploading");
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        sink.write(buffer);
+                    }
+                    position += read;
+                    if (position - reported >= PROGRESS_STEP_BYTES || position > end) {
+                        reported = position;
+                        listener.onProgress(task, position);
+                    }
+                }
+                out.write(tail);
+            }
+
+            int status = connection.getResponseCode();
+            String body = readBody(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            if (status >= 200 && status < 300) {
+                return body;
+            }
+            if (status == 408 || status == 429 || status >= 500) {
+                throw new IOException("HTTP " + status);
+            }
+            throw new PermanentFailure("HTTP " + status + (body.isEmpty() ? "" : ": " + body));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void retryLater(Task task, IOException e) {
+        boolean gaveUp;
+        synchronized (this) {
+            if (tasks.get(task.id) != task) {
+                return;
+            }
+            if (retired()) {
+                task.state = QUEUED;
+                return;
+            }
+            task.failures++;
+            task.error = e.getMessage();
+            gaveUp = task.failures >= config.maxFailures;
+            if (!gaveUp) {
+                long backoff = Math.min(config.maxBackoffMs,
+                    config.initialBackoffMs << Math.min(20, task.failures - 1));
+                double spread = 1 + config.jitter * (2 * random.nextDouble() - 1);
+                task.nextAttemptAt = System.currentTimeMillis() + (long) (backoff * spread);
+                task.state = QUEUED;
+                persist(task);
+            }
+        }
+        if (gaveUp) {
+            finishFailed(task, e.getMessage());
+        } else {
+            listener.onStateChanged(task);
+        }
+    }
+
+    private void finishFailed(Task task, String error) {
+        synchronized (this) {
+            if (tasks.get(task.id) != task) {
+                return;
+            }
+            task.state = FAILED;
+            task.error = error;
+            task.finishedAt = System.currentTimeMillis();
+            persist(task);
+        }
+        if (task.ownsFile) {
+            task.file.delete();
+        }
+        listener.onStateChanged(task);
+    }
+
+    private void forget(Task task) {
+        new File(dir, task.id + SUFFIX).delete();
+        if (task.ownsFile) {
+            task.file.delete();
+        }
+    }
+
+    private void persist(Task task) {
+        Properties p = new Properties();
+        p.setProperty("file", task.file.getPath());
+        p.setProperty("ownsFile", Boolean.toString(task.ownsFile));
+        p.setProperty("url", task.url);
+        p.setProperty("fileName", task.fileName);
+        p.setProperty("mimeType", task.mimeType);
+        p.setProperty("size", Long.toString(task.size));
+        p.setProperty("uploadId", task.uploadId);
+        p.setProperty("createdAt", Long.toString(task.createdAt));
+        p.setProperty("offset", Long.toString(task.offset));
+        // An upload in flight is simply queued again after a restart
+        p.setProperty("state", UPLOADING.equals(task.state) ? QUEUED : task.state);
+        p.setProperty("failures", Integer.toString(task.failures));
+        p.setProperty("finishedAt", Long.toString(task.finishedAt));
+        if (task.response != null) {
+            p.setProperty("response", task.response);
+        }
+        if (task.error != null) {
+            p.setProperty("error", task.error);
+        }
+        for (Map.Entry<String, String> field : task.fields.entrySet()) {
+            p.setProperty("field." + field.getKey(), field.getValue());
+        }
+        dir.mkdirs();
+        File target = new File(dir, task.id + SUFFIX);
+        File tmp = new File(dir, task.id + SUFFIX + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, null);
+            out.flush();
+            ((FileOutputStream) out).getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+        }
+    }
+
+    private void load() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        List<Task> loaded = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (File f : files) {
+            String id = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+            Properties p = new Properties();
+            try (InputStream in = new FileInputStream(f)) {
+                p.load(in);
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (String name : p.stringPropertyNames()) {
+                    if (name.startsWith("field.")) {
+                        fields.put(name.substring("field.".length()), p.getProperty(name));
+                    }
+                }
+                Task task = new Task(id, new File(p.getProperty("file")),
+                    Boolean.parseBoolean(p.getProperty("ownsFile")), p.getProperty("url"), fields,
+                    p.getProperty("fileName"), p.getProperty("mimeType"), Long.parseLong(p.getProperty("size")),
+                    p.getProperty("uploadId"), Long.parseLong(p.getProperty("createdAt")));
+                task.offset = Long.parseLong(p.getProperty("offset", "0"));
+                task.state = p.getProperty("state", QUEUED);
+                task.failures = Integer.parseInt(p.getProperty("failures", "0"));
+                task.finishedAt = Long.parseLong(p.getProperty("finishedAt", "0"));
+                task.response = p.getProperty("response");
+                task.error = p.getProperty("error");
+                boolean finished = DONE.equals(task.state) || FAILED.equals(task.state);
+                if (finished && now - task.finishedAt > config.keepFinishedMs) {
+                    forget(task);
+                } else if (!finished && (!task.file.isFile() || task.file.length() != task.size)) {
+                    // The bytes are gone or changed; resuming would upload something else
+                    task.state = FAILED;
+                    task.error = "File changed or missing";
+                    task.finishedAt = now;
+                    persist(task);
+                    loaded.add(task);
+                } else {
+                    loaded.add(task);
+                }
+            } catch (IOException | RuntimeException e) {
+                f.delete();
+            }
+        }
+        loaded.sort((a, b) -> Long.compare(a.createdAt, b.createdAt));
+        for (Task task : loaded) {
+            tasks.put(task.id, task);
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = stream.read(buf)) != -1 && out.size() < MAX_RESPONSE_BYTES) {
+                out.write(buf, 0, n);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String hostOf(String url) {
+        try {
+            URL parsed = new URL(url);
+            return parsed.getHost() + ":" + parsed.getPort();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.cureon.telemed;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Foreground service that keeps {@link UploadQueue} running while the app is
+ * in the background, with one progress notification for all uploads. It
+ * stops itself when the queue is empty; START_STICKY and the persisted queue
+ * bring unfinished uploads back after the process is killed.
+ */
+public class UploadService extends Service implements UploadQueue.Listener {
+    private static final String TAG = "UploadService";
+    private static final String CHANNEL_ID = "uploads";
+    private static final int NOTIFICATION_ID = 4101;
+    private static final long NOTIFY_INTERVAL_MS = 500;
+
+    private static UploadQueue queue;
+    private static volatile boolean running;
+    private static final CopyOnWriteArrayList<UploadQueue.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    // Bytes written within the chunk in flight; the queue only records acknowledged chunks
+    private final Map<String, Long> sent = new ConcurrentHashMap<>();
+    private NotificationCompat.Builder notification;
+    private long lastNotifiedAt;
+
+    /** The process-wide queue; tasks and their copied media live under filesDir/uploads. */
+    static synchronized UploadQueue queue(Context context) {
+        if (queue == null) {
+            queue = new UploadQueue(new File(context.getFilesDir(), "uploads"), new UploadQueue.Config(),
+                new UploadQueue.Listener() {
+                    @Override
+                    public void onProgress(UploadQueue.Task task, long sentBytes) {
+                        for (UploadQueue.Listener listener : listeners) {
+                            listener.onProgress(task, sentBytes);
+                        }
+                    }
+
+                    @Override
+                    public void onStateChanged(UploadQueue.Task task) {
+                        for (UploadQueue.Listener listener : listeners) {
+                            listener.onStateChanged(task);
+                        }
+                    }
+                }, new SecureRandom());
+        }
+        return queue;
+    }
+
+    static File mediaDir(Context context) {
+        return new File(context.getFilesDir(), "uploads/media");
+    }
+
+    static void addListener(UploadQueue.Listener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(UploadQueue.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Whether the service is between onCreate and onDestroy, and so owns the running queue. */
+    static boolean isRunning() {
+        return running;
+    }
+
+    /** Starts the service if anything is waiting to upload. */
+    static void start(Context context) {
+        if (queue(context).pending() == 0) {
+            return;
+        }
+        try {
+            ContextCompat.startForegroundService(context, new Intent(context, UploadService.class));
+        } catch (IllegalStateException e) {
+            // Android 12+ refuses from the background; WorkManager may still run the queue
+            Log.w(TAG, "Cannot start upload service now: " + e.getMessage());
+            UploadWorker.schedule(context);
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager != null) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.upload_channel_name), NotificationManager.IMPORTANCE_LOW);
+            manager.createNotificationChannel(channel);
+        }
+        Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.stat_sys_upload)
+            .setContentTitle(getString(R.string.upload_in_progress))
+            .setOnlyAlertOnce(true)
+            .setOngoing(true)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .setProgress(0, 0, true);
+        if (launch != null) {
+            notification.setContentIntent(PendingIntent.getActivity(this, 0, launch,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+        listeners.add(this);
+        running = true;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC : 0);
+        UploadQueue uploads = queue(this);
+        uploads.start();
+        if (uploads.pending() == 0) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        return START_STICKY;
+    }
+
+    // Android 15 caps dataSync services and refuses another until the app is opened; hand over to WorkManager
+    @Override
+    public void onTimeout(int startId, int fgsType) {
+        Log.w(TAG, "Upload service timed out with " + queue(this).pending() + " uploads pending");
+        UploadWorker.schedule(this);
+        stopSelf();
+    }
+
+    @Override
+    public void onDestroy() {
+        running = false;
+        listeners.remove(this);
+        // Doesn't wait for the workers; a chunk in flight is aborted and sent again later
+        queue(this).stop();
+        main.removeCallbacksAndMessages(null);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onProgress(UploadQueue.Task task, long sentBytes) {
+        sent.put(task.id, sentBytes);
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastNotifiedAt >= NOTIFY_INTERVAL_MS) {
+            lastNotifiedAt = now;
+            main.post(this::updateNotification);
+        }
+    }
+
+    @Override
+    public void onStateChanged(UploadQueue.Task task) {
+        if (!UploadQueue.QUEUED.equals(task.state) && !UploadQueue.UPLOADING.equals(task.state)) {
+            sent.remove(task.id);
+        }
+        main.post(() -> {
+            if (queue(this).pending() == 0) {
+                ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+                stopSelf();
+            } else {
+                updateNotification();
+            }
+        });
+    }
+
+    private void updateNotification() {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(NOTIFICATION_ID, buildNotification());
+        }
+    }
+
+    private Notification buildNotification() {
+        long done = 0;
+        long total = 0;
+        int pending = 0;
+        for (UploadQueue.Task task : queue(this).tasks()) {
+            if (UploadQueue.QUEUED.equals(task.state) || UploadQueue.UPLOADING.equals(task.state)) {
+                done += Math.max(task.offset, sent.getOrDefault(task.id, 0L));
+                total += task.size;
+                pending++;
+            }
+        }
+        int percent = total == 0 ? 0 : (int) (100 * done / total);
+        return notification
+            .setContentText(getResources().getQuantityString(R.plurals.upload_pending, pending, pending))
+            .setProgress(100, percent, total == 0)
+            .build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link UploadQueue} when {@link UploadService} can't: after Android 15
+ * times the service out, or when it may not be started from the background.
+ * Each run uploads until the queue is empty or WorkManager stops it, and
+ * asks to be retried while anything is left.
+ */
+public class UploadWorker extends Worker {
+    private static final String NAME = "uploads";
+
+    public UploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /** Queues a run once the device is online; does nothing if one is already queued. */
+    static void schedule(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(UploadWorker.class)
+            .setConstraints(new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 1, TimeUnit.MINUTES)
+            .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        UploadQueue queue = UploadService.queue(getApplicationContext());
+        UploadQueue.Listener listener = new UploadQueue.Listener() {
+            @Override
+            public void onProgress(UploadQueue.Task task, long sentBytes) {
+            }
+
+            @Override
+            public void onStateChanged(UploadQueue.Task task) {
+                synchronized (UploadWorker.this) {
+                    UploadWorker.this.notifyAll();
+                }
+            }
+        };
+        UploadService.addListener(listener);
+        try {
+            synchronized (this) {
+                while (!isStopped() && queue.pending() > 0) {
+                    // Again each time, in case the service started and stopped it meanwhile
+                    queue.start();
+                    // Woken by state changes and onStopped; the timeout is only a safety net
+                    wait(10_000);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            UploadService.removeListener(listener);
+            // The service may have been started meanwhile; its queue is the same one
+            if (!UploadService.isRunning()) {
+                queue.stop();
+            }
+        }
+        return queue.pending() == 0 ? Result.success() : Result.retry();
+    }
+
+    @Override
+    public void onStopped() {
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
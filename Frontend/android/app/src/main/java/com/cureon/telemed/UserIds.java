@@ -0,0 +1,46 @@
+package com.cureon.telemed;
+
+/**
+ * Turns an app user into what Zego accepts: IDs of letters, digits and
+ * underscores, and a non-empty display name.
+ *
+ * <p>Same result as {@code id.replaceAll("[^a-zA-Z0-9_]", "_")}, but without
+ * compiling a pattern per call, and an ID that is already clean (the usual
+ * case, Mongo ObjectIds) comes back as is without allocating.
+ */
+final class UserIds {
+    static final String DEFAULT_NAME = "User";
+
+    private UserIds() {
+    }
+
+    static String sanitize(String id) {
+        if (id == null) {
+            return "";
+        }
+        int length = id.length();
+        int first = 0;
+        while (first < length && allowed(id.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return id;
+        }
+        StringBuilder out = new StringBuilder(length).append(id, 0, first);
+        for (int i = first; i < length; ) {
+            int codePoint = id.codePointAt(i);
+            // The regex matches whole code points, so a surrogate pair becomes one underscore
+            out.append(codePoint < 0x80 && allowed((char) codePoint) ? (char) codePoint : '_');
+            i += Character.charCount(codePoint);
+        }
+        return out.toString();
+    }
+
+    static String displayName(String name) {
+        return name == null || name.isEmpty() ? DEFAULT_NAME : name;
+    }
+
+    private static boolean allowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -0,0 +1,195 @@
+package com.cureon.telemed;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pulls K frames out of a video with the platform (hardware) decoder and
+ * writes them as downscaled JPEGs to the cache directory. Frames are decoded
+ * straight at the target size on API 27+, so a 4K phone recording never
+ * materialises a full-resolution bitmap.
+ */
+final class VideoFrameExtractor {
+    private static final String TAG = "VideoFrameExtractor";
+    // Scene detection compares small thumbnails; 64px is plenty for a histogram
+    private static final int SCENE_PROBE_DIMENSION = 64;
+    private static final int SCENE_CANDIDATES_PER_FRAME = 4;
+
+    static final class Options {
+        int count = 5;
+        boolean sceneChanges;
+        int maxDimension = 1024;
+        int quality = 85;
+    }
+
+    static final class Frame {
+        final File file;
+        final long timeUs;
+        final int width;
+        final int height;
+        final float sceneScore;
+
+        Frame(File file, long timeUs, int width, int height, float sceneScore) {
+            this.file = file;
+            this.timeUs = timeUs;
+            this.width = width;
+            this.height = height;
+            this.sceneScore = sceneScore;
+        }
+    }
+
+    static final class Metadata {
+        long durationUs;
+        int width;
+        int height;
+        int rotation;
+    }
+
+    private VideoFrameExtractor() {
+    }
+
+    static Metadata readMetadata(Context context, Uri uri) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            return readMetadata(retriever);
+        } catch (RuntimeException e) {
+            throw new IOException("Unreadable video: " + e.getMessage(), e);
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private static Metadata readMetadata(MediaMetadataRetriever retriever) {
+        Metadata metadata = new Metadata();
+        metadata.durationUs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION)) * 1000;
+        metadata.width = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+        metadata.height = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+        metadata.rotation = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+        if (metadata.rotation == 90 || metadata.rotation == 270) {
+            int width = metadata.width;
+            metadata.width = metadata.height;
+            metadata.height = width;
+        }
+        return metadata;
+    }
+
+    static List<Frame> extract(Context context, Uri uri, Options options, File outDir) throws IOException {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create " + outDir);
+        }
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            Metadata metadata = readMetadata(retriever);
+            if (metadata.durationUs <= 0 || metadata.width <= 0) {
+                throw new IOException("Video has no decodable track");
+            }
+
+            long[] timesUs;
+            float[] scores;
+            if (options.sceneChanges) {
+                long[] candidates = VideoFrameSampler.uniformTimesUs(metadata.durationUs,
+                    options.count * SCENE_CANDIDATES_PER_FRAME);
+                float[] candidateScores = sceneScores(retriever, metadata, candidates);
+                long minSpacing = metadata.durationUs / (options.count * 2L);
+                int[] picks = VideoFrameSampler.pickSceneChanges(candidateScores, candidates, options.count, minSpacing);
+                timesUs = new long[picks.length];
+                scores = new float[picks.length];
+                for (int i = 0; i < picks.length; i++) {
+                    timesUs[i] = candidates[picks[i]];
+                    scores[i] = candidateScores[picks[i]];
+                }
+            } else {
+                timesUs = VideoFrameSampler.uniformTimesUs(metadata.durationUs, options.count);
+                scores = new float[timesUs.length];
+            }
+
+            int[] size = VideoFrameSampler.targetSize(metadata.width, metadata.height, options.maxDimension);
+            List<Frame> frames = new ArrayList<>(timesUs.length);
+            for (int i = 0; i < timesUs.length; i++) {
+                Bitmap bitmap = frameAt(retriever, timesUs[i], size[0], size[1],
+                    MediaMetadataRetriever.OPTION_CLOSEST);
+                if (bitmap == null) {
+                    Log.w(TAG, "No frame at " + timesUs[i] + "us");
+                    continue;
+                }
+                File file = new File(outDir, String.format("frame_%02d_%d.jpg", i, timesUs[i] / 1000));
+                try (OutputStream out = new FileOutputStream(file)) {
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, options.quality, out);
+                }
+                frames.add(new Frame(file, timesUs[i], bitmap.getWidth(), bitmap.getHeight(), scores[i]));
+                bitmap.recycle();
+            }
+            return frames;
+        } catch (RuntimeException e) {
+            throw new IOException("Frame extraction failed: " + e.getMessage(), e);
+        } finally {
+            retriever.release();
+        }
+    }
+
+    // Scores each candidate by how much its luminance histogram differs from the previous one
+    private static float[] sceneScores(MediaMetadataRetriever retriever, Metadata metadata, long[] candidates) {
+        int[] probe = VideoFrameSampler.targetSize(metadata.width, metadata.height, SCENE_PROBE_DIMENSION);
+        int[] pixels = new int[probe[0] * probe[1]];
+        int[] previous = new int[VideoFrameSampler.HISTOGRAM_BINS];
+        int[] current = new int[VideoFrameSampler.HISTOGRAM_BINS];
+        float[] scores = new float[candidates.length];
+        boolean havePrevious = false;
+
+        for (int i = 0; i < candidates.length; i++) {
+            // Sync frames only: the probe only needs to be roughly in place, and it skips decoding GOPs
+            Bitmap bitmap = frameAt(retriever, candidates[i], probe[0], probe[1],
+                MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (bitmap == null) {
+                continue;
+            }
+            int pixelCount = Math.min(pixels.length, bitmap.getWidth() * bitmap.getHeight());
+            bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(),
+                pixelCount / bitmap.getWidth());
+            bitmap.recycle();
+
+            VideoFrameSampler.lumaHistogram(pixels, pixelCount, current);
+            // The opening frame always counts as a scene
+            scores[i] = havePrevious ? VideoFrameSampler.histogramDistance(previous, current, pixelCount) : 1f;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+            havePrevious = true;
+        }
+        return scores;
+    }
+
+    private static Bitmap frameAt(MediaMetadataRetriever retriever, long timeUs, int width, int height, int option) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            return retriever.getScaledFrameAtTime(timeUs, option, width, height);
+        }
+        Bitmap full = retriever.getFrameAtTime(timeUs, option);
+        if (full == null || (full.getWidth() == width && full.getHeight() == height)) {
+            return full;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(full, width, height, true);
+        full.recycle();
+        return scaled;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
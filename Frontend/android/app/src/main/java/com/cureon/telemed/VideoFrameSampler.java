@@ -0,0 +1,137 @@
+package com.cureon.telemed;
+
+import java.util.Arrays;
+
+/**
+ * Frame selection maths for {@link VideoFrameExtractor}: where to sample,
+ * how far to downscale, and which candidates look like scene changes.
+ * Works on ARGB int arrays so it runs on the JVM without Bitmap.
+ */
+final class VideoFrameSampler {
+    static final int HISTOGRAM_BINS = 32;
+
+    private VideoFrameSampler() {
+    }
+
+    /** Midpoints of {@code count} equal slices, which avoids black first and last frames. */
+    static long[] uniformTimesUs(long durationUs, int count) {
+        long[] times = new long[Math.max(0, count)];
+        if (durationUs <= 0) {
+            return times;
+        }
+        for (int i = 0; i < count; i++) {
+            times[i] = (2L * i + 1) * durationUs / (2L * count);
+        }
+        return times;
+    }
+
+    /**
+     * Output size that fits inside {@code maxDimension} on the long edge,
+     * keeping the aspect ratio and never upscaling. Returns {width, height}.
+     */
+    static int[] targetSize(int width, int height, int maxDimension) {
+        int longEdge = Math.max(width, height);
+        if (maxDimension <= 0 || longEdge <= maxDimension) {
+            return new int[] { width, height };
+        }
+        float scale = (float) maxDimension / longEdge;
+        return new int[] {
+            Math.max(1, Math.round(width * scale)),
+            Math.max(1, Math.round(height * scale))
+        };
+    }
+
+    /** Fills {@code bins} with a luminance histogram of the first {@code length} pixels. */
+    static void lumaHistogram(int[] argb, int length, int[] bins) {
+        Arrays.fill(bins, 0);
+        int shift = 8 - Integer.numberOfTrailingZeros(bins.length);
+        for (int i = 0; i < length; i++) {
+            int p = argb[i];
+            // Rec. 601 weights in fixed point
+            int y = (77 * ((p >> 16) & 0xFF) + 150 * ((p >> 8) & 0xFF) + 29 * (p & 0xFF)) >> 8;
+            bins[y >> shift]++;
+        }
+    }
+
+    /** Normalised L1 distance between two histograms over the same pixel count, in [0, 1]. */
+    static float histogramDistance(int[] a, int[] b, int pixels) {
+        if (pixels <= 0) {
+            return 0f;
+        }
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum / (2f * pixels);
+    }
+
+    /**
+     * Picks {@code k} candidates with the largest scene-change scores while
+     * keeping at least {@code minSpacingUs} between picks, then tops up with
+     * evenly spread candidates if the video has too few cuts. Returns the
+     * chosen candidate indexes in time order.
+     */
+    static int[] pickSceneChanges(float[] scores, long[] timesUs, int k, long minSpacingUs) {
+        int n = scores.length;
+        k = Math.min(k, n);
+        boolean[] picked = new boolean[n];
+        int[] result = new int[k];
+        int count = 0;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Float.compare(scores[y], scores[x]));
+        for (int i = 0; i < n && count < k; i++) {
+            int candidate = order[i];
+            if (scores[candidate] <= 0f || tooClose(timesUs, result, count, timesUs[candidate], minSpacingUs)) {
+                continue;
+            }
+            picked[candidate] = true;
+            result[count++] = candidate;
+        }
+
+        // Fill the remaining slots from an even spread of what is left
+        for (int slot = 0; count < k && slot < k; slot++) {
+            int target = (int) ((2L * slot + 1) * n / (2L * k));
+            int candidate = nearestUnpicked(picked, target);
+            if (candidate < 0) {
+                break;
+            }
+            picked[candidate] = true;
+            result[count++] = candidate;
+        }
+        for (int i = 0; count < k && i < n; i++) {
+            if (!picked[i]) {
+                picked[i] = true;
+                result[count++] = i;
+            }
+        }
+
+        int[] sorted = Arrays.copyOf(result, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static boolean tooClose(long[] timesUs, int[] chosen, int count, long timeUs, long minSpacingUs) {
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(timesUs[chosen[i]] - timeUs) < minSpacingUs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int nearestUnpicked(boolean[] picked, int target) {
+        for (int offset = 0; offset < picked.length; offset++) {
+            if (target - offset >= 0 && !picked[target - offset]) {
+                return target - offset;
+            }
+            if (target + offset < picked.length && !picked[target + offset]) {
+                return target + offset;
+            }
+        }
+        return -1;
+    }
+}
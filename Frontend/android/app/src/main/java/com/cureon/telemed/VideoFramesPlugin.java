@@ -0,0 +1,166 @@
+package com.cureon.telemed;
+
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.activity.result.ActivityResult;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.ActivityCallback;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@CapacitorPlugin(name = "VideoFrames")
+public class VideoFramesPlugin extends Plugin {
+    private static final String TAG = "VideoFramesPlugin";
+    private static final int MAX_FRAMES = 30;
+
+    // One decoder at a time; parallel MediaMetadataRetrievers just fight over the codec
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    protected void handleOnDestroy() {
+        executor.shutdownNow();
+    }
+
+    private File framesRoot() {
+        return new File(getContext().getCacheDir(), "video-frames");
+    }
+
+    @PluginMethod
+    public void pickVideo(PluginCall call) {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("video/*");
+        startActivityForResult(call, intent, "pickVideoResult");
+    }
+
+    @ActivityCallback
+    private void pickVideoResult(PluginCall call, ActivityResult result) {
+        if (call == null) {
+            return;
+        }
+        Intent data = result.getData();
+        if (data == null || data.getData() == null) {
+            call.reject("No video selected");
+            return;
+        }
+        Uri uri = data.getData();
+        executor.execute(() -> {
+            try {
+                VideoFrameExtractor.Metadata metadata = VideoFrameExtractor.readMetadata(getContext(), uri);
+                JSObject video = new JSObject();
+                video.put("uri", uri.toString());
+                video.put("name", displayName(uri));
+                video.put("durationMs", metadata.durationUs / 1000);
+                video.put("width", metadata.width);
+                video.put("height", metadata.height);
+                call.resolve(video);
+            } catch (Exception e) {
+                Log.e(TAG, "Cannot read picked video: " + e.getMessage(), e);
+                call.reject("Failed to read video: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void extractFrames(PluginCall call) {
+        BlobStore store = BlobChannelPlugin.store(getContext());
+        String source = call.getString("uri", "");
+        String blobId = call.getString("blob");
+        Uri uri;
+        if (blobId != null) {
+            // A video the page streamed over the blob channel
+            BlobStore.Entry blob = store.get(blobId);
+            if (blob == null || blob.file == null) {
+                call.reject("Unknown blob");
+                return;
+            }
+            uri = Uri.fromFile(blob.file);
+        } else if (source == null || source.isEmpty()) {
+            call.reject("Invalid uri");
+            return;
+        } else {
+            uri = source.startsWith("/") ? Uri.fromFile(new File(source)) : Uri.parse(source);
+        }
+
+        VideoFrameExtractor.Options options = new VideoFrameExtractor.Options();
+        options.count = Math.max(1, Math.min(MAX_FRAMES, call.getInt("count", options.count)));
+        options.sceneChanges = "scene".equals(call.getString("mode", "uniform"));
+        options.maxDimension = call.getInt("maxDimension", options.maxDimension);
+        options.quality = Math.max(10, Math.min(100, call.getInt("quality", options.quality)));
+
+        executor.execute(() -> {
+            try {
+                File outDir = new File(framesRoot(), Long.toString(System.currentTimeMillis()));
+                List<VideoFrameExtractor.Frame> frames = VideoFrameExtractor.extract(getContext(), uri, options, outDir);
+
+                JSArray list = new JSArray();
+                for (VideoFrameExtractor.Frame frame : frames) {
+                    JSObject entry = new JSObject();
+                    entry.put("path", frame.file.getAbsolutePath());
+                    entry.put("timeMs", frame.timeUs / 1000);
+                    entry.put("width", frame.width);
+                    entry.put("height", frame.height);
+                    entry.put("bytes", frame.file.length());
+                    entry.put("sceneScore", frame.sceneScore);
+                    // Frame files stay with clearFrames; the handle only has to be freed
+                    String id = store.putFile(frame.file, "image/jpeg", false);
+                    entry.put("blob", BlobChannelPlugin.handle(store.get(id)));
+                    list.put(entry);
+                }
+                JSObject result = new JSObject();
+                result.put("frames", list);
+                call.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Frame extraction failed: " + e.getMessage(), e);
+                call.reject("Failed to extract frames: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clearFrames(PluginCall call) {
+        executor.execute(() -> {
+            // Handles first, so the page never gets a 404 for a frame it was given
+            BlobChannelPlugin.store(getContext()).freeUnder(framesRoot());
+            deleteRecursively(framesRoot());
+            JSObject result = new JSObject();
+            result.put("success", true);
+            call.resolve(result);
+        });
+    }
+
+    private String displayName(Uri uri) {
+        try (Cursor cursor = getContext().getContentResolver()
+                .query(uri, new String[] { OpenableColumns.DISPLAY_NAME }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "No display name for " + uri);
+        }
+        return uri.getLastPathSegment();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,378 @@
+package com.cureon.telemed;
+
+/**
+ * Streaming analytics over the vitals a watch or cuff reports, so the phone
+ * can send one summary per window instead of every sample.
+ *
+ * <p>Every sample is handled in O(1): range and motion artifacts are rejected
+ * against the last accepted value, gaps count as dropouts, an EWMA tracks the
+ * baseline and a {@link RollingWindow} keeps the mean and slope of the last
+ * few minutes. RR intervals feed a beat-to-beat HRV window (RMSSD, SDNN)
+ * after ectopic and missed-beat rejection; a rejected beat breaks the chain,
+ * so no successive difference spans it.
+ *
+ * <p>Not thread-safe; {@link VitalsWindowBatcher} calls it under its lock.
+ */
+final class VitalsAnalytics {
+    static final String RISING = "rising";
+    static final String FALLING = "falling";
+    static final String STEADY = "steady";
+
+    /** Plausibility and trend limits for one metric. */
+    static final class Rule {
+        final String name;
+        final float min;
+        final float max;
+        // Largest believable change between consecutive samples: a fixed part plus a part per second
+        final float maxStep;
+        final float maxStepPerSecond;
+        // A gap longer than this is a dropout; 0 for spot measurements that are sparse anyway
+        final long dropoutMs;
+        final long baselineTauMs;
+        final long trendSpanMs;
+        // |slope| per minute above which the trend is rising or falling
+        final float trendSlopePerMinute;
+
+        Rule(String name, float min, float max, float maxStep, float maxStepPerSecond, long dropoutMs,
+                long baselineTauMs, long trendSpanMs, float trendSlopePerMinute) {
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.maxStep = maxStep;
+            this.maxStepPerSecond = maxStepPerSecond;
+            this.dropoutMs = dropoutMs;
+            this.baselineTauMs = baselineTauMs;
+            this.trendSpanMs = trendSpanMs;
+            this.trendSlopePerMinute = trendSlopePerMinute;
+        }
+    }
+
+    // Optical HR jumps of 30+ bpm within a second or two are wrist motion, not the heart
+    static final Rule HEART_RATE = new Rule("heart_rate", 25, 250, 15, 3, 10_000, 10 * 60_000, 10 * 60_000, 0.5f);
+    static final Rule SYSTOLIC = new Rule("systolic", 60, 260, 80, 0, 0, 2 * 60 * 60_000, 60 * 60_000, 0.2f);
+    static final Rule DIASTOLIC = new Rule("diastolic", 30, 160, 50, 0, 0, 2 * 60 * 60_000, 60 * 60_000, 0.15f);
+    // Fahrenheit, as the decoder reports it
+    static final Rule TEMPERATURE = new Rule("temperature", 90, 110, 3, 0, 0, 60 * 60_000, 60 * 60_000, 0.02f);
+
+    static final long HRV_SPAN_MS = 5 * 60_000;
+    static final int HRV_MIN_BEATS = 30;
+    private static final int HRV_CAPACITY = 1024;
+    private static final float RR_MIN_MS = 300;
+    private static final float RR_MAX_MS = 2000;
+    // Malik's rule: a beat more than 20% off the running reference is ectopic or missed
+    private static final float RR_MAX_DEVIATION = 0.2f;
+    private static final float RR_REFERENCE_ALPHA = 0.1f;
+    // After this many rejections in a row the rhythm itself changed; follow it
+    private static final int MAX_CONSECUTIVE_REJECTS = 3;
+
+    /** One metric's stream state. */
+    static final class Metric {
+        final Rule rule;
+        final RollingWindow trend;
+        private long lastTimeMs = -1;
+        private float lastValue = Float.NaN;
+        private double baseline = Double.NaN;
+        private int consecutiveRejects;
+        // Since the last summary
+        private int count;
+        private int rejected;
+        private int dropouts;
+        private double sum;
+        private float min = Float.NaN;
+        private float max = Float.NaN;
+
+        Metric(Rule rule, int capacity) {
+            this.rule = rule;
+            this.trend = new RollingWindow(rule.trendSpanMs, capacity);
+        }
+
+        /** Returns false when the sample was rejected as an artifact. */
+        boolean add(long timeMs, float value) {
+            if (Float.isNaN(value) || value < rule.min || value > rule.max) {
+                rejected++;
+                return false;
+            }
+            if (lastTimeMs >= 0) {
+                long gapMs = timeMs - lastTimeMs;
+                if (rule.dropoutMs > 0 && gapMs > rule.dropoutMs) {
+                    // Contact was lost; the next value can't be judged against the one before the gap
+                    dropouts++;
+                } else {
+                    float allowed = rule.maxStep + rule.maxStepPerSecond * Math.max(0, gapMs) / 1000f;
+                    if (Math.abs(value - lastValue) > allowed && ++consecutiveRejects <= MAX_CONSECUTIVE_REJECTS) {
+                        rejected++;
+                        return false;
+                    }
+                }
+            }
+            consecutiveRejects = 0;
+            if (Double.isNaN(baseline)) {
+                baseline = value;
+            } else {
+                // Time-aware EWMA, so irregular sampling doesn't change its memory
+                double alpha = 1 - Math.exp(-Math.max(0, timeMs - lastTimeMs) / (double) rule.baselineTauMs);
+                baseline += alpha * (value - baseline);
+            }
+            lastTimeMs = timeMs;
+            lastValue = value;
+            trend.add(timeMs, value);
+            count++;
+            sum += value;
+            min = Float.isNaN(min) ? value : Math.min(min, value);
+            max = Float.isNaN(max) ? value : Math.max(max, value);
+            return true;
+        }
+
+        double baseline() {
+            return baseline;
+        }
+
+        Series recent() {
+            Series series = new Series(trend.count());
+            for (int i = 0; i < series.times.length; i++) {
+                series.times[i] = trend.timeAt(i);
+                series.values[i] = trend.valueAt(i);
+            }
+            return series;
+        }
+
+        /** {@link #RISING}, {@link #FALLING}, {@link #STEADY}, or null until half the trend span is covered. */
+        String trendDirection() {
+            double slope = trend.slopePerMinute();
+            if (Double.isNaN(slope) || trend.count() < 3 || trend.coveredMs() < rule.trendSpanMs / 2) {
+                return null;
+            }
+            return slope > rule.trendSlopePerMinute ? RISING
+                : slope < -rule.trendSlopePerMinute ? FALLING : STEADY;
+        }
+
+        MetricSummary summarize() {
+            if (count == 0 && rejected == 0 && dropouts == 0) {
+                return null;
+            }
+            MetricSummary summary = new MetricSummary(rule.name, count, rejected, dropouts,
+                count == 0 ? Float.NaN : (float) (sum / count), min, max, (float) baseline,
+                (float) trend.slopePerMinute(), trendDirection());
+            count = rejected = dropouts = 0;
+            sum = 0;
+            min = max = Float.NaN;
+            return summary;
+        }
+
+        void reset() {
+            trend.clear();
+            lastTimeMs = -1;
+            lastValue = Float.NaN;
+            baseline = Double.NaN;
+            consecutiveRejects = 0;
+            count = rejected = dropouts = 0;
+            sum = 0;
+            min = max = Float.NaN;
+        }
+    }
+
+    /** A copy of samples, oldest first. */
+    static final class Series {
+        final long[] times;
+        final float[] values;
+
+        Series(int size) {
+            times = new long[size];
+            values = new float[size];
+        }
+    }
+
+    static final class MetricSummary {
+        final String name;
+        final int count;
+        final int rejected;
+        final int dropouts;
+        final float mean;
+        final float min;
+        final float max;
+        final float baseline;
+        final float slopePerMinute;
+        final String trend;
+
+        MetricSummary(String name, int count, int rejected, int dropouts, float mean, float min, float max,
+                float baseline, float slopePerMinute, String trend) {
+            this.name = name;
+            this.count = count;
+            this.rejected = rejected;
+            this.dropouts = dropouts;
+            this.mean = mean;
+            this.min = min;
+            this.max = max;
+            this.baseline = baseline;
+            this.slopePerMinute = slopePerMinute;
+            this.trend = trend;
+        }
+    }
+
+    /** Beat-to-beat variability over the last {@link #HRV_SPAN_MS}. */
+    static final class HrvSummary {
+        final int beats;
+        final int rejectedBeats;
+        // NaN until HRV_MIN_BEATS are in the window
+        final float rmssd;
+        final float sdnn;
+        final float meanRr;
+
+        HrvSummary(int beats, int rejectedBeats, float rmssd, float sdnn, float meanRr) {
+            this.beats = beats;
+            this.rejectedBeats = rejectedBeats;
+            this.rmssd = rmssd;
+            this.sdnn = sdnn;
+            this.meanRr = meanRr;
+        }
+    }
+
+    static final class Summary {
+        final MetricSummary heartRate;
+        final MetricSummary systolic;
+        final MetricSummary diastolic;
+        final MetricSummary temperature;
+        final HrvSummary hrv;
+
+        Summary(MetricSummary heartRate, MetricSummary systolic, MetricSummary diastolic,
+                MetricSummary temperature, HrvSummary hrv) {
+            this.heartRate = heartRate;
+            this.systolic = systolic;
+            this.diastolic = diastolic;
+            this.temperature = temperature;
+            this.hrv = hrv;
+        }
+    }
+
+    final Metric heartRate = new Metric(HEART_RATE, 1024);
+    final Metric systolic = new Metric(SYSTOLIC, 128);
+    final Metric diastolic = new Metric(DIASTOLIC, 128);
+    final Metric temperature = new Metric(TEMPERATURE, 256);
+
+    // RR in ms alongside the squared difference to the previous beat, NaN when the chain is broken
+    private final SampleRingBuffer beats = new SampleRingBuffer(HRV_CAPACITY, 2);
+    private double rrSum;
+    private double rrSquares;
+    private double diffSquares;
+    private int diffCount;
+    private int beatEvictions;
+    private float previousRr = Float.NaN;
+    private float rrReference = Float.NaN;
+    private int rrConsecutiveRejects;
+    private int beatsSinceSummary;
+    private int rejectedBeatsSinceSummary;
+
+    /** Returns false when the beat was rejected as an artifact. */
+    boolean addRrInterval(long timeMs, float rrMs) {
+        if (Float.isNaN(rrMs) || rrMs < RR_MIN_MS || rrMs > RR_MAX_MS) {
+            return rejectBeat();
+        }
+        if (!Float.isNaN(rrReference) && Math.abs(rrMs - rrReference) > RR_MAX_DEVIATION * rrReference
+                && ++rrConsecutiveRejects <= MAX_CONSECUTIVE_REJECTS) {
+            previousRr = Float.NaN;
+            rejectedBeatsSinceSummary++;
+            return false;
+        }
+        if (Float.isNaN(rrReference) || rrConsecutiveRejects > MAX_CONSECUTIVE_REJECTS) {
+            rrReference = rrMs;
+        } else {
+            rrReference += RR_REFERENCE_ALPHA * (rrMs - rrReference);
+        }
+        rrConsecutiveRejects = 0;
+
+        while (!beats.isEmpty() && beats.timeAt(0) < timeMs - HRV_SPAN_MS) {
+            removeOldestBeat();
+        }
+        if (beats.size() == beats.capacity()) {
+            removeOldestBeat();
+        }
+        float diffSquare = Float.NaN;
+        if (!Float.isNaN(previousRr)) {
+            float diff = rrMs - previousRr;
+            diffSquare = diff * diff;
+            diffSquares += diffSquare;
+            diffCount++;
+        }
+        beats.add(timeMs, rrMs, diffSquare);
+        rrSum += rrMs;
+        rrSquares += (double) rrMs * rrMs;
+        previousRr = rrMs;
+        beatsSinceSummary++;
+        return true;
+    }
+
+    private boolean rejectBeat() {
+        previousRr = Float.NaN;
+        rejectedBeatsSinceSummary++;
+        return false;
+    }
+
+    // A successive difference belongs to its later beat and leaves the window with it
+    private void removeOldestBeat() {
+        float rr = beats.valueAt(0, 0);
+        float diffSquare = beats.valueAt(0, 1);
+        rrSum -= rr;
+        rrSquares -= (double) rr * rr;
+        if (!Float.isNaN(diffSquare)) {
+            diffSquares -= diffSquare;
+            diffCount--;
+        }
+        beats.removeOldest();
+        if (++beatEvictions >= beats.capacity()) {
+            resumBeats();
+        }
+    }
+
+    private void resumBeats() {
+        beatEvictions = 0;
+        rrSum = rrSquares = diffSquares = 0;
+        diffCount = 0;
+        for (int i = 0; i < beats.size(); i++) {
+            float rr = beats.valueAt(i, 0);
+            rrSum += rr;
+            rrSquares += (double) rr * rr;
+            float diffSquare = beats.valueAt(i, 1);
+            if (!Float.isNaN(diffSquare)) {
+                diffSquares += diffSquare;
+                diffCount++;
+            }
+        }
+    }
+
+    HrvSummary hrv() {
+        int n = beats.size();
+        float mean = n == 0 ? Float.NaN : (float) (rrSum / n);
+        float rmssd = Float.NaN;
+        float sdnn = Float.NaN;
+        if (n >= HRV_MIN_BEATS && diffCount > 0) {
+            rmssd = (float) Math.sqrt(Math.max(0, diffSquares / diffCount));
+            sdnn = (float) Math.sqrt(Math.max(0, rrSquares / n - (double) mean * mean));
+        }
+        return new HrvSummary(beatsSinceSummary, rejectedBeatsSinceSummary, rmssd, sdnn, mean);
+    }
+
+    /** Closes the summary window: per-window counters restart, rolling state carries on. */
+    Summary summarize() {
+        HrvSummary hrv = beatsSinceSummary == 0 && rejectedBeatsSinceSummary == 0 ? null : hrv();
+        beatsSinceSummary = 0;
+        rejectedBeatsSinceSummary = 0;
+        return new Summary(heartRate.summarize(), systolic.summarize(), diastolic.summarize(),
+            temperature.summarize(), hrv);
+    }
+
+    void reset() {
+        heartRate.reset();
+        systolic.reset();
+        diastolic.reset();
+        temperature.reset();
+        beats.clear();
+        rrSum = rrSquares = diffSquares = 0;
+        diffCount = 0;
+        beatEvictions = 0;
+        previousRr = Float.NaN;
+        rrReference = Float.NaN;
+        rrConsecutiveRejects = 0;
+        beatsSinceSummary = 0;
+        rejectedBeatsSinceSummary = 0;
+    }
+}
@@ -0,0 +1,438 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PermissionState;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.annotation.Permission;
+import com.getcapacitor.annotation.PermissionCallback;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@SuppressLint("MissingPermission") // Every entry point goes through ensurePermissions
+@CapacitorPlugin(
+    name = "VitalsMonitor",
+    permissions = {
+        @Permission(alias = "bluetooth", strings = { Manifest.permission.BLUETOOTH_SCAN, Manifest.permission.BLUETOOTH_CONNECT }),
+        @Permission(alias = "location", strings = { Manifest.permission.ACCESS_FINE_LOCATION })
+    }
+)
+public class VitalsMonitorPlugin extends Plugin implements BleVitalsSession.Listener {
+    private static final String TAG = "VitalsMonitorPlugin";
+    private static final long DEFAULT_SCAN_MS = 8000;
+
+    private HandlerThread workerThread;
+    private Handler worker;
+    private VitalsWindowBatcher batcher;
+    private BleVitalsSession session;
+    private String connectedAddress;
+    private volatile boolean monitoring;
+    // With detail off only the summary and sparse spot measurements cross the bridge
+    private volatile boolean includeDetail = true;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!monitoring) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            emitBatch(batcher.flushIfDue(now));
+            worker.postDelayed(this, batcher.msUntilDue(now));
+        }
+    };
+
+    @Override
+    public void load() {
+        workerThread = new HandlerThread("VitalsMonitor");
+        workerThread.start();
+        worker = new Handler(workerThread.getLooper());
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        stopFlushing();
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        if (workerThread != null) {
+            workerThread.quitSafely();
+        }
+    }
+
+    private String permissionAlias() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? "bluetooth" : "location";
+    }
+
+    private boolean ensurePermissions(PluginCall call) {
+        if (getPermissionState(permissionAlias()) == PermissionState.GRANTED) {
+            return true;
+        }
+        requestPermissionForAlias(permissionAlias(), call, "bluetoothPermissionCallback");
+        return false;
+    }
+
+    @PermissionCallback
+    private void bluetoothPermissionCallback(PluginCall call) {
+        if (getPermissionState(permissionAlias()) != PermissionState.GRANTED) {
+            call.reject("Bluetooth permission denied");
+            return;
+        }
+        switch (call.getMethodName()) {
+            case "scan":
+                scan(call);
+                break;
+            case "connect":
+                connect(call);
+                break;
+            default:
+                call.reject("Unsupported method: " + call.getMethodName());
+        }
+    }
+
+    private BluetoothAdapter getAdapter() {
+        BluetoothManager manager = (BluetoothManager) getContext().getSystemService(Context.BLUETOOTH_SERVICE);
+        return manager != null ? manager.getAdapter() : null;
+    }
+
+    @PluginMethod
+    public void scan(PluginCall call) {
+        if (!ensurePermissions(call)) {
+            return;
+        }
+        BluetoothAdapter adapter = getAdapter();
+        if (adapter == null || !adapter.isEnabled()) {
+            call.reject("Bluetooth is turned off");
+            return;
+        }
+        BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            call.reject("Bluetooth LE scanner unavailable");
+            return;
+        }
+
+        long timeoutMs = call.getLong("timeoutMs", DEFAULT_SCAN_MS);
+        Map<String, JSObject> devices = new LinkedHashMap<>();
+        ScanCallback callback = new ScanCallback() {
+            @Override
+            public void onScanResult(int callbackType, ScanResult result) {
+                BluetoothDevice device = result.getDevice();
+                if (device.getName() == null) {
+                    return;
+                }
+                JSObject entry = new JSObject();
+                entry.put("name", device.getName());
+                entry.put("address", device.getAddress());
+                entry.put("rssi", result.getRssi());
+                synchronized (devices) {
+                    devices.put(device.getAddress(), entry);
+                }
+            }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                Log.e(TAG, "Scan failed: " + errorCode);
+            }
+        };
+
+        ScanSettings settings = new ScanSettings.Builder()
+            .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+            .build();
+        scanner.startScan(null, settings, callback);
+        worker.postDelayed(() -> {
+            scanner.stopScan(callback);
+            JSArray list = new JSArray();
+            synchronized (devices) {
+                for (JSObject entry : devices.values()) {
+                    list.put(entry);
+                }
+            }
+            JSObject result = new JSObject();
+            result.put("devices", list);
+            call.resolve(result);
+        }, timeoutMs);
+    }
+
+    @PluginMethod
+    public void connect(PluginCall call) {
+        if (!ensurePermissions(call)) {
+            return;
+        }
+        String address = call.getString("address", "");
+        if (address == null || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            call.reject("Invalid device address");
+            return;
+        }
+        BluetoothAdapter adapter = getAdapter();
+        if (adapter == null || !adapter.isEnabled()) {
+            call.reject("Bluetooth is turned off");
+            return;
+        }
+
+        try {
+            if (session != null) {
+                session.close();
+            }
+            batcher = new VitalsWindowBatcher(call.getLong("windowMs", VitalsWindowBatcher.DEFAULT_WINDOW_MS));
+            session = new BleVitalsSession(batcher, this);
+            session.connect(getContext(), adapter.getRemoteDevice(address));
+            connectedAddress = address;
+
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("message", "Connecting to " + address);
+            call.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "Connect failed: " + e.getMessage(), e);
+            call.reject("Failed to connect: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void startMonitoring(PluginCall call) {
+        if (session == null) {
+            call.reject("Not connected to a device");
+            return;
+        }
+        stopFlushing();
+        batcher.reset();
+        includeDetail = call.getBoolean("detail", true);
+        monitoring = true;
+        worker.postDelayed(flushTask, batcher.getWindowMs());
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("windowMs", batcher.getWindowMs());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void stopMonitoring(PluginCall call) {
+        stopFlushing();
+        // Hand over whatever the last partial window collected
+        if (batcher != null) {
+            emitBatch(batcher.flush(SystemClock.elapsedRealtime()));
+        }
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /** The accepted samples behind the summaries, for a chart or a clinician asking for detail. */
+    @PluginMethod
+    public void getRecentVitals(PluginCall call) {
+        if (batcher == null) {
+            call.reject("Not connected to a device");
+            return;
+        }
+        VitalsAnalytics.Series series = batcher.recent(call.getString("metric", "heart_rate"));
+        if (series == null) {
+            call.reject("Unknown metric");
+            return;
+        }
+        long clockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("times", toArray(series.times, clockOffset));
+        result.put("values", toArray(series.values, 1, 0));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void disconnect(PluginCall call) {
+        stopFlushing();
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        connectedAddress = null;
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("message", "Disconnected");
+        call.resolve(result);
+    }
+
+    private void stopFlushing() {
+        monitoring = false;
+        if (worker != null) {
+            worker.removeCallbacks(flushTask);
+        }
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected, String[] services) {
+        JSObject event = new JSObject();
+        event.put("connected", connected);
+        event.put("address", connectedAddress);
+        JSArray list = new JSArray();
+        for (String service : services) {
+            list.put(service);
+        }
+        event.put("services", list);
+        notifyListeners("connectionChange", event);
+    }
+
+    private void emitBatch(VitalsWindowBatcher.Batch batch) {
+        if (batch == null || batch.sampleCount() == 0) {
+            return;
+        }
+        // Samples are stamped with elapsedRealtime; JS wants wall-clock time
+        long clockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        checkAlerts(batch, clockOffset);
+
+        JSObject event = new JSObject();
+        event.put("windowStart", batch.windowStartMs + clockOffset);
+        event.put("windowEnd", batch.windowEndMs + clockOffset);
+        event.put("dropped", batch.dropped);
+
+        if (batch.heartRate.length > 0) {
+            JSObject heartRate = new JSObject();
+            heartRate.put("mean", Math.round(batch.heartRateMean()));
+            heartRate.put("min", Math.round(batch.heartRateMin()));
+            heartRate.put("max", Math.round(batch.heartRateMax()));
+            if (includeDetail) {
+                heartRate.put("times", toArray(batch.heartRateTimes, clockOffset));
+                heartRate.put("values", toArray(batch.heartRate, 1, 0));
+            }
+            event.put("heartRate", heartRate);
+        }
+        if (includeDetail && batch.rrIntervals.length > 0) {
+            event.put("rrIntervals", toArray(batch.rrIntervals, 1, 0));
+        }
+        if (batch.bloodPressureTimes.length > 0) {
+            JSObject bloodPressure = new JSObject();
+            bloodPressure.put("times", toArray(batch.bloodPressureTimes, clockOffset));
+            bloodPressure.put("systolic", toArray(batch.bloodPressure, 2, 0));
+            bloodPressure.put("diastolic", toArray(batch.bloodPressure, 2, 1));
+            event.put("bloodPressure", bloodPressure);
+        }
+        if (batch.temperature.length > 0) {
+            JSObject temperature = new JSObject();
+            temperature.put("times", toArray(batch.temperatureTimes, clockOffset));
+            temperature.put("values", toArray(batch.temperature, 1, 0));
+            event.put("temperature", temperature);
+        }
+        event.put("summary", toJson(batch.summary));
+        notifyListeners("vitalsBatch", event);
+    }
+
+    // Checked here rather than after the JS round trip so a critical reading alerts even
+    // with the WebView in the background. Heart rate and blood pressure are rounded to
+    // whole numbers, as batchToReadings uploads them.
+    private void checkAlerts(VitalsWindowBatcher.Batch batch, long clockOffset) {
+        HealthAlerts alerts = HealthAlerts.get(getContext());
+        if (alerts.rules() == null) {
+            return;
+        }
+        VitalsAnalytics.MetricSummary heartRate = batch.summary != null ? batch.summary.heartRate : null;
+        if (batch.heartRate.length > 0 && (heartRate == null || !Float.isNaN(heartRate.mean))) {
+            long at = batch.windowEndMs + clockOffset;
+            // A short spike averages away in the mean, so the window's extremes (artifacts
+            // already removed) go to the critical rules first; the mean is what gets uploaded
+            HealthAlerts.Alert extreme = null;
+            if (heartRate != null) {
+                extreme = alerts.checkCritical(HealthRules.HEART_RATE, at, Math.round(heartRate.max),
+                    Double.NaN, Double.NaN);
+                if (extreme == null) {
+                    extreme = alerts.checkCritical(HealthRules.HEART_RATE, at, Math.round(heartRate.min),
+                        Double.NaN, Double.NaN);
+                }
+            }
+            if (extreme == null) {
+                double mean = heartRate != null ? heartRate.mean : batch.heartRateMean();
+                alerts.check(HealthRules.HEART_RATE, at, Math.round(mean), Double.NaN, Double.NaN);
+            }
+        }
+        for (int i = 0; i < batch.bloodPressureTimes.length; i++) {
+            alerts.check(HealthRules.BLOOD_PRESSURE, batch.bloodPressureTimes[i] + clockOffset, Double.NaN,
+                Math.round(batch.bloodPressure[i * 2]), Math.round(batch.bloodPressure[i * 2 + 1]));
+        }
+        for (int i = 0; i < batch.temperature.length; i++) {
+            alerts.check(HealthRules.TEMPERATURE, batch.temperatureTimes[i] + clockOffset,
+                Math.round(batch.temperature[i] * 10) / 10.0, Double.NaN, Double.NaN);
+        }
+    }
+
+    private static JSObject toJson(VitalsAnalytics.Summary summary) {
+        JSObject json = new JSObject();
+        VitalsAnalytics.MetricSummary[] metrics = {
+            summary.heartRate, summary.systolic, summary.diastolic, summary.temperature };
+        String[] keys = { "heartRate", "systolic", "diastolic", "temperature" };
+        for (int i = 0; i < metrics.length; i++) {
+            VitalsAnalytics.MetricSummary m = metrics[i];
+            if (m == null) {
+                continue;
+            }
+            JSObject metric = new JSObject();
+            metric.put("count", m.count);
+            metric.put("rejected", m.rejected);
+            metric.put("dropouts", m.dropouts);
+            putRounded(metric, "mean", m.mean);
+            putRounded(metric, "min", m.min);
+            putRounded(metric, "max", m.max);
+            putRounded(metric, "baseline", m.baseline);
+            if (!Float.isNaN(m.slopePerMinute)) {
+                metric.put("slopePerMinute", Math.round(m.slopePerMinute * 1000) / 1000.0);
+            }
+            if (m.trend != null) {
+                metric.put("trend", m.trend);
+            }
+            json.put(keys[i], metric);
+        }
+        if (summary.hrv != null) {
+            JSObject hrv = new JSObject();
+            hrv.put("beats", summary.hrv.beats);
+            hrv.put("rejectedBeats", summary.hrv.rejectedBeats);
+            putRounded(hrv, "rmssd", summary.hrv.rmssd);
+            putRounded(hrv, "sdnn", summary.hrv.sdnn);
+            putRounded(hrv, "meanRr", summary.hrv.meanRr);
+            json.put("hrv", hrv);
+        }
+        return json;
+    }
+
+    // JSON has no NaN; a missing key means "not enough data"
+    private static void putRounded(JSObject json, String key, float value) {
+        if (!Float.isNaN(value)) {
+            json.put(key, Math.round(value * 10) / 10.0);
+        }
+    }
+
+    private static JSArray toArray(long[] times, long offset) {
+        JSArray array = new JSArray();
+        for (long time : times) {
+            array.put(time + offset);
+        }
+        return array;
+    }
+
+    private static JSArray toArray(float[] values, int stride, int component) {
+        JSArray array = new JSArray();
+        for (int i = component; i < values.length; i += stride) {
+            array.put(Math.round(values[i] * 10) / 10.0);
+        }
+        return array;
+    }
+}
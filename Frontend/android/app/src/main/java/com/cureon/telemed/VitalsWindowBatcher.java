@@ -0,0 +1,211 @@
+package com.cureon.telemed;
+
+/**
+ * Collects decoded vitals into per-metric ring buffers and cuts them into
+ * fixed time windows, so the WebView receives one event per window instead of
+ * one per BLE notification. Every sample also streams through
+ * {@link VitalsAnalytics}, whose summary closes with the window. GATT
+ * callbacks record from the binder thread and the flush runs on the plugin's
+ * handler thread, hence the synchronization.
+ */
+final class VitalsWindowBatcher {
+    static final long DEFAULT_WINDOW_MS = 5000;
+    static final long MIN_WINDOW_MS = 250;
+
+    private static final int HEART_RATE_CAPACITY = 512;
+    private static final int RR_CAPACITY = 1024;
+    private static final int BLOOD_PRESSURE_CAPACITY = 32;
+    private static final int TEMPERATURE_CAPACITY = 64;
+
+    private final long windowMs;
+    private final SampleRingBuffer heartRate = new SampleRingBuffer(HEART_RATE_CAPACITY, 1);
+    private final SampleRingBuffer rrIntervals = new SampleRingBuffer(RR_CAPACITY, 1);
+    private final SampleRingBuffer bloodPressure = new SampleRingBuffer(BLOOD_PRESSURE_CAPACITY, 2);
+    private final SampleRingBuffer temperature = new SampleRingBuffer(TEMPERATURE_CAPACITY, 1);
+    private final VitalsAnalytics analytics = new VitalsAnalytics();
+    private long windowStartMs = -1;
+    private long droppedReported;
+
+    VitalsWindowBatcher(long windowMs) {
+        this.windowMs = Math.max(MIN_WINDOW_MS, windowMs);
+    }
+
+    long getWindowMs() {
+        return windowMs;
+    }
+
+    synchronized void recordHeartRate(long timeMs, int bpm) {
+        if (bpm <= 0) {
+            return;
+        }
+        startWindowIfNeeded(timeMs);
+        heartRate.add(timeMs, bpm);
+        analytics.heartRate.add(timeMs, bpm);
+    }
+
+    synchronized void recordRrIntervals(long timeMs, float[] intervalsMs, int count) {
+        startWindowIfNeeded(timeMs);
+        for (int i = 0; i < count; i++) {
+            rrIntervals.add(timeMs, intervalsMs[i]);
+            analytics.addRrInterval(timeMs, intervalsMs[i]);
+        }
+    }
+
+    synchronized void recordBloodPressure(long timeMs, float systolic, float diastolic) {
+        if (Float.isNaN(systolic) || Float.isNaN(diastolic)) {
+            return;
+        }
+        startWindowIfNeeded(timeMs);
+        bloodPressure.add(timeMs, systolic, diastolic);
+        analytics.systolic.add(timeMs, systolic);
+        analytics.diastolic.add(timeMs, diastolic);
+    }
+
+    synchronized void recordTemperature(long timeMs, float fahrenheit) {
+        if (Float.isNaN(fahrenheit) || Float.isInfinite(fahrenheit)) {
+            return;
+        }
+        startWindowIfNeeded(timeMs);
+        temperature.add(timeMs, fahrenheit);
+        analytics.temperature.add(timeMs, fahrenheit);
+    }
+
+    private void startWindowIfNeeded(long timeMs) {
+        if (windowStartMs < 0) {
+            windowStartMs = timeMs;
+        }
+    }
+
+    synchronized boolean isDue(long nowMs) {
+        return windowStartMs >= 0 && nowMs - windowStartMs >= windowMs;
+    }
+
+    /**
+     * How long until the open window is due, or a whole window while none
+     * is open: a window opens at its first sample, so polling at a fixed
+     * period could leave one waiting almost twice its length.
+     */
+    synchronized long msUntilDue(long nowMs) {
+        return windowStartMs < 0 ? windowMs : Math.max(0, windowStartMs + windowMs - nowMs);
+    }
+
+    /**
+     * Closes the current window if it is due and returns its contents, or
+     * null if nothing was recorded or the window is still open.
+     */
+    synchronized Batch flushIfDue(long nowMs) {
+        return isDue(nowMs) ? flush(nowMs) : null;
+    }
+
+    /** Closes the current window regardless of its age. */
+    synchronized Batch flush(long nowMs) {
+        if (windowStartMs < 0) {
+            return null;
+        }
+        Batch batch = new Batch(windowStartMs, nowMs);
+        batch.heartRateTimes = new long[heartRate.size()];
+        batch.heartRate = new float[heartRate.size()];
+        heartRate.drainTo(batch.heartRateTimes, batch.heartRate);
+
+        batch.rrTimes = new long[rrIntervals.size()];
+        batch.rrIntervals = new float[rrIntervals.size()];
+        rrIntervals.drainTo(batch.rrTimes, batch.rrIntervals);
+
+        batch.bloodPressureTimes = new long[bloodPressure.size()];
+        batch.bloodPressure = new float[bloodPressure.size() * 2];
+        bloodPressure.drainTo(batch.bloodPressureTimes, batch.bloodPressure);
+
+        batch.temperatureTimes = new long[temperature.size()];
+        batch.temperature = new float[temperature.size()];
+        temperature.drainTo(batch.temperatureTimes, batch.temperature);
+
+        long dropped = heartRate.dropped() + rrIntervals.dropped()
+            + bloodPressure.dropped() + temperature.dropped();
+        batch.dropped = dropped - droppedReported;
+        droppedReported = dropped;
+        batch.summary = analytics.summarize();
+
+        windowStartMs = -1;
+        return batch;
+    }
+
+    synchronized void reset() {
+        heartRate.clear();
+        rrIntervals.clear();
+        bloodPressure.clear();
+        temperature.clear();
+        analytics.reset();
+        windowStartMs = -1;
+    }
+
+    /**
+     * Accepted samples of one metric still inside its trend window, oldest
+     * first; this is the detail behind the summaries. Null for an unknown metric.
+     */
+    synchronized VitalsAnalytics.Series recent(String metric) {
+        for (VitalsAnalytics.Metric m : new VitalsAnalytics.Metric[] {
+                analytics.heartRate, analytics.systolic, analytics.diastolic, analytics.temperature }) {
+            if (m.rule.name.equals(metric)) {
+                return m.recent();
+            }
+        }
+        return null;
+    }
+
+    /** One closed window of samples, oldest first. Blood pressure is interleaved systolic/diastolic. */
+    static final class Batch {
+        final long windowStartMs;
+        final long windowEndMs;
+        long[] heartRateTimes;
+        float[] heartRate;
+        long[] rrTimes;
+        float[] rrIntervals;
+        long[] bloodPressureTimes;
+        float[] bloodPressure;
+        long[] temperatureTimes;
+        float[] temperature;
+        long dropped;
+        VitalsAnalytics.Summary summary;
+
+        Batch(long windowStartMs, long windowEndMs) {
+            this.windowStartMs = windowStartMs;
+            this.windowEndMs = windowEndMs;
+        }
+
+        int sampleCount() {
+            return heartRate.length + rrIntervals.length
+                + bloodPressureTimes.length + temperature.length;
+        }
+
+        float heartRateMean() {
+            return mean(heartRate);
+        }
+
+        float heartRateMin() {
+            float min = Float.NaN;
+            for (float v : heartRate) {
+                min = Float.isNaN(min) ? v : Math.min(min, v);
+            }
+            return min;
+        }
+
+        float heartRateMax() {
+            float max = Float.NaN;
+            for (float v : heartRate) {
+                max = Float.isNaN(max) ? v : Math.max(max, v);
+            }
+            return max;
+        }
+
+        private static float mean(float[] values) {
+            if (values.length == 0) {
+                return Float.NaN;
+            }
+            double sum = 0;
+            for (float v : values) {
+                sum += v;
+            }
+            return (float) (sum / values.length);
+        }
+    }
+}
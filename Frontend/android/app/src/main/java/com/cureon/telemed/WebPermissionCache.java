@@ -0,0 +1,92 @@
+package com.cureon.telemed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers the WebView's getUserMedia permission requests from a snapshot of
+ * the app's camera and microphone permissions, remembering the answer per
+ * origin and resource set. The snapshot is refreshed only when it can change
+ * (on resume and after a permission dialog), so a request never costs a
+ * binder round trip and a page asking repeatedly gets the same answer.
+ */
+final class WebPermissionCache {
+    // PermissionRequest.RESOURCE_* values, kept here so this class stays free of android.*
+    static final String VIDEO_CAPTURE = "android.webkit.resource.VIDEO_CAPTURE";
+    static final String AUDIO_CAPTURE = "android.webkit.resource.AUDIO_CAPTURE";
+
+    static final class Decision {
+        final String[] grant;
+        /** The page wanted a camera or microphone we don't hold yet; ask the user. */
+        final boolean requestAndroidPermissions;
+
+        Decision(String[] grant, boolean requestAndroidPermissions) {
+            this.grant = grant;
+            this.requestAndroidPermissions = requestAndroidPermissions;
+        }
+    }
+
+    private final Map<String, Decision> decisions = new HashMap<>();
+    private boolean hasCamera;
+    private boolean hasMicrophone;
+    private int hits;
+    private int misses;
+
+    /** New permission state; cached answers are dropped only if it actually changed. */
+    synchronized void setAndroidPermissions(boolean hasCamera, boolean hasMicrophone) {
+        if (hasCamera != this.hasCamera || hasMicrophone != this.hasMicrophone) {
+            decisions.clear();
+        }
+        this.hasCamera = hasCamera;
+        this.hasMicrophone = hasMicrophone;
+    }
+
+    synchronized boolean hasAll() {
+        return hasCamera && hasMicrophone;
+    }
+
+    synchronized Decision decide(String origin, String[] resources) {
+        String[] sorted = resources.clone();
+        Arrays.sort(sorted);
+        String key = origin + "|" + String.join(",", sorted);
+        Decision cached = decisions.get(key);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        Decision decision = evaluate(resources);
+        decisions.put(key, decision);
+        return decision;
+    }
+
+    // Same policy the WebRTC chrome client always had: grant what we hold, and never
+    // leave the page hanging even when we hold nothing
+    private Decision evaluate(String[] resources) {
+        if (hasCamera && hasMicrophone) {
+            return new Decision(resources, false);
+        }
+        String[] granted = new String[resources.length];
+        int n = 0;
+        for (String resource : resources) {
+            boolean video = VIDEO_CAPTURE.equals(resource);
+            boolean audio = AUDIO_CAPTURE.equals(resource);
+            if ((video && hasCamera) || (audio && hasMicrophone) || (!video && !audio)) {
+                granted[n++] = resource;
+            }
+        }
+        if (n == 0) {
+            return new Decision(resources, true);
+        }
+        return new Decision(Arrays.copyOf(granted, n), true);
+    }
+
+    synchronized int hits() {
+        return hits;
+    }
+
+    synchronized int misses() {
+        return misses;
+    }
+}
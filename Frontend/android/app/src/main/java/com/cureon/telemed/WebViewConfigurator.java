@@ -0,0 +1,211 @@
+package com.cureon.telemed;
+
+import android.Manifest;
+import android.content.ComponentCallbacks2;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.PermissionRequest;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+import androidx.webkit.WebViewRenderProcess;
+import androidx.webkit.WebViewRenderProcessClient;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.BridgeWebChromeClient;
+
+import java.util.Arrays;
+
+/**
+ * Owns MainActivity's WebView setup: WebRTC-friendly settings and the
+ * permission-aware chrome client are applied once per WebView instance,
+ * getUserMedia requests are answered from {@link WebPermissionCache}, and
+ * the renderer is kept alive (priority, memory trims) or brought back when
+ * the system kills it.
+ *
+ * <p>A dead renderer can't be revived in place, so recovery recreates the
+ * activity and reopens the page the user was on instead of leaving a blank
+ * WebView or crashing the app.
+ */
+final class WebViewConfigurator {
+    private static final String TAG = "WebViewConfigurator";
+    // The render process client reports every ~5 s while the renderer is stuck
+    private static final int UNRESPONSIVE_REPORTS_BEFORE_RESTART = 2;
+
+    private static final int TRACE_APPLY = PerfTrace.shared().name("WebViewConfigurator.apply");
+    private static final int TRACE_PERMISSION_REQUESTS = PerfTrace.shared().name("webview.permissionRequests");
+    private static final int TRACE_UNRESPONSIVE = PerfTrace.shared().name("webview.rendererUnresponsive");
+    private static final int TRACE_GONE = PerfTrace.shared().name("webview.rendererGone");
+    private static final int TRACE_MEMORY_PRESSURE = PerfTrace.shared().name("webview.memoryPressure");
+
+    // Survives the activity recreate that follows a renderer loss
+    private static String restoreUrl;
+
+    private final AppCompatActivity activity;
+    private final Runnable requestAndroidPermissions;
+    private final WebPermissionCache permissions = new WebPermissionCache();
+    private WebView configured;
+    private int unresponsiveReports;
+
+    WebViewConfigurator(AppCompatActivity activity, Runnable requestAndroidPermissions) {
+        this.activity = activity;
+        this.requestAndroidPermissions = requestAndroidPermissions;
+    }
+
+    /** Configures the bridge's WebView. Calling it again for the same WebView does nothing. */
+    void apply(Bridge bridge) {
+        WebView webView = bridge.getWebView();
+        if (webView == null) {
+            Log.e(TAG, "WebView is null");
+            return;
+        }
+        if (webView == configured) {
+            return;
+        }
+        PerfTrace.shared().begin(TRACE_APPLY);
+        long started = SystemClock.elapsedRealtime();
+        try {
+            refreshPermissions();
+
+            WebSettings settings = webView.getSettings();
+            // Essential for WebRTC
+            settings.setJavaScriptEnabled(true);
+            settings.setDomStorageEnabled(true);
+            settings.setMediaPlaybackRequiresUserGesture(false);
+            settings.setAllowFileAccess(true);
+            settings.setAllowContentAccess(true);
+            settings.setJavaScriptCanOpenWindowsAutomatically(true);
+            settings.setCacheMode(WebSettings.LOAD_DEFAULT);
+            settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+
+            webView.setLayerType(WebView.LAYER_TYPE_HARDWARE, null);
+            // Keep the renderer as important as the app while visible, so the system kills it last
+            webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, true);
+            webView.setWebChromeClient(new WebRtcChromeClient(bridge));
+
+            if (WebViewFeature.isFeatureSupported(WebViewFeature.WEB_VIEW_RENDERER_CLIENT_BASIC_USAGE)) {
+                WebViewCompat.setWebViewRenderProcessClient(webView, new HangWatcher());
+            }
+            configured = webView;
+            Log.d(TAG, "WebView configured in " + (SystemClock.elapsedRealtime() - started) + " ms");
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting up WebView for WebRTC", e);
+        } finally {
+            PerfTrace.shared().end(TRACE_APPLY);
+        }
+    }
+
+    /** Re-reads camera and microphone permissions; call on resume and after a permission dialog. */
+    void refreshPermissions() {
+        boolean hasCam = ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA)
+            == PackageManager.PERMISSION_GRANTED;
+        boolean hasMic = ContextCompat.checkSelfPermission(activity, Manifest.permission.RECORD_AUDIO)
+            == PackageManager.PERMISSION_GRANTED;
+        permissions.setAndroidPermissions(hasCam, hasMic);
+    }
+
+    /**
+     * Memory pressure: under critical pressure drop the WebView's in-memory
+     * cache, and at any significant level tell the page so it can release its
+     * own caches ({@code window.addEventListener('cureonMemoryPressure', ...)}).
+     */
+    void onTrimMemory(Bridge bridge, int level) {
+        WebView webView = bridge.getWebView();
+        if (webView == null) {
+            return;
+        }
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            webView.clearCache(false);
+        }
+        // UI_HIDDEN only means we went to the background, not that memory is short
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            PerfTrace.shared().instant(TRACE_MEMORY_PRESSURE, level);
+            Log.d(TAG, "Memory pressure level " + level);
+            bridge.triggerWindowJSEvent("cureonMemoryPressure", "{ \"level\": " + level + " }");
+        }
+    }
+
+    /**
+     * The renderer died (crash or killed for memory). Returns true so the app
+     * survives, and recreates the activity on the same page.
+     */
+    boolean onRenderProcessGone(Bridge bridge, WebView webView, RenderProcessGoneDetail detail) {
+        PerfTrace.shared().count(TRACE_GONE, 1);
+        Log.w(TAG, "WebView renderer gone (" + (detail.didCrash() ? "crashed" : "killed by the system")
+            + "), rebuilding on " + webView.getUrl());
+        String url = webView.getUrl();
+        restoreUrl = url != null && url.startsWith(bridge.getLocalUrl()) ? url : null;
+        configured = null;
+        activity.recreate();
+        return true;
+    }
+
+    /** After a renderer loss, reopens the page the user was on. Call once the bridge exists. */
+    static void restorePage(Bridge bridge) {
+        String url = restoreUrl;
+        restoreUrl = null;
+        if (url != null && bridge.getWebView() != null) {
+            Log.d(TAG, "Restoring " + url + " after renderer loss");
+            bridge.getWebView().loadUrl(url);
+        }
+    }
+
+    /** Restarts a renderer that has been stuck for about ten seconds; recovery follows in onRenderProcessGone. */
+    private final class HangWatcher extends WebViewRenderProcessClient {
+        @Override
+        public void onRenderProcessUnresponsive(@NonNull WebView view, @Nullable WebViewRenderProcess renderer) {
+            unresponsiveReports++;
+            PerfTrace.shared().count(TRACE_UNRESPONSIVE, 1);
+            Log.w(TAG, "WebView renderer unresponsive (" + unresponsiveReports + ")");
+            if (unresponsiveReports >= UNRESPONSIVE_REPORTS_BEFORE_RESTART && renderer != null
+                    && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_VIEW_RENDERER_TERMINATE)) {
+                renderer.terminate();
+            }
+        }
+
+        @Override
+        public void onRenderProcessResponsive(@NonNull WebView view, @Nullable WebViewRenderProcess renderer) {
+            unresponsiveReports = 0;
+        }
+    }
+
+    /** Capacitor's chrome client plus getUserMedia permission handling. */
+    private final class WebRtcChromeClient extends BridgeWebChromeClient {
+        WebRtcChromeClient(Bridge bridge) {
+            super(bridge);
+        }
+
+        @Override
+        public void onPermissionRequest(final PermissionRequest request) {
+            String origin = String.valueOf(request.getOrigin());
+            WebPermissionCache.Decision decision = permissions.decide(origin, request.getResources());
+            PerfTrace.shared().count(TRACE_PERMISSION_REQUESTS, 1);
+            // Every getUserMedia call lands here; skip building the message unless asked for
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "WebRTC permission request " + Arrays.toString(request.getResources())
+                    + " granting " + Arrays.toString(decision.grant));
+            }
+            // An empty grant isn't a refusal to the page; deny so getUserMedia rejects at once
+            activity.runOnUiThread(() -> {
+                if (decision.grant.length == 0) {
+                    request.deny();
+                } else {
+                    request.grant(decision.grant);
+                }
+            });
+            if (decision.requestAndroidPermissions) {
+                requestAndroidPermissions.run();
+            }
+        }
+    }
+}
@@ -1,30 +1,186 @@
 package com.cureon.telemed;
 
+import android.Manifest;
+import android.app.Activity;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.annotation.Permission;
 
-@CapacitorPlugin(name = "ZegoCall")
+@CapacitorPlugin(
+    name = "ZegoCall",
+    permissions = {
+        @Permission(strings = { Manifest.permission.CAMERA }, alias = "camera"),
+        @Permission(strings = { Manifest.permission.RECORD_AUDIO }, alias = "microphone")
+    }
+)
 public class ZegoCallPlugin extends Plugin {
     private static final String TAG = "ZegoCallPlugin";
-    private boolean isInitialized = false;
-    private String currentUserID = "";
-    private String currentUserName = "";
+    // Capacitor has no hook around every plugin call, so the call path's own methods are traced
+    private static final int TRACE_INITIALIZE = PerfTrace.shared().name("ZegoCall.initialize");
+    private static final int TRACE_JOIN_ROOM = PerfTrace.shared().name("ZegoCall.joinRoom");
+    private static final int TRACE_END_CALL = PerfTrace.shared().name("ZegoCall.endCall");
+
+    // Plugin calls and warm-up callbacks arrive on different threads; swapped as a whole
+    private static final class User {
+        final String id;
+        final String name;
+
+        User(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private volatile User user;
+    private volatile JSObject lastCallSummary;
+
+    @Override
+    public void load() {
+        CallSession.shared().setListener(transition -> {
+            JSObject event = new JSObject();
+            event.put("sessionId", transition.sessionId);
+            event.put("roomID", transition.roomId);
+            event.put("from", transition.from);
+            event.put("state", transition.to);
+            event.put("reason", transition.reason);
+            notifyListeners("callState", event);
+        });
+
+        LeakWatch.shared().setListener((label, heldMs) -> {
+            Log.w(TAG, "Leaked after call: " + label + " still reachable " + heldMs + "ms after destroy");
+            JSObject event = new JSObject();
+            event.put("object", label);
+            event.put("heldMs", heldMs);
+            notifyListeners("callLeak", event);
+        });
+
+        CallLatencyTracker.shared().setListener(report -> {
+            JSObject event = new JSObject();
+            event.put("roomID", report.roomID);
+            event.put("warm", report.warm);
+            event.put("milestone", CallLatencyTracker.NAMES[report.latest]);
+            for (int i = 1; i < CallLatencyTracker.MARKS; i++) {
+                if (report.sinceJoinMs[i] >= 0) {
+                    event.put(CallLatencyTracker.NAMES[i] + "Ms", report.sinceJoinMs[i]);
+                }
+            }
+            notifyListeners("callLatency", event);
+        });
+
+        CallQualityRecorder.shared().setListener(new CallQualityRecorder.Listener() {
+            @Override
+            public void onSample(long timeMs, float[] sample) {
+                JSObject event = new JSObject();
+                event.put("timeMs", timeMs);
+                for (int i = 0; i < CallQualityRecorder.FIELDS; i++) {
+                    event.put(CallQualityRecorder.FIELD_NAMES[i], sample[i]);
+                }
+                notifyListeners("callQuality", event);
+            }
+
+            @Override
+            public void onSummary(CallQualityRecorder.Summary summary) {
+                lastCallSummary = summaryToJs(summary);
+                // Kept until a listener takes it: the WebView may be paused behind the call screen
+                notifyListeners("callSummary", lastCallSummary, true);
+            }
+        });
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        CallSession.shared().setListener(null);
+        LeakWatch.shared().setListener(null);
+        CallLatencyTracker.shared().setListener(null);
+        CallQualityRecorder.shared().setListener(null);
+    }
+
+    private static JSObject summaryToJs(CallQualityRecorder.Summary summary) {
+        JSObject result = new JSObject();
+        result.put("startedAt", summary.startedAtMs);
+        result.put("endedAt", summary.endedAtMs);
+        result.put("seconds", summary.seconds);
+        result.put("verdict", summary.verdict);
+        JSArray quality = new JSArray();
+        for (int seconds : summary.qualitySeconds) {
+            quality.put(seconds);
+        }
+        result.put("qualitySeconds", quality);
+        result.put("meanSendKbps", summary.meanSendKbps);
+        result.put("meanRecvKbps", summary.meanRecvKbps);
+        result.put("meanCaptureFps", summary.meanCaptureFps);
+        result.put("meanRecvFps", summary.meanRecvFps);
+        result.put("meanRenderFps", summary.meanRenderFps);
+        result.put("minRenderFps", summary.minRenderFps);
+        result.put("rttMeanMs", summary.rttMeanMs);
+        result.put("rttP50Ms", summary.rttP50Ms);
+        result.put("rttP95Ms", summary.rttP95Ms);
+        result.put("rttMaxMs", summary.rttMaxMs);
+        result.put("meanSendLoss", summary.meanSendLoss);
+        result.put("meanRecvLoss", summary.meanRecvLoss);
+        result.put("audioStallMs", summary.audioStallMs);
+        result.put("videoStallMs", summary.videoStallMs);
+        result.put("videoStalls", summary.videoStalls);
+        return result;
+    }
+
+    /**
+     * Summary of the last finished call, optionally with its per-second
+     * samples as one array per field (column-wise keeps the payload small).
+     */
+    @PluginMethod
+    public void getCallSummary(PluginCall call) {
+        JSObject summary = lastCallSummary;
+        if (summary == null) {
+            call.reject("No call recorded");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("summary", summary);
+        if (call.getBoolean("includeSamples", false)) {
+            CallQualityRecorder recorder = CallQualityRecorder.shared();
+            int n = recorder.retainedSamples();
+            long[] times = new long[n];
+            float[] values = new float[n * CallQualityRecorder.FIELDS];
+            n = recorder.copySamples(times, values);
+            JSObject samples = new JSObject();
+            JSArray timeColumn = new JSArray();
+            for (int i = 0; i < n; i++) {
+                timeColumn.put(times[i]);
+            }
+            samples.put("timeMs", timeColumn);
+            for (int field = 0; field < CallQualityRecorder.FIELDS; field++) {
+                JSArray column = new JSArray();
+                for (int i = 0; i < n; i++) {
+                    column.put(values[i * CallQualityRecorder.FIELDS + field]);
+                }
+                samples.put(CallQualityRecorder.FIELD_NAMES[field], column);
+            }
+            result.put("samples", samples);
+        }
+        call.resolve(result);
+    }
 
     @PluginMethod
     public void initialize(PluginCall call) {
+        PerfTrace.shared().begin(TRACE_INITIALIZE);
         try {
             long appID = call.getLong("appID", 0L);
             String appSign = call.getString("appSign", "");
             String userID = call.getString("userID", "");
             String userName = call.getString("userName", "");
 
-            Log.d(TAG, "Initializing with appID: " + appID + ", userID: " + userID);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Initializing with appID: " + appID + ", userID: " + userID);
+            }
 
             if (appID == 0 || appSign == null || appSign.isEmpty()) {
                 call.reject("Invalid appID or appSign");
@@ -36,88 +192,142 @@ public class ZegoCallPlugin extends Plugin {
                 return;
             }
 
-            currentUserID = userID.replaceAll("[^a-zA-Z0-9_]", "_");
-            currentUserName = (userName != null && !userName.isEmpty()) ? userName : "User";
-            isInitialized = true;
+            User current = new User(UserIds.sanitize(userID), UserIds.displayName(userName));
+            user = current;
 
-            Log.d(TAG, "ZegoCloud plugin initialized successfully");
+            // Engine, camera service and audio route are prepared in the background so joinRoom
+            // only attaches; JS hears about it through "callWarmup"
+            CallWarmup.get().warm(getContext(), appID, appSign, current.id, current.name, warmup -> {
+                JSObject event = new JSObject();
+                event.put("engineReady", warmup.isEngineReady());
+                event.put("permissionsGranted", warmup.permissionsGranted());
+                event.put("warmupMs", warmup.warmupMs());
+                notifyListeners("callWarmup", event);
+            });
 
             JSObject result = new JSObject();
             result.put("success", true);
             result.put("message", "ZegoCloud initialized");
+            result.put("permissionsGranted", CallWarmup.hasCallPermissions(getContext()));
             call.resolve(result);
 
         } catch (Exception e) {
             Log.e(TAG, "Init failed: " + e.getMessage(), e);
             call.reject("Failed to initialize: " + e.getMessage());
+        } finally {
+            PerfTrace.shared().end(TRACE_INITIALIZE);
         }
     }
 
 
+    /**
+     * Starts the call activity unless a call is already up: a join for the
+     * same room resolves with merged=true, one for another room is rejected.
+     * {@code groupConsult: true} joins as one of several participants, with
+     * optional {@code maxDownlinkKbps} and {@code pinUserID}; see
+     * {@link ConsultStreamPolicy}.
+     */
     @PluginMethod
     public void joinRoom(PluginCall call) {
+        PerfTrace.shared().begin(TRACE_JOIN_ROOM);
         try {
-            String roomID = call.getString("roomID", "");
-            String userID = call.getString("userID", currentUserID);
-            String userName = call.getString("userName", currentUserName);
-            boolean isVideoCall = call.getBoolean("isVideoCall", true);
+            User current = user;
+            JoinRequest request = JoinRequest.parse(call,
+                current != null ? current.id : "", current != null ? current.name : "");
 
-            Log.d(TAG, "Joining room: " + roomID + ", userID: " + userID);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Joining room: " + request.roomId + ", userID: " + request.userId);
+            }
 
-            if (roomID == null || roomID.isEmpty()) {
+            if (!request.hasRoom()) {
                 call.reject("Invalid roomID");
                 return;
             }
 
-            final String sanitizedUserID = userID.replaceAll("[^a-zA-Z0-9_]", "_");
-            final String finalUserName = (userName != null && !userName.isEmpty()) ? userName : "User";
-            final String finalRoomID = roomID;
-            final boolean finalIsVideoCall = isVideoCall;
-
-            getActivity().runOnUiThread(() -> {
-                try {
-                    Intent intent = new Intent(getActivity(), ZegoVideoCallActivity.class);
-                    intent.putExtra("roomID", finalRoomID);
-                    intent.putExtra("userID", sanitizedUserID);
-                    intent.putExtra("userName", finalUserName);
-                    intent.putExtra("isVideoCall", finalIsVideoCall);
-                    getActivity().startActivity(intent);
-
-                    JSObject result = new JSObject();
-                    result.put("success", true);
-                    result.put("message", "Joining room: " + finalRoomID);
-                    call.resolve(result);
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to join room: " + e.getMessage(), e);
-                    call.reject("Failed to join room: " + e.getMessage());
+            CallSession.Join join = CallSession.shared().join(request.roomId, SystemClock.elapsedRealtime());
+            if (CallSession.JOIN_REJECTED.equals(join.outcome)) {
+                call.reject("Another call is in progress in room " + join.roomId);
+                return;
+            }
+            if (!join.shouldLaunch()) {
+                call.resolve(request.result(join.sessionId, true));
+                return;
+            }
+
+            CallWarmup warmup = CallWarmup.get();
+            CallLatencyTracker.shared().begin(request.roomId, warmup.isWarm(), SystemClock.elapsedRealtime());
+
+            // Queued behind any warm-up still in flight so the activity finds a ready engine.
+            // Runs on the warm-up thread, by which time the app's activity may be gone.
+            warmup.afterWarmup(() -> {
+                Activity activity = getActivity();
+                if (activity == null || activity.isFinishing() || activity.isDestroyed()) {
+                    CallSession.shared().requestEnd("launch-failed", SystemClock.elapsedRealtime());
+                    call.reject("App closed before the call started");
+                    return;
                 }
+                activity.runOnUiThread(() -> {
+                    if (!CallSession.shared().isCurrent(join.sessionId)) {
+                        call.reject("Call ended before it started");
+                        return;
+                    }
+                    try {
+                        activity.startActivity(request.putExtras(
+                            new Intent(activity, ZegoVideoCallActivity.class), join.sessionId));
+                        call.resolve(request.result(join.sessionId, false));
+                    } catch (Exception e) {
+                        Log.e(TAG, "Failed to join room: " + e.getMessage(), e);
+                        CallSession.shared().requestEnd("launch-failed", SystemClock.elapsedRealtime());
+                        call.reject("Failed to join room: " + e.getMessage());
+                    }
+                });
             });
 
         } catch (Exception e) {
             Log.e(TAG, "Error in joinRoom: " + e.getMessage(), e);
             call.reject("Error: " + e.getMessage());
+        } finally {
+            PerfTrace.shared().end(TRACE_JOIN_ROOM);
         }
     }
 
+    /** Hangs up: the call activity finishes and releases camera, audio and room before it reports idle. */
     @PluginMethod
     public void endCall(PluginCall call) {
+        PerfTrace.shared().begin(TRACE_END_CALL);
         try {
+            boolean ended = CallSession.shared().requestEnd("app", SystemClock.elapsedRealtime());
             JSObject result = new JSObject();
             result.put("success", true);
-            result.put("message", "Call ended");
+            result.put("ended", ended);
+            result.put("message", ended ? "Call ended" : "No call in progress");
             call.resolve(result);
         } catch (Exception e) {
             Log.e(TAG, "Error ending call: " + e.getMessage(), e);
             call.reject("Error: " + e.getMessage());
+        } finally {
+            PerfTrace.shared().end(TRACE_END_CALL);
         }
     }
 
+    @PluginMethod
+    public void getCallState(PluginCall call) {
+        CallSession session = CallSession.shared();
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("state", session.state());
+        result.put("roomID", session.roomId());
+        result.put("sessionId", session.sessionId());
+        call.resolve(result);
+    }
+
     @PluginMethod
     public void uninitialize(PluginCall call) {
         try {
-            isInitialized = false;
-            currentUserID = "";
-            currentUserName = "";
+            user = null;
+            // Logging out under a live call would drop it without releasing anything
+            CallSession.shared().requestEnd("uninitialize", SystemClock.elapsedRealtime());
+            CallWarmup.get().reset();
             
             JSObject result = new JSObject();
             result.put("success", true);
@@ -1,13 +1,26 @@
 package com.cureon.telemed;
 
 import android.Manifest;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
+import android.widget.Button;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -15,31 +28,222 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.zegocloud.uikit.ZegoUIKit;
 import com.zegocloud.uikit.prebuilt.call.ZegoUIKitPrebuiltCallConfig;
 import com.zegocloud.uikit.prebuilt.call.ZegoUIKitPrebuiltCallFragment;
 import com.zegocloud.uikit.prebuilt.call.config.ZegoHangUpConfirmDialogInfo;
+import com.zegocloud.uikit.service.express.IExpressEngineEventHandler;
+
+import im.zego.zegoexpress.ZegoExpressEngine;
+import im.zego.zegoexpress.constants.ZegoPublishChannel;
+import im.zego.zegoexpress.constants.ZegoRoomStateChangedReason;
+import im.zego.zegoexpress.constants.ZegoStreamQualityLevel;
+import im.zego.zegoexpress.constants.ZegoUpdateType;
+import im.zego.zegoexpress.constants.ZegoVideoCodecID;
+import im.zego.zegoexpress.constants.ZegoVideoStreamType;
+import im.zego.zegoexpress.entity.ZegoPlayStreamQuality;
+import im.zego.zegoexpress.entity.ZegoPublishStreamQuality;
+import im.zego.zegoexpress.entity.ZegoStream;
+import im.zego.zegoexpress.entity.ZegoVideoConfig;
+
+import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
+/**
+ * Hosts the prebuilt Zego call for one {@link CallSession}. Launched only by
+ * whoever won {@link CallSession#join}; everything it holds (camera, mic,
+ * room, audio focus, callbacks) is released in a fixed order as soon as it
+ * starts finishing, not left to the fragment's own teardown.
+ *
+ * <p>A 1:1 call ends when the other side leaves. A group consult stays up
+ * while people come and go, and {@link ConsultStreamPolicy} picks the video
+ * layer received from each of them.
+ */
 public class ZegoVideoCallActivity extends AppCompatActivity {
     private static final String TAG = "ZegoVideoCallActivity";
     private static final int PERMISSION_REQUEST_CODE = 200;
+    private static final int TRACE_CREATE = PerfTrace.shared().name("ZegoVideoCallActivity.onCreate");
+    private static final int TRACE_ADD_FRAGMENT = PerfTrace.shared().name("ZegoVideoCallActivity.addCallFragment");
+    private static final long QUALITY_SAMPLE_MS = 1000;
+    // Frame rate the prebuilt 1:1 video config targets; the quality verdict measures against it
+    private static final float TARGET_FPS = 15f;
+    // Static so a pending check never holds the activity it is checking
+    private static final Handler LEAK_CHECKS = new Handler(Looper.getMainLooper());
     
     // ZegoCloud credentials - MUST match your .env file exactly
-    private static final long APP_ID = 1970983545L;
-    private static final String APP_SIGN = "b460cb2b3b763f4dad0f205c83b8339575a9f323f723a0afb9e8a60b7d60f08e";
+    static final long APP_ID = 1970983545L;
+    static final String APP_SIGN = "b460cb2b3b763f4dad0f205c83b8339575a9f323f723a0afb9e8a60b7d60f08e";
 
     private String roomID;
     private String userID;
     private String userName;
     private boolean isVideoCall;
+    private long sessionId;
+    // False for a stale launch that finished in onCreate; nothing to release then
+    private boolean attached;
+    private boolean released;
+    private ZegoUIKitPrebuiltCallFragment callFragment;
+    private AudioFocusRequest audioFocus;
+    private final Handler qualityTicker = new Handler(Looper.getMainLooper());
+    private final Runnable qualityTick = new Runnable() {
+        @Override
+        public void run() {
+            if (CallQualityRecorder.shared().tick(System.currentTimeMillis())) {
+                adaptProfile();
+                adaptConsult();
+                qualityTicker.postDelayed(this, QUALITY_SAMPLE_MS);
+            }
+        }
+    };
+
+    // Video calls only; null until the room is joined
+    private CallProfilePolicy profilePolicy;
+    private ConnectivityManager.NetworkCallback networkCallback;
+    private final float[] qualitySample = new float[CallQualityRecorder.FIELDS];
+    // True only while the policy, not the user, has the camera off
+    private boolean cameraPausedByPolicy;
+    private View audioOnlyBanner;
+    private View snapshotButton;
+
+    // Group consults only
+    private boolean groupConsult;
+    private ConsultStreamPolicy consultPolicy;
+    // This device's downlink as the SDK last rated it, -1 until it does
+    private int downstreamLevel = -1;
+    private Button pinButton;
+
+    // Feeds join milestones to CallLatencyTracker (voice calls count first audio frames instead)
+    // and per-stream quality reports to CallQualityRecorder
+    private final IExpressEngineEventHandler callEventHandler = new IExpressEngineEventHandler() {
+        @Override
+        public void onRoomStateChanged(String roomID, ZegoRoomStateChangedReason reason, int errorCode,
+                JSONObject extendedData) {
+            if (reason == ZegoRoomStateChangedReason.LOGINED) {
+                mark(CallLatencyTracker.ROOM_JOINED);
+                CallSession.shared().activated(sessionId, SystemClock.elapsedRealtime());
+                // After login, so the prebuilt's own video config doesn't overwrite ours
+                if (isVideoCall && profilePolicy == null) {
+                    startProfilePolicy();
+                }
+                if (consultPolicy != null) {
+                    consultPolicy.start(SystemClock.elapsedRealtime());
+                    // Speaker detection runs on remote sound levels; harmless if the prebuilt started it
+                    ZegoExpressEngine engine = ZegoExpressEngine.getEngine();
+                    if (engine != null) {
+                        engine.startSoundLevelMonitor();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onRoomStreamUpdate(String roomID, ZegoUpdateType updateType, ArrayList<ZegoStream> streamList,
+                JSONObject extendedData) {
+            if (consultPolicy == null) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            for (ZegoStream stream : streamList) {
+                applyTiers(updateType == ZegoUpdateType.ADD
+                    ? consultPolicy.onStreamAdded(stream.streamID, stream.user.userID, now)
+                    : consultPolicy.onStreamRemoved(stream.streamID, now));
+            }
+        }
+
+        @Override
+        public void onRemoteSoundLevelUpdate(HashMap<String, Float> soundLevels) {
+            if (consultPolicy != null) {
+                applyTiers(consultPolicy.onSoundLevels(soundLevels, SystemClock.elapsedRealtime()));
+            }
+        }
+
+        @Override
+        public void onPublisherCapturedVideoFirstFrame(ZegoPublishChannel channel) {
+            mark(CallLatencyTracker.FIRST_LOCAL_FRAME);
+        }
+
+        @Override
+        public void onPublisherCapturedAudioFirstFrame() {
+            if (!isVideoCall) {
+                mark(CallLatencyTracker.FIRST_LOCAL_FRAME);
+            }
+        }
+
+        @Override
+        public void onPlayerRenderVideoFirstFrame(String streamID) {
+            mark(CallLatencyTracker.FIRST_REMOTE_FRAME);
+        }
+
+        @Override
+        public void onPlayerRecvAudioFirstFrame(String streamID) {
+            if (!isVideoCall) {
+                mark(CallLatencyTracker.FIRST_REMOTE_FRAME);
+            }
+        }
+
+        @Override
+        public void onPublisherQualityUpdate(String streamID, ZegoPublishStreamQuality quality) {
+            CallQualityRecorder.shared().onPublishQuality((float) quality.videoCaptureFPS,
+                (float) quality.videoSendFPS, (float) (quality.videoKBPS + quality.audioKBPS),
+                quality.rtt, (float) quality.packetLostRate, quality.level.value());
+        }
+
+        @Override
+        public void onPlayerQualityUpdate(String streamID, ZegoPlayStreamQuality quality) {
+            if (consultPolicy != null) {
+                consultPolicy.onStreamQuality(streamID, (float) (quality.videoKBPS + quality.audioKBPS),
+                    (float) quality.packetLostRate, SystemClock.elapsedRealtime());
+                // The recorder follows one remote stream; in a consult, the one on the big tile
+                if (!consultPolicy.isFeatured(streamID)) {
+                    return;
+                }
+            }
+            CallQualityRecorder.shared().onPlayQuality((float) quality.videoRecvFPS,
+                (float) quality.videoRenderFPS, (float) (quality.videoKBPS + quality.audioKBPS),
+                quality.rtt, (float) quality.packetLostRate, quality.level.value(),
+                quality.audioCumulativeBreakTime, quality.videoCumulativeBreakTime);
+        }
+
+        @Override
+        public void onNetworkQuality(String userID, ZegoStreamQualityLevel upstreamQuality,
+                ZegoStreamQualityLevel downstreamQuality) {
+            // An empty userID is the local device's own link
+            if (userID == null || userID.isEmpty() || userID.equals(ZegoVideoCallActivity.this.userID)) {
+                CallQualityRecorder.shared().onNetworkQuality(upstreamQuality.value(), downstreamQuality.value());
+                downstreamLevel = downstreamQuality.value();
+            }
+        }
+    };
+
+    private static void mark(int milestone) {
+        CallLatencyTracker.shared().mark(milestone, SystemClock.elapsedRealtime());
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        PerfTrace.shared().begin(TRACE_CREATE);
+        try {
+            create(savedInstanceState);
+        } finally {
+            PerfTrace.shared().end(TRACE_CREATE);
+        }
+    }
+
+    private void create(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        
-        Log.d(TAG, "onCreate started");
+        mark(CallLatencyTracker.ACTIVITY_CREATED);
+
+        // Ended before we came up, or relaunched from recents after the call
+        sessionId = getIntent().getLongExtra(JoinRequest.EXTRA_SESSION, 0);
+        attached = CallSession.shared().attach(sessionId, () -> runOnUiThread(this::finish));
+        if (!attached) {
+            Log.w(TAG, "Call session " + sessionId + " is no longer current, finishing");
+            finish();
+            return;
+        }
         
         try {
             // Make fullscreen - must be before setContentView
@@ -65,16 +269,32 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
             }
             
             setContentView(R.layout.activity_zego_video_call);
-            Log.d(TAG, "Layout set successfully");
+            audioOnlyBanner = findViewById(R.id.call_audio_only_banner);
+            snapshotButton = findViewById(R.id.call_snapshot_button);
+            snapshotButton.setOnClickListener(v -> {
+                if (profilePolicy != null) {
+                    applyProfile(profilePolicy.requestSnapshot(SystemClock.elapsedRealtime()));
+                }
+            });
 
             // Get data from intent
-            roomID = getIntent().getStringExtra("roomID");
-            userID = getIntent().getStringExtra("userID");
-            userName = getIntent().getStringExtra("userName");
-            isVideoCall = getIntent().getBooleanExtra("isVideoCall", true);
+            roomID = getIntent().getStringExtra(JoinRequest.EXTRA_ROOM);
+            userID = getIntent().getStringExtra(JoinRequest.EXTRA_USER);
+            userName = getIntent().getStringExtra(JoinRequest.EXTRA_USER_NAME);
+            isVideoCall = getIntent().getBooleanExtra(JoinRequest.EXTRA_VIDEO, true);
+            groupConsult = getIntent().getBooleanExtra(JoinRequest.EXTRA_GROUP, false);
+            if (groupConsult) {
+                consultPolicy = new ConsultStreamPolicy(
+                    getIntent().getIntExtra(JoinRequest.EXTRA_MAX_DOWNLINK_KBPS, 0),
+                    getIntent().getStringExtra(JoinRequest.EXTRA_PIN_USER));
+            }
+            pinButton = findViewById(R.id.call_pin_button);
+            pinButton.setOnClickListener(v -> togglePin());
 
-            Log.d(TAG, "Starting video call - Room: " + roomID + ", User: " + userID + ", Name: " + userName);
-            Log.d(TAG, "Using APP_ID: " + APP_ID);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Starting " + (groupConsult ? "group consult" : "video call") + " - Room: " + roomID
+                    + ", User: " + userID + ", Name: " + userName);
+            }
 
             if (roomID == null || roomID.isEmpty()) {
                 roomID = "default-room";
@@ -82,19 +302,15 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
             if (userID == null || userID.isEmpty()) {
                 userID = "user_" + System.currentTimeMillis();
             }
-            if (userName == null || userName.isEmpty()) {
-                userName = "User";
-            }
+            userName = UserIds.displayName(userName);
 
             // Sanitize userID - only allow alphanumeric and underscore
-            userID = userID.replaceAll("[^a-zA-Z0-9_]", "_");
+            userID = UserIds.sanitize(userID);
 
             // Check and request permissions before starting call
             if (checkPermissions()) {
-                Log.d(TAG, "Permissions already granted, starting call");
                 addCallFragment(roomID, userID, userName, isVideoCall);
             } else {
-                Log.d(TAG, "Requesting permissions");
                 requestPermissions();
             }
         } catch (Exception e) {
@@ -110,7 +326,9 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
         boolean hasMic = ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) 
             == PackageManager.PERMISSION_GRANTED;
         
-        Log.d(TAG, "Permissions check - Camera: " + hasCam + ", Mic: " + hasMic);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Permissions check - Camera: " + hasCam + ", Mic: " + hasMic);
+        }
         return hasCam && hasMic;
     }
 
@@ -128,7 +346,9 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
         }
 
         if (!permissions.isEmpty()) {
-            Log.d(TAG, "Requesting permissions: " + permissions);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Requesting permissions: " + permissions);
+            }
             ActivityCompat.requestPermissions(this, 
                 permissions.toArray(new String[0]), PERMISSION_REQUEST_CODE);
         }
@@ -143,7 +363,9 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
             boolean allGranted = true;
             for (int i = 0; i < permissions.length; i++) {
                 boolean granted = grantResults[i] == PackageManager.PERMISSION_GRANTED;
-                Log.d(TAG, "Permission " + permissions[i] + ": " + (granted ? "GRANTED" : "DENIED"));
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Permission " + permissions[i] + ": " + (granted ? "GRANTED" : "DENIED"));
+                }
                 if (!granted) {
                     allGranted = false;
                 }
@@ -162,14 +384,14 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
     }
 
     private void addCallFragment(String roomID, String userID, String userName, boolean isVideoCall) {
+        PerfTrace.shared().begin(TRACE_ADD_FRAGMENT);
         try {
-            Log.d(TAG, "=== addCallFragment START ===");
-            Log.d(TAG, "roomID: " + roomID);
-            Log.d(TAG, "userID: " + userID);
-            Log.d(TAG, "userName: " + userName);
-            Log.d(TAG, "isVideoCall: " + isVideoCall);
-            Log.d(TAG, "APP_ID: " + APP_ID);
-            Log.d(TAG, "APP_SIGN length: " + (APP_SIGN != null ? APP_SIGN.length() : 0));
+            // On the join's critical path; the details are only built when debug logging is on
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "addCallFragment room: " + roomID + ", user: " + userID + " (" + userName
+                    + "), video: " + isVideoCall + ", APP_ID: " + APP_ID
+                    + ", APP_SIGN length: " + (APP_SIGN != null ? APP_SIGN.length() : 0));
+            }
             
             // Validate inputs
             if (APP_ID <= 0) {
@@ -186,16 +408,23 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
                 return;
             }
             
-            // Configure for 1-on-1 video call
-            Log.d(TAG, "Creating call config...");
-            ZegoUIKitPrebuiltCallConfig config = isVideoCall 
-                ? ZegoUIKitPrebuiltCallConfig.oneOnOneVideoCall()
-                : ZegoUIKitPrebuiltCallConfig.oneOnOneVoiceCall();
+            // 1-on-1 unless this is a group consult
+            ZegoUIKitPrebuiltCallConfig config;
+            if (groupConsult) {
+                config = isVideoCall
+                    ? ZegoUIKitPrebuiltCallConfig.groupVideoCall()
+                    : ZegoUIKitPrebuiltCallConfig.groupVoiceCall();
+            } else {
+                config = isVideoCall
+                    ? ZegoUIKitPrebuiltCallConfig.oneOnOneVideoCall()
+                    : ZegoUIKitPrebuiltCallConfig.oneOnOneVoiceCall();
+            }
 
             // Customize the config
             config.turnOnCameraWhenJoining = isVideoCall;
             config.turnOnMicrophoneWhenJoining = true;
-            config.useSpeakerWhenJoining = true;
+            // Audio route was worked out during warm-up; a headset wins over the speaker
+            config.useSpeakerWhenJoining = CallWarmup.get().useSpeaker(this);
 
             // Add hang up confirmation
             config.hangUpConfirmDialogInfo = new ZegoHangUpConfirmDialogInfo();
@@ -204,7 +433,12 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
             config.hangUpConfirmDialogInfo.confirmButtonName = "End";
             config.hangUpConfirmDialogInfo.cancelButtonName = "Cancel";
 
-            Log.d(TAG, "Creating ZegoUIKitPrebuiltCallFragment...");
+            requestAudioFocus();
+            ZegoUIKit.addEventHandler(callEventHandler);
+            CallQualityRecorder.shared().start(System.currentTimeMillis(), isVideoCall ? TARGET_FPS : 0f);
+            qualityTicker.postDelayed(qualityTick, QUALITY_SAMPLE_MS);
+
+            // Cheap when ZegoCallPlugin.initialize has warmed the engine; otherwise this creates it
 
             ZegoUIKitPrebuiltCallFragment fragment = ZegoUIKitPrebuiltCallFragment.newInstance(
                 APP_ID,
@@ -222,19 +456,20 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
                 return;
             }
 
-            Log.d(TAG, "Fragment created successfully");
+            callFragment = fragment;
 
-            // Set callback for when call ends
-            fragment.setOnOnlySelfInRoomListener(() -> {
-                Log.d(TAG, "Only self in room, finishing activity");
-                runOnUiThread(() -> {
-                    Toast.makeText(ZegoVideoCallActivity.this, "Call ended", Toast.LENGTH_SHORT).show();
-                    finish();
+            // A 1:1 call ends when the other side leaves; a consult waits for people to rejoin
+            // and ends through ConsultStreamPolicy.shouldEnd once the room has stayed empty
+            if (!groupConsult) {
+                fragment.setOnOnlySelfInRoomListener(() -> {
+                    runOnUiThread(() -> {
+                        Toast.makeText(ZegoVideoCallActivity.this, "Call ended", Toast.LENGTH_SHORT).show();
+                        finish();
+                    });
                 });
-            });
+            }
+            pinButton.setVisibility(groupConsult && isVideoCall ? View.VISIBLE : View.GONE);
 
-            Log.d(TAG, "Adding fragment to container R.id.zego_call_container...");
-            
             // Check if container exists
             View container = findViewById(R.id.zego_call_container);
             if (container == null) {
@@ -244,21 +479,195 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
                 return;
             }
             
-            Log.d(TAG, "Container found, committing fragment transaction...");
-            
+            // Asynchronous commit so the activity's first frame isn't held up by the fragment's views
             getSupportFragmentManager()
                 .beginTransaction()
                 .replace(R.id.zego_call_container, fragment)
-                .commitNow();
-
-            Log.d(TAG, "=== ZegoUIKitPrebuiltCallFragment added successfully ===");
+                .runOnCommit(() -> mark(CallLatencyTracker.FRAGMENT_ATTACHED))
+                .commit();
 
         } catch (Exception e) {
             Log.e(TAG, "Error creating call fragment: " + e.getMessage(), e);
-            e.printStackTrace();
             Toast.makeText(this, "Video call error: " + e.getMessage(), Toast.LENGTH_LONG).show();
             finish();
+        } finally {
+            PerfTrace.shared().end(TRACE_ADD_FRAGMENT);
+        }
+    }
+
+    private void startProfilePolicy() {
+        ConnectivityManager connectivity = getSystemService(ConnectivityManager.class);
+        profilePolicy = new CallProfilePolicy(hevcAllowed());
+        NetworkCapabilities current = connectivity == null
+            ? null : connectivity.getNetworkCapabilities(connectivity.getActiveNetwork());
+        applyProfile(profilePolicy.start(toPolicyNetwork(current), SystemClock.elapsedRealtime()));
+        if (consultPolicy != null && current != null) {
+            applyTiers(consultPolicy.onLink(current.getLinkDownstreamBandwidthKbps(), SystemClock.elapsedRealtime()));
+        }
+        if (connectivity == null) {
+            return;
+        }
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+                long now = SystemClock.elapsedRealtime();
+                applyProfile(profilePolicy.onNetworkChanged(toPolicyNetwork(capabilities), now));
+                if (consultPolicy != null) {
+                    applyTiers(consultPolicy.onLink(capabilities.getLinkDownstreamBandwidthKbps(), now));
+                }
+            }
+        };
+        try {
+            // Delivered on the main thread, same as the quality ticks
+            connectivity.registerDefaultNetworkCallback(networkCallback, qualityTicker);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not watch network changes: " + e.getMessage(), e);
+            networkCallback = null;
+        }
+    }
+
+    private static CallProfilePolicy.Network toPolicyNetwork(NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            return null;
+        }
+        int transport = CallProfilePolicy.TRANSPORT_OTHER;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            transport = CallProfilePolicy.TRANSPORT_WIFI;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            transport = CallProfilePolicy.TRANSPORT_ETHERNET;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            transport = CallProfilePolicy.TRANSPORT_CELLULAR;
+        }
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        return new CallProfilePolicy.Network(transport, capabilities.getLinkUpstreamBandwidthKbps(), metered);
+    }
+
+    // H.265 needs the joiner's say-so (the other side must decode it) and a hardware encoder here
+    private boolean hevcAllowed() {
+        if (!getIntent().getBooleanExtra(JoinRequest.EXTRA_ALLOW_HEVC, false)) {
+            return false;
+        }
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            boolean hardware = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? info.isHardwareAccelerated()
+                : !info.getName().startsWith("OMX.google.") && !info.getName().startsWith("c2.android.");
+            for (String type : info.getSupportedTypes()) {
+                if (hardware && "video/hevc".equalsIgnoreCase(type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void adaptProfile() {
+        if (profilePolicy == null) {
+            return;
+        }
+        CallQualityRecorder.shared().copyLatestSample(qualitySample);
+        float loss = Math.max(qualitySample[CallQualityRecorder.SEND_LOSS], qualitySample[CallQualityRecorder.RECV_LOSS]);
+        applyProfile(profilePolicy.onQuality(SystemClock.elapsedRealtime(),
+            (int) qualitySample[CallQualityRecorder.QUALITY], qualitySample[CallQualityRecorder.RTT_MS], loss));
+    }
+
+    private void applyProfile(CallProfilePolicy.Decision decision) {
+        if (decision == null) {
+            return;
+        }
+        CallProfilePolicy.Profile profile = decision.profile;
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Call profile " + profile.name + " (" + decision.reason + ")");
+        }
+        CallQualityRecorder.shared().onProfile(decision.level);
+        try {
+            ZegoExpressEngine engine = ZegoExpressEngine.getEngine();
+            if (profile.video && engine != null) {
+                ZegoVideoConfig videoConfig = new ZegoVideoConfig();
+                videoConfig.setCaptureResolution(profile.width, profile.height);
+                videoConfig.setEncodeResolution(profile.width, profile.height);
+                videoConfig.setVideoFPS(profile.fps);
+                videoConfig.setVideoBitrate(profile.maxKbps);
+                // In a consult every viewer picks a layer, so publish a small one alongside
+                videoConfig.setCodecID(groupConsult ? ZegoVideoCodecID.H264_DUAL_STREAM
+                    : decision.hevc ? ZegoVideoCodecID.H265 : ZegoVideoCodecID.DEFAULT);
+                engine.setVideoConfig(videoConfig);
+            }
+            if (!profile.video && !cameraPausedByPolicy) {
+                ZegoUIKit.turnCameraOn(userID, false);
+                cameraPausedByPolicy = true;
+            } else if (profile.video && cameraPausedByPolicy) {
+                ZegoUIKit.turnCameraOn(userID, true);
+                cameraPausedByPolicy = false;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply call profile: " + e.getMessage(), e);
+        }
+        boolean audioOnly = !profile.video || decision.isSnapshot();
+        audioOnlyBanner.setVisibility(audioOnly ? View.VISIBLE : View.GONE);
+        snapshotButton.setEnabled(!decision.isSnapshot());
+    }
+
+    private void adaptConsult() {
+        if (consultPolicy == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        applyTiers(consultPolicy.tick(now, downstreamLevel));
+        if (consultPolicy.shouldEnd(now) && !isFinishing()) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Consult room empty for " + ConsultStreamPolicy.EMPTY_ROOM_MS + "ms, finishing activity");
+            }
+            Toast.makeText(this, "Call ended", Toast.LENGTH_SHORT).show();
+            finish();
+        }
+    }
+
+    // Big layer, small layer, or no video at all; audio keeps playing either way
+    private void applyTiers(List<ConsultStreamPolicy.Assignment> changes) {
+        if (changes.isEmpty()) {
+            return;
         }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Consult streams " + changes + " within " + consultPolicy.budgetKbps() + " kbps");
+        }
+        ZegoExpressEngine engine = ZegoExpressEngine.getEngine();
+        if (engine == null || !isVideoCall) {
+            updatePinButton();
+            return;
+        }
+        for (ConsultStreamPolicy.Assignment change : changes) {
+            try {
+                if (change.tier == ConsultStreamPolicy.TIER_AUDIO) {
+                    engine.mutePlayStreamVideo(change.streamId, true);
+                } else {
+                    engine.setPlayStreamVideoType(change.streamId, change.tier == ConsultStreamPolicy.TIER_HIGH
+                        ? ZegoVideoStreamType.BIG : ZegoVideoStreamType.SMALL);
+                    engine.mutePlayStreamVideo(change.streamId, false);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to change stream " + change.streamId + ": " + e.getMessage(), e);
+            }
+        }
+        updatePinButton();
+    }
+
+    // Pins whoever is featured now, or goes back to following the speaker
+    private void togglePin() {
+        if (consultPolicy == null) {
+            return;
+        }
+        String pin = consultPolicy.pinnedUserId() == null ? consultPolicy.featuredUserId() : null;
+        applyTiers(consultPolicy.pin(pin, SystemClock.elapsedRealtime()));
+        updatePinButton();
+    }
+
+    private void updatePinButton() {
+        pinButton.setText(consultPolicy.pinnedUserId() == null
+            ? R.string.call_pin_featured : R.string.call_follow_speaker);
+        pinButton.setEnabled(consultPolicy.pinnedUserId() != null || consultPolicy.featuredUserId() != null);
     }
 
     @Override
@@ -268,9 +677,109 @@ public class ZegoVideoCallActivity extends AppCompatActivity {
         super.onBackPressed();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Release as soon as we start finishing, so the camera is free before the next call's activity opens it
+        if (isFinishing()) {
+            release("hangup");
+        }
+    }
+
     @Override
     protected void onDestroy() {
+        release("destroyed");
+        if (attached) {
+            CallSession.shared().released(sessionId, SystemClock.elapsedRealtime());
+            CallWarmup.get().releaseWhenIdle();
+        }
         super.onDestroy();
-        Log.d(TAG, "ZegoVideoCallActivity destroyed");
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            long now = SystemClock.elapsedRealtime();
+            LeakWatch.shared().watch(this, "ZegoVideoCallActivity#" + sessionId, now);
+            if (callFragment != null) {
+                LeakWatch.shared().watch(callFragment, "ZegoUIKitPrebuiltCallFragment#" + sessionId, now);
+            }
+            scheduleLeakCheck();
+        }
+        callFragment = null;
+    }
+
+    // Camera and mic off before leaving the room, the room before audio focus,
+    // and callbacks that reference this activity dropped along the way
+    private void release(String reason) {
+        if (released || !attached) {
+            return;
+        }
+        released = true;
+        CallSession.shared().ending(sessionId, reason, SystemClock.elapsedRealtime());
+        List<String> failed = new CallSession.Teardown()
+            .step("quality", () -> {
+                qualityTicker.removeCallbacks(qualityTick);
+                CallQualityRecorder.shared().finish(System.currentTimeMillis());
+            })
+            .step("events", () -> ZegoUIKit.removeEventHandler(callEventHandler))
+            .step("network", this::unregisterNetworkCallback)
+            .step("camera", () -> ZegoUIKit.turnCameraOn(userID, false))
+            .step("microphone", () -> ZegoUIKit.turnMicrophoneOn(userID, false))
+            .step("room", ZegoUIKit::leaveRoom)
+            .step("fragment", () -> {
+                if (callFragment != null) {
+                    callFragment.setOnOnlySelfInRoomListener(null);
+                }
+            })
+            .step("audio", this::abandonAudioFocus)
+            .run();
+        CallLatencyTracker.shared().end();
+        if (!failed.isEmpty()) {
+            Log.w(TAG, "Call teardown steps failed: " + failed);
+        }
+    }
+
+    private void unregisterNetworkCallback() {
+        if (networkCallback != null) {
+            ConnectivityManager connectivity = getSystemService(ConnectivityManager.class);
+            connectivity.unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+    }
+
+    private void requestAudioFocus() {
+        AudioManager audio = getSystemService(AudioManager.class);
+        if (audio == null) {
+            return;
+        }
+        audioFocus = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT)
+            .setAudioAttributes(new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                .build())
+            .build();
+        audio.requestAudioFocus(audioFocus);
+    }
+
+    // The SDK leaves the communication mode and route behind; music and the next call expect them reset
+    private void abandonAudioFocus() {
+        AudioManager audio = getSystemService(AudioManager.class);
+        if (audio == null) {
+            return;
+        }
+        if (audioFocus != null) {
+            audio.abandonAudioFocusRequest(audioFocus);
+            audioFocus = null;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            audio.clearCommunicationDevice();
+        }
+        audio.setMode(AudioManager.MODE_NORMAL);
+    }
+
+    private static void scheduleLeakCheck() {
+        LEAK_CHECKS.postDelayed(() -> {
+            Runtime.getRuntime().gc();
+            Runtime.getRuntime().runFinalization();
+            Runtime.getRuntime().gc();
+            LeakWatch.shared().check(SystemClock.elapsedRealtime());
+        }, LeakWatch.GRACE_MS + 500);
     }
 }
@@ -0,0 +1,378 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Runs the cache against a local mock API server. */
+public class ApiCacheTest {
+    private static final long MINUTE = 60_000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private String origin;
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final List<Runnable> background = new ArrayList<>();
+    private final List<Map<String, String>> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile String body = "{\"medicines\":[1,2,3]}";
+    private volatile String etag = "\"v1\"";
+    private volatile int status = 200;
+    private volatile String cacheControl;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+        origin = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        Map<String, String> seen = new HashMap<>();
+        seen.put("path", exchange.getRequestURI().toString());
+        for (String name : new String[] { "If-None-Match", "Authorization", "Origin" }) {
+            String value = exchange.getRequestHeaders().getFirst(name);
+            if (value != null) {
+                seen.put(name, value);
+            }
+        }
+        requests.add(seen);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "https://localhost");
+        if (cacheControl != null) {
+            exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+        }
+        if (etag != null && etag.equals(seen.get("If-None-Match"))) {
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (etag != null) {
+            exchange.getResponseHeaders().add("ETag", etag);
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private ApiCache cache(File dir, long maxBytes) {
+        ApiCache cache = new ApiCache(dir, maxBytes, ApiCache.DEFAULT_ROUTES, background::add, now::get);
+        cache.setOrigins(Collections.singleton(origin));
+        return cache;
+    }
+
+    private static Map<String, String> headers(String authorization) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Origin", "https://localhost");
+        if (authorization != null) {
+            headers.put("Authorization", authorization);
+        }
+        return headers;
+    }
+
+    private static String read(ApiCache.Response response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = response.body) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void runBackground() {
+        List<Runnable> tasks = new ArrayList<>(background);
+        background.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    @Test
+    public void secondRequestIsServedFromDisk() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/medicines?page=1";
+
+        ApiCache.Response first = cache.handle("GET", url, headers("Bearer a"));
+        assertEquals("miss", first.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals("application/json", first.mimeType);
+        assertEquals("utf-8", first.charset);
+        assertEquals(body, read(first));
+
+        ApiCache.Response second = cache.handle("GET", url, headers("Bearer a"));
+        assertEquals("hit", second.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals(body, read(second));
+        // CORS headers are replayed so the cross-origin XHR still accepts the answer
+        assertEquals("https://localhost", second.headers.get("Access-Control-Allow-Origin"));
+        assertEquals(1, requests.size());
+        assertEquals("Bearer a", requests.get(0).get("Authorization"));
+
+        ApiCache.Metrics metrics = cache.metrics();
+        assertEquals(1, metrics.hits);
+        assertEquals(1, metrics.misses);
+        assertEquals(body.length(), metrics.bytesFromNetwork);
+        assertEquals(body.length(), metrics.bytesFromCache);
+        assertEquals(1, metrics.entries);
+    }
+
+    @Test
+    public void accountsDoNotShareEntries() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/doctors";
+        cache.handle("GET", url, headers("Bearer a")).body.close();
+        ApiCache.Response other = cache.handle("GET", url, headers("Bearer b"));
+        assertEquals("miss", other.headers.get(ApiCache.CACHE_HEADER));
+        other.body.close();
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void staleEntryIsServedWhileAConditionalRequestRefreshesIt() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/medicines/featured";
+        cache.handle("GET", url, headers(null)).body.close();
+
+        now.addAndGet(11 * MINUTE);
+        ApiCache.Response stale = cache.handle("GET", url, headers(null));
+        assertEquals("stale", stale.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals(body, read(stale));
+        // Nothing went out on the request's own path
+        assertEquals(1, requests.size());
+
+        runBackground();
+        assertEquals(2, requests.size());
+        assertEquals("\"v1\"", requests.get(1).get("If-None-Match"));
+        assertEquals(1, cache.metrics().notModified);
+
+        // The 304 made it fresh again
+        ApiCache.Response hit = cache.handle("GET", url, headers(null));
+        assertEquals("hit", hit.headers.get(ApiCache.CACHE_HEADER));
+        hit.body.close();
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void revalidationPicksUpChangedContent() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/pharmacies";
+        cache.handle("GET", url, headers(null)).body.close();
+
+        body = "{\"pharmacies\":[\"new\"]}";
+        etag = "\"v2\"";
+        now.addAndGet(11 * MINUTE);
+        cache.handle("GET", url, headers(null)).body.close();
+        runBackground();
+
+        ApiCache.Response hit = cache.handle("GET", url, headers(null));
+        assertEquals("hit", hit.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals("{\"pharmacies\":[\"new\"]}", read(hit));
+        assertEquals("\"v2\"", hit.headers.get("ETag"));
+    }
+
+    @Test
+    public void pastTheStaleWindowTheNetworkAnswers() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/medicine/42";
+        cache.handle("GET", url, headers(null)).body.close();
+
+        now.addAndGet(2 * 24 * 60 * MINUTE);
+        ApiCache.Response revalidated = cache.handle("GET", url, headers(null));
+        assertEquals("revalidated", revalidated.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals(body, read(revalidated));
+        assertTrue(background.isEmpty());
+        assertEquals("\"v1\"", requests.get(1).get("If-None-Match"));
+
+        ApiCache.Metrics metrics = cache.metrics();
+        assertEquals(1, metrics.misses);
+        assertEquals(1, metrics.revalidations);
+        assertEquals(1, metrics.notModified);
+    }
+
+    @Test
+    public void lateRevalidationLeavesANewerEntryAlone() throws IOException {
+        File dir = tmp.newFolder();
+        ApiCache cache = cache(dir, ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/medicines/featured";
+        cache.handle("GET", url, headers(null)).body.close();
+        now.addAndGet(11 * MINUTE);
+        cache.handle("GET", url, headers(null)).body.close();
+
+        // A catalog write lands and the page fetches the new list before the queued revalidation runs
+        body = "{\"medicines\":[4]}";
+        etag = "\"v2\"";
+        cache.invalidate(origin + "/api/v1/medicines");
+        cache.handle("GET", url, headers(null)).body.close();
+        // The queued request still carries v1, which the server now calls current
+        etag = "\"v1\"";
+        runBackground();
+        assertEquals("\"v1\"", requests.get(requests.size() - 1).get("If-None-Match"));
+
+        ApiCache restarted = cache(dir, ApiCache.DEFAULT_MAX_BYTES);
+        ApiCache.Response hit = restarted.handle("GET", url, headers(null));
+        assertEquals("hit", hit.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals("\"v2\"", hit.headers.get("ETag"));
+        assertEquals("{\"medicines\":[4]}", read(hit));
+    }
+
+    @Test
+    public void lateRevalidationDoesNotRestoreAnInvalidatedEntry() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/pharmacies";
+        cache.handle("GET", url, headers(null)).body.close();
+        now.addAndGet(11 * MINUTE);
+        cache.handle("GET", url, headers(null)).body.close();
+
+        etag = "\"v2\"";
+        cache.invalidate(origin + "/api/v1/pharmacies");
+        runBackground();
+        assertEquals(2, requests.size());
+        assertEquals(0, cache.metrics().entries);
+    }
+
+    @Test
+    public void expiredEntryCoversForAnUnreachableServer() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/medicines/categories";
+        cache.handle("GET", url, headers(null)).body.close();
+
+        server.stop(0);
+        now.addAndGet(30 * 24 * 60 * MINUTE);
+        ApiCache.Response offline = cache.handle("GET", url, headers(null));
+        assertEquals("stale-if-error", offline.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals(body, read(offline));
+        assertEquals(1, cache.metrics().errors);
+
+        // Nothing stored and no network: let the WebView fail it as usual
+        assertNull(cache.handle("GET", origin + "/api/v1/doctors", headers(null)));
+    }
+
+    @Test
+    public void serverErrorFallsBackToTheStoredEntry() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        String url = origin + "/api/v1/doctors";
+        cache.handle("GET", url, headers(null)).body.close();
+
+        status = 503;
+        etag = null;
+        now.addAndGet(3 * 24 * 60 * MINUTE);
+        ApiCache.Response response = cache.handle("GET", url, headers(null));
+        assertEquals(200, response.status);
+        assertEquals("stale-if-error", response.headers.get(ApiCache.CACHE_HEADER));
+        response.body.close();
+    }
+
+    @Test
+    public void onlyAllowListedGetsAreHandled() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        assertNull(cache.handle("POST", origin + "/api/v1/medicines", headers(null)));
+        assertNull(cache.handle("GET", origin + "/api/v1/me", headers(null)));
+        assertNull(cache.handle("GET", origin + "/api/v1/medicine/1/reviews", headers(null)));
+        assertNull(cache.handle("GET", "http://elsewhere.test/api/v1/medicines", headers(null)));
+        Map<String, String> ranged = headers(null);
+        ranged.put("Range", "bytes=0-10");
+        assertNull(cache.handle("GET", origin + "/api/v1/medicines", ranged));
+        assertTrue(requests.isEmpty());
+
+        cache.setOrigins(Collections.emptySet());
+        assertNull(cache.handle("GET", origin + "/api/v1/medicines", headers(null)));
+    }
+
+    @Test
+    public void noStoreResponsesAreNotKept() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        cacheControl = "no-store";
+        String url = origin + "/api/v1/doctors";
+        cache.handle("GET", url, headers(null)).body.close();
+        cache.handle("GET", url, headers(null)).body.close();
+        assertEquals(2, requests.size());
+        assertEquals(0, cache.metrics().entries);
+    }
+
+    @Test
+    public void byteBudgetEvictsTheLeastRecentlyUsed() throws IOException {
+        long entryBytes = body.length();
+        ApiCache cache = cache(tmp.newFolder(), 2 * entryBytes);
+        String a = origin + "/api/v1/medicine/a";
+        String b = origin + "/api/v1/medicine/b";
+        String c = origin + "/api/v1/medicine/c";
+        cache.handle("GET", a, headers(null)).body.close();
+        cache.handle("GET", b, headers(null)).body.close();
+        // Touch a so b becomes the eldest
+        cache.handle("GET", a, headers(null)).body.close();
+        cache.handle("GET", c, headers(null)).body.close();
+
+        ApiCache.Metrics metrics = cache.metrics();
+        assertEquals(1, metrics.evictions);
+        assertEquals(2, metrics.entries);
+        assertTrue(metrics.storedBytes <= 2 * entryBytes);
+        assertEquals("hit", cache.handle("GET", a, headers(null)).headers.get(ApiCache.CACHE_HEADER));
+        assertEquals("miss", cache.handle("GET", b, headers(null)).headers.get(ApiCache.CACHE_HEADER));
+    }
+
+    @Test
+    public void entriesSurviveARestart() throws IOException {
+        File dir = tmp.newFolder();
+        String url = origin + "/api/v1/medicines/categories";
+        cache(dir, ApiCache.DEFAULT_MAX_BYTES).handle("GET", url, headers("Bearer a")).body.close();
+
+        ApiCache reopened = cache(dir, ApiCache.DEFAULT_MAX_BYTES);
+        ApiCache.Response hit = reopened.handle("GET", url, headers("Bearer a"));
+        assertEquals("hit", hit.headers.get(ApiCache.CACHE_HEADER));
+        assertEquals(body, read(hit));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void invalidateDropsMatchingEntriesForEveryScope() throws IOException {
+        ApiCache cache = cache(tmp.newFolder(), ApiCache.DEFAULT_MAX_BYTES);
+        cache.handle("GET", origin + "/api/v1/medicines?page=1", headers("Bearer a")).body.close();
+        cache.handle("GET", origin + "/api/v1/medicines?page=1", headers("Bearer b")).body.close();
+        cache.handle("GET", origin + "/api/v1/doctors", headers("Bearer a")).body.close();
+
+        assertEquals(2, cache.invalidate(origin + "/api/v1/medicines"));
+        assertEquals(1, cache.metrics().entries);
+        cache.clear();
+        assertEquals(0, cache.metrics().entries);
+        assertEquals(0, cache.metrics().storedBytes);
+    }
+
+    @Test
+    public void scopeNeverContainsTheCredential() {
+        assertEquals("anon", ApiCache.scopeOf(null, ""));
+        assertFalse(ApiCache.scopeOf("Bearer secret", null).contains("secret"));
+        assertTrue(ApiCache.scopeOf(null, "session=abc").startsWith("cookie:"));
+        assertNotEquals(ApiCache.key("anon", "u"), ApiCache.key("auth:x", "u"));
+    }
+}
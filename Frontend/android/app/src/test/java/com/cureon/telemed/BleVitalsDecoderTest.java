@@ -0,0 +1,110 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BleVitalsDecoderTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+
+    @Test
+    public void heartRate_uint8() {
+        assertEquals(72, BleVitalsDecoder.decodeHeartRate(bytes(0x00, 72)));
+    }
+
+    @Test
+    public void heartRate_uint16HonoursFormatFlag() {
+        // 300 bpm = 0x012C little-endian; reading byte 1 alone would give 44
+        assertEquals(300, BleVitalsDecoder.decodeHeartRate(bytes(0x01, 0x2C, 0x01)));
+    }
+
+    @Test
+    public void heartRate_truncatedPayload() {
+        assertEquals(-1, BleVitalsDecoder.decodeHeartRate(bytes(0x01, 0x2C)));
+        assertEquals(-1, BleVitalsDecoder.decodeHeartRate(new byte[0]));
+        assertEquals(-1, BleVitalsDecoder.decodeHeartRate(null));
+    }
+
+    @Test
+    public void rrIntervals_skipEnergyExpended() {
+        // flags: uint8 HR, energy expended present, RR present
+        byte[] value = bytes(0x18, 60, 0x10, 0x00, 0x00, 0x04, 0x00, 0x02);
+        float[] out = new float[4];
+        int count = BleVitalsDecoder.decodeRrIntervals(value, out);
+        assertEquals(2, count);
+        assertEquals(1000f, out[0], 0.01f);
+        assertEquals(500f, out[1], 0.01f);
+    }
+
+    @Test
+    public void rrIntervals_absentWithoutFlag() {
+        assertEquals(0, BleVitalsDecoder.decodeRrIntervals(bytes(0x00, 60, 0x00, 0x04), new float[4]));
+    }
+
+    @Test
+    public void bloodPressure_mmHgWithPulse() {
+        // 120/80 mmHg, MAP 93, no timestamp, pulse 70
+        byte[] value = bytes(0x04, 120, 0x00, 80, 0x00, 93, 0x00, 70, 0x00);
+        float[] out = new float[BleVitalsDecoder.BP_VALUES];
+        assertTrue(BleVitalsDecoder.decodeBloodPressure(value, out));
+        assertEquals(120f, out[BleVitalsDecoder.BP_SYSTOLIC], 0.001f);
+        assertEquals(80f, out[BleVitalsDecoder.BP_DIASTOLIC], 0.001f);
+        assertEquals(93f, out[BleVitalsDecoder.BP_MEAN_ARTERIAL], 0.001f);
+        assertEquals(70f, out[BleVitalsDecoder.BP_PULSE_RATE], 0.001f);
+    }
+
+    @Test
+    public void bloodPressure_kpaConvertedAndTimestampSkipped() {
+        // 16.0 kPa encoded as mantissa 160, exponent -1 (0xF0A0)
+        byte[] value = bytes(0x07,
+            0xA0, 0xF0, 0xA0, 0xF0, 0xA0, 0xF0,
+            0xE8, 0x07, 1, 1, 0, 0, 0,
+            0x48, 0x00);
+        float[] out = new float[BleVitalsDecoder.BP_VALUES];
+        assertTrue(BleVitalsDecoder.decodeBloodPressure(value, out));
+        assertEquals(120.01f, out[BleVitalsDecoder.BP_SYSTOLIC], 0.01f);
+        assertEquals(72f, out[BleVitalsDecoder.BP_PULSE_RATE], 0.001f);
+    }
+
+    @Test
+    public void bloodPressure_nanFieldsStayNaN() {
+        byte[] value = bytes(0x00, 120, 0x00, 80, 0x00, 0xFF, 0x07);
+        float[] out = new float[BleVitalsDecoder.BP_VALUES];
+        assertTrue(BleVitalsDecoder.decodeBloodPressure(value, out));
+        assertTrue(Float.isNaN(out[BleVitalsDecoder.BP_MEAN_ARTERIAL]));
+        assertTrue(Float.isNaN(out[BleVitalsDecoder.BP_PULSE_RATE]));
+    }
+
+    @Test
+    public void temperature_celsiusConvertedToFahrenheit() {
+        // 37.0 C = mantissa 370, exponent -1
+        byte[] value = bytes(0x00, 0x72, 0x01, 0x00, 0xFF);
+        assertEquals(98.6f, BleVitalsDecoder.decodeTemperatureFahrenheit(value), 0.01f);
+    }
+
+    @Test
+    public void temperature_fahrenheitPassedThrough() {
+        // 99.5 F = mantissa 995, exponent -1
+        byte[] value = bytes(0x01, 0xE3, 0x03, 0x00, 0xFF);
+        assertEquals(99.5f, BleVitalsDecoder.decodeTemperatureFahrenheit(value), 0.01f);
+    }
+
+    @Test
+    public void temperature_invalidReading() {
+        assertTrue(Float.isNaN(BleVitalsDecoder.decodeTemperatureFahrenheit(bytes(0x00, 0xFF, 0xFF, 0x7F, 0x00))));
+        assertTrue(Float.isNaN(BleVitalsDecoder.decodeTemperatureFahrenheit(bytes(0x00, 0x01))));
+    }
+
+    @Test
+    public void sfloat_negativeMantissaAndExponent() {
+        // mantissa -5 (0xFFB), exponent -2 (0xE)
+        assertEquals(-0.05f, BleVitalsDecoder.sfloat(bytes(0xFB, 0xEF), 0), 0.0001f);
+    }
+}
@@ -0,0 +1,213 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BlobStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = stream.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private File file(byte[] data) throws IOException {
+        File file = tmp.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    @Test
+    public void parsesSingleByteRanges() {
+        assertNull(BlobStore.parseRange(null, 100));
+        assertArrayEquals(new long[] { 0, 99 }, BlobStore.parseRange("bytes=0-", 100));
+        assertArrayEquals(new long[] { 10, 19 }, BlobStore.parseRange("bytes=10-19", 100));
+        assertArrayEquals(new long[] { 90, 99 }, BlobStore.parseRange("bytes=-10", 100));
+        assertArrayEquals(new long[] { 0, 99 }, BlobStore.parseRange("bytes=-500", 100));
+        // End past the blob is clamped, not rejected
+        assertArrayEquals(new long[] { 50, 99 }, BlobStore.parseRange("bytes=50-1000", 100));
+        // Multi-range and unknown units fall back to the full body
+        assertNull(BlobStore.parseRange("bytes=0-1,5-6", 100));
+        assertNull(BlobStore.parseRange("items=0-1", 100));
+        assertNull(BlobStore.parseRange("bytes=abc-", 100));
+        assertSame(BlobStore.UNSATISFIABLE, BlobStore.parseRange("bytes=100-", 100));
+        assertSame(BlobStore.UNSATISFIABLE, BlobStore.parseRange("bytes=20-10", 100));
+        assertSame(BlobStore.UNSATISFIABLE, BlobStore.parseRange("bytes=0-", 0));
+    }
+
+    @Test
+    public void servesMemoryBlobWholeAndPartial() throws Exception {
+        BlobStore store = new BlobStore(tmp.newFolder("blobs"));
+        byte[] data = payload(1000);
+        String id = store.putBytes(data, "image/jpeg");
+        assertEquals(1000, store.memoryBytes());
+
+        BlobStore.Response full = store.serve(BlobStore.PATH_PREFIX + id, null);
+        assertEquals(200, full.status);
+        assertEquals("image/jpeg", full.mimeType);
+        assertEquals("1000", full.headers.get("Content-Length"));
+        assertEquals("bytes", full.headers.get("Accept-Ranges"));
+        assertArrayEquals(data, readAll(full.body));
+
+        BlobStore.Response part = store.serve(BlobStore.PATH_PREFIX + id, "bytes=100-199");
+        assertEquals(206, part.status);
+        assertEquals("bytes 100-199/1000", part.headers.get("Content-Range"));
+        assertEquals("100", part.headers.get("Content-Length"));
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), readAll(part.body));
+
+        BlobStore.Response outside = store.serve(BlobStore.PATH_PREFIX + id, "bytes=5000-");
+        assertEquals(416, outside.status);
+        assertEquals("bytes */1000", outside.headers.get("Content-Range"));
+    }
+
+    @Test
+    public void servesFileBlobRanges() throws Exception {
+        BlobStore store = new BlobStore(tmp.newFolder("blobs"));
+        byte[] data = payload(64 * 1024 + 7);
+        String id = store.putFile(file(data), "video/mp4", false);
+
+        BlobStore.Response tail = store.serve(BlobStore.PATH_PREFIX + id, "bytes=-7");
+        assertEquals(206, tail.status);
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 7, data.length), readAll(tail.body));
+
+        BlobStore.Response middle = store.serve(BlobStore.PATH_PREFIX + id, "bytes=4096-40959");
+        assertArrayEquals(Arrays.copyOfRange(data, 4096, 40960), readAll(middle.body));
+        assertArrayEquals(data, readAll(store.serve(BlobStore.PATH_PREFIX + id, null).body));
+    }
+
+    @Test
+    public void unknownAndForeignPaths() throws Exception {
+        BlobStore store = new BlobStore(tmp.newFolder("blobs"));
+        assertNull(store.serve("/index.html", null));
+        BlobStore.Response missing = store.serve(BlobStore.PATH_PREFIX + "nope", null);
+        assertEquals(404, missing.status);
+        assertEquals(-1, missing.body.read());
+    }
+
+    @Test
+    public void freeDeletesOnlyOwnedFiles() throws Exception {
+        BlobStore store = new BlobStore(tmp.newFolder("blobs"));
+        File borrowed = file(payload(10));
+        File owned = file(payload(10));
+        String borrowedId = store.putFile(borrowed, "application/octet-stream", false);
+        String ownedId = store.putFile(owned, "application/octet-stream", true);
+        String memoryId = store.putBytes(payload(10), "application/octet-stream");
+        assertEquals(3, store.size());
+
+        assertTrue(store.free(borrowedId));
+        assertTrue(store.free(ownedId));
+        assertFalse(store.free(ownedId));
+        assertTrue(borrowed.exists());
+        assertFalse(owned.exists());
+        assertEquals(404, store.serve(BlobStore.PATH_PREFIX + ownedId, null).status);
+
+        store.freeAll();
+        assertNull(store.get(memoryId));
+        assertEquals(0, store.size());
+        assertEquals(0, store.memoryBytes());
+    }
+
+    @Test
+    public void freeUnderDropsOnlyThatDirectorysHandles() throws Exception {
+        BlobStore store = new BlobStore(tmp.newFolder("blobs"));
+        File frames = tmp.newFolder("frames");
+        File clipDir = new File(frames, "clip");
+        assertTrue(clipDir.mkdirs());
+        File clip = new File(clipDir, "0001.jpg");
+        File sibling = new File(tmp.newFolder("frames-other"), "0001.jpg");
+        try (OutputStream out = new FileOutputStream(clip)) {
+            out.write(payload(10));
+        }
+        try (OutputStream out = new FileOutputStream(sibling)) {
+            out.write(payload(10));
+        }
+        String clipId = store.putFile(clip, "image/jpeg", false);
+        String siblingId = store.putFile(sibling, "image/jpeg", false);
+        String memoryId = store.putBytes(payload(10), "image/jpeg");
+
+        assertEquals(1, store.freeUnder(frames));
+        assertNull(store.get(clipId));
+        assertNotNull(store.get(siblingId));
+        assertNotNull(store.get(memoryId));
+        // Not owned: deleting the files stays with the producer
+        assertTrue(clip.exists());
+    }
+
+    @Test
+    public void fileDeletedBehindTheStoreIsNotFound() throws Exception {
+        BlobStore store = new BlobStore(tmp.newFolder("blobs"));
+        File file = file(payload(10));
+        String id = store.putFile(file, "image/jpeg", false);
+        assertTrue(file.delete());
+        assertEquals(404, store.serve(BlobStore.PATH_PREFIX + id, null).status);
+    }
+
+    @Test
+    public void uploadSpillsChunksToOwnedFile() throws Exception {
+        File dir = tmp.newFolder("blobs");
+        BlobStore store = new BlobStore(dir);
+        byte[] data = payload(300_000);
+
+        BlobStore.Upload upload = store.beginUpload("video/mp4");
+        for (int offset = 0; offset < data.length; offset += 65_536) {
+            upload.write(data, offset, Math.min(65_536, data.length - offset));
+        }
+        assertEquals(data.length, upload.written());
+        String id = upload.finish();
+
+        BlobStore.Entry entry = store.get(id);
+        assertEquals("video/mp4", entry.mimeType);
+        assertEquals(data.length, entry.length);
+        assertArrayEquals(data, readAll(store.serve(BlobStore.PATH_PREFIX + id, null).body));
+
+        BlobStore.Upload aborted = store.beginUpload("video/mp4");
+        aborted.write(data, 0, 10);
+        aborted.abort();
+        store.free(id);
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void deleteOrphansKeepsLiveUploads() throws Exception {
+        File dir = tmp.newFolder("blobs");
+        BlobStore store = new BlobStore(dir);
+        BlobStore.Upload upload = store.beginUpload("image/png");
+        upload.write(payload(10), 0, 10);
+        String id = upload.finish();
+        File orphan = new File(dir, "upload-stale.bin");
+        assertTrue(orphan.createNewFile());
+
+        store.deleteOrphans();
+        assertFalse(orphan.exists());
+        assertTrue(store.get(id).file.exists());
+    }
+}
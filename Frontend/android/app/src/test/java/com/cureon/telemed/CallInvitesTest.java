@@ -0,0 +1,76 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class CallInvitesTest {
+    private static CallInvites.Invite invite(String callId) {
+        return new CallInvites.Invite(callId, "room-" + callId, "doc-1", "Dr. Rao", "doctor", true, 0);
+    }
+
+    @Test
+    public void ringsOnceForRedeliveredInvites() {
+        CallInvites invites = new CallInvites();
+        assertEquals(CallInvites.RING, invites.offer(invite("c1"), 1_000));
+        assertEquals(CallInvites.DUPLICATE, invites.offer(invite("c1"), 1_500));
+        assertEquals("c1", invites.ringing(2_000).callId);
+
+        assertNotNull(invites.answer("c1", 3_000));
+        assertNull(invites.ringing(3_000));
+        // A session that reconnects after we answered gets the invite again
+        assertEquals(CallInvites.DUPLICATE, invites.offer(invite("c1"), 4_000));
+    }
+
+    @Test
+    public void secondCallerGetsBusy() {
+        CallInvites invites = new CallInvites();
+        assertEquals(CallInvites.RING, invites.offer(invite("c1"), 0));
+        assertEquals(CallInvites.BUSY, invites.offer(invite("c2"), 100));
+        assertEquals("c1", invites.ringing(200).callId);
+        assertNull("only the ringing call can be answered", invites.answer("c2", 300));
+
+        invites.cancel("c1", 400);
+        // The busy call was refused; it doesn't ring once the line is free
+        assertEquals(CallInvites.DUPLICATE, invites.offer(invite("c2"), 500));
+        assertEquals(CallInvites.RING, invites.offer(invite("c3"), 600));
+    }
+
+    @Test
+    public void cancelBeforeDeliveryStopsALateInvite() {
+        CallInvites invites = new CallInvites();
+        assertNull(invites.cancel("c1", 0));
+        assertEquals(CallInvites.DUPLICATE, invites.offer(invite("c1"), 10));
+        assertNull(invites.ringing(10));
+    }
+
+    @Test
+    public void unansweredCallsRingOut() {
+        CallInvites invites = new CallInvites();
+        invites.offer(invite("c1"), 1_000);
+        long rungOut = 1_000 + CallInvites.RING_TIMEOUT_MS;
+        assertNotNull(invites.ringing(rungOut - 1));
+        assertNull(invites.ringing(rungOut));
+
+        CallInvites.Invite missed = invites.expire(rungOut);
+        assertEquals("c1", missed.callId);
+        assertNull("reported once", invites.expire(rungOut + 1));
+        assertNull("too late to answer", invites.answer("c1", rungOut + 2));
+        assertEquals(CallInvites.RING, invites.offer(invite("c2"), rungOut + 3));
+    }
+
+    @Test
+    public void parsesTheServerPayload() throws Exception {
+        CallInvites.Invite parsed = CallInvites.Invite.fromJson(new JSONObject()
+            .put("roomId", "appt-7").put("callerId", "doc-1").put("callerName", "Dr. Rao")
+            .put("isVideoCall", false).put("sentAt", 1_700_000_000_000L));
+        assertEquals("callId falls back to the room", "appt-7", parsed.callId);
+        assertEquals("doctor", parsed.callerRole);
+        assertFalse(parsed.video);
+        assertEquals(1_700_000_000_000L, parsed.sentAtMs);
+
+        assertNull(CallInvites.Invite.fromJson(new JSONObject().put("callId", "c1")));
+        assertEquals(CallInvites.INVALID, new CallInvites().offer(null, 0));
+    }
+}
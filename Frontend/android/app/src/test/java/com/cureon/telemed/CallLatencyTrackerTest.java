@@ -0,0 +1,80 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CallLatencyTrackerTest {
+
+    @Test
+    public void reportsOffsetsFromJoinRequest() {
+        CallLatencyTracker tracker = new CallLatencyTracker();
+        List<CallLatencyTracker.Report> reports = new ArrayList<>();
+        tracker.setListener(reports::add);
+
+        tracker.begin("room1", true, 10_000);
+        assertTrue(tracker.mark(CallLatencyTracker.ACTIVITY_CREATED, 10_120));
+        assertTrue(tracker.mark(CallLatencyTracker.FRAGMENT_ATTACHED, 10_180));
+        assertTrue(tracker.mark(CallLatencyTracker.ROOM_JOINED, 10_400));
+        assertTrue(tracker.mark(CallLatencyTracker.FIRST_LOCAL_FRAME, 10_450));
+
+        assertEquals(5, reports.size());
+        CallLatencyTracker.Report last = reports.get(4);
+        assertEquals("room1", last.roomID);
+        assertTrue(last.warm);
+        assertEquals(CallLatencyTracker.FIRST_LOCAL_FRAME, last.latest);
+        assertEquals(0, last.sinceJoinMs[CallLatencyTracker.JOIN_REQUESTED]);
+        assertEquals(120, last.sinceJoinMs[CallLatencyTracker.ACTIVITY_CREATED]);
+        assertEquals(400, last.sinceJoinMs[CallLatencyTracker.ROOM_JOINED]);
+        assertEquals(450, last.sinceJoinMs[CallLatencyTracker.FIRST_LOCAL_FRAME]);
+        assertEquals(-1, last.sinceJoinMs[CallLatencyTracker.FIRST_REMOTE_FRAME]);
+        assertFalse(last.complete());
+    }
+
+    @Test
+    public void ignoresRepeatsAndMarksOutsideAJoin() {
+        CallLatencyTracker tracker = new CallLatencyTracker();
+        assertFalse(tracker.mark(CallLatencyTracker.ROOM_JOINED, 5));
+
+        tracker.begin("room", false, 100);
+        assertTrue(tracker.mark(CallLatencyTracker.FIRST_REMOTE_FRAME, 900));
+        // A second remote stream must not move the first-frame time
+        assertFalse(tracker.mark(CallLatencyTracker.FIRST_REMOTE_FRAME, 1500));
+        assertEquals(800, tracker.snapshot().sinceJoinMs[CallLatencyTracker.FIRST_REMOTE_FRAME]);
+
+        tracker.end();
+        assertFalse(tracker.mark(CallLatencyTracker.ROOM_JOINED, 2000));
+    }
+
+    @Test
+    public void completesOnceEveryMilestoneIsIn() {
+        CallLatencyTracker tracker = new CallLatencyTracker();
+        tracker.begin("room", false, 0);
+        for (int i = 1; i < CallLatencyTracker.MARKS; i++) {
+            assertTrue(tracker.mark(i, i * 100L));
+        }
+        assertTrue(tracker.snapshot().complete());
+        // Finished joins stop listening, so a late event from a stale call is dropped
+        tracker.begin("next", true, 1000);
+        assertEquals(-1, tracker.snapshot().sinceJoinMs[CallLatencyTracker.ROOM_JOINED]);
+        assertEquals("next", tracker.snapshot().roomID);
+    }
+
+    @Test
+    public void beginDiscardsUnfinishedJoin() {
+        CallLatencyTracker tracker = new CallLatencyTracker();
+        tracker.begin("first", false, 0);
+        tracker.mark(CallLatencyTracker.ACTIVITY_CREATED, 50);
+        tracker.begin("second", true, 1000);
+        CallLatencyTracker.Report report = tracker.snapshot();
+        assertEquals("second", report.roomID);
+        assertTrue(report.warm);
+        assertEquals(-1, report.sinceJoinMs[CallLatencyTracker.ACTIVITY_CREATED]);
+        // Clock skew never produces negative latencies
+        assertTrue(tracker.mark(CallLatencyTracker.ACTIVITY_CREATED, 900));
+        assertEquals(0, tracker.snapshot().sinceJoinMs[CallLatencyTracker.ACTIVITY_CREATED]);
+    }
+}
@@ -0,0 +1,213 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CallProfilePolicyTest {
+
+    /** A decision and the second it was made at. */
+    private static final class Change {
+        final long atMs;
+        final CallProfilePolicy.Decision decision;
+
+        Change(long atMs, CallProfilePolicy.Decision decision) {
+            this.atMs = atMs;
+            this.decision = decision;
+        }
+
+        @Override
+        public String toString() {
+            return atMs / 1000 + "s:" + decision.profile.name + "(" + decision.reason + ")";
+        }
+    }
+
+    /**
+     * Replays a recorded trace from src/test/resources/call-traces: one row per
+     * second, a network change whenever transport or advertised uplink moves.
+     */
+    private static List<Change> replay(String trace, CallProfilePolicy policy) throws IOException {
+        List<Change> changes = new ArrayList<>();
+        InputStream in = CallProfilePolicyTest.class.getResourceAsStream("/call-traces/" + trace);
+        assertNotNull("missing trace " + trace, in);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            String lastNetwork = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.startsWith("t_ms")) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                long t = Long.parseLong(f[0]);
+                String network = f[1] + "," + f[2] + "," + f[3];
+                if (!network.equals(lastNetwork)) {
+                    CallProfilePolicy.Network n = new CallProfilePolicy.Network(
+                        transport(f[1]), Integer.parseInt(f[2]), "1".equals(f[3]));
+                    CallProfilePolicy.Decision d = lastNetwork == null
+                        ? policy.start(n, t - 1000)
+                        : policy.onNetworkChanged(n, t);
+                    if (d != null) {
+                        changes.add(new Change(lastNetwork == null ? t - 1000 : t, d));
+                    }
+                    lastNetwork = network;
+                }
+                CallProfilePolicy.Decision d = policy.onQuality(t,
+                    Integer.parseInt(f[4]), Float.parseFloat(f[5]), Float.parseFloat(f[6]));
+                if (d != null) {
+                    changes.add(new Change(t, d));
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static int transport(String name) {
+        switch (name) {
+            case "wifi":
+                return CallProfilePolicy.TRANSPORT_WIFI;
+            case "cellular":
+                return CallProfilePolicy.TRANSPORT_CELLULAR;
+            case "ethernet":
+                return CallProfilePolicy.TRANSPORT_ETHERNET;
+            default:
+                return CallProfilePolicy.TRANSPORT_OTHER;
+        }
+    }
+
+    @Test
+    public void stableWifiStaysAtTheTop() throws IOException {
+        List<Change> changes = replay("wifi_stable.csv", new CallProfilePolicy(false));
+        assertEquals(changes.toString(), 1, changes.size());
+        assertEquals("540p", changes.get(0).decision.profile.name);
+        assertFalse(changes.get(0).decision.hevc);
+    }
+
+    @Test
+    public void congestionStepsDownToAudioAndRecovers() throws IOException {
+        CallProfilePolicy policy = new CallProfilePolicy(false);
+        List<Change> changes = replay("cellular_congestion.csv", policy);
+
+        // Metered LTE starts one rung below the top even though the estimate would allow it
+        assertEquals("360p", changes.get(0).decision.profile.name);
+
+        long audioAt = -1;
+        for (Change c : changes) {
+            assertTrue("above the link's ceiling: " + changes, c.decision.level >= 1);
+            if (audioAt < 0 && !c.decision.profile.video) {
+                audioAt = c.atMs;
+            }
+        }
+        // Congestion starts at 61s; three rungs at four bad seconds each
+        assertEquals(changes.toString(), 72_000, audioAt);
+
+        Change last = changes.get(changes.size() - 1);
+        assertEquals("360p", last.decision.profile.name);
+        assertEquals("recovered", last.decision.reason);
+        assertEquals(1, policy.level());
+        // Down three, back up three, nothing in between
+        assertEquals(changes.toString(), 7, changes.size());
+    }
+
+    @Test
+    public void handoverFollowsTheNewLink() throws IOException {
+        List<Change> changes = replay("handover.csv", new CallProfilePolicy(true));
+        assertEquals(changes.toString(), 6, changes.size());
+
+        // 2G can't carry the smallest video
+        assertFalse(changes.get(0).decision.profile.video);
+        // Wi-Fi doesn't jump straight to the top; each rung has to prove itself
+        assertEquals("180p", changes.get(1).decision.profile.name);
+        assertEquals(80_000, changes.get(1).atMs);
+        assertEquals("540p", changes.get(4).decision.profile.name);
+        assertFalse("no HEVC at the top rung", changes.get(4).decision.hevc);
+
+        // Leaving Wi-Fi drops straight to what 3G carries, without waiting for loss
+        Change drop = changes.get(5);
+        assertEquals(151_000, drop.atMs);
+        assertEquals("network", drop.decision.reason);
+        assertEquals("360p", drop.decision.profile.name);
+        assertTrue(drop.decision.hevc);
+    }
+
+    @Test
+    public void deadLinkSkipsStraightToAudio() {
+        CallProfilePolicy policy = new CallProfilePolicy(false);
+        policy.start(new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_WIFI, 0, false), 0);
+        assertNull(policy.onQuality(1000, 4, 1500, 0.5f));
+        CallProfilePolicy.Decision d = policy.onQuality(2000, 4, 1500, 0.5f);
+        assertNotNull(d);
+        assertEquals(CallProfilePolicy.AUDIO_ONLY, d.level);
+        assertEquals("dead-link", d.reason);
+        assertTrue(policy.isAudioOnly());
+    }
+
+    @Test
+    public void flappingLinkBacksOffUpSteps() {
+        // The link carries 500 kbps: 360p (600) congests within a few seconds, 270p is fine
+        CallProfilePolicy policy = new CallProfilePolicy(false);
+        int level = policy.start(new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_WIFI, 1500, false), 0).level;
+        assertEquals(1, level);
+        int upSteps = 0;
+        for (int s = 1; s <= 600; s++) {
+            boolean congested = CallProfilePolicy.LADDER[level].maxKbps > 500;
+            CallProfilePolicy.Decision d = congested
+                ? policy.onQuality(s * 1000L, 3, 700, 0.12f)
+                : policy.onQuality(s * 1000L, 0, 80, 0.0f);
+            if (d != null) {
+                upSteps += d.level < level ? 1 : 0;
+                level = d.level;
+            }
+        }
+        // A fixed 10s hold would probe about 40 times in ten minutes
+        assertTrue("probed " + upSteps + " times", upSteps <= 8);
+        assertEquals(2, level);
+    }
+
+    @Test
+    public void snapshotOnlyFromAudioAndExpires() {
+        CallProfilePolicy policy = new CallProfilePolicy(false);
+        policy.start(new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_CELLULAR, 100, true), 0);
+        assertTrue(policy.isAudioOnly());
+
+        CallProfilePolicy.Decision snap = policy.requestSnapshot(1000);
+        assertNotNull(snap);
+        assertTrue(snap.isSnapshot());
+        assertFalse(policy.isAudioOnly());
+        assertNull("already snapping", policy.requestSnapshot(1500));
+        // Bad seconds during the burst are not held against the link
+        assertNull(policy.onQuality(2000, 4, 2000, 0.5f));
+
+        CallProfilePolicy.Decision back = policy.onQuality(1000 + CallProfilePolicy.SNAPSHOT_MS, 1, 100, 0);
+        assertNotNull(back);
+        assertEquals("snapshot-done", back.reason);
+        assertFalse(back.profile.video);
+        assertTrue(policy.isAudioOnly());
+
+        CallProfilePolicy video = new CallProfilePolicy(false);
+        video.start(null, 0);
+        assertNull("video is already on", video.requestSnapshot(1000));
+    }
+
+    @Test
+    public void ceilingFollowsAdvertisedUplink() {
+        assertEquals(0, CallProfilePolicy.ceilingFor(
+            new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_ETHERNET, 5000, false)));
+        assertEquals(1, CallProfilePolicy.ceilingFor(
+            new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_WIFI, 1000, false)));
+        assertEquals(3, CallProfilePolicy.ceilingFor(
+            new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_CELLULAR, 300, true)));
+        assertEquals(CallProfilePolicy.AUDIO_ONLY, CallProfilePolicy.ceilingFor(
+            new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_CELLULAR, 200, true)));
+        // No estimate: cellular guesses conservatively
+        assertEquals(2, CallProfilePolicy.ceilingFor(
+            new CallProfilePolicy.Network(CallProfilePolicy.TRANSPORT_CELLULAR, 0, true)));
+    }
+}
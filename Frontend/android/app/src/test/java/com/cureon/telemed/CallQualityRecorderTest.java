@@ -0,0 +1,210 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CallQualityRecorderTest {
+    private static final float DELTA = 0.001f;
+
+    private static void healthySecond(CallQualityRecorder recorder, long timeMs) {
+        recorder.onPublishQuality(15, 15, 600, 80, 0.0f, 0);
+        recorder.onPlayQuality(15, 15, 580, 80, 0.0f, 1, 0, 0);
+        recorder.tick(timeMs);
+    }
+
+    @Test
+    public void recordsLatestValuesEverySecond() {
+        CallQualityRecorder recorder = new CallQualityRecorder(10);
+        List<float[]> rows = new ArrayList<>();
+        recorder.setListener(new CallQualityRecorder.Listener() {
+            @Override
+            public void onSample(long timeMs, float[] sample) {
+                rows.add(sample.clone());
+            }
+
+            @Override
+            public void onSummary(CallQualityRecorder.Summary summary) {
+            }
+        });
+        assertFalse(recorder.tick(0));
+
+        recorder.start(0, 15);
+        recorder.onPublishQuality(14, 13, 512, 120, 0.02f, 2);
+        recorder.onPlayQuality(12, 11, 480, 0, 0.01f, 1, 0, 0);
+        recorder.onNetworkQuality(1, 3);
+        assertTrue(recorder.tick(1000));
+        // No new callbacks: the next second repeats the last known values
+        assertTrue(recorder.tick(2000));
+
+        assertEquals(2, rows.size());
+        float[] row = rows.get(0);
+        assertEquals(3, row[CallQualityRecorder.QUALITY], DELTA);
+        assertEquals(512, row[CallQualityRecorder.SEND_KBPS], DELTA);
+        assertEquals(480, row[CallQualityRecorder.RECV_KBPS], DELTA);
+        assertEquals(14, row[CallQualityRecorder.CAPTURE_FPS], DELTA);
+        assertEquals(11, row[CallQualityRecorder.RENDER_FPS], DELTA);
+        // Play quality reported no RTT, so the publish RTT stands
+        assertEquals(120, row[CallQualityRecorder.RTT_MS], DELTA);
+        assertEquals(0.02f, row[CallQualityRecorder.SEND_LOSS], DELTA);
+        assertArrayEquals(rows.get(0), rows.get(1), DELTA);
+        assertEquals(2, recorder.retainedSamples());
+    }
+
+    @Test
+    public void stallCountersBecomePerSecondDeltas() {
+        CallQualityRecorder recorder = new CallQualityRecorder(10);
+        recorder.start(0, 15);
+        recorder.onPlayQuality(15, 15, 500, 80, 0, 0, 1000, 5000);
+        recorder.tick(1000);
+        recorder.onPlayQuality(15, 15, 500, 80, 0, 0, 1200, 5600);
+        recorder.tick(2000);
+        recorder.tick(3000);
+        // Counter reset: the remote republished, new baseline
+        recorder.onPlayQuality(15, 15, 500, 80, 0, 0, 50, 10);
+        recorder.tick(4000);
+        recorder.onPlayQuality(15, 15, 500, 80, 0, 0, 50, 310);
+        recorder.tick(5000);
+
+        long[] times = new long[5];
+        float[] values = new float[5 * CallQualityRecorder.FIELDS];
+        assertEquals(5, recorder.copySamples(times, values));
+        float[] video = new float[5];
+        for (int i = 0; i < 5; i++) {
+            video[i] = values[i * CallQualityRecorder.FIELDS + CallQualityRecorder.VIDEO_STALL_MS];
+        }
+        assertArrayEquals(new float[] { 0, 600, 0, 0, 300 }, video, DELTA);
+
+        CallQualityRecorder.Summary summary = recorder.summarize(5000);
+        assertEquals(200, summary.audioStallMs);
+        assertEquals(900, summary.videoStallMs);
+        assertEquals(2, summary.videoStalls);
+    }
+
+    @Test
+    public void totalsCoverSecondsTheRingHasDropped() {
+        CallQualityRecorder recorder = new CallQualityRecorder(4);
+        recorder.start(0, 15);
+        for (int i = 1; i <= 100; i++) {
+            recorder.onPublishQuality(15, 15, i, i * 10, 0, 0);
+            recorder.tick(i * 1000L);
+        }
+        assertEquals(4, recorder.retainedSamples());
+        CallQualityRecorder.Summary summary = recorder.summarize(100_000);
+        assertEquals(100, summary.seconds);
+        assertEquals(50.5f, summary.meanSendKbps, DELTA);
+        assertEquals(505f, summary.rttMeanMs, DELTA);
+        assertEquals(1000f, summary.rttMaxMs, DELTA);
+        // Percentiles come from 25 ms bins and report the bin's upper edge
+        assertEquals(525f, summary.rttP50Ms, DELTA);
+        assertEquals(975f, summary.rttP95Ms, DELTA);
+        assertEquals(100, summary.qualitySeconds[0]);
+    }
+
+    @Test
+    public void healthyCallIsGood() {
+        CallQualityRecorder recorder = new CallQualityRecorder(60);
+        recorder.start(0, 15);
+        for (int i = 1; i <= 60; i++) {
+            healthySecond(recorder, i * 1000L);
+        }
+        CallQualityRecorder.Summary summary = recorder.finish(60_000);
+        assertEquals("good", summary.verdict);
+        assertEquals(15f, summary.minRenderFps, DELTA);
+        assertNull("finish twice", recorder.finish(61_000));
+        assertFalse(recorder.isRecording());
+    }
+
+    @Test
+    public void lossyLinkIsBlamedOnNetwork() {
+        CallQualityRecorder recorder = new CallQualityRecorder(60);
+        recorder.start(0, 15);
+        long stall = 0;
+        for (int i = 1; i <= 60; i++) {
+            stall += i % 5 == 0 ? 800 : 0;
+            recorder.onPublishQuality(15, 8, 150, 650, 0.12f, 3);
+            recorder.onPlayQuality(6, 6, 120, 700, 0.15f, 4, 0, stall);
+            recorder.tick(i * 1000L);
+        }
+        CallQualityRecorder.Summary summary = recorder.finish(60_000);
+        assertEquals("network", summary.verdict);
+        assertEquals(60, summary.qualitySeconds[4]);
+    }
+
+    @Test
+    public void renderFallingBehindIsBlamedOnDevice() {
+        CallQualityRecorder recorder = new CallQualityRecorder(60);
+        recorder.start(0, 15);
+        for (int i = 1; i <= 60; i++) {
+            // Frames arrive fine but the phone only draws a third of them
+            recorder.onPublishQuality(15, 15, 600, 60, 0.0f, 0);
+            recorder.onPlayQuality(15, 5, 580, 60, 0.0f, 1, 0, 0);
+            recorder.tick(i * 1000L);
+        }
+        assertEquals("device", recorder.finish(60_000).verdict);
+    }
+
+    @Test
+    public void poorCallOnGoodLinkAndDeviceIsConfiguration() {
+        CallQualityRecorder recorder = new CallQualityRecorder(60);
+        recorder.start(0, 15);
+        for (int i = 1; i <= 60; i++) {
+            // Clean link and everything received is rendered, yet only 6 fps arrive
+            recorder.onPublishQuality(15, 6, 90, 60, 0.0f, 1);
+            recorder.onPlayQuality(6, 6, 90, 60, 0.0f, 1, 0, 0);
+            recorder.tick(i * 1000L);
+        }
+        assertEquals("configuration", recorder.finish(60_000).verdict);
+    }
+
+    @Test
+    public void voiceCallIgnoresFrameRates() {
+        CallQualityRecorder recorder = new CallQualityRecorder(60);
+        recorder.start(0, 0);
+        for (int i = 1; i <= 30; i++) {
+            recorder.onPublishQuality(0, 0, 32, 90, 0.0f, 0);
+            recorder.onPlayQuality(0, 0, 32, 90, 0.0f, 0, 0, 0);
+            recorder.tick(i * 1000L);
+        }
+        CallQualityRecorder.Summary summary = recorder.finish(30_000);
+        assertEquals("good", summary.verdict);
+        assertEquals(0f, summary.meanRenderFps, DELTA);
+    }
+
+    @Test
+    public void profileColumnTracksTheLatestDecision() {
+        CallQualityRecorder recorder = new CallQualityRecorder(10);
+        recorder.start(0, 15);
+        healthySecond(recorder, 1000);
+        float[] sample = new float[CallQualityRecorder.FIELDS];
+        recorder.copyLatestSample(sample);
+        assertEquals(-1, sample[CallQualityRecorder.PROFILE], DELTA);
+
+        recorder.onProfile(CallProfilePolicy.AUDIO_ONLY);
+        healthySecond(recorder, 2000);
+        recorder.copyLatestSample(sample);
+        assertEquals(CallProfilePolicy.AUDIO_ONLY, sample[CallQualityRecorder.PROFILE], DELTA);
+        assertEquals(600, sample[CallQualityRecorder.SEND_KBPS], DELTA);
+    }
+
+    @Test
+    public void startClearsThePreviousCall() {
+        CallQualityRecorder recorder = new CallQualityRecorder(10);
+        recorder.start(0, 15);
+        recorder.onPlayQuality(15, 15, 500, 80, 0, 4, 0, 900);
+        recorder.tick(1000);
+        recorder.finish(1000);
+
+        recorder.start(5000, 15);
+        healthySecond(recorder, 6000);
+        CallQualityRecorder.Summary summary = recorder.summarize(6000);
+        assertEquals(1, summary.seconds);
+        assertEquals(5000, summary.startedAtMs);
+        assertEquals(0, summary.videoStallMs);
+        assertEquals(1, summary.qualitySeconds[1]);
+        assertEquals(0, summary.qualitySeconds[4]);
+    }
+}
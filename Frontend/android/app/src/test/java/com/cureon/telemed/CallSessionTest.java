@@ -0,0 +1,196 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CallSessionTest {
+    private final List<String> transitions = Collections.synchronizedList(new ArrayList<>());
+
+    private CallSession session() {
+        CallSession session = new CallSession();
+        session.setListener(t -> transitions.add(t.from + ">" + t.to + ":" + t.reason));
+        return session;
+    }
+
+    @Test
+    public void fullLifecycle() {
+        CallSession session = session();
+        CallSession.Join join = session.join("room-1", 0);
+        assertTrue(join.shouldLaunch());
+        assertTrue(session.isCurrent(join.sessionId));
+        assertTrue(session.attach(join.sessionId, () -> { }));
+        session.activated(join.sessionId, 100);
+        assertEquals(CallSession.ACTIVE, session.state());
+        assertEquals("room-1", session.roomId());
+
+        session.ending(join.sessionId, "hangup", 5_000);
+        session.released(join.sessionId, 5_050);
+        assertEquals(CallSession.IDLE, session.state());
+        assertNull(session.roomId());
+        assertEquals(Arrays.asList("idle>joining:join", "joining>active:room-joined",
+            "active>ending:hangup", "ending>idle:released"), transitions);
+    }
+
+    @Test
+    public void secondJoinMergesOrIsRejected() {
+        CallSession session = session();
+        CallSession.Join first = session.join("room-1", 0);
+        CallSession.Join again = session.join("room-1", 10);
+        assertEquals(CallSession.JOIN_MERGED, again.outcome);
+        assertFalse(again.shouldLaunch());
+        assertEquals(first.sessionId, again.sessionId);
+
+        CallSession.Join other = session.join("room-2", 20);
+        assertEquals(CallSession.JOIN_REJECTED, other.outcome);
+        assertEquals("names the call in the way", "room-1", other.roomId);
+        assertEquals(1, transitions.size());
+    }
+
+    @Test
+    public void endFromAppFinishesTheActivity() {
+        CallSession session = session();
+        CallSession.Join join = session.join("room-1", 0);
+        AtomicInteger finished = new AtomicInteger();
+        session.attach(join.sessionId, finished::incrementAndGet);
+        session.activated(join.sessionId, 100);
+
+        assertTrue(session.requestEnd("app", 1_000));
+        assertEquals(1, finished.get());
+        assertEquals(CallSession.ENDING, session.state());
+        assertFalse("can't rejoin until released", session.join("room-1", 1_100).shouldLaunch());
+        assertTrue("a second end is a no-op", session.requestEnd("app", 1_200));
+        assertEquals(1, finished.get());
+
+        // The activity's own onPause/onDestroy don't add a second ending
+        session.ending(join.sessionId, "hangup", 1_300);
+        session.released(join.sessionId, 1_400);
+        assertEquals(Arrays.asList("idle>joining:join", "joining>active:room-joined",
+            "active>ending:app", "ending>idle:released"), transitions);
+        assertFalse(session.requestEnd("app", 1_500));
+        assertTrue(session.join("room-1", 1_600).shouldLaunch());
+    }
+
+    @Test
+    public void endBeforeTheActivityStartsCancelsTheLaunch() {
+        CallSession session = session();
+        CallSession.Join join = session.join("room-1", 0);
+        assertTrue(session.requestEnd("app", 50));
+        assertEquals(CallSession.IDLE, session.state());
+        assertFalse("the queued launch sees it was ended", session.isCurrent(join.sessionId));
+        assertFalse("and an activity started anyway finishes", session.attach(join.sessionId, () -> { }));
+    }
+
+    @Test
+    public void staleSessionsDoNotTouchTheNewOne() {
+        CallSession session = session();
+        CallSession.Join first = session.join("room-1", 0);
+        session.attach(first.sessionId, () -> { });
+        session.ending(first.sessionId, "hangup", 100);
+        session.released(first.sessionId, 200);
+
+        CallSession.Join second = session.join("room-2", 300);
+        assertNotEquals(first.sessionId, second.sessionId);
+        assertFalse("relaunched from recents", session.attach(first.sessionId, () -> { }));
+        session.activated(first.sessionId, 400);
+        session.ending(first.sessionId, "destroyed", 400);
+        session.released(first.sessionId, 400);
+        assertEquals(CallSession.JOINING, session.state());
+        assertEquals("room-2", session.roomId());
+    }
+
+    @Test
+    public void stuckJoinsAndTeardownsStopBlocking() {
+        CallSession session = session();
+        session.join("room-1", 0);
+        assertEquals(CallSession.JOIN_REJECTED, session.join("room-2", CallSession.JOIN_TIMEOUT_MS - 1).outcome);
+        assertTrue(session.join("room-2", CallSession.JOIN_TIMEOUT_MS).shouldLaunch());
+        assertTrue(transitions.contains("joining>idle:join-timeout"));
+
+        CallSession.Join current = session.join("room-2", 0);
+        session.attach(current.sessionId, () -> { });
+        long ending = 100_000;
+        session.ending(current.sessionId, "hangup", ending);
+        assertFalse(session.join("room-3", ending + CallSession.ENDING_TIMEOUT_MS - 1).shouldLaunch());
+        assertTrue(session.join("room-3", ending + CallSession.ENDING_TIMEOUT_MS).shouldLaunch());
+        assertTrue(transitions.contains("ending>idle:teardown-timeout"));
+    }
+
+    @Test
+    public void attachedJoinsDoNotTimeOut() {
+        CallSession session = session();
+        CallSession.Join join = session.join("room-1", 0);
+        session.attach(join.sessionId, () -> { });
+        // Slow network: the room login takes a while but the activity is up
+        assertFalse(session.join("room-2", CallSession.JOIN_TIMEOUT_MS * 2).shouldLaunch());
+    }
+
+    @Test
+    public void engineIsReleasedOnlyAfterAnIdleStretch() {
+        CallSession session = session();
+        assertFalse("never used", session.engineIdle(CallSession.ENGINE_IDLE_MS * 10));
+        CallSession.Join join = session.join("room-1", 0);
+        session.attach(join.sessionId, () -> { });
+        session.released(join.sessionId, 1_000);
+        assertFalse(session.engineIdle(1_000 + CallSession.ENGINE_IDLE_MS - 1));
+        assertTrue(session.engineIdle(1_000 + CallSession.ENGINE_IDLE_MS));
+
+        session.join("room-2", 1_000 + CallSession.ENGINE_IDLE_MS);
+        assertFalse("back in a call", session.engineIdle(1_000 + CallSession.ENGINE_IDLE_MS * 3));
+    }
+
+    @Test
+    public void concurrentJoinsLaunchOnce() throws Exception {
+        CallSession session = session();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger launched = new AtomicInteger();
+        AtomicInteger merged = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 1_000; j++) {
+                        CallSession.Join join = session.join("room-1", 0);
+                        if (join.shouldLaunch()) {
+                            launched.incrementAndGet();
+                        } else if (CallSession.JOIN_MERGED.equals(join.outcome)) {
+                            merged.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        assertEquals(1, launched.get());
+        assertEquals(threads * 1_000 - 1, merged.get());
+    }
+
+    @Test
+    public void teardownRunsEveryStepInOrder() {
+        List<String> ran = new ArrayList<>();
+        List<String> failed = new CallSession.Teardown()
+            .step("camera", () -> ran.add("camera"))
+            .step("room", () -> {
+                ran.add("room");
+                throw new IllegalStateException("not in a room");
+            })
+            .step("audio", () -> ran.add("audio"))
+            .run();
+        assertEquals(Arrays.asList("camera", "room", "audio"), ran);
+        assertEquals(Collections.singletonList("room: not in a room"), failed);
+    }
+}
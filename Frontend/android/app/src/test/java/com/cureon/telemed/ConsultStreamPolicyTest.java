@@ -0,0 +1,169 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConsultStreamPolicyTest {
+
+    /** A doctor, a patient and a specialist on a 3 Mbps link (2.1 Mbps budget), in that join order. */
+    private static ConsultStreamPolicy consult(int capKbps, String pinned) {
+        ConsultStreamPolicy policy = new ConsultStreamPolicy(capKbps, pinned);
+        policy.start(0);
+        policy.onLink(3_000, 0);
+        policy.onStreamAdded("s_doctor", "doctor", 0);
+        policy.onStreamAdded("s_patient", "patient", 10);
+        policy.onStreamAdded("s_specialist", "specialist", 20);
+        return policy;
+    }
+
+    private static Map<String, Float> levels(String streamId, float level) {
+        Map<String, Float> levels = new HashMap<>();
+        levels.put("s_doctor", 2f);
+        levels.put("s_patient", 2f);
+        levels.put("s_specialist", 2f);
+        levels.put(streamId, level);
+        return levels;
+    }
+
+    private static String tiers(ConsultStreamPolicy policy) {
+        return ConsultStreamPolicy.TIER_NAMES[policy.tier("s_doctor")] + ","
+            + ConsultStreamPolicy.TIER_NAMES[policy.tier("s_patient")] + ","
+            + ConsultStreamPolicy.TIER_NAMES[policy.tier("s_specialist")];
+    }
+
+    @Test
+    public void firstToJoinIsFeaturedUntilSomeoneSpeaks() {
+        ConsultStreamPolicy policy = consult(0, null);
+        assertEquals("high,low,low", tiers(policy));
+        assertEquals("doctor", policy.featuredUserId());
+        assertTrue(policy.allocatedKbps() <= policy.budgetKbps());
+    }
+
+    @Test
+    public void speakerTakesTheBigLayerOnlyAfterHoldingTheFloor() {
+        ConsultStreamPolicy policy = consult(0, null);
+        // Nobody had the floor, so the first speaker gets it at once
+        List<ConsultStreamPolicy.Assignment> changes = policy.onSoundLevels(levels("s_patient", 60), 1_000);
+        assertEquals("[patient:high, doctor:low]", changes.toString());
+
+        // A cough from the specialist isn't a turn
+        assertTrue(policy.onSoundLevels(levels("s_specialist", 70), 4_100).isEmpty());
+        assertTrue(policy.onSoundLevels(levels("s_patient", 50), 4_200).isEmpty());
+        assertTrue(policy.onSoundLevels(levels("s_specialist", 70), 4_300).isEmpty());
+        assertEquals("patient", policy.featuredUserId());
+
+        // Loudest for long enough, with pauses between words, and it switches
+        for (long t = 4_400; t < 5_500; t += 100) {
+            Map<String, Float> levels = t % 300 == 0 ? levels("s_doctor", 2) : levels("s_specialist", 65);
+            assertTrue("at " + t, policy.onSoundLevels(levels, t).isEmpty());
+        }
+        assertFalse(policy.onSoundLevels(levels("s_specialist", 65), 5_500).isEmpty());
+        assertEquals("specialist", policy.featuredUserId());
+        assertEquals("low,low,high", tiers(policy));
+    }
+
+    @Test
+    public void pinnedParticipantStaysFeaturedWhoeverSpeaks() {
+        ConsultStreamPolicy policy = consult(0, "specialist");
+        assertEquals("low,low,high", tiers(policy));
+        for (long t = 0; t < 10_000; t += 100) {
+            policy.onSoundLevels(levels("s_patient", 80), t);
+        }
+        assertEquals("specialist", policy.featuredUserId());
+
+        // Unpinned, the one who has been talking takes over
+        policy.pin(null, 10_000);
+        assertEquals("patient", policy.featuredUserId());
+        assertEquals("low,high,low", tiers(policy));
+    }
+
+    @Test
+    public void capLeavesTheLeastRecentSpeakerOnAudio() {
+        // 500 kbps: 3 x 48 audio, then two small layers; no room for a big one
+        ConsultStreamPolicy policy = consult(500, null);
+        assertEquals(500, policy.budgetKbps());
+        assertEquals("low,low,audio", tiers(policy));
+        assertTrue(policy.allocatedKbps() <= 500);
+
+        // The specialist speaks; of the two silent ones the later to join gives up video
+        policy.onSoundLevels(levels("s_specialist", 50), 1_000);
+        assertEquals("low,audio,low", tiers(policy));
+    }
+
+    @Test
+    public void lossBacksTheBudgetOffAndCleanSecondsWinItBack() {
+        ConsultStreamPolicy policy = consult(0, null);
+        long t = 1_000;
+        policy.onStreamQuality("s_patient", 200, 0.15f, t);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(policy.tick(t += 1_000, 2).isEmpty());
+        }
+        // Three lossy seconds: 75% of the 1.2 Mbps in use keeps the speaker's big layer only
+        policy.tick(t += 1_000, 2);
+        assertEquals("high,audio,audio", tiers(policy));
+        int backedOff = policy.budgetKbps();
+        assertEquals(900, backedOff);
+
+        policy.onStreamQuality("s_patient", 50, 0, t);
+        int seconds = 0;
+        while (!"high,low,audio".equals(tiers(policy))) {
+            policy.tick(t += 1_000, 1);
+            assertTrue("never recovered", ++seconds < 60);
+        }
+        assertTrue(policy.budgetKbps() > backedOff);
+        while (!"high,low,low".equals(tiers(policy))) {
+            policy.tick(t += 1_000, 1);
+            assertTrue("never recovered", ++seconds < 60);
+        }
+        assertTrue(policy.allocatedKbps() <= policy.budgetKbps());
+    }
+
+    @Test
+    public void measuredCostsReplaceTheDefaults() {
+        // 1 Mbps: the doctor's big layer at its default 800 leaves nothing for the others
+        ConsultStreamPolicy policy = consult(1_000, null);
+        assertEquals("high,audio,audio", tiers(policy));
+
+        // The doctor's camera is off; once the layer has settled it turns out to cost 60 kbps
+        for (long t = 1_000; t <= 3_000; t += 1_000) {
+            assertTrue(policy.tick(t, 1).isEmpty());
+            policy.onStreamQuality("s_doctor", 60, 0, t);
+        }
+        // The specialist never had video to lose; the patient lost it when the specialist
+        // joined and waits out the hold before getting it back
+        assertEquals("[specialist:low]", policy.tick(4_000, 1).toString());
+        assertEquals("[patient:low]", policy.tick(6_000, 1).toString());
+        assertEquals("high,low,low", tiers(policy));
+    }
+
+    @Test
+    public void participantsComeAndGoWithoutEndingTheRoom() {
+        ConsultStreamPolicy policy = consult(0, null);
+        List<ConsultStreamPolicy.Assignment> changes = policy.onStreamRemoved("s_doctor", 30_000);
+        assertEquals("[patient:high]", changes.toString());
+        assertEquals(-1, policy.tier("s_doctor"));
+        policy.onStreamRemoved("s_patient", 31_000);
+        policy.onStreamRemoved("s_specialist", 32_000);
+        assertEquals(0, policy.participants());
+        assertFalse(policy.shouldEnd(32_000 + ConsultStreamPolicy.EMPTY_ROOM_MS - 1));
+
+        // The doctor rejoins after a dropped connection
+        assertEquals("[doctor:high]", policy.onStreamAdded("s_doctor", "doctor", 60_000).toString());
+        assertFalse(policy.shouldEnd(60_000 + ConsultStreamPolicy.EMPTY_ROOM_MS));
+        policy.onStreamRemoved("s_doctor", 70_000);
+        assertTrue(policy.shouldEnd(70_000 + ConsultStreamPolicy.EMPTY_ROOM_MS));
+    }
+
+    @Test
+    public void emptyRoomEndsIfNobodyEverComes() {
+        ConsultStreamPolicy policy = new ConsultStreamPolicy(0, null);
+        policy.start(1_000);
+        assertFalse(policy.shouldEnd(1_000 + ConsultStreamPolicy.EMPTY_ROOM_MS - 1));
+        assertTrue(policy.shouldEnd(1_000 + ConsultStreamPolicy.EMPTY_ROOM_MS));
+    }
+}
@@ -0,0 +1,369 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Runs the store against a local server that honours Range and If-Range, and can drop connections. */
+public class DocumentStoreTest {
+    private static final int KB = 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String origin;
+    private File dir;
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Map<String, byte[]> documents = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    /** Path to the number of body bytes the next reply sends before hanging up. */
+    private final Map<String, Integer> dropAfter = new ConcurrentHashMap<>();
+    /** When set, every reply hangs up after this many body bytes. */
+    private volatile int dropEvery;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile long delayMs;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        origin = "http://127.0.0.1:" + server.getAddress().getPort();
+        dir = tmp.newFolder("documents");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        requests.add(path + (range == null ? "" : " " + range) + (ifRange == null ? "" : " if " + ifRange));
+        int running = active.incrementAndGet();
+        maxActive.accumulateAndGet(running, Math::max);
+        try {
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            byte[] body = documents.get(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String etag = etags.get(path);
+            exchange.getResponseHeaders().add("Content-Type", "application/pdf");
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            int start = 0;
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                if (start >= body.length) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes */" + body.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Range",
+                    "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+                exchange.sendResponseHeaders(206, body.length - start);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+            }
+            Integer drop = dropAfter.remove(path);
+            if (drop == null && dropEvery > 0) {
+                drop = dropEvery;
+            }
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, start, drop == null ? body.length - start : Math.min(drop, body.length - start));
+            out.flush();
+            if (drop != null) {
+                // Hang up mid-body, as a weak link does
+                return;
+            }
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private String publish(String path, int size, int seed) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) (i * 31 + seed);
+        }
+        documents.put(path, body);
+        etags.put(path, "\"" + path.hashCode() + "-" + seed + "\"");
+        return origin + path;
+    }
+
+    private DocumentStore store(long maxBytes) {
+        return new DocumentStore(dir, maxBytes, DocumentStore.DEFAULT_MAX_PER_HOST, now::get);
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    public void downloadsOnceThenOpensFromDisk() throws Exception {
+        String url = publish("/xray.pdf", 200 * KB, 1);
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        List<Long> progress = new ArrayList<>();
+
+        DocumentStore.Document first = store.open(url, null, null, false, (bytes, total) -> {
+            assertEquals(200 * KB, total);
+            progress.add(bytes);
+        });
+        assertFalse(first.cached);
+        assertEquals("application/pdf", first.mimeType);
+        assertEquals(sha256(documents.get("/xray.pdf")), first.sha256);
+        assertEquals(first.sha256, first.file.getName());
+        assertArrayEquals(documents.get("/xray.pdf"), Files.readAllBytes(first.file.toPath()));
+        assertEquals(200L * KB, (long) progress.get(progress.size() - 1));
+
+        // Opening again, even from a fresh process, never reaches the server
+        DocumentStore reopened = store(DocumentStore.DEFAULT_MAX_BYTES);
+        DocumentStore.Document second = reopened.open(url, null, null, false, null);
+        assertTrue(second.cached);
+        assertEquals(first.sha256, second.sha256);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void droppedConnectionResumesWhereItStopped() throws Exception {
+        String url = publish("/mri.pdf", 300 * KB, 2);
+        dropAfter.put("/mri.pdf", 120 * KB);
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+
+        DocumentStore.Document doc = store.open(url, null, null, false, null);
+        assertArrayEquals(documents.get("/mri.pdf"), Files.readAllBytes(doc.file.toPath()));
+        assertEquals(2, requests.size());
+        assertEquals("/mri.pdf bytes=" + 120 * KB + "- if " + etags.get("/mri.pdf"), requests.get(1));
+    }
+
+    @Test
+    public void partialDownloadSurvivesARestart() throws Exception {
+        String url = publish("/scan.pdf", 100 * KB, 3);
+        // Every attempt of the first process dies after 10 KB more
+        dropEvery = 10 * KB;
+        DocumentStore first = store(DocumentStore.DEFAULT_MAX_BYTES);
+        try {
+            first.open(url, null, null, false, null);
+            fail("every attempt was cut off");
+        } catch (IOException expected) {
+            // The part file holds 40 KB
+        }
+        assertEquals(4, requests.size());
+        assertEquals(0, first.documents());
+
+        dropEvery = 0;
+        requests.clear();
+        DocumentStore second = store(DocumentStore.DEFAULT_MAX_BYTES);
+        DocumentStore.Document doc = second.open(url, null, null, false, null);
+        assertArrayEquals(documents.get("/scan.pdf"), Files.readAllBytes(doc.file.toPath()));
+        assertEquals(Collections.singletonList("/scan.pdf bytes=" + 40 * KB + "- if " + etags.get("/scan.pdf")),
+            requests);
+    }
+
+    @Test
+    public void changedDocumentStartsOverInsteadOfSplicing() throws Exception {
+        String url = publish("/report.pdf", 64 * KB, 4);
+        dropAfter.put("/report.pdf", 20 * KB);
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        // Re-uploaded between the drop and the retry: If-Range no longer matches, so the reply is a full 200
+        server.removeContext("/");
+        AtomicInteger calls = new AtomicInteger();
+        server.createContext("/", exchange -> {
+            if (calls.incrementAndGet() == 2) {
+                publish("/report.pdf", 64 * KB, 5);
+            }
+            serve(exchange);
+        });
+
+        DocumentStore.Document doc = store.open(url, null, null, false, null);
+        assertArrayEquals(documents.get("/report.pdf"), Files.readAllBytes(doc.file.toPath()));
+        assertEquals(sha256(documents.get("/report.pdf")), doc.sha256);
+    }
+
+    @Test
+    public void hashMismatchStoresNothing() throws Exception {
+        String url = publish("/lab.pdf", 10 * KB, 6);
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        try {
+            store.open(url, null, sha256(new byte[] { 1 }), false, null);
+            fail("wrong hash accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Integrity"));
+        }
+        assertNull(store.cached(url));
+        assertEquals(0, store.storedBytes());
+
+        String expected = sha256(documents.get("/lab.pdf"));
+        assertEquals(expected, store.open(url, null, expected.toUpperCase(), false, null).sha256);
+    }
+
+    @Test
+    public void concurrentOpensOfOneDocumentShareADownload() throws Exception {
+        String url = publish("/ct.pdf", 256 * KB, 7);
+        delayMs = 200;
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<DocumentStore.Document>> opens = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                opens.add(pool.submit(() -> store.open(url, null, null, false, null)));
+            }
+            for (Future<DocumentStore.Document> open : opens) {
+                assertEquals(sha256(documents.get("/ct.pdf")), open.get(10, TimeUnit.SECONDS).sha256);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void perHostLimitCapsParallelDownloads() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            urls.add(publish("/doc" + i + ".pdf", 8 * KB, 10 + i));
+        }
+        delayMs = 150;
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<DocumentStore.Document>> opens = new ArrayList<>();
+            for (String url : urls) {
+                opens.add(pool.submit(() -> store.open(url, null, null, false, null)));
+            }
+            for (Future<DocumentStore.Document> open : opens) {
+                assertNotNull(open.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(6, requests.size());
+        assertEquals(DocumentStore.DEFAULT_MAX_PER_HOST, maxActive.get());
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() throws Exception {
+        String a = publish("/a.pdf", 50 * KB, 20);
+        String b = origin + "/copy-of-a.pdf";
+        documents.put("/copy-of-a.pdf", documents.get("/a.pdf"));
+        etags.put("/copy-of-a.pdf", "\"copy\"");
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+
+        assertEquals(store.open(a, null, null, false, null).file, store.open(b, null, null, false, null).file);
+        assertEquals(2, store.documents());
+        assertEquals(1, store.files());
+        assertEquals(50L * KB, store.storedBytes());
+    }
+
+    @Test
+    public void budgetEvictsLeastRecentlyOpenedButNeverPinned() throws Exception {
+        String own = publish("/own.pdf", 40 * KB, 30);
+        String old = publish("/old.pdf", 40 * KB, 31);
+        String recent = publish("/recent.pdf", 40 * KB, 32);
+        String incoming = publish("/incoming.pdf", 40 * KB, 33);
+        DocumentStore store = store(130 * KB);
+
+        store.open(own, null, null, true, null);
+        now.addAndGet(1_000);
+        store.open(old, null, null, false, null);
+        now.addAndGet(1_000);
+        store.open(recent, null, null, false, null);
+        // The pinned one is the oldest, but it is the old unpinned one that goes
+        now.addAndGet(1_000);
+        store.open(incoming, null, null, false, null);
+
+        assertNotNull(store.cached(own));
+        assertNull(store.cached(old));
+        assertNotNull(store.cached(recent));
+        assertNotNull(store.cached(incoming));
+        assertEquals(120L * KB, store.storedBytes());
+        assertEquals(40L * KB, store.pinnedBytes());
+
+        // Unpinning is enough to make it a candidate; the index remembers across restarts
+        store.pinOnly(Collections.singletonList(recent));
+        DocumentStore reopened = store(130 * KB);
+        assertTrue(reopened.cached(recent).pinned);
+        assertFalse(reopened.cached(own).pinned);
+    }
+
+    @Test
+    public void missingFileIsDownloadedAgain() throws Exception {
+        String url = publish("/echo.pdf", 16 * KB, 40);
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        File file = store.open(url, null, null, false, null).file;
+        assertTrue(file.delete());
+
+        DocumentStore.Document doc = store.open(url, null, null, false, null);
+        assertFalse(doc.cached);
+        assertTrue(doc.file.isFile());
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void missingDocumentFailsWithoutRetrying() throws Exception {
+        DocumentStore store = store(DocumentStore.DEFAULT_MAX_BYTES);
+        try {
+            store.open(origin + "/nowhere.pdf", null, null, false, null);
+            fail("404 accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("404"));
+        }
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void parsesContentRange() {
+        assertArrayEquals(new long[] { 100, 1000 }, DocumentStore.parseContentRange("bytes 100-999/1000"));
+        assertArrayEquals(new long[] { 0, -1 }, DocumentStore.parseContentRange("bytes 0-99/*"));
+        assertNull(DocumentStore.parseContentRange("bytes */1000"));
+        assertNull(DocumentStore.parseContentRange(null));
+        assertEquals("image/jpeg", DocumentStore.mimeType("application/octet-stream", "https://x/y/chest.JPG?v=2"));
+        assertEquals("application/pdf", DocumentStore.mimeType("application/pdf; charset=binary", "https://x/y"));
+    }
+}
@@ -0,0 +1,323 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Drives the queue through simulated days of alarms, the way the receiver does. */
+public class DoseQueueTest {
+    private static final ZoneId KOLKATA = ZoneId.of("Asia/Kolkata");
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static long at(int year, int month, int day, int hour, int minute, ZoneId zone) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, zone).toInstant().toEpochMilli();
+    }
+
+    private static long epochDay(int year, int month, int day) {
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    private static DoseSchedule schedule(String id, long startDay, long endDay, int... minutes) {
+        short[] times = new short[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            times[i] = (short) minutes[i];
+        }
+        return new DoseSchedule(id, "Med " + id, "1 tablet", "", times, startDay, endDay);
+    }
+
+    private static String times(String frequency) {
+        short[] minutes = DoseSchedule.parseFrequency(frequency);
+        if (minutes == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (short minute : minutes) {
+            text.append(text.length() > 0 ? " " : "").append(DoseSchedule.formatTime(minute));
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void parsesPrescriptionFrequencies() {
+        assertEquals("08:00", times("Once daily"));
+        assertEquals("08:00 20:00", times("Twice daily"));
+        assertEquals("08:00 20:00", times("2 times a day"));
+        assertEquals("08:00 20:00", times("BD"));
+        assertEquals("08:00 14:00 20:00", times("three times a day after food"));
+        assertEquals("08:00 14:00 20:00", times("TDS"));
+        assertEquals("08:00 20:00", times("1-0-1"));
+        assertEquals("14:00", times("0 - 1 - 0"));
+        assertEquals("08:00 14:00 20:00 21:30", times("1-1-1-1"));
+        assertEquals("21:30", times("At bedtime"));
+        assertEquals("02:00 08:00 14:00 20:00", times("every 6 hours"));
+        assertNull(times("As needed"));
+        assertNull(times("0-0-0"));
+        assertNull(times(null));
+
+        assertEquals(5, DoseSchedule.parseDurationDays("5 days"));
+        assertEquals(14, DoseSchedule.parseDurationDays("2 Weeks"));
+        assertEquals(30, DoseSchedule.parseDurationDays("1 month"));
+        assertEquals(0, DoseSchedule.parseDurationDays("Continue"));
+        assertEquals(8 * 60 + 5, DoseSchedule.parseTime("8:05"));
+        assertEquals("21:30", DoseSchedule.formatTime((short) DoseSchedule.BEDTIME));
+    }
+
+    @Test
+    public void nextDoseFollowsTheDayAndStopsAtTheEndOfTheCourse() {
+        DoseSchedule s = schedule("a", epochDay(2026, 3, 1), epochDay(2026, 3, 2), 8 * 60, 20 * 60);
+        // Before the course starts: the first dose of day one
+        assertEquals(at(2026, 3, 1, 8, 0, KOLKATA), s.nextDoseAfter(at(2026, 2, 20, 12, 0, KOLKATA), KOLKATA));
+        assertEquals(at(2026, 3, 1, 20, 0, KOLKATA), s.nextDoseAfter(at(2026, 3, 1, 8, 0, KOLKATA), KOLKATA));
+        assertEquals(at(2026, 3, 2, 8, 0, KOLKATA), s.nextDoseAfter(at(2026, 3, 1, 21, 0, KOLKATA), KOLKATA));
+        assertEquals(-1, s.nextDoseAfter(at(2026, 3, 2, 20, 0, KOLKATA), KOLKATA));
+    }
+
+    @Test
+    public void keepsWallClockTimesAcrossDaylightSaving() {
+        ZoneId london = ZoneId.of("Europe/London");
+        DoseSchedule s = schedule("a", epochDay(2026, 1, 1), DoseSchedule.OPEN_ENDED, 1 * 60 + 30, 8 * 60);
+        // Clocks go forward at 01:00 on 29 March; 01:30 doesn't exist and moves to 02:30
+        long gap = s.nextDoseAfter(at(2026, 3, 28, 23, 0, london), london);
+        assertEquals(LocalDateTime.of(2026, 3, 29, 2, 30), LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(gap), london));
+        long morning = s.nextDoseAfter(gap, london);
+        assertEquals(LocalDateTime.of(2026, 3, 29, 8, 0), LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(morning), london));
+    }
+
+    @Test
+    public void firesEachDoseOnceAndSurvivesRestart() throws IOException {
+        File dir = tmp.newFolder();
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(dir, KOLKATA, now);
+        queue.putAll(Arrays.asList(
+            schedule("a", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60, 20 * 60),
+            schedule("b", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60),
+            schedule("c", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 14 * 60)), now);
+        assertEquals(at(2026, 3, 1, 8, 0, KOLKATA), queue.nextAlarmAt());
+        assertTrue(queue.collectDue(now).isEmpty());
+
+        List<DoseQueue.Due> eight = queue.collectDue(at(2026, 3, 1, 8, 0, KOLKATA));
+        assertEquals(2, eight.size());
+        assertEquals(at(2026, 3, 1, 14, 0, KOLKATA), queue.nextAlarmAt());
+        // A late duplicate alarm doesn't show them again
+        assertTrue(queue.collectDue(at(2026, 3, 1, 8, 1, KOLKATA)).isEmpty());
+
+        DoseQueue reopened = new DoseQueue(dir, KOLKATA, at(2026, 3, 1, 9, 0, KOLKATA));
+        assertEquals(3, reopened.size());
+        assertEquals(at(2026, 3, 1, 14, 0, KOLKATA), reopened.nextAlarmAt());
+        assertEquals("Med a", reopened.get("a").name);
+        assertEquals(at(2026, 3, 1, 20, 0, KOLKATA), reopened.nextFor("a"));
+    }
+
+    @Test
+    public void catchesUpAfterAPowerOffWithoutFloodingThePatient() throws IOException {
+        File dir = tmp.newFolder();
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(dir, KOLKATA, now);
+        queue.put(schedule("a", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60, 14 * 60, 20 * 60), now);
+
+        // Off from 07:00 on the 1st to 15:00 on the 4th
+        long boot = at(2026, 3, 4, 15, 0, KOLKATA);
+        DoseQueue reopened = new DoseQueue(dir, KOLKATA, boot);
+        List<DoseQueue.Due> due = reopened.collectDue(boot);
+        // Only the 14:00 dose is recent enough to still be worth taking
+        assertEquals(1, due.size());
+        assertEquals(at(2026, 3, 4, 14, 0, KOLKATA), due.get(0).doseAt);
+        List<DoseQueue.Entry> missed = reopened.history(0);
+        // The last day's worth, not three days of them
+        assertEquals(2, missed.size());
+        for (DoseQueue.Entry entry : missed) {
+            assertEquals(DoseQueue.MISSED, entry.action);
+        }
+        assertEquals(at(2026, 3, 4, 20, 0, KOLKATA), reopened.nextAlarmAt());
+    }
+
+    @Test
+    public void snoozeAndTakenAreLoggedAgainstTheOriginalDose() throws IOException {
+        File dir = tmp.newFolder();
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(dir, KOLKATA, now);
+        queue.put(schedule("a", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60), now);
+        long dose = at(2026, 3, 1, 8, 0, KOLKATA);
+        assertEquals(1, queue.collectDue(dose).size());
+
+        assertTrue(queue.snooze("a", dose, dose + 10 * MINUTE, dose + MINUTE));
+        assertEquals(dose + 10 * MINUTE, queue.nextAlarmAt());
+        // The snooze survives a restart
+        queue = new DoseQueue(dir, KOLKATA, dose + 2 * MINUTE);
+        assertEquals(dose + 10 * MINUTE, queue.nextAlarmAt());
+        List<DoseQueue.Due> again = queue.collectDue(dose + 10 * MINUTE);
+        assertEquals(1, again.size());
+        assertEquals(dose, again.get(0).doseAt);
+        assertEquals(dose + DAY, queue.nextAlarmAt());
+
+        queue.taken("a", dose, dose + 11 * MINUTE);
+        List<DoseQueue.Entry> log = queue.history(0);
+        assertEquals(2, log.size());
+        assertEquals(DoseQueue.SNOOZED, log.get(0).action);
+        assertEquals(DoseQueue.TAKEN, log.get(1).action);
+        assertEquals(dose, log.get(1).doseAt);
+        assertEquals("taken", DoseQueue.actionName(log.get(1).action));
+    }
+
+    @Test
+    public void takingASnoozedDoseEarlyCancelsTheSnooze() throws IOException {
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(tmp.newFolder(), KOLKATA, now);
+        queue.put(schedule("a", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60), now);
+        long dose = at(2026, 3, 1, 8, 0, KOLKATA);
+        queue.collectDue(dose);
+        queue.snooze("a", dose, dose + 10 * MINUTE, dose);
+        queue.taken("a", dose, dose + 5 * MINUTE);
+        assertEquals(dose + DAY, queue.nextAlarmAt());
+    }
+
+    @Test
+    public void removedAndReplacedSchedulesStopFiring() throws IOException {
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(tmp.newFolder(), KOLKATA, now);
+        queue.putAll(Arrays.asList(
+            schedule("a", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60),
+            schedule("b", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 9 * 60)), now);
+        assertTrue(queue.remove("a"));
+        assertFalse(queue.remove("a"));
+        assertEquals(at(2026, 3, 1, 9, 0, KOLKATA), queue.nextAlarmAt());
+        // Moved to the evening
+        queue.put(schedule("b", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 21 * 60), now);
+        assertEquals(at(2026, 3, 1, 21, 0, KOLKATA), queue.nextAlarmAt());
+        assertTrue(queue.collectDue(at(2026, 3, 1, 10, 0, KOLKATA)).isEmpty());
+        queue.clear();
+        assertEquals(-1, queue.nextAlarmAt());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void rezoneKeepsTheLocalTimes() throws IOException {
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(tmp.newFolder(), KOLKATA, now);
+        queue.put(schedule("a", epochDay(2026, 2, 28), DoseSchedule.OPEN_ENDED, 8 * 60), now);
+        ZoneId dubai = ZoneId.of("Asia/Dubai");
+        queue.rezone(dubai, now);
+        // 07:00 in Kolkata is 05:30 in Dubai, so 08:00 there is still to come
+        assertEquals(at(2026, 3, 1, 8, 0, dubai), queue.nextAlarmAt());
+    }
+
+    @Test
+    public void rejectsACorruptStore() throws IOException {
+        File dir = tmp.newFolder();
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        new DoseQueue(dir, KOLKATA, now).put(schedule("a", epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED, 8 * 60), now);
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, DoseQueue.SCHEDULES_FILE), "rw")) {
+            raf.seek(20);
+            raf.write(raf.read() ^ 0xFF);
+        }
+        try {
+            new DoseQueue(dir, KOLKATA, now);
+            fail("Expected a checksum error");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+    }
+
+    /**
+     * An elderly patient's twelve medications, up to four doses a day, over a
+     * 90-day course: ~2,700 alarms fired one by one as AlarmManager would.
+     * Every dose must come once, in order, with a single alarm armed at a time.
+     */
+    @Test
+    public void scaleFiresThousandsOfDosesInOrder() throws IOException {
+        File dir = tmp.newFolder();
+        long start = at(2026, 3, 1, 0, 0, KOLKATA);
+        long first = epochDay(2026, 3, 1);
+        long last = first + 89;
+        DoseQueue queue = new DoseQueue(dir, KOLKATA, start);
+        Random random = new Random(7);
+        List<DoseSchedule> meds = new ArrayList<>();
+        int expected = 0;
+        for (int i = 0; i < 12; i++) {
+            int perDay = 1 + random.nextInt(4);
+            int[] minutes = new int[perDay];
+            for (int j = 0; j < perDay; j++) {
+                minutes[j] = (6 + j * 4) * 60 + random.nextInt(4) * 15;
+            }
+            meds.add(schedule("med" + i, first, last, minutes));
+            expected += perDay * 90;
+        }
+        queue.putAll(meds, start);
+
+        Map<String, Integer> perMed = new HashMap<>();
+        int fired = 0;
+        int alarms = 0;
+        long previous = 0;
+        long alarm;
+        while ((alarm = queue.nextAlarmAt()) > 0) {
+            assertTrue("alarms go forward", alarm > previous);
+            previous = alarm;
+            alarms++;
+            for (DoseQueue.Due due : queue.collectDue(alarm)) {
+                assertEquals(alarm, due.at);
+                perMed.merge(due.schedule.id, 1, Integer::sum);
+                fired++;
+            }
+        }
+        assertEquals(expected, fired);
+        for (DoseSchedule med : meds) {
+            assertEquals(med.minutes.length * 90, (int) perMed.get(med.id));
+        }
+        // Doses at the same minute share one alarm
+        assertTrue(alarms < fired);
+    }
+
+    /** Thousands of schedules: saved compactly, reloaded intact, and only the head matters. */
+    @Test
+    public void scaleLoadsThousandsOfSchedules() throws IOException {
+        File dir = tmp.newFolder();
+        long now = at(2026, 3, 1, 7, 0, KOLKATA);
+        DoseQueue queue = new DoseQueue(dir, KOLKATA, now);
+        List<DoseSchedule> schedules = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 5_000; i++) {
+            schedules.add(schedule("s" + i, epochDay(2026, 3, 1), DoseSchedule.OPEN_ENDED,
+                random.nextInt(24 * 60), random.nextInt(24 * 60)));
+        }
+        queue.putAll(schedules, now);
+        long expectedHead = Long.MAX_VALUE;
+        for (DoseSchedule s : schedules) {
+            expectedHead = Math.min(expectedHead, s.nextDoseAfter(now, KOLKATA));
+        }
+        assertEquals(expectedHead, queue.nextAlarmAt());
+
+        DoseQueue reopened = new DoseQueue(dir, KOLKATA, now);
+        assertEquals(5_000, reopened.size());
+        assertEquals(expectedHead, reopened.nextAlarmAt());
+
+        // A day of alarms over 10,000 doses
+        int fired = 0;
+        long alarm;
+        while ((alarm = reopened.nextAlarmAt()) > 0 && alarm <= now + DAY) {
+            fired += reopened.collectDue(alarm).size();
+        }
+        assertTrue(fired >= 9_900);
+        long bytes = new File(dir, DoseQueue.SCHEDULES_FILE).length();
+        assertTrue("compact store: " + bytes, bytes < 5_000 * 64);
+    }
+}
@@ -0,0 +1,170 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class HealthRulesTest {
+
+    private static String resource(String name) throws IOException {
+        InputStream in = HealthRulesTest.class.getResourceAsStream("/health-rules/" + name);
+        assertNotNull("missing fixture " + name, in);
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static HealthRules rules(String set) throws IOException, JSONException {
+        return HealthRules.compile(new JSONObject(resource(set + ".snapshot.json")));
+    }
+
+    private static double cell(String value) {
+        return value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+    }
+
+    // goldens.csv is checkAbnormality's own output (Backend/scripts/exportHealthRuleParity.js);
+    // the snapshots next to it come from toRuleSnapshot for the same thresholds
+    @Test
+    public void matchesTheBackendOnEveryGoldenReading() throws Exception {
+        int checked = 0;
+        int abnormal = 0;
+        for (String line : resource("goldens.csv").split("\n")) {
+            if (line.startsWith("#") || line.startsWith("set,")) {
+                continue;
+            }
+            String[] cols = line.split(",", -1);
+            HealthRules rules = rules(cols[0]);
+            double single = cell(cols[2]);
+            double systolic = cell(cols[3]);
+            double diastolic = cell(cols[4]);
+            int rule = rules.match(HealthRules.typeCode(cols[1]), single, systolic, diastolic);
+
+            assertEquals(line, cols[5], rules.severity(rule));
+            assertEquals(line, cols[6], rules.message(rule, single, systolic, diastolic));
+            checked++;
+            if (rule >= 0) {
+                abnormal++;
+            }
+        }
+        assertTrue(checked > 400);
+        assertTrue("fixture should exercise both outcomes", abnormal > 100 && checked - abnormal > 50);
+    }
+
+    @Test
+    public void ruleOrderInTheSnapshotDoesNotMatter() throws Exception {
+        JSONObject snapshot = new JSONObject(resource("defaults.snapshot.json")).getJSONObject("snapshot");
+        JSONArray rules = snapshot.getJSONArray("rules");
+        List<Object> shuffled = new ArrayList<>();
+        for (int i = 0; i < rules.length(); i++) {
+            shuffled.add(rules.get(i));
+        }
+        Collections.shuffle(shuffled, new Random(11));
+        snapshot.put("rules", new JSONArray(shuffled));
+        HealthRules compiled = HealthRules.compile(snapshot);
+
+        int hr = HealthRules.HEART_RATE;
+        assertEquals(HealthRules.CRITICAL, compiled.severity(compiled.match(hr, 160, Double.NaN, Double.NaN)));
+        assertEquals(HealthRules.WARNING, compiled.severity(compiled.match(hr, 130, Double.NaN, Double.NaN)));
+        int bp = HealthRules.BLOOD_PRESSURE;
+        int rule = compiled.match(bp, Double.NaN, 150, 125);
+        assertEquals("the critical diastolic wins over the warning systolic", HealthRules.CRITICAL, compiled.severity(rule));
+        assertEquals("Critical blood pressure: 150/125 mmHg", compiled.message(rule, Double.NaN, 150, 125));
+    }
+
+    @Test
+    public void snapshotSettingsAndForwardCompatibility() throws Exception {
+        JSONObject snapshot = new JSONObject(resource("cardiac.snapshot.json")).getJSONObject("snapshot");
+        HealthRules rules = HealthRules.compile(snapshot);
+        assertEquals(1767225600001L, rules.version);
+        assertTrue(rules.monitoringEnabled);
+        assertTrue(rules.notifications);
+        assertEquals(snapshot.getJSONArray("rules").length(), rules.ruleCount());
+
+        snapshot.put("monitoringEnabled", false);
+        snapshot.getJSONArray("rules").put(new JSONArray("[\"respiratory_rate\",\"single\",\"gt\",30,\"critical\",\"x\"]"));
+        HealthRules newer = HealthRules.compile(snapshot);
+        assertFalse(newer.monitoringEnabled);
+        assertEquals("unknown reading types are skipped", rules.ruleCount(), newer.ruleCount());
+        assertEquals(-1, newer.match(HealthRules.typeCode("respiratory_rate"), 99, Double.NaN, Double.NaN));
+
+        snapshot.put("format", HealthRules.FORMAT + 1);
+        try {
+            HealthRules.compile(snapshot);
+            fail("a newer snapshot format must not be half-understood");
+        } catch (JSONException expected) {
+            // keep the previous rules
+        }
+    }
+
+    @Test
+    public void numbersPrintTheWayJavaScriptDoes() {
+        assertEquals("120", HealthRules.formatNumber(120.0));
+        assertEquals("100.4", HealthRules.formatNumber(100.4));
+        assertEquals("99.95", HealthRules.formatNumber(99.95));
+        assertEquals("0.1", HealthRules.formatNumber(0.1));
+        assertEquals("-3", HealthRules.formatNumber(-3));
+        assertEquals("undefined", HealthRules.formatNumber(Double.NaN));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // Checked on every vitals batch and journal append, so matching must not allocate
+    @Test
+    public void matchingDoesNotAllocate() throws Exception {
+        HealthRules rules = rules("defaults");
+        Random random = new Random(5);
+        int[] types = new int[4096];
+        double[] values = new double[4096 * 3];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = random.nextInt(5);
+            values[i * 3] = types[i] == HealthRules.TEMPERATURE ? 94 + random.nextDouble() * 10
+                : types[i] == HealthRules.SPO2 ? 85 + random.nextDouble() * 15 : 30 + random.nextDouble() * 250;
+            values[i * 3 + 1] = 90 + random.nextDouble() * 110;
+            values[i * 3 + 2] = 55 + random.nextDouble() * 75;
+        }
+        // Warm up so class loading isn't counted
+        for (int k = 0; k < types.length; k++) {
+            rules.match(types[k], values[k * 3], values[k * 3 + 1], values[k * 3 + 2]);
+        }
+        int critical = 0;
+        long allocBefore = allocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            int k = i & 4095;
+            int rule = rules.match(types[k], values[k * 3], values[k * 3 + 1], values[k * 3 + 2]);
+            if (rule >= 0 && rules.severity(rule) == HealthRules.CRITICAL) {
+                critical++;
+            }
+        }
+        long alloc = allocBefore < 0 ? -1 : allocatedBytes() - allocBefore;
+        assertTrue(critical > 0);
+        if (alloc >= 0) {
+            assertTrue("allocates " + alloc + " bytes", alloc < 64 * 1024);
+        }
+    }
+}
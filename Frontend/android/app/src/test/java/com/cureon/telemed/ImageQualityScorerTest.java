@@ -0,0 +1,116 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+public class ImageQualityScorerTest {
+    private static byte[] load(String file, int[] size) throws IOException {
+        BufferedImage image;
+        try (InputStream in = ImageQualityScorerTest.class.getResourceAsStream("/image-quality/" + file)) {
+            assertNotNull("missing golden " + file, in);
+            image = ImageIO.read(in);
+        }
+        size[0] = image.getWidth();
+        size[1] = image.getHeight();
+        byte[] luma = new byte[size[0] * size[1]];
+        image.getRaster().getDataElements(0, 0, size[0], size[1], luma);
+        return luma;
+    }
+
+    @Test
+    public void goldenImagesScoreAsRecorded() throws IOException {
+        ImageQualityScorer scorer = new ImageQualityScorer();
+        InputStream in = ImageQualityScorerTest.class.getResourceAsStream("/image-quality/goldens.csv");
+        assertNotNull("missing image-quality/goldens.csv", in);
+        int checked = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.startsWith("file")) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                int[] size = new int[2];
+                byte[] luma = load(f[0], size);
+                ImageQualityScorer.Result result = scorer.assess(luma, size[0], size[1], size[0],
+                    Integer.parseInt(f[2]), Integer.parseInt(f[3]), ImageQualityScorer.profile(f[1]));
+                List<String> expected = "ok".equals(f[4]) ? Collections.emptyList() : Arrays.asList(f[4].split("\\|"));
+                String label = f[0] + " as " + f[1] + " " + f[2] + "x" + f[3];
+                assertEquals(label, expected, result.reasons);
+                assertEquals(label, "ok".equals(f[4]), result.acceptable());
+                assertEquals(label, Integer.parseInt(f[5]), result.score);
+                checked++;
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void honoursTheRowStride() throws IOException {
+        int[] size = new int[2];
+        byte[] luma = load("skin_good.png", size);
+        int stride = size[0] + 40;
+        byte[] padded = new byte[stride * size[1]];
+        for (int y = 0; y < size[1]; y++) {
+            System.arraycopy(luma, y * size[0], padded, y * stride, size[0]);
+            // Garbage in the padding must not leak into the metrics
+            Arrays.fill(padded, y * stride + size[0], (y + 1) * stride, (byte) 255);
+        }
+        ImageQualityScorer scorer = new ImageQualityScorer();
+        ImageQualityScorer.Result tight = scorer.assess(luma, size[0], size[1], size[0], 4000, 3000,
+            ImageQualityScorer.SKIN);
+        ImageQualityScorer.Result strided = scorer.assess(padded, size[0], size[1], stride, 4000, 3000,
+            ImageQualityScorer.SKIN);
+        assertEquals(tight.sharpness, strided.sharpness, 1e-9);
+        assertEquals(tight.meanLuma, strided.meanLuma, 1e-9);
+        assertEquals(tight.glareFraction, strided.glareFraction, 1e-9);
+    }
+
+    @Test
+    public void modalityNamesMapToProfiles() {
+        assertSame(ImageQualityScorer.RETINA, ImageQualityScorer.profile("retinopathy"));
+        assertSame(ImageQualityScorer.XRAY, ImageQualityScorer.profile("X-Ray"));
+        assertSame(ImageQualityScorer.GENERIC, ImageQualityScorer.profile(null));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // Only the result and its reason list are allocated; nothing scales with the pixel count
+    @Test
+    public void assessingDoesNotAllocatePerPixel() throws IOException {
+        int[] size = new int[2];
+        byte[] luma = load("skin_good.png", size);
+        ImageQualityScorer scorer = new ImageQualityScorer();
+        // Warm up so class loading isn't counted
+        scorer.assess(luma, size[0], size[1], size[0], 4000, 3000, ImageQualityScorer.SKIN);
+        long before = allocatedBytes();
+        ImageQualityScorer.Result result =
+            scorer.assess(luma, size[0], size[1], size[0], 4000, 3000, ImageQualityScorer.SKIN);
+        long alloc = before < 0 ? -1 : allocatedBytes() - before;
+        assertTrue(result.acceptable());
+        if (alloc >= 0) {
+            assertTrue("allocation must not scale with pixels: " + alloc, alloc < 1024);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LeakWatchTest {
+
+    private static List<String> checkAfterGc(LeakWatch watch, long now) throws InterruptedException {
+        // A weak reference is cleared by the first full collection that finds it unreachable
+        for (int i = 0; i < 5 && watch.pending() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            List<String> leaked = watch.check(now);
+            if (!leaked.isEmpty()) {
+                return leaked;
+            }
+        }
+        return watch.check(now);
+    }
+
+    @Test
+    public void collectedObjectsAreNotReported() throws Exception {
+        LeakWatch watch = new LeakWatch();
+        List<String> reported = new ArrayList<>();
+        watch.setListener((label, heldMs) -> reported.add(label));
+        watch.watch(new byte[1024], "activity", 0);
+
+        assertTrue(checkAfterGc(watch, LeakWatch.GRACE_MS).isEmpty());
+        assertEquals(0, watch.pending());
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    public void reachableObjectsAreReportedOnceAfterTheGracePeriod() throws Exception {
+        LeakWatch watch = new LeakWatch();
+        List<String> reported = new ArrayList<>();
+        List<Long> held = new ArrayList<>();
+        watch.setListener((label, heldMs) -> {
+            reported.add(label);
+            held.add(heldMs);
+        });
+        // What a static listener left registered with the SDK would do to the activity
+        Object activity = new Object();
+        List<Object> sdkListeners = Collections.singletonList(activity);
+        watch.watch(activity, "ZegoVideoCallActivity#3", 1_000);
+
+        assertTrue("still within the grace period", watch.check(1_000 + LeakWatch.GRACE_MS - 1).isEmpty());
+        assertEquals(Collections.singletonList("ZegoVideoCallActivity#3"), watch.check(1_000 + LeakWatch.GRACE_MS + 250));
+        assertEquals(Collections.singletonList(LeakWatch.GRACE_MS + 250), held);
+        assertTrue("reported once", watch.check(100_000).isEmpty());
+        assertEquals(1, reported.size());
+        assertEquals(1, sdkListeners.size());
+    }
+}
@@ -0,0 +1,296 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Syncs against a local stand-in for GET /medicines/sync with the backend's cursor semantics. */
+public class MedicineCatalogTest {
+    private static final String[] NAMES = { "Paracetamol", "Amoxicillin", "Cetirizine", "Ibuprofen", "Omeprazole" };
+    private static final String[] CATEGORIES = { "Pain Relief", "Antibiotics", "Cold & Flu", "Pain Relief",
+        "Digestive Health" };
+    private static final String[] CITIES = { "Mumbai", "Pune", "New Delhi" };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private File dir;
+    // _id -> document, each with a numeric "updated" the feed orders by
+    private final Map<String, JSONObject> docs = Collections.synchronizedMap(new HashMap<>());
+    private final AtomicInteger requests = new AtomicInteger();
+    private long clock = 1_700_000_000_000L;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(MedicineCatalog.SYNC_PATH, this::serveSync);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        dir = tmp.newFolder("catalog");
+        for (int i = 0; i < 1200; i++) {
+            put(i, NAMES[i % NAMES.length] + " " + (100 + i % 7 * 50) + "mg", 20 + i % 300, true);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private JSONObject put(int n, String name, double price, boolean active) throws Exception {
+        JSONObject doc = new JSONObject()
+            .put("_id", String.format("%024x", n))
+            .put("name", name)
+            .put("genericName", NAMES[n % NAMES.length])
+            .put("manufacturer", n % 2 == 0 ? "ABC Pharma" : "XYZ Labs")
+            .put("composition", name)
+            .put("category", CATEGORIES[n % NAMES.length])
+            .put("price", price)
+            .put("rating", n % 5)
+            .put("soldCount", n % 11)
+            .put("prescriptionRequired", n % NAMES.length == 1)
+            .put("isActive", active)
+            .put("createdAt", Instant.ofEpochMilli(1_600_000_000_000L + n * 1000L).toString())
+            .put("pharmacy", new JSONObject()
+                .put("name", "Pharmacy " + n % 3)
+                .put("address", new JSONObject().put("city", CITIES[n % CITIES.length])))
+            .put("updated", ++clock);
+        docs.put(doc.getString("_id"), doc);
+        return doc;
+    }
+
+    /** The controller's query: (updated, _id) > cursor, oldest first, inactive skipped on a first pull. */
+    private void serveSync(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        Map<String, String> params = new HashMap<>();
+        for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+            String[] kv = pair.split("=", 2);
+            params.put(kv[0], kv.length > 1 ? kv[1] : "");
+        }
+        long since = Long.parseLong(params.getOrDefault("since", "0"));
+        String after = params.get("after");
+        int limit = Integer.parseInt(params.getOrDefault("limit", "500"));
+        List<JSONObject> matching = new ArrayList<>();
+        synchronized (docs) {
+            for (JSONObject doc : docs.values()) {
+                long updated = doc.optLong("updated");
+                boolean newer = after == null ? updated >= since
+                    : updated > since || updated == since && doc.optString("_id").compareTo(after) > 0;
+                if (newer && (since > 0 || after != null || doc.optBoolean("isActive"))) {
+                    matching.add(doc);
+                }
+            }
+        }
+        matching.sort((a, b) -> {
+            int c = Long.compare(a.optLong("updated"), b.optLong("updated"));
+            return c != 0 ? c : a.optString("_id").compareTo(b.optString("_id"));
+        });
+        List<JSONObject> page = matching.subList(0, Math.min(limit, matching.size()));
+        JSONObject body = new JSONObject();
+        try {
+            body.put("success", true);
+            body.put("medicines", new JSONArray(page));
+            body.put("hasMore", page.size() == limit);
+            JSONObject last = page.isEmpty() ? null : page.get(page.size() - 1);
+            body.put("cursor", new JSONObject()
+                .put("since", last == null ? since : last.optLong("updated"))
+                .put("after", last == null ? (after == null ? JSONObject.NULL : after) : last.optString("_id")));
+            if (page.size() < limit) {
+                int active = 0;
+                synchronized (docs) {
+                    for (JSONObject doc : docs.values()) {
+                        active += doc.optBoolean("isActive") ? 1 : 0;
+                    }
+                }
+                body.put("activeCount", active);
+            }
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static MedicineIndex.Query query(String search) {
+        MedicineIndex.Query query = new MedicineIndex.Query();
+        query.search = search;
+        return query;
+    }
+
+    @Test
+    public void firstSyncPullsEveryPageAndSearchesLocally() throws Exception {
+        MedicineCatalog catalog = new MedicineCatalog(dir);
+        MedicineCatalog.SyncResult result = catalog.sync(baseUrl);
+        assertEquals(3, result.pages);
+        assertEquals(1200, result.upserted);
+        assertEquals(1200, catalog.size());
+        assertFalse(result.fullPull);
+        assertTrue(catalog.syncedAt() > 0);
+
+        MedicineIndex.Page para = catalog.search(query("para"));
+        assertEquals(240, para.total);
+        assertEquals(20, para.items.size());
+        assertEquals(12, para.pages());
+        assertFalse(para.fuzzy);
+
+        // One typo, and an unfinished word with one
+        assertEquals(240, catalog.search(query("paracetmol")).total);
+        assertTrue(catalog.search(query("amoxcil")).fuzzy);
+        assertEquals(240, catalog.search(query("amoxcil")).total);
+        // Every word has to match
+        assertEquals(120, catalog.search(query("amox xyz")).total);
+        assertEquals(0, catalog.search(query("zzzz")).total);
+
+        MedicineIndex.Query filtered = query("");
+        filtered.category = "Pain Relief";
+        filtered.minPrice = 100;
+        filtered.maxPrice = 150;
+        filtered.city = "delhi";
+        filtered.sortBy = MedicineIndex.SORT_PRICE_LOW;
+        filtered.limit = 1000;
+        MedicineIndex.Page page = catalog.search(filtered);
+        assertTrue(page.total > 0);
+        double lastPrice = 0;
+        for (MedicineIndex.Item item : page.items) {
+            assertEquals("Pain Relief", item.category);
+            assertEquals("New Delhi", item.city);
+            assertTrue(item.price >= 100 && item.price <= 150);
+            assertTrue(item.price >= lastPrice);
+            lastPrice = item.price;
+        }
+
+        MedicineIndex.Query rx = query("");
+        rx.prescriptionRequired = true;
+        assertEquals(240, catalog.search(rx).total);
+        assertEquals("Antibiotics", catalog.search(rx).items.get(0).category);
+        assertEquals(4, catalog.categories().size());
+        // The page gets back the medicine as the server sent it
+        assertEquals("Pharmacy 0", new JSONObject(catalog.search(query("")).items.get(0).json)
+            .getJSONObject("pharmacy").getString("name"));
+    }
+
+    @Test
+    public void laterSyncsOnlyPullChanges() throws Exception {
+        MedicineCatalog catalog = new MedicineCatalog(dir);
+        catalog.sync(baseUrl);
+        requests.set(0);
+
+        put(7, "Paracetamol Extra 650mg", 5, true);
+        put(6, "Amoxicillin 250mg", 30, false);
+        put(5000, "Azithromycin 500mg", 90, true);
+        MedicineCatalog.SyncResult result = catalog.sync(baseUrl);
+        assertEquals(1, requests.get());
+        assertEquals(2, result.upserted);
+        assertEquals(1, result.removed);
+        assertEquals(1200, catalog.size());
+
+        MedicineIndex.Query cheapest = query("paracetamol");
+        cheapest.sortBy = MedicineIndex.SORT_PRICE_LOW;
+        assertEquals("Paracetamol Extra 650mg", catalog.search(cheapest).items.get(0).name);
+        assertEquals(1, catalog.search(query("azithro")).total);
+        assertEquals(239, catalog.search(query("amoxicillin")).total);
+
+        // Nothing changed: one request, nothing applied
+        result = catalog.sync(baseUrl);
+        assertEquals(0, result.upserted);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void reloadsFromDiskWithoutTheNetwork() throws Exception {
+        MedicineCatalog catalog = new MedicineCatalog(dir);
+        catalog.sync(baseUrl);
+        put(3, "Ibuprofen Forte 800mg", 45, true);
+        catalog.sync(baseUrl);
+        long watermark = catalog.watermark();
+        server.stop(0);
+
+        MedicineCatalog reloaded = new MedicineCatalog(dir);
+        assertEquals(1200, reloaded.size());
+        assertEquals(watermark, reloaded.watermark());
+        assertEquals(catalog.syncedAt(), reloaded.syncedAt());
+        assertEquals(1, reloaded.search(query("forte")).total);
+        assertEquals(catalog.search(query("ibu")).total, reloaded.search(query("ibu")).total);
+    }
+
+    @Test
+    public void tornLogTailIsCutOff() throws Exception {
+        MedicineCatalog catalog = new MedicineCatalog(dir);
+        catalog.sync(baseUrl);
+        put(4, "Omeprazole DR 40mg", 60, true);
+        catalog.sync(baseUrl);
+        File log = new File(dir, "catalog.log");
+        long length = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            // A record header promising more than was written
+            out.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+        }
+
+        MedicineCatalog reloaded = new MedicineCatalog(dir);
+        assertEquals(1200, reloaded.size());
+        assertEquals(1, reloaded.search(query("omeprazole dr")).total);
+        assertTrue(length > 0);
+        assertEquals(length, log.length());
+        put(9, "Cetirizine Plus 5mg", 12, true);
+        assertEquals(1, reloaded.sync(baseUrl).upserted);
+        assertEquals(1, new MedicineCatalog(dir).search(query("plus")).total);
+    }
+
+    @Test
+    public void corruptSnapshotStartsOver() throws Exception {
+        MedicineCatalog catalog = new MedicineCatalog(dir);
+        catalog.sync(baseUrl);
+        File snapshot = new File(dir, "catalog.bin");
+        assertTrue("1200 medicines outgrow the log", snapshot.exists());
+        try (FileOutputStream out = new FileOutputStream(snapshot, true)) {
+            out.write(1);
+        }
+
+        MedicineCatalog reloaded = new MedicineCatalog(dir);
+        assertEquals(0, reloaded.size());
+        assertEquals(1200, reloaded.sync(baseUrl).upserted);
+    }
+
+    @Test
+    public void deletionsWithoutADeltaTriggerOneFullPull() throws Exception {
+        MedicineCatalog catalog = new MedicineCatalog(dir);
+        catalog.sync(baseUrl);
+        docs.remove(String.format("%024x", 0));
+        docs.remove(String.format("%024x", 1));
+
+        MedicineCatalog.SyncResult result = catalog.sync(baseUrl);
+        assertTrue(result.fullPull);
+        assertEquals(2, result.removed);
+        assertEquals(1198, catalog.size());
+        assertFalse(catalog.search(query("")).items.isEmpty());
+        assertFalse(catalog.sync(baseUrl).fullPull);
+    }
+}
@@ -0,0 +1,197 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class MedicineIndexTest {
+
+    private static MedicineIndex.Item item(String id, String name, String category, double price) {
+        MedicineIndex.Item item = new MedicineIndex.Item();
+        item.id = id;
+        item.json = "{}";
+        item.name = name;
+        item.category = category;
+        item.price = price;
+        return item;
+    }
+
+    private static MedicineIndex.Query query(String search, String sortBy) {
+        MedicineIndex.Query query = new MedicineIndex.Query();
+        query.search = search;
+        query.sortBy = sortBy;
+        query.limit = 1000;
+        return query;
+    }
+
+    private static int distance(String word, String term, int max) {
+        int[] a = new int[word.length() + 1];
+        int[] b = new int[word.length() + 1];
+        int[] c = new int[word.length() + 1];
+        return MedicineIndex.prefixDistance(word, term, max, a, b, c);
+    }
+
+    @Test
+    public void tokenizesOnAnythingButLettersAndDigits() {
+        assertEquals(Arrays.asList("paracetamol", "500mg", "tab", "10"),
+            MedicineIndex.tokenize("Paracetamol 500mg (Tab/10)", new ArrayList<>()));
+        assertEquals(Arrays.asList("vitamin", "b12"), MedicineIndex.tokenize("  Vitamin-B12 ", new ArrayList<>()));
+        assertTrue(MedicineIndex.tokenize(null, new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void prefixDistanceCountsEditsAgainstTheStartOfTheTerm() {
+        assertEquals(0, distance("parace", "paracetamol", 1));
+        assertEquals(1, distance("paracetmol", "paracetamol", 2));
+        assertEquals(1, distance("parcaetamol", "paracetamol", 2));
+        assertEquals(1, distance("ibuprofn", "ibuprofen", 2));
+        assertEquals(1, distance("cetrizine", "cetirizine", 1));
+        assertTrue(distance("abcd", "wxyz", 1) > 1);
+    }
+
+    @Test
+    public void fuzzyOnlyWhenAWordHasNoPrefixMatch() {
+        MedicineIndex index = new MedicineIndex();
+        index.put(item("1", "Cetirizine 10mg", "Cold & Flu", 30));
+        index.put(item("2", "Chlorhexidine Cream", "Skin Care", 40));
+
+        MedicineIndex.Page exact = index.search(query("ceti", MedicineIndex.SORT_NAME));
+        assertEquals(1, exact.total);
+        assertFalse(exact.fuzzy);
+        MedicineIndex.Page typo = index.search(query("cetrizine", MedicineIndex.SORT_NAME));
+        assertEquals(1, typo.total);
+        assertEquals("1", typo.items.get(0).id);
+        assertTrue(typo.fuzzy);
+        // Too short to guess at
+        assertEquals(0, index.search(query("cex", MedicineIndex.SORT_NAME)).total);
+    }
+
+    @Test
+    public void everySortIsTotalAndBreaksTiesByName() {
+        MedicineIndex index = new MedicineIndex();
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            MedicineIndex.Item item = item("id" + i, "Med " + random.nextInt(100), "Other", random.nextInt(50));
+            item.rating = random.nextInt(5);
+            item.soldCount = random.nextInt(10);
+            item.createdAt = random.nextInt(100);
+            index.put(item);
+        }
+        for (int i = 0; i < 1500; i++) {
+            index.remove("id" + i * 2);
+        }
+        String[] sorts = { MedicineIndex.SORT_NAME, MedicineIndex.SORT_PRICE_LOW, MedicineIndex.SORT_PRICE_HIGH,
+            MedicineIndex.SORT_RATING, MedicineIndex.SORT_NEWEST, MedicineIndex.SORT_POPULAR };
+        for (String sort : sorts) {
+            List<MedicineIndex.Item> items = index.search(query("", sort)).items;
+            assertEquals(sort, 1000, items.size());
+            assertEquals(sort, 1500, index.search(query("", sort)).total);
+            for (int i = 1; i < items.size(); i++) {
+                MedicineIndex.Item a = items.get(i - 1);
+                MedicineIndex.Item b = items.get(i);
+                int c;
+                switch (sort) {
+                    case MedicineIndex.SORT_PRICE_LOW:
+                        c = Double.compare(a.price, b.price);
+                        break;
+                    case MedicineIndex.SORT_PRICE_HIGH:
+                        c = Double.compare(b.price, a.price);
+                        break;
+                    case MedicineIndex.SORT_RATING:
+                        c = Float.compare(b.rating, a.rating);
+                        break;
+                    case MedicineIndex.SORT_NEWEST:
+                        c = Long.compare(b.createdAt, a.createdAt);
+                        break;
+                    case MedicineIndex.SORT_POPULAR:
+                        c = Integer.compare(b.soldCount, a.soldCount);
+                        break;
+                    default:
+                        c = 0;
+                }
+                if (c == 0) {
+                    c = a.name.compareTo(b.name);
+                }
+                if (c == 0) {
+                    c = a.id.compareTo(b.id);
+                }
+                assertTrue(sort + " out of order at " + i, c < 0);
+            }
+        }
+    }
+
+    @Test
+    public void mergedNameOrderMatchesAFreshSort() {
+        MedicineIndex merged = new MedicineIndex();
+        MedicineIndex fresh = new MedicineIndex();
+        Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            MedicineIndex.Item item = item("id" + i, "Med " + random.nextInt(500), "Other", i);
+            merged.put(item);
+            fresh.put(item);
+        }
+        merged.prepare();
+        // Sync-sized rounds: replacements, new ids and removals, each merged into the last order
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                MedicineIndex.Item item = item("id" + random.nextInt(2500), "Med " + random.nextInt(500), "Other", i);
+                merged.put(item);
+                fresh.put(item);
+            }
+            merged.remove("id" + round);
+            fresh.remove("id" + round);
+            merged.prepare();
+        }
+        MedicineIndex.Query all = query("", MedicineIndex.SORT_NAME);
+        all.limit = 5000;
+        List<MedicineIndex.Item> expected = fresh.search(all).items;
+        List<MedicineIndex.Item> actual = merged.search(all).items;
+        assertEquals(fresh.size(), actual.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("at " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void replacingAndRemovingKeepsCountsAndPagesRight() {
+        MedicineIndex index = new MedicineIndex();
+        for (int i = 0; i < 5000; i++) {
+            index.put(item("id" + i, "Paracetamol " + i, i % 2 == 0 ? "Pain Relief" : "Other", i));
+        }
+        // Enough dead slots to compact on the next search
+        for (int i = 0; i < 2000; i++) {
+            index.put(item("id" + i, "Ibuprofen " + i, "Pain Relief", i));
+        }
+        for (int i = 4000; i < 5000; i++) {
+            index.remove("id" + i);
+        }
+        assertEquals(4000, index.size());
+        assertEquals(2000, index.search(query("ibuprofen", MedicineIndex.SORT_NAME)).total);
+        assertEquals(2000, index.search(query("paracetamol", MedicineIndex.SORT_NAME)).total);
+
+        MedicineIndex.Query pain = query("", MedicineIndex.SORT_PRICE_HIGH);
+        pain.category = "Pain Relief";
+        pain.limit = 10;
+        pain.page = 2;
+        MedicineIndex.Page page = index.search(pain);
+        assertEquals(3000, page.total);
+        assertEquals(300, page.pages());
+        assertEquals(3978, page.items.get(0).price, 0);
+
+        for (int i = 0; i < 4000; i += 2) {
+            index.remove("id" + i);
+        }
+        assertEquals(Arrays.asList("Other", "Pain Relief"), index.categories());
+        for (int i = 1; i < 4000; i += 2) {
+            index.remove("id" + i);
+        }
+        assertTrue(index.categories().isEmpty());
+        assertEquals(0, index.search(query("", null)).total);
+    }
+}
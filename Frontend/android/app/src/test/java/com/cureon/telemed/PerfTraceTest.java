@@ -0,0 +1,318 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PerfTraceTest {
+
+    private static final class Recorded {
+        final List<String> calls = new ArrayList<>();
+    }
+
+    private static PerfTrace.SystemTrace systemTrace(Recorded recorded) {
+        return new PerfTrace.SystemTrace() {
+            @Override
+            public void beginSection(String name) {
+                recorded.calls.add("begin " + name);
+            }
+
+            @Override
+            public void endSection() {
+                recorded.calls.add("end");
+            }
+
+            @Override
+            public void beginAsyncSection(String name, int cookie) {
+                recorded.calls.add("beginAsync " + name + " " + cookie);
+            }
+
+            @Override
+            public void endAsyncSection(String name, int cookie) {
+                recorded.calls.add("endAsync " + name + " " + cookie);
+            }
+        };
+    }
+
+    @Test
+    public void nothingIsRecordedUntilStarted() {
+        PerfTrace trace = new PerfTrace();
+        Recorded recorded = new Recorded();
+        trace.setSystemTrace(systemTrace(recorded));
+        int section = trace.name("section");
+        int counter = trace.name("counter");
+
+        trace.begin(section);
+        trace.end(section);
+        trace.count(counter, 5);
+        assertEquals(0, trace.snapshot().count);
+        assertEquals(0, trace.counter(counter));
+        assertEquals("sections still reach the system tracer",
+            Arrays.asList("begin section", "end"), recorded.calls);
+    }
+
+    @Test
+    public void namesAreInternedOnce() {
+        PerfTrace trace = new PerfTrace();
+        int a = trace.name("a");
+        assertEquals(a, trace.name("a"));
+        assertNotEquals(a, trace.name("b"));
+        assertEquals("a", trace.nameOf(a));
+        assertEquals(PerfTrace.OVERFLOW_NAME, trace.nameOf(10_000));
+        for (int i = 0; i < PerfTrace.MAX_NAMES; i++) {
+            trace.name("n" + i);
+        }
+        assertEquals("past the table, names share the overflow id", 0, trace.name("one-too-many"));
+    }
+
+    @Test
+    public void sectionsInstantsAndCountersExportAsJson() throws Exception {
+        PerfTrace trace = new PerfTrace();
+        int section = trace.name("WebViewConfigurator.apply");
+        int join = trace.name("call.join");
+        int firstPage = trace.name("startup.firstPageMs");
+        int requests = trace.name("webview.permissionRequests");
+        trace.start(64);
+
+        trace.begin(section);
+        trace.end(section);
+        trace.beginAsync(join, 7);
+        trace.instant(firstPage, 812);
+        trace.count(requests, 1);
+        trace.count(requests, 2);
+        trace.endAsync(join, 7);
+
+        JSONObject json = PerfTrace.toJson(trace.snapshot());
+        assertEquals(PerfTrace.FORMAT, json.getInt("format"));
+        JSONArray names = json.getJSONArray("names");
+        JSONArray events = json.getJSONArray("events");
+        assertEquals(7, events.length());
+        int[] types = { PerfTrace.BEGIN, PerfTrace.END, PerfTrace.ASYNC_BEGIN, PerfTrace.INSTANT,
+            PerfTrace.COUNTER, PerfTrace.COUNTER, PerfTrace.ASYNC_END };
+        long previous = Long.MAX_VALUE;
+        for (int i = 0; i < types.length; i++) {
+            JSONArray event = events.getJSONArray(i);
+            assertEquals(types[i], event.getInt(1));
+            assertTrue("us before capture only shrinks", event.getLong(0) <= previous);
+            previous = event.getLong(0);
+            assertEquals(Thread.currentThread().getId(), event.getLong(4));
+        }
+        assertEquals("call.join", names.getString(events.getJSONArray(2).getInt(2)));
+        assertEquals(7, events.getJSONArray(2).getLong(3));
+        assertEquals(812, events.getJSONArray(3).getLong(3));
+        assertEquals("counter events carry the running total", 3, events.getJSONArray(5).getLong(3));
+        assertEquals(3, json.getJSONObject("counters").getLong("webview.permissionRequests"));
+        assertEquals(0, json.getLong("dropped"));
+    }
+
+    @Test
+    public void wrappingKeepsTheNewestEventsAndCountsTheRest() {
+        PerfTrace trace = new PerfTrace();
+        int tick = trace.name("tick");
+        trace.start(10);
+        assertEquals("rounded up to a power of two", 16, trace.capacity());
+
+        for (int i = 0; i < 40; i++) {
+            trace.instant(tick, i);
+        }
+        PerfTrace.Snapshot snapshot = trace.snapshot();
+        assertEquals(16, snapshot.count);
+        assertEquals(24, snapshot.dropped);
+        for (int i = 0; i < snapshot.count; i++) {
+            assertEquals(24 + i, snapshot.values[i]);
+        }
+
+        trace.clear();
+        assertEquals(0, trace.snapshot().count);
+        assertEquals(16, trace.capacity());
+    }
+
+    @Test
+    public void stopKeepsWhatWasCaptured() {
+        PerfTrace trace = new PerfTrace();
+        int tick = trace.name("tick");
+        trace.start(16);
+        trace.instant(tick, 1);
+        trace.stop();
+        trace.instant(tick, 2);
+        assertFalse(trace.isEnabled());
+        PerfTrace.Snapshot snapshot = trace.snapshot();
+        assertEquals(1, snapshot.count);
+        assertEquals(1, snapshot.values[0]);
+    }
+
+    @Test
+    public void asyncSectionsReachTheSystemTracerWithTheirCookie() {
+        PerfTrace trace = new PerfTrace();
+        Recorded recorded = new Recorded();
+        trace.setSystemTrace(systemTrace(recorded));
+        int join = trace.name("call.join");
+        trace.beginAsync(join, 3);
+        trace.endAsync(join, 3);
+        assertEquals(Arrays.asList("beginAsync call.join 3", "endAsync call.join 3"), recorded.calls);
+    }
+
+    @Test
+    public void binaryExportDecodesToTheSameEvents() throws Exception {
+        PerfTrace trace = new PerfTrace();
+        int section = trace.name("CureonMainActivity.onCreate");
+        int pressure = trace.name("webview.memoryPressure");
+        int gone = trace.name("webview.rendererGone");
+        trace.start(64);
+        trace.begin(section);
+        trace.instant(pressure, -15);
+        trace.count(gone, 1);
+        trace.end(section);
+        PerfTrace.Snapshot snapshot = trace.snapshot();
+
+        byte[] bytes = PerfTrace.toBinary(snapshot);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        assertEquals('C', in.readByte());
+        assertEquals('P', in.readByte());
+        assertEquals('T', in.readByte());
+        assertEquals(PerfTrace.FORMAT, in.readByte());
+        assertEquals(snapshot.capturedAtWallMs, in.readLong());
+        int nameCount = (int) readVarint(in);
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            byte[] utf8 = new byte[(int) readVarint(in)];
+            in.readFully(utf8);
+            names[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        assertEquals("CureonMainActivity.onCreate", names[section]);
+        assertEquals(0, readVarint(in));
+        assertEquals(4, readVarint(in));
+
+        long time = snapshot.capturedAtNanos;
+        for (int i = 0; i < 4; i++) {
+            time += unzigzag(readVarint(in));
+            assertEquals(snapshot.times[i], time);
+            assertEquals(snapshot.types[i], in.readUnsignedByte());
+            assertEquals(snapshot.nameIds[i], readVarint(in));
+            assertEquals(snapshot.values[i], unzigzag(readVarint(in)));
+            assertEquals(Thread.currentThread().getId(), readVarint(in));
+        }
+        assertEquals(-15, snapshot.values[1]);
+        assertEquals(1, readVarint(in));
+        assertEquals(gone, readVarint(in));
+        assertEquals(1, unzigzag(readVarint(in)));
+        assertEquals("nothing trails", -1, in.read());
+        int nameBytes = 0;
+        for (String name : names) {
+            nameBytes += name.length() + 1;
+        }
+        assertTrue("compact: " + bytes.length + " bytes", bytes.length - nameBytes < 60);
+    }
+
+    @Test
+    public void concurrentWritersNeverProduceTornEvents() throws Exception {
+        PerfTrace trace = new PerfTrace();
+        int threads = 4;
+        int[] ids = new int[threads];
+        for (int i = 0; i < threads; i++) {
+            ids[i] = trace.name("writer" + i);
+        }
+        // Big enough that a snapshot finishes before the writers lap it
+        trace.start(PerfTrace.DEFAULT_CAPACITY);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] threadIds = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                    long value = 0;
+                    while (!stop.get()) {
+                        // Every field of an event is derived from the writer, so a mix-up shows
+                        trace.instant(ids[index], (long) index << 40 | value++);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            threadIds[t] = writer.getId();
+            writer.start();
+        }
+        start.countDown();
+        int checked = 0;
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        for (int round = 0; round < 200 || (checked == 0 && System.nanoTime() < deadline); round++) {
+            PerfTrace.Snapshot snapshot = trace.snapshot();
+            assertTrue(snapshot.count <= PerfTrace.DEFAULT_CAPACITY);
+            for (int i = 0; i < snapshot.count; i++) {
+                int index = (int) (snapshot.values[i] >>> 40);
+                assertTrue(index < threads);
+                assertEquals(PerfTrace.INSTANT, snapshot.types[i]);
+                assertEquals(ids[index], snapshot.nameIds[i]);
+                assertEquals(threadIds[index], snapshot.threads[i]);
+                checked++;
+            }
+        }
+        stop.set(true);
+        done.await();
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void recordingIsAllocationFree() {
+        PerfTrace trace = new PerfTrace();
+        int section = trace.name("bench.section");
+        int counter = trace.name("bench.counter");
+        trace.start(PerfTrace.DEFAULT_CAPACITY);
+        int iterations = 200_000;
+        // Warm up so the measured loop runs compiled
+        for (int i = 0; i < iterations; i++) {
+            trace.begin(section);
+            trace.end(section);
+            trace.count(counter, 1);
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            trace.begin(section);
+            trace.end(section);
+            trace.count(counter, 1);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        trace.stop();
+
+        // A little slack for the measurement itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+        assertEquals(iterations * 2L, trace.counter(counter));
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
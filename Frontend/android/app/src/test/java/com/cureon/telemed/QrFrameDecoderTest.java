@@ -0,0 +1,129 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+public class QrFrameDecoderTest {
+    /** A fixture from src/test/resources/qr-frames laid out like a camera Y plane. */
+    private static final class Frame {
+        final String name;
+        final ByteBuffer yPlane;
+        final int rowStride;
+        final int width;
+        final int height;
+        final String expectedId;
+
+        Frame(String name, ByteBuffer yPlane, int rowStride, int width, int height, String expectedId) {
+            this.name = name;
+            this.yPlane = yPlane;
+            this.rowStride = rowStride;
+            this.width = width;
+            this.height = height;
+            this.expectedId = expectedId;
+        }
+    }
+
+    private static List<Frame> frames() throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        InputStream in = QrFrameDecoderTest.class.getResourceAsStream("/qr-frames/frames.csv");
+        assertNotNull("missing qr-frames/frames.csv", in);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.startsWith("file")) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                frames.add(load(f[0], Integer.parseInt(f[1]), "-".equals(f[2]) ? null : f[2]));
+            }
+        }
+        return frames;
+    }
+
+    // Direct buffer with padded rows, as ImageProxy planes arrive from CameraX
+    private static Frame load(String file, int rowStride, String expectedId) throws IOException {
+        BufferedImage image;
+        try (InputStream in = QrFrameDecoderTest.class.getResourceAsStream("/qr-frames/" + file)) {
+            assertNotNull("missing frame " + file, in);
+            image = ImageIO.read(in);
+        }
+        Raster raster = image.getRaster();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(0, y, width, 1, 0, row);
+            plane.position(y * rowStride);
+            for (int x = 0; x < width; x++) {
+                plane.put((byte) row[x]);
+            }
+        }
+        plane.position(0);
+        return new Frame(file, plane, rowStride, width, height, expectedId);
+    }
+
+    @Test
+    public void decodesTheRecordedFrames() throws IOException {
+        QrFrameDecoder decoder = new QrFrameDecoder(QrFrameDecoder.DEFAULT_ROI);
+        for (Frame frame : frames()) {
+            String payload = decoder.decode(frame.yPlane, frame.rowStride, frame.width, frame.height);
+            if (frame.expectedId == null) {
+                assertNull(frame.name, payload);
+            } else {
+                assertNotNull(frame.name, payload);
+                assertTrue(frame.name + ": " + payload, payload.contains("\"" + frame.expectedId + "\""));
+            }
+            assertEquals("position must be left alone", 0, frame.yPlane.position());
+        }
+    }
+
+    @Test
+    public void codeOutsideTheRegionOfInterestIsIgnored() throws IOException {
+        Frame frame = load("patient_card.png", 704, null);
+        // A sliver of the frame's centre can't contain the whole code
+        QrFrameDecoder narrow = new QrFrameDecoder(0.2f);
+        assertNull(narrow.decode(frame.yPlane, frame.rowStride, frame.width, frame.height));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // The Y plane itself is never copied whole, so a frame allocates far less than its size
+    @Test
+    public void decodingDoesNotCopyThePlane() throws IOException {
+        for (Frame frame : frames()) {
+            QrFrameDecoder decoder = new QrFrameDecoder(QrFrameDecoder.DEFAULT_ROI);
+            // Warm up so class loading and the decoder's first buffers aren't counted
+            decoder.decode(frame.yPlane, frame.rowStride, frame.width, frame.height);
+            long before = allocatedBytes();
+            String payload = decoder.decode(frame.yPlane, frame.rowStride, frame.width, frame.height);
+            long alloc = before < 0 ? -1 : allocatedBytes() - before;
+            assertEquals(frame.name, frame.expectedId == null, payload == null);
+            if (alloc >= 0) {
+                assertTrue(frame.name + " allocates " + alloc, alloc < (long) frame.rowStride * frame.height);
+            }
+        }
+    }
+}
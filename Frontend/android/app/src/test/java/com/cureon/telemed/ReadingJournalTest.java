@@ -0,0 +1,160 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+public class ReadingJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] reading(int i) {
+        return ("{\"type\":\"heart_rate\",\"value\":{\"single\":" + i + "}}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void peekDoesNotConsumeUntilAcknowledged() throws Exception {
+        File dir = tmp.newFolder("journal");
+        try (ReadingJournal journal = new ReadingJournal(dir, 4096)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(reading(i), 1000 + i);
+            }
+            assertEquals(5, journal.pendingRecords());
+            assertEquals(1000, journal.oldestPendingAtMs());
+
+            ReadingJournal.Batch batch = journal.peek(3, Integer.MAX_VALUE);
+            assertEquals(3, batch.size());
+            assertEquals(text(reading(0)), text(batch.payloads.get(0)));
+            assertEquals(5, journal.pendingRecords());
+
+            journal.acknowledge(batch);
+            assertEquals(2, journal.pendingRecords());
+            assertEquals(1003, journal.oldestPendingAtMs());
+            assertEquals(text(reading(3)), text(journal.peek(10, Integer.MAX_VALUE).payloads.get(0)));
+        }
+    }
+
+    @Test
+    public void peekRespectsByteLimitButAlwaysReturnsOne() throws Exception {
+        try (ReadingJournal journal = new ReadingJournal(tmp.newFolder("journal"), 4096)) {
+            journal.append(reading(1), 0);
+            journal.append(reading(2), 0);
+            int oneRecord = reading(1).length;
+            assertEquals(1, journal.peek(10, oneRecord).size());
+            assertEquals(1, journal.peek(10, 1).size());
+            assertEquals(2, journal.peek(10, oneRecord * 2).size());
+        }
+    }
+
+    @Test
+    public void rollsSegmentsAndReclaimsConsumedOnes() throws Exception {
+        File dir = tmp.newFolder("journal");
+        try (ReadingJournal journal = new ReadingJournal(dir, 256)) {
+            for (int i = 0; i < 40; i++) {
+                journal.append(reading(i), i);
+            }
+            int segments = journal.segmentCount();
+            assertTrue(segments > 3);
+
+            ReadingJournal.Batch batch = journal.peek(1000, Integer.MAX_VALUE);
+            assertEquals(40, batch.size());
+            for (int i = 0; i < 40; i++) {
+                assertEquals(text(reading(i)), text(batch.payloads.get(i)));
+            }
+            journal.acknowledge(batch);
+            assertEquals(0, journal.pendingRecords());
+            assertEquals(1, journal.segmentCount());
+        }
+    }
+
+    @Test
+    public void reopenRestoresPendingRecordsAndCursor() throws Exception {
+        File dir = tmp.newFolder("journal");
+        try (ReadingJournal journal = new ReadingJournal(dir, 256)) {
+            for (int i = 0; i < 20; i++) {
+                journal.append(reading(i), i);
+            }
+            journal.acknowledge(journal.peek(7, Integer.MAX_VALUE));
+            journal.sync();
+        }
+        try (ReadingJournal journal = new ReadingJournal(dir, 256)) {
+            assertEquals(13, journal.pendingRecords());
+            ReadingJournal.Batch batch = journal.peek(100, Integer.MAX_VALUE);
+            assertEquals(text(reading(7)), text(batch.payloads.get(0)));
+            assertEquals(text(reading(19)), text(batch.payloads.get(12)));
+
+            // Appends continue after the recovered tail
+            journal.append(reading(20), 20);
+            assertEquals(14, journal.pendingRecords());
+        }
+    }
+
+    @Test
+    public void tornRecordIsDiscardedOnRecovery() throws Exception {
+        File dir = tmp.newFolder("journal");
+        try (ReadingJournal journal = new ReadingJournal(dir, 4096)) {
+            journal.append(reading(1), 1);
+            journal.append(reading(2), 2);
+            journal.append(reading(3), 3);
+            journal.sync();
+        }
+        // Corrupt one payload byte of the last record, as a crash mid-write would
+        File segment = dir.listFiles((d, name) -> name.endsWith(".log"))[0];
+        int recordBytes = ReadingJournal.HEADER_BYTES + reading(1).length;
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(recordBytes * 2 + ReadingJournal.HEADER_BYTES + 3);
+            raf.write('X');
+        }
+
+        try (ReadingJournal journal = new ReadingJournal(dir, 4096)) {
+            assertEquals(2, journal.pendingRecords());
+            assertEquals(1, journal.corruptRecordsSkipped());
+
+            journal.append(reading(4), 4);
+            ReadingJournal.Batch batch = journal.peek(10, Integer.MAX_VALUE);
+            assertEquals(3, batch.size());
+            assertEquals(text(reading(4)), text(batch.payloads.get(2)));
+        }
+        try (ReadingJournal journal = new ReadingJournal(dir, 4096)) {
+            assertEquals(3, journal.pendingRecords());
+            assertEquals(0, journal.corruptRecordsSkipped());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRecordLargerThanSegment() throws Exception {
+        try (ReadingJournal journal = new ReadingJournal(tmp.newFolder("journal"), 64)) {
+            journal.append(new byte[64], 0);
+        }
+    }
+
+    @Test
+    public void rejectsEmptyRecordsSoLaterOnesSurviveRecovery() throws Exception {
+        File dir = tmp.newFolder("journal");
+        try (ReadingJournal journal = new ReadingJournal(dir, 4096)) {
+            journal.append(reading(1), 1);
+            try {
+                journal.append(new byte[0], 2);
+                fail("an empty record would end the segment on recovery");
+            } catch (IllegalArgumentException expected) {
+                // nothing written
+            }
+            journal.append(reading(3), 3);
+            journal.sync();
+        }
+        try (ReadingJournal journal = new ReadingJournal(dir, 4096)) {
+            assertEquals(2, journal.pendingRecords());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReadingUploaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final List<String> authHeaders = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextStatus = new AtomicInteger(201);
+    private ReadingJournal journal;
+    private ReadingUploader uploader;
+    private final List<ReadingUploader.Stats> stats = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/health/readings/bulk", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.transferTo(out);
+                bodies.add(out.toString(StandardCharsets.UTF_8.name()));
+            }
+            authHeaders.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            byte[] response = "{\"success\":true,\"alerts\":null}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(nextStatus.get(), response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+
+        journal = new ReadingJournal(tmp.newFolder("journal"), 4096);
+        ReadingUploader.Config config = new ReadingUploader.Config();
+        config.endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/health/readings/bulk";
+        config.authToken = "abc";
+        config.maxBatchRecords = 3;
+        config.maxDelayMs = 10_000;
+        config.initialBackoffMs = 1_000;
+        config.maxBackoffMs = 8_000;
+        config.jitter = 0;
+        uploader = new ReadingUploader(journal, config, new ReadingUploader.Listener() {
+            @Override
+            public void onStats(ReadingUploader.Stats s) {
+                stats.add(s);
+            }
+
+            @Override
+            public void onBatchUploaded(int count, String responseBody) {
+            }
+        }, new Random(1));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        journal.close();
+    }
+
+    private void append(int value, long atMs) throws Exception {
+        journal.append(("{\"type\":\"heart_rate\",\"value\":{\"single\":" + value + "}}")
+            .getBytes(StandardCharsets.UTF_8), atMs);
+    }
+
+    @Test
+    public void holdsSmallBatchesUntilDelayExpires() throws Exception {
+        append(70, 0);
+        assertEquals(6_000, uploader.runOnce(4_000));
+        assertTrue(bodies.isEmpty());
+
+        assertEquals(0, uploader.runOnce(10_000));
+        assertEquals(1, bodies.size());
+        assertEquals("{\"readings\":[{\"type\":\"heart_rate\",\"value\":{\"single\":70}}]}", bodies.get(0));
+        assertEquals("Bearer abc", authHeaders.get(0));
+        assertEquals(0, journal.pendingRecords());
+        assertEquals(ReadingUploader.IDLE, uploader.runOnce(10_001));
+    }
+
+    @Test
+    public void fullBatchGoesImmediatelyAndIsCapped() throws Exception {
+        for (int i = 0; i < 7; i++) {
+            append(60 + i, 0);
+        }
+        uploader.runOnce(1);
+        uploader.runOnce(2);
+        assertEquals(2, bodies.size());
+        assertEquals(1, journal.pendingRecords());
+        assertTrue(bodies.get(0).contains("\"single\":60") && bodies.get(0).contains("\"single\":62"));
+        assertFalse(bodies.get(0).contains("\"single\":63"));
+        assertEquals(6, stats.get(stats.size() - 1).uploaded);
+    }
+
+    @Test
+    public void serverErrorsBackOffExponentially() throws Exception {
+        nextStatus.set(503);
+        for (int i = 0; i < 3; i++) {
+            append(80, 0);
+        }
+        assertEquals(1_000, uploader.runOnce(0));
+        assertEquals(500, uploader.runOnce(500));
+        assertEquals(2_000, uploader.runOnce(1_000));
+        assertEquals(4_000, uploader.runOnce(3_000));
+        assertEquals(8_000, uploader.runOnce(7_000));
+        assertEquals(8_000, uploader.runOnce(15_000));
+        assertEquals(3, journal.pendingRecords());
+        assertEquals(5, stats.get(stats.size() - 1).consecutiveFailures);
+
+        nextStatus.set(201);
+        uploader.resetBackoff();
+        assertEquals(0, uploader.runOnce(15_001));
+        assertEquals(0, journal.pendingRecords());
+        assertEquals(0, stats.get(stats.size() - 1).consecutiveFailures);
+    }
+
+    @Test
+    public void unreachableServerCountsAsFailure() throws Exception {
+        server.stop(0);
+        for (int i = 0; i < 3; i++) {
+            append(80, 0);
+        }
+        assertEquals(1_000, uploader.runOnce(0));
+        assertEquals(-1, stats.get(0).lastStatus);
+        assertEquals(3, journal.pendingRecords());
+    }
+
+    @Test
+    public void rejectedBatchIsDropped() throws Exception {
+        nextStatus.set(400);
+        for (int i = 0; i < 3; i++) {
+            append(80, 0);
+        }
+        assertEquals(0, uploader.runOnce(0));
+        assertEquals(0, journal.pendingRecords());
+        assertEquals(3, stats.get(0).rejected);
+    }
+
+    @Test
+    public void flushSkipsBatchingDelay() throws Exception {
+        append(70, 0);
+        uploader.wake(true);
+        assertEquals(0, uploader.runOnce(1));
+        assertEquals(1, bodies.size());
+    }
+
+    @Test
+    public void reportsLag() throws Exception {
+        append(70, 1_000);
+        ReadingUploader.Stats snapshot = uploader.snapshot(4_000);
+        assertEquals(1, snapshot.pending);
+        assertEquals(3_000, snapshot.lagMs);
+    }
+}
@@ -0,0 +1,338 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ReportLayoutTest {
+
+    /** Monospaced metrics: every character is half the font size wide. */
+    static final ReportLayout.Fonts MONO = new ReportLayout.Fonts() {
+        @Override
+        public float width(String text, int start, int end, int style) {
+            return (end - start) * size(style) / 2;
+        }
+
+        @Override
+        public float size(int style) {
+            return style == ReportLayout.TITLE ? 20 : style == ReportLayout.HEADING ? 13 : style == ReportLayout.SMALL ? 8 : 10;
+        }
+    };
+
+    /** Records what was drawn as "page: text" lines, and checks nothing lands outside the page. */
+    static final class Recorder implements ReportLayout.Sink {
+        final List<String> texts = new ArrayList<>();
+        final List<String> images = new ArrayList<>();
+        int started;
+        int finished;
+        int open = -1;
+
+        @Override
+        public void startPage(int number) {
+            assertEquals("previous page finished first", -1, open);
+            open = number;
+            started++;
+        }
+
+        @Override
+        public void text(String text, float x, float baseline, int style) {
+            inPage(baseline);
+            texts.add(open + ": " + text);
+        }
+
+        @Override
+        public void line(float x1, float y1, float x2, float y2) {
+            inPage(y1);
+            inPage(y2);
+        }
+
+        @Override
+        public void fill(float left, float top, float right, float bottom, int argb) {
+            inPage(top);
+            inPage(bottom);
+        }
+
+        @Override
+        public void image(String source, float left, float top, float right, float bottom) {
+            inPage(bottom);
+            images.add(open + ": " + source);
+        }
+
+        @Override
+        public void finishPage(int number) {
+            assertEquals(open, number);
+            open = -1;
+            finished++;
+        }
+
+        private void inPage(float y) {
+            assertTrue("drawing outside a page", open > 0);
+            assertTrue("y=" + y, y >= 0 && y <= ReportLayout.PAGE_HEIGHT);
+        }
+
+        List<String> onPage(int page) {
+            List<String> out = new ArrayList<>();
+            for (String text : texts) {
+                if (text.startsWith(page + ": ")) {
+                    out.add(text.substring(text.indexOf(' ') + 1));
+                }
+            }
+            return out;
+        }
+    }
+
+    /** Counts instead of recording, for documents too long to keep every line of. */
+    static final class Counter implements ReportLayout.Sink {
+        long ops;
+        int pages;
+
+        @Override
+        public void startPage(int number) {
+            pages = number;
+        }
+
+        @Override
+        public void text(String text, float x, float baseline, int style) {
+            ops += text.length();
+        }
+
+        @Override
+        public void line(float x1, float y1, float x2, float y2) {
+            ops++;
+        }
+
+        @Override
+        public void fill(float left, float top, float right, float bottom, int argb) {
+            ops++;
+        }
+
+        @Override
+        public void image(String source, float left, float top, float right, float bottom) {
+            ops++;
+        }
+
+        @Override
+        public void finishPage(int number) {
+            ops++;
+        }
+    }
+
+    static JSONObject fixture(String name) throws Exception {
+        InputStream in = ReportLayoutTest.class.getResourceAsStream("/reports/" + name);
+        assertNotNull("missing fixture " + name, in);
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+        }
+        return new JSONObject(text.toString());
+    }
+
+    /** A history long enough for {@code pages} pages of readings, as the backend would send it. */
+    static JSONObject history(int readings) throws Exception {
+        String[] types = { "heart_rate", "blood_pressure", "spo2", "temperature", "blood_glucose", "sleep" };
+        JSONArray rows = new JSONArray();
+        for (int i = 0; i < readings; i++) {
+            String type = types[i % types.length];
+            JSONObject value = new JSONObject();
+            switch (type) {
+                case "blood_pressure":
+                    value.put("systolic", 118 + i % 30).put("diastolic", 76 + i % 15);
+                    break;
+                case "sleep":
+                    value.put("duration", 300 + i % 180).put("quality", "good");
+                    break;
+                default:
+                    value.put("single", 60 + i % 40);
+            }
+            rows.put(new JSONObject()
+                .put("type", type)
+                .put("value", value)
+                .put("severity", i % 17 == 0 ? "warning" : "normal")
+                .put("recordedAt", String.format("2024-%02d-%02dT%02d:30:00.000Z", 1 + i / 600 % 12, 1 + i / 24 % 28, i % 24))
+                .put("source", new JSONObject().put("deviceType", i % 2 == 0 ? "mi_band" : "manual")));
+        }
+        return new JSONObject()
+            .put("patient", new JSONObject().put("name", "Meena Kumari").put("phone", "+91 98765 43210"))
+            .put("generatedAt", "2024-06-01T08:00:00.000Z")
+            .put("readings", rows);
+    }
+
+    private static ReportLayout.Rows rows(String[][] cells) {
+        return new ReportLayout.Rows() {
+            @Override
+            public int size() {
+                return cells.length;
+            }
+
+            @Override
+            public String cell(int row, int column) {
+                return cells[row][column];
+            }
+        };
+    }
+
+    @Test
+    public void wrapsOnWordsAndBreaksLongOnes() {
+        ReportLayout layout = new ReportLayout(MONO, new Recorder(), null, null);
+        List<String> lines = new ArrayList<>();
+        // 10pt mono is 5pt a character: 50pt holds 10
+        layout.wrap("take one tablet after food", ReportLayout.BODY, 50, lines);
+        assertEquals(Arrays.asList("take one", "tablet", "after food"), lines);
+
+        layout.wrap("Hydrochlorothiazide 12.5mg", ReportLayout.BODY, 50, lines);
+        assertEquals(Arrays.asList("Hydrochlor", "othiazide", "12.5mg"), lines);
+
+        layout.wrap("line one\n\nline three", ReportLayout.BODY, 500, lines);
+        assertEquals(Arrays.asList("line one", "", "line three"), lines);
+    }
+
+    @Test
+    public void emptyReportStillHasAPage() {
+        Recorder recorder = new Recorder();
+        assertEquals(1, new ReportLayout(MONO, recorder, "header", null).finish());
+        assertEquals(1, recorder.finished);
+        assertTrue(recorder.texts.contains("1: Page 1"));
+    }
+
+    @Test
+    public void tableRowsBreakAcrossPagesWithTheHeaderRepeated() {
+        String[][] cells = new String[120][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new String[] { "row " + i, "value " + i };
+        }
+        Recorder recorder = new Recorder();
+        ReportLayout layout = new ReportLayout(MONO, recorder, "Cureon - test", "footer");
+        layout.title("Readings", null);
+        layout.table(new ReportLayout.Column[] {
+            new ReportLayout.Column("Name", 1), new ReportLayout.Column("Value", 1) }, rows(cells));
+        int pages = layout.finish();
+
+        assertTrue(pages > 1);
+        assertEquals(pages, recorder.started);
+        assertEquals(pages, recorder.finished);
+        for (int page = 1; page <= pages; page++) {
+            List<String> onPage = recorder.onPage(page);
+            assertEquals("Cureon - test", onPage.get(0));
+            assertTrue("header on page " + page, onPage.contains("Name") && onPage.contains("Value"));
+            assertTrue(onPage.contains("footer"));
+            assertTrue(onPage.contains("Page " + page));
+        }
+        // Every row once, in order, with both cells on the same page
+        int next = 0;
+        for (String text : recorder.texts) {
+            String body = text.substring(text.indexOf(' ') + 1);
+            if (body.startsWith("row ")) {
+                assertEquals("row " + next, body);
+                String page = text.substring(0, text.indexOf(':'));
+                assertTrue(recorder.texts.contains(page + ": value " + next));
+                next++;
+            }
+        }
+        assertEquals(cells.length, next);
+    }
+
+    @Test
+    public void oversizedCellsAreCutRatherThanOverflowingThePage() {
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            huge.append("word ");
+        }
+        Recorder recorder = new Recorder();
+        ReportLayout layout = new ReportLayout(MONO, recorder, null, null);
+        layout.table(new ReportLayout.Column[] { new ReportLayout.Column("Notes", 1) },
+            rows(new String[][] { { huge.toString() }, { "after" } }));
+        layout.finish();
+        assertTrue(recorder.texts.stream().anyMatch(t -> t.endsWith("...")));
+        assertTrue(recorder.texts.contains("2: after"));
+    }
+
+    @Test
+    public void headingsStayWithWhatFollows() {
+        Recorder recorder = new Recorder();
+        ReportLayout layout = new ReportLayout(MONO, recorder, null, null);
+        // Fill the first page to a line or two short of the bottom
+        for (int i = 0; i < 55; i++) {
+            layout.paragraph("line " + i, ReportLayout.BODY);
+        }
+        layout.heading("Medications");
+        layout.paragraph("Metformin", ReportLayout.BODY);
+        layout.finish();
+        assertTrue(recorder.texts.contains("2: Medications"));
+        assertTrue(recorder.texts.contains("2: Metformin"));
+    }
+
+    @Test
+    public void prescriptionFixtureLaysOutOnOnePage() throws Exception {
+        JSONObject rx = fixture("prescription.json");
+        rx.put("qrCode", "data:image/png;base64,iVBORw0KGgo=");
+        Recorder recorder = new Recorder();
+        ReportLayout layout = new ReportLayout(MONO, recorder,
+            ReportTemplates.header(ReportTemplates.PRESCRIPTION, rx), null);
+        assertTrue(new ReportTemplates(ZoneOffset.UTC).render(ReportTemplates.PRESCRIPTION, rx, layout));
+        assertEquals(1, layout.finish());
+
+        List<String> texts = recorder.onPage(1);
+        assertEquals("Cureon - Prescription RX-20240521-0042", texts.get(0));
+        assertTrue(texts.contains("No. RX-20240521-0042 - 21 May 2024"));
+        assertTrue(texts.contains("Meena Kumari, female, 54 yrs"));
+        assertTrue(texts.contains("Dr. Anita Rao, General Physician"));
+        assertTrue(texts.contains("Metformin 500 mg"));
+        assertTrue(texts.contains("Vitamin B12"));
+        assertTrue(texts.contains("Follow-up"));
+        assertEquals(Collections.singletonList("1: data:image/png;base64,iVBORw0KGgo="), recorder.images);
+    }
+
+    @Test
+    public void unknownKindsAreRefused() throws Exception {
+        ReportLayout layout = new ReportLayout(MONO, new Recorder(), null, null);
+        assertFalse(new ReportTemplates(ZoneOffset.UTC).render("invoice", new JSONObject(), layout));
+    }
+
+    @Test
+    public void readingValuesAreFormattedPerType() throws Exception {
+        assertEquals("120/80 mmHg", ReportTemplates.readingValue(new JSONObject(
+            "{\"type\":\"blood_pressure\",\"value\":{\"systolic\":120,\"diastolic\":80}}")));
+        assertEquals("98.6 \u00b0C", ReportTemplates.readingValue(new JSONObject(
+            "{\"type\":\"temperature\",\"value\":{\"single\":98.6}}")));
+        assertEquals("7h 5m, good", ReportTemplates.readingValue(new JSONObject(
+            "{\"type\":\"sleep\",\"value\":{\"duration\":425,\"quality\":\"good\"}}")));
+        assertEquals("Afib", ReportTemplates.readingValue(new JSONObject(
+            "{\"type\":\"ecg\",\"value\":{\"ecgResult\":\"afib\"}}")));
+        assertEquals("- bpm", ReportTemplates.readingValue(new JSONObject(
+            "{\"type\":\"heart_rate\",\"value\":{}}")));
+        assertEquals("Blood glucose", ReportTemplates.label("blood_glucose"));
+    }
+
+    @Test
+    public void longHistoriesRunToAboutTwoHundredPages() throws Exception {
+        ReportTemplates templates = new ReportTemplates(ZoneOffset.UTC);
+        assertEquals(1, layOut(templates, ReportTemplates.PRESCRIPTION, fixture("prescription.json")).pages);
+        assertEquals(1, layOut(templates, ReportTemplates.HISTORY, history(0)).pages);
+        Counter counter = layOut(templates, ReportTemplates.HISTORY, history(6_400));
+        assertTrue("pages=" + counter.pages, counter.pages >= 190 && counter.pages <= 230);
+    }
+
+    private static Counter layOut(ReportTemplates templates, String kind, JSONObject data) {
+        Counter counter = new Counter();
+        ReportLayout layout = new ReportLayout(MONO, counter, ReportTemplates.header(kind, data), "footer");
+        assertTrue(templates.render(kind, data, layout));
+        layout.finish();
+        return counter;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RollingWindowTest {
+
+    @Test
+    public void samplesLeaveOnceOlderThanTheSpan() {
+        RollingWindow window = new RollingWindow(10_000, 64);
+        window.add(0, 10);
+        window.add(5_000, 20);
+        assertEquals(15, window.mean(), 1e-9);
+
+        window.add(10_000, 30);
+        assertEquals(3, window.count());
+        window.add(10_001, 30);
+        assertEquals("the sample at 0 is now older than 10 s", 3, window.count());
+        assertEquals(80 / 3.0, window.mean(), 1e-9);
+        assertEquals(5_001, window.coveredMs());
+    }
+
+    @Test
+    public void aFullRingEvictsTheOldest() {
+        RollingWindow window = new RollingWindow(Long.MAX_VALUE / 2, 4);
+        for (int i = 1; i <= 6; i++) {
+            window.add(i * 1000, i);
+        }
+        assertEquals(4, window.count());
+        assertEquals(4.5, window.mean(), 1e-9);
+        assertEquals(3000, window.timeAt(0));
+    }
+
+    @Test
+    public void slopeIsPerMinute() {
+        RollingWindow window = new RollingWindow(10 * 60_000, 1024);
+        for (int s = 0; s < 600; s += 5) {
+            // 2 per minute
+            window.add(s * 1000L, 70 + s / 30f);
+        }
+        assertEquals(2, window.slopePerMinute(), 1e-4);
+        assertTrue(Double.isNaN(new RollingWindow(1000, 4).slopePerMinute()));
+
+        RollingWindow sameInstant = new RollingWindow(1000, 4);
+        sameInstant.add(500, 1);
+        sameInstant.add(500, 2);
+        assertTrue("no spread in time, no slope", Double.isNaN(sameInstant.slopePerMinute()));
+    }
+
+    // A day of 1 Hz samples sliding through a ten-minute window: the running sums must still
+    // agree with a fresh pass over what the window holds
+    @Test
+    public void runningSumsDoNotDrift() {
+        RollingWindow window = new RollingWindow(10 * 60_000, 1024);
+        Random random = new Random(7);
+        for (long t = 0; t < 24 * 3600_000L; t += 1000) {
+            window.add(t, (float) (80 + 30 * Math.sin(t / 3.6e6) + random.nextGaussian() * 5));
+        }
+
+        int n = window.count();
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += window.valueAt(i);
+        }
+        double mean = sum / n;
+        double squares = 0;
+        double tMean = 0;
+        for (int i = 0; i < n; i++) {
+            squares += (window.valueAt(i) - mean) * (window.valueAt(i) - mean);
+            tMean += window.timeAt(i) / 60_000.0;
+        }
+        tMean /= n;
+        double sxy = 0;
+        double sxx = 0;
+        for (int i = 0; i < n; i++) {
+            double dt = window.timeAt(i) / 60_000.0 - tMean;
+            sxy += dt * (window.valueAt(i) - mean);
+            sxx += dt * dt;
+        }
+        assertEquals(601, n);
+        assertEquals(mean, window.mean(), 1e-6);
+        assertEquals(Math.sqrt(squares / n), window.standardDeviation(), 1e-6);
+        assertEquals(sxy / sxx, window.slopePerMinute(), 1e-6);
+    }
+}
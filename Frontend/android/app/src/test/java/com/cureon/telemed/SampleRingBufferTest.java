@@ -0,0 +1,40 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void keepsInsertionOrder() {
+        SampleRingBuffer ring = new SampleRingBuffer(4, 1);
+        ring.add(1, 10f);
+        ring.add(2, 20f);
+        assertEquals(2, ring.size());
+        assertEquals(1, ring.timeAt(0));
+        assertEquals(20f, ring.valueAt(1, 0), 0f);
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        SampleRingBuffer ring = new SampleRingBuffer(3, 2);
+        for (int i = 0; i < 5; i++) {
+            ring.add(i, i, -i);
+        }
+        assertEquals(3, ring.size());
+        assertEquals(2, ring.dropped());
+
+        long[] times = new long[3];
+        float[] values = new float[6];
+        assertEquals(3, ring.drainTo(times, values));
+        assertArrayEquals(new long[] { 2, 3, 4 }, times);
+        assertArrayEquals(new float[] { 2, -2, 3, -3, 4, -4 }, values, 0f);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new SampleRingBuffer(0, 1);
+    }
+}
@@ -0,0 +1,343 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the client against a local stand-in for the backend's socket.io server
+ * that speaks Engine.IO v4 long-polling: handshake, namespace connect,
+ * heartbeats, events both ways and "Session ID unknown" after a restart.
+ */
+public class SocketIoClientTest {
+    private static final int PING_INTERVAL_MS = 200;
+    private static final int PING_TIMEOUT_MS = 300;
+
+    private static final class Session {
+        final String sid;
+        final Map<String, String> query;
+        final LinkedBlockingQueue<String> outbound = new LinkedBlockingQueue<>();
+        // Who the namespace connect's token names, as the backend's socket middleware decides
+        volatile String userId;
+        volatile long pingSentAt;
+
+        Session(String sid, Map<String, String> query) {
+            this.sid = sid;
+            this.query = query;
+        }
+    }
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private String url;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private final AtomicInteger pongs = new AtomicInteger();
+    private final AtomicInteger closes = new AtomicInteger();
+    // Namespace connects to refuse before accepting one, as socket.io middleware rejecting auth would
+    private volatile int refuseConnects;
+
+    private SocketIoClient client;
+    private final Events events = new Events();
+
+    private static final class Events implements SocketIoClient.Listener {
+        final AtomicInteger connects = new AtomicInteger();
+        final AtomicInteger disconnects = new AtomicInteger();
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onConnected() {
+            connects.incrementAndGet();
+        }
+
+        @Override
+        public void onEvent(String event, JSONArray args) {
+            received.add(event + " " + args);
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            disconnects.incrementAndGet();
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/socket.io/", this::serve);
+        // A long-poll is held open while the client posts pongs and events
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        if (client != null) {
+            client.stop();
+        }
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (!"4".equals(query.get("EIO")) || !"polling".equals(query.get("transport"))) {
+            respond(exchange, 400, "{\"code\":0,\"message\":\"Transport unknown\"}");
+            return;
+        }
+        String sid = query.get("sid");
+        if (sid == null) {
+            handshakes.incrementAndGet();
+            Session session = new Session("s" + handshakes.get(), query);
+            sessions.put(session.sid, session);
+            respond(exchange, 200, "0{\"sid\":\"" + session.sid + "\",\"upgrades\":[\"websocket\"],\"pingInterval\":"
+                + PING_INTERVAL_MS + ",\"pingTimeout\":" + PING_TIMEOUT_MS + ",\"maxPayload\":1000000}");
+            return;
+        }
+        Session session = sessions.get(sid);
+        if (session == null) {
+            respond(exchange, 400, "{\"code\":1,\"message\":\"Session ID unknown\"}");
+            return;
+        }
+        if ("POST".equals(exchange.getRequestMethod())) {
+            String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            for (String packet : body.split("\u001e")) {
+                receive(session, packet);
+            }
+            respond(exchange, 200, "ok");
+            return;
+        }
+        // Long-poll: whatever is queued, or a ping once the interval passes
+        try {
+            String first = session.outbound.poll(PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                if (session.pingSentAt > 0 && System.currentTimeMillis() - session.pingSentAt > PING_TIMEOUT_MS) {
+                    sessions.remove(sid);
+                    respond(exchange, 200, "1");
+                    return;
+                }
+                session.pingSentAt = System.currentTimeMillis();
+                first = "2";
+            }
+            StringBuilder payload = new StringBuilder(first);
+            String next;
+            while ((next = session.outbound.poll()) != null) {
+                payload.append('\u001e').append(next);
+            }
+            respond(exchange, 200, payload.toString());
+        } catch (InterruptedException e) {
+            respond(exchange, 200, "6");
+        }
+    }
+
+    private void receive(Session session, String packet) throws IOException {
+        if (packet.startsWith("40")) {
+            if (refuseConnects > 0) {
+                refuseConnects--;
+                session.outbound.add("44{\"message\":\"not authorized\"}");
+            } else {
+                session.userId = tokenUser(packet.substring(2));
+                session.outbound.add("40{\"sid\":\"ns-" + session.sid + "\"}");
+            }
+        } else if (packet.equals("3")) {
+            session.pingSentAt = 0;
+            pongs.incrementAndGet();
+        } else if (packet.equals("1")) {
+            closes.incrementAndGet();
+            sessions.remove(session.sid);
+        } else if (packet.startsWith("42")) {
+            received.add(session.userId + " " + packet.substring(2));
+        }
+    }
+
+    // "token-<userId>" stands in for a JWT; a connect without one joins no user room
+    private static String tokenUser(String auth) throws IOException {
+        try {
+            String token = auth.isEmpty() ? "" : new JSONObject(auth).optString("token");
+            return token.startsWith("token-") ? token.substring("token-".length()) : null;
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** What io.to(`user:${userId}`).emit(event, payload) does on the backend. */
+    private int emitTo(String userId, String event, JSONObject payload) {
+        int delivered = 0;
+        for (Session session : sessions.values()) {
+            if (userId.equals(session.userId)) {
+                session.outbound.add("42" + new JSONArray().put(event).put(payload));
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> query = new HashMap<>();
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out waiting for " + what, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private SocketIoClient connect(String userId) {
+        SocketIoClient.Config config = new SocketIoClient.Config();
+        config.baseUrl = url + "/";
+        config.auth.put("token", "token-" + userId);
+        config.query.put("client", "android-call-service");
+        config.initialBackoffMs = 20;
+        config.maxBackoffMs = 200;
+        client = new SocketIoClient(config, events, new Random(1));
+        client.start();
+        return client;
+    }
+
+    @Test
+    public void receivesEventsForItsUserOnly() throws Exception {
+        connect("patient-1");
+        await("connect", () -> events.connects.get() == 1);
+        assertTrue(client.isConnected());
+        Session session = sessions.values().iterator().next();
+        assertEquals("the handshake carries the query", "android-call-service", session.query.get("client"));
+        assertNull("the user comes from the token, not the query", session.query.get("userId"));
+        assertEquals("patient-1", session.userId);
+
+        JSONObject invite = new JSONObject().put("callId", "c1").put("roomId", "room-42").put("callerName", "Dr. Rao");
+        assertEquals(1, emitTo("patient-1", "incoming-call", invite));
+        assertEquals(0, emitTo("patient-2", "incoming-call", new JSONObject().put("roomId", "other")));
+
+        await("event", () -> events.received.size() == 1);
+        String[] parts = events.received.get(0).split(" ", 2);
+        assertEquals("incoming-call", parts[0]);
+        JSONArray args = new JSONArray(parts[1]);
+        assertEquals(1, args.length());
+        assertEquals("room-42", args.getJSONObject(0).getString("roomId"));
+        assertEquals("Dr. Rao", args.getJSONObject(0).getString("callerName"));
+
+        Thread.sleep(PING_INTERVAL_MS * 2);
+        assertEquals("the other user's invite never arrives", 1, events.received.size());
+    }
+
+    @Test
+    public void emitsEventsToTheServer() throws Exception {
+        connect("patient-1");
+        assertFalse("nothing to send on before the namespace connects", client.emit("early", null));
+        await("connect", () -> events.connects.get() == 1);
+
+        assertTrue(client.emit("call-answer", new JSONObject().put("callId", "c1").put("accepted", true)));
+        await("answer", () -> received.size() == 1);
+        String[] parts = received.get(0).split(" ", 2);
+        assertEquals("patient-1", parts[0]);
+        JSONArray packet = new JSONArray(parts[1]);
+        assertEquals("call-answer", packet.getString(0));
+        assertTrue(packet.getJSONObject(1).getBoolean("accepted"));
+    }
+
+    @Test
+    public void answersHeartbeatsSoTheSessionLasts() throws Exception {
+        connect("patient-1");
+        await("connect", () -> events.connects.get() == 1);
+        await("several pings", () -> pongs.get() >= 4);
+        assertEquals("one session throughout", 1, handshakes.get());
+        assertEquals(0, events.disconnects.get());
+    }
+
+    // The backend restarting (or a load balancer losing the session) answers polls with 400
+    @Test
+    public void reconnectsWhenTheSessionIsLost() throws Exception {
+        connect("patient-1");
+        await("connect", () -> events.connects.get() == 1);
+        sessions.clear();
+
+        await("reconnect", () -> events.connects.get() == 2);
+        assertEquals(1, events.disconnects.get());
+        assertEquals(2, handshakes.get());
+
+        emitTo("patient-1", "call-cancelled", new JSONObject().put("callId", "c9"));
+        await("event on the new session", () -> events.received.size() == 1);
+        assertTrue(events.received.get(0).startsWith("call-cancelled"));
+    }
+
+    @Test
+    public void retriesARefusedConnectWithBackoff() throws Exception {
+        refuseConnects = 3;
+        connect("patient-1");
+        await("connect after refusals", () -> events.connects.get() == 1);
+        assertEquals("a fresh session per attempt", 4, handshakes.get());
+        assertEquals("never connected, so nothing to report lost", 0, events.disconnects.get());
+    }
+
+    @Test
+    public void stopClosesTheSession() throws Exception {
+        connect("patient-1");
+        await("connect", () -> events.connects.get() == 1);
+        client.stop();
+        await("close packet", () -> closes.get() == 1);
+        assertTrue(sessions.isEmpty());
+        assertFalse(client.emit("call-answer", new JSONObject()));
+        client = null;
+    }
+}
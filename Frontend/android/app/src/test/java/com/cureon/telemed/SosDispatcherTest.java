@@ -0,0 +1,275 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class SosDispatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger createStatus = new AtomicInteger(201);
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final List<String> sms = new CopyOnWriteArrayList<>();
+    private final List<String> acknowledged = new CopyOnWriteArrayList<>();
+    private File dir;
+    private SosDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/", exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.transferTo(out);
+                body = out.toString(StandardCharsets.UTF_8.name());
+            }
+            String path = exchange.getRequestURI().getPath();
+            requests.add(exchange.getRequestMethod() + " " + path + " " + body);
+            int status = 200;
+            String response = "{\"success\":true}";
+            if (path.endsWith("/sos") || path.endsWith("/ambulance")) {
+                status = failuresLeft.getAndDecrement() > 0 ? 503 : createStatus.get();
+                response = "{\"success\":true,\"emergency\":{\"_id\":\"em-1\"}}";
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        dir = tmp.newFolder("sos");
+    }
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+        server.stop(0);
+    }
+
+    private SosDispatcher.Config config(String url) {
+        SosDispatcher.Config config = new SosDispatcher.Config();
+        config.baseUrl = url;
+        config.token = "abc";
+        config.initialBackoffMs = 20;
+        config.maxBackoffMs = 100;
+        config.smsAfterMs = 60_000;
+        config.connectTimeoutMs = 2_000;
+        return config;
+    }
+
+    private SosDispatcher start(SosDispatcher.Config config) {
+        dispatcher = new SosDispatcher(dir, config, new SosDispatcher.Listener() {
+            @Override
+            public void onChanged(SosDispatcher.Alert alert) {
+            }
+
+            @Override
+            public void onAcknowledged(SosDispatcher.Alert alert) {
+                acknowledged.add(alert.id);
+            }
+
+            @Override
+            public void onSmsFallback(SosDispatcher.Alert alert) {
+                sms.add(SosDispatcher.smsText("Meena", alert));
+            }
+        }, new Random(1));
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private static SosFix fix(double lat, double lon, float accuracy, long ageMs) {
+        return new SosFix(lat, lon, accuracy, System.currentTimeMillis() - ageMs, "gps");
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out waiting for " + what, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void sendsWithTheCachedFixThenFollowsUpWithBetterOnes() throws Exception {
+        start(config(baseUrl));
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, "Chest Pain", "high", "chest_pain",
+            fix(12.9716, 77.5946, 800, 30_000));
+        await("ack", () -> SosDispatcher.SENT.equals(dispatcher.get(alert.id).state));
+
+        JSONObject create = new JSONObject(requests.get(0).substring(requests.get(0).indexOf('{')));
+        assertTrue(requests.get(0).startsWith("POST /api/v1/emergency/sos "));
+        assertEquals(alert.id, create.getString("clientId"));
+        assertEquals(800, create.getJSONObject("location").getInt("accuracy"));
+        assertEquals(30, create.getJSONObject("location").getLong("fixAgeSeconds"), 1);
+        assertEquals("em-1", alert.emergencyId);
+        assertTrue(alert.latencyMs() >= 0);
+        assertTrue(alert.firstFixAgeMs >= 30_000);
+
+        dispatcher.offerFix(fix(12.9717, 77.5947, 600, 0));  // not enough better
+        dispatcher.offerFix(fix(12.9718, 77.5948, 15, 0));
+        await("update", () -> requests.size() == 2);
+        assertTrue(requests.get(1).startsWith("PUT /api/v1/emergency/em-1/update-location "));
+        assertTrue(requests.get(1).contains("\"accuracy\":15"));
+        await("update recorded", () -> dispatcher.get(alert.id).updates == 1);
+        assertEquals(0, dispatcher.pending());
+        assertEquals(Arrays.asList(alert.id), acknowledged);
+        assertTrue(sms.isEmpty());
+    }
+
+    @Test
+    public void retriesServerErrorsWithTheSameClientId() throws Exception {
+        failuresLeft.set(3);
+        start(config(baseUrl));
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.AMBULANCE, "", "critical", null,
+            fix(1, 2, 10, 0));
+        await("ack", () -> SosDispatcher.SENT.equals(dispatcher.get(alert.id).state));
+        assertEquals(4, requests.size());
+        for (String request : requests) {
+            assertTrue(request.startsWith("POST /api/v1/emergency/ambulance "));
+            assertTrue(request.contains("\"clientId\":\"" + alert.id + "\""));
+        }
+    }
+
+    @Test
+    public void textsContactsWhenTheServerStaysUnreachable() throws Exception {
+        server.stop(0);
+        SosDispatcher.Config config = config(baseUrl);
+        config.smsAfterMs = 150;
+        start(config);
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, "Accident", "high", null,
+            fix(28.6139, 77.2090, 25, 0));
+        await("sms", () -> sms.size() == 1);
+        Thread.sleep(200);
+        assertEquals("once per alert", 1, sms.size());
+        assertTrue(sms.get(0), sms.get(0).startsWith("EMERGENCY: Meena has triggered an SOS."));
+        assertTrue(sms.get(0), sms.get(0).contains("https://maps.google.com/?q=28.613900,77.209000 (within 25 m)"));
+        assertTrue(dispatcher.get(alert.id).failures > 0);
+        assertEquals(1, dispatcher.pending());
+    }
+
+    @Test
+    public void refusedAlertsGoStraightToSms() throws Exception {
+        createStatus.set(401);
+        start(config(baseUrl));
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, null, "high", null, fix(1, 2, 10, 0));
+        await("sms", () -> sms.size() == 1);
+        assertEquals(SosDispatcher.FAILED, dispatcher.get(alert.id).state);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void withoutAFixItWaitsButStillTextsOnTime() throws Exception {
+        SosDispatcher.Config config = config(baseUrl);
+        config.smsAfterMs = 100;
+        start(config);
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, null, "high", null, null);
+        await("sms", () -> sms.size() == 1);
+        assertTrue(sms.get(0).contains("Location unavailable."));
+        assertTrue(requests.isEmpty());
+
+        dispatcher.offerFix(fix(1, 2, 30, 0));
+        await("ack", () -> SosDispatcher.SENT.equals(dispatcher.get(alert.id).state));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void unsentAlertsSurviveARestart() throws Exception {
+        start(config(null));
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, "Breathing Issue", "high", "breathing",
+            fix(1, 2, 10, 0));
+        await("sms without a server", () -> sms.size() == 1);
+        dispatcher.stop();
+
+        start(config(baseUrl));
+        await("ack after restart", () -> dispatcher.get(alert.id) != null
+            && SosDispatcher.SENT.equals(dispatcher.get(alert.id).state));
+        SosDispatcher.Alert restored = dispatcher.get(alert.id);
+        assertEquals("Breathing Issue", restored.description);
+        assertTrue(restored.smsSent);
+        assertEquals(1, sms.size());
+    }
+
+    @Test
+    public void cancellingAnAcknowledgedAlertResolvesIt() throws Exception {
+        start(config(baseUrl));
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, null, "high", null, fix(1, 2, 10, 0));
+        await("ack", () -> SosDispatcher.SENT.equals(dispatcher.get(alert.id).state));
+        assertTrue(dispatcher.cancel(alert.id));
+        assertFalse(dispatcher.cancel(alert.id));
+        await("resolve", () -> requests.size() == 2);
+        assertTrue(requests.get(1).startsWith("PUT /api/v1/emergency/em-1/resolve "));
+        dispatcher.offerFix(fix(5, 6, 5, 0));
+        Thread.sleep(50);
+        assertEquals(2, requests.size());
+        assertEquals(0, dispatcher.live());
+    }
+
+    @Test
+    public void picksTheMostAccurateFreshFixElseTheNewest() {
+        long now = System.currentTimeMillis();
+        SosFix staleGps = new SosFix(1, 1, 5, now - 10 * 60_000, "gps");
+        SosFix freshNetwork = new SosFix(1, 1, 120, now - 30_000, "network");
+        SosFix freshPassive = new SosFix(1, 1, 40, now - 60_000, "passive");
+        SosFix older = new SosFix(1, 1, 5, now - 60 * 60_000, "gps");
+        assertSame(freshPassive, SosFix.best(Arrays.asList(staleGps, null, freshNetwork, freshPassive), now));
+        assertSame(staleGps, SosFix.best(Arrays.asList(older, staleGps), now));
+        assertNull(SosFix.best(Arrays.asList((SosFix) null), now));
+    }
+
+    @Test
+    public void followUpsOnlyWhenTheyAddSomething() {
+        long now = System.currentTimeMillis();
+        SosFix sent = new SosFix(12.9716, 77.5946, 100, now - 5_000, "network");
+        assertTrue(SosFix.worthSending(sent, null));
+        assertFalse("older", SosFix.worthSending(new SosFix(12.9716, 77.5946, 5, now - 6_000, "gps"), sent));
+        assertFalse("same place", SosFix.worthSending(new SosFix(12.9716, 77.5946, 90, now, "gps"), sent));
+        assertTrue("more accurate", SosFix.worthSending(new SosFix(12.9716, 77.5946, 20, now, "gps"), sent));
+        // About 330 m north
+        assertTrue("moved", SosFix.worthSending(new SosFix(12.9746, 77.5946, 100, now, "gps"), sent));
+        assertEquals(333, SosFix.distance(sent, new SosFix(12.9746, 77.5946, 0, now, "")), 2);
+    }
+
+    @Test
+    public void warmingOpensAConnectionWithoutRaisingAnAlert() throws Exception {
+        start(config(baseUrl));
+        assertTrue(dispatcher.warm() >= 0);
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).startsWith("GET " + SosDispatcher.WARM_PATH + " "));
+        assertEquals(0, dispatcher.pending());
+
+        SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, null, "high", null, fix(1, 2, 10, 0));
+        await("ack", () -> SosDispatcher.SENT.equals(dispatcher.get(alert.id).state));
+        assertTrue(alert.latencyMs() >= 0);
+        assertEquals(-1, new SosDispatcher(dir, config(null), null, new Random(1)).warm());
+    }
+}
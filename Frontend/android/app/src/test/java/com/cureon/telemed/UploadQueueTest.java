@@ -0,0 +1,433 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/** Runs the queue against a local server that accepts chunks the way Cloudinary does. */
+public class UploadQueueTest {
+    private static final int CHUNK = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private String url;
+    private final Map<String, ByteArrayOutputStream> received = new HashMap<>();
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private final List<Map<String, String>> fieldsSeen = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    // Status to answer instead of accepting a chunk: once, or every time after N accepted chunks
+    private volatile int failNextWith;
+    private volatile int failAfterAccepted = Integer.MAX_VALUE;
+    private volatile int rejectWith;
+    private volatile long delayMs;
+    private int accepted;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/upload", this::serve);
+        // Several uploads must be in flight at once to see the per-host limit
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            String range = exchange.getRequestHeaders().getFirst("Content-Range");
+            String uploadId = exchange.getRequestHeaders().getFirst("X-Unique-Upload-Id");
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            byte[] body = readAll(exchange.getRequestBody());
+            ranges.add(range);
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            int fail;
+            synchronized (this) {
+                fail = failNextWith != 0 ? failNextWith : rejectWith != 0 ? rejectWith
+                    : accepted >= failAfterAccepted ? 503 : 0;
+                failNextWith = 0;
+            }
+            if (fail != 0) {
+                respond(exchange, fail, "{\"error\":{\"message\":\"nope\"}}");
+                return;
+            }
+
+            String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+            Map<String, String> fields = new LinkedHashMap<>();
+            byte[] file = parseMultipart(body, boundary, fields);
+            String[] span = range.substring("bytes ".length()).split("[-/]");
+            long start = Long.parseLong(span[0]);
+            long end = Long.parseLong(span[1]);
+            long total = Long.parseLong(span[2]);
+            assertEquals(range, end - start + 1, file.length);
+            fieldsSeen.add(fields);
+
+            boolean done;
+            synchronized (this) {
+                ByteArrayOutputStream assembled = received.computeIfAbsent(uploadId, k -> new ByteArrayOutputStream());
+                // A chunk sent again because its answer was lost is acknowledged without appending
+                boolean repeat = start < assembled.size() && start + file.length == assembled.size();
+                if (assembled.size() != start && !repeat) {
+                    respond(exchange, 400, "{\"error\":{\"message\":\"out of order\"}}");
+                    return;
+                }
+                if (!repeat) {
+                    assembled.write(file, 0, file.length);
+                    accepted++;
+                }
+                done = assembled.size() == total;
+            }
+            respond(exchange, 200, done ? "{\"secure_url\":\"https://cdn.example/" + uploadId + "\"}"
+                : "{\"done\":false}");
+        } catch (InterruptedException e) {
+            respond(exchange, 500, "");
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static byte[] parseMultipart(byte[] body, String boundary, Map<String, String> fields) {
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        byte[] file = null;
+        for (String part : text.split("--" + boundary)) {
+            int split = part.indexOf("\r\n\r\n");
+            if (split < 0) {
+                continue;
+            }
+            String headers = part.substring(0, split);
+            String value = part.substring(split + 4, part.length() - 2);
+            String name = headers.replaceAll("(?s).*name=\"([^\"]*)\".*", "$1");
+            if (headers.contains("filename=")) {
+                file = value.getBytes(StandardCharsets.ISO_8859_1);
+            } else {
+                fields.put(name, value);
+            }
+        }
+        assertNotNull("no file part", file);
+        return file;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Events implements UploadQueue.Listener {
+        final List<Long> progress = Collections.synchronizedList(new ArrayList<>());
+        final List<String> states = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onProgress(UploadQueue.Task task, long sentBytes) {
+            progress.add(sentBytes);
+        }
+
+        @Override
+        public void onStateChanged(UploadQueue.Task task) {
+            states.add(task.state);
+        }
+    }
+
+    private UploadQueue.Config config() {
+        UploadQueue.Config config = new UploadQueue.Config();
+        config.chunkBytes = CHUNK;
+        config.initialBackoffMs = 10;
+        config.maxBackoffMs = 50;
+        config.timeoutMs = 5_000;
+        return config;
+    }
+
+    private File media(String name, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        File file = tmp.newFile(name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static Map<String, String> fields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("upload_preset", "sachin");
+        fields.put("folder", "video-analysis");
+        return fields;
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out waiting for " + what, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void uploadsInChunksAndReassembles() throws Exception {
+        File file = media("clip.mp4", 3 * CHUNK + 1234);
+        byte[] original = Files.readAllBytes(file.toPath());
+        Events events = new Events();
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config(), events, new Random(1));
+        UploadQueue.Task task = queue.enqueue(file, true, url, fields(), "clip.mp4", "video/mp4");
+        queue.start();
+        await("upload", () -> UploadQueue.DONE.equals(queue.get(task.id).state));
+        queue.stop();
+        // The worker deletes the file and reports after the state changes
+        assertTrue(queue.awaitStopped(5_000));
+
+        assertEquals(Arrays.asList("bytes 0-65535/197842", "bytes 65536-131071/197842",
+            "bytes 131072-196607/197842", "bytes 196608-197841/197842"), ranges);
+        assertArrayEquals(original, received.get(task.uploadId).toByteArray());
+        for (Map<String, String> seen : fieldsSeen) {
+            assertEquals(fields(), seen);
+        }
+        assertEquals("https://cdn.example/" + task.uploadId, task.response.replaceAll(".*\"(https[^\"]*)\".*", "$1"));
+        assertFalse("an owned file is deleted once uploaded", file.exists());
+        assertEquals(0, queue.pending());
+
+        long last = 0;
+        for (long sent : events.progress) {
+            assertTrue("progress goes forward", sent >= last);
+            last = sent;
+        }
+        assertEquals(197842L, last);
+        assertEquals(Arrays.asList(UploadQueue.QUEUED, UploadQueue.UPLOADING, UploadQueue.DONE), events.states);
+    }
+
+    @Test
+    public void retriesTransientFailuresFromTheAcknowledgedOffset() throws Exception {
+        File file = media("ecg.mp4", 2 * CHUNK + 10);
+        Events events = new Events();
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config(), events, new Random(1));
+        queue.start();
+        UploadQueue.Task task = queue.enqueue(file, false, url, fields(), "ecg.mp4", "video/mp4");
+        await("first chunk", () -> queue.get(task.id).offset == CHUNK);
+        failNextWith = 503;
+        await("upload", () -> UploadQueue.DONE.equals(queue.get(task.id).state));
+        queue.stop();
+
+        // The acknowledged chunk is never sent again; only the one that failed is
+        List<String> starts = new ArrayList<>();
+        for (String range : ranges) {
+            starts.add(range.replaceAll("bytes (\\d+)-.*", "$1"));
+        }
+        assertEquals("0", starts.get(0));
+        assertEquals(Collections.frequency(starts, "0"), 1);
+        assertEquals(Collections.frequency(starts, String.valueOf(2 * CHUNK)), 1);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), received.get(task.uploadId).toByteArray());
+        assertTrue("a file the queue doesn't own is kept", file.exists());
+    }
+
+    @Test
+    public void resumesAfterRestartWithTheSameUploadId() throws Exception {
+        File dir = tmp.newFolder("uploads");
+        File file = media("retina.mp4", 4 * CHUNK);
+        byte[] original = Files.readAllBytes(file.toPath());
+        failAfterAccepted = 2;
+        UploadQueue.Config slow = config();
+        slow.initialBackoffMs = 60_000;
+        UploadQueue first = new UploadQueue(dir, slow, new Events(), new Random(1));
+        first.start();
+        UploadQueue.Task task = first.enqueue(file, true, url, fields(), "retina.mp4", "video/mp4");
+        await("failure after two chunks", () -> first.get(task.id).failures > 0);
+        // Process death: nothing in memory survives
+        first.stop();
+        assertTrue(first.awaitStopped(5_000));
+        assertEquals(2 * CHUNK, first.get(task.id).offset);
+
+        failAfterAccepted = Integer.MAX_VALUE;
+        ranges.clear();
+        UploadQueue second = new UploadQueue(dir, config(), new Events(), new Random(1));
+        UploadQueue.Task restored = second.get(task.id);
+        assertNotNull(restored);
+        assertEquals(UploadQueue.QUEUED, restored.state);
+        assertEquals(2 * CHUNK, restored.offset);
+        assertEquals(task.uploadId, restored.uploadId);
+        assertEquals(fields(), restored.fields);
+
+        // The backoff from before the restart still applies; a fresh start shouldn't wait it out
+        restored.nextAttemptAt = 0;
+        second.start();
+        await("resumed upload", () -> UploadQueue.DONE.equals(second.get(task.id).state));
+        second.stop();
+        assertEquals("bytes 131072-196607/262144", ranges.get(0));
+        assertArrayEquals(original, received.get(task.uploadId).toByteArray());
+
+        UploadQueue third = new UploadQueue(dir, config(), new Events(), new Random(1));
+        assertEquals("results survive until collected", UploadQueue.DONE, third.get(task.id).state);
+        assertTrue(third.remove(task.id));
+        assertNull(new UploadQueue(dir, config(), new Events(), new Random(1)).get(task.id));
+    }
+
+    @Test
+    public void limitsConcurrentUploadsPerHost() throws Exception {
+        delayMs = 40;
+        UploadQueue.Config config = config();
+        config.maxConcurrent = 4;
+        config.perHostLimit = 2;
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config, new Events(), new Random(1));
+        List<UploadQueue.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(queue.enqueue(media("photo" + i + ".jpg", CHUNK + 100), true, url, fields(),
+                "photo" + i + ".jpg", "image/jpeg"));
+        }
+        queue.start();
+        await("all uploads", () -> queue.pending() == 0);
+        queue.stop();
+
+        for (UploadQueue.Task task : tasks) {
+            assertEquals(UploadQueue.DONE, queue.get(task.id).state);
+        }
+        assertEquals(10, ranges.size());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void clientErrorsFailWithoutRetrying() throws Exception {
+        rejectWith = 400;
+        File file = media("bad.mp4", 100);
+        Events events = new Events();
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config(), events, new Random(1));
+        queue.start();
+        UploadQueue.Task task = queue.enqueue(file, true, url, fields(), "bad.mp4", "video/mp4");
+        await("failure", () -> UploadQueue.FAILED.equals(queue.get(task.id).state));
+        queue.stop();
+        // The worker deletes the file and reports after the state changes
+        assertTrue(queue.awaitStopped(5_000));
+
+        assertEquals(1, ranges.size());
+        assertTrue(task.error, task.error.startsWith("HTTP 400"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void cancelForgetsTheTaskAndItsFile() throws Exception {
+        failAfterAccepted = 0;
+        File dir = tmp.newFolder("uploads");
+        File file = media("cancel.mp4", 2 * CHUNK);
+        UploadQueue queue = new UploadQueue(dir, config(), new Events(), new Random(1));
+        queue.start();
+        UploadQueue.Task task = queue.enqueue(file, true, url, fields(), "cancel.mp4", "video/mp4");
+        await("a failed attempt", () -> queue.get(task.id).failures > 0);
+        assertTrue(queue.cancel(task.id));
+        assertFalse(queue.cancel(task.id));
+        queue.stop();
+
+        assertNull(queue.get(task.id));
+        assertFalse(file.exists());
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void stopDoesNotWaitForAChunkInFlight() throws Exception {
+        delayMs = 2_000;
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config(), new Events(), new Random(1));
+        queue.start();
+        UploadQueue.Task task = queue.enqueue(media("slow.mp4", 2 * CHUNK), true, url, fields(), "slow.mp4",
+            "video/mp4");
+        await("a chunk in flight", () -> inFlight.get() == 1);
+        // The service calls this on the main thread
+        queue.stop();
+        assertEquals("the server hasn't answered yet", 1, inFlight.get());
+
+        assertTrue(queue.awaitStopped(5_000));
+        assertEquals(UploadQueue.QUEUED, queue.get(task.id).state);
+        assertEquals(0, queue.get(task.id).failures);
+    }
+
+    @Test
+    public void restartingRightAfterStopDoesNotCountAFailure() throws Exception {
+        delayMs = 40;
+        UploadQueue.Config config = config();
+        config.maxConcurrent = 2;
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config, new Events(), new Random(1));
+        List<UploadQueue.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(queue.enqueue(media("scan" + i + ".jpg", 2 * CHUNK), true, url, fields(),
+                "scan" + i + ".jpg", "image/jpeg"));
+        }
+        queue.start();
+        await("uploads in flight", () -> inFlight.get() == 2);
+        queue.stop();
+        queue.start();
+        await("all uploads", () -> queue.pending() == 0);
+        queue.stop();
+
+        // The stopped workers' aborted chunks are not errors, even though the queue is running again
+        for (UploadQueue.Task task : tasks) {
+            assertEquals(UploadQueue.DONE, queue.get(task.id).state);
+            assertNull(task.error, queue.get(task.id).error);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void emptyFilesAreRejected() throws Exception {
+        UploadQueue queue = new UploadQueue(tmp.newFolder("uploads"), config(), new Events(), new Random(1));
+        queue.enqueue(media("empty.jpg", 0), true, url, fields(), "empty.jpg", "image/jpeg");
+    }
+
+    @Test
+    public void aFileThatChangedIsNotResumed() throws Exception {
+        File dir = tmp.newFolder("uploads");
+        File file = media("changed.mp4", CHUNK);
+        UploadQueue queue = new UploadQueue(dir, config(), new Events(), new Random(1));
+        UploadQueue.Task task = queue.enqueue(file, false, url, fields(), "changed.mp4", "video/mp4");
+        Files.write(file.toPath(), new byte[10]);
+
+        UploadQueue reloaded = new UploadQueue(dir, config(), new Events(), new Random(1));
+        assertEquals(UploadQueue.FAILED, reloaded.get(task.id).state);
+        assertEquals(0, reloaded.pending());
+    }
+}
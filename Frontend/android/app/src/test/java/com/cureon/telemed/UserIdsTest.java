@@ -0,0 +1,33 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class UserIdsTest {
+
+    @Test
+    public void matchesTheRegexItReplaces() {
+        String[] ids = {
+            "", "64f1a2b3c4d5e6f708192a3b", "user_42", "dr.smith@cureon.in", "Jos\u00e9-Mar\u00eda",
+            "a b\tc", "\uD83D\uDE00emoji\uD83D\uDE00", "\uD83Dlone", "lone\uDE00", "__--__", "\u0660\u0661"
+        };
+        for (String id : ids) {
+            assertEquals(id, id.replaceAll("[^a-zA-Z0-9_]", "_"), UserIds.sanitize(id));
+        }
+    }
+
+    @Test
+    public void cleanIdsComeBackAsIs() {
+        String id = "64f1a2b3c4d5e6f708192a3b";
+        assertSame(id, UserIds.sanitize(id));
+        assertEquals("", UserIds.sanitize(null));
+    }
+
+    @Test
+    public void emptyNamesFallBack() {
+        assertEquals(UserIds.DEFAULT_NAME, UserIds.displayName(null));
+        assertEquals(UserIds.DEFAULT_NAME, UserIds.displayName(""));
+        assertEquals("Dr. Rao", UserIds.displayName("Dr. Rao"));
+    }
+}
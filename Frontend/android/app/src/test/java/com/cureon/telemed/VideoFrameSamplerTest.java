@@ -0,0 +1,68 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class VideoFrameSamplerTest {
+
+    @Test
+    public void uniformTimesAreSliceMidpoints() {
+        assertArrayEquals(new long[] { 1_000_000, 3_000_000, 5_000_000, 7_000_000, 9_000_000 },
+            VideoFrameSampler.uniformTimesUs(10_000_000, 5));
+        assertEquals(0, VideoFrameSampler.uniformTimesUs(0, 5)[0]);
+    }
+
+    @Test
+    public void targetSizeFitsLongEdgeWithoutUpscaling() {
+        assertArrayEquals(new int[] { 1024, 576 }, VideoFrameSampler.targetSize(3840, 2160, 1024));
+        assertArrayEquals(new int[] { 576, 1024 }, VideoFrameSampler.targetSize(2160, 3840, 1024));
+        assertArrayEquals(new int[] { 640, 480 }, VideoFrameSampler.targetSize(640, 480, 1024));
+        assertArrayEquals(new int[] { 640, 480 }, VideoFrameSampler.targetSize(640, 480, 0));
+    }
+
+    @Test
+    public void histogramBucketsLuminance() {
+        int[] pixels = { 0xFF000000, 0xFFFFFFFF, 0xFFFFFFFF, 0xFF808080 };
+        int[] bins = new int[VideoFrameSampler.HISTOGRAM_BINS];
+        VideoFrameSampler.lumaHistogram(pixels, pixels.length, bins);
+        assertEquals(1, bins[0]);
+        assertEquals(2, bins[31]);
+        assertEquals(1, bins[16]);
+    }
+
+    @Test
+    public void histogramDistanceIsNormalised() {
+        int[] dark = new int[VideoFrameSampler.HISTOGRAM_BINS];
+        int[] bright = new int[VideoFrameSampler.HISTOGRAM_BINS];
+        dark[0] = 100;
+        bright[31] = 100;
+        assertEquals(1f, VideoFrameSampler.histogramDistance(dark, bright, 100), 1e-6f);
+        assertEquals(0f, VideoFrameSampler.histogramDistance(dark, dark, 100), 1e-6f);
+    }
+
+    @Test
+    public void scenePicksHighestScoresWithSpacing() {
+        long[] times = { 0, 10, 20, 30, 40, 50, 60, 70 };
+        float[] scores = { 1f, 0.01f, 0.9f, 0.85f, 0.02f, 0.6f, 0.01f, 0.02f };
+        // 0.85 at t=30 is too close to 0.9 at t=20
+        assertArrayEquals(new int[] { 0, 2, 5 }, VideoFrameSampler.pickSceneChanges(scores, times, 3, 15));
+    }
+
+    @Test
+    public void sceneFallsBackToEvenSpreadForStaticVideo() {
+        long[] times = { 0, 10, 20, 30, 40, 50, 60, 70 };
+        float[] scores = { 1f, 0, 0, 0, 0, 0, 0, 0 };
+        int[] picks = VideoFrameSampler.pickSceneChanges(scores, times, 4, 15);
+        assertEquals(4, picks.length);
+        assertEquals(0, picks[0]);
+        for (int i = 1; i < picks.length; i++) {
+            assertTrue(picks[i] > picks[i - 1]);
+        }
+    }
+
+    @Test
+    public void sceneNeverReturnsMoreThanCandidates() {
+        assertEquals(2, VideoFrameSampler.pickSceneChanges(new float[] { 1f, 0.5f }, new long[] { 0, 1 }, 5, 0).length);
+    }
+}
@@ -0,0 +1,316 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class VitalsAnalyticsTest {
+    private static final long SUMMARY_WINDOW_MS = 60_000;
+
+    /** What replaying a trace produced: the per-window summaries and every RR interval that went in. */
+    private static final class Replay {
+        final List<VitalsAnalytics.Summary> summaries = new ArrayList<>();
+        final List<Float> rrIntervals = new ArrayList<>();
+
+        VitalsAnalytics.Summary last() {
+            return summaries.get(summaries.size() - 1);
+        }
+
+        int heartRateRejected() {
+            int n = 0;
+            for (VitalsAnalytics.Summary s : summaries) {
+                n += s.heartRate == null ? 0 : s.heartRate.rejected;
+            }
+            return n;
+        }
+
+        int heartRateDropouts() {
+            int n = 0;
+            for (VitalsAnalytics.Summary s : summaries) {
+                n += s.heartRate == null ? 0 : s.heartRate.dropouts;
+            }
+            return n;
+        }
+
+        int rejectedBeats() {
+            int n = 0;
+            for (VitalsAnalytics.Summary s : summaries) {
+                n += s.hrv == null ? 0 : s.hrv.rejectedBeats;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Replays a recorded trace from src/test/resources/vitals-traces through a
+     * batcher with one-minute windows, as the plugin does with BLE notifications.
+     */
+    private static Replay replay(String trace) throws IOException {
+        Replay replay = new Replay();
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(SUMMARY_WINDOW_MS);
+        InputStream in = VitalsAnalyticsTest.class.getResourceAsStream("/vitals-traces/" + trace);
+        assertNotNull("missing trace " + trace, in);
+        long t = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.startsWith("t_ms")) {
+                    continue;
+                }
+                String[] f = line.split(",", -1);
+                t = Long.parseLong(f[0]);
+                VitalsWindowBatcher.Batch batch = batcher.flushIfDue(t);
+                if (batch != null) {
+                    replay.summaries.add(batch.summary);
+                }
+                if (!f[1].isEmpty()) {
+                    batcher.recordHeartRate(t, Integer.parseInt(f[1]));
+                }
+                if (!f[2].isEmpty()) {
+                    String[] rr = f[2].split(";");
+                    float[] intervals = new float[rr.length];
+                    for (int i = 0; i < rr.length; i++) {
+                        intervals[i] = Float.parseFloat(rr[i]);
+                        replay.rrIntervals.add(intervals[i]);
+                    }
+                    batcher.recordRrIntervals(t, intervals, intervals.length);
+                }
+                if (!f[3].isEmpty()) {
+                    batcher.recordBloodPressure(t, Float.parseFloat(f[3]), Float.parseFloat(f[4]));
+                }
+                if (!f[5].isEmpty()) {
+                    batcher.recordTemperature(t, Float.parseFloat(f[5]));
+                }
+            }
+        }
+        replay.summaries.add(batcher.flush(t).summary);
+        return replay;
+    }
+
+    @Test
+    public void restingTraceHrvMatchesAnOfflinePass() throws IOException {
+        Replay replay = replay("resting_sinus.csv");
+        VitalsAnalytics.Summary last = replay.last();
+        assertEquals(0, replay.rejectedBeats());
+        assertEquals(0, replay.heartRateRejected());
+        assertEquals(0, replay.heartRateDropouts());
+
+        // The trace has no artifacts, so RMSSD and SDNN over the final five minutes are plain formulas.
+        // Every beat of a notification carries its time, so the window holds the beats stamped in
+        // the last five minutes; the trace notifies once a second, about one beat per notification.
+        List<Float> rr = replay.rrIntervals;
+        int beats = (int) (VitalsAnalytics.HRV_SPAN_MS / 1000.0 * 1000 / meanOf(rr));
+        assertTrue(last.hrv.rmssd > 25 && last.hrv.rmssd < 60);
+        assertTrue(last.hrv.sdnn > 20 && last.hrv.sdnn < 60);
+        double[] offline = rmssdAndSdnn(rr.subList(rr.size() - beats, rr.size()));
+        assertEquals(offline[0], last.hrv.rmssd, 2.0);
+        assertEquals(offline[1], last.hrv.sdnn, 2.0);
+
+        assertEquals(VitalsAnalytics.STEADY, last.heartRate.trend);
+        assertEquals(63, last.heartRate.mean, 2);
+        assertEquals(63, last.heartRate.baseline, 2);
+        assertNull(last.systolic);
+        assertNull(last.temperature);
+    }
+
+    @Test
+    public void wristMotionIsRejectedAndTheDropoutCounted() throws IOException {
+        Replay replay = replay("wrist_motion.csv");
+        // 20 HR spikes and 40 spurious beats in the trace
+        assertEquals(20, replay.heartRateRejected());
+        assertEquals(40, replay.rejectedBeats());
+        assertEquals(1, replay.heartRateDropouts());
+
+        for (VitalsAnalytics.Summary s : replay.summaries) {
+            assertTrue("accepted HR stays at the walking rate: " + s.heartRate.max, s.heartRate.max < 85);
+            assertTrue(s.heartRate.min > 65);
+        }
+        VitalsAnalytics.Summary last = replay.last();
+        assertTrue("HRV after rejection looks like the clean rhythm: " + last.hrv.rmssd,
+            last.hrv.rmssd > 10 && last.hrv.rmssd < 50);
+        assertEquals(VitalsAnalytics.STEADY, last.heartRate.trend);
+    }
+
+    @Test
+    public void feverTraceTrendsUpEverywhere() throws IOException {
+        Replay replay = replay("pregnancy_fever.csv");
+        VitalsAnalytics.Summary first = replay.summaries.get(0);
+        assertNull("not enough history for a trend yet", first.heartRate.trend);
+
+        VitalsAnalytics.Summary last = replay.last();
+        assertEquals(VitalsAnalytics.RISING, last.heartRate.trend);
+        assertEquals(0.7, last.heartRate.slopePerMinute, 0.1);
+        assertTrue("the baseline lags the rise", last.heartRate.baseline < last.heartRate.mean);
+        assertNull("this watch sends no RR intervals", last.hrv);
+
+        VitalsAnalytics.Summary withCuff = null;
+        VitalsAnalytics.Summary withTemperature = null;
+        for (VitalsAnalytics.Summary s : replay.summaries) {
+            withCuff = s.systolic != null ? s : withCuff;
+            withTemperature = s.temperature != null ? s : withTemperature;
+        }
+        assertEquals(VitalsAnalytics.RISING, withCuff.systolic.trend);
+        assertEquals(VitalsAnalytics.RISING, withCuff.diastolic.trend);
+        assertEquals(VitalsAnalytics.RISING, withTemperature.temperature.trend);
+        assertEquals(0.0575, withTemperature.temperature.slopePerMinute, 0.01);
+    }
+
+    @Test
+    public void alternatingBeatsGiveExactHrv() {
+        VitalsAnalytics analytics = new VitalsAnalytics();
+        long t = 0;
+        for (int i = 0; i < 200; i++) {
+            float rr = i % 2 == 0 ? 800 : 850;
+            t += (long) rr;
+            assertTrue(analytics.addRrInterval(t, rr));
+        }
+        VitalsAnalytics.HrvSummary hrv = analytics.summarize().hrv;
+        assertEquals(50, hrv.rmssd, 1e-3);
+        assertEquals(25, hrv.sdnn, 1e-3);
+        assertEquals(825, hrv.meanRr, 1e-3);
+        assertEquals(200, hrv.beats);
+    }
+
+    @Test
+    public void ectopicAndMissedBeatsDoNotReachHrv() {
+        VitalsAnalytics analytics = new VitalsAnalytics();
+        long t = 0;
+        for (int i = 0; i < 100; i++) {
+            t += 1000;
+            analytics.addRrInterval(t, 1000);
+            if (i == 40) {
+                // Premature beat and its compensatory pause, then a missed beat
+                assertFalse(analytics.addRrInterval(t + 600, 600));
+                assertFalse(analytics.addRrInterval(t + 2000, 1400));
+                assertFalse(analytics.addRrInterval(t + 4000, 2000));
+                assertFalse("outside physiology", analytics.addRrInterval(t + 4100, 100));
+            }
+        }
+        VitalsAnalytics.HrvSummary hrv = analytics.summarize().hrv;
+        assertEquals(4, hrv.rejectedBeats);
+        assertEquals("no successive difference spans a rejected beat", 0, hrv.rmssd, 1e-6);
+        assertEquals(0, hrv.sdnn, 1e-3);
+    }
+
+    @Test
+    public void aLastingRhythmChangeIsFollowed() {
+        VitalsAnalytics analytics = new VitalsAnalytics();
+        long t = 0;
+        for (int i = 0; i < 50; i++) {
+            analytics.addRrInterval(t += 1000, 1000);
+        }
+        int rejected = 0;
+        for (int i = 0; i < 50; i++) {
+            if (!analytics.addRrInterval(t += 600, 600)) {
+                rejected++;
+            }
+        }
+        assertEquals(3, rejected);
+
+        VitalsAnalytics.Metric heartRate = analytics.heartRate;
+        t = 0;
+        for (int i = 0; i < 10; i++) {
+            heartRate.add(t += 1000, 70);
+        }
+        for (int i = 0; i < 10; i++) {
+            heartRate.add(t += 1000, 110);
+        }
+        VitalsAnalytics.MetricSummary summary = heartRate.summarize();
+        assertEquals(3, summary.rejected);
+        assertEquals(110, summary.max, 0);
+    }
+
+    @Test
+    public void heartRateWindowRequiresMinimumBeatsForHrv() {
+        VitalsAnalytics analytics = new VitalsAnalytics();
+        for (int i = 0; i < VitalsAnalytics.HRV_MIN_BEATS - 1; i++) {
+            analytics.addRrInterval(i * 900L, 900 + (i % 2) * 20);
+        }
+        assertTrue(Float.isNaN(analytics.summarize().hrv.rmssd));
+        assertNull("no beats since the last summary", analytics.summarize().hrv);
+    }
+
+    @Test
+    public void recentDetailStaysAvailableLocally() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        batcher.recordHeartRate(0, 70);
+        batcher.recordHeartRate(1000, 72);
+        batcher.recordHeartRate(2000, 200);
+        batcher.flush(3000);
+
+        VitalsAnalytics.Series series = batcher.recent("heart_rate");
+        assertArrayEquals(new long[] { 0, 1000 }, series.times);
+        assertArrayEquals(new float[] { 70, 72 }, series.values, 0);
+        assertEquals(0, batcher.recent("temperature").times.length);
+        assertNull(batcher.recent("steps"));
+    }
+
+    private static double meanOf(List<Float> values) {
+        double sum = 0;
+        for (float v : values) {
+            sum += v;
+        }
+        return sum / values.size();
+    }
+
+    private static double[] rmssdAndSdnn(List<Float> rr) {
+        double mean = meanOf(rr);
+        double squares = 0;
+        double diffs = 0;
+        for (int i = 0; i < rr.size(); i++) {
+            squares += (rr.get(i) - mean) * (rr.get(i) - mean);
+            if (i > 0) {
+                diffs += (rr.get(i) - rr.get(i - 1)) * (rr.get(i) - rr.get(i - 1));
+            }
+        }
+        return new double[] { Math.sqrt(diffs / (rr.size() - 1)), Math.sqrt(squares / rr.size()) };
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // The per-notification work on the GATT thread must not allocate per sample
+    @Test
+    public void samplesDoNotAllocate() {
+        VitalsAnalytics analytics = new VitalsAnalytics();
+        Random random = new Random(3);
+        float[] rr = new float[4096];
+        for (int i = 0; i < rr.length; i++) {
+            rr[i] = (float) (850 + 40 * Math.sin(i / 4.0) + random.nextGaussian() * 10);
+        }
+        long t = 0;
+        // Fill every window first so each sample below also evicts one
+        for (int i = 0; i < 20_000; i++) {
+            t += 850;
+            analytics.heartRate.add(t, 60000 / rr[i & 4095]);
+            analytics.addRrInterval(t, rr[i & 4095]);
+        }
+        long allocBefore = allocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            t += 850;
+            analytics.heartRate.add(t, 60000 / rr[i & 4095]);
+            analytics.addRrInterval(t, rr[i & 4095]);
+        }
+        long alloc = allocBefore < 0 ? -1 : allocatedBytes() - allocBefore;
+        assertTrue(analytics.summarize().hrv.rmssd > 0);
+        if (alloc >= 0) {
+            assertTrue("allocates " + alloc + " bytes", alloc < 64 * 1024);
+        }
+    }
+}
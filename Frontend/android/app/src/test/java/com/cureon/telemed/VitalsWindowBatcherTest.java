@@ -0,0 +1,100 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class VitalsWindowBatcherTest {
+
+    @Test
+    public void windowClosesOnlyWhenDue() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        batcher.recordHeartRate(0, 70);
+        batcher.recordHeartRate(500, 74);
+
+        assertNull(batcher.flushIfDue(999));
+
+        VitalsWindowBatcher.Batch batch = batcher.flushIfDue(1000);
+        assertNotNull(batch);
+        assertEquals(0, batch.windowStartMs);
+        assertEquals(1000, batch.windowEndMs);
+        assertArrayEquals(new long[] { 0, 500 }, batch.heartRateTimes);
+        assertEquals(72f, batch.heartRateMean(), 0.001f);
+        assertEquals(70f, batch.heartRateMin(), 0.001f);
+        assertEquals(74f, batch.heartRateMax(), 0.001f);
+    }
+
+    @Test
+    public void emptyWindowProducesNoBatch() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        assertNull(batcher.flushIfDue(10_000));
+        assertNull(batcher.flush(10_000));
+    }
+
+    @Test
+    public void nextWindowStartsAtNextSample() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        batcher.recordHeartRate(0, 70);
+        assertNotNull(batcher.flush(1000));
+
+        batcher.recordTemperature(5000, 98.4f);
+        assertNull(batcher.flushIfDue(5500));
+        VitalsWindowBatcher.Batch batch = batcher.flushIfDue(6000);
+        assertEquals(5000, batch.windowStartMs);
+        assertEquals(0, batch.heartRate.length);
+        assertArrayEquals(new float[] { 98.4f }, batch.temperature, 0.001f);
+    }
+
+    @Test
+    public void nextFlushIsTimedFromTheWindowStart() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        assertEquals(1000, batcher.msUntilDue(0));
+        // A sample just after a poll opens a window that is due 1000ms after it, not after the next poll
+        batcher.recordHeartRate(10, 70);
+        assertEquals(1000, batcher.msUntilDue(10));
+        assertEquals(10, batcher.msUntilDue(1000));
+        assertEquals(0, batcher.msUntilDue(1200));
+        assertNotNull(batcher.flushIfDue(1010));
+        assertEquals(1000, batcher.msUntilDue(1010));
+    }
+
+    @Test
+    public void bloodPressureIsInterleaved() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        batcher.recordBloodPressure(10, 120, 80);
+        batcher.recordBloodPressure(20, 130, 85);
+        VitalsWindowBatcher.Batch batch = batcher.flush(30);
+        assertArrayEquals(new long[] { 10, 20 }, batch.bloodPressureTimes);
+        assertArrayEquals(new float[] { 120, 80, 130, 85 }, batch.bloodPressure, 0.001f);
+    }
+
+    @Test
+    public void invalidSamplesAreIgnored() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(1000);
+        batcher.recordHeartRate(0, -1);
+        batcher.recordTemperature(0, Float.NaN);
+        batcher.recordBloodPressure(0, Float.NaN, 80);
+        assertNull(batcher.flush(2000));
+    }
+
+    @Test
+    public void overflowIsReportedOncePerBatch() {
+        VitalsWindowBatcher batcher = new VitalsWindowBatcher(60_000);
+        for (int i = 0; i < 600; i++) {
+            batcher.recordHeartRate(i, 60 + (i % 20));
+        }
+        VitalsWindowBatcher.Batch first = batcher.flush(600);
+        assertEquals(512, first.heartRate.length);
+        assertEquals(88, first.dropped);
+        // Newest samples survive the overflow
+        assertEquals(599, first.heartRateTimes[511]);
+
+        batcher.recordHeartRate(700, 65);
+        assertEquals(0, batcher.flush(800).dropped);
+    }
+
+    @Test
+    public void windowHasAFloor() {
+        assertEquals(VitalsWindowBatcher.MIN_WINDOW_MS, new VitalsWindowBatcher(1).getWindowMs());
+    }
+}
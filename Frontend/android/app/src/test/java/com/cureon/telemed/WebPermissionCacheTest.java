@@ -0,0 +1,74 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WebPermissionCacheTest {
+    private static final String ORIGIN = "https://localhost";
+    private static final String PROTECTED_MEDIA = "android.webkit.resource.PROTECTED_MEDIA_ID";
+    private static final String[] CALL = {
+        WebPermissionCache.VIDEO_CAPTURE, WebPermissionCache.AUDIO_CAPTURE
+    };
+
+    @Test
+    public void grantsEverythingWhenBothPermissionsAreHeld() {
+        WebPermissionCache cache = new WebPermissionCache();
+        cache.setAndroidPermissions(true, true);
+        WebPermissionCache.Decision decision = cache.decide(ORIGIN, CALL);
+        assertArrayEquals(CALL, decision.grant);
+        assertFalse(decision.requestAndroidPermissions);
+        assertTrue(cache.hasAll());
+    }
+
+    @Test
+    public void grantsWhatIsHeldAndAsksForTheRest() {
+        WebPermissionCache cache = new WebPermissionCache();
+        cache.setAndroidPermissions(false, true);
+        WebPermissionCache.Decision decision = cache.decide(ORIGIN,
+            new String[] { WebPermissionCache.VIDEO_CAPTURE, WebPermissionCache.AUDIO_CAPTURE, PROTECTED_MEDIA });
+        assertArrayEquals(new String[] { WebPermissionCache.AUDIO_CAPTURE, PROTECTED_MEDIA }, decision.grant);
+        assertTrue(decision.requestAndroidPermissions);
+    }
+
+    @Test
+    public void neverLeavesThePageWithoutAnAnswer() {
+        WebPermissionCache cache = new WebPermissionCache();
+        cache.setAndroidPermissions(false, false);
+        WebPermissionCache.Decision decision = cache.decide(ORIGIN, new String[] { WebPermissionCache.VIDEO_CAPTURE });
+        assertArrayEquals(new String[] { WebPermissionCache.VIDEO_CAPTURE }, decision.grant);
+        assertTrue(decision.requestAndroidPermissions);
+    }
+
+    @Test
+    public void repeatsAreServedFromTheCacheInAnyResourceOrder() {
+        WebPermissionCache cache = new WebPermissionCache();
+        cache.setAndroidPermissions(true, false);
+        WebPermissionCache.Decision first = cache.decide(ORIGIN, CALL);
+        WebPermissionCache.Decision again = cache.decide(ORIGIN,
+            new String[] { WebPermissionCache.AUDIO_CAPTURE, WebPermissionCache.VIDEO_CAPTURE });
+        assertSame(first, again);
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        // Another origin is decided on its own
+        cache.decide("https://meet.example.com", CALL);
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void permissionChangeDropsCachedAnswers() {
+        WebPermissionCache cache = new WebPermissionCache();
+        cache.setAndroidPermissions(false, false);
+        WebPermissionCache.Decision before = cache.decide(ORIGIN, CALL);
+
+        // Same state again (an ordinary resume) keeps the cache
+        cache.setAndroidPermissions(false, false);
+        assertSame(before, cache.decide(ORIGIN, CALL));
+
+        cache.setAndroidPermissions(true, true);
+        WebPermissionCache.Decision after = cache.decide(ORIGIN, CALL);
+        assertNotSame(before, after);
+        assertFalse(after.requestAndroidPermissions);
+    }
+}
@@ -0,0 +1,43 @@
+package com.cureon.telemed.benchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Records the classes and methods used from launch to the first interactive
+ * page. Run through {@code ./gradlew :app:generateBaselineProfile}; the result
+ * is saved into :app's sources and installed with the app by profileinstaller.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+    private static final int MAX_ITERATIONS = 15;
+    private static final int STABLE_ITERATIONS = 3;
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void startup() {
+        baselineProfileRule.collect(
+            FirstPage.PACKAGE,
+            MAX_ITERATIONS,
+            STABLE_ITERATIONS,
+            null,
+            // Also emit a startup profile so the startup path is laid out first in the dex
+            true,
+            false,
+            className -> true,
+            scope -> {
+                FirstPage.grantPermissions(scope);
+                scope.pressHome();
+                FirstPage.startAndWait(scope);
+                return Unit.INSTANCE;
+            });
+    }
+}
@@ -0,0 +1,43 @@
+package com.cureon.telemed.benchmark;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Until;
+
+/** Launch steps shared by the startup benchmark and the baseline profile generator. */
+final class FirstPage {
+    static final String PACKAGE = "com.cureon.telemed";
+    private static final long TIMEOUT_MS = 15_000;
+
+    private FirstPage() {
+    }
+
+    /**
+     * Grants what the app asks for after first paint, so no permission
+     * dialog sits on top of later iterations.
+     */
+    static void grantPermissions(MacrobenchmarkScope scope) {
+        String[] permissions = {
+            "android.permission.CAMERA",
+            "android.permission.RECORD_AUDIO",
+            "android.permission.POST_NOTIFICATIONS",
+        };
+        for (String permission : permissions) {
+            scope.getDevice().executeShellCommand("pm grant " + PACKAGE + " " + permission);
+        }
+        scope.getDevice().executeShellCommand("appops set " + PACKAGE + " SYSTEM_ALERT_WINDOW allow");
+    }
+
+    /**
+     * Starts MainActivity and waits until the first Capacitor page has
+     * something to tap, i.e. the React app has rendered.
+     */
+    static void startAndWait(MacrobenchmarkScope scope) {
+        scope.startActivityAndWait();
+        boolean ready = scope.getDevice().wait(
+            Until.hasObject(By.clazz("android.webkit.WebView").hasDescendant(By.clickable(true))), TIMEOUT_MS);
+        if (!ready) {
+            throw new IllegalStateException("First page not interactive within " + TIMEOUT_MS + " ms");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cureon.telemed.benchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Cold, warm and hot startup of the release build. Besides the first frame
+ * ({@code timeToInitialDisplayMs}) every run reports {@code timeToFullDisplayMs},
+ * which MainActivity ends with reportFullyDrawn once the first Capacitor page
+ * has loaded: our time-to-interactive.
+ *
+ * <p>Medians are checked against startup-budget.properties by
+ * {@code :benchmark:checkStartupBudget}. {@link #coldStartupWithoutProfile}
+ * is the same cold start with no ahead-of-time compilation, to show what the
+ * baseline profile is worth.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartup() {
+        startup(StartupMode.COLD, new CompilationMode.Partial(BaselineProfileMode.Require));
+    }
+
+    @Test
+    public void coldStartupWithoutProfile() {
+        startup(StartupMode.COLD, new CompilationMode.None());
+    }
+
+    @Test
+    public void warmStartup() {
+        startup(StartupMode.WARM, new CompilationMode.Partial(BaselineProfileMode.Require));
+    }
+
+    @Test
+    public void hotStartup() {
+        startup(StartupMode.HOT, new CompilationMode.Partial(BaselineProfileMode.Require));
+    }
+
+    private void startup(StartupMode mode, CompilationMode compilation) {
+        benchmarkRule.measureRepeated(
+            FirstPage.PACKAGE,
+            Collections.singletonList(new StartupTimingMetric()),
+            compilation,
+            mode,
+            ITERATIONS,
+            scope -> {
+                FirstPage.grantPermissions(scope);
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                FirstPage.startAndWait(scope);
+                return Unit.INSTANCE;
+            });
+    }
+}
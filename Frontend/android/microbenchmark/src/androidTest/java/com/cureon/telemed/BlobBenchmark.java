@@ -0,0 +1,115 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * A photo-sized and a clip-sized payload crossing the bridge as base64 and
+ * through the blob channel, on a device. The WebView's own decoding is not
+ * included; these are the native halves only. BlobJvmBenchmark runs the
+ * same workloads when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BlobBenchmark {
+    private static final byte[] SMALL = BlobWorkloads.payload(BlobWorkloads.SMALL);
+    private static final byte[] LARGE = BlobWorkloads.payload(BlobWorkloads.LARGE);
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private File dir;
+    private BlobStore store;
+    private final byte[] buffer = new byte[64 * 1024];
+    // Written by every loop so ART can't drop the work
+    private long sink;
+
+    @Before
+    public void setUp() {
+        dir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "blob-benchmark");
+        dir.mkdirs();
+        store = new BlobStore(dir);
+    }
+
+    @Test
+    public void base64ToWebViewSmall() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.base64ToWebView(SMALL);
+        }
+    }
+
+    @Test
+    public void blobToWebViewSmall() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.blobToWebView(store, SMALL, buffer);
+        }
+        assertEquals(SMALL.length, sink);
+    }
+
+    @Test
+    public void base64ToWebViewLarge() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.base64ToWebView(LARGE);
+        }
+    }
+
+    @Test
+    public void blobToWebViewLarge() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.blobToWebView(store, LARGE, buffer);
+        }
+        assertEquals(LARGE.length, sink);
+    }
+
+    @Test
+    public void base64FromWebViewSmall() throws Exception {
+        String json = BlobWorkloads.uploadJson(SMALL);
+        File out = new File(dir, "base64.bin");
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.base64FromWebView(json, out);
+        }
+    }
+
+    @Test
+    public void blobFromWebViewSmall() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.blobFromWebView(store, SMALL);
+        }
+        assertEquals(SMALL.length, sink);
+    }
+
+    @Test
+    public void base64FromWebViewLarge() throws Exception {
+        String json = BlobWorkloads.uploadJson(LARGE);
+        File out = new File(dir, "base64.bin");
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.base64FromWebView(json, out);
+        }
+    }
+
+    @Test
+    public void blobFromWebViewLarge() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BlobWorkloads.blobFromWebView(store, LARGE);
+        }
+        assertEquals(LARGE.length, sink);
+    }
+}
@@ -0,0 +1,89 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * The native bridge's per-call costs on a device. androidx.benchmark writes
+ * each test's timings to {@code *-benchmarkData.json}, which
+ * {@code :microbenchmark:compareMicrobenchmarks} compares across commits.
+ * The JVM fallback, BridgeJvmBenchmark, runs the same workloads under the
+ * same names when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BridgeBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // Written by every loop so ART can't drop the work
+    private Object sink;
+
+    @Test
+    public void sanitizeCleanIdRegex() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.sanitizeWithRegex(BridgeWorkloads.CLEAN_ID);
+        }
+    }
+
+    @Test
+    public void sanitizeCleanId() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.sanitize(BridgeWorkloads.CLEAN_ID);
+        }
+    }
+
+    @Test
+    public void sanitizeDirtyIdRegex() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.sanitizeWithRegex(BridgeWorkloads.DIRTY_ID);
+        }
+    }
+
+    @Test
+    public void sanitizeDirtyId() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.sanitize(BridgeWorkloads.DIRTY_ID);
+        }
+    }
+
+    @Test
+    public void parseJoinCall() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.parseJoinCall(BridgeWorkloads.JOIN_MESSAGE);
+        }
+    }
+
+    @Test
+    public void marshalJoinResult() throws Exception {
+        JoinRequest request = BridgeWorkloads.parseJoinCall(BridgeWorkloads.JOIN_MESSAGE);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.joinResult(request);
+        }
+    }
+
+    @Test
+    public void buildJoinIntent() throws Exception {
+        JoinRequest request = BridgeWorkloads.parseJoinCall(BridgeWorkloads.JOIN_MESSAGE);
+        String packageName = InstrumentationRegistry.getInstrumentation().getTargetContext().getPackageName();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = BridgeWorkloads.joinIntent(request, packageName);
+        }
+        assertEquals(BridgeWorkloads.SESSION_ID,
+            BridgeWorkloads.joinIntent(request, packageName).getLongExtra(JoinRequest.EXTRA_SESSION, 0));
+    }
+}
@@ -0,0 +1,83 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Offline catalog searches and sync pages against {@link CatalogWorkloads}'
+ * 100k medicines, on a device. What the page waits for per keystroke is one
+ * of the search benchmarks plus the bridge round trip BridgeBenchmark covers.
+ * CatalogJvmBenchmark runs the same workloads when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogBenchmark {
+    private static MedicineIndex index;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // Written by every loop so ART can't drop the work
+    private int sink;
+
+    @BeforeClass
+    public static void buildIndex() throws Exception {
+        index = CatalogWorkloads.index();
+    }
+
+    @Test
+    public void searchPrefix() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = CatalogWorkloads.search(index, CatalogWorkloads.prefixQuery());
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void searchFuzzy() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = CatalogWorkloads.search(index, CatalogWorkloads.fuzzyQuery());
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void searchTwoWords() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = CatalogWorkloads.search(index, CatalogWorkloads.twoWordQuery());
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void filterSortPage() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = CatalogWorkloads.search(index, CatalogWorkloads.filteredQuery());
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void applySyncPage() throws Exception {
+        List<JSONObject> page = CatalogWorkloads.deltaPage(1);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = CatalogWorkloads.applyPage(index, page);
+        }
+        assertEquals(CatalogWorkloads.SIZE, sink);
+    }
+}
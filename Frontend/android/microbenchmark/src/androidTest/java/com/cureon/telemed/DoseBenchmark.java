@@ -0,0 +1,69 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Medication reminders on a device's storage: one alarm fired, and a large
+ * schedule set saved and reopened. DoseJvmBenchmark runs the same workloads
+ * when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DoseBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private File root;
+    // Written by every loop so ART can't drop the work
+    private int sink;
+
+    @Before
+    public void setUp() {
+        root = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "dose-benchmark");
+    }
+
+    @Test
+    public void fireNextAlarm() throws Exception {
+        DoseQueue queue = new DoseQueue(new File(root, "alarm"), DoseWorkloads.KOLKATA, DoseWorkloads.START);
+        queue.putAll(DoseWorkloads.patient(), DoseWorkloads.START);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = DoseWorkloads.fireNextAlarm(queue);
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void putAllMany() throws Exception {
+        List<DoseSchedule> schedules = DoseWorkloads.many();
+        File dir = new File(root, "put");
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = DoseWorkloads.putAll(dir, schedules);
+        }
+        assertEquals(DoseWorkloads.MANY, sink);
+    }
+
+    @Test
+    public void openMany() throws Exception {
+        File dir = new File(root, "open");
+        DoseWorkloads.putAll(dir, DoseWorkloads.many());
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = DoseWorkloads.open(dir);
+        }
+        assertEquals(DoseWorkloads.MANY, sink);
+    }
+}
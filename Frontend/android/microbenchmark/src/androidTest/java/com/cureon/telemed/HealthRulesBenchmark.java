@@ -0,0 +1,38 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * One reading checked against the compiled health rules, on a device.
+ * HealthRulesJvmBenchmark runs the same workload when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HealthRulesBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // Written by every loop so ART can't drop the work
+    private boolean sink;
+
+    @Test
+    public void checkReading() throws Exception {
+        HealthRulesWorkloads.Readings readings = new HealthRulesWorkloads.Readings(HealthRulesWorkloads.rules());
+        int critical = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = readings.check();
+            if (sink) {
+                critical++;
+            }
+        }
+        assertTrue(critical > 0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Scoring a skin photo and an X-ray at the analysis size, on a device.
+ * ImageQualityJvmBenchmark runs the same workloads when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageQualityBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final ImageQualityScorer scorer = new ImageQualityScorer();
+    private final int[] size = new int[2];
+    // Written by every loop so ART can't drop the work
+    private int sink;
+
+    private static byte[] load(String file, int[] size) throws IOException {
+        Bitmap bitmap;
+        try (InputStream in = ImageQualityBenchmark.class.getResourceAsStream(ImageQualityWorkloads.DIR + file)) {
+            assertNotNull("missing golden " + file, in);
+            bitmap = BitmapFactory.decodeStream(in);
+        }
+        size[0] = bitmap.getWidth();
+        size[1] = bitmap.getHeight();
+        int[] pixels = new int[size[0] * size[1]];
+        bitmap.getPixels(pixels, 0, size[0], 0, 0, size[0], size[1]);
+        bitmap.recycle();
+        byte[] luma = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            // Gray PNGs decode to ARGB with equal channels
+            luma[i] = (byte) pixels[i];
+        }
+        return luma;
+    }
+
+    @Test
+    public void assessSkin() throws Exception {
+        byte[] luma = load(ImageQualityWorkloads.SKIN, size);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = ImageQualityWorkloads.assessSkin(scorer, luma, size[0], size[1]);
+        }
+        assertEquals(100, sink);
+    }
+
+    @Test
+    public void assessXray() throws Exception {
+        byte[] luma = load(ImageQualityWorkloads.XRAY, size);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = ImageQualityWorkloads.assessXray(scorer, luma, size[0], size[1]);
+        }
+        assertEquals(100, sink);
+    }
+}
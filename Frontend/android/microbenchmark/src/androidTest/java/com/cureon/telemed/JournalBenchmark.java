@@ -0,0 +1,52 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Appending and draining a batch of readings in the on-device journal,
+ * including the msync, on a device's real storage. JournalJvmBenchmark runs
+ * the same workload when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JournalBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private ReadingJournal journal;
+    // Written by every loop so ART can't drop the work
+    private int sink;
+
+    @Before
+    public void open() throws Exception {
+        File dir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(),
+            "journal-benchmark");
+        journal = new ReadingJournal(dir);
+    }
+
+    @After
+    public void close() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void appendAndAcknowledge() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = JournalWorkloads.appendAndAcknowledge(journal);
+        }
+        assertEquals(JournalWorkloads.BATCH, sink);
+    }
+}
@@ -0,0 +1,84 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decoding each recorded scanner frame with the default region of interest,
+ * on a device. Frames without a code are the common case while the patient
+ * lines the card up, so no_code is as important as the hits. QrJvmBenchmark
+ * runs the same workloads when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QrBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final QrFrameDecoder decoder = new QrFrameDecoder(QrFrameDecoder.DEFAULT_ROI);
+    // Written by every loop so ART can't drop the work
+    private String sink;
+
+    private static QrWorkloads.Frame load(QrWorkloads.Fixture fixture) throws IOException {
+        Bitmap bitmap;
+        try (InputStream in = QrBenchmark.class.getResourceAsStream(QrWorkloads.DIR + fixture.file)) {
+            assertNotNull("missing frame " + fixture.file, in);
+            bitmap = BitmapFactory.decodeStream(in);
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] gray = new int[width * height];
+        bitmap.getPixels(gray, 0, width, 0, 0, width, height);
+        for (int i = 0; i < gray.length; i++) {
+            // Gray PNGs decode to ARGB with equal channels
+            gray[i] &= 0xff;
+        }
+        bitmap.recycle();
+        return QrWorkloads.plane(gray, width, height, fixture.rowStride);
+    }
+
+    private void decode(QrWorkloads.Fixture fixture) throws IOException {
+        QrWorkloads.Frame frame = load(fixture);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = QrWorkloads.decode(decoder, frame);
+        }
+        if (fixture.expectedId == null) {
+            assertNull(sink);
+        } else {
+            assertTrue(sink, sink.contains(fixture.expectedId));
+        }
+    }
+
+    @Test
+    public void decodePatientCard() throws Exception {
+        decode(QrWorkloads.PATIENT_CARD);
+    }
+
+    @Test
+    public void decodePrescriptionDim() throws Exception {
+        decode(QrWorkloads.PRESCRIPTION_DIM);
+    }
+
+    @Test
+    public void decodePrescription720p() throws Exception {
+        decode(QrWorkloads.PRESCRIPTION_720P);
+    }
+
+    @Test
+    public void decodeNoCode() throws Exception {
+        decode(QrWorkloads.NO_CODE);
+    }
+}
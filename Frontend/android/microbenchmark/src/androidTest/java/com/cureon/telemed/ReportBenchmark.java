@@ -0,0 +1,92 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Report layout for a one-page prescription and a 200-page history, on a
+ * device. ReportJvmBenchmark runs the same workloads when no device is attached.
+ * The history is also written once as a real PDF, for the file size and heap
+ * growth that BenchmarkRule doesn't report.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReportBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // Written by every loop so ART can't drop the work
+    private int sink;
+
+    @Test
+    public void layOutPrescription() throws Exception {
+        JSONObject rx = ReportWorkloads.prescription();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = ReportWorkloads.layOut(ReportTemplates.PRESCRIPTION, rx);
+        }
+        assertEquals(1, sink);
+    }
+
+    @Test
+    public void layOutLongHistory() throws Exception {
+        JSONObject history = ReportWorkloads.history(ReportWorkloads.HISTORY_READINGS);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = ReportWorkloads.layOut(ReportTemplates.HISTORY, history);
+        }
+        assertTrue("pages=" + sink, sink >= 190);
+    }
+
+    @Test
+    public void writeLongHistoryPdf() throws Exception {
+        JSONObject history = ReportWorkloads.history(ReportWorkloads.HISTORY_READINGS);
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = new File(context.getCacheDir(), "bench-history.pdf");
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long javaBefore = runtime.totalMemory() - runtime.freeMemory();
+        long nativeBefore = Debug.getNativeHeapAllocatedSize();
+        long started = SystemClock.elapsedRealtimeNanos();
+
+        PdfReportWriter writer = new PdfReportWriter(context);
+        ReportLayout layout = new ReportLayout(writer, writer,
+            ReportTemplates.header(ReportTemplates.HISTORY, history), "Benchmark");
+        assertTrue(ReportWorkloads.TEMPLATES.render(ReportTemplates.HISTORY, history, layout));
+        int pages = layout.finish();
+        long laidOut = SystemClock.elapsedRealtimeNanos();
+        // Peak is just before writing, when PdfDocument holds every page
+        long nativePeakKb = (Debug.getNativeHeapAllocatedSize() - nativeBefore) / 1024;
+        long javaPeakKb = (runtime.totalMemory() - runtime.freeMemory() - javaBefore) / 1024;
+        long bytes = writer.writeTo(file);
+        long written = SystemClock.elapsedRealtimeNanos();
+        file.delete();
+
+        Bundle results = new Bundle();
+        results.putInt("history.pages", pages);
+        results.putLong("history.bytes", bytes);
+        results.putLong("history.drawMs", (laidOut - started) / 1_000_000);
+        results.putLong("history.writeMs", (written - laidOut) / 1_000_000);
+        results.putLong("history.nativeHeapKb", nativePeakKb);
+        results.putLong("history.javaHeapKb", javaPeakKb);
+        Log.i("ReportBenchmark", "history " + results);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+        assertTrue("pages=" + pages, pages >= 150);
+    }
+}
@@ -0,0 +1,52 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * An SOS alert from trigger to acknowledgement over loopback, on a device's
+ * storage and network stack. SosJvmBenchmark runs the same workload when no
+ * device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SosBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private SosWorkloads.Harness harness;
+    // Written by every loop so ART can't drop the work
+    private long sink;
+
+    @Before
+    public void start() throws Exception {
+        File dir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(),
+            "sos-benchmark");
+        harness = new SosWorkloads.Harness(dir);
+    }
+
+    @After
+    public void stop() {
+        harness.close();
+    }
+
+    @Test
+    public void triggerToAck() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = harness.triggerToAck();
+        }
+        assertTrue(sink >= 0);
+    }
+}
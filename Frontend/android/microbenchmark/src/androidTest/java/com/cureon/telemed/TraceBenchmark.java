@@ -0,0 +1,41 @@
+package com.cureon.telemed;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * PerfTrace's per-event overhead on a device, recording and stopped.
+ * No androidx.tracing hook is installed, so this is the recorder alone.
+ * TraceJvmBenchmark runs the same workloads when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TraceBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // Written by every loop so ART can't drop the work
+    private long sink;
+
+    @Test
+    public void sectionAndCountRecording() {
+        TraceWorkloads.Recorder recorder = new TraceWorkloads.Recorder(true);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = recorder.sectionAndCount();
+        }
+    }
+
+    @Test
+    public void sectionAndCountStopped() {
+        TraceWorkloads.Recorder recorder = new TraceWorkloads.Recorder(false);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = recorder.sectionAndCount();
+        }
+    }
+}
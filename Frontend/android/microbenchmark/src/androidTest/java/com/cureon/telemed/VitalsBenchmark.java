@@ -0,0 +1,34 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * One vitals sample through the streaming analytics, on a device.
+ * VitalsJvmBenchmark runs the same workload when no device is attached.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VitalsBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // Written by every loop so ART can't drop the work
+    private boolean sink;
+
+    @Test
+    public void heartRateAndRrSample() {
+        VitalsWorkloads.Stream stream = new VitalsWorkloads.Stream();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sink = stream.sample();
+        }
+        assertTrue(stream.analytics.summarize().hrv.rmssd > 0);
+    }
+}
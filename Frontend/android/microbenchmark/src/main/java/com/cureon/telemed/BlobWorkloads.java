@@ -0,0 +1,82 @@
+package com.cureon.telemed;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * A payload crossing the bridge through today's path (base64 inside a JSON
+ * string) and through the blob channel, in both directions.
+ */
+final class BlobWorkloads {
+    /** A phone photo's size, and a short clip's. */
+    static final int SMALL = 256 * 1024;
+    static final int LARGE = 4 * 1024 * 1024;
+    // What the page posts per ArrayBuffer message
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private BlobWorkloads() {
+    }
+
+    static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /** The JSON a base64 upload posts, for {@link #base64FromWebView}. */
+    static String uploadJson(byte[] data) {
+        return "{\"data\":\"" + Base64.getEncoder().encodeToString(data) + "\"}";
+    }
+
+    /** Native side of a plugin result carrying the payload: encode, wrap, serialize. */
+    static long base64ToWebView(byte[] data) {
+        String encoded = Base64.getEncoder().encodeToString(data);
+        String json = new StringBuilder(encoded.length() + 16).append("{\"data\":\"").append(encoded).append("\"}").toString();
+        return json.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /** Registers the payload and drains its {@code /_blob/} response, as the WebView does. */
+    static long blobToWebView(BlobStore store, byte[] data, byte[] buffer) throws IOException {
+        String id = store.putBytes(data, "application/octet-stream");
+        long total = 0;
+        try (InputStream in = store.serve(BlobStore.PATH_PREFIX + id, null).body) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+            }
+        }
+        store.free(id);
+        return total;
+    }
+
+    /** Native side of a plugin call carrying the payload: unwrap, decode, store. */
+    static long base64FromWebView(String json, File out) throws IOException {
+        int start = json.indexOf(":\"") + 2;
+        String encoded = json.substring(start, json.lastIndexOf('"'));
+        byte[] decoded = Base64.getDecoder().decode(encoded);
+        try (OutputStream stream = new FileOutputStream(out)) {
+            stream.write(decoded);
+        }
+        return decoded.length;
+    }
+
+    /** The upload as ArrayBuffer messages, each arriving as its own byte[]. */
+    static long blobFromWebView(BlobStore store, byte[] data) throws IOException {
+        BlobStore.Upload upload = store.beginUpload("application/octet-stream");
+        for (int offset = 0; offset < data.length; offset += CHUNK_BYTES) {
+            byte[] chunk = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + CHUNK_BYTES));
+            upload.write(chunk, 0, chunk.length);
+        }
+        String id = upload.finish();
+        long written = store.get(id).length;
+        store.free(id);
+        return written;
+    }
+}
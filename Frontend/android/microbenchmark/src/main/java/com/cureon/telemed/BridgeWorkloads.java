@@ -0,0 +1,54 @@
+package com.cureon.telemed;
+
+import android.content.Intent;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONException;
+
+/**
+ * One unit of each piece of per-call bridge work, shared by the device
+ * benchmarks and their JVM fallback so both measure exactly the same thing.
+ * Inputs are what a real joinRoom sees.
+ */
+final class BridgeWorkloads {
+    /** A Mongo ObjectId, what the backend hands out as user IDs. */
+    static final String CLEAN_ID = "64f1a2b3c4d5e6f708192a3b";
+    /** An email-style ID, the case that actually needs rewriting. */
+    static final String DIRTY_ID = "dr.anita.rao@cureon.health";
+    /** The message the bridge parses for a joinRoom call, arguments included. */
+    static final String JOIN_MESSAGE = "{\"roomID\":\"appt_64f1a2b3c4d5e6f708192a3c\","
+        + "\"userID\":\"64f1a2b3c4d5e6f708192a3b\",\"userName\":\"Dr. Anita Rao\","
+        + "\"isVideoCall\":true,\"allowHevc\":false}";
+    static final long SESSION_ID = 42;
+    static final String CALL_ACTIVITY = "com.cureon.telemed.ZegoVideoCallActivity";
+
+    private BridgeWorkloads() {
+    }
+
+    /** What ZegoCallPlugin did before {@link UserIds}: compiles the pattern on every call. */
+    static String sanitizeWithRegex(String id) {
+        return id.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    static String sanitize(String id) {
+        return UserIds.sanitize(id);
+    }
+
+    /** The JSON the bridge receives into a PluginCall, then joinRoom's argument parsing. */
+    static JoinRequest parseJoinCall(String message) throws JSONException {
+        PluginCall call = new PluginCall(null, "ZegoCall", "1", "joinRoom", new JSObject(message));
+        return JoinRequest.parse(call, "", "");
+    }
+
+    /** joinRoom's result, serialized as the bridge does before posting it to the WebView. */
+    static String joinResult(JoinRequest request) {
+        return request.result(SESSION_ID, false).toString();
+    }
+
+    /** The call activity's launch intent; names the class by string to stay clear of the Zego SDK. */
+    static Intent joinIntent(JoinRequest request, String packageName) {
+        return request.putExtras(new Intent().setClassName(packageName, CALL_ACTIVITY), SESSION_ID);
+    }
+}
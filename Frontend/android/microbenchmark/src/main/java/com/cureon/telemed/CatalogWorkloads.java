@@ -0,0 +1,184 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The offline medicine catalog's work at the size of a large pharmacy
+ * network: {@link #SIZE} medicines grown from medicine_upload_sample.csv
+ * (a copy of the repository's, in src/main/resources). Each synthetic
+ * medicine is a sample row under a made-up brand name, with its price,
+ * manufacturer, city and counts varied, so the term dictionary has tens of
+ * thousands of words as a real catalog would.
+ */
+final class CatalogWorkloads {
+    static final int SIZE = 100_000;
+    static final String CSV = "/medicine_upload_sample.csv";
+
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "dol", "zen", "pra", "vi", "tro", "cal", "nex", "ri", "fen", "sol", "max", "cor", "ta",
+        "ve", "lin", "dro", "pan", "ox", "ter", "ful", "zy",
+    };
+    private static final String[] CITIES = {
+        "Mumbai", "Pune", "New Delhi", "Bengaluru", "Chennai", "Hyderabad", "Kolkata", "Ahmedabad", "Jaipur",
+        "Lucknow", "Kochi", "Indore", "Nagpur", "Bhopal", "Patna", "Surat", "Chandigarh", "Guwahati",
+    };
+
+    private CatalogWorkloads() {
+    }
+
+    /** The sample CSV's rows as header name -> value objects. The sample has no quoted fields. */
+    static List<JSONObject> sampleRows() throws IOException, JSONException {
+        InputStream in = CatalogWorkloads.class.getResourceAsStream(CSV);
+        if (in == null) {
+            throw new IOException(CSV + " is not on the classpath");
+        }
+        List<JSONObject> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String[] header = reader.readLine().split(",");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] values = line.split(",", -1);
+                JSONObject row = new JSONObject();
+                for (int i = 0; i < header.length && i < values.length; i++) {
+                    row.put(header[i].trim(), values[i].trim());
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /** {@code count} medicines in the sync feed's shape, the same for the same seed. */
+    static List<JSONObject> synthesize(List<JSONObject> samples, int count, long seed) throws JSONException {
+        Random random = new Random(seed);
+        List<JSONObject> medicines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            medicines.add(medicine(samples.get(i % samples.size()), i, random));
+        }
+        return medicines;
+    }
+
+    static JSONObject medicine(JSONObject sample, int n, Random random) throws JSONException {
+        String brand = brand(random);
+        double price = Double.parseDouble(sample.getString("price")) * (0.5 + random.nextDouble() * 1.5);
+        JSONArray tags = new JSONArray().put(sample.getString("genericName").toLowerCase(Locale.ROOT));
+        return new JSONObject()
+            .put("_id", String.format("%024x", n))
+            .put("name", brand + " " + sample.getString("strength"))
+            .put("genericName", sample.getString("genericName"))
+            .put("manufacturer", sample.getString("manufacturer") + " " + (n % 400))
+            .put("composition", sample.getString("composition"))
+            .put("category", sample.getString("category"))
+            .put("formType", sample.getString("formType"))
+            .put("packSize", sample.getString("packSize"))
+            .put("strength", sample.getString("strength"))
+            .put("price", Math.round(price * 100) / 100.0)
+            .put("mrp", Double.parseDouble(sample.getString("mrp")))
+            .put("stock", random.nextInt(500))
+            .put("rating", random.nextInt(50) / 10.0)
+            .put("soldCount", random.nextInt(5000))
+            .put("prescriptionRequired", Boolean.parseBoolean(sample.getString("prescriptionRequired")))
+            .put("isActive", true)
+            .put("tags", tags)
+            .put("createdAt", Instant.ofEpochMilli(1_650_000_000_000L + n * 60_000L).toString())
+            .put("pharmacy", new JSONObject()
+                .put("_id", String.format("%024x", 0x10000000 + n % 2000))
+                .put("name", "Pharmacy " + n % 2000)
+                .put("rating", 4)
+                .put("address", new JSONObject().put("city", CITIES[n % CITIES.length])));
+    }
+
+    private static String brand(Random random) {
+        StringBuilder brand = new StringBuilder();
+        int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) {
+            brand.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        brand.setCharAt(0, Character.toUpperCase(brand.charAt(0)));
+        return brand.toString();
+    }
+
+    /** A {@link #SIZE}-medicine index, ready for its first query. */
+    static MedicineIndex index() throws IOException, JSONException {
+        MedicineIndex index = new MedicineIndex();
+        for (JSONObject medicine : synthesize(sampleRows(), SIZE, 1)) {
+            index.put(MedicineCatalog.parse(medicine));
+        }
+        index.prepare();
+        return index;
+    }
+
+    /** One sync page's worth of changed medicines, {@link MedicineCatalog#PAGE_SIZE} of them, for applyPage. */
+    static List<JSONObject> deltaPage(int round) throws IOException, JSONException {
+        List<JSONObject> samples = sampleRows();
+        Random random = new Random(round);
+        List<JSONObject> page = new ArrayList<>(MedicineCatalog.PAGE_SIZE);
+        for (int i = 0; i < MedicineCatalog.PAGE_SIZE; i++) {
+            int n = random.nextInt(SIZE);
+            page.add(medicine(samples.get(n % samples.size()), n, random));
+        }
+        return page;
+    }
+
+    static int applyPage(MedicineIndex index, List<JSONObject> page) throws JSONException {
+        for (JSONObject medicine : page) {
+            index.put(MedicineCatalog.parse(medicine));
+        }
+        index.prepare();
+        return index.size();
+    }
+
+    static MedicineIndex.Query query(String search) {
+        MedicineIndex.Query query = new MedicineIndex.Query();
+        query.search = search;
+        return query;
+    }
+
+    /** What typing "para" in the search box asks for. */
+    static MedicineIndex.Query prefixQuery() {
+        return query("para");
+    }
+
+    /** A typo nothing starts with, answered through the fuzzy fallback. */
+    static MedicineIndex.Query fuzzyQuery() {
+        return query("paracetmol");
+    }
+
+    /** Two words, both of which have to match. */
+    static MedicineIndex.Query twoWordQuery() {
+        return query("amoxicillin 250");
+    }
+
+    /** No search, every filter, a numeric sort and a later page. */
+    static MedicineIndex.Query filteredQuery() {
+        MedicineIndex.Query query = query("");
+        query.category = "Pain Relief";
+        query.minPrice = 30;
+        query.maxPrice = 90;
+        query.prescriptionRequired = false;
+        query.city = "pune";
+        query.sortBy = MedicineIndex.SORT_PRICE_LOW;
+        query.page = 3;
+        return query;
+    }
+
+    static int search(MedicineIndex index, MedicineIndex.Query query) {
+        return index.search(query).total;
+    }
+}
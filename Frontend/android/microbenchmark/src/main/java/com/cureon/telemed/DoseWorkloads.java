@@ -0,0 +1,76 @@
+package com.cureon.telemed;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The medication reminder queue's work: one alarm fired, including the
+ * fsync'd cursor write, for an elderly patient's twelve open-ended
+ * medications; and saving and reopening {@link #MANY} schedules.
+ */
+final class DoseWorkloads {
+    static final ZoneId KOLKATA = ZoneId.of("Asia/Kolkata");
+    static final long START = ZonedDateTime.of(2026, 3, 1, 0, 0, 0, 0, KOLKATA).toInstant().toEpochMilli();
+    static final int MANY = 5_000;
+
+    private DoseWorkloads() {
+    }
+
+    private static DoseSchedule schedule(String id, long startDay, int... minutes) {
+        short[] times = new short[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            times[i] = (short) minutes[i];
+        }
+        return new DoseSchedule(id, "Med " + id, "1 tablet", "", times, startDay, DoseSchedule.OPEN_ENDED);
+    }
+
+    /** Twelve medications, one to four doses a day, starting on {@link #START}. */
+    static List<DoseSchedule> patient() {
+        long first = LocalDate.of(2026, 3, 1).toEpochDay();
+        Random random = new Random(7);
+        List<DoseSchedule> meds = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            int perDay = 1 + random.nextInt(4);
+            int[] minutes = new int[perDay];
+            for (int j = 0; j < perDay; j++) {
+                minutes[j] = (6 + j * 4) * 60 + random.nextInt(4) * 15;
+            }
+            meds.add(schedule("med" + i, first, minutes));
+        }
+        return meds;
+    }
+
+    /** {@link #MANY} schedules of two doses a day at random times. */
+    static List<DoseSchedule> many() {
+        long first = LocalDate.of(2026, 3, 1).toEpochDay();
+        Random random = new Random(11);
+        List<DoseSchedule> schedules = new ArrayList<>(MANY);
+        for (int i = 0; i < MANY; i++) {
+            schedules.add(schedule("s" + i, first, random.nextInt(24 * 60), random.nextInt(24 * 60)));
+        }
+        return schedules;
+    }
+
+    /** Fires the next alarm as AlarmManager would; returns the doses it delivered. */
+    static int fireNextAlarm(DoseQueue queue) throws IOException {
+        return queue.collectDue(queue.nextAlarmAt()).size();
+    }
+
+    /** Opens the queue and stores the schedules over their previous copies, as a prescription sync does. */
+    static int putAll(File dir, List<DoseSchedule> schedules) throws IOException {
+        DoseQueue queue = new DoseQueue(dir, KOLKATA, START);
+        queue.putAll(schedules, START);
+        return queue.size();
+    }
+
+    /** Loads and heapifies the stored schedules, as the boot and alarm receivers do. */
+    static int open(File dir) throws IOException {
+        return new DoseQueue(dir, KOLKATA, START).size();
+    }
+}
@@ -0,0 +1,67 @@
+package com.cureon.telemed;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Checking one reading against the default rule snapshot
+ * (health-rules/defaults.snapshot.json, bundled from app/src/test/resources),
+ * which is what each reading costs before it's journalled. Readings are
+ * random across every type and range, so matches and misses both occur.
+ */
+final class HealthRulesWorkloads {
+    static final String SNAPSHOT = "/health-rules/defaults.snapshot.json";
+    private static final int READINGS = 4096;
+
+    /** A stream of random readings, each call checking the next. */
+    static final class Readings {
+        final HealthRules rules;
+        private final int[] types = new int[READINGS];
+        private final double[] values = new double[READINGS * 3];
+        private int next;
+
+        Readings(HealthRules rules) {
+            this.rules = rules;
+            Random random = new Random(5);
+            for (int i = 0; i < types.length; i++) {
+                types[i] = random.nextInt(5);
+                values[i * 3] = types[i] == HealthRules.TEMPERATURE ? 94 + random.nextDouble() * 10
+                    : types[i] == HealthRules.SPO2 ? 85 + random.nextDouble() * 15 : 30 + random.nextDouble() * 250;
+                values[i * 3 + 1] = 90 + random.nextDouble() * 110;
+                values[i * 3 + 2] = 55 + random.nextDouble() * 75;
+            }
+        }
+
+        /** Whether the next reading is critical, as the plugin decides before raising an alert. */
+        boolean check() {
+            int k = next++ & (READINGS - 1);
+            int rule = rules.match(types[k], values[k * 3], values[k * 3 + 1], values[k * 3 + 2]);
+            return rule >= 0 && rules.severity(rule) == HealthRules.CRITICAL;
+        }
+    }
+
+    private HealthRulesWorkloads() {
+    }
+
+    static HealthRules rules() throws IOException, JSONException {
+        InputStream in = HealthRulesWorkloads.class.getResourceAsStream(SNAPSHOT);
+        if (in == null) {
+            throw new IOException(SNAPSHOT + " is not on the classpath");
+        }
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+        }
+        return HealthRules.compile(new JSONObject(text.toString()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.cureon.telemed;
+
+/**
+ * Scoring a photo at the analysis size before it's uploaded for a consult,
+ * on the recorded image-quality goldens (bundled from app/src/test/resources).
+ * Reading the PNGs differs between a device and the JVM, so
+ * ImageQualityBenchmark and its JVM fallback each load the gray samples.
+ */
+final class ImageQualityWorkloads {
+    static final String DIR = "/image-quality/";
+    // As goldens.csv records them: the file and the size of the photo it stands for
+    static final String SKIN = "skin_good.png";
+    static final int SKIN_SOURCE_WIDTH = 4000;
+    static final int SKIN_SOURCE_HEIGHT = 3000;
+    static final String XRAY = "xray_good.png";
+    static final int XRAY_SOURCE_WIDTH = 2000;
+    static final int XRAY_SOURCE_HEIGHT = 1500;
+
+    private ImageQualityWorkloads() {
+    }
+
+    static int assessSkin(ImageQualityScorer scorer, byte[] luma, int width, int height) {
+        return scorer.assess(luma, width, height, width, SKIN_SOURCE_WIDTH, SKIN_SOURCE_HEIGHT,
+            ImageQualityScorer.SKIN).score;
+    }
+
+    static int assessXray(ImageQualityScorer scorer, byte[] luma, int width, int height) {
+        return scorer.assess(luma, width, height, width, XRAY_SOURCE_WIDTH, XRAY_SOURCE_HEIGHT,
+            ImageQualityScorer.XRAY).score;
+    }
+}
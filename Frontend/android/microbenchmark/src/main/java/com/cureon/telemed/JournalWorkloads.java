@@ -0,0 +1,31 @@
+package com.cureon.telemed;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The reading journal's write path as the vitals plugins drive it: a batch of
+ * readings appended and synced, then peeked and acknowledged the way
+ * ReadingUploader drains it, so the journal stays small however long the
+ * benchmark runs.
+ */
+final class JournalWorkloads {
+    /** About a minute of one-second vitals from a single monitor. */
+    static final int BATCH = 64;
+    static final byte[] READING =
+        "{\"type\":\"heart_rate\",\"value\":{\"single\":72}}".getBytes(StandardCharsets.UTF_8);
+
+    private JournalWorkloads() {
+    }
+
+    /** Returns the number of records drained, which is {@link #BATCH} unless something was lost. */
+    static int appendAndAcknowledge(ReadingJournal journal) throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            journal.append(READING, i);
+        }
+        journal.sync();
+        ReadingJournal.Batch batch = journal.peek(BATCH, Integer.MAX_VALUE);
+        journal.acknowledge(batch);
+        return batch.size();
+    }
+}
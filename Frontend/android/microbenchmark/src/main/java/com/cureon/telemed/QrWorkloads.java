@@ -0,0 +1,69 @@
+package com.cureon.telemed;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The scanner's per-frame work on the recorded fixtures in qr-frames
+ * (bundled from app/src/test/resources). Each is decoded from a direct
+ * buffer with padded rows, as ImageProxy planes arrive from CameraX.
+ * Reading the PNGs differs between a device and the JVM, so QrBenchmark and
+ * its JVM fallback each load the gray samples and hand them to
+ * {@link #plane}.
+ */
+final class QrWorkloads {
+    static final String DIR = "/qr-frames/";
+
+    /** A fixture and how frames.csv lays it out; expectedId is null for frames without a code. */
+    static final class Fixture {
+        final String file;
+        final int rowStride;
+        final String expectedId;
+
+        Fixture(String file, int rowStride, String expectedId) {
+            this.file = file;
+            this.rowStride = rowStride;
+            this.expectedId = expectedId;
+        }
+    }
+
+    // The rows of qr-frames/frames.csv
+    static final Fixture PATIENT_CARD = new Fixture("patient_card.png", 704, "665f1c2ab4e8a93d1c7e0f42");
+    static final Fixture PRESCRIPTION_DIM = new Fixture("prescription_dim.png", 640, "66a0b7d4e21c9f0012ab34cd");
+    static final Fixture PRESCRIPTION_720P = new Fixture("prescription_720p.png", 1280, "66a0b7d4e21c9f0012ab34cd");
+    static final Fixture NO_CODE = new Fixture("no_code.png", 704, null);
+
+    /** A frame ready for {@link QrFrameDecoder#decode}. */
+    static final class Frame {
+        final ByteBuffer yPlane;
+        final int rowStride;
+        final int width;
+        final int height;
+
+        Frame(ByteBuffer yPlane, int rowStride, int width, int height) {
+            this.yPlane = yPlane;
+            this.rowStride = rowStride;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private QrWorkloads() {
+    }
+
+    /** Lays out {@code gray} (row-major, 0-255) as a Y plane with {@code rowStride}-byte rows. */
+    static Frame plane(int[] gray, int width, int height, int rowStride) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            plane.position(y * rowStride);
+            for (int x = 0; x < width; x++) {
+                plane.put((byte) gray[y * width + x]);
+            }
+        }
+        plane.position(0);
+        return new Frame(plane, rowStride, width, height);
+    }
+
+    static String decode(QrFrameDecoder decoder, Frame frame) {
+        return decoder.decode(frame.yPlane, frame.rowStride, frame.width, frame.height);
+    }
+}
@@ -0,0 +1,133 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+
+/**
+ * Laying out a one-page prescription and a 200-page reading history, with
+ * monospaced metrics and a sink that only counts, so the layout is measured
+ * and not Canvas drawing or the PDF writer. The prescription is
+ * reports/prescription.json (bundled from app/src/test/resources).
+ */
+final class ReportWorkloads {
+    static final String PRESCRIPTION = "/reports/prescription.json";
+    /** Readings in a history of about 200 pages. */
+    static final int HISTORY_READINGS = 6_400;
+    static final ReportTemplates TEMPLATES = new ReportTemplates(ZoneOffset.UTC);
+
+    /** Every character is half the font size wide. */
+    static final ReportLayout.Fonts MONO = new ReportLayout.Fonts() {
+        @Override
+        public float width(String text, int start, int end, int style) {
+            return (end - start) * size(style) / 2;
+        }
+
+        @Override
+        public float size(int style) {
+            return style == ReportLayout.TITLE ? 20 : style == ReportLayout.HEADING ? 13 : style == ReportLayout.SMALL ? 8 : 10;
+        }
+    };
+
+    /** Counts what would be drawn. */
+    static final class Counter implements ReportLayout.Sink {
+        long ops;
+        int pages;
+
+        @Override
+        public void startPage(int number) {
+            pages = number;
+        }
+
+        @Override
+        public void text(String text, float x, float baseline, int style) {
+            ops += text.length();
+        }
+
+        @Override
+        public void line(float x1, float y1, float x2, float y2) {
+            ops++;
+        }
+
+        @Override
+        public void fill(float left, float top, float right, float bottom, int argb) {
+            ops++;
+        }
+
+        @Override
+        public void image(String source, float left, float top, float right, float bottom) {
+            ops++;
+        }
+
+        @Override
+        public void finishPage(int number) {
+            ops++;
+        }
+    }
+
+    private ReportWorkloads() {
+    }
+
+    static JSONObject prescription() throws IOException, JSONException {
+        InputStream in = ReportWorkloads.class.getResourceAsStream(PRESCRIPTION);
+        if (in == null) {
+            throw new IOException(PRESCRIPTION + " is not on the classpath");
+        }
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+        }
+        return new JSONObject(text.toString());
+    }
+
+    /** {@code readings} readings across every type, as the backend would send them. */
+    static JSONObject history(int readings) throws JSONException {
+        String[] types = { "heart_rate", "blood_pressure", "spo2", "temperature", "blood_glucose", "sleep" };
+        JSONArray rows = new JSONArray();
+        for (int i = 0; i < readings; i++) {
+            String type = types[i % types.length];
+            JSONObject value = new JSONObject();
+            switch (type) {
+                case "blood_pressure":
+                    value.put("systolic", 118 + i % 30).put("diastolic", 76 + i % 15);
+                    break;
+                case "sleep":
+                    value.put("duration", 300 + i % 180).put("quality", "good");
+                    break;
+                default:
+                    value.put("single", 60 + i % 40);
+            }
+            rows.put(new JSONObject()
+                .put("type", type)
+                .put("value", value)
+                .put("severity", i % 17 == 0 ? "warning" : "normal")
+                .put("recordedAt", String.format("2024-%02d-%02dT%02d:30:00.000Z", 1 + i / 600 % 12, 1 + i / 24 % 28, i % 24))
+                .put("source", new JSONObject().put("deviceType", i % 2 == 0 ? "mi_band" : "manual")));
+        }
+        return new JSONObject()
+            .put("patient", new JSONObject().put("name", "Meena Kumari").put("phone", "+91 98765 43210"))
+            .put("generatedAt", "2024-06-01T08:00:00.000Z")
+            .put("readings", rows);
+    }
+
+    /** Returns the number of pages, or -1 if the template refused the data. */
+    static int layOut(String kind, JSONObject data) {
+        Counter counter = new Counter();
+        ReportLayout layout = new ReportLayout(MONO, counter, ReportTemplates.header(kind, data), "footer");
+        if (!TEMPLATES.render(kind, data, layout)) {
+            return -1;
+        }
+        layout.finish();
+        return counter.pages;
+    }
+}
@@ -0,0 +1,176 @@
+package com.cureon.telemed;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An SOS alert from trigger to the server's acknowledgement over loopback:
+ * written to disk, picked up by the dispatcher's thread, posted on a
+ * keep-alive connection and parsed. What's left out is the real network,
+ * so this is the app's own share of the latency. The backend is a minimal
+ * HTTP/1.1 responder, as com.sun.net.httpserver isn't on a device.
+ */
+final class SosWorkloads {
+    private static final long ACK_TIMEOUT_MS = 5_000;
+    private static final byte[] CREATED =
+        "{\"success\":true,\"emergency\":{\"_id\":\"em-1\"}}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OK = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+
+    /** A dispatcher started against a loopback backend. */
+    static final class Harness implements Closeable {
+        final SosDispatcher dispatcher;
+        private final Backend backend;
+        private final Semaphore acks = new Semaphore(0);
+
+        Harness(File dir) throws IOException {
+            backend = new Backend();
+            SosDispatcher.Config config = new SosDispatcher.Config();
+            config.baseUrl = "http://127.0.0.1:" + backend.port();
+            config.token = "abc";
+            dispatcher = new SosDispatcher(dir, config, new SosDispatcher.Listener() {
+                @Override
+                public void onChanged(SosDispatcher.Alert alert) {
+                }
+
+                @Override
+                public void onAcknowledged(SosDispatcher.Alert alert) {
+                    acks.release();
+                }
+
+                @Override
+                public void onSmsFallback(SosDispatcher.Alert alert) {
+                }
+            }, new Random(1));
+            dispatcher.start();
+            if (dispatcher.warm() < 0) {
+                close();
+                throw new IOException("Loopback backend did not answer");
+            }
+        }
+
+        /**
+         * Returns the alert's trigger-to-acknowledgement latency in ms.
+         * Acknowledged alerts stay in memory, as they do in the app.
+         */
+        long triggerToAck() throws IOException, InterruptedException {
+            SosDispatcher.Alert alert = dispatcher.trigger(SosDispatcher.SOS, null, "high", null,
+                new SosFix(12.9716, 77.5946, 10, System.currentTimeMillis(), "gps"));
+            if (!acks.tryAcquire(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Alert " + alert.id + " was not acknowledged");
+            }
+            return alert.latencyMs();
+        }
+
+        @Override
+        public void close() {
+            dispatcher.stop();
+            backend.close();
+        }
+    }
+
+    /** Answers every request with a created emergency, on keep-alive connections. */
+    private static final class Backend implements Closeable {
+        private final ServerSocket server;
+
+        Backend() throws IOException {
+            server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+            Thread acceptor = new Thread(this::accept, "SosWorkloads.backend");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread connection = new Thread(() -> serve(socket), "SosWorkloads.connection");
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private static void serve(Socket socket) {
+            try (Socket s = socket) {
+                s.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = s.getOutputStream();
+                String requestLine;
+                while ((requestLine = line(in)) != null) {
+                    int length = 0;
+                    String header;
+                    while ((header = line(in)) != null && !header.isEmpty()) {
+                        if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                            length = Integer.parseInt(header.substring(15).trim());
+                        }
+                    }
+                    for (int i = 0; i < length; i++) {
+                        if (in.read() < 0) {
+                            return;
+                        }
+                    }
+                    String path = requestLine.split(" ")[1];
+                    boolean create = path.endsWith("/sos") || path.endsWith("/ambulance");
+                    byte[] body = create ? CREATED : OK;
+                    byte[] head = ((create ? "HTTP/1.1 201 Created" : "HTTP/1.1 200 OK")
+                        + "\r\nContent-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                    // One write, so the response isn't held back waiting for a delayed ACK
+                    byte[] response = new byte[head.length + body.length];
+                    System.arraycopy(head, 0, response, 0, head.length);
+                    System.arraycopy(body, 0, response, head.length, body.length);
+                    out.write(response);
+                    out.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                // The client closed the connection or sent something this responder doesn't handle
+            }
+        }
+
+        /** One CRLF-terminated line without the terminator, or null at end of stream. */
+        private static String line(InputStream in) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    return null;
+                }
+                if (b != '\r') {
+                    bytes.write(b);
+                }
+            }
+            return bytes.toString("US-ASCII");
+        }
+
+        @Override
+        public void close() {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+                // Nothing is listening any more either way
+            }
+        }
+    }
+
+    private SosWorkloads() {
+    }
+}
@@ -0,0 +1,32 @@
+package com.cureon.telemed;
+
+/**
+ * What instrumenting a hot path costs: a section begun and ended plus a
+ * counter bump, with the recorder running and with it stopped, which is how
+ * release builds ship it.
+ */
+final class TraceWorkloads {
+    /** A recorder of its own, so the app's shared one is left alone. */
+    static final class Recorder {
+        final PerfTrace trace = new PerfTrace();
+        final int section = trace.name("bench.section");
+        final int counter = trace.name("bench.counter");
+
+        Recorder(boolean recording) {
+            if (recording) {
+                trace.start(PerfTrace.DEFAULT_CAPACITY);
+            }
+        }
+
+        /** Three events; returns the counter so the work can't be dropped. */
+        long sectionAndCount() {
+            trace.begin(section);
+            trace.end(section);
+            trace.count(counter, 1);
+            return trace.counter(counter);
+        }
+    }
+
+    private TraceWorkloads() {
+    }
+}
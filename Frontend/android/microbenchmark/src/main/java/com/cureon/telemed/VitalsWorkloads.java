@@ -0,0 +1,43 @@
+package com.cureon.telemed;
+
+import java.util.Random;
+
+/**
+ * The per-notification work on the GATT thread: one heart-rate sample and
+ * one RR interval through {@link VitalsAnalytics}, fed from a synthetic
+ * beat-to-beat series with respiratory variation.
+ */
+final class VitalsWorkloads {
+    private static final int SERIES = 4096;
+    private static final long BEAT_MS = 850;
+
+    /** A watch's stream, picking up where the previous sample left off. */
+    static final class Stream {
+        final VitalsAnalytics analytics = new VitalsAnalytics();
+        private final float[] rr = new float[SERIES];
+        private long timeMs;
+        private int beat;
+
+        Stream() {
+            Random random = new Random(3);
+            for (int i = 0; i < rr.length; i++) {
+                rr[i] = (float) (850 + 40 * Math.sin(i / 4.0) + random.nextGaussian() * 10);
+            }
+            // Fill the HRV and trend windows so every sample also evicts one
+            for (int i = 0; i < 200_000; i++) {
+                sample();
+            }
+        }
+
+        /** Returns whether the beat was accepted into the HRV window. */
+        boolean sample() {
+            float rrMs = rr[beat++ & (SERIES - 1)];
+            timeMs += BEAT_MS;
+            analytics.heartRate.add(timeMs, 60000 / rrMs);
+            return analytics.addRrInterval(timeMs, rrMs);
+        }
+    }
+
+    private VitalsWorkloads() {
+    }
+}
@@ -0,0 +1,88 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Bridge payloads of {@link BlobWorkloads#SMALL} and {@link BlobWorkloads#LARGE}
+ * bytes, as base64 in JSON against the blob channel, each way.
+ */
+public class BlobJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(BlobJvmBenchmark.class);
+    private static final byte[] SMALL = BlobWorkloads.payload(BlobWorkloads.SMALL);
+    private static final byte[] LARGE = BlobWorkloads.payload(BlobWorkloads.LARGE);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private BlobStore store;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Before
+    public void setUp() throws Exception {
+        store = new BlobStore(tmp.newFolder("blobs"));
+    }
+
+    @Test
+    public void base64ToWebViewSmall() throws Exception {
+        BENCH.measure("base64ToWebViewSmall", () -> BlobWorkloads.base64ToWebView(SMALL));
+    }
+
+    @Test
+    public void blobToWebViewSmall() throws Exception {
+        assertEquals(SMALL.length, BlobWorkloads.blobToWebView(store, SMALL, buffer));
+        BENCH.measure("blobToWebViewSmall", () -> BlobWorkloads.blobToWebView(store, SMALL, buffer));
+    }
+
+    @Test
+    public void base64ToWebViewLarge() throws Exception {
+        BENCH.measure("base64ToWebViewLarge", () -> BlobWorkloads.base64ToWebView(LARGE));
+    }
+
+    @Test
+    public void blobToWebViewLarge() throws Exception {
+        BENCH.measure("blobToWebViewLarge", () -> BlobWorkloads.blobToWebView(store, LARGE, buffer));
+    }
+
+    @Test
+    public void base64FromWebViewSmall() throws Exception {
+        String json = BlobWorkloads.uploadJson(SMALL);
+        File out = tmp.newFile("base64.bin");
+        BlobWorkloads.base64FromWebView(json, out);
+        assertTrue(Arrays.equals(SMALL, Files.readAllBytes(out.toPath())));
+        BENCH.measure("base64FromWebViewSmall", () -> BlobWorkloads.base64FromWebView(json, out));
+    }
+
+    @Test
+    public void blobFromWebViewSmall() throws Exception {
+        assertEquals(SMALL.length, BlobWorkloads.blobFromWebView(store, SMALL));
+        BENCH.measure("blobFromWebViewSmall", () -> BlobWorkloads.blobFromWebView(store, SMALL));
+    }
+
+    @Test
+    public void base64FromWebViewLarge() throws Exception {
+        String json = BlobWorkloads.uploadJson(LARGE);
+        File out = tmp.newFile("base64.bin");
+        BENCH.measure("base64FromWebViewLarge", () -> BlobWorkloads.base64FromWebView(json, out));
+    }
+
+    @Test
+    public void blobFromWebViewLarge() throws Exception {
+        assertEquals(LARGE.length, BlobWorkloads.blobFromWebView(store, LARGE));
+        BENCH.measure("blobFromWebViewLarge", () -> BlobWorkloads.blobFromWebView(store, LARGE));
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-blob-jvm");
+    }
+}
@@ -0,0 +1,59 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * User ID sanitization with and without the regex, joinRoom argument parsing
+ * and result marshalling. The launch intent needs a real
+ * android.content.Intent and is measured on device only.
+ */
+public class BridgeJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(BridgeJvmBenchmark.class);
+
+    @Test
+    public void sanitizeCleanIdRegex() throws Exception {
+        BENCH.measure("sanitizeCleanIdRegex", () -> BridgeWorkloads.sanitizeWithRegex(BridgeWorkloads.CLEAN_ID));
+    }
+
+    @Test
+    public void sanitizeCleanId() throws Exception {
+        BENCH.measure("sanitizeCleanId", () -> BridgeWorkloads.sanitize(BridgeWorkloads.CLEAN_ID));
+    }
+
+    @Test
+    public void sanitizeDirtyIdRegex() throws Exception {
+        BENCH.measure("sanitizeDirtyIdRegex", () -> BridgeWorkloads.sanitizeWithRegex(BridgeWorkloads.DIRTY_ID));
+    }
+
+    @Test
+    public void sanitizeDirtyId() throws Exception {
+        assertEquals(BridgeWorkloads.sanitizeWithRegex(BridgeWorkloads.DIRTY_ID),
+            BridgeWorkloads.sanitize(BridgeWorkloads.DIRTY_ID));
+        BENCH.measure("sanitizeDirtyId", () -> BridgeWorkloads.sanitize(BridgeWorkloads.DIRTY_ID));
+    }
+
+    @Test
+    public void parseJoinCall() throws Exception {
+        JoinRequest request = BridgeWorkloads.parseJoinCall(BridgeWorkloads.JOIN_MESSAGE);
+        assertEquals("appt_64f1a2b3c4d5e6f708192a3c", request.roomId);
+        assertTrue(request.video);
+        BENCH.measure("parseJoinCall", () -> BridgeWorkloads.parseJoinCall(BridgeWorkloads.JOIN_MESSAGE));
+    }
+
+    @Test
+    public void marshalJoinResult() throws Exception {
+        JoinRequest request = BridgeWorkloads.parseJoinCall(BridgeWorkloads.JOIN_MESSAGE);
+        assertEquals(BridgeWorkloads.SESSION_ID,
+            new JSONObject(BridgeWorkloads.joinResult(request)).getLong("sessionId"));
+        BENCH.measure("marshalJoinResult", () -> BridgeWorkloads.joinResult(request));
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-jvm");
+    }
+}
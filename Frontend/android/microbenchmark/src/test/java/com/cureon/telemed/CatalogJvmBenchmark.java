@@ -0,0 +1,65 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Prefix, fuzzy, two-word and filtered searches and one sync page against the
+ * 100k-medicine index. Building the index is timed once and printed rather
+ * than benchmarked.
+ */
+public class CatalogJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(CatalogJvmBenchmark.class);
+    private static MedicineIndex index;
+
+    @BeforeClass
+    public static void buildIndex() throws Exception {
+        long started = System.nanoTime();
+        index = CatalogWorkloads.index();
+        System.out.println("CatalogJvmBenchmark built " + index.size() + " medicines in "
+            + (System.nanoTime() - started) / 1_000_000 + "ms");
+        assertEquals(CatalogWorkloads.SIZE, index.size());
+    }
+
+    @Test
+    public void searchPrefix() throws Exception {
+        assertTrue(CatalogWorkloads.search(index, CatalogWorkloads.prefixQuery()) > 0);
+        BENCH.measure("searchPrefix", () -> CatalogWorkloads.search(index, CatalogWorkloads.prefixQuery()));
+    }
+
+    @Test
+    public void searchFuzzy() throws Exception {
+        assertTrue(index.search(CatalogWorkloads.fuzzyQuery()).fuzzy);
+        BENCH.measure("searchFuzzy", () -> CatalogWorkloads.search(index, CatalogWorkloads.fuzzyQuery()));
+    }
+
+    @Test
+    public void searchTwoWords() throws Exception {
+        assertTrue(CatalogWorkloads.search(index, CatalogWorkloads.twoWordQuery()) > 0);
+        BENCH.measure("searchTwoWords", () -> CatalogWorkloads.search(index, CatalogWorkloads.twoWordQuery()));
+    }
+
+    @Test
+    public void filterSortPage() throws Exception {
+        assertTrue(CatalogWorkloads.search(index, CatalogWorkloads.filteredQuery()) > 0);
+        BENCH.measure("filterSortPage", () -> CatalogWorkloads.search(index, CatalogWorkloads.filteredQuery()));
+    }
+
+    @Test
+    public void applySyncPage() throws Exception {
+        List<JSONObject> page = CatalogWorkloads.deltaPage(1);
+        BENCH.measure("applySyncPage", () -> CatalogWorkloads.applyPage(index, page));
+        assertEquals(CatalogWorkloads.SIZE, index.size());
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-catalog-jvm");
+    }
+}
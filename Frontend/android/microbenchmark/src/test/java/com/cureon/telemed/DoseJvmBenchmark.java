@@ -0,0 +1,51 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Firing the next reminder, and saving and reopening
+ * {@link DoseWorkloads#MANY} schedules in a temporary directory.
+ */
+public class DoseJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(DoseJvmBenchmark.class);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void fireNextAlarm() throws Exception {
+        DoseQueue queue = new DoseQueue(tmp.newFolder("alarm"), DoseWorkloads.KOLKATA, DoseWorkloads.START);
+        queue.putAll(DoseWorkloads.patient(), DoseWorkloads.START);
+        assertTrue(DoseWorkloads.fireNextAlarm(queue) > 0);
+        BENCH.measure("fireNextAlarm", () -> DoseWorkloads.fireNextAlarm(queue));
+    }
+
+    @Test
+    public void putAllMany() throws Exception {
+        List<DoseSchedule> schedules = DoseWorkloads.many();
+        File dir = tmp.newFolder("put");
+        assertEquals(DoseWorkloads.MANY, DoseWorkloads.putAll(dir, schedules));
+        BENCH.measure("putAllMany", () -> DoseWorkloads.putAll(dir, schedules));
+    }
+
+    @Test
+    public void openMany() throws Exception {
+        File dir = tmp.newFolder("open");
+        DoseWorkloads.putAll(dir, DoseWorkloads.many());
+        assertEquals(DoseWorkloads.MANY, DoseWorkloads.open(dir));
+        BENCH.measure("openMany", () -> DoseWorkloads.open(dir));
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-dose-jvm");
+    }
+}
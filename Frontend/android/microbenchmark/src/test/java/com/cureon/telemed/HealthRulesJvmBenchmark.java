@@ -0,0 +1,31 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * One random reading checked against the default rule snapshot.
+ */
+public class HealthRulesJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(HealthRulesJvmBenchmark.class);
+
+    @Test
+    public void checkReading() throws Exception {
+        HealthRulesWorkloads.Readings readings = new HealthRulesWorkloads.Readings(HealthRulesWorkloads.rules());
+        int critical = 0;
+        for (int i = 0; i < 4096; i++) {
+            if (readings.check()) {
+                critical++;
+            }
+        }
+        assertTrue(critical > 0);
+        BENCH.measure("checkReading", readings::check);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-health-rules-jvm");
+    }
+}
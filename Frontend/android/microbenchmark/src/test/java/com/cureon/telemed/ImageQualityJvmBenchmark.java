@@ -0,0 +1,54 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Skin and X-ray quality scores on the goldens, read here with ImageIO.
+ */
+public class ImageQualityJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(ImageQualityJvmBenchmark.class);
+
+    private final ImageQualityScorer scorer = new ImageQualityScorer();
+    private final int[] size = new int[2];
+
+    private static byte[] load(String file, int[] size) throws IOException {
+        BufferedImage image;
+        try (InputStream in = ImageQualityJvmBenchmark.class.getResourceAsStream(ImageQualityWorkloads.DIR + file)) {
+            assertNotNull("missing golden " + file, in);
+            image = ImageIO.read(in);
+        }
+        size[0] = image.getWidth();
+        size[1] = image.getHeight();
+        byte[] luma = new byte[size[0] * size[1]];
+        image.getRaster().getDataElements(0, 0, size[0], size[1], luma);
+        return luma;
+    }
+
+    @Test
+    public void assessSkin() throws Exception {
+        byte[] luma = load(ImageQualityWorkloads.SKIN, size);
+        assertEquals(100, ImageQualityWorkloads.assessSkin(scorer, luma, size[0], size[1]));
+        BENCH.measure("assessSkin", () -> ImageQualityWorkloads.assessSkin(scorer, luma, size[0], size[1]));
+    }
+
+    @Test
+    public void assessXray() throws Exception {
+        byte[] luma = load(ImageQualityWorkloads.XRAY, size);
+        assertEquals(100, ImageQualityWorkloads.assessXray(scorer, luma, size[0], size[1]));
+        BENCH.measure("assessXray", () -> ImageQualityWorkloads.assessXray(scorer, luma, size[0], size[1]));
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-image-quality-jvm");
+    }
+}
@@ -0,0 +1,33 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A batch appended, synced and acknowledged in a journal under a temporary
+ * directory.
+ */
+public class JournalJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(JournalJvmBenchmark.class);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void appendAndAcknowledge() throws Exception {
+        try (ReadingJournal journal = new ReadingJournal(tmp.newFolder("journal"))) {
+            assertEquals(JournalWorkloads.BATCH, JournalWorkloads.appendAndAcknowledge(journal));
+            BENCH.measure("appendAndAcknowledge", () -> JournalWorkloads.appendAndAcknowledge(journal));
+            assertEquals(0, journal.pendingRecords());
+        }
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-journal-jvm");
+    }
+}
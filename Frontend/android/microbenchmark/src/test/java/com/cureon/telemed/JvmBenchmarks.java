@@ -0,0 +1,95 @@
+package com.cureon.telemed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * androidx.benchmark's measuring loop and output format for the JVM
+ * fallbacks. HotSpot numbers aren't ART numbers, so compare JVM runs only
+ * with JVM runs; the shape of the output is androidx.benchmark's, so
+ * compareMicrobenchmarks reads either.
+ */
+final class JvmBenchmarks {
+    private static final int WARMUP_MS = 300;
+    private static final int RUNS = 30;
+    private static final long RUN_NS = 2_000_000;
+
+    private final Class<?> owner;
+    private final JSONArray benchmarks = new JSONArray();
+    // Written by every loop so the JIT can't drop the work
+    private volatile Object sink;
+
+    JvmBenchmarks(Class<?> owner) {
+        this.owner = owner;
+    }
+
+    /** Times batches of about {@link #RUN_NS} after a warm-up and records ns per call, as androidx.benchmark does. */
+    void measure(String name, Callable<Object> workload) throws Exception {
+        long warmupEnd = System.nanoTime() + WARMUP_MS * 1_000_000L;
+        long batch = 1;
+        while (System.nanoTime() < warmupEnd) {
+            long started = System.nanoTime();
+            for (long i = 0; i < batch; i++) {
+                sink = workload.call();
+            }
+            if (System.nanoTime() - started < RUN_NS) {
+                batch *= 2;
+            }
+        }
+        double[] runs = new double[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long started = System.nanoTime();
+            for (long i = 0; i < batch; i++) {
+                sink = workload.call();
+            }
+            runs[run] = (double) (System.nanoTime() - started) / batch;
+        }
+        double[] sorted = runs.clone();
+        Arrays.sort(sorted);
+        double median = (sorted[RUNS / 2 - 1] + sorted[RUNS / 2]) / 2;
+        JSONArray samples = new JSONArray();
+        for (double run : runs) {
+            samples.put(run);
+        }
+        JSONObject timeNs = new JSONObject()
+            .put("minimum", sorted[0])
+            .put("maximum", sorted[RUNS - 1])
+            .put("median", median)
+            .put("runs", samples);
+        synchronized (benchmarks) {
+            benchmarks.put(new JSONObject()
+                .put("name", name)
+                .put("className", owner.getName())
+                .put("metrics", new JSONObject().put("timeNs", timeNs))
+                .put("repeatIterations", batch));
+        }
+        System.out.println(owner.getSimpleName() + " " + name + " ns/op=" + Math.round(median) + " batch=" + batch);
+    }
+
+    /** Writes this class's results to {@code <outputDir>/<file>-benchmarkData.json}. */
+    void write(String file) throws IOException, JSONException {
+        File dir = new File(System.getProperty("benchmark.outputDir", "build/outputs/jvm-benchmark"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        JSONObject results = new JSONObject()
+            .put("context", new JSONObject()
+                .put("runtime", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"))
+                .put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch")))
+            .put("benchmarks", benchmarks);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, file + "-benchmarkData.json")),
+                StandardCharsets.UTF_8)) {
+            out.write(results.toString(2));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decoding each recorded frame, read here with ImageIO, including one with
+ * no code in it.
+ */
+public class QrJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(QrJvmBenchmark.class);
+
+    private final QrFrameDecoder decoder = new QrFrameDecoder(QrFrameDecoder.DEFAULT_ROI);
+
+    private static QrWorkloads.Frame load(QrWorkloads.Fixture fixture) throws IOException {
+        BufferedImage image;
+        try (InputStream in = QrJvmBenchmark.class.getResourceAsStream(QrWorkloads.DIR + fixture.file)) {
+            assertNotNull("missing frame " + fixture.file, in);
+            image = ImageIO.read(in);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] gray = image.getRaster().getSamples(0, 0, width, height, 0, (int[]) null);
+        return QrWorkloads.plane(gray, width, height, fixture.rowStride);
+    }
+
+    private void decode(String name, QrWorkloads.Fixture fixture) throws Exception {
+        QrWorkloads.Frame frame = load(fixture);
+        String payload = QrWorkloads.decode(decoder, frame);
+        if (fixture.expectedId == null) {
+            assertNull(payload);
+        } else {
+            assertTrue(payload, payload.contains(fixture.expectedId));
+        }
+        BENCH.measure(name, () -> QrWorkloads.decode(decoder, frame));
+    }
+
+    @Test
+    public void decodePatientCard() throws Exception {
+        decode("decodePatientCard", QrWorkloads.PATIENT_CARD);
+    }
+
+    @Test
+    public void decodePrescriptionDim() throws Exception {
+        decode("decodePrescriptionDim", QrWorkloads.PRESCRIPTION_DIM);
+    }
+
+    @Test
+    public void decodePrescription720p() throws Exception {
+        decode("decodePrescription720p", QrWorkloads.PRESCRIPTION_720P);
+    }
+
+    @Test
+    public void decodeNoCode() throws Exception {
+        decode("decodeNoCode", QrWorkloads.NO_CODE);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-qr-jvm");
+    }
+}
@@ -0,0 +1,35 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Laying out the prescription and the 200-page history. Writing the real PDF
+ * needs android.graphics and is measured on device only.
+ */
+public class ReportJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(ReportJvmBenchmark.class);
+
+    @Test
+    public void layOutPrescription() throws Exception {
+        JSONObject rx = ReportWorkloads.prescription();
+        assertEquals(1, ReportWorkloads.layOut(ReportTemplates.PRESCRIPTION, rx));
+        BENCH.measure("layOutPrescription", () -> ReportWorkloads.layOut(ReportTemplates.PRESCRIPTION, rx));
+    }
+
+    @Test
+    public void layOutLongHistory() throws Exception {
+        JSONObject history = ReportWorkloads.history(ReportWorkloads.HISTORY_READINGS);
+        int pages = ReportWorkloads.layOut(ReportTemplates.HISTORY, history);
+        assertTrue("pages=" + pages, pages >= 190);
+        BENCH.measure("layOutLongHistory", () -> ReportWorkloads.layOut(ReportTemplates.HISTORY, history));
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-report-jvm");
+    }
+}
@@ -0,0 +1,31 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Trigger-to-acknowledgement latency of one SOS against the loopback server.
+ */
+public class SosJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(SosJvmBenchmark.class);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void triggerToAck() throws Exception {
+        try (SosWorkloads.Harness harness = new SosWorkloads.Harness(tmp.newFolder("sos"))) {
+            assertTrue(harness.triggerToAck() >= 0);
+            BENCH.measure("triggerToAck", harness::triggerToAck);
+        }
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-sos-jvm");
+    }
+}
@@ -0,0 +1,31 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * A traced section and counter with the recorder running and stopped.
+ */
+public class TraceJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(TraceJvmBenchmark.class);
+
+    @Test
+    public void sectionAndCountRecording() throws Exception {
+        TraceWorkloads.Recorder recorder = new TraceWorkloads.Recorder(true);
+        assertEquals(1, recorder.sectionAndCount());
+        BENCH.measure("sectionAndCountRecording", recorder::sectionAndCount);
+    }
+
+    @Test
+    public void sectionAndCountStopped() throws Exception {
+        TraceWorkloads.Recorder recorder = new TraceWorkloads.Recorder(false);
+        BENCH.measure("sectionAndCountStopped", recorder::sectionAndCount);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-trace-jvm");
+    }
+}
@@ -0,0 +1,25 @@
+package com.cureon.telemed;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * One heart-rate sample and RR interval through the streaming analytics.
+ */
+public class VitalsJvmBenchmark {
+    private static final JvmBenchmarks BENCH = new JvmBenchmarks(VitalsJvmBenchmark.class);
+
+    @Test
+    public void heartRateAndRrSample() throws Exception {
+        VitalsWorkloads.Stream stream = new VitalsWorkloads.Stream();
+        BENCH.measure("heartRateAndRrSample", stream::sample);
+        assertTrue(stream.analytics.summarize().hrv.rmssd > 0);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BENCH.write("com.cureon.telemed.microbenchmark-vitals-jvm");
+    }
+}
@@ -10,6 +10,11 @@ import {
 import axios from '../axios';
 import { purgePersistedState } from '../store';
 import { isMobile, clearAppData } from '../utils/mobile.utils';
+import { isCallSignalAvailable, stopCallSignalling } from '../utils/callSignal';
+import { isNativeSosAvailable, clearNativeSos } from '../utils/nativeSos';
+import { isMedicationReminderAvailable, clearReminders } from '../utils/medicationReminders';
+import { isDocumentStoreAvailable, clearDocuments } from '../utils/documentStore';
+import { isApiCacheAvailable, clearApiCache } from '../utils/apiCache';
 
 
 export const login = (contact, password) => async (dispatch) => {
@@ -179,6 +184,24 @@ export const logout = () => async (dispatch) => {
             } catch (e) {
                 console.log('Mobile clear error:', e);
             }
+            // The native call service outlives the WebView; stop it ringing for this user
+            if (isCallSignalAvailable()) {
+                await stopCallSignalling().catch((e) => console.log('Call signalling stop error:', e));
+            }
+            if (isNativeSosAvailable()) {
+                await clearNativeSos().catch((e) => console.log('Native SOS clear error:', e));
+            }
+            if (isMedicationReminderAvailable()) {
+                await clearReminders().catch((e) => console.log('Medication reminders clear error:', e));
+            }
+            // Stored documents are the signed-in user's records
+            if (isDocumentStoreAvailable()) {
+                await clearDocuments().catch((e) => console.log('Document store clear error:', e));
+            }
+            // Cached responses were fetched with this user's token
+            if (isApiCacheAvailable()) {
+                await clearApiCache().catch((e) => console.log('API cache clear error:', e));
+            }
         }
         
         // Step 3: Purge Redux Persist
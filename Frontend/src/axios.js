@@ -1,5 +1,7 @@
 import axios from 'axios';
 import { API_BASE_URL } from './config/api.config';
+import { configureApiCache, invalidateAfterWrite } from './utils/apiCache';
+import { configureMedicineCatalog } from './utils/medicineCatalog';
 
 // Create axios instance with mobile-optimized configuration
 const instance = axios.create({
@@ -12,6 +14,11 @@ const instance = axios.create({
   withCredentials: true
 });
 
+// Let the native cache answer catalog GETs for this API on Android
+configureApiCache(API_BASE_URL);
+// and keep the medicine catalog on the device for offline search
+configureMedicineCatalog(API_BASE_URL);
+
 // Request interceptor - Add auth token
 instance.interceptors.request.use(
   (config) => {
@@ -48,6 +55,8 @@ instance.interceptors.response.use(
     if (import.meta.env.DEV) {
       console.log('📥 API Response:', response.config.method?.toUpperCase(), response.config.url, response.status);
     }
+    // A catalog write makes the cached GETs behind it stale
+    invalidateAfterWrite(instance.defaults.baseURL, response.config.method, response.config.url);
     return response;
   },
   (error) => {
@@ -6,6 +6,7 @@ import { useNavigate } from 'react-router-dom';
 import { useDispatch } from 'react-redux';
 import { updateAppointmentStatus, myAppointments } from '../actions/appointmentActions';
 import { toast } from 'react-toastify';
+import { sendCallInvite } from '../utils/callSignal';
 
 const AppointmentCard = ({ appointment, userRole }) => {
     const [showAISuggestions, setShowAISuggestions] = useState(false);
@@ -60,6 +61,15 @@ const AppointmentCard = ({ appointment, userRole }) => {
 
     const handleJoinCall = () => {
         if (appointment.roomId) {
+            // Ring the patient's phone; joining doesn't wait on it
+            if (userRole === 'doctor' && appointment.patient?._id) {
+                sendCallInvite({
+                    calleeId: appointment.patient._id,
+                    roomId: appointment.roomId,
+                    callId: `${appointment.roomId}-${Date.now()}`,
+                    isVideoCall: true,
+                });
+            }
             navigate(`/video-room?roomID=${appointment.roomId}`);
         }
     };
@@ -1,7 +1,9 @@
 import { useState, useEffect } from 'react';
+import { useSelector } from 'react-redux';
 import { Phone, Plus, Edit2, Trash2, X, Star } from 'lucide-react';
 import axios from '../axios';
 import { toast } from 'react-toastify';
+import { isNativeSosAvailable, configureNativeSos } from '../utils/nativeSos';
 
 const EmergencyContactsManager = () => {
     const [contacts, setContacts] = useState([]);
@@ -15,10 +17,19 @@ const EmergencyContactsManager = () => {
         isPrimary: false
     });
 
+    const { user } = useSelector(state => state.user);
     useEffect(() => {
         fetchContacts();
     }, []);
 
+    // Keep the native SOS fallback texting the current list
+    useEffect(() => {
+        if (!loading && isNativeSosAvailable()) {
+            configureNativeSos({ name: user?.name, emergencyContacts: contacts })
+                .catch((e) => console.log('Native SOS configure error:', e));
+        }
+    }, [contacts, loading, user]);
+
     const fetchContacts = async () => {
         try {
             const response = await axios.get('/api/v1/emergency-contacts');
@@ -2,6 +2,7 @@ import { useState, useEffect } from 'react';
 import { Settings, Save, Bell, AlertCircle, Shield } from 'lucide-react';
 import axios from '../axios';
 import { toast } from 'react-toastify';
+import { isHealthRulesAvailable, syncHealthRules } from '../utils/healthRules';
 
 const HealthSettings = () => {
     const [thresholds, setThresholds] = useState(null);
@@ -32,6 +33,10 @@ const HealthSettings = () => {
             const response = await axios.put('/api/v1/health/thresholds', thresholds);
             if (response.data.success) {
                 toast.success('Settings saved successfully');
+                // The device checks readings against its own copy of these
+                if (isHealthRulesAvailable()) {
+                    syncHealthRules().catch((error) => console.error('Health rules sync error:', error));
+                }
             }
         } catch (error) {
             console.error('Save thresholds error:', error);
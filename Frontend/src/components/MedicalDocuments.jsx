@@ -2,6 +2,7 @@ import React, { useState, useEffect } from 'react';
 import { Upload, FileText, Trash2, Eye, Download, Plus, X } from 'lucide-react';
 import axios from '../axios';
 import { toast } from 'react-toastify';
+import { isDocumentStoreAvailable, viewDocument, pinOnlyDocuments } from '../utils/documentStore';
 
 const MedicalDocuments = ({ userId }) => {
     const [documents, setDocuments] = useState([]);
@@ -23,6 +24,10 @@ const MedicalDocuments = ({ userId }) => {
         try {
             const { data } = await axios.get(`/medical-documents/${userId}`);
             setDocuments(data.documents || []);
+            // The patient's own records stay on the device; ones deleted elsewhere may go
+            if (isDocumentStoreAvailable()) {
+                pinOnlyDocuments((data.documents || []).map(doc => doc.url)).catch(() => {});
+            }
         } catch (error) {
             console.error('Error fetching documents:', error);
             toast.error('Failed to load medical documents');
@@ -84,15 +89,24 @@ const MedicalDocuments = ({ userId }) => {
         try {
             await axios.delete(`/medical-documents/${documentId}`);
             toast.success('Document deleted successfully');
-            setDocuments(documents.filter(doc => doc._id !== documentId));
+            const remaining = documents.filter(doc => doc._id !== documentId);
+            setDocuments(remaining);
+            if (isDocumentStoreAvailable()) {
+                pinOnlyDocuments(remaining.map(doc => doc.url)).catch(() => {});
+            }
         } catch (error) {
             console.error('Error deleting document:', error);
             toast.error('Failed to delete document');
         }
     };
 
-    const handleView = (documentUrl) => {
-        window.open(documentUrl, '_blank');
+    const handleView = async (documentUrl) => {
+        try {
+            await viewDocument(documentUrl, { pin: true });
+        } catch (error) {
+            console.error('Error opening document:', error);
+            toast.error('Failed to open document');
+        }
     };
 
     const formatDate = (date) => {
@@ -1,10 +1,16 @@
 import React, { useState, useRef, useEffect } from 'react';
-import { Calendar, User, FileText, Download, Eye, ChevronDown, ChevronUp, Volume2, Play, Pause, QrCode } from 'lucide-react';
+import { Calendar, User, FileText, Download, Eye, ChevronDown, ChevronUp, Volume2, Play, Pause, QrCode, BellRing } from 'lucide-react';
 import ReactMarkdown from 'react-markdown';
 import remarkGfm from 'remark-gfm';
 import axios from '../axios';
 import { toast } from 'react-toastify';
 import QRCode from 'qrcode';
+import { isNativeReportAvailable, generateReport, sharePdfReport, REPORT_KIND } from '../utils/nativeReport';
+import {
+  isMedicationReminderAvailable,
+  scheduleFromPrescription,
+  openExactAlarmSettings
+} from '../utils/medicationReminders';
 
 const PrescriptionCard = ({ prescription, userRole }) => {
   const [isExpanded, setIsExpanded] = useState(false);
@@ -81,6 +87,17 @@ const PrescriptionCard = ({ prescription, userRole }) => {
   const handleDownloadPDF = async () => {
     setIsDownloading(true);
     try {
+      if (isNativeReportAvailable()) {
+        // Built on the device from what's on screen, so it works offline too
+        const report = await generateReport(
+          REPORT_KIND.PRESCRIPTION,
+          { ...prescription, qrCode: qrCodeUrl },
+          `prescription-${prescription.prescriptionNumber}`
+        );
+        await sharePdfReport(report.path, 'Share prescription');
+        return;
+      }
+
       const response = await axios.get(`/prescription/${prescription._id}/pdf`, {
         responseType: 'blob'
       });
@@ -103,6 +120,28 @@ const PrescriptionCard = ({ prescription, userRole }) => {
     }
   };
 
+  const handleSetReminders = async () => {
+    try {
+      const result = await scheduleFromPrescription(prescription);
+      const active = result.scheduled.filter(r => r.nextDoseAt > 0).length;
+      if (active > 0) {
+        toast.success(`Reminders set for ${active} medicine${active > 1 ? 's' : ''}`);
+      } else if (result.scheduled.length > 0) {
+        toast.info('This prescription\'s course has already ended');
+      }
+      if (result.unscheduled.length > 0) {
+        toast.warn(`No fixed time for: ${result.unscheduled.join(', ')}`);
+      }
+      if (active > 0 && !result.exactAlarms) {
+        // Without it Doze can hold a reminder back by several minutes
+        toast.info('Allow alarms for reminders on time', { onClick: openExactAlarmSettings });
+      }
+    } catch (error) {
+      console.error('Error setting reminders:', error);
+      toast.error('Failed to set medication reminders');
+    }
+  };
+
   const formatDate = (dateString) => {
     return new Date(dateString).toLocaleDateString('en-US', {
       year: 'numeric',
@@ -203,6 +242,15 @@ const PrescriptionCard = ({ prescription, userRole }) => {
             >
               <QrCode className="w-4 h-4 md:w-5 md:h-5 text-purple-600" />
             </button>
+            {userRole !== 'doctor' && isMedicationReminderAvailable() && (
+              <button
+                onClick={handleSetReminders}
+                className="p-1.5 md:p-2 hover:bg-amber-100 rounded-lg transition-colors"
+                title="Remind me to take these"
+              >
+                <BellRing className="w-4 h-4 md:w-5 md:h-5 text-amber-600" />
+              </button>
+            )}
             <button
               onClick={() => setIsExpanded(!isExpanded)}
               className="p-1.5 md:p-2 hover:bg-blue-100 rounded-lg transition-colors"
@@ -2,6 +2,16 @@ import { useState, useRef, useEffect, useCallback } from 'react';
 import { createPortal } from 'react-dom';
 import { X, Camera, QrCode } from 'lucide-react';
 import { toast } from 'react-toastify';
+import { isNativeQrScannerAvailable, scanQrNative } from '../utils/qrScanner';
+
+const loadJsQR = () => {
+  if (window.jsQR || document.getElementById('jsqr-script')) return;
+  const script = document.createElement('script');
+  script.id = 'jsqr-script';
+  script.src = 'https://cdn.jsdelivr.net/npm/jsqr@1.4.0/dist/jsQR.min.js';
+  script.async = true;
+  document.body.appendChild(script);
+};
 
 const QRCodeScanner = ({ onScan, onClose }) => {
   const [showCamera, setShowCamera] = useState(false);
@@ -12,13 +22,10 @@ const QRCodeScanner = ({ onScan, onClose }) => {
   const streamRef = useRef(null);
   const animationRef = useRef(null);
 
-  // Load jsQR library
+  // Load jsQR library (not needed when the native scanner is available)
   useEffect(() => {
-    if (!window.jsQR) {
-      const script = document.createElement('script');
-      script.src = 'https://cdn.jsdelivr.net/npm/jsqr@1.4.0/dist/jsQR.min.js';
-      script.async = true;
-      document.body.appendChild(script);
+    if (!isNativeQrScannerAvailable()) {
+      loadJsQR();
     }
     return () => {
       stopCamera();
@@ -119,7 +126,19 @@ const QRCodeScanner = ({ onScan, onClose }) => {
     }
   }, [showCamera, startCamera]);
 
-  const handleOpenCamera = () => {
+  const handleOpenCamera = async () => {
+    if (isNativeQrScannerAvailable()) {
+      try {
+        const payload = await scanQrNative();
+        if (payload) {
+          onScan(payload);
+        }
+        return;
+      } catch (error) {
+        console.warn('Native QR scanner failed, using the web camera:', error);
+        loadJsQR();
+      }
+    }
     setShowCamera(true);
   };
 
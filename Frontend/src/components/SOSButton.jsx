@@ -1,4 +1,5 @@
 import { useState, useEffect, useCallback } from 'react';
+import { useSelector } from 'react-redux';
 import { 
     AlertTriangle, 
     MapPin, 
@@ -15,8 +16,20 @@ import {
 } from 'lucide-react';
 import axios from '../axios';
 import { toast } from 'react-toastify';
+import {
+    isNativeSosAvailable,
+    configureNativeSos,
+    prepareNativeSos,
+    triggerNativeSos,
+    onSosUpdate
+} from '../utils/nativeSos';
+
+// On Android the alert goes out natively with the phone's cached fix,
+// so the buttons don't wait for the WebView's geolocation
+const nativeSos = isNativeSosAvailable();
 
 const SOSButton = () => {
+    const { user } = useSelector(state => state.user);
     const [showModal, setShowModal] = useState(false);
     const [loading, setLoading] = useState(false);
     const [location, setLocation] = useState(null);
@@ -97,6 +110,35 @@ const SOSButton = () => {
         }
     }, [showModal, location, getUserLocation]);
 
+    // Warm the native dispatcher while the patient is still choosing
+    useEffect(() => {
+        if (!showModal || !nativeSos) {
+            return undefined;
+        }
+        // The SMS fallback texts whoever is on the list now, not at login
+        axios.get('/api/v1/emergency-contacts')
+            .then((response) => configureNativeSos({
+                name: user?.name,
+                emergencyContacts: response.data.emergencyContacts
+            }))
+            .catch((e) => console.log('Native SOS configure error:', e));
+        prepareNativeSos().catch((e) => console.log('Native SOS prepare error:', e));
+        // Updates repeat per retry and follow-up fix; toast each outcome once
+        const toasted = new Set();
+        const subscription = onSosUpdate((alert) => {
+            if (alert.state === 'sent' && !toasted.has(`${alert.alertId}:sent`)) {
+                toasted.add(`${alert.alertId}:sent`);
+                toast.success(`SOS delivered in ${(alert.latencyMs / 1000).toFixed(1)}s`);
+            } else if (alert.smsSent && alert.state !== 'sent' && !toasted.has(`${alert.alertId}:sms`)) {
+                toasted.add(`${alert.alertId}:sms`);
+                toast.warn('Server unreachable. Your emergency contacts are being texted.');
+            }
+        });
+        return () => {
+            subscription.then((s) => s.remove());
+        };
+    }, [showModal, user]);
+
     // Countdown timer for SOS
     useEffect(() => {
         if (countdown !== null && countdown > 0) {
@@ -108,7 +150,7 @@ const SOSButton = () => {
     }, [countdown]);
 
     const startSOSCountdown = () => {
-        if (!location) {
+        if (!location && !nativeSos) {
             toast.error('Location is required for SOS');
             return;
         }
@@ -128,6 +170,17 @@ const SOSButton = () => {
                 ? `${emergencyTypes.find(e => e.id === selectedEmergency)?.label}: ${description || 'Emergency SOS triggered'}`
                 : description || 'Emergency SOS triggered';
 
+            if (nativeSos) {
+                await triggerNativeSos({
+                    type: 'sos',
+                    description: emergencyDescription,
+                    severity,
+                    emergencyType: selectedEmergency
+                });
+                setSosTriggered(true);
+                return;
+            }
+
             const response = await axios.post('/emergency/sos', {
                 location,
                 description: emergencyDescription,
@@ -148,7 +201,7 @@ const SOSButton = () => {
     };
 
     const handleAmbulanceRequest = async () => {
-        if (!location) {
+        if (!location && !nativeSos) {
             toast.error('Location is required for ambulance request');
             return;
         }
@@ -156,6 +209,18 @@ const SOSButton = () => {
         setLoading(true);
 
         try {
+            if (nativeSos) {
+                await triggerNativeSos({
+                    type: 'ambulance',
+                    description: description || 'Ambulance requested',
+                    severity,
+                    emergencyType: selectedEmergency
+                });
+                toast.info('Ambulance request sent! Call 108 if you can.', { autoClose: 10000 });
+                setSosTriggered(true);
+                return;
+            }
+
             const response = await axios.post('/emergency/ambulance', {
                 location,
                 description: description || 'Ambulance requested',
@@ -247,7 +312,7 @@ const SOSButton = () => {
                                 
                                 <div className="bg-blue-50 rounded-xl p-4 mb-6">
                                     <p className="text-sm text-blue-800 font-medium mb-2">Your Location:</p>
-                                    <p className="text-sm text-blue-700">{location?.address}</p>
+                                    <p className="text-sm text-blue-700">{location?.address || 'Your live location is being shared'}</p>
                                 </div>
 
                                 <div className="space-y-3">
@@ -437,7 +502,7 @@ const SOSButton = () => {
                                         {activeTab === 'sos' ? (
                                             <button
                                                 onClick={startSOSCountdown}
-                                                disabled={loading || !location}
+                                                disabled={loading || (!location && !nativeSos)}
                                                 className="w-full px-4 py-4 bg-gradient-to-r from-red-600 to-red-700 hover:from-red-700 hover:to-red-800 text-white rounded-xl font-bold text-lg transition-all disabled:opacity-50 disabled:cursor-not-allowed flex items-center justify-center gap-2 shadow-lg shadow-red-500/30"
                                             >
                                                 {loading ? (
@@ -450,7 +515,7 @@ const SOSButton = () => {
                                         ) : (
                                             <button
                                                 onClick={handleAmbulanceRequest}
-                                                disabled={loading || !location}
+                                                disabled={loading || (!location && !nativeSos)}
                                                 className="w-full px-4 py-4 bg-gradient-to-r from-blue-600 to-blue-700 hover:from-blue-700 hover:to-blue-800 text-white rounded-xl font-bold text-lg transition-all disabled:opacity-50 disabled:cursor-not-allowed flex items-center justify-center gap-2 shadow-lg shadow-blue-500/30"
                                             >
                                                 {loading ? (
@@ -2,6 +2,7 @@ import React, { useState, useEffect } from 'react';
 import { Users, Eye, Calendar, FileText, Phone, Mail, Search } from 'lucide-react';
 import axios from '../axios';
 import { toast } from 'react-toastify';
+import { viewDocument, prefetchDocuments } from '../utils/documentStore';
 
 const TreatedPatients = ({ doctorId }) => {
     const [patients, setPatients] = useState([]);
@@ -32,6 +33,8 @@ const TreatedPatients = ({ doctorId }) => {
             const { data } = await axios.get(`/patient/${patientId}/complete-details`);
             setSelectedPatient(data.patient);
             setShowPatientModal(true);
+            // Downloaded while the rest of the history is read, so they open without waiting
+            prefetchDocuments((data.patient.medicalDocuments || []).map(doc => doc.url)).catch(() => {});
         } catch (error) {
             console.error('Error fetching patient details:', error);
             toast.error('Failed to load patient details');
@@ -210,14 +213,12 @@ const TreatedPatients = ({ doctorId }) => {
                                                         <p className="text-xs text-gray-500">{formatDate(doc.uploadedAt)}</p>
                                                     </div>
                                                 </div>
-                                                <a
-                                                    href={doc.url}
-                                                    target="_blank"
-                                                    rel="noopener noreferrer"
+                                                <button
+                                                    onClick={() => viewDocument(doc.url).catch(() => toast.error('Failed to open document'))}
                                                     className="text-blue-600 hover:text-blue-700"
                                                 >
                                                     <Eye className="w-5 h-5" />
-                                                </a>
+                                                </button>
                                             </div>
                                         ))}
                                     </div>
@@ -3,6 +3,7 @@ import { useSelector } from 'react-redux';
 import io from 'socket.io-client';
 import VideoCallNotification from './VideoCallNotification';
 import { toast } from 'react-toastify';
+import { isCallSignalAvailable, socketAuthToken, startCallSignalling } from '../utils/callSignal';
 
 const VideoCallNotificationListener = () => {
   const { user, isAuthenticated } = useSelector((state) => state.user);
@@ -14,6 +15,15 @@ const VideoCallNotificationListener = () => {
       return;
     }
 
+    // The native service rings with a full-screen notification even when the
+    // WebView is gone, so the page doesn't ring a second time
+    const nativeRinging = isCallSignalAvailable();
+    if (nativeRinging) {
+      startCallSignalling(user).catch((error) => {
+        console.error('Failed to start native call signalling:', error);
+      });
+    }
+
     // Connect to Socket.IO server for notifications
     // Use the main backend server (port 4000) which has Socket.IO built-in
     const hostname = window.location.hostname;
@@ -28,11 +38,8 @@ const VideoCallNotificationListener = () => {
       reconnectionAttempts: 5,
       secure: true,
       rejectUnauthorized: false, // Allow self-signed certificates for localhost
-      query: {
-        userId: user._id,
-        userName: user.name,
-        userRole: user.role
-      }
+      // The backend reads who this is from the token and joins the user's room
+      auth: { token: socketAuthToken() }
     });
 
     newSocket.on('connect', () => {
@@ -52,6 +59,21 @@ const VideoCallNotificationListener = () => {
       }
     });
 
+    // A doctor calling this user directly
+    newSocket.on('incoming-call', (data) => {
+      if (nativeRinging || window.location.pathname.includes('/video-room')) {
+        return;
+      }
+      setNotification(data);
+      toast.info(`${data.callerName} is calling you`, {
+        autoClose: 3000
+      });
+    });
+
+    newSocket.on('call-cancelled', ({ callId }) => {
+      setNotification((current) => (current?.callId === callId ? null : current));
+    });
+
     newSocket.on('disconnect', () => {
       console.log('❌ Disconnected from notification server');
     });
@@ -1,16 +1,61 @@
-import { useState, useEffect, useCallback } from 'react';
+import { useState, useEffect, useCallback, useRef } from 'react';
 import axios from '../axios';
 import { toast } from 'react-toastify';
 import smartwatchService from '../services/smartwatchService';
+import nativeVitals from '../utils/nativeVitals';
+import readingJournal from '../utils/readingJournal';
+import healthRules from '../utils/healthRules';
+
+// On Android the native plugin owns the GATT connection and batches samples
+const nativeMode = nativeVitals.isNativeVitalsAvailable();
+
+// Readings the device already alerted on; the server's later verdict on them isn't toasted twice
+const deviceAlerted = new Set();
+const MAX_DEVICE_ALERTED = 200;
+
+const showDeviceAlert = (alert) => {
+    deviceAlerted.add(healthRules.alertKey(alert.type, alert.timestamp));
+    if (deviceAlerted.size > MAX_DEVICE_ALERTED) {
+        deviceAlerted.delete(deviceAlerted.values().next().value);
+    }
+    if (alert.severity === 'critical') {
+        toast.error(alert.message, { autoClose: false });
+    } else {
+        toast.warning(alert.message);
+    }
+};
+
+const showBulkAlerts = (alerts) => {
+    if (!alerts || alerts.length === 0) {
+        return;
+    }
+    alerts.forEach(alert => {
+        if (alert.timestamp && deviceAlerted.has(healthRules.alertKey(alert.type, alert.timestamp))) {
+            return;
+        }
+        if (alert.severity === 'critical') {
+            toast.error(alert.message, { autoClose: false });
+        } else {
+            toast.warning(alert.message);
+        }
+    });
+};
 
 export const useHealthMonitoring = () => {
     const [isConnected, setIsConnected] = useState(false);
     const [device, setDevice] = useState(null);
     const [latestReadings, setLatestReadings] = useState({});
     const [isMonitoring, setIsMonitoring] = useState(false);
+    const stopNativeRef = useRef(null);
+    const offConnectionRef = useRef(null);
 
     // Check connection status
     useEffect(() => {
+        // The native plugin reports its own connection state
+        if (nativeMode) {
+            return;
+        }
+
         const checkConnection = () => {
             const connected = smartwatchService.isConnected();
             setIsConnected(connected);
@@ -27,10 +72,74 @@ export const useHealthMonitoring = () => {
         return () => clearInterval(interval);
     }, []);
 
+    // Native journal uploads in the background; surface its alerts here
+    useEffect(() => {
+        if (!readingJournal.isReadingJournalAvailable()) {
+            return;
+        }
+
+        const unsubscribers = [];
+        const configured = readingJournal.configureReadingJournal();
+        configured
+            .then(() => readingJournal.onReadingJournalEvents({ onAlerts: showBulkAlerts }))
+            .then((off) => { unsubscribers.push(off); })
+            .catch((error) => console.error('Reading journal setup error:', error));
+
+        // Thresholds are checked on the device too, so critical readings alert without a round trip.
+        // The snapshot sync uses the base URL and token the journal was just configured with.
+        if (healthRules.isHealthRulesAvailable()) {
+            healthRules.onHealthAlert(showDeviceAlert)
+                .then((off) => { unsubscribers.push(off); })
+                .then(() => configured)
+                .then(() => healthRules.syncHealthRules())
+                .catch((error) => console.error('Health rules setup error:', error));
+        }
+
+        return () => {
+            unsubscribers.forEach((off) => off());
+        };
+    }, []);
+
+    // Stop following the native connection; on disconnect and unmount
+    const stopConnectionListener = useCallback(() => {
+        if (offConnectionRef.current) {
+            offConnectionRef.current.then((off) => off()).catch(() => {});
+            offConnectionRef.current = null;
+        }
+    }, []);
+
+    useEffect(() => stopConnectionListener, [stopConnectionListener]);
+
+    // A dropped GATT connection doesn't come back by itself; show it and let the user reconnect
+    const onNativeConnectionChange = useCallback(({ connected }) => {
+        setIsConnected(connected);
+        if (connected) {
+            return;
+        }
+        if (stopNativeRef.current) {
+            stopNativeRef.current().catch((error) => console.error('Stop monitoring error:', error));
+            stopNativeRef.current = null;
+        }
+        setIsMonitoring(false);
+        toast.error('Smartwatch disconnected. Connect again to resume monitoring');
+    }, []);
+
     // Connect to smartwatch
     const connect = useCallback(async () => {
         try {
-            const deviceInfo = await smartwatchService.connect();
+            let deviceInfo;
+            if (nativeMode) {
+                const found = await nativeVitals.findVitalsDevice();
+                if (!found) {
+                    throw new Error('No smartwatch found nearby');
+                }
+                stopConnectionListener();
+                offConnectionRef.current = nativeVitals.onVitalsConnectionChange(onNativeConnectionChange);
+                await nativeVitals.connectVitalsDevice(found.address);
+                deviceInfo = { name: found.name, id: found.address, connected: true };
+            } else {
+                deviceInfo = await smartwatchService.connect();
+            }
             setDevice(deviceInfo);
             setIsConnected(true);
             toast.success(`Connected to ${deviceInfo.name}`);
@@ -40,12 +149,22 @@ export const useHealthMonitoring = () => {
             toast.error('Failed to connect to smartwatch');
             throw error;
         }
-    }, []);
+    }, [stopConnectionListener, onNativeConnectionChange]);
 
     // Disconnect from smartwatch
     const disconnect = useCallback(async () => {
         try {
-            await smartwatchService.disconnect();
+            if (nativeMode) {
+                if (stopNativeRef.current) {
+                    await stopNativeRef.current();
+                    stopNativeRef.current = null;
+                }
+                // Before disconnecting, so our own disconnect isn't reported as a drop
+                stopConnectionListener();
+                await nativeVitals.disconnectVitalsDevice();
+            } else {
+                await smartwatchService.disconnect();
+            }
             setDevice(null);
             setIsConnected(false);
             setIsMonitoring(false);
@@ -54,7 +173,7 @@ export const useHealthMonitoring = () => {
             console.error('Disconnect error:', error);
             toast.error('Failed to disconnect');
         }
-    }, []);
+    }, [stopConnectionListener]);
 
     // Start real-time monitoring
     const startMonitoring = useCallback(async () => {
@@ -64,6 +183,36 @@ export const useHealthMonitoring = () => {
         }
 
         try {
+            if (nativeMode) {
+                // One state update and one bulk upload per window instead of per sample;
+                // the samples themselves stay on the device
+                stopNativeRef.current = await nativeVitals.startVitalsMonitoring((batch) => {
+                    const summary = batch.summary || {};
+                    setLatestReadings(prev => ({
+                        ...prev,
+                        ...(batch.heartRate && { heart_rate: Math.round(summary.heartRate?.mean ?? batch.heartRate.mean) }),
+                        ...(summary.heartRate?.trend && { heart_rate_trend: summary.heartRate.trend }),
+                        ...(summary.hrv?.rmssd !== undefined && { hrv: { rmssd: summary.hrv.rmssd, sdnn: summary.hrv.sdnn } }),
+                        ...(batch.bloodPressure && {
+                            blood_pressure: {
+                                systolic: batch.bloodPressure.systolic.at(-1),
+                                diastolic: batch.bloodPressure.diastolic.at(-1)
+                            }
+                        }),
+                        ...(batch.temperature && { temperature: batch.temperature.values.at(-1) })
+                    }));
+
+                    sendReadings(nativeVitals.batchToReadings(batch, {
+                        deviceType: 'other',
+                        deviceModel: device?.name || 'Unknown',
+                        deviceId: device?.id
+                    }));
+                }, { detail: false });
+                setIsMonitoring(true);
+                toast.success('Monitoring started');
+                return;
+            }
+
             await smartwatchService.startHeartRateMonitoring((data) => {
                 setLatestReadings(prev => ({
                     ...prev,
@@ -80,11 +229,18 @@ export const useHealthMonitoring = () => {
             console.error('Monitoring error:', error);
             toast.error('Failed to start monitoring');
         }
-    }, [isConnected]);
+    }, [isConnected, device]);
 
     // Stop monitoring
     const stopMonitoring = useCallback(() => {
-        smartwatchService.stopHeartRateMonitoring();
+        if (nativeMode) {
+            if (stopNativeRef.current) {
+                stopNativeRef.current();
+                stopNativeRef.current = null;
+            }
+        } else {
+            smartwatchService.stopHeartRateMonitoring();
+        }
         setIsMonitoring(false);
         toast.info('Monitoring stopped');
     }, []);
@@ -108,15 +264,7 @@ export const useHealthMonitoring = () => {
                     toast.success(`Synced ${response.data.count} readings`);
 
                     // Check for alerts
-                    if (response.data.alerts && response.data.alerts.length > 0) {
-                        response.data.alerts.forEach(alert => {
-                            if (alert.severity === 'critical') {
-                                toast.error(alert.message, { autoClose: false });
-                            } else {
-                                toast.warning(alert.message);
-                            }
-                        });
-                    }
+                    showBulkAlerts(response.data.alerts);
 
                     return response.data;
                 }
@@ -130,20 +278,49 @@ export const useHealthMonitoring = () => {
         }
     }, [isConnected]);
 
+    // Send a window of readings in one request
+    const sendReadings = useCallback(async (readings) => {
+        if (readings.length === 0) {
+            return;
+        }
+
+        try {
+            // The native journal survives going offline and uploads in large batches
+            if (readingJournal.isReadingJournalAvailable()) {
+                return await readingJournal.queueReadings(readings);
+            }
+
+            const response = await axios.post('/api/v1/health/readings/bulk', { readings });
+            showBulkAlerts(response.data.alerts);
+            return response.data;
+        } catch (error) {
+            console.error('Send readings error:', error);
+        }
+    }, []);
+
     // Send single reading
     const sendReading = useCallback(async (type, value) => {
+        const reading = {
+            type,
+            value,
+            timestamp: new Date(),
+            source: {
+                deviceType: 'other',
+                deviceModel: device?.name || 'Unknown',
+                deviceId: device?.id
+            }
+        };
+
+        // Alerts through the healthAlert listener before the request even leaves
+        if (healthRules.isHealthRulesAvailable()) {
+            healthRules.checkReadings([reading])
+                .catch((error) => console.error('Local rule check error:', error));
+        }
+
         try {
-            const response = await axios.post('/api/v1/health/reading', {
-                type,
-                value,
-                source: {
-                    deviceType: 'other',
-                    deviceModel: device?.name || 'Unknown',
-                    deviceId: device?.id
-                }
-            });
+            const response = await axios.post('/api/v1/health/reading', reading);
 
-            if (response.data.alert) {
+            if (response.data.alert && !deviceAlerted.has(healthRules.alertKey(type, reading.timestamp))) {
                 const alert = response.data.alert;
                 if (alert.severity === 'critical') {
                     toast.error(alert.message, { autoClose: false });
@@ -163,6 +340,12 @@ export const useHealthMonitoring = () => {
             return response.data;
         } catch (error) {
             console.error('Send reading error:', error);
+
+            // Keep the reading for a later bulk upload instead of dropping it
+            if (readingJournal.isReadingJournalAvailable()) {
+                readingJournal.queueReadings([reading])
+                    .catch((queueError) => console.error('Queue reading error:', queueError));
+            }
         }
     }, [device]);
 
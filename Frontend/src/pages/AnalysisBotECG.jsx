@@ -9,6 +9,8 @@ import Disclaimer from '../components/Disclaimer';
 import { useSelector, useDispatch } from 'react-redux';
 import { addMedicalHistory } from "./../actions/userActions";
 import { useNavigate } from 'react-router-dom';
+import { confirmImageQuality } from '../utils/imageQuality';
+import { uploadToCloudinaryInBackground } from '../utils/mediaUpload';
 
 function AnalysisBotECG() {
     const dispatch = useDispatch();
@@ -51,6 +53,9 @@ function AnalysisBotECG() {
 
     // Function to upload image to Cloudinary
     const uploadToCloudinary = async (file) => {
+        const backgroundUrl = await uploadToCloudinaryInBackground(file, { preset: 'sachin' });
+        if (backgroundUrl) return backgroundUrl;
+
         const formData = new FormData();
         formData.append('file', file);
         formData.append('upload_preset', 'sachin');
@@ -76,6 +81,7 @@ function AnalysisBotECG() {
                 reader.onloadend = () => setSelectedImage(reader.result);
                 reader.readAsDataURL(file);
 
+                if (!(await confirmImageQuality(file, 'ecg'))) return;
                 const cloudinaryUrl = await uploadToCloudinary(file);
                 await analyzeImage(cloudinaryUrl);
             } catch (error) {
@@ -3,6 +3,12 @@ import { useNavigate, useSearchParams } from 'react-router-dom';
 import { toast } from 'react-toastify';
 import axios from '../axios';
 import SearchBar from '../components/SearchBar';
+import {
+    isMedicineCatalogAvailable,
+    syncMedicineCatalog,
+    searchMedicineCatalog,
+    getMedicineCatalogCategories
+} from '../utils/medicineCatalog';
 
 const MedicineCatalog = () => {
     const navigate = useNavigate();
@@ -32,6 +38,9 @@ const MedicineCatalog = () => {
         fetchCategories();
         fetchMedicines();
         loadCart();
+        if (isMedicineCatalogAvailable()) {
+            syncMedicineCatalog().catch((error) => console.warn('Medicine catalog sync failed:', error));
+        }
     }, []);
 
     useEffect(() => {
@@ -52,6 +61,13 @@ const MedicineCatalog = () => {
 
     const fetchCategories = async () => {
         try {
+            if (isMedicineCatalogAvailable()) {
+                const local = await getMedicineCatalogCategories();
+                if (local.length > 0) {
+                    setCategories(local);
+                    return;
+                }
+            }
             const response = await axios.get('/medicines/categories');
             setCategories(response.data.categories);
         } catch (error) {
@@ -59,26 +75,42 @@ const MedicineCatalog = () => {
         }
     };
 
+    // The on-device catalog once it has synced at least once; null sends the search to the server
+    const searchOnDevice = async () => {
+        if (!isMedicineCatalogAvailable()) return null;
+        try {
+            const result = await searchMedicineCatalog(filters, pagination.page, 20);
+            return result.syncedAt > 0 ? result : null;
+        } catch (error) {
+            console.warn('On-device catalog search failed:', error);
+            return null;
+        }
+    };
+
     const fetchMedicines = async () => {
         try {
             setLoading(true);
-            const params = new URLSearchParams();
-            
-            Object.entries(filters).forEach(([key, value]) => {
-                if (value && value !== 'all') {
-                    params.append(key, value);
-                }
-            });
-            
-            params.append('page', pagination.page);
-            params.append('limit', 20);
+            let data = await searchOnDevice();
+            if (!data) {
+                const params = new URLSearchParams();
 
-            const response = await axios.get(`/medicines?${params}`);
-            setMedicines(response.data.medicines);
+                Object.entries(filters).forEach(([key, value]) => {
+                    if (value && value !== 'all') {
+                        params.append(key, value);
+                    }
+                });
+
+                params.append('page', pagination.page);
+                params.append('limit', 20);
+
+                const response = await axios.get(`/medicines?${params}`);
+                data = response.data;
+            }
+            setMedicines(data.medicines);
             setPagination({
                 ...pagination,
-                totalPages: response.data.pagination.pages,
-                total: response.data.pagination.total
+                totalPages: data.pagination.pages,
+                total: data.pagination.total
             });
         } catch (error) {
             toast.error('Failed to fetch medicines');
@@ -4,8 +4,13 @@ import { analyzeMedicalImage, simplifyMedicalAnalysis } from "../utils/aiService
 import jsPDF from 'jspdf';
 import 'jspdf-autotable';
 import { useNavigate } from "react-router-dom";
+import { confirmImageQuality } from "../utils/imageQuality";
+import { uploadToCloudinaryInBackground } from "../utils/mediaUpload";
 
 const uploadToCloudinary = async (file) => {
+    const backgroundUrl = await uploadToCloudinaryInBackground(file, { preset: "teleconnect" });
+    if (backgroundUrl) return backgroundUrl;
+
     const formData = new FormData();
     formData.append("file", file);
     formData.append("upload_preset", "teleconnect");
@@ -135,6 +140,7 @@ export default function Retinopathy() {
 
     const handleUploadAndAnalyze = async () => {
         if (!selectedImage) return;
+        if (!(await confirmImageQuality(selectedImage, 'retina'))) return;
 
         setIsAnalyzing(true);
         setAnalysis(null);
@@ -17,6 +17,8 @@ import { addMedicalHistory } from '../actions/userActions';
 import Disclaimer from '../components/Disclaimer';
 import { analyzeMedicalImage, simplifyMedicalAnalysis } from '../utils/aiService';
 import AnalysisResults from '../components/AnalysisResults';
+import { confirmImageQuality } from '../utils/imageQuality';
+import { uploadToCloudinaryInBackground } from '../utils/mediaUpload';
 
 function SpecificAnalysis() {
   const dispatch = useDispatch();
@@ -70,6 +72,7 @@ function SpecificAnalysis() {
 
   const handleUploadAndAnalyze = async () => {
     if (!selectedImage) return;
+    if (!(await confirmImageQuality(selectedImage, 'generic'))) return;
 
     setIsAnalyzing(true);
     try {
@@ -121,6 +124,14 @@ function SpecificAnalysis() {
       const isVideo = (file.type || '').startsWith('video/');
       const resourceType = isVideo ? 'video' : 'image';
 
+      const backgroundUrl = await uploadToCloudinaryInBackground(file, {
+        preset: 'sachin',
+        folder: 'teleconnect/specific-analysis',
+        resourceType,
+        cloudName: CLOUD_NAME,
+      });
+      if (backgroundUrl) return backgroundUrl;
+
       const response = await axios.post(
         `https://api.cloudinary.com/v1_1/${CLOUD_NAME}/${resourceType}/upload`,
         formData
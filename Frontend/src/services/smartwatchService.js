@@ -100,8 +100,7 @@ class SmartwatchService {
             await characteristic.startNotifications();
             
             const listener = (event) => {
-                const value = event.target.value;
-                const heartRate = value.getUint8(1);
+                const heartRate = this.parseHeartRate(event.target.value);
                 callback({ type: 'heart_rate', value: heartRate });
             };
 
@@ -115,6 +114,12 @@ class SmartwatchService {
         }
     }
 
+    // Heart rate is uint8 or uint16 depending on bit 0 of the flags byte
+    parseHeartRate(value) {
+        const flags = value.getUint8(0);
+        return (flags & 0x01) ? value.getUint16(1, true) : value.getUint8(1);
+    }
+
     // Read heart rate once
     async readHeartRate() {
         if (!this.services.heartRate) {
@@ -124,7 +129,7 @@ class SmartwatchService {
         try {
             const characteristic = await this.services.heartRate.getCharacteristic('heart_rate_measurement');
             const value = await characteristic.readValue();
-            const heartRate = value.getUint8(1);
+            const heartRate = this.parseHeartRate(value);
             
             return {
                 type: 'heart_rate',
@@ -0,0 +1,88 @@
+/**
+ * Native API response cache (ApiCachePlugin)
+ * On Android, catalog GETs (medicines, doctors, pharmacies) are answered
+ * from an on-disk stale-while-revalidate cache before they reach the
+ * network. Responses carry an X-Cureon-Cache header (hit, stale,
+ * revalidated, miss or stale-if-error). On the web these calls do nothing.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const ApiCache = registerPlugin('ApiCache');
+
+export const isApiCacheAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('ApiCache');
+
+/**
+ * Tell the native cache which origin serves the API
+ * @param {string} apiBaseUrl - e.g. API_BASE_URL
+ */
+export const configureApiCache = async (apiBaseUrl) => {
+  if (!isApiCacheAvailable() || !apiBaseUrl) return;
+  try {
+    await ApiCache.configure({ origins: [new URL(apiBaseUrl).origin] });
+  } catch (error) {
+    console.warn('Failed to configure API cache:', error);
+  }
+};
+
+/**
+ * Hit/miss/byte counters since the app started
+ * @returns {Promise<{hits: number, staleHits: number, misses: number, revalidations: number,
+ *   notModified: number, errors: number, evictions: number, bytesFromCache: number,
+ *   bytesFromNetwork: number, entries: number, storedBytes: number}|null>}
+ */
+export const getApiCacheStats = async () => {
+  if (!isApiCacheAvailable()) return null;
+  return ApiCache.getStats();
+};
+
+/**
+ * Forget cached responses after changing the data behind them
+ * @param {string} prefix - absolute URL prefix, e.g. `${API_BASE_URL}/api/v1/medicines`
+ */
+export const invalidateApiCache = async (prefix) => {
+  if (!isApiCacheAvailable()) return 0;
+  try {
+    const { removed } = await ApiCache.invalidate({ prefix });
+    return removed;
+  } catch (error) {
+    console.warn('Failed to invalidate API cache:', error);
+    return 0;
+  }
+};
+
+// Writes that change cached catalog data, and the API paths they make stale.
+// '/medicine' covers /medicines, /medicines/featured, /medicines/categories and /medicine/:id.
+const CATALOG_WRITES = [
+  [/^\/pharmacy\/medicine/, ['/medicine']],
+  [/^\/pharmacy\/(register|quick-setup|my)/, ['/pharmacies', '/medicine']],
+  [/^\/admin\/pharmacy\//, ['/pharmacies', '/medicine']],
+  // Orders and dispensing change stock
+  [/^\/orders/, ['/medicine']],
+  [/^\/prescription\/[^/]+\/dispense/, ['/medicine']],
+];
+
+/**
+ * Invalidate whatever a successful write made stale
+ * @param {string} apiBaseUrl - the instance's baseURL, e.g. `${API_BASE_URL}/api/v1`
+ * @param {string} method
+ * @param {string} path - the request's url, relative to apiBaseUrl
+ */
+export const invalidateAfterWrite = (apiBaseUrl, method, path) => {
+  if (!isApiCacheAvailable() || !path || /^(get|head|options)$/i.test(method || 'get')) return;
+  const match = CATALOG_WRITES.find(([pattern]) => pattern.test(path));
+  if (!match) return;
+  match[1].forEach((prefix) => invalidateApiCache(`${apiBaseUrl}${prefix}`));
+};
+
+/** Drop every cached response, e.g. on logout */
+export const clearApiCache = async () => {
+  if (!isApiCacheAvailable()) return;
+  try {
+    await ApiCache.clear();
+  } catch (error) {
+    console.warn('Failed to clear API cache:', error);
+  }
+};
@@ -0,0 +1,139 @@
+/**
+ * Binary channel to the native side (BlobChannelPlugin)
+ * Moves images, frames and videos as raw bytes instead of base64 strings:
+ * native blobs are read with fetch('/_blob/<id>'), and page blobs are
+ * streamed to native as ArrayBuffer chunks over window.CureonBlob.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const BlobChannel = registerPlugin('BlobChannel');
+
+const CHUNK_BYTES = 1024 * 1024;
+// Chunks posted but not yet written natively; bounds memory on both sides
+const CHUNKS_IN_FLIGHT = 4;
+
+export const isBlobChannelAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('BlobChannel');
+
+/** True when the WebView can post ArrayBuffers to native (recent System WebView only) */
+export const canUploadBlobs = () => isBlobChannelAvailable() && !!window.CureonBlob;
+
+/**
+ * Read a native blob into the page
+ * @param {{url: string}} handle - handle returned by a native plugin
+ * @returns {Promise<Blob>}
+ */
+export const fetchBlob = async (handle) => {
+  const response = await fetch(handle.url);
+  if (!response.ok) {
+    throw new Error(`Blob ${handle.id} is no longer available (${response.status})`);
+  }
+  return response.blob();
+};
+
+/**
+ * Release a native blob; its URL stops working afterwards
+ * @param {{id: string}|string} handle
+ */
+export const freeBlob = async (handle) => {
+  const id = typeof handle === 'string' ? handle : handle?.id;
+  if (!id || !isBlobChannelAvailable()) return;
+  try {
+    await BlobChannel.free({ id });
+  } catch (error) {
+    console.warn('Failed to free blob:', error);
+  }
+};
+
+const transfers = new Map();
+let nextTx = 1;
+let listening = false;
+let queue = Promise.resolve();
+
+const listen = () => {
+  if (listening) return;
+  listening = true;
+  window.CureonBlob.addEventListener('message', (event) => {
+    const reply = JSON.parse(event.data);
+    const transfer = transfers.get(reply.tx);
+    if (!transfer) return;
+    if (reply.written !== undefined) {
+      transfer.written = reply.written;
+    } else if (reply.error) {
+      transfer.error = new Error(reply.error);
+      transfers.delete(reply.tx);
+      transfer.reject(transfer.error);
+    } else {
+      transfers.delete(reply.tx);
+      transfer.resolve(reply);
+    }
+    transfer.wake?.();
+  });
+};
+
+const waitForAck = (transfer, bytes) => new Promise((resolve) => {
+  const check = () => {
+    if (transfer.error || transfer.written >= bytes) {
+      transfer.wake = null;
+      resolve();
+    }
+  };
+  transfer.wake = check;
+  check();
+});
+
+const send = async (blob, mimeType) => {
+  listen();
+  const channel = window.CureonBlob;
+  const tx = nextTx++;
+  const transfer = { written: 0, error: null, wake: null };
+  const done = new Promise((resolve, reject) => {
+    transfer.resolve = resolve;
+    transfer.reject = reject;
+  });
+  // Failures mid-stream are reported through the returned promise
+  done.catch(() => {});
+  transfers.set(tx, transfer);
+
+  channel.postMessage(JSON.stringify({ op: 'begin', tx, type: mimeType }));
+  try {
+    for (let offset = 0; offset < blob.size && !transfer.error; offset += CHUNK_BYTES) {
+      await waitForAck(transfer, offset - CHUNKS_IN_FLIGHT * CHUNK_BYTES);
+      channel.postMessage(await blob.slice(offset, offset + CHUNK_BYTES).arrayBuffer());
+    }
+  } catch (error) {
+    channel.postMessage(JSON.stringify({ op: 'abort', tx }));
+    transfers.delete(tx);
+    throw error;
+  }
+  if (!transfer.error) {
+    channel.postMessage(JSON.stringify({ op: 'end', tx }));
+  }
+  return done;
+};
+
+/**
+ * Stream a page Blob or File to native storage without base64
+ * @param {Blob} blob
+ * @param {string} mimeType - defaults to blob.type
+ * @returns {Promise<{id: string, url: string, size: number, mimeType: string}>} native handle; free it when done
+ */
+export const uploadBlob = (blob, mimeType = blob.type || 'application/octet-stream') => {
+  if (!canUploadBlobs()) {
+    return Promise.reject(new Error('Blob uploads are not supported by this WebView'));
+  }
+  // One transfer at a time: chunks carry no id, so the channel must not interleave
+  const result = queue.then(() => send(blob, mimeType));
+  queue = result.catch(() => {});
+  return result;
+};
+
+/**
+ * Expose a native file path (e.g. from the Camera plugin) as a blob handle
+ * @param {string} path
+ * @param {string} mimeType
+ */
+export const registerNativeFile = (path, mimeType) =>
+  BlobChannel.registerFile({ path, mimeType });
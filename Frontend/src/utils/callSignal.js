@@ -0,0 +1,75 @@
+/**
+ * Native incoming calls (CallSignalPlugin)
+ * On Android a foreground service keeps one lightweight socket to the backend
+ * and rings with a full-screen notification, so a call can be answered from
+ * the lock screen straight into the native Zego activity without waking the
+ * WebView. Elsewhere the web listener rings as before.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import io from 'socket.io-client';
+import { SOCKET_URL } from '../config/api.config';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const CallSignal = registerPlugin('CallSignal');
+
+export const isCallSignalAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('CallSignal');
+
+/** The login JWT; the backend only puts sockets that send one in their user's room */
+export const socketAuthToken = () => {
+  const token = localStorage.getItem('token');
+  return token ? token.replace(/^"(.*)"$/, '$1') : null;
+};
+
+/**
+ * Ring for this user even while the app is closed; call again after login
+ * @param {{_id: string, name?: string, role?: string}} user
+ */
+export const startCallSignalling = (user) =>
+  CallSignal.start({
+    url: SOCKET_URL,
+    token: socketAuthToken(),
+    userId: user._id,
+    userName: user.name || '',
+    userRole: user.role || 'user',
+  });
+
+/** On logout, so the device stops ringing for the previous user */
+export const stopCallSignalling = () => CallSignal.stop();
+
+export const getCallSignalStatus = () => CallSignal.getStatus();
+
+/**
+ * Ring the callee's devices: the Android service and any open web sessions.
+ * The backend names the caller from the login token, not from the invite.
+ * @param {object} invite - calleeId, roomId, callId, isVideoCall
+ * @returns {Promise<{success: boolean, callId?: string, delivered: number}>}
+ */
+export const sendCallInvite = (invite) =>
+  new Promise((resolve) => {
+    const socket = io(SOCKET_URL, {
+      transports: ['websocket', 'polling'],
+      reconnection: false,
+      auth: { token: socketAuthToken() },
+    });
+    const done = (result) => {
+      clearTimeout(timer);
+      socket.disconnect();
+      resolve(result);
+    };
+    const timer = setTimeout(() => done({ success: false, delivered: 0 }), 5000);
+    socket.on('connect', () => {
+      socket.emit('call-invite', invite, (ack) => done(ack || { success: false, delivered: 0 }));
+    });
+    socket.on('connect_error', () => done({ success: false, delivered: 0 }));
+  });
+
+export default {
+  isCallSignalAvailable,
+  socketAuthToken,
+  startCallSignalling,
+  stopCallSignalling,
+  getCallSignalStatus,
+  sendCallInvite,
+};
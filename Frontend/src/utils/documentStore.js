@@ -0,0 +1,82 @@
+/**
+ * Medical document store (DocumentStorePlugin)
+ * On Android, X-rays, PDFs and scans are downloaded once into an on-device
+ * store. Downloads resume after a dropped connection, and documents open
+ * from disk after that. A patient's own records are pinned so they are
+ * never evicted. Elsewhere documents open in a new tab as before.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const DocumentStore = registerPlugin('DocumentStore');
+
+export const isDocumentStoreAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('DocumentStore');
+
+/**
+ * Show a document in the device's viewer, downloading it first unless it
+ * is stored already; opens it in a new tab where there is no native store
+ * @param {string} url - e.g. the Cloudinary secure_url
+ * @param {{pin?: boolean, sha256?: string}} options - pin for the patient's own records
+ */
+export const viewDocument = async (url, options = {}) => {
+  if (!isDocumentStoreAvailable()) {
+    window.open(url, '_blank');
+    return { success: true, cached: false };
+  }
+  return DocumentStore.view({ url, ...options });
+};
+
+/**
+ * A handle for showing the document inside the page (img src, iframe, fetch)
+ * @returns {Promise<{id: string, url: string, size: number, mimeType: string,
+ *   sha256: string, cached: boolean, pinned: boolean}>}
+ */
+export const openDocument = (url, options = {}) => DocumentStore.open({ url, ...options });
+
+/**
+ * Download in the background, e.g. a patient's history before a consult;
+ * each reports through onDocumentReady
+ * @param {string[]} urls
+ */
+export const prefetchDocuments = (urls, pin = false) => {
+  if (!isDocumentStoreAvailable() || !urls.length) return Promise.resolve({ queued: 0 });
+  return DocumentStore.prefetch({ urls, pin });
+};
+
+/**
+ * Make exactly these stored documents pinned, e.g. after the patient deletes one
+ * @param {string[]} urls
+ */
+export const pinOnlyDocuments = (urls) => DocumentStore.pinOnly({ urls });
+
+/** @returns {Promise<{documents: number, files: number, bytes: number, pinnedBytes: number, maxBytes: number}>} */
+export const getDocumentStoreStatus = (url) => DocumentStore.getStatus(url ? { url } : {});
+
+/** Delete every stored document; on logout, as they are the signed-in user's */
+export const clearDocuments = () => DocumentStore.clear();
+
+/**
+ * @param {(progress: {url: string, bytes: number, total: number}) => void} callback - total is -1 if unknown
+ * @returns {Promise<{remove: () => Promise<void>}>}
+ */
+export const onDocumentProgress = (callback) => DocumentStore.addListener('documentProgress', callback);
+
+/**
+ * @param {(event: {url: string, sha256: string, cached: boolean, pinned: boolean}) => void} callback
+ * @returns {Promise<{remove: () => Promise<void>}>}
+ */
+export const onDocumentReady = (callback) => DocumentStore.addListener('documentReady', callback);
+
+export default {
+  isDocumentStoreAvailable,
+  viewDocument,
+  openDocument,
+  prefetchDocuments,
+  pinOnlyDocuments,
+  getDocumentStoreStatus,
+  clearDocuments,
+  onDocumentProgress,
+  onDocumentReady,
+};
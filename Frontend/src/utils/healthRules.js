@@ -0,0 +1,52 @@
+/**
+ * On-device health threshold alerts (HealthRulesPlugin)
+ * The patient's thresholds are downloaded as a compact rule snapshot and
+ * checked natively against every reading as it arrives. Critical hits raise a
+ * high-priority Android notification at once; the server still re-checks each
+ * uploaded reading and stays in charge of SOS.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const HealthRules = registerPlugin('HealthRules');
+
+export const isHealthRulesAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('HealthRules');
+
+/**
+ * Fetch the latest rule snapshot (a 304 when nothing changed).
+ * Needs the reading journal configured first, for the base URL and token.
+ * @returns {Promise<{ready: boolean, version?: number, ruleCount?: number}>}
+ */
+export const syncHealthRules = () => HealthRules.sync();
+
+export const getHealthRulesStatus = () => HealthRules.getStatus();
+
+/**
+ * Check readings that aren't queued through the journal
+ * @param {Array<object>} readings - Same shape as the readings endpoints
+ * @returns {Promise<Array<{type: string, timestamp: number, severity: string, message: string}>>}
+ */
+export const checkReadings = async (readings) => (await HealthRules.check({ readings })).alerts || [];
+
+/**
+ * Subscribe to alerts raised on the device
+ * @returns {Promise<() => Promise<void>>} Unsubscribe function
+ */
+export const onHealthAlert = async (callback) => {
+  const handle = await HealthRules.addListener('healthAlert', callback);
+  return () => handle.remove();
+};
+
+/** Identifies a reading across the device and server alerts for it */
+export const alertKey = (type, timestamp) => `${type}@${new Date(timestamp).getTime()}`;
+
+export default {
+  isHealthRulesAvailable,
+  syncHealthRules,
+  getHealthRulesStatus,
+  checkReadings,
+  onHealthAlert,
+  alertKey,
+};
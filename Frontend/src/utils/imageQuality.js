@@ -0,0 +1,62 @@
+/**
+ * On-device image quality gate (ImageQualityPlugin)
+ * Scores a photo for sharpness, exposure, contrast, glare and resolution
+ * before it is uploaded for AI analysis, so the user can retake it instead
+ * of waiting for a useless result. The file goes to native over the blob
+ * channel; on the web, or when that isn't available, the gate is skipped.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { canUploadBlobs, freeBlob, uploadBlob } from './blobChannel';
+
+const ImageQuality = registerPlugin('ImageQuality');
+
+const REASON_MESSAGES = {
+  too_small: 'The image resolution is too low.',
+  blurry: 'The image is blurry. Hold the camera steady and tap to focus.',
+  too_dark: 'The image is too dark. Add more light.',
+  overexposed: 'The image is overexposed. Reduce the light or avoid direct flash.',
+  low_contrast: 'The image is washed out. Details are hard to see.',
+  glare: 'There is glare or a reflection on the image. Change the angle.',
+};
+
+export const isImageQualityAvailable = () =>
+  canUploadBlobs() && Capacitor.isPluginAvailable('ImageQuality');
+
+/**
+ * Score an image before upload
+ * @param {File|Blob} file
+ * @param {'skin'|'retina'|'xray'|'ecg'|'generic'} modality - selects the thresholds
+ * @returns {Promise<{acceptable: boolean, score: number, reasons: string[], width: number,
+ *   height: number, metrics: object, elapsedMs: number}|null>} null when the check can't run
+ */
+export const assessImageQuality = async (file, modality = 'generic') => {
+  if (!file || !isImageQualityAvailable()) return null;
+  let handle = null;
+  try {
+    handle = await uploadBlob(file);
+    return await ImageQuality.assess({ blob: handle.id, modality });
+  } catch (error) {
+    console.warn('Image quality check failed:', error);
+    return null;
+  } finally {
+    if (handle) freeBlob(handle);
+  }
+};
+
+/** Human-readable lines for the reasons of a failed check */
+export const describeQualityIssues = (result) =>
+  (result?.reasons || []).map((reason) => REASON_MESSAGES[reason] || reason);
+
+/**
+ * Check an image and, if it looks unusable, ask whether to upload it anyway
+ * @returns {Promise<boolean>} true to go ahead with the upload
+ */
+export const confirmImageQuality = async (file, modality) => {
+  const result = await assessImageQuality(file, modality);
+  if (!result || result.acceptable) return true;
+  const issues = describeQualityIssues(result).map((line) => `• ${line}`).join('\n');
+  return window.confirm(
+    `This photo may not give a reliable analysis:\n\n${issues}\n\nPress Cancel to retake it, or OK to upload anyway.`
+  );
+};
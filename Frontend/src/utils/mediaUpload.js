@@ -0,0 +1,116 @@
+/**
+ * Resumable background uploads (MediaUploadPlugin)
+ * On Android, photos and videos are handed to a native foreground service
+ * that sends them to Cloudinary in chunks and resumes after network drops
+ * or the app being killed. The file crosses to native over the blob channel;
+ * where that isn't available callers keep their own axios upload.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { canUploadBlobs, freeBlob, uploadBlob } from './blobChannel';
+
+const MediaUpload = registerPlugin('MediaUpload');
+
+const CLOUDINARY_CLOUD_NAME = import.meta.env.VITE_CLOUDINARY_CLOUD_NAME || 'drxliiejo';
+
+export const isBackgroundUploadAvailable = () =>
+  canUploadBlobs() && Capacitor.isPluginAvailable('MediaUpload');
+
+/**
+ * Queue a file for background upload
+ * @param {File|Blob} file
+ * @param {{url: string, fields?: Object<string, string>, fileName?: string}} options
+ * @returns {Promise<{id: string, state: string, size: number}>}
+ */
+export const enqueueUpload = async (file, { url, fields = {}, fileName } = {}) => {
+  const handle = await uploadBlob(file);
+  try {
+    return await MediaUpload.enqueue({
+      blob: handle.id,
+      url,
+      fields,
+      fileName: fileName || file.name || 'upload',
+      mimeType: file.type || handle.mimeType,
+    });
+  } finally {
+    // Native keeps its own copy
+    freeBlob(handle);
+  }
+};
+
+/** All uploads native still knows about, including finished ones not yet collected */
+export const listUploads = async () => (await MediaUpload.list()).uploads || [];
+
+export const cancelUpload = (id) => MediaUpload.cancel({ id });
+
+/**
+ * Wait for a queued upload to finish, then forget it natively
+ * @param {string} id
+ * @param {(sent: number, total: number) => void} [onProgress]
+ * @returns {Promise<Object>} the server's JSON response
+ */
+export const waitForUpload = (id, onProgress) => new Promise((resolve, reject) => {
+  const handles = [];
+  let settled = false;
+  const settle = (upload) => {
+    if (settled || upload.id !== id) return;
+    if (upload.state === 'queued' || upload.state === 'uploading') return;
+    settled = true;
+    handles.forEach((h) => h.remove());
+    MediaUpload.remove({ id }).catch(() => {});
+    if (upload.state === 'done') {
+      try {
+        resolve(JSON.parse(upload.response));
+      } catch {
+        reject(new Error('Invalid response from upload server'));
+      }
+    } else if (upload.state === 'cancelled') {
+      reject(new Error('Upload cancelled'));
+    } else {
+      reject(new Error(`Upload failed: ${upload.error || 'unknown error'}`));
+    }
+  };
+
+  Promise.all([
+    MediaUpload.addListener('uploadStateChanged', settle),
+    onProgress
+      ? MediaUpload.addListener('uploadProgress', (event) => {
+        if (event.id === id) onProgress(event.sent, event.total);
+      })
+      : null,
+  ]).then(async (added) => {
+    handles.push(...added.filter(Boolean));
+    if (settled) {
+      handles.forEach((h) => h.remove());
+      return;
+    }
+    // It may have finished before the listener was attached
+    const upload = (await listUploads()).find((u) => u.id === id);
+    if (upload) settle(upload);
+    else if (!settled) settle({ id, state: 'failed', error: 'upload not found' });
+  }).catch(reject);
+});
+
+/**
+ * Upload to Cloudinary through the native queue
+ * @param {File|Blob} file
+ * @param {{preset: string, folder?: string, resourceType?: 'image'|'video'|'auto', cloudName?: string,
+ *   onProgress?: (sent: number, total: number) => void}} options
+ * @returns {Promise<string|null>} secure_url, or null when background upload isn't available
+ */
+export const uploadToCloudinaryInBackground = async (file, {
+  preset, folder, resourceType = 'image', cloudName = CLOUDINARY_CLOUD_NAME, onProgress,
+} = {}) => {
+  if (!file || !isBackgroundUploadAvailable()) return null;
+  const fields = { upload_preset: preset };
+  if (folder) fields.folder = folder;
+  const upload = await enqueueUpload(file, {
+    url: `https://api.cloudinary.com/v1_1/${cloudName}/${resourceType}/upload`,
+    fields,
+  });
+  const response = await waitForUpload(upload.id, onProgress);
+  if (!response?.secure_url) {
+    throw new Error('Invalid response from Cloudinary - no URL returned');
+  }
+  return response.secure_url;
+};
@@ -0,0 +1,74 @@
+/**
+ * Native medication reminders (MedicationReminderPlugin)
+ * On Android reminders are kept on the device and fired by a single exact
+ * alarm, with Taken / Snooze answered from the notification, so they arrive
+ * with the app closed and after a reboot. The page only sets them up and
+ * reads back the log.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const MedicationReminders = registerPlugin('MedicationReminders');
+
+export const isMedicationReminderAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('MedicationReminders');
+
+const localDate = (date) => {
+  const d = new Date(date);
+  const pad = (n) => String(n).padStart(2, '0');
+  return `${d.getFullYear()}-${pad(d.getMonth() + 1)}-${pad(d.getDate())}`;
+};
+
+/**
+ * One reminder per medication, timed from its frequency and duration and
+ * counted from the day it was prescribed. Setting them again replaces them.
+ * @returns {Promise<{success: boolean, scheduled: object[], unscheduled: string[], exactAlarms: boolean}>}
+ */
+export const scheduleFromPrescription = (prescription) =>
+  MedicationReminders.schedule({
+    reminders: (prescription.medications || []).map((m, index) => ({
+      id: `${prescription._id}:${index}`,
+      name: m.name,
+      dosage: m.dosage,
+      instructions: m.instructions || '',
+      frequency: m.frequency,
+      duration: m.duration || '',
+      startDate: localDate(prescription.createdAt || Date.now()),
+    })),
+  });
+
+/**
+ * @param {object[]} reminders - id?, name, dosage?, instructions?, times? (['08:00']), frequency?, duration?, startDate?
+ */
+export const scheduleReminders = (reminders) => MedicationReminders.schedule({ reminders });
+
+export const cancelReminder = (id) => MedicationReminders.cancel({ id });
+
+export const listReminders = () => MedicationReminders.list();
+
+/** Taken, snoozed and missed doses since `since` (epoch ms) */
+export const getDoseHistory = (since = 0) => MedicationReminders.history({ since });
+
+export const openExactAlarmSettings = () => MedicationReminders.openExactAlarmSettings();
+
+/** On logout, so the next patient on this phone isn't reminded of these */
+export const clearReminders = () => MedicationReminders.clear();
+
+/**
+ * @param {(event: {id: string, doseAt: number, action: string}) => void} callback
+ * @returns {Promise<{remove: () => Promise<void>}>}
+ */
+export const onDoseLogged = (callback) => MedicationReminders.addListener('doseLogged', callback);
+
+export default {
+  isMedicationReminderAvailable,
+  scheduleFromPrescription,
+  scheduleReminders,
+  cancelReminder,
+  listReminders,
+  getDoseHistory,
+  openExactAlarmSettings,
+  clearReminders,
+  onDoseLogged,
+};
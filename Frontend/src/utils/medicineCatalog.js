@@ -0,0 +1,67 @@
+/**
+ * Offline medicine catalog (MedicineCatalogPlugin)
+ * On Android the whole catalog is kept on the device and kept current by
+ * delta pulls from /medicines/sync. Search, filters, sorting and paging run
+ * locally in a few milliseconds, with typo-tolerant matching, and keep
+ * working offline. Elsewhere callers go to GET /medicines as before.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const MedicineCatalog = registerPlugin('MedicineCatalog');
+
+export const isMedicineCatalogAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('MedicineCatalog');
+
+/**
+ * Tell the native catalog which server to sync from; it syncs right away
+ * and then on every launch
+ * @param {string} apiBaseUrl - e.g. API_BASE_URL
+ */
+export const configureMedicineCatalog = async (apiBaseUrl) => {
+  if (!isMedicineCatalogAvailable() || !apiBaseUrl) return;
+  try {
+    await MedicineCatalog.configure({ baseUrl: apiBaseUrl });
+  } catch (error) {
+    console.warn('Failed to configure medicine catalog:', error);
+  }
+};
+
+/**
+ * Pull changes since the last sync (at most once a minute unless forced)
+ * @returns {Promise<{ready: boolean, size: number, syncedAt: number, watermark: number}>}
+ */
+export const syncMedicineCatalog = (force = false) => MedicineCatalog.sync({ force });
+
+/** @returns {Promise<{ready: boolean, size: number, syncedAt: number, watermark: number}>} */
+export const getMedicineCatalogStatus = () => MedicineCatalog.getStatus();
+
+/**
+ * Search the on-device catalog
+ * @param {object} filters - search, category, sortBy, minPrice, maxPrice, prescriptionRequired, city
+ * @returns {Promise<{medicines: object[], pagination: {total: number, pages: number, page: number, limit: number},
+ *   fuzzy: boolean, syncedAt: number, tookMs: number}>} the same shape as GET /medicines
+ */
+export const searchMedicineCatalog = (filters, page = 1, limit = 20) =>
+  MedicineCatalog.search({ ...filters, page, limit });
+
+/** Categories that have at least one medicine in the on-device catalog */
+export const getMedicineCatalogCategories = async () =>
+  (await MedicineCatalog.getCategories()).categories || [];
+
+/**
+ * @param {(status: {size: number, upserted: number, removed: number, fullPull: boolean}) => void} callback
+ * @returns {Promise<{remove: () => Promise<void>}>}
+ */
+export const onMedicineCatalogSynced = (callback) => MedicineCatalog.addListener('catalogSynced', callback);
+
+export default {
+  isMedicineCatalogAvailable,
+  configureMedicineCatalog,
+  syncMedicineCatalog,
+  getMedicineCatalogStatus,
+  searchMedicineCatalog,
+  getMedicineCatalogCategories,
+  onMedicineCatalogSynced,
+};
@@ -0,0 +1,46 @@
+/**
+ * Native PDF reports (PdfReportPlugin)
+ * On Android prescriptions and health reports are laid out and written by
+ * the app itself, page by page, from the JSON the page already holds. That
+ * works offline and keeps long histories off the WebView's heap. Elsewhere
+ * callers fall back to the backend's PDF download.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const PdfReport = registerPlugin('PdfReport');
+
+export const REPORT_KIND = {
+  PRESCRIPTION: 'prescription',
+  HISTORY: 'history',
+};
+
+export const isNativeReportAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('PdfReport');
+
+/**
+ * Write a report to the app's cache
+ * @param {string} kind - REPORT_KIND.PRESCRIPTION or REPORT_KIND.HISTORY
+ * @param {object} data - a prescription as the API returns it (plus an optional
+ *   qrCode data URL), or {patient, generatedAt, summary, readings, prescriptions}
+ * @param {string} [fileName]
+ * @returns {Promise<{success: boolean, path: string, uri: string, pages: number, bytes: number, ms: number}>}
+ */
+export const generateReport = (kind, data, fileName) =>
+  PdfReport.generate({ kind, data, fileName });
+
+/** Open the share sheet for a generated report's path */
+export const sharePdfReport = (path, title) => PdfReport.share({ path, title });
+
+/** Open the system print dialog for a generated report */
+export const printPdfReport = (path, jobName, pages) =>
+  PdfReport.print({ path, jobName, pages });
+
+export default {
+  REPORT_KIND,
+  isNativeReportAvailable,
+  generateReport,
+  sharePdfReport,
+  printPdfReport,
+};
@@ -0,0 +1,64 @@
+/**
+ * Native SOS dispatch (SosPlugin)
+ * On Android the alert is sent by a foreground service with the best location
+ * fix already on the phone, follows up as better fixes arrive, retries until
+ * the backend acknowledges and texts the emergency contacts if it can't. The
+ * page only triggers it and listens for progress. Elsewhere SOSButton posts
+ * to the backend as before.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const Sos = registerPlugin('Sos');
+
+export const isNativeSosAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('Sos');
+
+/**
+ * Who the SMS fallback texts; call after login and when contacts change
+ * @param {{name?: string, emergencyContacts?: Array<{name: string, phone: string}>}} user
+ */
+export const configureNativeSos = (user) =>
+  Sos.configure({
+    userName: user.name || '',
+    contacts: (user.emergencyContacts || []).map((c) => ({ name: c.name, phone: c.phone })),
+  });
+
+/**
+ * Warm the backend connection and location cache while the SOS screen is open
+ * @returns {Promise<{success: boolean, warmMs: number, locationPermission: boolean}>}
+ */
+export const prepareNativeSos = () => Sos.prepare();
+
+/**
+ * Send now with the best cached fix; resolves once the alert is queued, and
+ * delivery is reported through onSosUpdate
+ * @param {object} alert - type ('sos' | 'ambulance'), description, severity, emergencyType
+ * @returns {Promise<{success: boolean, alertId: string, state: string, triggerMs: number}>}
+ */
+export const triggerNativeSos = (alert) => Sos.trigger(alert);
+
+export const cancelNativeSos = (alertId) => Sos.cancel({ alertId });
+
+export const getNativeSosStatus = () => Sos.getStatus();
+
+/** On logout, so the SMS fallback forgets the previous user's contacts */
+export const clearNativeSos = () => Sos.clear();
+
+/**
+ * @param {(alert: {alertId: string, state: string, latencyMs: number, smsSent: boolean}) => void} callback
+ * @returns {Promise<{remove: () => Promise<void>}>}
+ */
+export const onSosUpdate = (callback) => Sos.addListener('sosUpdate', callback);
+
+export default {
+  isNativeSosAvailable,
+  configureNativeSos,
+  prepareNativeSos,
+  triggerNativeSos,
+  cancelNativeSos,
+  getNativeSosStatus,
+  clearNativeSos,
+  onSosUpdate,
+};
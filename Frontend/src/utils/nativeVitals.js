@@ -0,0 +1,131 @@
+/**
+ * Native BLE vitals plugin for Capacitor
+ * The Android side owns the GATT connection, decodes heart rate, blood pressure
+ * and temperature natively and emits one `vitalsBatch` event per time window.
+ * Each batch carries a `summary` from the native analytics: artifact-rejected
+ * mean/min/max, EWMA baseline, slope and trend per metric, plus HRV (RMSSD,
+ * SDNN) from RR intervals.
+ */
+
+import { registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const VitalsMonitor = registerPlugin('VitalsMonitor');
+
+// Same name prefixes the Web Bluetooth chooser filters on
+const KNOWN_WATCH_PREFIXES = ['boAt', 'Mi', 'Amazfit', 'Fitbit', 'Galaxy', 'Apple'];
+
+export const isNativeVitalsAvailable = () => isNativeAndroid();
+
+/**
+ * Scan for nearby BLE devices and pick the most likely watch
+ * @param {number} timeoutMs - How long to scan
+ * @returns {Promise<{name: string, address: string, rssi: number} | null>}
+ */
+export const findVitalsDevice = async (timeoutMs = 8000) => {
+  const { devices } = await VitalsMonitor.scan({ timeoutMs });
+  if (!devices || devices.length === 0) {
+    return null;
+  }
+  const sorted = [...devices].sort((a, b) => b.rssi - a.rssi);
+  return sorted.find(d => KNOWN_WATCH_PREFIXES.some(p => d.name.startsWith(p))) || sorted[0];
+};
+
+/**
+ * Connect to a device found by findVitalsDevice
+ * @param {string} address - Bluetooth MAC address
+ * @param {number} windowMs - Batch window; one event is emitted per window
+ */
+export const connectVitalsDevice = (address, windowMs = 5000) =>
+  VitalsMonitor.connect({ address, windowMs });
+
+/**
+ * Start windowed monitoring
+ * @param {(batch: object) => void} onBatch - Called once per window
+ * @param {{detail?: boolean}} options - detail: false leaves per-sample heart rate
+ *   and RR arrays on the device; getRecentVitals reads them back when needed
+ * @returns {Promise<() => Promise<void>>} Stop function
+ */
+export const startVitalsMonitoring = async (onBatch, { detail = true } = {}) => {
+  const handle = await VitalsMonitor.addListener('vitalsBatch', onBatch);
+  await VitalsMonitor.startMonitoring({ detail });
+  return async () => {
+    await VitalsMonitor.stopMonitoring();
+    await handle.remove();
+  };
+};
+
+export const disconnectVitalsDevice = () => VitalsMonitor.disconnect();
+
+/**
+ * Follow the GATT connection: connected once services are discovered, and
+ * not connected after a drop (out of range, watch off). Nothing reconnects
+ * on its own.
+ * @param {(event: {connected: boolean, address: string, services: string[]}) => void} callback
+ * @returns {Promise<() => Promise<void>>} Unsubscribe function
+ */
+export const onVitalsConnectionChange = async (callback) => {
+  const handle = await VitalsMonitor.addListener('connectionChange', callback);
+  return () => handle.remove();
+};
+
+/**
+ * Accepted samples still held natively for one metric (the trend window)
+ * @param {'heart_rate'|'systolic'|'diastolic'|'temperature'} metric
+ * @returns {Promise<{times: number[], values: number[]}>}
+ */
+export const getRecentVitals = (metric = 'heart_rate') => VitalsMonitor.getRecentVitals({ metric });
+
+/**
+ * Convert a native batch into readings for POST /api/v1/health/readings/bulk.
+ * Heart rate is summarized to the window mean with motion artifacts removed;
+ * cuff and thermometer measurements are sparse, so each is sent as-is.
+ */
+export const batchToReadings = (batch, source) => {
+  const readings = [];
+  const heartRate = batch.summary?.heartRate;
+  // A window of nothing but artifacts has no mean worth alerting on
+  if (batch.heartRate && (!heartRate || heartRate.mean !== undefined)) {
+    readings.push({
+      type: 'heart_rate',
+      value: { single: Math.round(heartRate?.mean ?? batch.heartRate.mean) },
+      timestamp: new Date(batch.windowEnd),
+      source,
+    });
+  }
+  if (batch.bloodPressure) {
+    batch.bloodPressure.times.forEach((time, i) => {
+      readings.push({
+        type: 'blood_pressure',
+        value: {
+          systolic: Math.round(batch.bloodPressure.systolic[i]),
+          diastolic: Math.round(batch.bloodPressure.diastolic[i]),
+        },
+        timestamp: new Date(time),
+        source,
+      });
+    });
+  }
+  if (batch.temperature) {
+    batch.temperature.times.forEach((time, i) => {
+      readings.push({
+        type: 'temperature',
+        value: { single: batch.temperature.values[i] },
+        timestamp: new Date(time),
+        source,
+      });
+    });
+  }
+  return readings;
+};
+
+export default {
+  isNativeVitalsAvailable,
+  findVitalsDevice,
+  connectVitalsDevice,
+  startVitalsMonitoring,
+  disconnectVitalsDevice,
+  onVitalsConnectionChange,
+  getRecentVitals,
+  batchToReadings,
+};
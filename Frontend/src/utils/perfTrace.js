@@ -0,0 +1,65 @@
+/**
+ * Native performance trace (PerfTracePlugin)
+ * A fixed in-memory ring of sections, instants and counters recorded by the
+ * Android shell (startup, WebView setup, call joins). Capture stays on across
+ * launches once started, so a tester can reproduce a slow path and attach the
+ * export to the bug report. Sections also show up in Perfetto/systrace.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { fetchBlob, freeBlob } from './blobChannel';
+
+const PerfTrace = registerPlugin('PerfTrace');
+
+/** Event types in an export's `events` rows */
+export const PERF_EVENT = {
+  BEGIN: 1,
+  END: 2,
+  INSTANT: 3,
+  COUNTER: 4,
+  ASYNC_BEGIN: 5,
+  ASYNC_END: 6,
+};
+
+export const isPerfTraceAvailable = () =>
+  Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('PerfTrace');
+
+/**
+ * @param {{capacity?: number, persist?: boolean}} [options] - persist (default true) keeps capture on after restarts
+ * @returns {Promise<{success: boolean, enabled: boolean, capacity: number}>}
+ */
+export const startPerfTrace = (options = {}) => PerfTrace.start(options);
+
+export const stopPerfTrace = (options = {}) => PerfTrace.stop(options);
+
+export const clearPerfTrace = () => PerfTrace.clear();
+
+export const getPerfTraceStatus = () => PerfTrace.getStatus();
+
+/**
+ * The capture so far. 'json' returns `{format, capturedAt, names, events:
+ * [[µs before capture, type, nameIndex, value, thread]], counters, dropped}`;
+ * 'binary' returns the compact encoding as a Blob, ready to upload.
+ * @param {'json'|'binary'} [format]
+ */
+export const exportPerfTrace = async (format = 'json') => {
+  const result = await PerfTrace.export({ format });
+  if (format !== 'binary') {
+    return result.trace;
+  }
+  try {
+    return await fetchBlob(result.blob);
+  } finally {
+    freeBlob(result.blob);
+  }
+};
+
+export default {
+  PERF_EVENT,
+  isPerfTraceAvailable,
+  startPerfTrace,
+  stopPerfTrace,
+  clearPerfTrace,
+  getPerfTraceStatus,
+  exportPerfTrace,
+};
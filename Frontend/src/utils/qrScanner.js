@@ -0,0 +1,23 @@
+/**
+ * Native QR scanner (QrScannerPlugin)
+ * On Android the camera frames are decoded natively from the luminance
+ * plane, so no frame is copied into JS and jsQR doesn't have to be
+ * downloaded. Other platforms keep the getUserMedia + jsQR path.
+ */
+
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+
+const QrScanner = registerPlugin('QrScanner');
+
+export const isNativeQrScannerAvailable = () =>
+  isNativeAndroid() && Capacitor.isPluginAvailable('QrScanner');
+
+/**
+ * Open the native scanner and wait for the first code
+ * @returns {Promise<string|null>} the payload, or null if the user closed the scanner
+ */
+export const scanQrNative = async () => {
+  const result = await QrScanner.scan();
+  return result.success ? result.payload : null;
+};
@@ -0,0 +1,63 @@
+/**
+ * Native reading journal for Capacitor
+ * Readings are appended to a durable on-device log and uploaded in bulk by a
+ * native drainer, so nothing is lost while the phone is offline.
+ */
+
+import { registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+import { API_BASE_URL } from '../config/api.config';
+
+const ReadingJournal = registerPlugin('ReadingJournal');
+
+export const isReadingJournalAvailable = () => isNativeAndroid();
+
+/**
+ * Point the native drainer at the backend with the current auth token.
+ * Call again after login so uploads use the fresh token.
+ */
+export const configureReadingJournal = async () => {
+  const token = localStorage.getItem('token');
+  return ReadingJournal.configure({
+    baseUrl: API_BASE_URL,
+    token: token ? token.replace(/^"(.*)"$/, '$1') : null,
+  });
+};
+
+/**
+ * Queue readings for upload
+ * @param {Array<object>} readings - Same shape as the bulk readings endpoint
+ * @returns {Promise<{pending: number, lagMs: number}>}
+ */
+export const queueReadings = (readings) => ReadingJournal.append({ readings });
+
+/** Upload everything queued now instead of waiting for a full batch */
+export const flushReadings = () => ReadingJournal.flush();
+
+export const getReadingJournalStats = () => ReadingJournal.getStats();
+
+/**
+ * Subscribe to queue depth / lag updates and server alerts
+ * @returns {Promise<() => Promise<void>>} Unsubscribe function
+ */
+export const onReadingJournalEvents = async ({ onStats, onAlerts }) => {
+  const handles = [];
+  if (onStats) {
+    handles.push(await ReadingJournal.addListener('journalStats', onStats));
+  }
+  if (onAlerts) {
+    handles.push(await ReadingJournal.addListener('readingAlerts', (event) => onAlerts(event.alerts)));
+  }
+  return async () => {
+    await Promise.all(handles.map(handle => handle.remove()));
+  };
+};
+
+export default {
+  isReadingJournalAvailable,
+  configureReadingJournal,
+  queueReadings,
+  flushReadings,
+  getReadingJournalStats,
+  onReadingJournalEvents,
+};
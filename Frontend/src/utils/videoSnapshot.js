@@ -1,5 +1,12 @@
 import axios from 'axios';
 import OpenAI from 'openai';
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import { isNativeAndroid } from './zegoNativeCall';
+import { canUploadBlobs, fetchBlob, freeBlob, uploadBlob } from './blobChannel';
+import { uploadToCloudinaryInBackground } from './mediaUpload';
+
+// Native frame extractor (Android): hardware decode, downscaled JPEGs in the cache dir
+const VideoFrames = registerPlugin('VideoFrames');
 
 // Cloudinary configuration (use env variables with fallbacks)
 const CLOUDINARY_CLOUD_NAME = import.meta.env.VITE_CLOUDINARY_CLOUD_NAME || 'drxliiejo';
@@ -70,6 +77,80 @@ export const captureVideoSnapshot = async (videoFile, timeOffset = 2) => {
   });
 };
 
+export const isNativeVideoFramesAvailable = () => isNativeAndroid();
+
+/**
+ * Let the user pick a video with the system picker, without loading it into the WebView
+ * @returns {Promise<{nativeUri: string, name: string, durationMs: number, width: number, height: number}>}
+ */
+export const pickVideoNative = async () => {
+  const video = await VideoFrames.pickVideo();
+  return { ...video, nativeUri: video.uri };
+};
+
+/**
+ * Extract K frames natively in a single pass over the video
+ * @param {string|{id: string}} source - content:// URI, absolute file path, or a blob handle from uploadBlob
+ * @param {object} options - { count, mode: 'uniform' | 'scene', maxDimension, quality }
+ * @returns {Promise<Array<{path: string, webPath: string, blob: {id: string, url: string}, timeMs: number, width: number, height: number, sceneScore: number}>>}
+ *   free each frame's blob handle with freeBlob when done
+ */
+export const extractVideoFramesNative = async (source, options = {}) => {
+  const { frames } = await VideoFrames.extractFrames({
+    ...(typeof source === 'string' ? { uri: source } : { blob: source.id }),
+    count: options.count ?? 5,
+    mode: options.mode ?? 'uniform',
+    maxDimension: options.maxDimension ?? 1024,
+    quality: options.quality ?? 85,
+  });
+  return frames.map(frame => ({ ...frame, webPath: Capacitor.convertFileSrc(frame.path) }));
+};
+
+/** Delete extracted frame files from the cache */
+export const clearVideoFramesNative = () => VideoFrames.clearFrames();
+
+const blobToBase64 = (blob) => new Promise((resolve, reject) => {
+  const reader = new FileReader();
+  reader.onloadend = () => resolve(reader.result.split(',')[1]);
+  reader.onerror = reject;
+  reader.readAsDataURL(blob);
+});
+
+/**
+ * Grab the frame closest to timeOffset from a scene-aware native sample
+ * @param {string|{id: string}} source - native URI or blob handle
+ * @returns {Promise<{blob: Blob, base64: string}>}
+ */
+const captureNativeSnapshot = async (source, timeOffset) => {
+  const frames = await extractVideoFramesNative(source, { count: 5, mode: 'scene' });
+  try {
+    if (frames.length === 0) {
+      throw new Error('Error loading video: no frames could be decoded');
+    }
+    const target = timeOffset * 1000;
+    const frame = frames.reduce((best, f) =>
+      Math.abs(f.timeMs - target) < Math.abs(best.timeMs - target) ? f : best);
+
+    // Raw JPEG bytes over /_blob/; base64 is only made for the AI request body
+    const blob = await fetchBlob(frame.blob);
+    return { blob, base64: await blobToBase64(blob) };
+  } finally {
+    await Promise.all(frames.map(f => freeBlob(f.blob)));
+  }
+};
+
+/**
+ * Hand a picked File to the native decoder without base64, then sample it there
+ */
+const captureUploadedSnapshot = async (videoFile, timeOffset) => {
+  const handle = await uploadBlob(videoFile);
+  try {
+    return await captureNativeSnapshot(handle, timeOffset);
+  } finally {
+    await freeBlob(handle);
+  }
+};
+
 /**
  * Uploads an image blob to Cloudinary
  * @param {Blob} imageBlob - The image blob to upload
@@ -78,6 +159,15 @@ export const captureVideoSnapshot = async (videoFile, timeOffset = 2) => {
 const uploadImageToCloudinary = async (imageBlob) => {
   try {
     console.log('Uploading image to Cloudinary, size:', imageBlob.size);
+
+    const backgroundUrl = await uploadToCloudinaryInBackground(imageBlob, {
+      preset: CLOUDINARY_UPLOAD_PRESET,
+      folder: `${CLOUDINARY_UPLOAD_PRESET}/video-snapshots`,
+    });
+    if (backgroundUrl) {
+      console.log('Image uploaded successfully to:', backgroundUrl);
+      return backgroundUrl;
+    }
     
     const formData = new FormData();
     formData.append('file', imageBlob);
@@ -250,7 +340,7 @@ const fetchImageAsBase64 = async (imageUrl) => {
 
 /**
  * Complete video analysis workflow: capture snapshot, upload to Cloudinary, and analyze with OpenAI
- * @param {File} videoFile - The video file to analyze
+ * @param {File|{nativeUri: string}} videoFile - The video file to analyze, or a video from pickVideoNative
  * @param {string} analysisType - The type of analysis
  * @param {number} timeOffset - Time in seconds to capture snapshot (default: 2)
  * @returns {Promise<{imageUrl: string, analysis: string}>} - The image URL and analysis result
@@ -262,16 +352,32 @@ export const analyzeVideoWithSnapshot = async (videoFile, analysisType, timeOffs
   try {
     // Step 1: Capture snapshot from video
     console.log('Step 1: Capturing video snapshot...');
-    const dataUrl = await captureVideoSnapshot(videoFile, timeOffset);
+    let dataUrl;
+    let blob;
+    if (videoFile?.nativeUri && isNativeVideoFramesAvailable()) {
+      // Decoded natively; only the small downscaled JPEG reaches the WebView
+      const snapshot = await captureNativeSnapshot(videoFile.nativeUri, timeOffset);
+      blob = snapshot.blob;
+      base64Image = snapshot.base64;
+      dataUrl = `data:image/jpeg;base64,${base64Image}`;
+    } else if (videoFile instanceof Blob && isNativeVideoFramesAvailable() && canUploadBlobs()) {
+      // Plain <input type=file> videos: stream the bytes to native instead of decoding in the WebView
+      const snapshot = await captureUploadedSnapshot(videoFile, timeOffset);
+      blob = snapshot.blob;
+      base64Image = snapshot.base64;
+      dataUrl = `data:image/jpeg;base64,${base64Image}`;
+    } else {
+      dataUrl = await captureVideoSnapshot(videoFile, timeOffset);
+
+      // Extract base64 from data URL for direct use
+      base64Image = dataUrl.split(',')[1];
+      const response = await fetch(dataUrl);
+      blob = await response.blob();
+    }
     console.log('✓ Snapshot captured successfully');
     
-    // Extract base64 from data URL for direct use
-    base64Image = dataUrl.split(',')[1];
-    
-    // Step 2: Convert data URL to blob and upload to Cloudinary
+    // Step 2: Upload the snapshot to Cloudinary
     console.log('Step 2: Uploading to Cloudinary...');
-    const response = await fetch(dataUrl);
-    const blob = await response.blob();
     
     try {
       imageUrl = await uploadImageToCloudinary(blob);
@@ -59,16 +59,28 @@ export const initializeZegoNative = async (userID, userName) => {
  * @param {string} userID - The user's ID
  * @param {string} userName - The user's display name
  * @param {boolean} isVideoCall - Whether this is a video call (true) or voice call (false)
- * @returns {Promise<{success: boolean, message: string}>}
+ * @param {{allowHevc?: boolean, groupConsult?: boolean, maxDownlinkKbps?: number, pinUserID?: string}} options
+ *   allowHevc only when the other side can decode H.265 (ignored for group consults).
+ *   groupConsult joins as one of several participants (e.g. ASHA worker, patient, doctor, specialist):
+ *   the room stays up as people come and go, the speaker or pinUserID gets high-resolution video,
+ *   everyone else low-resolution or audio only, within maxDownlinkKbps (0 = no cap)
+ * @returns {Promise<{success: boolean, merged?: boolean, sessionId?: number, groupConsult?: boolean,
+ *   message: string}>}
  */
-export const joinRoomNative = async (roomID, userID, userName, isVideoCall = true) => {
+export const joinRoomNative = async (
+  roomID,
+  userID,
+  userName,
+  isVideoCall = true,
+  { allowHevc = false, groupConsult = false, maxDownlinkKbps = 0, pinUserID = '' } = {},
+) => {
   if (!isNativeAndroid()) {
     console.log('Not running on native Android, cannot use native video call');
     return { success: false, message: 'Not on native Android' };
   }
 
   try {
-    console.log('Joining room via native SDK:', { roomID, userID, userName, isVideoCall });
+    console.log('Joining room via native SDK:', { roomID, userID, userName, isVideoCall, groupConsult });
     
     // Sanitize userID
     const sanitizedUserID = userID.replace(/[^a-zA-Z0-9_]/g, '_');
@@ -78,6 +90,10 @@ export const joinRoomNative = async (roomID, userID, userName, isVideoCall = tru
       userID: sanitizedUserID,
       userName: userName || 'User',
       isVideoCall,
+      allowHevc,
+      groupConsult,
+      maxDownlinkKbps,
+      pinUserID: pinUserID ? pinUserID.replace(/[^a-zA-Z0-9_]/g, '_') : '',
     });
     
     console.log('Join room result:', result);
@@ -115,8 +131,9 @@ export const startCallNative = async (targetUserID, targetUserName, isVideoCall
 };
 
 /**
- * End the current call
- * @returns {Promise<{success: boolean, message: string}>}
+ * End the current call: the native call screen closes and releases camera,
+ * microphone, room and audio focus; callState reports 'ending' then 'idle'
+ * @returns {Promise<{success: boolean, ended: boolean, message: string}>}
  */
 export const endCallNative = async () => {
   if (!isNativeAndroid()) {
@@ -150,6 +167,101 @@ export const uninitializeZegoNative = async () => {
   }
 };
 
+/**
+ * Subscribe to native call timing and quality
+ * initialize() warms the engine in the background and reports it through onWarmup;
+ * every join milestone (activityCreated, fragmentAttached, roomJoined, firstLocalFrame,
+ * firstRemoteFrame) arrives through onLatency with ms offsets from the join request.
+ * onQuality gets one sample per second during the call (quality level, kbps, fps, rttMs,
+ * loss, stall ms, and the adaptive profile: 0 = 540p .. 3 = 180p, 4 = audio-only);
+ * onSummary gets the hang-up summary with a verdict of
+ * 'good' | 'network' | 'device' | 'configuration'.
+ * @param {{onWarmup?: Function, onLatency?: Function, onQuality?: Function, onSummary?: Function}} callbacks
+ * @returns {Promise<Function>} - call to unsubscribe
+ */
+export const onZegoNativeMetrics = async ({ onWarmup, onLatency, onQuality, onSummary } = {}) => {
+  if (!isNativeAndroid()) {
+    return () => {};
+  }
+
+  const handles = [];
+  if (onWarmup) handles.push(await ZegoCall.addListener('callWarmup', onWarmup));
+  if (onLatency) handles.push(await ZegoCall.addListener('callLatency', onLatency));
+  if (onQuality) handles.push(await ZegoCall.addListener('callQuality', onQuality));
+  if (onSummary) handles.push(await ZegoCall.addListener('callSummary', onSummary));
+  return () => handles.forEach(handle => handle.remove());
+};
+
+/**
+ * Follow the native call session: 'idle' | 'joining' | 'active' | 'ending'.
+ * A second joinRoomNative for the same room resolves with merged: true instead
+ * of opening another call screen; one for a different room is refused.
+ * In debug builds onLeak reports a call screen still in memory after it closed.
+ * @param {{onState?: Function, onLeak?: Function}} callbacks
+ * @returns {Promise<Function>} - call to unsubscribe
+ */
+export const onZegoCallState = async ({ onState, onLeak } = {}) => {
+  if (!isNativeAndroid()) {
+    return () => {};
+  }
+
+  const handles = [];
+  if (onState) handles.push(await ZegoCall.addListener('callState', onState));
+  if (onLeak) handles.push(await ZegoCall.addListener('callLeak', onLeak));
+  return () => handles.forEach(handle => handle.remove());
+};
+
+/**
+ * @returns {Promise<{state: string, roomID?: string, sessionId: number}|null>}
+ */
+export const getCallStateNative = async () => {
+  if (!isNativeAndroid()) {
+    return null;
+  }
+
+  try {
+    return await ZegoCall.getCallState();
+  } catch (error) {
+    console.error('Failed to read call state:', error);
+    return null;
+  }
+};
+
+/**
+ * Quality summary of the last finished call, ready to upload with the appointment
+ * @param {boolean} includeSamples - also return the per-second samples, one array per field
+ * @returns {Promise<{summary: object, samples?: object}|null>}
+ */
+export const getCallSummaryNative = async (includeSamples = false) => {
+  if (!isNativeAndroid()) {
+    return null;
+  }
+
+  try {
+    return await ZegoCall.getCallSummary({ includeSamples });
+  } catch (error) {
+    console.log('No native call summary:', error.message);
+    return null;
+  }
+};
+
+/**
+ * Ask for camera and microphone up front so joining never stops at a permission dialog
+ * @returns {Promise<{camera: string, microphone: string}|null>}
+ */
+export const requestCallPermissionsNative = async () => {
+  if (!isNativeAndroid()) {
+    return null;
+  }
+
+  try {
+    return await ZegoCall.requestPermissions({ permissions: ['camera', 'microphone'] });
+  } catch (error) {
+    console.error('Failed to request call permissions:', error);
+    return null;
+  }
+};
+
 export default {
   isNativeAndroid,
   initializeZegoNative,
@@ -157,4 +269,9 @@ export default {
   startCallNative,
   endCallNative,
   uninitializeZegoNative,
+  onZegoNativeMetrics,
+  onZegoCallState,
+  getCallStateNative,
+  getCallSummaryNative,
+  requestCallPermissionsNative,
 };